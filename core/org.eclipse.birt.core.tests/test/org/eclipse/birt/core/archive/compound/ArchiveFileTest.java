@@ -3,6 +3,9 @@ package org.eclipse.birt.core.archive.compound;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.junit.After;
 import org.junit.Before;
@@ -144,6 +147,81 @@ public class ArchiveFileTest extends TestCase
 		archive.close( );
 	}
 
+	@Test
+	public void testConcurrentRead( ) throws Exception
+	{
+		ArchiveFile archive = new ArchiveFile( ARCHIVE_FILE, "rw" );
+		final int entryCount = 64;
+		for ( int i = 0; i < entryCount; i++ )
+		{
+			ArchiveEntry entry = archive.createEntry( "/entry/" + i );
+			byte[] b = new byte[i * 1024];
+			for ( int j = 0; j < b.length; j++ )
+			{
+				b[j] = (byte) ( i + j );
+			}
+			entry.write( 0, b, 0, b.length );
+			entry.close( );
+		}
+		archive.close( );
+
+		final ArchiveFile reader = new ArchiveFile( ARCHIVE_FILE, "r" );
+		final List<Throwable> errors = Collections.synchronizedList( new ArrayList<Throwable>( ) );
+		Thread[] threads = new Thread[8];
+		for ( int t = 0; t < threads.length; t++ )
+		{
+			final int start = t;
+			threads[t] = new Thread( ) {
+
+				public void run( )
+				{
+					try
+					{
+						for ( int n = 0; n < entryCount; n++ )
+						{
+							int i = ( start + n ) % entryCount;
+							ArchiveEntry entry = reader.openEntry( "/entry/" + i );
+							try
+							{
+								assertEquals( i * 1024, entry.getLength( ) );
+								byte[] b = new byte[i * 1024];
+								int size = 0;
+								while ( size < b.length )
+								{
+									size += entry.read( size,
+											b,
+											size,
+											Math.min( 3000, b.length - size ) );
+								}
+								for ( int j = 0; j < b.length; j++ )
+								{
+									assertEquals( (byte) ( i + j ), b[j] );
+								}
+							}
+							finally
+							{
+								entry.close( );
+							}
+						}
+					}
+					catch ( Throwable ex )
+					{
+						errors.add( ex );
+					}
+				}
+			};
+			threads[t].start( );
+		}
+		for ( int t = 0; t < threads.length; t++ )
+		{
+			threads[t].join( );
+		}
+		assertTrue( reader.exists( "/entry/1" ) );
+		assertEquals( entryCount, reader.listEntries( "/entry/" ).size( ) );
+		reader.close( );
+		assertTrue( errors.toString( ), errors.isEmpty( ) );
+	}
+
 	void createArchive( ArchiveFile archive ) throws IOException
 	{
 		int entryCount = 1024;
@@ -56,6 +56,12 @@ public class ArchiveFile implements IArchiveFile
 
 	protected IArchiveFile af;
 
+	/**
+	 * the archive is a read only ext2 archive, whose entries are opened and
+	 * read concurrently without locking the archive.
+	 */
+	protected boolean concurrentRead;
+
 	public ArchiveFile( String fileName, String mode ) throws IOException
 	{
 		// set blank string as the default system id of the archive file.
@@ -124,6 +130,7 @@ public class ArchiveFile implements IArchiveFile
 				ArchiveFileV3 fs = new ArchiveFileV3( archiveName, rf, "r" );
 				upgradeSystemId( fs );
 				af = fs;
+				concurrentRead = true;
 			}
 			else if ( isZipFile( magicTag ) )
 			{
@@ -131,6 +138,7 @@ public class ArchiveFile implements IArchiveFile
 				unzip( archiveName, tmpFileName );
 				ArchiveFileV3 fs = new ArchiveFileV3( tmpFileName, "r" );
 				af = fs;
+				concurrentRead = true;
 			}
 			else
 			{
@@ -362,7 +370,20 @@ public class ArchiveFile implements IArchiveFile
 		}
 	}
 
-	synchronized public void refresh( ) throws IOException
+	public void refresh( ) throws IOException
+	{
+		if ( concurrentRead )
+		{
+			refresh( af );
+			return;
+		}
+		synchronized ( this )
+		{
+			refresh( af );
+		}
+	}
+
+	private void refresh( IArchiveFile af ) throws IOException
 	{
 		if ( isArchiveFileAvailable( af ) )
 		{
@@ -375,7 +396,19 @@ public class ArchiveFile implements IArchiveFile
 		}
 	}
 
-	synchronized public boolean exists( String name )
+	public boolean exists( String name )
+	{
+		if ( concurrentRead )
+		{
+			return exists( af, name );
+		}
+		synchronized ( this )
+		{
+			return exists( af, name );
+		}
+	}
+
+	private boolean exists( IArchiveFile af, String name )
 	{
 		if ( isArchiveFileAvailable( af ) )
 		{
@@ -384,7 +417,19 @@ public class ArchiveFile implements IArchiveFile
 		return false;
 	}
 
-	synchronized public ArchiveEntry openEntry( String name )
+	public ArchiveEntry openEntry( String name ) throws IOException
+	{
+		if ( concurrentRead )
+		{
+			return openEntry( af, name );
+		}
+		synchronized ( this )
+		{
+			return openEntry( af, name );
+		}
+	}
+
+	private ArchiveEntry openEntry( IArchiveFile af, String name )
 			throws IOException
 	{
 		if ( isArchiveFileAvailable( af ) )
@@ -398,7 +443,19 @@ public class ArchiveFile implements IArchiveFile
 		}
 	}
 
-	synchronized public List<String> listEntries( String namePattern )
+	public List<String> listEntries( String namePattern )
+	{
+		if ( concurrentRead )
+		{
+			return listEntries( af, namePattern );
+		}
+		synchronized ( this )
+		{
+			return listEntries( af, namePattern );
+		}
+	}
+
+	private List<String> listEntries( IArchiveFile af, String namePattern )
 	{
 		if ( isArchiveFileAvailable( af ) )
 		{
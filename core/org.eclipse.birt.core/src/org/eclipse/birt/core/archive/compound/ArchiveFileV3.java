@@ -15,8 +15,10 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.birt.core.archive.compound.v3.Ext2Entry;
 import org.eclipse.birt.core.archive.compound.v3.Ext2File;
@@ -29,7 +31,7 @@ public class ArchiveFileV3 implements IArchiveFile
 	public static final String PROPERTY_DEPEND_ID = "archive.depened-id";
 
 	protected Ext2FileSystem fs;
-	protected HashSet<ArchiveEntryV3> openedEntries = new HashSet<ArchiveEntryV3>( );
+	protected Set<ArchiveEntryV3> openedEntries = Collections.newSetFromMap( new ConcurrentHashMap<ArchiveEntryV3, Boolean>( ) );
 
 	public ArchiveFileV3( String fileName, String mode ) throws IOException
 
@@ -103,7 +105,7 @@ public class ArchiveFileV3 implements IArchiveFile
 		return fs.getProperty( PROPERTY_DEPEND_ID );
 	}
 
-	synchronized public ArchiveEntry openEntry( String name ) throws IOException
+	public ArchiveEntry openEntry( String name ) throws IOException
 	{
 		if ( fs.existFile( name ) )
 		{
@@ -160,7 +162,7 @@ public class ArchiveFileV3 implements IArchiveFile
 		throw new FileNotFoundException( name );
 	}
 
-	synchronized public void refresh( ) throws IOException
+	public void refresh( ) throws IOException
 	{
 	}
 
@@ -199,12 +201,12 @@ public class ArchiveFileV3 implements IArchiveFile
 		assert ( locker instanceof Ext2Entry );
 	}
 
-	synchronized protected void openEntry( ArchiveEntryV3 entry )
+	protected void openEntry( ArchiveEntryV3 entry )
 	{
 		openedEntries.add( entry );
 	}
 
-	synchronized protected void closeEntry( ArchiveEntryV3 entry )
+	protected void closeEntry( ArchiveEntryV3 entry )
 	{
 		openedEntries.remove( entry );
 	}
@@ -30,6 +30,9 @@ import org.eclipse.birt.core.i18n.ResourceConstants;
  * 
  * there is only one Ext2File is opened as write, so we needn't synchronize the
  * FAT node list
+ * 
+ * the entries of a read only file system read the blocks directly without the
+ * caches, using the file blocks loaded once by the file system.
  */
 public class Ext2File
 {
@@ -68,6 +71,10 @@ public class Ext2File
 	 * data block
 	 */
 	private DataBlock cachedBlock;
+	/**
+	 * the file blocks shared by the readers in read only mode
+	 */
+	private int[] blockMap;
 
 	Ext2File( Ext2FileSystem fs, int inode, boolean enableCache )
 			throws IOException
@@ -92,6 +99,11 @@ public class Ext2File
 		this.enableCache = enableCache;
 		this.cachedBlockId = -1;
 		this.cachedBlock = DataBlock.READ_ONLY_BLOCK;
+		if ( entry != null && fs.isReadOnly( ) )
+		{
+			this.blockMap = fs.getBlockMap( node );
+			this.enableCache = false;
+		}
 	}
 
 	public Ext2Entry getEntry( )
@@ -211,11 +223,17 @@ public class Ext2File
 		int fileBlockId = getDataBlock( blockId );
 		if ( size <= blockSize )
 		{
-			fs.readBlock( fileBlockId, blockOff, buffer, off, size );
+			if ( fileBlockId != -1 )
+			{
+				fs.readBlock( fileBlockId, blockOff, buffer, off, size );
+			}
 		}
 		else
 		{
-			fs.readBlock( fileBlockId, blockOff, buffer, off, blockSize );
+			if ( fileBlockId != -1 )
+			{
+				fs.readBlock( fileBlockId, blockOff, buffer, off, blockSize );
+			}
 			off += blockSize;
 			int remainSize = size - blockSize;
 			int wholeBlocks = remainSize >> BLOCK_SIZE_BITS;
@@ -436,6 +454,10 @@ public class Ext2File
 
 	private int getDataBlock( int blockId ) throws IOException
 	{
+		if ( blockMap != null )
+		{
+			return blockId < blockMap.length ? blockMap[blockId] : -1;
+		}
 		int fileBlockId = blocks.getFileBlock( blockId );
 		if ( fileBlockId != -1 )
 		{
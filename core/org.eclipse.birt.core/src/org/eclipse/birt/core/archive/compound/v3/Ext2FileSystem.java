@@ -15,14 +15,21 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.birt.core.archive.cache.CacheListener;
 import org.eclipse.birt.core.archive.cache.Cacheable;
@@ -36,6 +43,9 @@ import org.eclipse.birt.core.i18n.ResourceConstants;
  * 
  * 
  * 
+ * In read only mode the tables are loaded once when the file system is opened
+ * and never changed, so the entries are opened and the blocks are read
+ * concurrently without locking the file system.
  */
 public class Ext2FileSystem
 {
@@ -69,7 +79,17 @@ public class Ext2FileSystem
 	/**
 	 * opened streams
 	 */
-	private final HashSet<Ext2File> openedFiles = new HashSet<Ext2File>( );
+	private final Set<Ext2File> openedFiles = Collections.newSetFromMap( new ConcurrentHashMap<Ext2File, Boolean>( ) );
+
+	/**
+	 * the channel used to read the blocks in read only mode
+	 */
+	private volatile FileChannel readChannel;
+
+	/**
+	 * the file blocks of each node loaded in read only mode
+	 */
+	private final ConcurrentHashMap<Integer, int[]> blockMaps = new ConcurrentHashMap<Integer, int[]>( );
 
 	/**
 	 * mode
@@ -216,9 +236,11 @@ public class Ext2FileSystem
 			nodeTable.clear( );
 			cacheManager.clear( );
 			freeTable.clear( );
+			blockMaps.clear( );
 		}
 		finally
 		{
+			readChannel = null;
 			if ( rf != null )
 			{
 				rf.close( );
@@ -283,12 +305,12 @@ public class Ext2FileSystem
 		return removeOnExit;
 	}
 
-	synchronized void registerOpenedFile( Ext2File file )
+	void registerOpenedFile( Ext2File file )
 	{
 		openedFiles.add( file );
 	}
 
-	synchronized void unregisterOpenedFile( Ext2File file )
+	void unregisterOpenedFile( Ext2File file )
 	{
 		openedFiles.remove( file );
 	}
@@ -323,35 +345,63 @@ public class Ext2FileSystem
 		return file;
 	}
 
-	synchronized public Ext2File openFile( String name ) throws IOException
+	public Ext2File openFile( String name ) throws IOException
 	{
-		Ext2Entry entry = entryTable.getEntry( name );
-		if ( entry != null )
+		if ( readOnly )
 		{
-			Ext2Node node = nodeTable.getNode( entry.inode );
-			return new Ext2File( this, entry, node );
+			Ext2Entry entry = entryTable.getEntry( name );
+			if ( entry != null )
+			{
+				return new Ext2File( this, entry, nodeTable.getNode( entry.inode ) );
+			}
+			throw new FileNotFoundException( name );
 		}
-
-		if ( !readOnly )
+		synchronized ( this )
 		{
+			Ext2Entry entry = entryTable.getEntry( name );
+			if ( entry != null )
+			{
+				Ext2Node node = nodeTable.getNode( entry.inode );
+				return new Ext2File( this, entry, node );
+			}
 			return createFile( name );
 		}
-		throw new FileNotFoundException( name );
 	}
 
-	synchronized public boolean existFile( String name )
+	public boolean existFile( String name )
 	{
-		return entryTable.getEntry( name ) != null;
+		if ( readOnly )
+		{
+			return entryTable.getEntry( name ) != null;
+		}
+		synchronized ( this )
+		{
+			return entryTable.getEntry( name ) != null;
+		}
 	}
 
-	synchronized public Iterable<String> listAllFiles( )
+	public Iterable<String> listAllFiles( )
 	{
-		return entryTable.listAllEntries( );
+		if ( readOnly )
+		{
+			return entryTable.listAllEntries( );
+		}
+		synchronized ( this )
+		{
+			return entryTable.listAllEntries( );
+		}
 	}
 
-	synchronized public Iterable<String> listFiles( String fromName )
+	public Iterable<String> listFiles( String fromName )
 	{
-		return entryTable.listEntries( fromName );
+		if ( readOnly )
+		{
+			return entryTable.listEntries( fromName );
+		}
+		synchronized ( this )
+		{
+			return entryTable.listEntries( fromName );
+		}
 	}
 
 	synchronized public void removeFile( String name ) throws IOException
@@ -586,8 +636,8 @@ public class Ext2FileSystem
 		readBlock( blockId, offset, buffer, offset, size );
 	}
 
-	synchronized void readBlock( int blockId, int blockOff, byte[] buffer,
-			int offset, int size ) throws IOException
+	void readBlock( int blockId, int blockOff, byte[] buffer, int offset,
+			int size ) throws IOException
 	{
 		assert buffer != null;
 		assert blockId >= 0;
@@ -596,6 +646,20 @@ public class Ext2FileSystem
 		assert offset + size <= buffer.length;
 		assert blockOff + size <= BLOCK_SIZE;
 
+		if ( readOnly )
+		{
+			readBlockConcurrently( blockId, blockOff, buffer, offset, size );
+		}
+		else
+		{
+			readBlockExclusively( blockId, blockOff, buffer, offset, size );
+		}
+	}
+
+	synchronized private void readBlockExclusively( int blockId,
+			int blockOff, byte[] buffer, int offset, int size )
+			throws IOException
+	{
 		long position = ( ( (long) blockId ) << BLOCK_SIZE_BITS ) + blockOff;
 		if ( position < length )
 		{
@@ -610,6 +674,127 @@ public class Ext2FileSystem
 
 	}
 
+	/**
+	 * read the block with the positional read of the file channel, which
+	 * doesn't change the file pointer shared by the readers.
+	 */
+	private void readBlockConcurrently( int blockId, int blockOff,
+			byte[] buffer, int offset, int size ) throws IOException
+	{
+		long position = ( ( (long) blockId ) << BLOCK_SIZE_BITS ) + blockOff;
+		if ( position >= length )
+		{
+			return;
+		}
+		long remainSize = length - position;
+		if ( remainSize < size )
+		{
+			size = (int) remainSize;
+		}
+		ByteBuffer bytes = ByteBuffer.wrap( buffer, offset, size );
+		while ( bytes.hasRemaining( ) )
+		{
+			FileChannel channel = getReadChannel( );
+			try
+			{
+				if ( channel.read( bytes, position + bytes.position( )
+						- offset ) < 0 )
+				{
+					throw new EOFException( );
+				}
+			}
+			catch ( ClosedByInterruptException ex )
+			{
+				throw ex;
+			}
+			catch ( ClosedChannelException ex )
+			{
+				// the channel is closed as another reader is interrupted,
+				// read the remain bytes with a reopened channel.
+			}
+		}
+	}
+
+	/**
+	 * get the channel to read the blocks. The channel is closed if a reading
+	 * thread is interrupted, then the file is opened again for the other
+	 * readers.
+	 */
+	private FileChannel getReadChannel( ) throws IOException
+	{
+		FileChannel channel = readChannel;
+		if ( channel != null && channel.isOpen( ) )
+		{
+			return channel;
+		}
+		synchronized ( this )
+		{
+			if ( rf == null )
+			{
+				throw new IOException(
+						CoreMessages.getString( ResourceConstants.FILE_HAS_BEEN_CLOSED ) );
+			}
+			if ( readChannel == null )
+			{
+				readChannel = rf.getChannel( );
+			}
+			else if ( !readChannel.isOpen( ) )
+			{
+				// release the descriptor of the file whose channel is closed
+				try
+				{
+					rf.close( );
+				}
+				catch ( IOException ex )
+				{
+				}
+				rf = new RandomAccessFile( fileName, "r" );
+				readChannel = rf.getChannel( );
+			}
+			return readChannel;
+		}
+	}
+
+	/**
+	 * get the file blocks of the node in read only mode. The blocks are
+	 * loaded from the FAT blocks once and shared by all the readers of the
+	 * node.
+	 * 
+	 * @param node
+	 *            the node of the file
+	 * @return the file block of each block of the node, -1 if the block is
+	 *         not allocated.
+	 * @throws IOException
+	 */
+	int[] getBlockMap( Ext2Node node ) throws IOException
+	{
+		Integer nodeId = Integer.valueOf( node.getNodeId( ) );
+		int[] blockMap = blockMaps.get( nodeId );
+		if ( blockMap == null )
+		{
+			int blockCount = (int) ( ( node.getLength( ) + BLOCK_SIZE - 1 ) >> BLOCK_SIZE_BITS );
+			blockMap = new int[blockCount];
+			FatBlockList blocks = new FatBlockList( this, node );
+			try
+			{
+				for ( int i = 0; i < blockCount; i++ )
+				{
+					blockMap[i] = blocks.getFileBlock( i );
+				}
+			}
+			finally
+			{
+				blocks.clear( );
+			}
+			int[] loadedMap = blockMaps.putIfAbsent( nodeId, blockMap );
+			if ( loadedMap != null )
+			{
+				blockMap = loadedMap;
+			}
+		}
+		return blockMap;
+	}
+
 	void writeBlock( int blockId, byte[] buffer, int offset, int size )
 			throws IOException
 	{
@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.data.engine.binding;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.birt.data.aggregation.api.IBuildInAggregation;
+import org.eclipse.birt.data.engine.api.APITestCase;
+import org.eclipse.birt.data.engine.api.DataEngine;
+import org.eclipse.birt.data.engine.api.IQueryResults;
+import org.eclipse.birt.data.engine.api.IResultIterator;
+import org.eclipse.birt.data.engine.api.querydefn.Binding;
+import org.eclipse.birt.data.engine.api.querydefn.FilterDefinition;
+import org.eclipse.birt.data.engine.api.querydefn.GroupDefinition;
+import org.eclipse.birt.data.engine.api.querydefn.QueryDefinition;
+import org.eclipse.birt.data.engine.api.querydefn.ScriptExpression;
+import org.eclipse.birt.data.engine.expression.ExpressionCompilerUtil;
+
+import testutil.ConfigText;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Compare the queries whose expressions are evaluated in Java with the same
+ * queries evaluated by Rhino.
+ */
+public class JavaExpressionQueryTest extends APITestCase
+{
+
+	private static final String[] NAMES = {
+			"COUNTRY",
+			"AMOUNT",
+			"PRODUCT",
+			"LABEL",
+			"BIG",
+			"CHOICE",
+			"NULL_SUM",
+			"TOTAL",
+			"GROUP_TOTAL"
+	};
+
+	private static final String[] EXPRESSIONS = {
+			"dataSetRow.COUNTRY",
+			"dataSetRow.AMOUNT",
+			"dataSetRow.AMOUNT * 2 + 1",
+			"dataSetRow.COUNTRY + \"-\" + dataSetRow.CITY + dataSetRow.AMOUNT",
+			"dataSetRow.AMOUNT >= 1000 && dataSetRow.CITY != \"Tokyo\"",
+			"dataSetRow.AMOUNT > 100 ? dataSetRow.CITY : \"small\"",
+			"dataSetRow.NULL_COLUMN + dataSetRow.AMOUNT",
+			null,
+			null
+	};
+
+	/*
+	 * @see org.eclipse.birt.data.engine.api.APITestCase#getDataSourceInfo()
+	 */
+	protected DataSourceInfo getDataSourceInfo( )
+	{
+		return new DataSourceInfo( ConfigText.getString( "Api.TestData.TableName" ),
+				ConfigText.getString( "Api.TestData.TableSQL" ),
+				ConfigText.getString( "Api.TestData.TestDataFileName" ) );
+	}
+
+	/**
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testHint( ) throws Exception
+	{
+		assertFalse( ExpressionCompilerUtil.isJavaExpressionEnabled( null ) );
+		Map appContext = new HashMap( );
+		assertFalse( ExpressionCompilerUtil.isJavaExpressionEnabled( appContext ) );
+		appContext.put( DataEngine.JAVA_EXPRESSION_EVALUATION, " true " );
+		assertTrue( ExpressionCompilerUtil.isJavaExpressionEnabled( appContext ) );
+		appContext.put( DataEngine.JAVA_EXPRESSION_EVALUATION, Boolean.FALSE );
+		assertFalse( ExpressionCompilerUtil.isJavaExpressionEnabled( appContext ) );
+	}
+
+	/**
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testSameResults( ) throws Exception
+	{
+		Map appContext = new HashMap( );
+		List<String> expected = getRows( appContext );
+		assertTrue( expected.size( ) > 1 );
+
+		appContext.put( DataEngine.JAVA_EXPRESSION_EVALUATION, "true" );
+		assertEquals( expected, getRows( appContext ) );
+	}
+
+	/**
+	 *
+	 * @return
+	 * @throws Exception
+	 */
+	private QueryDefinition newQuery( ) throws Exception
+	{
+		QueryDefinition query = newReportQuery( );
+		for ( int i = 0; i < NAMES.length; i++ )
+		{
+			if ( EXPRESSIONS[i] != null )
+				query.addBinding( new Binding( NAMES[i],
+						new ScriptExpression( EXPRESSIONS[i] ) ) );
+		}
+
+		GroupDefinition group = new GroupDefinition( "group" );
+		group.setKeyExpression( "row.COUNTRY" );
+		query.addGroup( group );
+
+		Binding total = new Binding( "TOTAL",
+				new ScriptExpression( "dataSetRow.AMOUNT * 2 + 1" ) );
+		total.setAggrFunction( IBuildInAggregation.TOTAL_SUM_FUNC );
+		query.addBinding( total );
+
+		Binding groupTotal = new Binding( "GROUP_TOTAL",
+				new ScriptExpression( "row.AMOUNT - 10" ) );
+		groupTotal.setAggrFunction( IBuildInAggregation.TOTAL_SUM_FUNC );
+		groupTotal.addAggregateOn( "group" );
+		query.addBinding( groupTotal );
+
+		query.addFilter( new FilterDefinition( new ScriptExpression( "dataSetRow.AMOUNT > 10 || dataSetRow.COUNTRY == \"US\"" ) ) );
+		return query;
+	}
+
+	/**
+	 *
+	 * @param appContext
+	 * @return
+	 * @throws Exception
+	 */
+	private List<String> getRows( Map appContext ) throws Exception
+	{
+		IQueryResults qr = dataEngine.prepare( newQuery( ), appContext )
+				.execute( null );
+		IResultIterator ri = qr.getResultIterator( );
+		List<String> rows = new ArrayList<String>( );
+		while ( ri.next( ) )
+		{
+			StringBuffer row = new StringBuffer( );
+			for ( int i = 0; i < NAMES.length; i++ )
+			{
+				row.append( ri.getValue( NAMES[i] ) ).append( ',' );
+			}
+			rows.add( row.toString( ) );
+		}
+		ri.close( );
+		qr.close( );
+		return rows;
+	}
+}
@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright (c) 2004 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.data.engine.executor;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.birt.data.engine.api.DataEngine;
+import org.eclipse.birt.data.engine.core.DataException;
+import org.eclipse.birt.data.engine.impl.DataSetCacheUtil;
+import org.eclipse.birt.data.engine.odi.IResultClass;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test the size bound, the eviction and the statistics of DataSetCacheStore.
+ */
+public class DataSetCacheStoreTest
+{
+	private DataSetCacheStore store;
+	private IResultClass resultClass;
+
+	@Before
+	public void dataSetCacheStoreSetUp( ) throws Exception
+	{
+		store = new DataSetCacheStore( );
+		List columns = new ArrayList( );
+		columns.add( new ResultFieldMetadata( 1,
+				"ID",
+				"ID",
+				Integer.class,
+				null,
+				false ) );
+		resultClass = new ResultClass( columns );
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEviction( ) throws Exception
+	{
+		DataSourceAndDataSet key1 = newKey( "1" );
+		DataSourceAndDataSet key2 = newKey( "2" );
+		DataSourceAndDataSet key3 = newKey( "3" );
+
+		store.put( key1, newCacheObject( 100 ) );
+		long size = store.getTotalSize( );
+		assertTrue( size > 0 );
+		store.put( key2, newCacheObject( 100 ) );
+		assertEquals( size * 2, store.getTotalSize( ) );
+
+		store.setSizeLimit( size * 2 );
+		assertTrue( store.evict( new HashSet<DataSourceAndDataSet>( ) )
+				.isEmpty( ) );
+
+		// key1 becomes the most recently used one
+		store.get( key1 );
+		store.put( key3, newCacheObject( 100 ) );
+		Set<DataSourceAndDataSet> locked = new HashSet<DataSourceAndDataSet>( );
+		locked.add( key3 );
+		assertEquals( 1, store.evict( locked ).size( ) );
+
+		assertTrue( store.containsKey( key1 ) );
+		assertFalse( store.containsKey( key2 ) );
+		assertTrue( store.containsKey( key3 ) );
+		assertEquals( size * 2, store.getTotalSize( ) );
+		assertEquals( 1, store.getEvictionCount( ) );
+	}
+
+	@Test
+	public void testLockedCacheNotEvicted( ) throws Exception
+	{
+		DataSourceAndDataSet key1 = newKey( "1" );
+		DataSourceAndDataSet key2 = newKey( "2" );
+		store.put( key1, newCacheObject( 100 ) );
+		store.put( key2, newCacheObject( 100 ) );
+		store.setSizeLimit( 1 );
+
+		Set<DataSourceAndDataSet> locked = new HashSet<DataSourceAndDataSet>( );
+		locked.add( key1 );
+		assertEquals( 1, store.evict( locked ).size( ) );
+		assertTrue( store.containsKey( key1 ) );
+		assertFalse( store.containsKey( key2 ) );
+	}
+
+	@Test
+	public void testTimeToLive( ) throws Exception
+	{
+		DataSourceAndDataSet key1 = newKey( "1" );
+		DataSourceAndDataSet key2 = newKey( "2" );
+		store.put( key1, newCacheObject( 10 ) );
+		store.put( key2, newCacheObject( 10 ) );
+		store.setTimeToLive( key1, 1 );
+		store.setTimeToLive( key2, 0 );
+		Thread.sleep( 20 );
+		assertTrue( store.isExpired( key1 ) );
+		assertFalse( store.isExpired( key2 ) );
+	}
+
+	@Test
+	public void testStatistics( ) throws Exception
+	{
+		store.recordLookup( true );
+		store.recordLookup( false );
+		store.recordLookup( false );
+		store.recordExpiration( );
+		assertEquals( 1, store.getHitCount( ) );
+		assertEquals( 2, store.getMissCount( ) );
+		assertEquals( 1, store.getExpirationCount( ) );
+
+		DataSetCacheStatistics statistics = new DataSetCacheStatistics( store );
+		statistics.setSizeLimit( 10 );
+		assertEquals( 10 * 1024 * 1024, store.getSizeLimit( ) );
+		statistics.resetStatistics( );
+		assertEquals( 0, statistics.getHitCount( ) );
+		assertEquals( 0, statistics.getMissCount( ) );
+	}
+
+	@Test
+	public void testSizeLimitProperty( ) throws Exception
+	{
+		String key = DataEngine.DATA_SET_CACHE_SIZE_LIMIT;
+		try
+		{
+			System.setProperty( key, "5" );
+			assertEquals( 5 * 1024 * 1024,
+					DataSetCacheUtil.getJVMDataSetCacheSizeLimit( ) );
+			System.setProperty( key, "abc" );
+			assertEquals( 0, DataSetCacheUtil.getJVMDataSetCacheSizeLimit( ) );
+		}
+		finally
+		{
+			System.clearProperty( key );
+		}
+		assertEquals( 0, DataSetCacheUtil.getJVMDataSetCacheSizeLimit( ) );
+	}
+
+	@Test
+	public void testRemoveAndClear( ) throws Exception
+	{
+		DataSourceAndDataSet key1 = newKey( "1" );
+		store.put( key1, newCacheObject( 10 ) );
+		store.put( newKey( "2" ), newCacheObject( 10 ) );
+		store.remove( key1 );
+		assertEquals( 1, store.size( ) );
+		assertTrue( store.getTotalSize( ) > 0 );
+		store.clear( );
+		assertEquals( 0, store.getTotalSize( ) );
+	}
+
+	/**
+	 * 
+	 * @param cacheScopeID
+	 * @return
+	 */
+	private DataSourceAndDataSet newKey( String cacheScopeID )
+	{
+		return DataSourceAndDataSet.newInstance( null,
+				null,
+				null,
+				cacheScopeID,
+				true );
+	}
+
+	/**
+	 * 
+	 * @param rowCount
+	 * @return
+	 * @throws DataException
+	 */
+	private MemoryDataSetCacheObject newCacheObject( int rowCount )
+			throws DataException
+	{
+		MemoryDataSetCacheObject cacheObject = new MemoryDataSetCacheObject( Integer.MAX_VALUE );
+		cacheObject.setResultClass( resultClass );
+		for ( int i = 0; i < rowCount; i++ )
+		{
+			cacheObject.populateResult( new ResultObject( resultClass,
+					new Object[]{
+						Integer.valueOf( i )
+					} ) );
+		}
+		return cacheObject;
+	}
+}
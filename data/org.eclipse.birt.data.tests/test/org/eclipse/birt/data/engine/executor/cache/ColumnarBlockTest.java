@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2005 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.data.engine.executor.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+
+import org.eclipse.birt.data.engine.core.DataException;
+import org.eclipse.birt.data.engine.executor.ResultClass;
+import org.eclipse.birt.data.engine.executor.ResultFieldMetadata;
+import org.eclipse.birt.data.engine.executor.ResultObject;
+import org.eclipse.birt.data.engine.odi.IResultObject;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test the columnar block format of disk cache files
+ */
+public class ColumnarBlockTest
+{
+	private static final int ROW_COUNT = 500;
+
+	private ResultClass resultClass;
+	private IResultObject[] rows;
+
+	@Before
+	public void columnarBlockSetUp( ) throws DataException
+	{
+		resultClass = getResultClass( );
+		rows = new IResultObject[ROW_COUNT];
+		for ( int i = 0; i < ROW_COUNT; i++ )
+		{
+			Object[] fields = new Object[]{
+					i % 7 == 0 ? null : Integer.valueOf( i ),
+					i % 11 == 0 ? null : new Double( i * 1.5 ),
+					new BigDecimal( i + ".25" ),
+					i % 5 == 0 ? null : new Date( 1000000L * i ),
+					new Timestamp( 2000000L * i ),
+					i % 13 == 0 ? null : Boolean.valueOf( i % 2 == 0 ),
+					i % 3 == 0 ? null : "country" + ( i % 4 ),
+					"name" + i
+			};
+			rows[i] = new ResultObject( resultClass, fields );
+		}
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public void testUncompressedBlock( ) throws Exception
+	{
+		checkRoundTrip( false );
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public void testCompressedBlock( ) throws Exception
+	{
+		checkRoundTrip( true );
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public void testMultipleBlocks( ) throws Exception
+	{
+		ResultObjectUtil util = ResultObjectUtil.newInstance( resultClass, null );
+		util.enableColumnarBlock( true );
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream( );
+		util.writeBlock( baos, rows, 10 );
+		util.writeBlock( baos, rows, ROW_COUNT );
+
+		ByteArrayInputStream bais = new ByteArrayInputStream( baos.toByteArray( ) );
+		assertEquals( 10, util.readBlock( bais, null ).length );
+		assertRowsEqual( util.readBlock( bais, null ) );
+	}
+
+	/**
+	 * @param compress
+	 * @throws Exception
+	 */
+	private void checkRoundTrip( boolean compress ) throws Exception
+	{
+		ResultObjectUtil util = ResultObjectUtil.newInstance( resultClass, null );
+		util.enableColumnarBlock( compress );
+		assertTrue( util.isColumnarBlock( ) );
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream( );
+		util.writeBlock( baos, rows, ROW_COUNT );
+
+		assertRowsEqual( util.readBlock( new ByteArrayInputStream( baos.toByteArray( ) ),
+				null ) );
+	}
+
+	/**
+	 * @param result
+	 * @throws DataException
+	 */
+	private void assertRowsEqual( IResultObject[] result ) throws DataException
+	{
+		assertEquals( ROW_COUNT, result.length );
+		for ( int i = 0; i < ROW_COUNT; i++ )
+		{
+			for ( int j = 1; j <= resultClass.getFieldCount( ); j++ )
+			{
+				assertEquals( rows[i].getFieldValue( j ),
+						result[i].getFieldValue( j ) );
+			}
+		}
+	}
+
+	/**
+	 * @return
+	 * @throws DataException
+	 */
+	private ResultClass getResultClass( ) throws DataException
+	{
+		Class[] types = new Class[]{
+				Integer.class,
+				Double.class,
+				BigDecimal.class,
+				Date.class,
+				Timestamp.class,
+				Boolean.class,
+				String.class,
+				String.class
+		};
+		ArrayList columnList = new ArrayList( );
+		for ( int i = 0; i < types.length; i++ )
+		{
+			columnList.add( new ResultFieldMetadata( i + 1,
+					"col" + i,
+					"col" + i,
+					types[i],
+					types[i].getName( ),
+					false ) );
+		}
+		return new ResultClass( columnList );
+	}
+}
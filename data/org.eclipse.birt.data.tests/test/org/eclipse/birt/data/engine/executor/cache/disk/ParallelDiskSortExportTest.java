@@ -0,0 +1,340 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2005 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.data.engine.executor.cache.disk;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.birt.core.archive.IDocArchiveReader;
+import org.eclipse.birt.core.archive.IDocArchiveWriter;
+import org.eclipse.birt.data.engine.api.DataEngine;
+import org.eclipse.birt.data.engine.api.DataEngineContext;
+import org.eclipse.birt.data.engine.core.DataException;
+import org.eclipse.birt.data.engine.executor.ResultClass;
+import org.eclipse.birt.data.engine.executor.ResultFieldMetadata;
+import org.eclipse.birt.data.engine.executor.ResultObject;
+import org.eclipse.birt.data.engine.executor.cache.IRowResultSet;
+import org.eclipse.birt.data.engine.executor.cache.ResultObjectUtil;
+import org.eclipse.birt.data.engine.executor.cache.RowComparator;
+import org.eclipse.birt.data.engine.executor.cache.SortSpec;
+import org.eclipse.birt.data.engine.expression.CompareHints;
+import org.eclipse.birt.data.engine.impl.DataEngineImpl;
+import org.eclipse.birt.data.engine.impl.DataEngineSession;
+import org.eclipse.birt.data.engine.odi.IResultClass;
+import org.eclipse.birt.data.engine.odi.IResultObject;
+
+import testutil.BaseTestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test the parallel generation of the sorted runs and their k-way merge.
+ */
+public class ParallelDiskSortExportTest extends BaseTestCase
+{
+	// with more than 500 runs, the runs are merged level by level
+	private static final int ROW_COUNT = 3000;
+	private static final int KEY_COUNT = 97;
+
+	private DataEngine dataEngine;
+	private DataEngineSession session;
+	private ResultClass resultClass;
+	private ResultObjectUtil resultObjectUtil;
+	private RowComparator comparator;
+	private File tempDir;
+
+	@Before
+	public void parallelSortSetUp( ) throws Exception
+	{
+		DataEngineContext context = DataEngineContext.newInstance( DataEngineContext.DIRECT_PRESENTATION,
+				this.scriptContext,
+				(IDocArchiveReader) null,
+				(IDocArchiveWriter) null,
+				(ClassLoader) null );
+		context.setTmpdir( getTempDir( ) );
+		dataEngine = DataEngine.newDataEngine( context );
+		session = ( (DataEngineImpl) dataEngine ).getSession( );
+
+		ArrayList columnList = new ArrayList( );
+		columnList.add( new ResultFieldMetadata( 1,
+				"KEY",
+				"KEY",
+				Integer.class,
+				Integer.class.getName( ),
+				false ) );
+		columnList.add( new ResultFieldMetadata( 2,
+				"SEQ",
+				"SEQ",
+				Integer.class,
+				Integer.class.getName( ),
+				false ) );
+		resultClass = new ResultClass( columnList );
+		resultObjectUtil = ResultObjectUtil.newInstance( resultClass, session );
+		comparator = new RowComparator( new SortSpec( new int[]{
+			1
+		}, new String[]{
+			"KEY"
+		}, new int[]{
+			SortSpec.SORT_ASC
+		}, new CompareHints[]{
+			null
+		} ), null );
+
+		tempDir = new File( getTempDir( ), "ParallelDiskSortExportTest" );
+		tempDir.mkdirs( );
+	}
+
+	@After
+	public void parallelSortTearDown( ) throws Exception
+	{
+		dataEngine.shutdown( );
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public void testMergeSortedSources( ) throws Exception
+	{
+		IRowIterator[] sources = new IRowIterator[]{
+				new ArrayRowIterator( newRows( new int[]{
+						1, 3, 3, 7
+				}, 0 ) ),
+				new ArrayRowIterator( new IResultObject[0] ),
+				new ArrayRowIterator( newRows( new int[]{
+						0, 3, 8
+				}, 10 ) ),
+				new ArrayRowIterator( newRows( new int[]{
+						2, 3
+				}, 20 ) )
+		};
+		LoserTreeRowIterator merged = new LoserTreeRowIterator( sources,
+				comparator );
+		// rows with equal keys are returned in the order of their sources
+		assertEquals( "0/10,1/0,2/20,3/1,3/2,3/11,3/21,7/3,8/12",
+				toString( merged ) );
+
+		merged.reset( );
+		assertEquals( "0/10,1/0,2/20,3/1,3/2,3/11,3/21,7/3,8/12",
+				toString( merged ) );
+		merged.close( );
+
+		assertNull( new LoserTreeRowIterator( new IRowIterator[0], comparator ).fetch( ) );
+		assertEquals( "1/0,3/1",
+				toString( new LoserTreeRowIterator( new IRowIterator[]{
+					new ArrayRowIterator( newRows( new int[]{
+							1, 3
+					}, 0 ) )
+				}, comparator ) ) );
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public void testParallelSort( ) throws Exception
+	{
+		DiskDataExport export = newExport( );
+		RowResultSet rs = new RowResultSet( ROW_COUNT, false );
+		export.exportStartDataToDisk( new IResultObject[]{
+			rs.next( )
+		} );
+		assertEquals( ROW_COUNT - 1, export.exportRestDataToDisk( rs.next( ),
+				rs,
+				0 ) );
+
+		IRowIterator rows = export.getRowIterator( );
+		int count = 0;
+		int lastKey = -1;
+		int lastSeq = -1;
+		IResultObject row;
+		while ( ( row = rows.fetch( ) ) != null )
+		{
+			int key = ( (Integer) row.getFieldValue( 1 ) ).intValue( );
+			int seq = ( (Integer) row.getFieldValue( 2 ) ).intValue( );
+			assertTrue( key >= lastKey );
+			// the sort is stable
+			if ( key == lastKey )
+				assertTrue( seq > lastSeq );
+			lastKey = key;
+			lastSeq = seq;
+			count++;
+		}
+		assertEquals( ROW_COUNT, count );
+		rows.close( );
+		export.close( );
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public void testStopDuringMerge( ) throws Exception
+	{
+		DiskDataExport export = newExport( );
+		// the query is stopped once all the runs are written
+		RowResultSet rs = new RowResultSet( ROW_COUNT, true );
+		export.exportStartDataToDisk( new IResultObject[]{
+			rs.next( )
+		} );
+		export.exportRestDataToDisk( rs.next( ), rs, 0 );
+		assertNull( export.getRowIterator( ).fetch( ) );
+
+		// the runs which are not merged are deleted
+		assertEquals( 0, countFiles( tempDir ) );
+		export.close( );
+	}
+
+	/**
+	 * @return
+	 */
+	private DiskDataExport newExport( )
+	{
+		Map infoMap = new HashMap( );
+		infoMap.put( "tempDir", tempDir.getPath( ) );
+		infoMap.put( "dataCountOfUnit", "12" );
+		infoMap.put( "sortParallelism", "3" );
+		return DiskDataExport.newInstance( infoMap,
+				comparator,
+				resultClass,
+				resultObjectUtil,
+				session );
+	}
+
+	/**
+	 * @param keys
+	 * @param firstSeq
+	 * @return
+	 */
+	private IResultObject[] newRows( int[] keys, int firstSeq )
+	{
+		IResultObject[] rows = new IResultObject[keys.length];
+		for ( int i = 0; i < keys.length; i++ )
+		{
+			rows[i] = new ResultObject( resultClass, new Object[]{
+					Integer.valueOf( keys[i] ), Integer.valueOf( firstSeq + i )
+			} );
+		}
+		return rows;
+	}
+
+	/**
+	 * @param rows
+	 * @return
+	 * @throws Exception
+	 */
+	private static String toString( IRowIterator rows ) throws Exception
+	{
+		StringBuffer buffer = new StringBuffer( );
+		IResultObject row;
+		while ( ( row = rows.fetch( ) ) != null )
+		{
+			if ( buffer.length( ) > 0 )
+				buffer.append( ',' );
+			buffer.append( row.getFieldValue( 1 ) )
+					.append( '/' )
+					.append( row.getFieldValue( 2 ) );
+		}
+		return buffer.toString( );
+	}
+
+	/**
+	 * @param folder
+	 * @return
+	 */
+	private static int countFiles( File folder )
+	{
+		int count = 0;
+		File[] files = folder.listFiles( );
+		if ( files != null )
+		{
+			for ( int i = 0; i < files.length; i++ )
+			{
+				count += files[i].isDirectory( ) ? countFiles( files[i] ) : 1;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * An iterator on the rows in memory.
+	 */
+	private static class ArrayRowIterator implements IRowIterator
+	{
+		private IResultObject[] rows;
+		private int pos;
+
+		ArrayRowIterator( IResultObject[] rows )
+		{
+			this.rows = rows;
+		}
+
+		public void reset( )
+		{
+			pos = 0;
+		}
+
+		public IResultObject fetch( )
+		{
+			return pos < rows.length ? rows[pos++] : null;
+		}
+
+		public void close( )
+		{
+		}
+	}
+
+	/**
+	 * A result set returns the rows with unordered keys.
+	 */
+	private class RowResultSet implements IRowResultSet
+	{
+		private int rowCount;
+		private boolean stopAtEnd;
+		private int index;
+
+		RowResultSet( int rowCount, boolean stopAtEnd )
+		{
+			this.rowCount = rowCount;
+			this.stopAtEnd = stopAtEnd;
+		}
+
+		public IResultClass getMetaData( )
+		{
+			return resultClass;
+		}
+
+		public IResultObject next( ) throws DataException
+		{
+			if ( index == rowCount )
+			{
+				if ( stopAtEnd )
+					session.getStopSign( ).stop( );
+				return null;
+			}
+			int key = ( index * 31 ) % KEY_COUNT;
+			return new ResultObject( resultClass, new Object[]{
+					Integer.valueOf( key ), Integer.valueOf( index++ )
+			} );
+		}
+
+		public int getIndex( )
+		{
+			return index;
+		}
+	}
+}
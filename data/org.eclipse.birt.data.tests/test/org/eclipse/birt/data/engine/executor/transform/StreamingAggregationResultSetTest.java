@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright (c) 2004 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.data.engine.executor.transform;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.birt.data.aggregation.api.IBuildInAggregation;
+import org.eclipse.birt.data.engine.api.APITestCase;
+import org.eclipse.birt.data.engine.api.IGroupDefinition;
+import org.eclipse.birt.data.engine.api.IResultIterator;
+import org.eclipse.birt.data.engine.api.querydefn.Binding;
+import org.eclipse.birt.data.engine.api.querydefn.FilterDefinition;
+import org.eclipse.birt.data.engine.api.querydefn.GroupDefinition;
+import org.eclipse.birt.data.engine.api.querydefn.QueryDefinition;
+import org.eclipse.birt.data.engine.api.querydefn.ScriptExpression;
+import org.eclipse.birt.data.engine.executor.QueryExecutionStrategyUtil;
+import org.eclipse.birt.data.engine.impl.DataEngineImpl;
+
+import testutil.ConfigText;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Compare the summary queries executed by StreamingAggregationResultSet with
+ * the same queries executed by the sort-based grouping.
+ */
+public class StreamingAggregationResultSetTest extends APITestCase
+{
+
+	/*
+	 * @see org.eclipse.birt.data.engine.api.APITestCase#getDataSourceInfo()
+	 */
+	protected DataSourceInfo getDataSourceInfo( )
+	{
+		return new DataSourceInfo( ConfigText.getString( "Api.TestData.TableName" ),
+				ConfigText.getString( "Api.TestData.TableSQL" ),
+				ConfigText.getString( "Api.TestData.TestDataFileName" ) );
+	}
+
+	/**
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGroupsAscending( ) throws Exception
+	{
+		compareWithSortBasedGrouping( IGroupDefinition.SORT_ASC,
+				IGroupDefinition.SORT_ASC );
+	}
+
+	/**
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGroupsDescending( ) throws Exception
+	{
+		compareWithSortBasedGrouping( IGroupDefinition.SORT_DESC,
+				IGroupDefinition.SORT_ASC );
+		compareWithSortBasedGrouping( IGroupDefinition.SORT_ASC,
+				IGroupDefinition.SORT_DESC );
+	}
+
+	/**
+	 *
+	 * @param countrySort
+	 * @param citySort
+	 * @throws Exception
+	 */
+	private void compareWithSortBasedGrouping( int countrySort, int citySort )
+			throws Exception
+	{
+		QueryDefinition streaming = newSummaryQuery( countrySort, citySort );
+		assertTrue( isStreamingAggregation( streaming ) );
+
+		// a group filter, which keeps all group instances, makes the query
+		// use the sort-based grouping
+		QueryDefinition sorted = newSummaryQuery( countrySort, citySort );
+		( (GroupDefinition) sorted.getGroups( ).get( 1 ) ).addFilter( new FilterDefinition( new ScriptExpression( "true" ) ) );
+		assertFalse( isStreamingAggregation( sorted ) );
+
+		List<String> expected = getRows( sorted );
+		assertTrue( expected.size( ) > 1 );
+		assertEquals( expected, getRows( streaming ) );
+	}
+
+	/**
+	 *
+	 * @param query
+	 * @return
+	 * @throws Exception
+	 */
+	private boolean isStreamingAggregation( QueryDefinition query )
+			throws Exception
+	{
+		DataEngineImpl engine = (DataEngineImpl) this.dataEngine;
+		return QueryExecutionStrategyUtil.isStreamingAggregation( engine.getSession( ),
+				query,
+				engine.getDataSetDesign( query.getDataSetName( ) ) );
+	}
+
+	/**
+	 *
+	 * @param countrySort
+	 * @param citySort
+	 * @return
+	 * @throws Exception
+	 */
+	private QueryDefinition newSummaryQuery( int countrySort, int citySort )
+			throws Exception
+	{
+		QueryDefinition query = newReportQuery( );
+		query.setIsSummaryQuery( true );
+		query.addBinding( new Binding( "COUNTRY",
+				new ScriptExpression( "dataSetRow.COUNTRY" ) ) );
+		query.addBinding( new Binding( "CITY",
+				new ScriptExpression( "dataSetRow.CITY" ) ) );
+
+		Binding total = new Binding( "TOTAL",
+				new ScriptExpression( "dataSetRow.AMOUNT" ) );
+		total.setAggrFunction( IBuildInAggregation.TOTAL_SUM_FUNC );
+		total.addAggregateOn( "CITY" );
+		query.addBinding( total );
+
+		Binding count = new Binding( "COUNT" );
+		count.setAggrFunction( IBuildInAggregation.TOTAL_COUNT_FUNC );
+		count.addAggregateOn( "COUNTRY" );
+		query.addBinding( count );
+
+		GroupDefinition country = new GroupDefinition( "COUNTRY" );
+		country.setKeyExpression( "row.COUNTRY" );
+		country.setSortDirection( countrySort );
+		query.addGroup( country );
+
+		GroupDefinition city = new GroupDefinition( "CITY" );
+		city.setKeyExpression( "row.CITY" );
+		city.setSortDirection( citySort );
+		query.addGroup( city );
+		return query;
+	}
+
+	/**
+	 * Return the rows of the query with their group levels.
+	 *
+	 * @param query
+	 * @return
+	 * @throws Exception
+	 */
+	private List<String> getRows( QueryDefinition query ) throws Exception
+	{
+		List<String> rows = new ArrayList<String>( );
+		IResultIterator it = executeQuery( query );
+		try
+		{
+			while ( it.next( ) )
+			{
+				rows.add( it.getStartingGroupLevel( )
+						+ " " + it.getEndingGroupLevel( )
+						+ " " + it.getValue( "COUNTRY" )
+						+ " " + it.getValue( "CITY" )
+						+ " " + it.getValue( "TOTAL" )
+						+ " " + it.getValue( "COUNT" ) );
+			}
+		}
+		finally
+		{
+			it.close( );
+		}
+		return rows;
+	}
+}
@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.data.engine.expression;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.eclipse.birt.core.script.ScriptContext;
+import org.eclipse.birt.data.engine.executor.ResultClass;
+import org.eclipse.birt.data.engine.executor.ResultFieldMetadata;
+import org.eclipse.birt.data.engine.executor.ResultObject;
+import org.eclipse.birt.data.engine.odi.IResultObject;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test the Java form of the complex expressions is evaluated in the same way
+ * as Rhino.
+ */
+public class JavaExpressionTest {
+	private static final String[] NAMES = {
+			"a", "b", "s", "n", "d"
+	};
+
+	private ScriptContext context;
+	private ScriptableObject scope;
+	private ExpressionCompiler compiler;
+	private IResultObject resultObject;
+
+	@Before
+    public void javaExpressionSetUp() throws Exception
+	{
+		context = new ScriptContext( );
+		context.compile( "javascript", null, 0, "1==1" );
+		scope = Context.getCurrentContext( ).initStandardObjects( );
+		compiler = new ExpressionCompiler( );
+		compiler.setJavaExpressionEnabled( true );
+
+		Object[] values = {
+				Integer.valueOf( 3 ),
+				new BigDecimal( "2.50" ),
+				"x",
+				null,
+				new Date( 0 )
+		};
+		List fields = new ArrayList( );
+		Scriptable row = Context.getCurrentContext( ).newObject( scope );
+		for ( int i = 0; i < NAMES.length; i++ )
+		{
+			fields.add( new ResultFieldMetadata( i + 1,
+					NAMES[i],
+					NAMES[i],
+					values[i] == null ? String.class : values[i].getClass( ),
+					null,
+					false ) );
+			row.put( NAMES[i], row, values[i] );
+		}
+		scope.put( "row", scope, row );
+		resultObject = new ResultObject( new ResultClass( fields ), values );
+	}
+
+	@After
+    public void javaExpressionTearDown() throws Exception
+	{
+		context.close( );
+	}
+
+	private ComplexExpression compile( String expression )
+	{
+		CompiledExpression expr = compiler.compile( expression, null, context );
+		assertTrue( expr instanceof ComplexExpression );
+		return (ComplexExpression) expr;
+	}
+
+	/**
+	 * Check the expression is translated, and the Java evaluation has the
+	 * same result as the Rhino evaluation
+	 *
+	 * @param expression
+	 * @param expected
+	 * @throws Exception
+	 */
+	private void checkTranslated( String expression, Object expected )
+			throws Exception
+	{
+		ComplexExpression expr = compile( expression );
+		assertNotNull( expression, expr.getJavaExpression( ) );
+		Object value = expr.getJavaExpression( ).evaluate( resultObject,
+				1,
+				scope );
+		assertEquals( expression, expected, value );
+		Object rhinoValue = expr.evaluate( context, scope );
+		if ( rhinoValue instanceof CharSequence )
+			rhinoValue = rhinoValue.toString( );
+		assertEquals( expression, rhinoValue, value );
+	}
+	@Test
+    public void testArithmetic( ) throws Exception
+	{
+		checkTranslated( "row.a * row.b", new Double( 7.5 ) );
+		checkTranslated( "row[\"a\"] + row[\"b\"]", new Double( 5.5 ) );
+		checkTranslated( "(row.a - 1) / 4", new Double( 0.5 ) );
+		checkTranslated( "row.a % 2", new Double( 1 ) );
+		checkTranslated( "-row.a", new Double( -3 ) );
+		checkTranslated( "row.n * 2", new Double( 0 ) );
+	}
+	@Test
+    public void testString( ) throws Exception
+	{
+		checkTranslated( "row.s + row.a", "x3" );
+		checkTranslated( "row.s + row.b", "x2.5" );
+		checkTranslated( "row.s + row.n", "xnull" );
+		checkTranslated( "row.a + row.b + row.s", "5.5x" );
+	}
+	@Test
+    public void testComparison( ) throws Exception
+	{
+		checkTranslated( "row.a > 10", Boolean.FALSE );
+		checkTranslated( "row.a <= row.b * 2", Boolean.TRUE );
+		checkTranslated( "row.s >= \"w\"", Boolean.TRUE );
+		checkTranslated( "row.a == \"3\"", Boolean.TRUE );
+		checkTranslated( "row.a === \"3\"", Boolean.FALSE );
+		checkTranslated( "row.n == null", Boolean.TRUE );
+		checkTranslated( "row.d != null", Boolean.TRUE );
+	}
+	@Test
+    public void testLogical( ) throws Exception
+	{
+		checkTranslated( "row.a > 1 && row.s == \"x\"", Boolean.TRUE );
+		checkTranslated( "row.n || row.s", "x" );
+		checkTranslated( "!row.n", Boolean.TRUE );
+		checkTranslated( "row.a > 10 ? \"big\" : \"small\"", "small" );
+	}
+	@Test
+    public void testNotTranslated( ) throws Exception
+	{
+		assertNull( compile( "row.s.toUpperCase( )" ).getJavaExpression( ) );
+		assertNull( compile( "var x = row.a; x * 2" ).getJavaExpression( ) );
+		assertNull( compile( "Math.max( row.a, row.b )" ).getJavaExpression( ) );
+		assertNull( compile( "row[0] + 1" ).getJavaExpression( ) );
+	}
+	@Test
+    public void testDisabled( ) throws Exception
+	{
+		compiler = new ExpressionCompiler( );
+		assertNull( compile( "row.a * row.b" ).getJavaExpression( ) );
+		compiler.setJavaExpressionEnabled( true );
+		assertNotNull( compile( "row.a * row.b" ).getJavaExpression( ) );
+	}
+	@Test
+    public void testFallback( ) throws Exception
+	{
+		ComplexExpression expr = compile( "row.d + 1" );
+		assertNotNull( expr.getJavaExpression( ) );
+		assertSame( JavaExpression.NOT_SUPPORTED,
+				expr.getJavaExpression( ).evaluate( resultObject, 1, scope ) );
+		assertEquals( expr.evaluate( context, scope ),
+				ExprEvaluateUtil.evaluateCompiledExpression( expr,
+						resultObject,
+						1,
+						scope,
+						context ) );
+	}
+}
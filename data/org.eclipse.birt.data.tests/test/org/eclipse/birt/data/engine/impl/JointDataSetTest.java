@@ -11,6 +11,8 @@
 package org.eclipse.birt.data.engine.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.eclipse.birt.core.exception.BirtException;
@@ -56,6 +58,8 @@ public class JointDataSetTest extends APITestCase
 	//
 	private static int CARTESIAN_POPULATOR = 0;
 	private static int BINARY_TREE_POPULATOR = 1;
+	private static int HASH_JOIN_POPULATOR = 2;
+	private static int HASH_JOIN_SPILL_POPULATOR = 3;
 	private static boolean ADD_FETCH_LIMIT = false;
 	private ScriptContext cx;
 	/*
@@ -167,6 +171,106 @@ public class JointDataSetTest extends APITestCase
 		checkOutputFile( );
 	}
 	
+	/**
+	 * The rows of hash join are not ordered by the join keys, so they are
+	 * compared with the rows of the binary tree populator regardless of order.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+    public void testInnerJoin_HASH( ) throws Exception
+	{
+		assertEquals( sortRows( basicJoinTest( IJointDataSetDesign.INNER_JOIN, BINARY_TREE_POPULATOR ) ),
+				sortRows( basicJoinTest( IJointDataSetDesign.INNER_JOIN, HASH_JOIN_POPULATOR ) ) );
+	}
+	
+	/**
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+    public void testLeftOuterJoin_HASH( ) throws Exception
+	{
+		assertEquals( sortRows( basicJoinTest( IJointDataSetDesign.LEFT_OUTER_JOIN, BINARY_TREE_POPULATOR ) ),
+				sortRows( basicJoinTest( IJointDataSetDesign.LEFT_OUTER_JOIN, HASH_JOIN_POPULATOR ) ) );
+	}
+	
+	/**
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+    public void testRightOuterJoin_HASH( ) throws Exception
+	{
+		assertEquals( sortRows( basicJoinTest( IJointDataSetDesign.RIGHT_OUTER_JOIN, BINARY_TREE_POPULATOR ) ),
+				sortRows( basicJoinTest( IJointDataSetDesign.RIGHT_OUTER_JOIN, HASH_JOIN_POPULATOR ) ) );
+	}
+	
+	/**
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+    public void testFullOuterJoin_HASH( ) throws Exception
+	{
+		assertEquals( sortRows( basicJoinTest( IJointDataSetDesign.FULL_OUTER_JOIN, CARTESIAN_POPULATOR ) ),
+				sortRows( basicJoinTest( IJointDataSetDesign.FULL_OUTER_JOIN, HASH_JOIN_POPULATOR ) ) );
+	}
+	
+	/**
+	 * The hash table exceeds the memory buffer size at once, so both data sets
+	 * are partitioned to disk.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+    public void testJoin_HASH_Spill( ) throws Exception
+	{
+		assertEquals( sortRows( basicJoinTest( IJointDataSetDesign.INNER_JOIN, BINARY_TREE_POPULATOR ) ),
+				sortRows( basicJoinTest( IJointDataSetDesign.INNER_JOIN, HASH_JOIN_SPILL_POPULATOR ) ) );
+		assertEquals( sortRows( basicJoinTest( IJointDataSetDesign.FULL_OUTER_JOIN, CARTESIAN_POPULATOR ) ),
+				sortRows( basicJoinTest( IJointDataSetDesign.FULL_OUTER_JOIN, HASH_JOIN_SPILL_POPULATOR ) ) );
+	}
+	
+	/**
+	 * The join keys of dset2 are strings for even IDs and numbers for odd
+	 * IDs, which are equal to the numeric keys of dset1 but have other hash
+	 * codes.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+    public void testJoin_HASH_MixedKeyTypes( ) throws Exception
+	{
+		String rightKey = "dataSetRow.ID % 2 == 0 ? String( dataSetRow.ID ) : dataSetRow.ID";
+		String expected = basicJoinTest( IJointDataSetDesign.FULL_OUTER_JOIN,
+				CARTESIAN_POPULATOR,
+				rightKey );
+		assertEquals( sortRows( expected ),
+				sortRows( basicJoinTest( IJointDataSetDesign.FULL_OUTER_JOIN,
+						HASH_JOIN_POPULATOR,
+						rightKey ) ) );
+		assertEquals( sortRows( expected ),
+				sortRows( basicJoinTest( IJointDataSetDesign.FULL_OUTER_JOIN,
+						HASH_JOIN_SPILL_POPULATOR,
+						rightKey ) ) );
+		assertEquals( sortRows( basicJoinTest( IJointDataSetDesign.FULL_OUTER_JOIN,
+				CARTESIAN_POPULATOR ) ),
+				sortRows( expected ) );
+	}
+	
+	/**
+	 * 
+	 * @param s
+	 * @return
+	 */
+	private static List sortRows( String s )
+	{
+		List rows = new ArrayList( Arrays.asList( s.split( "\n" ) ) );
+		Collections.sort( rows );
+		return rows;
+	}
+	
 	/**
 	 * 
 	 * @throws Exception
@@ -382,6 +486,19 @@ public class JointDataSetTest extends APITestCase
 	 * @throws DataException
 	 */
 	private String basicJoinTest( int joinType, int populateType ) throws Exception, BirtException, DataException
+	{
+		return basicJoinTest( joinType, populateType, "dataSetRow.ID" );
+	}
+	
+	/**
+	 * @param joinType
+	 * @param populateType
+	 * @param rightKey
+	 *            the join key expression of dset2
+	 * @return
+	 * @throws Exception
+	 */
+	private String basicJoinTest( int joinType, int populateType, String rightKey ) throws Exception
 	{
 		OdaDataSetDesign dset1 = newDataSet( "dset1", "Select ID, CITY, STORE FROM "
 				+ this.getTestTableName( ) + " where ID > 4 and ID <> 7 and ID <> 9 order by ID asc");
@@ -419,7 +536,7 @@ public class JointDataSetTest extends APITestCase
 		JointResultMetadata meta = new JointResultMetadata( resultClass, isFromLeft, index );
 		//JoinConditionMatcher matcher = new JoinConditionMatcher( qr1.getResultIterator( ).getScope( ), qr2.getResultIterator( ).getScope( ), new JoinConditionExpression(new ScriptExpression("row.ID"),new ScriptExpression("row.ID"),0));
 		List a = new ArrayList();
-		a.add( new JoinCondition(new ScriptExpression("dataSetRow.ID"),new ScriptExpression("dataSetRow.ID"),IJoinCondition.OP_EQ) );
+		a.add( new JoinCondition(new ScriptExpression("dataSetRow.ID"),new ScriptExpression(rightKey),IJoinCondition.OP_EQ) );
 		JoinConditionMatcher matcher = new JoinConditionMatcher( ((ResultIterator)qr1.getResultIterator( )).getOdiResult( ),((ResultIterator)qr2.getResultIterator( )).getOdiResult( ),qr1.getQueryScope( ), qr2.getQueryScope( ),cx,  a);
 		IDataSetPopulator populator = null;
 		
@@ -431,6 +548,10 @@ public class JointDataSetTest extends APITestCase
 		
 		if( populateType == BINARY_TREE_POPULATOR) 
 			populator = JointDataSetPopulatorFactory.getBinaryTreeDataSetPopulator(it1, it2, meta, matcher, joinType, ((DataEngineImpl)this.dataEngine).getSession( ), fetchRowLimit);
+		else if( populateType == HASH_JOIN_POPULATOR )
+			populator = JointDataSetPopulatorFactory.getHashJoinDataSetPopulator(it1, it2, meta, matcher, joinType, ((DataEngineImpl)this.dataEngine).getSession( ), fetchRowLimit, 0);
+		else if( populateType == HASH_JOIN_SPILL_POPULATOR )
+			populator = JointDataSetPopulatorFactory.getHashJoinDataSetPopulator(it1, it2, meta, matcher, joinType, ((DataEngineImpl)this.dataEngine).getSession( ), fetchRowLimit, 1);
 		else 
 			populator = JointDataSetPopulatorFactory.getCartesianJointDataSetPopulator(it1, it2, meta, matcher, joinType,  ((DataEngineImpl)this.dataEngine).getSession( ), fetchRowLimit);
 		
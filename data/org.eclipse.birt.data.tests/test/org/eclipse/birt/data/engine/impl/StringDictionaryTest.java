@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.data.engine.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.birt.data.engine.executor.ResultClass;
+import org.eclipse.birt.data.engine.executor.ResultFieldMetadata;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test the dictionaries of string columns
+ */
+public class StringDictionaryTest
+{
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public void testIntern( ) throws Exception
+	{
+		StringDictionary dictionary = new StringDictionary( 2 );
+		String a = new String( "a" );
+		assertSame( a, dictionary.intern( a ) );
+		assertSame( a, dictionary.intern( new String( "a" ) ) );
+		assertNull( dictionary.intern( null ) );
+
+		dictionary.intern( "b" );
+		// the dictionary is full
+		String c = new String( "c" );
+		assertSame( c, dictionary.intern( c ) );
+		assertNotSame( c, dictionary.intern( new String( "c" ) ) );
+		assertEquals( 2, dictionary.size( ) );
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public void testIndex( ) throws Exception
+	{
+		StringDictionary dictionary = new StringDictionary( 2 );
+		assertEquals( 0, dictionary.getIndex( "x" ) );
+		assertEquals( 1, dictionary.getIndex( "y" ) );
+		assertEquals( 0, dictionary.getIndex( "x" ) );
+		assertEquals( -1, dictionary.getIndex( null ) );
+		assertEquals( StringDictionary.NOT_ENCODED, dictionary.getIndex( "z" ) );
+		assertEquals( "y", dictionary.getStringValue( 1 ) );
+		assertNull( dictionary.getStringValue( -1 ) );
+		assertNull( dictionary.getStringValue( 2 ) );
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public void testSaveAndLoad( ) throws Exception
+	{
+		Map<String, StringDictionary> dictionaries = new HashMap<String, StringDictionary>( );
+		StringDictionary country = new StringDictionary( 10 );
+		country.getIndex( "China" );
+		country.getIndex( "France" );
+		dictionaries.put( "country", country );
+		dictionaries.put( "empty", new StringDictionary( 10 ) );
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream( );
+		StringDictionary.save( baos, dictionaries );
+		Map<String, StringDictionary> loaded = StringDictionary.load( new ByteArrayInputStream( baos.toByteArray( ) ),
+				1 );
+
+		assertEquals( 2, loaded.size( ) );
+		assertEquals( 0, loaded.get( "empty" ).size( ) );
+		StringDictionary loadedCountry = loaded.get( "country" );
+		assertEquals( "France", loadedCountry.getStringValue( 1 ) );
+		assertEquals( 0, loadedCountry.getIndex( "China" ) );
+		// the loaded dictionary is not smaller than the saved one
+		assertEquals( StringDictionary.NOT_ENCODED,
+				loadedCountry.getIndex( "Japan" ) );
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public void testInternRow( ) throws Exception
+	{
+		List fields = new ArrayList( );
+		fields.add( new ResultFieldMetadata( 1, "id", "id", Integer.class, null, false ) );
+		fields.add( new ResultFieldMetadata( 2, "name", "name", String.class, null, false ) );
+		StringDictionary[] dictionaries = StringDictionary.createDictionaries( new ResultClass( fields ),
+				10 );
+		assertNull( dictionaries[0] );
+		assertNotNull( dictionaries[1] );
+
+		String name = new String( "n" );
+		Object[] row1 = new Object[]{
+				Integer.valueOf( 1 ), name
+		};
+		Object[] row2 = new Object[]{
+				Integer.valueOf( 2 ), new String( "n" )
+		};
+		assertFalse( StringDictionary.intern( dictionaries, row1 ) );
+		assertTrue( StringDictionary.intern( dictionaries, row2 ) );
+		assertSame( name, row2[1] );
+
+		assertNull( StringDictionary.createDictionaries( new ResultClass( fields ),
+				0 ) );
+	}
+}
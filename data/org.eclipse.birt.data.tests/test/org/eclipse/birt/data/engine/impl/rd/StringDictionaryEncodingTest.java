@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.data.engine.impl.rd;
+
+import java.io.DataInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.birt.core.archive.RAInputStream;
+import org.eclipse.birt.core.util.IOUtil;
+import org.eclipse.birt.data.engine.api.DataEngine;
+import org.eclipse.birt.data.engine.api.DataEngineContext;
+import org.eclipse.birt.data.engine.api.IQueryResults;
+import org.eclipse.birt.data.engine.api.IResultIterator;
+import org.eclipse.birt.data.engine.api.querydefn.FilterDefinition;
+import org.eclipse.birt.data.engine.api.querydefn.QueryDefinition;
+import org.eclipse.birt.data.engine.api.querydefn.ScriptExpression;
+import org.eclipse.birt.data.engine.impl.document.stream.VersionManager;
+
+import testutil.ConfigText;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test the string dictionaries of the data set data saved in report documents.
+ */
+public class StringDictionaryEncodingTest extends RDTestCase
+{
+
+	private static final String[] COLUMNS = new String[]{
+			"COUNTRY", "CITY", "AMOUNT"
+	};
+
+	private String queryResultID;
+
+	/*
+	 * @see org.eclipse.birt.data.engine.api.APITestCase#getDataSourceInfo()
+	 */
+	protected DataSourceInfo getDataSourceInfo( )
+	{
+		return new DataSourceInfo( ConfigText.getString( "Api.TestData.TableName" ),
+				ConfigText.getString( "Api.TestData.TableSQL" ),
+				ConfigText.getString( "Api.TestData.TestDataFileName" ) );
+	}
+
+	/**
+	 * The documents are saved in the previous version without the
+	 * dictionaries by default.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testEncodingDisabled( ) throws Exception
+	{
+		List<String> expected = generate( new HashMap( ) );
+		checkDocument( VersionManager.VERSION_4_2_3, false );
+		assertEquals( expected, present( ) );
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public void testEncodingEnabled( ) throws Exception
+	{
+		Map appContext = new HashMap( );
+		appContext.put( DataEngine.STRING_DICTIONARY_ENCODING, Boolean.TRUE );
+		List<String> expected = generate( appContext );
+		checkDocument( VersionManager.VERSION_4_2_4, true );
+		assertEquals( expected, present( ) );
+	}
+
+	/**
+	 * generate the document, and return the rows whose AMOUNT is greater than
+	 * 100.
+	 */
+	private List<String> generate( Map appContext ) throws Exception
+	{
+		QueryDefinition qd = newReportQuery( );
+		for ( int i = 0; i < COLUMNS.length; i++ )
+		{
+			qd.addResultSetExpression( COLUMNS[i],
+					new ScriptExpression( "dataSetRow." + COLUMNS[i] ) );
+		}
+		IQueryResults qr = myGenDataEngine.prepare( qd, appContext )
+				.execute( scope );
+		queryResultID = qr.getID( );
+
+		List<String> rows = new ArrayList<String>( );
+		IResultIterator ri = qr.getResultIterator( );
+		while ( ri.next( ) )
+		{
+			if ( ri.getInteger( "AMOUNT" ).intValue( ) > 100 )
+			{
+				rows.add( getRow( ri ) );
+			}
+		}
+		ri.close( );
+		qr.close( );
+		myGenDataEngine.shutdown( );
+		closeArchiveWriter( );
+		Collections.sort( rows );
+		return rows;
+	}
+
+	/**
+	 * filter the data set data saved in the document.
+	 */
+	private List<String> present( ) throws Exception
+	{
+		myPreDataEngine = DataEngine.newDataEngine( newContext( DataEngineContext.MODE_UPDATE,
+				fileName,
+				fileName2 ) );
+		QueryDefinition qd = new QueryDefinition( );
+		qd.setQueryResultsID( queryResultID );
+		for ( int i = 0; i < COLUMNS.length; i++ )
+		{
+			qd.addResultSetExpression( COLUMNS[i],
+					new ScriptExpression( "dataSetRow." + COLUMNS[i] ) );
+		}
+		// the new filter is evaluated on the saved data set rows
+		qd.addFilter( new FilterDefinition( new ScriptExpression( "dataSetRow.AMOUNT > 100" ) ) );
+
+		List<String> rows = new ArrayList<String>( );
+		IQueryResults qr = myPreDataEngine.prepare( qd ).execute( null );
+		IResultIterator ri = qr.getResultIterator( );
+		while ( ri.next( ) )
+		{
+			rows.add( getRow( ri ) );
+		}
+		ri.close( );
+		myPreDataEngine.shutdown( );
+		closeArchiveWriter( );
+		closeArchiveReader( );
+		Collections.sort( rows );
+		return rows;
+	}
+
+	private String getRow( IResultIterator ri ) throws Exception
+	{
+		StringBuffer row = new StringBuffer( );
+		for ( int i = 0; i < COLUMNS.length; i++ )
+		{
+			row.append( ri.getValue( COLUMNS[i] ) ).append( ',' );
+		}
+		return row.toString( );
+	}
+
+	private void checkDocument( int version, boolean encoded )
+			throws Exception
+	{
+		newContext( DataEngineContext.MODE_PRESENTATION, fileName );
+		RAInputStream stream = archiveReader.getStream( DataEngineContext.getPath( null,
+				null,
+				DataEngineContext.VERSION_INFO_STREAM ) );
+		DataInputStream in = new DataInputStream( stream );
+		assertEquals( version, IOUtil.readInt( in ) );
+		in.close( );
+
+		boolean hasDictionary = false;
+		List<String> streams = archiveReader.listAllStreams( );
+		for ( int i = 0; i < streams.size( ); i++ )
+		{
+			if ( streams.get( i ).endsWith( "/DataSetStringDictionary" ) )
+			{
+				hasDictionary = true;
+			}
+		}
+		assertEquals( encoded, hasDictionary );
+		closeArchiveReader( );
+	}
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.data.engine.olap.data.document;
+
+import java.io.File;
+import java.math.BigDecimal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test the document objects read through memory mapped files
+ */
+public class MappedDocumentManagerTest
+{
+	private static final int OBJECT_NUMBER = 2000;
+
+	private String dirName;
+
+	@Before
+	public void mappedDocumentManagerSetUp( ) throws Exception
+	{
+		dirName = System.getProperty( "java.io.tmpdir" )
+				+ File.separator + "MappedDocumentManagerTest"
+				+ System.currentTimeMillis( );
+		IDocumentManager documentManager = DocumentManagerFactory.createDirectoryDocumentManager( true,
+				dirName );
+		IDocumentObject documentObject = documentManager.createDocumentObject( "fact" );
+		for ( int i = 0; i < OBJECT_NUMBER; i++ )
+		{
+			documentObject.writeInt( i );
+			documentObject.writeString( "string" + i );
+			documentObject.writeBigDecimal( new BigDecimal( i + ".5" ) );
+		}
+		documentObject.close( );
+		documentManager.close( );
+	}
+
+	@After
+	public void mappedDocumentManagerTearDown( ) throws Exception
+	{
+		File[] files = new File( dirName ).listFiles( );
+		for ( int i = 0; files != null && i < files.length; i++ )
+		{
+			files[i].delete( );
+		}
+		new File( dirName ).delete( );
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public void testRead( ) throws Exception
+	{
+		IDocumentManager documentManager = DocumentManagerFactory.createMappedDocumentManager( dirName );
+		assertTrue( documentManager.exist( "fact" ) );
+		assertFalse( documentManager.exist( "dimension" ) );
+		assertNull( documentManager.openDocumentObject( "dimension" ) );
+
+		IDocumentObject documentObject = documentManager.openDocumentObject( "fact" );
+		checkObjects( documentObject, 0 );
+		byte[] b = new byte[10];
+		assertEquals( -1, documentObject.read( b, 0, b.length ) );
+
+		// read again after seek
+		documentObject.seek( 0 );
+		checkObjects( documentObject, 0 );
+		documentObject.close( );
+		documentManager.close( );
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public void testSharedMapping( ) throws Exception
+	{
+		IDocumentManager documentManager1 = DocumentManagerFactory.createMappedDocumentManager( dirName );
+		IDocumentManager documentManager2 = DocumentManagerFactory.createMappedDocumentManager( dirName );
+		IDocumentObject documentObject1 = documentManager1.openDocumentObject( "fact" );
+		IDocumentObject documentObject2 = documentManager2.openDocumentObject( "fact" );
+
+		// the positions of the objects are independent
+		assertEquals( 0, documentObject1.readInt( ) );
+		checkObjects( documentObject2, 0 );
+		assertEquals( "string0", documentObject1.readString( ) );
+		documentObject2.close( );
+
+		// the mapping is still used by the first object
+		assertEquals( new BigDecimal( "0.5" ),
+				documentObject1.readBigDecimal( ) );
+		checkObjects( documentObject1, 1 );
+		documentObject1.close( );
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public void testReadOnly( ) throws Exception
+	{
+		IDocumentManager documentManager = DocumentManagerFactory.createMappedDocumentManager( dirName );
+		try
+		{
+			documentManager.createDocumentObject( "dimension" );
+			fail( "Should not arrive here" );
+		}
+		catch ( UnsupportedOperationException e )
+		{
+		}
+	}
+
+	private void checkObjects( IDocumentObject documentObject, int start )
+			throws Exception
+	{
+		for ( int i = start; i < OBJECT_NUMBER; i++ )
+		{
+			assertEquals( i, documentObject.readInt( ) );
+			assertEquals( "string" + i, documentObject.readString( ) );
+			assertEquals( new BigDecimal( i + ".5" ),
+					documentObject.readBigDecimal( ) );
+		}
+	}
+}
@@ -16,7 +16,9 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.birt.core.archive.IDocArchiveWriter;
 import org.eclipse.birt.core.archive.compound.ArchiveFile;
@@ -56,6 +58,7 @@ import org.eclipse.birt.data.engine.olap.data.api.cube.IHierarchy;
 import org.eclipse.birt.data.engine.olap.data.api.cube.ILevelDefn;
 import org.eclipse.birt.data.engine.olap.data.document.DocumentManagerFactory;
 import org.eclipse.birt.data.engine.olap.data.document.IDocumentManager;
+import org.eclipse.birt.data.engine.olap.data.impl.aggregation.AggregateTable;
 import org.eclipse.birt.data.engine.olap.data.impl.aggregation.filter.LevelFilter;
 import org.eclipse.birt.data.engine.olap.data.impl.dimension.Dimension;
 import org.eclipse.birt.data.engine.olap.data.impl.dimension.DimensionFactory;
@@ -1273,6 +1276,128 @@ public class CubeAggregationTest extends BaseTestCase
 		}
 	}
 	
+	/**
+	 * The aggregations rolled up from a materialized aggregate are the same
+	 * as the ones computed from the fact table.
+	 * 
+	 * @throws IOException
+	 * @throws BirtException
+	 */
+	@Test
+    public void testCube1MaterializedAggregate( ) throws IOException, BirtException
+	{
+		IAggregationResultSet[] expected = new CubeQueryExecutorHelper( CubeQueryExecutorHelper.loadCube( "cube1",
+				documentManager,
+				new StopSign( ) ) ).execute( createRollupAggregations( ),
+				new StopSign( ) );
+
+		Cube cube = new Cube( "cube1", documentManager );
+		cube.load( new StopSign( ) );
+		assertNotNull( AggregateTable.create( cube, new DimLevel[]{
+				dimLevel12, dimLevel31
+		}, 0, new StopSign( ) ) );
+		cube.close( );
+
+		cube = new Cube( "cube1", documentManager );
+		cube.load( new StopSign( ) );
+		assertEquals( 1, cube.getAggregateTables( ).size( ) );
+		assertNotNull( AggregateTable.select( cube.getAggregateTables( ),
+				createRollupAggregations( ) ) );
+		// the aggregate does not save the bottom level of dimension1
+		assertNull( AggregateTable.select( cube.getAggregateTables( ),
+				new AggregationDefinition[]{
+					new AggregationDefinition( new DimLevel[]{
+						new DimLevel( "dimension1", "level13" )
+					}, null, null )
+				} ) );
+		IAggregationResultSet[] resultSet = new CubeQueryExecutorHelper( cube ).execute( createRollupAggregations( ),
+				new StopSign( ) );
+		assertAggregationEquals( expected, resultSet );
+	}
+	
+	/**
+	 * An aggregate is materialized after the same levels are queried for the
+	 * given times.
+	 * 
+	 * @throws IOException
+	 * @throws BirtException
+	 */
+	@Test
+    public void testCube1LearnedAggregate( ) throws IOException, BirtException
+	{
+		Map appContext = new HashMap( );
+		appContext.put( DataEngine.CUBE_AGGREGATE_LEARNING_THRESHOLD, "2" );
+		IAggregationResultSet[] expected = null;
+		for ( int i = 0; i < 3; i++ )
+		{
+			CubeQueryExecutorHelper cubeQueryExcutorHelper = new CubeQueryExecutorHelper( CubeQueryExecutorHelper.loadCube( "cube1",
+					documentManager,
+					new StopSign( ) ) );
+			cubeQueryExcutorHelper.setAppContext( appContext );
+			IAggregationResultSet[] resultSet = cubeQueryExcutorHelper.execute( createRollupAggregations( ),
+					new StopSign( ) );
+			Cube cube = new Cube( "cube1", documentManager );
+			cube.load( new StopSign( ) );
+			assertEquals( i == 0 ? 0 : 1, cube.getAggregateTables( ).size( ) );
+			cube.close( );
+			if ( expected == null )
+			{
+				expected = resultSet;
+			}
+			else
+			{
+				assertAggregationEquals( expected, resultSet );
+			}
+		}
+	}
+	
+	private AggregationDefinition[] createRollupAggregations( )
+	{
+		AggregationFunctionDefinition[] functions = new AggregationFunctionDefinition[]{
+				new AggregationFunctionDefinition( "sum", "measure1", IBuildInAggregation.TOTAL_SUM_FUNC ),
+				new AggregationFunctionDefinition( "max", "measure1", IBuildInAggregation.TOTAL_MAX_FUNC ),
+				new AggregationFunctionDefinition( "min", "measure1", IBuildInAggregation.TOTAL_MIN_FUNC )
+		};
+		return new AggregationDefinition[]{
+				new AggregationDefinition( new DimLevel[]{
+					dimLevel11
+				}, new int[]{
+					IDimensionSortDefn.SORT_ASC
+				}, functions ),
+				new AggregationDefinition( new DimLevel[]{
+						dimLevel11, dimLevel31
+				}, new int[]{
+						IDimensionSortDefn.SORT_ASC, IDimensionSortDefn.SORT_ASC
+				}, functions ),
+				new AggregationDefinition( null, null, functions )
+		};
+	}
+	
+	private void assertAggregationEquals( IAggregationResultSet[] expected,
+			IAggregationResultSet[] actual ) throws IOException
+	{
+		assertEquals( expected.length, actual.length );
+		for ( int i = 0; i < expected.length; i++ )
+		{
+			assertEquals( expected[i].length( ), actual[i].length( ) );
+			for ( int j = 0; j < expected[i].length( ); j++ )
+			{
+				expected[i].seek( j );
+				actual[i].seek( j );
+				for ( int k = 0; k < expected[i].getLevelCount( ); k++ )
+				{
+					assertTrue( Arrays.equals( expected[i].getLevelKeyValue( k ),
+							actual[i].getLevelKeyValue( k ) ) );
+				}
+				for ( int k = 0; k < expected[i].getAggregationCount( ); k++ )
+				{
+					assertEquals( expected[i].getAggregationValue( k ),
+							actual[i].getAggregationValue( k ) );
+				}
+			}
+		}
+	}
+	
 	private void createCube2( ) throws IOException, BirtException
 	{
 		Dimension[] dimensions = new Dimension[2];
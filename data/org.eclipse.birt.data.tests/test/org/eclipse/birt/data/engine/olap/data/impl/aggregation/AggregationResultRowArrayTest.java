@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.birt.data.engine.olap.data.impl.aggregation;
+
+import java.io.IOException;
+
+import org.eclipse.birt.data.engine.olap.data.api.IAggregationResultRow;
+import org.eclipse.birt.data.engine.olap.data.impl.dimension.Member;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test the compact array of aggregation result rows
+ */
+public class AggregationResultRowArrayTest
+{
+	/**
+	 * @throws IOException
+	 */
+	@Test
+	public void testAddGet( ) throws IOException
+	{
+		AggregationResultRowArray array = new AggregationResultRowArray( );
+		for ( int i = 0; i < 20000; i++ )
+		{
+			array.add( createRow( i ) );
+		}
+		array.add( new AggregationResultRow( new Member[]{
+				null, createMember( null )
+		}, null ) );
+		assertEquals( 20001, array.size( ) );
+		for ( int i = 0; i < 20000; i++ )
+		{
+			checkRow( i, (IAggregationResultRow) array.get( i ) );
+		}
+		IAggregationResultRow row = (IAggregationResultRow) array.get( 20000 );
+		assertNull( row.getLevelMembers( )[0] );
+		assertNull( row.getLevelMembers( )[1].getKeyValues( )[0] );
+		assertNull( row.getAggregationValues( ) );
+		// the distinct members are shared by the rows
+		assertSame( ( (IAggregationResultRow) array.get( 1 ) ).getLevelMembers( )[0],
+				( (IAggregationResultRow) array.get( 11 ) ).getLevelMembers( )[0] );
+	}
+
+	/**
+	 * @throws IOException
+	 */
+	@Test
+	public void testObjectValues( ) throws IOException
+	{
+		AggregationResultRowArray array = new AggregationResultRowArray( );
+		for ( int i = 0; i < 100; i++ )
+		{
+			array.add( new AggregationResultRow( null, new Object[]{
+					Integer.valueOf( i ), i == 50 ? (Object) "fifty" : null
+			} ) );
+		}
+		array.add( new AggregationResultRow( null, new Object[]{
+				new Double( 0.5 ), null
+		} ) );
+		assertEquals( 101, array.size( ) );
+		for ( int i = 0; i < 100; i++ )
+		{
+			IAggregationResultRow row = (IAggregationResultRow) array.get( i );
+			assertNull( row.getLevelMembers( ) );
+			assertEquals( Integer.valueOf( i ), row.getAggregationValues( )[0] );
+			assertEquals( i == 50 ? "fifty" : null,
+					row.getAggregationValues( )[1] );
+		}
+		assertEquals( new Double( 0.5 ),
+				( (IAggregationResultRow) array.get( 100 ) ).getAggregationValues( )[0] );
+	}
+
+	/**
+	 * @throws IOException
+	 */
+	@Test
+	public void testLateAggregationValues( ) throws IOException
+	{
+		// the value columns are created by the first row with values, after
+		// many chunks of rows without values
+		AggregationResultRowArray array = new AggregationResultRowArray( );
+		int count = 300000;
+		for ( int i = 0; i < count; i++ )
+		{
+			array.add( new AggregationResultRow( null, null ) );
+		}
+		array.add( new AggregationResultRow( null, new Object[]{
+			Integer.valueOf( 3 )
+		} ) );
+		assertEquals( count + 1, array.size( ) );
+		assertNull( ( (IAggregationResultRow) array.get( count - 1 ) ).getAggregationValues( ) );
+		assertEquals( Integer.valueOf( 3 ),
+				( (IAggregationResultRow) array.get( count ) ).getAggregationValues( )[0] );
+	}
+
+	/**
+	 * @throws IOException
+	 */
+	@Test
+	public void testBuffer( ) throws IOException
+	{
+		AggregationResultRowArray array = new AggregationResultRowArray( 100 );
+		for ( int i = 0; i < 250; i++ )
+		{
+			array.add( createRow( i ) );
+		}
+		assertEquals( 250, array.size( ) );
+		for ( int i = 0; i < 250; i++ )
+		{
+			checkRow( i, (IAggregationResultRow) array.get( i ) );
+		}
+		array.clear( );
+		assertEquals( 0, array.size( ) );
+		array.add( createRow( 7 ) );
+		assertEquals( 1, array.size( ) );
+		checkRow( 7, (IAggregationResultRow) array.get( 0 ) );
+		array.close( );
+	}
+
+	/**
+	 *
+	 * @param key
+	 * @return
+	 */
+	private static Member createMember( Object key )
+	{
+		Member member = new Member( );
+		member.setKeyValues( new Object[]{
+			key
+		} );
+		return member;
+	}
+
+	/**
+	 *
+	 * @param i
+	 * @return
+	 */
+	private static IAggregationResultRow createRow( int i )
+	{
+		Member[] members = new Member[]{
+				createMember( Integer.valueOf( i % 10 ) ),
+				createMember( "member" + i )
+		};
+		Object[] values = new Object[]{
+				new Double( i * 1.5 ),
+				Long.valueOf( i * 1000000000L ),
+				i % 3 == 0 ? null : Integer.valueOf( -i )
+		};
+		return new AggregationResultRow( members, values );
+	}
+
+	/**
+	 *
+	 * @param i
+	 * @param row
+	 */
+	private static void checkRow( int i, IAggregationResultRow row )
+	{
+		IAggregationResultRow expected = createRow( i );
+		assertEquals( 2, row.getLevelMembers( ).length );
+		for ( int j = 0; j < 2; j++ )
+		{
+			assertEquals( expected.getLevelMembers( )[j].getKeyValues( )[0],
+					row.getLevelMembers( )[j].getKeyValues( )[0] );
+		}
+		assertArrayEquals( expected.getAggregationValues( ),
+				row.getAggregationValues( ) );
+	}
+}
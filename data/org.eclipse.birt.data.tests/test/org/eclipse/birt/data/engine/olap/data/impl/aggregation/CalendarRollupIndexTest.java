@@ -0,0 +1,257 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.birt.data.engine.olap.data.impl.aggregation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.birt.data.engine.api.timefunction.TimeMember;
+import org.eclipse.birt.data.engine.core.DataException;
+import org.eclipse.birt.data.engine.olap.data.impl.dimension.Member;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test the calendar rollup of the time functions
+ */
+public class CalendarRollupIndexTest
+{
+	private static final String[] YEAR_MONTH = new String[]{
+			TimeMember.TIME_LEVEL_TYPE_YEAR, TimeMember.TIME_LEVEL_TYPE_MONTH
+	};
+
+	/**
+	 * @throws DataException
+	 */
+	@Test
+	public void testSum( ) throws DataException
+	{
+		CalendarRollupIndex index = new CalendarRollupIndex( 1, 2, 0, false );
+		addRows( index );
+		index.build( );
+
+		TimeMember march = new TimeMember( new int[]{
+				2010, 3
+		}, YEAR_MONTH );
+		List<TimeMember> yearToDate = new ArrayList<TimeMember>( );
+		for ( int month = 1; month <= 3; month++ )
+		{
+			yearToDate.add( new TimeMember( new int[]{
+					2010, month
+			}, YEAR_MONTH ) );
+		}
+		assertEquals( new Double( 7 ),
+				index.getValue( createCell( "A" ), march, yearToDate ) );
+		assertEquals( new Double( 16 ),
+				index.getValue( createCell( "B" ), march, yearToDate ) );
+		assertNull( index.getValue( createCell( "C" ), march, yearToDate ) );
+
+		// the members of a higher level match all the members below them
+		List<TimeMember> years = new ArrayList<TimeMember>( );
+		years.add( new TimeMember( new int[]{
+			2011
+		}, new String[]{
+			TimeMember.TIME_LEVEL_TYPE_YEAR
+		} ) );
+		years.add( new TimeMember( new int[]{
+			2010
+		}, new String[]{
+			TimeMember.TIME_LEVEL_TYPE_YEAR
+		} ) );
+		assertEquals( new Double( 15 ), index.getValue( createCell( "A" ),
+				new TimeMember( new int[]{
+						2011, 1
+				}, YEAR_MONTH ),
+				years ) );
+
+		// the members which are not continuous
+		List<TimeMember> months = new ArrayList<TimeMember>( );
+		months.add( yearToDate.get( 0 ) );
+		months.add( yearToDate.get( 2 ) );
+		assertEquals( new Double( 5 ), index.getValue( createCell( "A" ),
+				new TimeMember( new int[]{
+						2010, 4
+				}, YEAR_MONTH ),
+				months ) );
+	}
+
+	/**
+	 * @throws DataException
+	 */
+	@Test
+	public void testCount( ) throws DataException
+	{
+		CalendarRollupIndex index = new CalendarRollupIndex( 1, 2, -1, true );
+		addRows( index );
+		index.build( );
+		List<TimeMember> months = new ArrayList<TimeMember>( );
+		months.add( new TimeMember( new int[]{
+			2010
+		}, new String[]{
+			TimeMember.TIME_LEVEL_TYPE_YEAR
+		} ) );
+		TimeMember year = new TimeMember( new int[]{
+				2010, 12
+		}, YEAR_MONTH );
+		assertEquals( Integer.valueOf( 3 ),
+				index.getValue( createCell( "A" ), year, months ) );
+		assertEquals( Integer.valueOf( 0 ),
+				index.getValue( createCell( "C" ), year, months ) );
+	}
+
+	/**
+	 * @throws DataException
+	 */
+	@Test
+	public void testInvalidNumber( ) throws DataException
+	{
+		CalendarRollupIndex index = new CalendarRollupIndex( 1, 2, 0, false );
+		index.add( createRow( "A", 2010, 1, new Double( Double.POSITIVE_INFINITY ) ) );
+		index.add( createRow( "A", 2010, 2, new Double( 1 ) ) );
+		index.build( );
+		List<TimeMember> months = new ArrayList<TimeMember>( );
+		months.add( new TimeMember( new int[]{
+				2010, 2
+		}, YEAR_MONTH ) );
+		assertEquals( new Double( 1 ), index.getValue( createCell( "A" ),
+				months.get( 0 ),
+				months ) );
+		months.add( new TimeMember( new int[]{
+				2010, 1
+		}, YEAR_MONTH ) );
+		assertTrue( ( (Double) index.getValue( createCell( "A" ),
+				new TimeMember( new int[]{
+						2010, 3
+				}, YEAR_MONTH ),
+				months ) ).isNaN( ) );
+	}
+
+	/**
+	 * @throws DataException
+	 */
+	@Test
+	public void testFractionSum( ) throws DataException
+	{
+		CalendarRollupIndex index = new CalendarRollupIndex( 1, 2, 0, false );
+		index.add( createRow( "A", 2010, 1, new Double( 1e17 ) ) );
+		index.add( createRow( "A", 2010, 2, new Double( 0.5 ) ) );
+		index.add( createRow( "A", 2010, 3, new Double( 0.25 ) ) );
+		index.build( );
+		List<TimeMember> months = new ArrayList<TimeMember>( );
+		months.add( new TimeMember( new int[]{
+				2010, 2
+		}, YEAR_MONTH ) );
+		months.add( new TimeMember( new int[]{
+				2010, 3
+		}, YEAR_MONTH ) );
+		// the difference of the uncompensated prefix sums would be 0
+		assertEquals( new Double( 0.75 ), index.getValue( createCell( "A" ),
+				months.get( 1 ),
+				months ) );
+	}
+
+	/**
+	 * @throws DataException
+	 */
+	@Test
+	public void testFractionSumAfterLargeSums( ) throws DataException
+	{
+		CalendarRollupIndex index = new CalendarRollupIndex( 1, 2, 0, false );
+		index.add( createRow( "A", 2009, 12, new Double( 3e16 ) ) );
+		List<TimeMember> months = new ArrayList<TimeMember>( );
+		double expected = 0;
+		for ( int month = 1; month <= 12; month++ )
+		{
+			index.add( createRow( "A", 2010, month, new Double( month * 0.1 ) ) );
+			months.add( new TimeMember( new int[]{
+					2010, month
+			}, YEAR_MONTH ) );
+			expected += month * 0.1;
+		}
+		index.add( createRow( "A", 2011, 1, new Double( -7e16 ) ) );
+		index.build( );
+		assertEquals( expected,
+				( (Double) index.getValue( createCell( "A" ),
+						months.get( 11 ),
+						months ) ).doubleValue( ),
+				1e-12 );
+		// a period in the middle of the fractions
+		assertEquals( 0.3 + 0.4 + 0.5,
+				( (Double) index.getValue( createCell( "A" ),
+						months.get( 4 ),
+						months.subList( 2, 5 ) ) ).doubleValue( ),
+				1e-12 );
+	}
+
+	/**
+	 *
+	 * @param index
+	 * @throws DataException
+	 */
+	private static void addRows( CalendarRollupIndex index )
+			throws DataException
+	{
+		index.add( createRow( "A", 2010, 3, Integer.valueOf( 4 ) ) );
+		index.add( createRow( "A", 2010, 1, Integer.valueOf( 1 ) ) );
+		index.add( createRow( "B", 2010, 2, Integer.valueOf( 16 ) ) );
+		index.add( createRow( "A", 2011, 1, Integer.valueOf( 8 ) ) );
+		index.add( createRow( "A", 2010, 2, Integer.valueOf( 2 ) ) );
+	}
+
+	/**
+	 *
+	 * @param city
+	 * @param year
+	 * @param month
+	 * @param measure
+	 * @return
+	 */
+	private static Row4Aggregation createRow( String city, int year,
+			int month, Object measure )
+	{
+		Row4Aggregation row = new Row4Aggregation( );
+		row.setLevelMembers( new Member[]{
+				createMember( city ),
+				createMember( Integer.valueOf( year ) ),
+				createMember( Integer.valueOf( month ) )
+		} );
+		row.setMeasures( new Object[]{
+			measure
+		} );
+		return row;
+	}
+
+	/**
+	 *
+	 * @param city
+	 * @return
+	 */
+	private static Member[] createCell( String city )
+	{
+		return new Member[]{
+				createMember( city ), null, null
+		};
+	}
+
+	/**
+	 *
+	 * @param key
+	 * @return
+	 */
+	private static Member createMember( Object key )
+	{
+		Member member = new Member( );
+		member.setKeyValues( new Object[]{
+			key
+		} );
+		return member;
+	}
+}
@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.birt.data.engine.olap.data.impl.aggregation;
+
+import java.io.IOException;
+
+import org.eclipse.birt.data.engine.olap.data.api.DimLevel;
+import org.eclipse.birt.data.engine.olap.data.api.IAggregationResultSet;
+import org.eclipse.birt.data.engine.olap.data.api.cube.IDimension;
+import org.eclipse.birt.data.engine.olap.data.impl.AggregationDefinition;
+import org.eclipse.birt.data.engine.olap.data.impl.AggregationFunctionDefinition;
+import org.eclipse.birt.data.engine.olap.data.impl.dimension.Member;
+import org.eclipse.birt.data.engine.olap.data.util.IDiskArray;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test the cache of the cube query results
+ */
+public class CubeQueryResultCacheTest
+{
+	private static final DimLevel YEAR = new DimLevel( "time", "year" );
+	private static final DimLevel CITY = new DimLevel( "geo", "city" );
+
+	/**
+	 * @throws IOException
+	 */
+	@Test
+	public void testPutGet( ) throws IOException
+	{
+		CubeQueryResultCache cache = new CubeQueryResultCache( );
+		AggregationDefinition[] aggregations = createAggregations( new DimLevel[]{
+				YEAR, CITY
+		}, "SUM" );
+		assertNull( cache.get( "cube1", aggregations ) );
+		IAggregationResultSet[] resultSets = createResultSets( aggregations,
+				100 );
+		cache.put( "cube1", aggregations, resultSets, Long.MAX_VALUE );
+		// the cached rows are not affected by the result sets of the query
+		resultSets[0].close( );
+
+		IAggregationResultSet[] cached = cache.get( "cube1",
+				createAggregations( new DimLevel[]{
+						YEAR, CITY
+				}, "SUM" ) );
+		assertNotNull( cached );
+		assertEquals( 100, cached[0].length( ) );
+		cached[0].seek( 10 );
+		assertEquals( Integer.valueOf( 10 ),
+				cached[0].getCurrentRow( ).getLevelMembers( )[1].getKeyValues( )[0] );
+		assertEquals( new Double( 10 ), cached[0].getAggregationValue( 0 ) );
+		cached[0].close( );
+		assertEquals( 100, cache.get( "cube1", aggregations )[0].length( ) );
+
+		assertNull( cache.get( "cube2", aggregations ) );
+		assertNull( cache.get( "cube1", createAggregations( new DimLevel[]{
+				YEAR, CITY
+		}, "MAX" ) ) );
+		assertNull( cache.get( "cube1", createAggregations( new DimLevel[]{
+			YEAR
+		}, "SUM" ) ) );
+	}
+
+	/**
+	 * @throws IOException
+	 */
+	@Test
+	public void testRollupBase( ) throws IOException
+	{
+		CubeQueryResultCache cache = new CubeQueryResultCache( );
+		AggregationDefinition[] large = createAggregations( new DimLevel[]{
+				YEAR, CITY
+		}, "SUM" );
+		cache.put( "cube1", large, createResultSets( large, 100 ), Long.MAX_VALUE );
+		AggregationDefinition[] small = createAggregations( new DimLevel[]{
+				CITY, YEAR
+		}, "SUM" );
+		cache.put( "cube1", small, createResultSets( small, 10 ), Long.MAX_VALUE );
+
+		AggregationDefinition[] query = createAggregations( new DimLevel[]{
+			CITY
+		}, "SUM" );
+		IAggregationResultSet base = cache.getRollupBase( "cube1",
+				query,
+				new IDimension[0] );
+		assertNotNull( base );
+		assertEquals( 10, base.length( ) );
+		assertNull( cache.getRollupBase( "cube2", query, new IDimension[0] ) );
+		assertNull( cache.getRollupBase( "cube1",
+				createAggregations( new DimLevel[]{
+					CITY
+				}, "MAX" ),
+				new IDimension[0] ) );
+		assertNull( cache.getRollupBase( "cube1",
+				createAggregations( new DimLevel[]{
+					new DimLevel( "geo", "country" )
+				}, "SUM" ),
+				new IDimension[0] ) );
+		assertNull( cache.getRollupBase( "cube1",
+				createAggregations( new DimLevel[]{
+					CITY
+				}, "COUNT" ),
+				new IDimension[0] ) );
+		assertNotNull( cache.getRollupBase( "cube1",
+				createAggregations( null, "SUM" ),
+				new IDimension[0] ) );
+	}
+
+	/**
+	 * @throws IOException
+	 */
+	@Test
+	public void testEviction( ) throws IOException
+	{
+		CubeQueryResultCache cache = new CubeQueryResultCache( );
+		AggregationDefinition[] first = createAggregations( new DimLevel[]{
+			YEAR
+		}, "SUM" );
+		AggregationDefinition[] second = createAggregations( new DimLevel[]{
+			CITY
+		}, "SUM" );
+		IAggregationResultSet[] resultSets = createResultSets( first, 100 );
+		long size = 100L * ( AggregationResultRowArray.getRowSize( 2, 1 ) + 64 );
+		cache.put( "cube1", first, resultSets, size + size / 2 );
+		assertEquals( size, cache.getSize( ) );
+		cache.put( "cube1",
+				second,
+				createResultSets( second, 100 ),
+				size + size / 2 );
+		assertEquals( size, cache.getSize( ) );
+		assertNull( cache.get( "cube1", first ) );
+		assertNotNull( cache.get( "cube1", second ) );
+
+		// a result larger than the cache is not cached
+		cache.put( "cube2", first, resultSets, size / 2 );
+		assertNull( cache.get( "cube2", first ) );
+	}
+
+	/**
+	 * @throws IOException
+	 */
+	@Test
+	public void testClear( ) throws IOException
+	{
+		CubeQueryResultCache cache = new CubeQueryResultCache( );
+		AggregationDefinition[] aggregations = createAggregations( new DimLevel[]{
+			YEAR
+		}, "SUM" );
+		cache.put( "cube1",
+				aggregations,
+				createResultSets( aggregations, 10 ),
+				Long.MAX_VALUE );
+		assertTrue( cache.getSize( ) > 0 );
+		cache.clear( );
+		assertEquals( 0, cache.getSize( ) );
+		assertNull( cache.get( "cube1", aggregations ) );
+	}
+
+	/**
+	 *
+	 * @param levels
+	 * @param functionName
+	 * @return
+	 */
+	private static AggregationDefinition[] createAggregations(
+			DimLevel[] levels, String functionName )
+	{
+		return new AggregationDefinition[]{
+			new AggregationDefinition( levels,
+					null,
+					new AggregationFunctionDefinition[]{
+						new AggregationFunctionDefinition( "total",
+								"amount",
+								functionName )
+					} )
+		};
+	}
+
+	/**
+	 * Create the result sets with two levels and one aggregated value, whose
+	 * rows are identified by the members of the second level.
+	 *
+	 * @param aggregations
+	 * @param rowCount
+	 * @return
+	 * @throws IOException
+	 */
+	private static IAggregationResultSet[] createResultSets(
+			AggregationDefinition[] aggregations, int rowCount )
+			throws IOException
+	{
+		IDiskArray rows = new AggregationResultRowArray( );
+		for ( int i = 0; i < rowCount; i++ )
+		{
+			rows.add( new AggregationResultRow( new Member[]{
+					createMember( Integer.valueOf( i / 10 ) ),
+					createMember( Integer.valueOf( i ) )
+			}, new Object[]{
+				new Double( i )
+			} ) );
+		}
+		DimLevel[] levels = aggregations[0].getLevels( );
+		if ( levels != null && levels.length == 1 )
+		{
+			levels = new DimLevel[]{
+					levels[0], new DimLevel( "other", "level" )
+			};
+		}
+		return new IAggregationResultSet[]{
+			new AggregationResultSet( aggregations[0],
+					levels,
+					rows,
+					new String[][]{
+							{
+								"key"
+							}, {
+								"key"
+							}
+					},
+					new String[2][] )
+		};
+	}
+
+	/**
+	 *
+	 * @param key
+	 * @return
+	 */
+	private static Member createMember( Object key )
+	{
+		Member member = new Member( );
+		member.setKeyValues( new Object[]{
+			key
+		} );
+		return member;
+	}
+}
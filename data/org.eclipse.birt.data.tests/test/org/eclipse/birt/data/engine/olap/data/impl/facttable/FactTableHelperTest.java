@@ -569,6 +569,135 @@ public class FactTableHelperTest {
 		System.out.println( "Finish iterator... time: "  + (System.currentTimeMillis( ) - startTime)/1000);
 	}
 	
+	/**
+	 * 
+	 * @throws IOException
+	 * @throws BirtException
+	 */
+	@Test
+    public void testFactTableRefresh( ) throws IOException, BirtException
+	{
+		IDocumentManager documentManager = DocumentManagerFactory.createFileDocumentManager( );
+		Dimension[] dimensions = new Dimension[3];
+		dimensions[0] = createDimension( documentManager,
+				"dimension1",
+				distinct( LevelsAndFactTableDataset.dimension1Col ) );
+		dimensions[1] = createDimension( documentManager,
+				"dimension2",
+				distinct( LevelsAndFactTableDataset.dimension2Col ) );
+		dimensions[2] = createDimension( documentManager,
+				"dimension3",
+				distinct( LevelsAndFactTableDataset.dimension3Col ) );
+		String[] measureColumnName = new String[2];
+		measureColumnName[0] = "measure1";
+		measureColumnName[1] = "measure2";
+		FactTableAccessor factTableConstructor = new FactTableAccessor( documentManager );
+		factTableConstructor.saveFactTable( "refresh",
+				CubeUtility.getKeyColNames( dimensions ),
+				CubeUtility.getKeyColNames( dimensions ),
+				new LevelsAndFactTableDataset( ),
+				dimensions,
+				measureColumnName,
+				new StopSign( ) );
+
+		// the dimensions are not changed, and the rows are appended
+		FactTable factTable = factTableConstructor.refreshFactTable( "refresh",
+				CubeUtility.getKeyColNames( dimensions ),
+				CubeUtility.getKeyColNames( dimensions ),
+				new LevelsAndFactTableDataset( ),
+				dimensions,
+				measureColumnName,
+				new StopSign( ) );
+		assertEquals( 14, factTable.getDimensionInfo( )[2].getDimensionLength( ) );
+		checkRefreshedRows( factTable, 2, 3 );
+
+		// a member is added before the others, so the rows are saved again
+		String[] members = distinct( LevelsAndFactTableDataset.dimension3Col );
+		String[] newMembers = new String[members.length + 1];
+		newMembers[0] = "000";
+		System.arraycopy( members, 0, newMembers, 1, members.length );
+		dimensions[2] = createDimension( documentManager,
+				"dimension3",
+				newMembers );
+		factTable = factTableConstructor.refreshFactTable( "refresh",
+				CubeUtility.getKeyColNames( dimensions ),
+				CubeUtility.getKeyColNames( dimensions ),
+				new LevelsAndFactTableDataset( ),
+				dimensions,
+				measureColumnName,
+				new StopSign( ) );
+		assertEquals( 15, factTable.getDimensionInfo( )[2].getDimensionLength( ) );
+		checkRefreshedRows( factTable, 3, 4 );
+		factTable = factTableConstructor.load( "refresh", new StopSign( ) );
+		checkRefreshedRows( factTable, 3, 4 );
+		documentManager.close( );
+	}
+
+	private Dimension createDimension( IDocumentManager documentManager,
+			String name, String[] members ) throws IOException, BirtException
+	{
+		DimensionForTest iterator = new DimensionForTest( new String[]{
+			name
+		} );
+		iterator.setLevelMember( 0, members );
+		ILevelDefn[] levelDefs = new ILevelDefn[]{
+			new LevelDefinition( name, new String[]{
+				name
+			}, null )
+		};
+		return (Dimension) DimensionFactory.createDimension( name,
+				documentManager,
+				iterator,
+				levelDefs,
+				false,
+				new StopSign( ) );
+	}
+
+	/**
+	 * Check the rows of a fact table refreshed with the same rows.
+	 * 
+	 * @param factTable
+	 * @param times
+	 *            how many times the rows are saved
+	 * @param member121Position
+	 *            the position of member 121 of the third dimension
+	 * @throws IOException
+	 * @throws BirtException
+	 */
+	private void checkRefreshedRows( FactTable factTable, int times,
+			int member121Position ) throws IOException, BirtException
+	{
+		FactTableRowIterator facttableRowIterator = new FactTableRowIterator( factTable,
+				new String[0],
+				new IDiskArray[0],
+				new StopSign( ) );
+		int rowCount = 0;
+		int member121Count = 0;
+		long sum = 0;
+		while ( facttableRowIterator.next( ) )
+		{
+			rowCount++;
+			int measure = ( (Integer) facttableRowIterator.getMeasure( 0 ) ).intValue( );
+			sum += measure;
+			if ( measure == 121 )
+			{
+				member121Count++;
+				assertEquals( member121Position,
+						facttableRowIterator.getDimensionPosition( 2 ) );
+			}
+		}
+		facttableRowIterator.close( );
+		long expectedSum = 0;
+		for ( int i = 0; i < LevelsAndFactTableDataset.Measure1.length; i++ )
+		{
+			expectedSum += LevelsAndFactTableDataset.Measure1[i];
+		}
+		assertEquals( LevelsAndFactTableDataset.Measure1.length * times,
+				rowCount );
+		assertEquals( times, member121Count );
+		assertEquals( expectedSum * times, sum );
+	}
+	
 	private static String[] distinct( String[] sValues )
 	{
 		Arrays.sort( sValues );
@@ -387,12 +387,27 @@ public class FactTableHelperTest2 extends BaseTestCase
 	{
 		IDocumentManager documentManager = DocumentManagerFactory.createFileDocumentManager( );
 		
-		testFactTableSaveAndLoad3( documentManager );
+		testFactTableSaveAndLoad3( documentManager, 1 );
 		
 		documentManager.close( );
 	}
 	
-	private void testFactTableSaveAndLoad3( IDocumentManager documentManager ) throws IOException, BirtException, DataException
+	/**
+	 * 
+	 * @throws IOException
+	 * @throws BirtException
+	 */
+	@Test
+    public void testParallelAggregation( ) throws IOException, BirtException
+	{
+		IDocumentManager documentManager = DocumentManagerFactory.createFileDocumentManager( );
+		
+		testFactTableSaveAndLoad3( documentManager, 3 );
+		
+		documentManager.close( );
+	}
+	
+	private void testFactTableSaveAndLoad3( IDocumentManager documentManager, int partitionCount ) throws IOException, BirtException, DataException
 	{
 		Dimension[] dimensions = new Dimension[3];
 		
@@ -521,6 +536,28 @@ public class FactTableHelperTest2 extends BaseTestCase
 			new AggregationExecutor( null, dataSet4Aggregation,
 					aggregations,
 					10*1024*1024 );
+		if ( partitionCount > 1 )
+		{
+			assertTrue( aggregationCalculatorExecutor.isParallelScanSupported( ) );
+			IDataSet4Aggregation[] partitionDataSets = new IDataSet4Aggregation[partitionCount];
+			for ( int i = 0; i < partitionCount; i++ )
+			{
+				DimensionResultIterator[] partitionDimesionResultSets = new DimensionResultIterator[2];
+				partitionDimesionResultSets[0] = new DimensionResultIterator( dimensions[1],
+						positionForFilter[0], new StopSign());
+				partitionDimesionResultSets[1] = new DimensionResultIterator( dimensions[2],
+						positionForFilter[1], new StopSign());
+				partitionDataSets[i] = new DataSetFromOriginalCube( new FactTableRowIterator( factTable,
+						dimensionNamesForFilter,
+						positionForFilter,
+						null,
+						null,
+						new StopSign( ),
+						i,
+						partitionCount ), partitionDimesionResultSets, null );
+			}
+			aggregationCalculatorExecutor.setPartitionDataSets( partitionDataSets );
+		}
 		IAggregationResultSet[] resultSet = aggregationCalculatorExecutor.execute( new StopSign( ) );
 		assertEquals( resultSet[0].length( ), 2 );
 		assertEquals( resultSet[0].getAggregationDataType( 0 ), DataType.DOUBLE_TYPE );
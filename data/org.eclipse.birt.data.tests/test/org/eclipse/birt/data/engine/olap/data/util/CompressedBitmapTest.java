@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.birt.data.engine.olap.data.util;
+
+import java.io.IOException;
+
+import org.eclipse.birt.data.engine.core.DataException;
+import org.eclipse.birt.data.engine.olap.data.document.DocumentManagerFactory;
+import org.eclipse.birt.data.engine.olap.data.document.IDocumentManager;
+import org.eclipse.birt.data.engine.olap.data.document.IDocumentObject;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test the compressed bitmap of dimension positions
+ */
+public class CompressedBitmapTest
+{
+	/**
+	 * @throws IOException
+	 */
+	@Test
+	public void testAdd( ) throws IOException
+	{
+		CompressedBitmap bitmap = new CompressedBitmap( );
+		assertTrue( bitmap.isEmpty( ) );
+		// dense partition
+		for ( int i = 0; i < 10000; i++ )
+		{
+			bitmap.add( i * 3 );
+		}
+		// sparse partition, added in descending order
+		for ( int i = 100; i > 0; i-- )
+		{
+			bitmap.add( 200000 + i * 7 );
+		}
+		bitmap.add( 3 );
+		bitmap.add( 200007 );
+		assertEquals( 10100, bitmap.cardinality( ) );
+		assertTrue( bitmap.contains( 29997 ) );
+		assertFalse( bitmap.contains( 29998 ) );
+		assertTrue( bitmap.contains( 200700 ) );
+		assertFalse( bitmap.contains( 200701 ) );
+
+		int[] values = bitmap.toArray( );
+		assertEquals( 10100, values.length );
+		for ( int i = 0; i < 10000; i++ )
+		{
+			assertEquals( i * 3, values[i] );
+		}
+		for ( int i = 1; i <= 100; i++ )
+		{
+			assertEquals( 200000 + i * 7, values[9999 + i] );
+		}
+	}
+
+	/**
+	 * @throws IOException
+	 */
+	@Test
+	public void testAndOr( ) throws IOException
+	{
+		CompressedBitmap multiplesOf2 = new CompressedBitmap( );
+		CompressedBitmap multiplesOf3 = new CompressedBitmap( );
+		CompressedBitmap sparse = new CompressedBitmap( );
+		for ( int i = 0; i < 150000; i++ )
+		{
+			if ( i % 2 == 0 )
+				multiplesOf2.add( i );
+			if ( i % 3 == 0 )
+				multiplesOf3.add( i );
+			if ( i % 1000 == 0 )
+				sparse.add( i );
+		}
+
+		CompressedBitmap multiplesOf6 = multiplesOf2.and( multiplesOf3 );
+		assertEquals( 25000, multiplesOf6.cardinality( ) );
+		int[] values = multiplesOf6.toArray( );
+		for ( int i = 0; i < values.length; i++ )
+		{
+			assertEquals( i * 6, values[i] );
+		}
+
+		CompressedBitmap union = multiplesOf2.or( multiplesOf3 );
+		assertEquals( 100000, union.cardinality( ) );
+		assertTrue( union.contains( 9 ) );
+		assertFalse( union.contains( 7 ) );
+
+		assertEquals( 50, sparse.and( multiplesOf6 ).cardinality( ) );
+		assertEquals( 25100, sparse.or( multiplesOf6 ).cardinality( ) );
+		assertTrue( sparse.intersects( multiplesOf3 ) );
+
+		CompressedBitmap odd = new CompressedBitmap( );
+		odd.add( 1 );
+		odd.add( 160001 );
+		assertFalse( odd.intersects( multiplesOf2 ) );
+		assertTrue( odd.and( multiplesOf2 ).isEmpty( ) );
+	}
+
+	/**
+	 * @throws IOException
+	 */
+	@Test
+	public void testDiskArray( ) throws IOException
+	{
+		IDiskArray array = new BufferedPrimitiveDiskArray( );
+		for ( int i = 0; i < 5000; i++ )
+		{
+			array.add( Integer.valueOf( i * 5 ) );
+		}
+		IDiskArray result = CompressedBitmap.valueOf( array ).toDiskArray( );
+		assertEquals( array.size( ), result.size( ) );
+		for ( int i = 0; i < array.size( ); i++ )
+		{
+			assertEquals( array.get( i ), result.get( i ) );
+		}
+	}
+
+	/**
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	@Test
+	public void testReadWrite( ) throws IOException, DataException
+	{
+		CompressedBitmap bitmap = new CompressedBitmap( );
+		for ( int i = 0; i < 70000; i += 2 )
+		{
+			bitmap.add( i );
+		}
+		bitmap.add( 1000001 );
+		IDocumentManager documentManager = DocumentManagerFactory.createFileDocumentManager( );
+		IDocumentObject documentObject = documentManager.createDocumentObject( "bitmap" );
+		bitmap.write( documentObject );
+		documentObject.seek( 0 );
+		CompressedBitmap result = CompressedBitmap.read( documentObject );
+		documentObject.close( );
+		assertEquals( bitmap.cardinality( ), result.cardinality( ) );
+		assertTrue( result.contains( 69998 ) );
+		assertFalse( result.contains( 69999 ) );
+		assertTrue( result.contains( 1000001 ) );
+		assertEquals( bitmap.cardinality( ), result.and( bitmap )
+				.cardinality( ) );
+	}
+}
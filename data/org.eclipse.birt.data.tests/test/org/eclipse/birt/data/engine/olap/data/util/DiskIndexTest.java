@@ -761,4 +761,36 @@ public class DiskIndexTest {
 		keyList.clear( );
 		keyList.close( );
 	}
+	@Test
+    public void testSortKeys( ) throws IOException, DataException
+	{
+		int keyNumber = 1000;
+		BufferedStructureArray keyList = new BufferedStructureArray( IndexKey.getCreator( ),
+				keyNumber );
+		IndexKey key = null;
+		for ( int i = 0; i < keyNumber; i++ )
+		{
+			key = new IndexKey( );
+			key.setKey( new Object[]{new Double( ( i % 10 ) - 4.5 )} );
+			key.setDimensionPos( new int[]{ i } );
+			key.setOffset( new int[]{ i * 4 } );
+			keyList.add( key );
+		}
+		IDiskArray sortedList = DiskIndex.sortKeys( keyList );
+		assertEquals( sortedList.size( ), 10 );
+		for ( int i = 0; i < sortedList.size( ); i++ )
+		{
+			key = (IndexKey) sortedList.get( i );
+			assertEquals( key.getKey( )[0], new Double( i - 4.5 ) );
+			assertEquals( key.getDimensionPos( ).length, keyNumber / 10 );
+			for ( int j = 0; j < key.getDimensionPos( ).length; j++ )
+			{
+				// the positions of the same key keep their order
+				assertEquals( key.getDimensionPos( )[j], j * 10 + i );
+				assertEquals( key.getOffset( )[j], ( j * 10 + i ) * 4 );
+			}
+		}
+		keyList.clear( );
+		keyList.close( );
+	}
 }
@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.data.engine.olap.util;
+
+import java.math.BigDecimal;
+
+import org.eclipse.birt.data.engine.api.IConditionalExpression;
+import org.eclipse.birt.data.engine.api.querydefn.ConditionalExpression;
+import org.eclipse.birt.data.engine.api.querydefn.ScriptExpression;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test the measure expressions compiled without script
+ */
+public class CompiledMeasureExpressionTest
+{
+	/**
+	 *
+	 */
+	@Test
+	public void testArithmetic( )
+	{
+		CompiledMeasureExpression expr = compile( "(data[\"revenue\"] - data['cost']) * 100 / data[\"revenue\"]" );
+		assertNotNull( expr );
+		assertFalse( expr.isBoolean( ) );
+		assertArrayEquals( new String[]{
+				"revenue", "cost"
+		}, expr.getReferences( ) );
+		assertEquals( new Double( 25 ), expr.evaluate( new Object[]{
+				Integer.valueOf( 200 ), new BigDecimal( "150" )
+		} ) );
+		assertEquals( new Double( Double.NEGATIVE_INFINITY ),
+				expr.evaluate( new Object[]{
+						new Double( 0 ), new Double( 1 )
+				} ) );
+		assertEquals( new Double( -7 % 3 ), compile( "-data.a % 3" ).evaluate( new Object[]{
+			Integer.valueOf( 7 )
+		} ) );
+		assertEquals( new Double( 7 ), compile( "1 + 2 * data[\"a\"] - 1e1 / 5;" ).evaluate( new Object[]{
+			Integer.valueOf( 4 )
+		} ) );
+		// the values which are not numbers are evaluated by script
+		assertNull( expr.evaluate( new Object[]{
+				Integer.valueOf( 1 ), null
+		} ) );
+		assertNull( expr.evaluate( new Object[]{
+				"1", Integer.valueOf( 1 )
+		} ) );
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testCondition( )
+	{
+		CompiledMeasureExpression expr = compile( "data[\"a\"] > 10 && !(data[\"b\"] == 0) || data[\"a\"] <= -1" );
+		assertNotNull( expr );
+		assertTrue( expr.isBoolean( ) );
+		assertEquals( Boolean.TRUE, evaluate( expr, 11, 1 ) );
+		assertEquals( Boolean.FALSE, evaluate( expr, 11, 0 ) );
+		assertEquals( Boolean.TRUE, evaluate( expr, -1, 0 ) );
+		assertEquals( Boolean.FALSE, evaluate( expr, 5, 1 ) );
+
+		expr = CompiledMeasureExpression.compile( new ConditionalExpression( "data[\"a\"] / data[\"b\"]",
+				IConditionalExpression.OP_BETWEEN,
+				"0.1",
+				"0.5" ),
+				"data" );
+		assertNotNull( expr );
+		assertEquals( Boolean.TRUE, evaluate( expr, 1, 4 ) );
+		assertEquals( Boolean.FALSE, evaluate( expr, 3, 4 ) );
+		expr = CompiledMeasureExpression.compile( new ConditionalExpression( "data[\"a\"]",
+				IConditionalExpression.OP_GE,
+				"100" ),
+				"data" );
+		assertNotNull( expr );
+		assertEquals( Boolean.TRUE, expr.evaluate( new Object[]{
+			Integer.valueOf( 100 )
+		} ) );
+		assertEquals( Boolean.FALSE, expr.evaluate( new Object[]{
+			new Double( 99.5 )
+		} ) );
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testUnsupported( )
+	{
+		assertNull( compile( "data[\"a\"]" ) );
+		assertNull( compile( "(data[\"a\"])" ) );
+		assertNull( compile( "1 + 2" ) );
+		assertNull( compile( "data[\"a\"] + \"%\"" ) );
+		assertNull( compile( "Math.abs( data[\"a\"] )" ) );
+		assertNull( compile( "measure[\"a\"] + 1" ) );
+		assertNull( compile( "dimension[\"d\"][\"l\"] + 1" ) );
+		assertNull( compile( "(data[\"a\"] > 1) + 1" ) );
+		assertNull( compile( "data[\"a\"] && data[\"b\"]" ) );
+		assertNull( compile( "data[\"a\"] = 1" ) );
+		assertNull( compile( "data[\"a\"]++ + 1" ) );
+		assertNull( compile( "data[\"a\"] + 010" ) );
+		assertNull( compile( "var x = data[\"a\"] + 1; x" ) );
+		assertNull( CompiledMeasureExpression.compile( new ConditionalExpression( "data[\"a\"]",
+				IConditionalExpression.OP_TOP_N,
+				"10" ),
+				"data" ) );
+		assertNull( CompiledMeasureExpression.compile( new ConditionalExpression( "data[\"a\"]",
+				IConditionalExpression.OP_EQ,
+				"'abc'" ),
+				"data" ) );
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testBlock( )
+	{
+		CompiledMeasureExpression expr = compile( "data[\"a\"] * 2 + data[\"b\"]" );
+		int length = CompiledMeasureExpression.BLOCK_SIZE;
+		double[][] columns = new double[2][length];
+		for ( int i = 0; i < length; i++ )
+		{
+			columns[0][i] = i;
+			columns[1][i] = -i;
+		}
+		double[] result = new double[length];
+		expr.evaluate( columns, length, result );
+		for ( int i = 0; i < length; i++ )
+		{
+			assertEquals( i, result[i], 0 );
+		}
+	}
+
+	/**
+	 *
+	 * @param text
+	 * @return
+	 */
+	private static CompiledMeasureExpression compile( String text )
+	{
+		return CompiledMeasureExpression.compile( new ScriptExpression( text ),
+				"data" );
+	}
+
+	/**
+	 *
+	 * @param expr
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	private static Object evaluate( CompiledMeasureExpression expr, int a,
+			int b )
+	{
+		return expr.evaluate( new Object[]{
+				Integer.valueOf( a ), Integer.valueOf( b )
+		} );
+	}
+}
@@ -66,13 +66,136 @@ abstract public class DataEngine
 	 */
 	public static String DATA_SET_CACHE_ROW_LIMIT = "org.eclipse.birt.data.cache.RowLimit";
 
+	/**
+	 * The system property which indicates the total size of the data set
+	 * caches shared in the JVM, in memory and on disk. The unit is MB. When the
+	 * size is exceeded, the least recently used data set caches which are not
+	 * being loaded are evicted. Zero, which is the default, means the size is
+	 * unbounded. It is read once when the caches are created, and can be
+	 * changed later through the DataSetCache MBean, but not by the app context
+	 * of a query since the caches are shared by all sessions.
+	 */
+	public static String DATA_SET_CACHE_SIZE_LIMIT = "org.eclipse.birt.data.cache.SizeLimit";
+
+	/**
+	 * Indicates how long, in seconds, the data set cache saved by the query
+	 * can be loaded by later queries. The cache is evicted when it expires.
+	 * Zero, which is the default, means the cache never expires.
+	 */
+	public static String DATA_SET_CACHE_TIME_TO_LIVE = "org.eclipse.birt.data.cache.TimeToLive";
+
 	/**
 	 * Indicate the size of data cached for each result set.We only accept non-negative integer as input, 
 	 * the unit of which would be MB. 
 	 * If this setting is 0, all temporary rows will be cached in memory during query processing.
 	 */
 	public static String MEMORY_BUFFER_SIZE = "org.eclipse.birt.data.query.ResultBufferSize";
-	
+
+	/**
+	 * Indicates the format of the temporary files which are used when the rows
+	 * of a result set exceed the memory buffer size. The accepted values are
+	 * DISK_CACHE_FORMAT_ROW, which is the default, and
+	 * DISK_CACHE_FORMAT_COLUMNAR.
+	 */
+	public static String DISK_CACHE_FORMAT = "org.eclipse.birt.data.query.DiskCacheFormat";
+
+	/**
+	 * Rows are serialized one by one with a type tag per field.
+	 */
+	public static String DISK_CACHE_FORMAT_ROW = "row";
+
+	/**
+	 * Rows are serialized in fixed size blocks, column by column.
+	 */
+	public static String DISK_CACHE_FORMAT_COLUMNAR = "columnar";
+
+	/**
+	 * Indicates whether the blocks of columnar disk cache files should be
+	 * compressed. Only take effect when DISK_CACHE_FORMAT is columnar.
+	 */
+	public static String DISK_CACHE_COMPRESSION = "org.eclipse.birt.data.query.DiskCacheCompression";
+
+	/**
+	 * Indicates the max count of distinct values of a string column which are
+	 * kept in the dictionary of the column. The rows cached in memory or on
+	 * disk share one instance for each value in the dictionary, and the
+	 * values saved in report documents are encoded with their indexes in the
+	 * dictionary if STRING_DICTIONARY_ENCODING is enabled. When a column has
+	 * more distinct values, the values beyond the max count are kept as they
+	 * are. Zero disables the dictionaries. The default is 4096.
+	 */
+	public static String STRING_DICTIONARY_SIZE = "org.eclipse.birt.data.query.StringDictionarySize";
+
+	/**
+	 * Indicates whether the string columns of the data set data saved in
+	 * report documents should be encoded with the string dictionaries. The
+	 * documents are saved in the document version 4.2.4, which can't be read
+	 * by the data engines before it. The value is a Boolean, the default is
+	 * false.
+	 */
+	public static String STRING_DICTIONARY_ENCODING = "org.eclipse.birt.data.query.StringDictionaryEncoding";
+
+	/**
+	 * Indicates whether the simple expressions of the query bindings,
+	 * filters and aggregations are translated into Java and evaluated against
+	 * the current row without Rhino. The expressions or operand types which
+	 * can't be evaluated in Java are still evaluated by Rhino. The value is
+	 * "true" or "false", which is the default.
+	 */
+	public static String JAVA_EXPRESSION_EVALUATION = "org.eclipse.birt.data.query.JavaExpressionEvaluation";
+
+	/**
+	 * Indicates how many threads can be used to sort the rows which exceed the
+	 * memory buffer size. The sorted runs are generated concurrently and then
+	 * merged by a loser tree. Zero or one means the rows are sorted in the
+	 * thread of the query, which is the default.
+	 */
+	public static String DISK_SORT_PARALLELISM = "org.eclipse.birt.data.query.DiskSortParallelism";
+
+	/**
+	 * Indicates whether the rows of joint data sets are matched by a hash join
+	 * instead of sorting both data sets by the join keys. The smaller data set
+	 * is hashed in memory, and both data sets are partitioned to disk when it
+	 * exceeds the memory buffer size. The rows of a joint data set are then
+	 * not ordered by the join keys, and the join key values of the two data
+	 * sets should be of the same data type. The value is "true" or "false",
+	 * which is the default.
+	 */
+	public static String JOINT_DATA_SET_HASH_JOIN = "org.eclipse.birt.data.query.JointDataSetHashJoin";
+
+	/**
+	 * Indicates whether the filters, sorts, aggregations and max rows of the
+	 * queries on JDBC data sets are pushed down into the SQL query of the data
+	 * set, so that they are evaluated by the database. The SQL query is used as
+	 * a derived table, so it should be a single SELECT statement. Only the
+	 * operations which have the same result in the database are pushed down,
+	 * and the others are still evaluated in the data engine. If the rewritten
+	 * SQL query fails, the original one is run and all the operations are
+	 * evaluated in the data engine. The value is "true" or "false", which is
+	 * the default.
+	 */
+	public static String SQL_QUERY_PUSH_DOWN = "org.eclipse.birt.data.query.SQLQueryPushDown";
+
+	/**
+	 * Indicates whether the database compares the strings by their binary
+	 * values, as the data engine does. Only then the string comparisons and
+	 * the string group keys are pushed down into the SQL query by
+	 * SQL_QUERY_PUSH_DOWN, since they have different results in a case
+	 * insensitive collation. The value is "true" or "false", which is the
+	 * default.
+	 */
+	public static String SQL_QUERY_PUSH_DOWN_BINARY_COLLATION = "org.eclipse.birt.data.query.SQLQueryPushDownBinaryCollation";
+
+	/**
+	 * Indicates how many rows of an ODA result set are fetched in a batch by
+	 * a background thread, which fetches the rows ahead of the data engine so
+	 * that the fetching from the data source overlaps the processing of the
+	 * rows. At most 4 batches are buffered. Zero, the default, means the rows
+	 * are fetched in the thread of the query. The rows of result sets with
+	 * BLOB or CLOB columns are not prefetched.
+	 */
+	public static String ODA_RESULT_SET_PREFETCH_SIZE = "org.eclipse.birt.data.query.OdaResultSetPrefetchSize";
+
 	/**
 	 * This setting allow the administrator to set a limit on the amount of data that a query against 
 	 * a data object is allowed to access. Queries should be aborted with error if it exceeds this limit.
@@ -156,6 +279,65 @@ abstract public class DataEngine
 	 */
 	public static String IN_MEMORY_CUBE_SIZE = "org.eclipse.birt.data.engine.cube.inmemory.size";
 	
+	/**
+	 * Indicates whether the cubes of a report document are read through
+	 * memory mapped files. It only takes effect when the document is saved in
+	 * a folder, so that each cube document object is a file. The mapped files
+	 * are shared by the cube queries on the same document. The value is
+	 * "true" or "false", which is the default.
+	 */
+	public static String MEMORY_MAPPED_CUBE_DOCUMENT = "org.eclipse.birt.data.engine.cube.memoryMapped";
+	
+	/**
+	 * Indicates how many threads can be used to scan the fact table of a cube
+	 * query. The segments of the fact table are scanned and pre-aggregated
+	 * concurrently, and the partial results are merged before the final
+	 * aggregation. The query still scans the fact table in its own thread if
+	 * an aggregation depends on the order of the fact rows or is computed by
+	 * script. Zero or one means the fact table is scanned in the thread of
+	 * the query, which is the default.
+	 */
+	public static String CUBE_AGGREGATION_PARALLELISM = "org.eclipse.birt.data.engine.cube.aggregationParallelism";
+	
+	/**
+	 * Indicates how many threads can be used to sort the members of the
+	 * levels of a dimension when a cube is built. The index keys of the
+	 * levels are sorted concurrently, and the indexes are then written in the
+	 * thread of the build. Zero or one means the members are sorted in the
+	 * thread of the build, which is the default.
+	 */
+	public static String CUBE_DIMENSION_BUILD_PARALLELISM = "org.eclipse.birt.data.engine.cube.dimensionBuildParallelism";
+	
+	/**
+	 * The level combinations on which the aggregates of a cube are
+	 * materialized when the cube is created. The combinations are separated
+	 * by semicolons, and each one is a list of dimension/level names
+	 * separated by commas, such as "Time/Year,Geography/Region". An aggregate
+	 * also saves the levels above the given ones, and the SUM, MAX and MIN of
+	 * the numeric measures. The queries which only aggregate these measures by
+	 * these functions on these levels, without filters, read the aggregate
+	 * instead of the fact table.
+	 */
+	public static String CUBE_MATERIALIZED_AGGREGATES = "org.eclipse.birt.data.engine.cube.materializedAggregates";
+	
+	/**
+	 * Indicates after how many queries on the same level combination of a cube
+	 * an aggregate on the combination is materialized, if the cube is saved
+	 * in a writable document. Zero means the aggregates are not learned from
+	 * the queries, which is the default.
+	 */
+	public static String CUBE_AGGREGATE_LEARNING_THRESHOLD = "org.eclipse.birt.data.engine.cube.aggregateLearningThreshold";
+	
+	/**
+	 * Indicates the total size of the aggregation results of cube queries
+	 * cached in the JVM. The unit is MB. The repeated queries on a cube with
+	 * the same filter results, such as the queries of crosstab navigation,
+	 * reuse the cached results, and the queries on fewer levels are rolled up
+	 * from them if possible. The least recently used results are evicted when
+	 * the size is exceeded. Zero, which is the default, disables the cache.
+	 */
+	public static String CUBE_QUERY_RESULT_CACHE_SIZE = "org.eclipse.birt.data.engine.cube.queryResultCacheSize";
+	
 	/**
 	 * Creates a new instance of DataEngine, using the specified
 	 * DataEngineContext as its running environment
@@ -110,6 +110,8 @@ public class DataEngineContext
 	
 	public final static int DATASET_DATA_LEN_STREAM = 23;
 	
+	public final static int DATASET_STRING_DICTIONARY_STREAM = 24;
+	
 	public final static int EXPR_VALUE_STREAM = 31;
 	
 	public final static int EXPR_META_STREAM = 32;
@@ -192,6 +194,7 @@ public class DataEngineContext
 	private ScriptContext scriptContext;
 	private TimeZone currentTimeZone;
 	private String bundleVersion; // the bundle version of report engine
+	private boolean stringDictionaryEncoding;
 	
 	/**
 	 * When mode is MODE_GENERATION, the writer stream of archive will be used.
@@ -712,6 +715,9 @@ public class DataEngineContext
 			case DATASET_DATA_LEN_STREAM :
 				relativePath = "DataSetLens"; //$NON-NLS-1$
 				break;
+			case DATASET_STRING_DICTIONARY_STREAM :
+				relativePath = "DataSetStringDictionary"; //$NON-NLS-1$
+				break;
 			case EXPR_VALUE_STREAM :
 				relativePath = "ExprValue"; //$NON-NLS-1$
 				break;
@@ -851,6 +857,22 @@ public class DataEngineContext
 		return this.bundleVersion;
 	}	
 	
+	/**
+	 * Set whether the string columns of the data set data saved in the report
+	 * document are encoded with the string dictionaries.
+	 * 
+	 * @param stringDictionaryEncoding
+	 */
+	public void setStringDictionaryEncoding( boolean stringDictionaryEncoding )
+	{
+		this.stringDictionaryEncoding = stringDictionaryEncoding;
+	}
+	
+	public boolean isStringDictionaryEncoding( )
+	{
+		return this.stringDictionaryEncoding;
+	}
+	
 	public void setFlowMode(DataEngineFlowMode flowMode){
 		this.flowMode = flowMode;
 	}
@@ -13,12 +13,14 @@ package org.eclipse.birt.data.engine.executor;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.birt.data.engine.core.DataException;
+import org.eclipse.birt.data.engine.impl.DataSetCacheUtil;
 import org.eclipse.birt.data.engine.odi.IResultClass;
 
 /**
@@ -30,7 +32,7 @@ public class CacheMapManager
 	 * Please notice that we must use static variable here for the sharing of
 	 * cached data set would be cross data set session.
 	 */
-	private static Map JVMLevelCacheMap = Collections.synchronizedMap( new HashMap( ) );
+	private static DataSetCacheStore JVMLevelCacheMap = new DataSetCacheStore( );
 	private static Map<DataSourceAndDataSet, Integer> lockedDataSetCacheMap = Collections.synchronizedMap( new HashMap( ) );	
 	
 	private Map<DataSourceAndDataSet, IDataSetCacheObject> cacheMap;
@@ -45,6 +47,8 @@ public class CacheMapManager
 	static
 	{
 		new ShutdownHook( JVMLevelCacheMap );
+		JVMLevelCacheMap.setSizeLimit( DataSetCacheUtil.getJVMDataSetCacheSizeLimit( ) );
+		DataSetCacheStatistics.register( JVMLevelCacheMap );
 	}
 	
 	/**
@@ -106,6 +110,14 @@ public class CacheMapManager
 			if (cacheObject != null)
 			{
 				boolean reusable = cacheObject.isCachedDataReusable( requiredCapability );
+				if ( reusable && useJVMLevelCache
+						&& JVMLevelCacheMap.isExpired( dsAndDs ) )
+				{
+					reusable = false;
+					JVMLevelCacheMap.recordExpiration( );
+				}
+				if ( useJVMLevelCache )
+					JVMLevelCacheMap.recordLookup( reusable );
 				if ( !reusable )
 				{
 					if ( useJVMLevelCache )
@@ -142,6 +154,8 @@ public class CacheMapManager
 			}
 			else
 			{
+				if ( useJVMLevelCache )
+					JVMLevelCacheMap.recordLookup( false );
 				return false;
 			}
 		}
@@ -158,12 +172,40 @@ public class CacheMapManager
 		}
 	}
 	
+	/**
+	 * @param dsAndDs
+	 * @param dsco
+	 * @param timeToLive
+	 *            in milliseconds, 0 means the cache never expires
+	 */
 	void saveFinishOnCache( DataSourceAndDataSet dsAndDs,
-			IDataSetCacheObject dsco )
+			IDataSetCacheObject dsco, long timeToLive )
 	{
+		List<IDataSetCacheObject> evicted = null;
 		synchronized ( cacheMap )
 		{
 			cacheMap.put( dsAndDs, dsco );
+			if ( useJVMLevelCache )
+			{
+				JVMLevelCacheMap.setTimeToLive( dsAndDs, timeToLive );
+
+				Set<DataSourceAndDataSet> lockedKeys = new HashSet<DataSourceAndDataSet>( );
+				synchronized ( lockedDataSetCacheMap )
+				{
+					lockedKeys.addAll( lockedDataSetCacheMap.keySet( ) );
+				}
+				// the cache just saved is kept even if it exceeds the limit
+				lockedKeys.add( dsAndDs );
+				evicted = JVMLevelCacheMap.evict( lockedKeys );
+				for ( int i = 0; i < evicted.size( ); i++ )
+				{
+					tempDataSetCacheMap.values( ).remove( evicted.get( i ) );
+				}
+			}
+		}
+		for ( int i = 0; evicted != null && i < evicted.size( ); i++ )
+		{
+			evicted.get( i ).release( );
 		}
 	}
 	
@@ -343,6 +385,14 @@ public class CacheMapManager
 		}
 	}
 	
+	/**
+	 * @return the store of data set caches shared in the JVM
+	 */
+	public static DataSetCacheStore getJVMLevelCacheStore( )
+	{
+		return JVMLevelCacheMap;
+	}
+	
 	void clearCache( )
 	{
 		List cacheObjects = new ArrayList( );
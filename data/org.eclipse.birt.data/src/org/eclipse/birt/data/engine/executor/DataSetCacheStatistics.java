@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2004 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.birt.data.engine.executor;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Expose the statistics of the data set caches shared in the JVM through JMX.
+ */
+public class DataSetCacheStatistics implements DataSetCacheStatisticsMBean
+{
+	public static final String OBJECT_NAME = "org.eclipse.birt.data:type=DataSetCache";
+
+	private static Logger logger = Logger.getLogger( DataSetCacheStatistics.class.getName( ) );
+
+	private DataSetCacheStore store;
+
+	/**
+	 * 
+	 * @param store
+	 */
+	DataSetCacheStatistics( DataSetCacheStore store )
+	{
+		this.store = store;
+	}
+
+	/**
+	 * Register the statistics of the store to the platform MBean server. The
+	 * failure of registration does not affect the cache.
+	 * 
+	 * @param store
+	 */
+	static void register( DataSetCacheStore store )
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer( );
+			ObjectName name = new ObjectName( OBJECT_NAME );
+			if ( !server.isRegistered( name ) )
+			{
+				server.registerMBean( new DataSetCacheStatistics( store ), name );
+			}
+		}
+		catch ( Exception e )
+		{
+			logger.log( Level.FINE, e.getMessage( ), e );
+		}
+	}
+
+	public int getCacheCount( )
+	{
+		return store.size( );
+	}
+
+	public long getTotalSize( )
+	{
+		return store.getTotalSize( );
+	}
+
+	public long getSizeLimit( )
+	{
+		return store.getSizeLimit( ) / ( 1024 * 1024 );
+	}
+
+	public void setSizeLimit( long sizeLimit )
+	{
+		store.setSizeLimit( sizeLimit * 1024 * 1024 );
+	}
+
+	public long getHitCount( )
+	{
+		return store.getHitCount( );
+	}
+
+	public long getMissCount( )
+	{
+		return store.getMissCount( );
+	}
+
+	public long getEvictionCount( )
+	{
+		return store.getEvictionCount( );
+	}
+
+	public long getExpirationCount( )
+	{
+		return store.getExpirationCount( );
+	}
+
+	public void resetStatistics( )
+	{
+		store.resetStatistics( );
+	}
+}
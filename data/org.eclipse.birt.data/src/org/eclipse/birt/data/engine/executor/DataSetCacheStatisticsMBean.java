@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (c) 2004 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.birt.data.engine.executor;
+
+/**
+ * The management interface of the data set caches shared in the JVM.
+ */
+public interface DataSetCacheStatisticsMBean
+{
+	/**
+	 * @return the count of data set caches
+	 */
+	int getCacheCount( );
+
+	/**
+	 * @return the total size of data set caches in bytes
+	 */
+	long getTotalSize( );
+
+	/**
+	 * @return the size limit of data set caches in MB, 0 if it is unbounded
+	 */
+	long getSizeLimit( );
+
+	/**
+	 * @param sizeLimit
+	 *            the size limit of data set caches in MB, 0 means unbounded
+	 */
+	void setSizeLimit( long sizeLimit );
+
+	/**
+	 * @return how many times a data set is loaded from cache
+	 */
+	long getHitCount( );
+
+	/**
+	 * @return how many times a data set can not be loaded from cache
+	 */
+	long getMissCount( );
+
+	/**
+	 * @return how many data set caches are evicted by the size limit
+	 */
+	long getEvictionCount( );
+
+	/**
+	 * @return how many data set caches are evicted by their time to live
+	 */
+	long getExpirationCount( );
+
+	/**
+	 * Reset the counters.
+	 */
+	void resetStatistics( );
+}
@@ -0,0 +1,336 @@
+/*******************************************************************************
+ * Copyright (c) 2004 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.birt.data.engine.executor;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.birt.data.engine.core.DataException;
+import org.eclipse.birt.data.engine.core.security.FileSecurity;
+import org.eclipse.birt.data.engine.executor.cache.SizeOfUtil;
+
+/**
+ * The store of data set caches shared in the JVM. The caches are kept in the
+ * order of their last access, so that the least recently used caches can be
+ * evicted when the total size of the caches, in memory and on disk, exceeds
+ * the size limit. A cache can also be given a time to live, after which it
+ * can not be loaded any more. The hits, misses, evictions and expirations are
+ * counted and exposed by DataSetCacheStatisticsMBean.
+ *
+ * The store is a map so that it can be used as the JVM level cache map. All
+ * access is synchronized on the store itself.
+ */
+public class DataSetCacheStore
+		extends
+			LinkedHashMap<DataSourceAndDataSet, IDataSetCacheObject>
+{
+	private static final long serialVersionUID = 2712734837245426011L;
+
+	// the size and the expiration time of every cache
+	private Map<DataSourceAndDataSet, long[]> entryInfo;
+
+	// the total size of caches in bytes
+	private volatile long totalSize;
+
+	// 0 means the size is unbounded
+	private volatile long sizeLimit;
+
+	private AtomicLong hitCount = new AtomicLong( );
+	private AtomicLong missCount = new AtomicLong( );
+	private AtomicLong evictionCount = new AtomicLong( );
+	private AtomicLong expirationCount = new AtomicLong( );
+
+	/**
+	 * Construction
+	 */
+	DataSetCacheStore( )
+	{
+		super( 16, 0.75f, true );
+		this.entryInfo = new HashMap<DataSourceAndDataSet, long[]>( );
+	}
+
+	/*
+	 * @see java.util.HashMap#get(java.lang.Object)
+	 */
+	public synchronized IDataSetCacheObject get( Object key )
+	{
+		return super.get( key );
+	}
+
+	/*
+	 * @see java.util.HashMap#containsKey(java.lang.Object)
+	 */
+	public synchronized boolean containsKey( Object key )
+	{
+		return super.containsKey( key );
+	}
+
+	/*
+	 * @see java.util.HashMap#put(java.lang.Object, java.lang.Object)
+	 */
+	public synchronized IDataSetCacheObject put( DataSourceAndDataSet key,
+			IDataSetCacheObject value )
+	{
+		IDataSetCacheObject old = super.put( key, value );
+		long size = estimateSize( value );
+		long[] info = entryInfo.put( key, new long[]{
+				size, 0
+		} );
+		if ( info != null )
+			totalSize -= info[0];
+		totalSize += size;
+		return old;
+	}
+
+	/*
+	 * @see java.util.HashMap#remove(java.lang.Object)
+	 */
+	public synchronized IDataSetCacheObject remove( Object key )
+	{
+		long[] info = entryInfo.remove( key );
+		if ( info != null )
+			totalSize -= info[0];
+		return super.remove( key );
+	}
+
+	/*
+	 * @see java.util.HashMap#clear()
+	 */
+	public synchronized void clear( )
+	{
+		super.clear( );
+		entryInfo.clear( );
+		totalSize = 0;
+	}
+
+	/*
+	 * @see java.util.HashMap#size()
+	 */
+	public synchronized int size( )
+	{
+		return super.size( );
+	}
+
+	/**
+	 * Return a snapshot of the keys, so that the keys can be iterated while
+	 * the store is modified.
+	 *
+	 * @see java.util.HashMap#keySet()
+	 */
+	public synchronized Set<DataSourceAndDataSet> keySet( )
+	{
+		return new LinkedHashSet<DataSourceAndDataSet>( super.keySet( ) );
+	}
+
+	/**
+	 * Set the time to live of a cache in the store.
+	 *
+	 * @param key
+	 * @param timeToLive
+	 *            in milliseconds, 0 means the cache never expires
+	 */
+	synchronized void setTimeToLive( DataSourceAndDataSet key,
+			long timeToLive )
+	{
+		long[] info = entryInfo.get( key );
+		if ( info != null )
+			info[1] = timeToLive > 0 ? System.currentTimeMillis( )
+					+ timeToLive : 0;
+	}
+
+	/**
+	 * @param key
+	 * @return whether the cache is expired
+	 */
+	synchronized boolean isExpired( DataSourceAndDataSet key )
+	{
+		long[] info = entryInfo.get( key );
+		return info != null && info[1] > 0
+				&& info[1] <= System.currentTimeMillis( );
+	}
+
+	/**
+	 * Remove the least recently used caches until the total size does not
+	 * exceed the size limit. The caches being loaded are kept. The removed
+	 * caches are returned so that they can be released by the caller out of
+	 * the lock of store.
+	 *
+	 * @param lockedKeys
+	 *            the keys of caches being loaded
+	 * @return
+	 */
+	synchronized List<IDataSetCacheObject> evict(
+			Set<DataSourceAndDataSet> lockedKeys )
+	{
+		List<IDataSetCacheObject> evicted = new ArrayList<IDataSetCacheObject>( );
+		if ( sizeLimit <= 0 || totalSize <= sizeLimit )
+			return evicted;
+
+		Iterator<DataSourceAndDataSet> it = new ArrayList<DataSourceAndDataSet>( super.keySet( ) ).iterator( );
+		while ( totalSize > sizeLimit && it.hasNext( ) )
+		{
+			DataSourceAndDataSet key = it.next( );
+			if ( lockedKeys.contains( key ) )
+				continue;
+			evicted.add( remove( key ) );
+			evictionCount.incrementAndGet( );
+		}
+		return evicted;
+	}
+
+	/**
+	 * Count a lookup of the store.
+	 *
+	 * @param hit
+	 */
+	void recordLookup( boolean hit )
+	{
+		if ( hit )
+			hitCount.incrementAndGet( );
+		else
+			missCount.incrementAndGet( );
+	}
+
+	/**
+	 * Count an expired cache which is removed.
+	 */
+	void recordExpiration( )
+	{
+		expirationCount.incrementAndGet( );
+	}
+
+	/**
+	 * @param sizeLimit
+	 *            the size limit in bytes, 0 means the size is unbounded
+	 */
+	public void setSizeLimit( long sizeLimit )
+	{
+		this.sizeLimit = Math.max( 0, sizeLimit );
+	}
+
+	/**
+	 * @return the size limit in bytes
+	 */
+	public long getSizeLimit( )
+	{
+		return sizeLimit;
+	}
+
+	/**
+	 * @return the total size of caches in bytes
+	 */
+	public long getTotalSize( )
+	{
+		return totalSize;
+	}
+
+	public long getHitCount( )
+	{
+		return hitCount.get( );
+	}
+
+	public long getMissCount( )
+	{
+		return missCount.get( );
+	}
+
+	public long getEvictionCount( )
+	{
+		return evictionCount.get( );
+	}
+
+	public long getExpirationCount( )
+	{
+		return expirationCount.get( );
+	}
+
+	/**
+	 * Reset the counters.
+	 */
+	public void resetStatistics( )
+	{
+		hitCount.set( 0 );
+		missCount.set( 0 );
+		evictionCount.set( 0 );
+		expirationCount.set( 0 );
+	}
+
+	/**
+	 * Estimate the size of a cache. The size of a memory cache is estimated by
+	 * its rows, and the size of a disk cache is the length of its files.
+	 *
+	 * @param cacheObject
+	 * @return
+	 */
+	private static long estimateSize( IDataSetCacheObject cacheObject )
+	{
+		if ( cacheObject instanceof DataSetCacheObjectWithDummyData )
+		{
+			return estimateSize( ( (DataSetCacheObjectWithDummyData) cacheObject ).getSourceDataSetCacheObject( ) );
+		}
+		if ( cacheObject instanceof MemoryDataSetCacheObject )
+		{
+			MemoryDataSetCacheObject memoryCache = (MemoryDataSetCacheObject) cacheObject;
+			if ( memoryCache.getResultClass( ) == null )
+				return 0;
+			try
+			{
+				SizeOfUtil sizeOfUtil = new SizeOfUtil( memoryCache.getResultClass( ) );
+				long size = 0;
+				for ( int i = 0; i < memoryCache.getSize( ); i++ )
+				{
+					size += sizeOfUtil.sizeOf( memoryCache.getResultObject( i ) );
+				}
+				return size;
+			}
+			catch ( DataException e )
+			{
+				return 0;
+			}
+		}
+		if ( cacheObject instanceof DiskDataSetCacheObject )
+		{
+			return getLength( new File( ( (DiskDataSetCacheObject) cacheObject ).getCacheDir( ) ) );
+		}
+		if ( cacheObject instanceof IncreDataSetCacheObject )
+		{
+			return getLength( new File( ( (IncreDataSetCacheObject) cacheObject ).getCacheDir( ) ) );
+		}
+		return 0;
+	}
+
+	/**
+	 * @param file
+	 * @return the total length of the file or the files in the directory
+	 */
+	private static long getLength( File file )
+	{
+		if ( !FileSecurity.fileExist( file ) )
+			return 0;
+		if ( !FileSecurity.fileIsDirectory( file ) )
+			return file.length( );
+		long length = 0;
+		File[] files = FileSecurity.fileListFiles( file );
+		for ( int i = 0; files != null && i < files.length; i++ )
+		{
+			length += getLength( files[i] );
+		}
+		return length;
+	}
+}
@@ -26,7 +26,9 @@ import java.util.logging.Logger;
 
 import org.eclipse.birt.core.data.DataType;
 import org.eclipse.birt.core.data.DataTypeUtil;
+import org.eclipse.birt.data.engine.api.DataEngine;
 import org.eclipse.birt.data.engine.api.DataEngineContext;
+import org.eclipse.birt.data.engine.api.IBaseDataSetDesign;
 import org.eclipse.birt.data.engine.api.IColumnDefinition;
 import org.eclipse.birt.data.engine.api.IOdaDataSetDesign;
 import org.eclipse.birt.data.engine.api.IQueryDefinition;
@@ -36,6 +38,7 @@ import org.eclipse.birt.data.engine.executor.QueryExecutionStrategyUtil.Strategy
 import org.eclipse.birt.data.engine.executor.dscache.DataSetToCache;
 import org.eclipse.birt.data.engine.executor.transform.CachedResultSet;
 import org.eclipse.birt.data.engine.executor.transform.SimpleResultSet;
+import org.eclipse.birt.data.engine.executor.transform.StreamingAggregationResultSet;
 import org.eclipse.birt.data.engine.i18n.ResourceConstants;
 import org.eclipse.birt.data.engine.impl.CancelManager;
 import org.eclipse.birt.data.engine.impl.DataEngineImpl;
@@ -43,6 +46,7 @@ import org.eclipse.birt.data.engine.impl.DataEngineSession;
 import org.eclipse.birt.data.engine.impl.ICancellable;
 import org.eclipse.birt.data.engine.impl.IQueryContextVisitor;
 import org.eclipse.birt.data.engine.impl.QueryContextVisitorUtil;
+import org.eclipse.birt.data.engine.impl.SortingOptimizer;
 import org.eclipse.birt.data.engine.impl.StopSign;
 import org.eclipse.birt.data.engine.impl.document.viewing.ExprMetaUtil;
 import org.eclipse.birt.data.engine.odaconsumer.ColumnHint;
@@ -1039,6 +1043,9 @@ public class DataSourceQuery extends BaseQuery implements IDataSourceQuery, IPre
 			resultMetadata = mergeResultHint( modelResultHints , resultMetadata );
 		}
 		
+		if ( rs != null )
+			rs.startPrefetch( getPrefetchSize( eventHandler.getAppContext( ) ) );
+
 		// Initialize CachedResultSet using the ODA result set
 		if ( session.getDataSetCacheManager( ).doesSaveToCache( ) == false )
 		{
@@ -1047,11 +1054,27 @@ public class DataSourceQuery extends BaseQuery implements IDataSourceQuery, IPre
 					&& this.getQueryDefinition( ) instanceof IQueryDefinition )
 			{
 				IQueryDefinition queryDefn = (IQueryDefinition) this.getQueryDefinition( );
+				IBaseDataSetDesign dataSetDesign = queryDefn.getDataSetName( ) == null
+						? null
+						: ( (DataEngineImpl) this.session.getEngine( ) ).getDataSetDesign( queryDefn.getDataSetName( ) );
+				
+				if ( QueryExecutionStrategyUtil.isStreamingAggregation( this.session,
+						queryDefn,
+						dataSetDesign ) )
+				{
+					StreamingAggregationResultSet streamingResult = new StreamingAggregationResultSet( this,
+							rs,
+							resultMetadata,
+							eventHandler,
+							this.getGrouping( ),
+							new SortingOptimizer( dataSetDesign, queryDefn ).acceptGroupSorting( ),
+							this.session );
+					
+					return streamingResult.getResultSetIterator( );
+				}
 				
 				Strategy strategy = QueryExecutionStrategyUtil.getQueryExecutionStrategy( this.session, queryDefn,
-						queryDefn.getDataSetName( ) == null
-						? null
-						: ( (DataEngineImpl) this.session.getEngine( ) ).getDataSetDesign( queryDefn.getDataSetName( ) ) );
+						dataSetDesign );
 				if ( strategy  != Strategy.Complex )
 				{
 					SimpleResultSet simpleResult = new SimpleResultSet( this,
@@ -1084,6 +1107,29 @@ public class DataSourceQuery extends BaseQuery implements IDataSourceQuery, IPre
 		return ri;
     }
     
+	/**
+	 * @param appContext
+	 * @return the number of rows in a prefetched batch, 0 if the rows are not
+	 *         prefetched
+	 */
+	private static int getPrefetchSize( Map appContext )
+	{
+		if ( appContext == null )
+			return 0;
+		Object prefetchSize = appContext.get( DataEngine.ODA_RESULT_SET_PREFETCH_SIZE );
+		if ( prefetchSize == null )
+			return 0;
+		try
+		{
+			return Math.max( 0, Integer.parseInt( prefetchSize.toString( )
+					.trim( ) ) );
+		}
+		catch ( NumberFormatException e )
+		{
+			return 0;
+		}
+	}
+
 	private static class OdaQueryCanceller implements ICancellable
     {
     	private PreparedStatement statement;
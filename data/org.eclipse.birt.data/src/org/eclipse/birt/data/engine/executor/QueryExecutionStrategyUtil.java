@@ -67,6 +67,49 @@ public final class QueryExecutionStrategyUtil
 	 */
 	public static Strategy getQueryExecutionStrategy( DataEngineSession session, IQueryDefinition query,
 			IBaseDataSetDesign dataSet ) throws DataException
+	{
+		return getQueryExecutionStrategy( session, query, dataSet, false );
+	}
+
+	/**
+	 * Whether the query can be executed by streaming aggregation. A summary
+	 * query only outputs the rows of its groups, so its aggregations can be
+	 * calculated by hash grouping while the rows are fetched, and the rows
+	 * need not be cached or sorted. The query should satisfy the conditions
+	 * of simple strategy except that it does not use details, its groups
+	 * are sorted by their keys and it has no running aggregation.
+	 * 
+	 * @param session
+	 * @param query
+	 * @param dataSet
+	 * @return
+	 * @throws DataException
+	 */
+	public static boolean isStreamingAggregation( DataEngineSession session,
+			IQueryDefinition query, IBaseDataSetDesign dataSet )
+			throws DataException
+	{
+		// the group information and the aggregations are not saved to report
+		// document
+		if ( session.getEngineContext( ).getMode( ) != DataEngineContext.DIRECT_PRESENTATION )
+			return false;
+		if ( !query.isSummaryQuery( ) || query.cacheQueryResults( ) )
+			return false;
+		return getQueryExecutionStrategy( session, query, dataSet, true ) != Strategy.Complex;
+	}
+
+	/**
+	 * 
+	 * @param session
+	 * @param query
+	 * @param dataSet
+	 * @param streamingAggregation
+	 * @return
+	 * @throws DataException
+	 */
+	private static Strategy getQueryExecutionStrategy( DataEngineSession session,
+			IQueryDefinition query, IBaseDataSetDesign dataSet,
+			boolean streamingAggregation ) throws DataException
 	{
 		/*if ( session.getEngineContext( ).getDataEngineOption( ) > 4 )
 			return Strategy.Complex;*/
@@ -84,6 +127,12 @@ public final class QueryExecutionStrategyUtil
 					return Strategy.Complex;
 				if ( !isDirectColumnRefGroupKey( group, query ) )
 					return Strategy.Complex;
+				if ( streamingAggregation )
+				{
+					if ( !isHashGroup( group, query, opt ) )
+						return Strategy.Complex;
+					continue;
+				}
 				if( group.getFilters( ).isEmpty( ) && group.getSorts( ).isEmpty( ) && !query.getQueryExecutionHints( ).doSortBeforeGrouping( ))
 					continue;
 				if( opt.acceptGroupSorting( ) )
@@ -129,7 +178,7 @@ public final class QueryExecutionStrategyUtil
 				&& query.getSubqueries( ).size( ) > 0 )
 			return Strategy.Complex;
 
-		if( !query.usesDetails( ) )
+		if( !query.usesDetails( ) && !streamingAggregation )
 		{
 			return Strategy.Complex;
 		}
@@ -151,6 +200,11 @@ public final class QueryExecutionStrategyUtil
 					{
 						return Strategy.Complex;
 					}
+					if ( streamingAggregation
+							&& ( aggr == null || aggr.getType( ) == IAggrFunction.RUNNING_AGGR ) )
+					{
+						return Strategy.Complex;
+					}
 					
 					//TODO:Enhance me
 					List exprs = new ArrayList();
@@ -246,6 +300,33 @@ public final class QueryExecutionStrategyUtil
 		return hasAggregation?Strategy.SimpleLookingFoward:Strategy.SimpleNoLookingFoward;
 	}
 	
+	/**
+	 * Whether the instances of a group can be found by hashing the group key.
+	 * Group instances are sorted by their keys after aggregation, so the group
+	 * should be sorted before grouping, unless the rows are already sorted by
+	 * data source. The group should neither be grouped by row count, nor have
+	 * group filters or group sorts, which need the values of aggregations.
+	 * 
+	 * @param group
+	 * @param query
+	 * @param opt
+	 * @return
+	 * @throws DataException
+	 */
+	private static boolean isHashGroup( IGroupDefinition group,
+			IQueryDefinition query, SortingOptimizer opt ) throws DataException
+	{
+		if ( !group.getFilters( ).isEmpty( ) || !group.getSorts( ).isEmpty( ) )
+			return false;
+		if ( group.getInterval( ) == IGroupDefinition.NO_INTERVAL
+				&& Math.round( group.getIntervalRange( ) ) > 1 )
+			return false;
+		if ( opt.acceptGroupSorting( ) )
+			return true;
+		return group.getSortDirection( ) != IGroupDefinition.NO_SORT
+				&& query.getQueryExecutionHints( ).doSortBeforeGrouping( );
+	}
+
 	private static boolean isDirectColumnRefGroupKey(IGroupDefinition group,IQueryDefinition query )
 	{
 		String expr = getGroupKeyExpression(group);
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2008 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.data.engine.executor.aggregation;
+
+import java.util.Map;
+
+import org.eclipse.birt.core.script.ScriptContext;
+import org.eclipse.birt.data.engine.api.aggregation.Accumulator;
+import org.eclipse.birt.data.engine.core.DataException;
+import org.eclipse.birt.data.engine.impl.IExecutorHelper;
+import org.eclipse.birt.data.engine.odi.IAggrDefnManager;
+import org.eclipse.birt.data.engine.odi.IResultIterator;
+import org.eclipse.birt.data.engine.odi.IResultObject;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * The aggregation helper of streaming aggregation, where the rows are not
+ * sorted by their group keys. Every group instance keeps its own accumulators,
+ * and a row is accumulated to the accumulators of the group instances it
+ * belongs to, so the aggregate values are calculated while the rows are
+ * fetched and the rows need not be cached. Running aggregations are not
+ * supported.
+ */
+public class HashAggregationHelper extends ProgressiveAggregationHelper
+{
+	private IAggrDefnManager manager;
+
+	// the group instances of current row, indexed by group level
+	private AggregationGroup[] currentGroups;
+
+	/**
+	 *
+	 * @param columnBindings
+	 * @param manager
+	 * @param tempDir
+	 * @param currentScope
+	 * @param sc
+	 * @param helper
+	 * @throws DataException
+	 */
+	public HashAggregationHelper( Map columnBindings,
+			IAggrDefnManager manager, String tempDir, Scriptable currentScope,
+			ScriptContext sc, IExecutorHelper helper ) throws DataException
+	{
+		super( columnBindings, manager, tempDir, currentScope, sc, helper );
+		this.manager = manager;
+	}
+
+	/**
+	 * Accumulate a row to the group instances it belongs to.
+	 *
+	 * @param groups
+	 *            the group instances of the row, indexed by group level
+	 * @param ro
+	 * @param currentRowIndex
+	 * @throws DataException
+	 */
+	public void onRow( AggregationGroup[] groups, IResultObject ro,
+			int currentRowIndex ) throws DataException
+	{
+		this.currentGroups = groups;
+		// The accumulators are started when they are created and finished in
+		// finish(), so no group is started or ended here.
+		super.onRow( Integer.MAX_VALUE, Integer.MAX_VALUE, ro, currentRowIndex );
+	}
+
+	/**
+	 * Finish the accumulators of a group instance and keep their values. It is
+	 * called after all rows are accumulated.
+	 *
+	 * @param group
+	 * @throws DataException
+	 */
+	public void finish( AggregationGroup group ) throws DataException
+	{
+		if ( group.accumulators == null )
+			return;
+		for ( int i = 0; i < group.accumulators.length; i++ )
+		{
+			Accumulator acc = group.accumulators[i];
+			if ( acc == null )
+				continue;
+			acc.finish( );
+			// an exception thrown during accumulation is kept as the value
+			if ( group.values[i] == null )
+				group.values[i] = acc.getValue( );
+		}
+		group.accumulators = null;
+	}
+
+	/**
+	 * Get the aggregate value of a group instance.
+	 *
+	 * @param name
+	 * @param group
+	 *            the group instance at the group level of the aggregation
+	 * @return
+	 * @throws DataException
+	 */
+	public Object getAggrValue( String name, AggregationGroup group )
+			throws DataException
+	{
+		int aggrIndex = this.manager.getAggrDefnIndex( name );
+		if ( group == null || group.values == null
+				|| group.values[aggrIndex] == null && !group.accumulated[aggrIndex] )
+			return this.manager.getAggrDefn( aggrIndex )
+					.getAggregation( )
+					.getDefaultValue( );
+		return group.values[aggrIndex];
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.executor.aggregation.ProgressiveAggregationHelper#getAggrValue(java.lang.String, org.eclipse.birt.data.engine.odi.IResultIterator)
+	 */
+	public Object getAggrValue( String name, IResultIterator ri )
+			throws DataException
+	{
+		// the result iterator knows the group instances of its current row
+		return ri.getAggrValue( name );
+	}
+
+	/**
+	 * @param aggrIndex
+	 * @return the group level of an aggregation
+	 * @throws DataException
+	 */
+	public int getGroupLevel( int aggrIndex ) throws DataException
+	{
+		return Math.min( this.manager.getAggrDefn( aggrIndex ).getGroupLevel( ),
+				this.currentGroups.length - 1 );
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.executor.aggregation.ProgressiveAggregationHelper#getAccumulator(int)
+	 */
+	protected Accumulator getAccumulator( int aggrIndex ) throws DataException
+	{
+		AggregationGroup group = this.currentGroups[getGroupLevel( aggrIndex )];
+		group.initialize( this.manager.getAggrCount( ) );
+		Accumulator acc = group.accumulators[aggrIndex];
+		if ( acc == null )
+		{
+			acc = this.manager.getAggrDefn( aggrIndex )
+					.getAggregation( )
+					.newAccumulator( );
+			acc.start( );
+			group.accumulators[aggrIndex] = acc;
+			group.accumulated[aggrIndex] = true;
+		}
+		return acc;
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.executor.aggregation.ProgressiveAggregationHelper#addAggrValue(int, java.lang.Object)
+	 */
+	protected void addAggrValue( int aggrIndex, Object value )
+			throws DataException
+	{
+		// Only exceptions are added during accumulation, and the first one of
+		// a group instance is kept.
+		AggregationGroup group = this.currentGroups[getGroupLevel( aggrIndex )];
+		group.initialize( this.manager.getAggrCount( ) );
+		if ( group.values[aggrIndex] == null )
+			group.values[aggrIndex] = value;
+	}
+
+	/**
+	 * The accumulators and the aggregate values of a group instance.
+	 */
+	public static class AggregationGroup
+	{
+		private Accumulator[] accumulators;
+		private Object[] values;
+		private boolean[] accumulated;
+
+		private void initialize( int aggrCount )
+		{
+			if ( this.values != null )
+				return;
+			this.accumulators = new Accumulator[aggrCount];
+			this.values = new Object[aggrCount];
+			this.accumulated = new boolean[aggrCount];
+		}
+	}
+}
@@ -179,7 +179,7 @@ public class ProgressiveAggregationHelper implements IProgressiveAggregationHelp
 			throws DataException
 	{
 		IAggrInfo aggrInfo = getAggrInfo( aggrIndex );
-		Accumulator acc = this.accumulators.get(aggrIndex);
+		Accumulator acc = getAccumulator( aggrIndex );
 		boolean newGroup = false;
 		IParameterDefn[] argDefs = aggrInfo.getAggregation( ).getParameterDefn( );
 		if (startingGroupLevel <= aggrInfo.getGroupLevel( )) 
@@ -207,7 +207,7 @@ public class ProgressiveAggregationHelper implements IProgressiveAggregationHelp
 			}
 			catch ( BirtException e )
 			{
-				currentRoundAggrValue[aggrIndex].add( e );
+				addAggrValue( aggrIndex, e );
 			}
 		}
 
@@ -221,7 +221,7 @@ public class ProgressiveAggregationHelper implements IProgressiveAggregationHelp
 			{
 				DataException e = new DataException( ResourceConstants.INVALID_AGGR_PARAMETER,
 						aggrInfo.getName( ) );
-				currentRoundAggrValue[aggrIndex].add( e );
+				addAggrValue( aggrIndex, e );
 			}
 			
 			try
@@ -257,14 +257,14 @@ public class ProgressiveAggregationHelper implements IProgressiveAggregationHelp
 				{
 					DataException e = new DataException( ResourceConstants.INVALID_AGGR_PARAMETER,
 							aggrInfo.getName( ) );
-					currentRoundAggrValue[aggrIndex].add( e );
+					addAggrValue( aggrIndex, e );
 				}
 				acc.onRow( aggrArgs[aggrIndex] );
 				newGroup = false;
 			}
 			catch ( DataException e )
 			{
-				currentRoundAggrValue[aggrIndex].add( e );
+				addAggrValue( aggrIndex, e );
 			}
 		}
 		
@@ -274,7 +274,7 @@ public class ProgressiveAggregationHelper implements IProgressiveAggregationHelp
 		if ( isRunning )
 		{
 			Object value = acc.getValue( );
-			currentRoundAggrValue[aggrIndex].add( value );
+			addAggrValue( aggrIndex, value );
 		}
 
 		if ( endingGroupLevel <= aggrInfo.getGroupLevel( ) )
@@ -287,11 +287,37 @@ public class ProgressiveAggregationHelper implements IProgressiveAggregationHelp
 			if ( !isRunning )
 			{
 				Object value = acc.getValue( );
-				currentRoundAggrValue[aggrIndex].add( value );
+				addAggrValue( aggrIndex, value );
 			}
 		}
 	}
 	
+	/**
+	 * Return the accumulator which the current row is accumulated to.
+	 * 
+	 * @param aggrIndex
+	 * @return
+	 * @throws DataException
+	 */
+	protected Accumulator getAccumulator( int aggrIndex ) throws DataException
+	{
+		return this.accumulators.get( aggrIndex );
+	}
+
+	/**
+	 * Add a calculated aggregate value, or the exception thrown while the
+	 * aggregation is calculated.
+	 * 
+	 * @param aggrIndex
+	 * @param value
+	 * @throws DataException
+	 */
+	protected void addAggrValue( int aggrIndex, Object value )
+			throws DataException
+	{
+		this.currentRoundAggrValue[aggrIndex].add( value );
+	}
+	
 	/**
 	 * Checks whether the arguments number is valid
 	 * 
@@ -39,6 +39,7 @@ public class CacheUtil
 	private static final String PATH_SEP = File.separator;
 	private static final String TEST_MEM_BUFFER_SIZE = "birt.data.engine.test.memcachesize";
 	private static final int MAGIC_NUMBER = 2000000000;
+	private static final int DEFAULT_STRING_DICTIONARY_SIZE = 4096;
 	/**
 	 * timestamp.data file will be used in incremental cache, while
 	 * time.data file will be used in disk cache.
@@ -115,7 +116,163 @@ public class CacheUtil
 	}
 
 	/**
-	 * 
+	 * @param appContext
+	 * @return whether the rows exported to disk should be saved in columnar
+	 *         blocks
+	 */
+	public static boolean isColumnarDiskCache( Map appContext )
+	{
+		if ( appContext == null )
+			return false;
+		Object format = appContext.get( DataEngine.DISK_CACHE_FORMAT );
+		return format != null
+				&& DataEngine.DISK_CACHE_FORMAT_COLUMNAR.equalsIgnoreCase( format.toString( )
+						.trim( ) );
+	}
+
+	/**
+	 * @param appContext
+	 * @return whether the columnar blocks exported to disk should be
+	 *         compressed
+	 */
+	public static boolean isDiskCacheCompressed( Map appContext )
+	{
+		if ( appContext == null )
+			return false;
+		Object compress = appContext.get( DataEngine.DISK_CACHE_COMPRESSION );
+		return compress != null
+				&& Boolean.valueOf( compress.toString( ).trim( ) ).booleanValue( );
+	}
+
+	/**
+	 * @param appContext
+	 * @return how many threads can be used to sort the rows exported to disk
+	 */
+	public static int getDiskSortParallelism( Map appContext )
+	{
+		if ( appContext == null )
+			return 1;
+		Object parallelism = appContext.get( DataEngine.DISK_SORT_PARALLELISM );
+		if ( parallelism == null )
+			return 1;
+		try
+		{
+			return Math.max( 1, Integer.parseInt( parallelism.toString( )
+					.trim( ) ) );
+		}
+		catch ( NumberFormatException e )
+		{
+			return 1;
+		}
+	}
+
+	/**
+	 * @param appContext
+	 * @return the count of the threads which scan the fact table of a cube
+	 *         query, 1 if the fact table is scanned in the thread of the query
+	 */
+	public static int getCubeAggregationParallelism( Map appContext )
+	{
+		if ( appContext == null )
+			return 1;
+		Object parallelism = appContext.get( DataEngine.CUBE_AGGREGATION_PARALLELISM );
+		if ( parallelism == null )
+			return 1;
+		try
+		{
+			return Math.max( 1, Integer.parseInt( parallelism.toString( )
+					.trim( ) ) );
+		}
+		catch ( NumberFormatException e )
+		{
+			return 1;
+		}
+	}
+
+	/**
+	 * @param appContext
+	 * @return the count of the queries on a level combination of a cube after
+	 *         which an aggregate is materialized on it, 0 if the aggregates
+	 *         are not learned
+	 */
+	public static int getCubeAggregateLearningThreshold( Map appContext )
+	{
+		if ( appContext == null )
+			return 0;
+		Object threshold = appContext.get( DataEngine.CUBE_AGGREGATE_LEARNING_THRESHOLD );
+		if ( threshold == null )
+			return 0;
+		try
+		{
+			return Math.max( 0, Integer.parseInt( threshold.toString( )
+					.trim( ) ) );
+		}
+		catch ( NumberFormatException e )
+		{
+			return 0;
+		}
+	}
+
+	/**
+	 * @param appContext
+	 * @return the size in bytes of the cached aggregation results of cube
+	 *         queries, 0 if the results are not cached
+	 */
+	public static long getCubeQueryResultCacheSize( Map appContext )
+	{
+		if ( appContext == null )
+			return 0;
+		Object size = appContext.get( DataEngine.CUBE_QUERY_RESULT_CACHE_SIZE );
+		if ( size == null )
+			return 0;
+		try
+		{
+			return Math.max( 0, Long.parseLong( size.toString( ).trim( ) ) ) * 1024 * 1024;
+		}
+		catch ( NumberFormatException e )
+		{
+			return 0;
+		}
+	}
+
+	/**
+	 * @param appContext
+	 * @return the max count of distinct values in the dictionary of a string
+	 *         column, 0 if string columns should not use dictionaries
+	 */
+	public static int getStringDictionarySize( Map appContext )
+	{
+		if ( appContext == null )
+			return DEFAULT_STRING_DICTIONARY_SIZE;
+		Object size = appContext.get( DataEngine.STRING_DICTIONARY_SIZE );
+		if ( size == null )
+			return DEFAULT_STRING_DICTIONARY_SIZE;
+		try
+		{
+			return Math.max( 0, Integer.parseInt( size.toString( ).trim( ) ) );
+		}
+		catch ( NumberFormatException e )
+		{
+			return DEFAULT_STRING_DICTIONARY_SIZE;
+		}
+	}
+
+	/**
+	 * @param appContext
+	 * @return whether the string columns saved in report documents should be
+	 *         encoded with the string dictionaries
+	 */
+	public static boolean isStringDictionaryEncoding( Map appContext )
+	{
+		if ( appContext == null )
+			return false;
+		Object encoding = appContext.get( DataEngine.STRING_DICTIONARY_ENCODING );
+		return encoding != null
+				&& Boolean.valueOf( encoding.toString( ).trim( ) ).booleanValue( );
+	}
+
+	/**
+	 *
 	 * @param propValue
 	 * @return
 	 */
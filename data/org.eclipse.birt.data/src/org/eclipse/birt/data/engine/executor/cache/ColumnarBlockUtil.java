@@ -0,0 +1,628 @@
+/*******************************************************************************
+ * Copyright (c) 2004 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.data.engine.executor.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Clob;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.eclipse.birt.core.data.DataType;
+import org.eclipse.birt.core.data.DataTypeUtil;
+import org.eclipse.birt.core.exception.BirtException;
+import org.eclipse.birt.core.util.IOUtil;
+import org.eclipse.birt.data.engine.core.DataException;
+import org.eclipse.birt.data.engine.i18n.ResourceConstants;
+import org.eclipse.birt.data.engine.impl.document.stream.VersionManager;
+import org.eclipse.birt.data.engine.odi.IResultObject;
+import org.eclipse.datatools.connectivity.oda.IClob;
+
+/**
+ * Serialize and deserialize a block of result objects column by column. The
+ * values of one column are saved together, so that numeric and date columns
+ * can be written as primitive values without per field type tag, and string
+ * columns can be dictionary encoded within the block. The block can be
+ * optionally compressed.
+ *
+ * Block layout: row count, flag, [raw length], payload length, payload. For
+ * each column the payload contains a null bitmap followed by the column
+ * values.
+ */
+public final class ColumnarBlockUtil
+{
+	// how many rows are saved in one block
+	public static final int BLOCK_ROW_COUNT = 1024;
+
+	private static final int INTEGER_COLUMN = 1;
+	private static final int DOUBLE_COLUMN = 2;
+	private static final int DATE_COLUMN = 3;
+	private static final int BOOLEAN_COLUMN = 4;
+	private static final int STRING_COLUMN = 5;
+	private static final int OBJECT_COLUMN = 0;
+
+	private static final byte FLAG_COMPRESSED = 1;
+
+	private static final byte PLAIN_STRING = 0;
+	private static final byte DICTIONARY_STRING = 1;
+
+	// column count of current processed table
+	private int columnCount;
+
+	// data type array of result set
+	private Class[] typeArray;
+
+	// encoding kind of each column
+	private int[] columnKinds;
+
+	private boolean compress;
+
+	/**
+	 *
+	 * @param typeArray
+	 * @param compress
+	 */
+	ColumnarBlockUtil( Class[] typeArray, boolean compress )
+	{
+		this.typeArray = typeArray;
+		this.columnCount = typeArray.length;
+		this.compress = compress;
+		this.columnKinds = new int[columnCount];
+		for ( int i = 0; i < columnCount; i++ )
+		{
+			columnKinds[i] = getColumnKind( typeArray[i] );
+		}
+	}
+
+	/**
+	 *
+	 * @param fieldType
+	 * @return
+	 */
+	private static int getColumnKind( Class fieldType )
+	{
+		if ( fieldType == null )
+			return OBJECT_COLUMN;
+		if ( fieldType.equals( Integer.class ) )
+			return INTEGER_COLUMN;
+		if ( fieldType.equals( Double.class ) )
+			return DOUBLE_COLUMN;
+		if ( Date.class.isAssignableFrom( fieldType ) )
+			return DATE_COLUMN;
+		if ( fieldType.equals( Boolean.class ) )
+			return BOOLEAN_COLUMN;
+		if ( fieldType.equals( String.class )
+				|| fieldType.equals( IClob.class )
+				|| fieldType.equals( Clob.class ) )
+			return STRING_COLUMN;
+		return OBJECT_COLUMN;
+	}
+
+	/**
+	 * Serialize the first length result objects as one block.
+	 *
+	 * @param bos
+	 * @param resultObjects
+	 * @param length
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	void writeBlock( OutputStream bos, IResultObject[] resultObjects,
+			int length ) throws IOException, DataException
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream( );
+		DataOutputStream dos = new DataOutputStream( baos );
+
+		Object[] columnValues = new Object[length];
+		for ( int j = 0; j < columnCount; j++ )
+		{
+			for ( int i = 0; i < length; i++ )
+			{
+				columnValues[i] = resultObjects[i].getFieldValue( j + 1 );
+			}
+			writeColumn( dos, columnValues, length, j );
+		}
+		dos.flush( );
+
+		byte[] payload = baos.toByteArray( );
+		IOUtil.writeInt( bos, length );
+		if ( compress )
+		{
+			byte[] compressed = deflate( payload );
+			bos.write( FLAG_COMPRESSED );
+			IOUtil.writeInt( bos, payload.length );
+			IOUtil.writeInt( bos, compressed.length );
+			bos.write( compressed );
+		}
+		else
+		{
+			bos.write( 0 );
+			IOUtil.writeInt( bos, payload.length );
+			bos.write( payload );
+		}
+	}
+
+	/**
+	 * Deserialize one block of row data.
+	 *
+	 * @param bis
+	 * @param classLoader
+	 * @return the field values of each row in the block
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	Object[][] readBlock( InputStream bis, ClassLoader classLoader )
+			throws IOException, DataException
+	{
+		int length = IOUtil.readInt( bis );
+		int flag = bis.read( );
+		byte[] payload;
+		if ( ( flag & FLAG_COMPRESSED ) != 0 )
+		{
+			int rawLength = IOUtil.readInt( bis );
+			byte[] compressed = new byte[IOUtil.readInt( bis )];
+			new DataInputStream( bis ).readFully( compressed );
+			payload = inflate( compressed, rawLength );
+		}
+		else
+		{
+			payload = new byte[IOUtil.readInt( bis )];
+			new DataInputStream( bis ).readFully( payload );
+		}
+
+		DataInputStream dis = new DataInputStream( new ByteArrayInputStream( payload ) );
+		Object[][] rows = new Object[length][columnCount];
+		for ( int j = 0; j < columnCount; j++ )
+		{
+			readColumn( dis, rows, length, j, classLoader );
+		}
+		return rows;
+	}
+
+	/**
+	 *
+	 * @param dos
+	 * @param values
+	 * @param length
+	 * @param columnIndex
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	private void writeColumn( DataOutputStream dos, Object[] values,
+			int length, int columnIndex ) throws IOException, DataException
+	{
+		int kind = columnKinds[columnIndex];
+		if ( kind == OBJECT_COLUMN )
+		{
+			// the value carries its own null tag
+			for ( int i = 0; i < length; i++ )
+			{
+				ResultObjectUtil.writeObject( dos,
+						values[i],
+						typeArray[columnIndex],
+						VersionManager.getLatestVersion( ) );
+			}
+			return;
+		}
+
+		for ( int i = 0; i < length; i++ )
+		{
+			if ( values[i] != null )
+				values[i] = convert( values[i], kind );
+		}
+		writeNullBitmap( dos, values, length );
+
+		switch ( kind )
+		{
+			case INTEGER_COLUMN :
+				for ( int i = 0; i < length; i++ )
+				{
+					dos.writeInt( values[i] == null ? 0
+							: ( (Integer) values[i] ).intValue( ) );
+				}
+				break;
+			case DOUBLE_COLUMN :
+				for ( int i = 0; i < length; i++ )
+				{
+					dos.writeDouble( values[i] == null ? 0
+							: ( (Double) values[i] ).doubleValue( ) );
+				}
+				break;
+			case DATE_COLUMN :
+				for ( int i = 0; i < length; i++ )
+				{
+					dos.writeLong( values[i] == null ? 0
+							: ( (Date) values[i] ).getTime( ) );
+				}
+				break;
+			case BOOLEAN_COLUMN :
+				byte[] bits = new byte[( length + 7 ) / 8];
+				for ( int i = 0; i < length; i++ )
+				{
+					if ( values[i] != null
+							&& ( (Boolean) values[i] ).booleanValue( ) )
+						bits[i >> 3] |= 1 << ( i & 7 );
+				}
+				dos.write( bits );
+				break;
+			case STRING_COLUMN :
+				writeStringColumn( dos, values, length );
+				break;
+		}
+	}
+
+	/**
+	 * Use dictionary encoding when the distinct values are no more than half
+	 * of the values in the block, otherwise save the strings directly.
+	 *
+	 * @param dos
+	 * @param values
+	 * @param length
+	 * @throws IOException
+	 */
+	private static void writeStringColumn( DataOutputStream dos,
+			Object[] values, int length ) throws IOException
+	{
+		Map<String, Integer> dictionary = new HashMap<String, Integer>( );
+		List<String> entries = new ArrayList<String>( );
+		int[] codes = new int[length];
+		int nonNullCount = 0;
+		for ( int i = 0; i < length; i++ )
+		{
+			if ( values[i] == null )
+				continue;
+			nonNullCount++;
+			String value = values[i].toString( );
+			Integer code = dictionary.get( value );
+			if ( code == null )
+			{
+				code = Integer.valueOf( entries.size( ) );
+				dictionary.put( value, code );
+				entries.add( value );
+			}
+			codes[i] = code.intValue( );
+		}
+
+		if ( entries.size( ) * 2 > nonNullCount )
+		{
+			dos.writeByte( PLAIN_STRING );
+			for ( int i = 0; i < length; i++ )
+			{
+				if ( values[i] != null )
+					IOUtil.writeString( dos, values[i].toString( ) );
+			}
+			return;
+		}
+
+		dos.writeByte( DICTIONARY_STRING );
+		IOUtil.writeInt( dos, entries.size( ) );
+		for ( int i = 0; i < entries.size( ); i++ )
+		{
+			IOUtil.writeString( dos, entries.get( i ) );
+		}
+		int codeWidth = getCodeWidth( entries.size( ) );
+		for ( int i = 0; i < length; i++ )
+		{
+			if ( values[i] != null )
+				writeCode( dos, codes[i], codeWidth );
+		}
+	}
+
+	/**
+	 *
+	 * @param dis
+	 * @param rows
+	 * @param length
+	 * @param columnIndex
+	 * @param classLoader
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	private void readColumn( DataInputStream dis, Object[][] rows,
+			int length, int columnIndex, ClassLoader classLoader )
+			throws IOException, DataException
+	{
+		int kind = columnKinds[columnIndex];
+		Class fieldType = typeArray[columnIndex];
+		if ( kind == OBJECT_COLUMN )
+		{
+			for ( int i = 0; i < length; i++ )
+			{
+				rows[i][columnIndex] = ResultObjectUtil.readObject( dis,
+						fieldType,
+						classLoader,
+						VersionManager.getLatestVersion( ) );
+			}
+			return;
+		}
+
+		byte[] nullBitmap = new byte[( length + 7 ) / 8];
+		dis.readFully( nullBitmap );
+
+		switch ( kind )
+		{
+			case INTEGER_COLUMN :
+				for ( int i = 0; i < length; i++ )
+				{
+					int value = dis.readInt( );
+					if ( !isNull( nullBitmap, i ) )
+						rows[i][columnIndex] = Integer.valueOf( value );
+				}
+				break;
+			case DOUBLE_COLUMN :
+				for ( int i = 0; i < length; i++ )
+				{
+					double value = dis.readDouble( );
+					if ( !isNull( nullBitmap, i ) )
+						rows[i][columnIndex] = new Double( value );
+				}
+				break;
+			case DATE_COLUMN :
+				for ( int i = 0; i < length; i++ )
+				{
+					long value = dis.readLong( );
+					if ( !isNull( nullBitmap, i ) )
+						rows[i][columnIndex] = newDate( fieldType, value );
+				}
+				break;
+			case BOOLEAN_COLUMN :
+				byte[] bits = new byte[( length + 7 ) / 8];
+				dis.readFully( bits );
+				for ( int i = 0; i < length; i++ )
+				{
+					if ( !isNull( nullBitmap, i ) )
+						rows[i][columnIndex] = Boolean.valueOf( ( bits[i >> 3] & ( 1 << ( i & 7 ) ) ) != 0 );
+				}
+				break;
+			case STRING_COLUMN :
+				readStringColumn( dis, nullBitmap, rows, length, columnIndex );
+				break;
+		}
+	}
+
+	/**
+	 *
+	 * @param dis
+	 * @param nullBitmap
+	 * @param rows
+	 * @param length
+	 * @param columnIndex
+	 * @throws IOException
+	 */
+	private static void readStringColumn( DataInputStream dis,
+			byte[] nullBitmap, Object[][] rows, int length, int columnIndex )
+			throws IOException
+	{
+		byte encoding = dis.readByte( );
+		if ( encoding == PLAIN_STRING )
+		{
+			for ( int i = 0; i < length; i++ )
+			{
+				if ( !isNull( nullBitmap, i ) )
+					rows[i][columnIndex] = IOUtil.readString( dis );
+			}
+			return;
+		}
+
+		String[] entries = new String[IOUtil.readInt( dis )];
+		for ( int i = 0; i < entries.length; i++ )
+		{
+			entries[i] = IOUtil.readString( dis );
+		}
+		int codeWidth = getCodeWidth( entries.length );
+		for ( int i = 0; i < length; i++ )
+		{
+			if ( !isNull( nullBitmap, i ) )
+				rows[i][columnIndex] = entries[readCode( dis, codeWidth )];
+		}
+	}
+
+	/**
+	 *
+	 * @param dos
+	 * @param values
+	 * @param length
+	 * @throws IOException
+	 */
+	private static void writeNullBitmap( DataOutputStream dos,
+			Object[] values, int length ) throws IOException
+	{
+		byte[] nullBitmap = new byte[( length + 7 ) / 8];
+		for ( int i = 0; i < length; i++ )
+		{
+			if ( values[i] == null )
+				nullBitmap[i >> 3] |= 1 << ( i & 7 );
+		}
+		dos.write( nullBitmap );
+	}
+
+	/**
+	 *
+	 * @param nullBitmap
+	 * @param index
+	 * @return
+	 */
+	private static boolean isNull( byte[] nullBitmap, int index )
+	{
+		return ( nullBitmap[index >> 3] & ( 1 << ( index & 7 ) ) ) != 0;
+	}
+
+	/**
+	 *
+	 * @param dictionarySize
+	 * @return how many bytes are needed to save one dictionary code
+	 */
+	private static int getCodeWidth( int dictionarySize )
+	{
+		if ( dictionarySize <= 0xFF + 1 )
+			return 1;
+		if ( dictionarySize <= 0xFFFF + 1 )
+			return 2;
+		return 4;
+	}
+
+	private static void writeCode( DataOutputStream dos, int code, int width )
+			throws IOException
+	{
+		if ( width == 1 )
+			dos.writeByte( code );
+		else if ( width == 2 )
+			dos.writeShort( code );
+		else
+			dos.writeInt( code );
+	}
+
+	private static int readCode( DataInputStream dis, int width )
+			throws IOException
+	{
+		if ( width == 1 )
+			return dis.readUnsignedByte( );
+		if ( width == 2 )
+			return dis.readUnsignedShort( );
+		return dis.readInt( );
+	}
+
+	/**
+	 *
+	 * @param fieldType
+	 * @param time
+	 * @return
+	 * @throws DataException
+	 */
+	private static Object newDate( Class fieldType, long time )
+			throws DataException
+	{
+		if ( fieldType.equals( Time.class ) )
+			return new Time( time );
+		if ( fieldType.equals( Timestamp.class ) )
+			return new Timestamp( time );
+		if ( fieldType.equals( java.sql.Date.class ) )
+		{
+			try
+			{
+				return DataTypeUtil.toSqlDate( new java.sql.Date( time ) );
+			}
+			catch ( BirtException e )
+			{
+				throw DataException.wrap( e );
+			}
+		}
+		return new Date( time );
+	}
+
+	/**
+	 *
+	 * @param value
+	 * @param kind
+	 * @return
+	 * @throws DataException
+	 */
+	private static Object convert( Object value, int kind )
+			throws DataException
+	{
+		try
+		{
+			switch ( kind )
+			{
+				case INTEGER_COLUMN :
+					return DataTypeUtil.convert( value, DataType.INTEGER_TYPE );
+				case DOUBLE_COLUMN :
+					return DataTypeUtil.convert( value, DataType.DOUBLE_TYPE );
+				case DATE_COLUMN :
+					return DataTypeUtil.convert( value, DataType.DATE_TYPE );
+				case BOOLEAN_COLUMN :
+					return DataTypeUtil.convert( value, DataType.BOOLEAN_TYPE );
+				default :
+					return value;
+			}
+		}
+		catch ( BirtException e )
+		{
+			throw DataException.wrap( e );
+		}
+	}
+
+	/**
+	 *
+	 * @param bytes
+	 * @return
+	 */
+	private static byte[] deflate( byte[] bytes )
+	{
+		Deflater deflater = new Deflater( Deflater.BEST_SPEED );
+		try
+		{
+			deflater.setInput( bytes );
+			deflater.finish( );
+			ByteArrayOutputStream baos = new ByteArrayOutputStream( bytes.length / 2 + 16 );
+			byte[] buffer = new byte[8192];
+			while ( !deflater.finished( ) )
+			{
+				int size = deflater.deflate( buffer );
+				baos.write( buffer, 0, size );
+			}
+			return baos.toByteArray( );
+		}
+		finally
+		{
+			deflater.end( );
+		}
+	}
+
+	/**
+	 *
+	 * @param bytes
+	 * @param rawLength
+	 * @return
+	 * @throws DataException
+	 */
+	private static byte[] inflate( byte[] bytes, int rawLength )
+			throws DataException
+	{
+		Inflater inflater = new Inflater( );
+		try
+		{
+			inflater.setInput( bytes );
+			byte[] result = new byte[rawLength];
+			int offset = 0;
+			while ( offset < rawLength && !inflater.finished( ) )
+			{
+				int size = inflater.inflate( result, offset, rawLength - offset );
+				if ( size == 0 && inflater.needsInput( ) )
+					break;
+				offset += size;
+			}
+			return result;
+		}
+		catch ( DataFormatException e )
+		{
+			throw new DataException( ResourceConstants.READ_TEMPFILE_ERROR, e );
+		}
+		finally
+		{
+			inflater.end( );
+		}
+	}
+}
@@ -34,6 +34,7 @@ import org.eclipse.birt.data.engine.core.DataException;
 import org.eclipse.birt.data.engine.executor.ResultObject;
 import org.eclipse.birt.data.engine.i18n.ResourceConstants;
 import org.eclipse.birt.data.engine.impl.DataEngineSession;
+import org.eclipse.birt.data.engine.impl.StringDictionary;
 import org.eclipse.birt.data.engine.impl.document.stream.VersionManager;
 import org.eclipse.birt.data.engine.odi.IResultClass;
 import org.eclipse.birt.data.engine.odi.IResultObject;
@@ -58,6 +59,12 @@ public class ResultObjectUtil
 	private IResultClass rsMetaData;
 
 	private DataEngineSession session;
+
+	// serializer of columnar blocks, null if rows are serialized one by one
+	private ColumnarBlockUtil columnarBlockUtil;
+
+	// dictionaries of the string columns, null if the values are not shared
+	private StringDictionary[] stringDictionaries;
 	
 	/**
 	 * In serializaing data to file and deserializing it from file, metadata
@@ -109,9 +116,87 @@ public class ResultObjectUtil
 	 */
 	public ResultObject newResultObject( Object[] rowData )
 	{
+		if ( stringDictionaries != null )
+			StringDictionary.intern( stringDictionaries, rowData );
 		return new ResultObject( rsMetaData, rowData );
 	}
 
+	/**
+	 * Let the deserialized rows share the instances of the string values, with
+	 * the dictionaries of the string columns. This method must be called
+	 * before any actual read action is taken.
+	 * 
+	 * @param maxSize
+	 *            the max count of the values in a dictionary
+	 * @throws DataException
+	 */
+	public void enableStringDictionary( int maxSize ) throws DataException
+	{
+		this.stringDictionaries = StringDictionary.createDictionaries( rsMetaData,
+				maxSize );
+	}
+
+	/**
+	 * Serialize the rows exported to disk in columnar blocks instead of one by
+	 * one. This method must be called before any actual read/write action is
+	 * taken.
+	 * 
+	 * @param compress
+	 *            whether the blocks are compressed
+	 */
+	public void enableColumnarBlock( boolean compress )
+	{
+		this.columnarBlockUtil = new ColumnarBlockUtil( typeArray, compress );
+	}
+
+	/**
+	 * @return whether rows are serialized in columnar blocks
+	 */
+	public boolean isColumnarBlock( )
+	{
+		return this.columnarBlockUtil != null;
+	}
+
+	/**
+	 * Serialize result objects as one columnar block. It can only be called
+	 * after enableColumnarBlock.
+	 * 
+	 * @param bos
+	 * @param resultObjects
+	 * @param length
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	public void writeBlock( OutputStream bos, IResultObject[] resultObjects,
+			int length ) throws IOException, DataException
+	{
+		assert columnarBlockUtil != null;
+		columnarBlockUtil.writeBlock( bos, resultObjects, length );
+	}
+
+	/**
+	 * Deserialize one columnar block of result objects. It can only be called
+	 * after enableColumnarBlock.
+	 * 
+	 * @param bis
+	 * @param classLoader
+	 * @return result object array
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	public IResultObject[] readBlock( InputStream bis, ClassLoader classLoader )
+			throws IOException, DataException
+	{
+		assert columnarBlockUtil != null;
+		Object[][] rows = columnarBlockUtil.readBlock( bis, classLoader );
+		IResultObject[] rowDatas = new IResultObject[rows.length];
+		for ( int i = 0; i < rows.length; i++ )
+		{
+			rowDatas[i] = newResultObject( rows[i] );
+		}
+		return rowDatas;
+	}
+
 	/**
 	 * Deserialze result object array from input stream. The reading procedure
 	 * is strictly sequential, that means there is no random access.
@@ -31,6 +31,7 @@ import org.eclipse.birt.data.engine.expression.ExpressionCompilerUtil;
 import org.eclipse.birt.data.engine.i18n.ResourceConstants;
 import org.eclipse.birt.data.engine.impl.DataEngineSession;
 import org.eclipse.birt.data.engine.impl.IPushedDownExpression;
+import org.eclipse.birt.data.engine.impl.StringDictionary;
 import org.eclipse.birt.data.engine.impl.StringTable;
 import org.eclipse.birt.data.engine.impl.document.stream.VersionManager;
 import org.eclipse.birt.data.engine.impl.document.viewing.ExprMetaUtil;
@@ -119,6 +120,12 @@ public class ResultSetUtil
 					int stringIndex = table.getIndex( (String) resultObject.getFieldValue( i ) );
 //					IOUtil.writeObject( tempDos, stringIndex );
 					IOUtil.writeInt( tempDos, stringIndex );
+					// the value is not in the dictionary which is full
+					if ( stringIndex == StringDictionary.NOT_ENCODED )
+						ResultObjectUtil.writeObject( tempDos,
+								resultObject.getFieldValue( i ),
+								String.class,
+								version );
 				}
 				else
 				{
@@ -184,6 +191,19 @@ public class ResultSetUtil
 					obs[i] = index.get( rsMeta.getFieldName( i + 1 ) )
 								.getKeyValue( obs[i] );
 				}
+				else if ( stringTableMap != null
+						&& stringTableMap.get( rsMeta.getFieldName( i + 1 ) ) instanceof StringDictionary )
+				{
+					StringTable stringTable = stringTableMap.get( rsMeta.getFieldName( i + 1 ) );
+					int stringIndex = IOUtil.readInt( dis );
+					if ( stringIndex == StringDictionary.NOT_ENCODED )
+						obs[i] = ResultObjectUtil.readObject( dis,
+								String.class,
+								DataEngineSession.getCurrentClassLoader( ),
+								version );
+					else
+						obs[i] = stringTable.getStringValue( stringIndex );
+				}
 				else if( rsMeta.getFieldMetaData( i + 1 ).getDataType( ) == String.class
 						&& rsMeta.isCompressedColumn( i + 1 ) )
 				{
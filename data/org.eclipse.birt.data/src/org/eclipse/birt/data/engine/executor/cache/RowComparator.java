@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * Copyright (c) 2004 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.data.engine.executor.cache;
+
+import java.util.Comparator;
+
+import org.eclipse.birt.data.engine.core.DataException;
+import org.eclipse.birt.data.engine.expression.CompareHints;
+import org.eclipse.birt.data.engine.odi.IEventHandler;
+import org.eclipse.birt.data.engine.odi.IResultObject;
+import org.eclipse.birt.data.engine.script.ScriptEvalUtil;
+
+import com.ibm.icu.text.Collator;
+
+/**
+ * Comparator of result objects based on a sort specification. Besides the
+ * row comparison, the evaluation of the sort key values and the comparison of
+ * evaluated values are exposed separately. The sort key values can only be
+ * evaluated in the thread of the query since they might be computed by
+ * script, while the comparison of evaluated values can be done by any thread.
+ */
+public class RowComparator implements Comparator
+{
+	private int[] sortKeyIndexes;
+	private String[] sortKeyColumns;
+	private int[] sortAscending;
+	private CompareHints[] comparators;
+	private IEventHandler eventHandler;
+
+	// compare hints which can be shared by concurrent threads
+	private CompareHints[] concurrentComparators;
+
+	/**
+	 *
+	 * @param sortSpec
+	 * @param eventHandler
+	 */
+	public RowComparator( SortSpec sortSpec, IEventHandler eventHandler )
+	{
+		this.sortKeyIndexes = sortSpec.getSortKeyIndexes( );
+		this.sortKeyColumns = sortSpec.getSortKeyColumns( );
+		this.sortAscending = sortSpec.getSortAscending( );
+		this.comparators = sortSpec.getComparator( );
+		this.eventHandler = eventHandler;
+	}
+
+	/**
+	 * compares two row indexes, actually compares two rows pointed by the two
+	 * row indexes
+	 */
+	public int compare( Object obj1, Object obj2 )
+	{
+		IResultObject row1 = (IResultObject) obj1;
+		IResultObject row2 = (IResultObject) obj2;
+
+		// compare group keys first
+		for ( int i = 0; i < sortKeyIndexes.length; i++ )
+		{
+			try
+			{
+				int result = compareValue( getValue( row1, i ),
+						getValue( row2, i ),
+						i,
+						comparators );
+				if ( result != 0 )
+					return result;
+			}
+			catch ( DataException e )
+			{
+				// Should never get here
+				// colIndex is always valid
+			}
+		}
+
+		// all equal, so return 0
+		return 0;
+	}
+
+	/**
+	 * Evaluate the values of sort keys of a row. It must be called in the
+	 * thread of the query.
+	 *
+	 * @param row
+	 * @return
+	 */
+	public Object[] getSortKeyValues( IResultObject row )
+	{
+		Object[] values = new Object[sortKeyIndexes.length];
+		for ( int i = 0; i < values.length; i++ )
+		{
+			try
+			{
+				values[i] = getValue( row, i );
+			}
+			catch ( DataException e )
+			{
+				// Should never get here
+				// colIndex is always valid
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Compare the sort key values returned by getSortKeyValues. The method
+	 * can be called concurrently after prepareConcurrentCompare is called.
+	 *
+	 * @param values1
+	 * @param values2
+	 * @return
+	 */
+	public int compareSortKeyValues( Object[] values1, Object[] values2 )
+	{
+		CompareHints[] hints = concurrentComparators == null
+				? comparators : concurrentComparators;
+		for ( int i = 0; i < sortKeyIndexes.length; i++ )
+		{
+			try
+			{
+				int result = compareValue( values1[i], values2[i], i, hints );
+				if ( result != 0 )
+					return result;
+			}
+			catch ( DataException e )
+			{
+				// Should never get here
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Collators are not thread safe, so frozen copies are used to compare the
+	 * sort key values in concurrent threads. Other comparators are serialized.
+	 */
+	public void prepareConcurrentCompare( )
+	{
+		if ( concurrentComparators != null || comparators == null )
+			return;
+
+		CompareHints[] hints = new CompareHints[comparators.length];
+		for ( int i = 0; i < comparators.length; i++ )
+		{
+			if ( comparators[i] == null
+					|| comparators[i].getComparator( ) == null )
+			{
+				hints[i] = comparators[i];
+				continue;
+			}
+			Comparator comparator = comparators[i].getComparator( );
+			if ( comparator instanceof Collator )
+			{
+				comparator = ( (Collator) comparator ).cloneAsThawed( )
+						.freeze( );
+			}
+			else
+			{
+				comparator = new SynchronizedComparator( comparator );
+			}
+			hints[i] = new CompareHints( comparator,
+					comparators[i].getNullType( ) );
+		}
+		concurrentComparators = hints;
+	}
+
+	/**
+	 *
+	 * @param row
+	 * @param keyIndex
+	 * @return
+	 * @throws DataException
+	 */
+	private Object getValue( IResultObject row, int keyIndex )
+			throws DataException
+	{
+		if ( eventHandler != null )
+		{
+			return eventHandler.getValue( row,
+					sortKeyIndexes[keyIndex],
+					sortKeyColumns[keyIndex] );
+		}
+		return row.getFieldValue( sortKeyIndexes[keyIndex] );
+	}
+
+	/**
+	 *
+	 * @param colObj1
+	 * @param colObj2
+	 * @param keyIndex
+	 * @param hints
+	 * @return
+	 * @throws DataException
+	 */
+	private int compareValue( Object colObj1, Object colObj2, int keyIndex,
+			CompareHints[] hints ) throws DataException
+	{
+		int result = ScriptEvalUtil.compare( colObj1, colObj2, hints[keyIndex] );
+		if ( result != 0 )
+		{
+			if ( sortAscending[keyIndex] == SortSpec.SORT_DISABLE )
+			{
+				return 0;
+			}
+			return sortAscending[keyIndex] == SortSpec.SORT_ASC ? result
+					: -result;
+		}
+		return 0;
+	}
+
+	/**
+	 * Serialize the calls of a comparator which is not known to be thread
+	 * safe.
+	 */
+	private static class SynchronizedComparator implements Comparator
+	{
+		private Comparator comparator;
+
+		SynchronizedComparator( Comparator comparator )
+		{
+			this.comparator = comparator;
+		}
+
+		public synchronized int compare( Object o1, Object o2 )
+		{
+			return comparator.compare( o1, o2 );
+		}
+	}
+}
@@ -22,11 +22,11 @@ import org.eclipse.birt.data.engine.executor.cache.disk.DiskCache;
 import org.eclipse.birt.data.engine.i18n.ResourceConstants;
 import org.eclipse.birt.data.engine.expression.CompareHints;
 import org.eclipse.birt.data.engine.impl.DataEngineSession;
+import org.eclipse.birt.data.engine.impl.StringDictionary;
 import org.eclipse.birt.data.engine.odaconsumer.ResultSet;
 import org.eclipse.birt.data.engine.odi.IEventHandler;
 import org.eclipse.birt.data.engine.odi.IResultClass;
 import org.eclipse.birt.data.engine.odi.IResultObject;
-import org.eclipse.birt.data.engine.script.ScriptEvalUtil;
 
 /**
  * Help SmartCache to get the ResultSetCache, the real data cache.
@@ -306,6 +306,10 @@ class SmartCacheHelper
 				: CacheUtil.computeMemoryBufferSize( eventHandler.getAppContext( ) );
 		int maxRows = CacheUtil.getMaxRows( eventHandler == null ? null
 				: eventHandler.getAppContext( ) );
+		// the rows cached in memory share the instances of the string values
+		StringDictionary[] dictionaries = StringDictionary.createDictionaries( rsMeta,
+				CacheUtil.getStringDictionarySize( eventHandler == null
+						? null : eventHandler.getAppContext( ) ) );
 		
 		IResultObject odaObject;
 		IResultObject[] resultObjects;
@@ -335,6 +339,8 @@ class SmartCacheHelper
 					{
 						obs[i - 1] = odaObject.getFieldValue( i );
 					}
+					if ( dictionaries != null )
+						StringDictionary.intern( dictionaries, obs );
 					ResultObject temp = new ResultObject( rsMeta, obs );
 					resultObjectsList.add( temp );
 					if( memoryCacheSize != 0 )
@@ -342,6 +348,8 @@ class SmartCacheHelper
 				}
 				else
 				{
+					if ( dictionaries != null )
+						odaObject = internStrings( odaObject, dictionaries );
 					resultObjectsList.add( odaObject );
 					if( memoryCacheSize != 0 )
 						usedMemorySize += sizeOfUtil.sizeOf( odaObject );
@@ -361,7 +369,9 @@ class SmartCacheHelper
 						getComparator( sortSpec, eventHandler ),
 						dataCount,
 						maxRows,
-						this.session );
+						this.session,
+						eventHandler == null ? null
+								: eventHandler.getAppContext( ) );
 				break;
 			}
 		}
@@ -386,83 +396,45 @@ class SmartCacheHelper
 		logger.fine( "Time consumed by cache is: " + consumedTime + " second" );
 	}
 	
+	/**
+	 * Replace the string values of the row with the instances in the
+	 * dictionaries.
+	 * 
+	 * @param row
+	 * @param dictionaries
+	 * @return a new row if any value is replaced, otherwise the row itself
+	 * @throws DataException
+	 */
+	private static IResultObject internStrings( IResultObject row,
+			StringDictionary[] dictionaries ) throws DataException
+	{
+		if ( !( row instanceof ResultObject ) )
+			return row;
+		Object[] obs = new Object[row.getResultClass( ).getFieldCount( )];
+		for ( int i = 1; i <= obs.length; i++ )
+		{
+			obs[i - 1] = row.getFieldValue( i );
+		}
+		if ( !StringDictionary.intern( dictionaries, obs ) )
+			return row;
+		return new ResultObject( row.getResultClass( ), obs );
+	}
+	
 	/**
 	 * @param sortSpec
 	 * @return Comparator based on specified sortSpec, null indicates there is
 	 *         no need to do sorting
 	 */
 	private static Comparator getComparator( SortSpec sortSpec,
-			final IEventHandler eventHandler )
+			IEventHandler eventHandler )
 	{
 		if ( sortSpec == null )
 			return null;
 
-		final int[] sortKeyIndexes = sortSpec.getSortKeyIndexes();
-		final String[] sortKeyColumns = sortSpec.getSortKeyColumns();
-
+		int[] sortKeyIndexes = sortSpec.getSortKeyIndexes();
 		if ( sortKeyIndexes == null || sortKeyIndexes.length == 0 )
 			return null;
 
-		final int[] sortAscending = sortSpec.getSortAscending();
-		final CompareHints[] comparators = sortSpec.getComparator( );
-		Comparator comparator = new Comparator( ) {
-
-			/**
-			 * compares two row indexes, actually compares two rows pointed by
-			 * the two row indexes
-			 */
-			public int compare( Object obj1, Object obj2 )
-			{
-				IResultObject row1 = (IResultObject) obj1;
-				IResultObject row2 = (IResultObject) obj2;
-
-				// compare group keys first
-				for ( int i = 0; i < sortKeyIndexes.length; i++ )
-				{
-					int colIndex = sortKeyIndexes[i];
-					String colName = sortKeyColumns[i];
-					try
-					{
-						Object colObj1 = null;
-						Object colObj2 = null;
-
-						if ( eventHandler != null )
-						{
-							colObj1 = eventHandler.getValue( row1,
-									colIndex,
-									colName );
-							colObj2 = eventHandler.getValue( row2,
-									colIndex,
-									colName );
-						}
-						else
-						{
-							colObj1 = row1.getFieldValue( colIndex );
-							colObj2 = row2.getFieldValue( colIndex );
-						}
-
-						int result = ScriptEvalUtil.compare( colObj1, colObj2, comparators[i] );
-						if ( result != 0 )
-						{
-							if( sortAscending[i] == SortSpec.SORT_DISABLE )
-							{
-								return 0;
-							}
-							return sortAscending[i] == SortSpec.SORT_ASC ? result : -result;
-						}
-					}
-					catch ( DataException e )
-					{
-						// Should never get here
-						// colIndex is always valid
-					}
-				}
-
-				// all equal, so return 0
-				return 0;
-			}
-		};
-
-		return comparator;
+		return new RowComparator( sortSpec, eventHandler );
 	}
 }
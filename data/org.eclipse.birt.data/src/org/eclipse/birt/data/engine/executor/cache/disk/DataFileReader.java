@@ -34,6 +34,10 @@ class DataFileReader
 	private BufferedInputStream bis;
 
 	private ResultObjectUtil resultObjectUtil;
+
+	// rows of current columnar block which are not fetched yet
+	private IResultObject[] blockRows;
+	private int blockPos;
 	
 	/**
 	 * A util method to new instance of DataFileReader
@@ -101,9 +105,40 @@ class DataFileReader
 			isOpen = true;
 		}
 
+		if ( resultObjectUtil.isColumnarBlock( ) )
+			return readFromBlock( length );
 		return resultObjectUtil.readData( bis, null, length );
 	}
 
+	/**
+	 * Read rows from columnar blocks, and the next block is loaded when all
+	 * rows of current block have been fetched.
+	 * 
+	 * @param length
+	 * @return
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	private IResultObject[] readFromBlock( int length ) throws IOException,
+			DataException
+	{
+		IResultObject[] rowDatas = new IResultObject[length];
+		int pos = 0;
+		while ( pos < length )
+		{
+			if ( blockRows == null || blockPos == blockRows.length )
+			{
+				blockRows = resultObjectUtil.readBlock( bis, null );
+				blockPos = 0;
+			}
+			int size = Math.min( length - pos, blockRows.length - blockPos );
+			System.arraycopy( blockRows, blockPos, rowDatas, pos, size );
+			blockPos += size;
+			pos += size;
+		}
+		return rowDatas;
+	}
+
 	/**
 	 * Close current input file.
 	 * 
@@ -118,6 +153,8 @@ class DataFileReader
 				bis.close( );
 				fis.close( );
 				isOpen = false;
+				blockRows = null;
+				blockPos = 0;
 			}
 			catch ( IOException e )
 			{
@@ -18,6 +18,7 @@ import java.io.IOException;
 
 import org.eclipse.birt.data.engine.core.DataException;
 import org.eclipse.birt.data.engine.core.security.FileSecurity;
+import org.eclipse.birt.data.engine.executor.cache.ColumnarBlockUtil;
 import org.eclipse.birt.data.engine.executor.cache.ResultObjectUtil;
 import org.eclipse.birt.data.engine.odi.IResultObject;
 
@@ -34,6 +35,10 @@ class DataFileWriter
 	private BufferedOutputStream bos;
 
 	private ResultObjectUtil resultObjectUtil;
+
+	// rows which are not written yet when columnar block is used
+	private IResultObject[] blockBuffer;
+	private int blockRowCount;
 	
 	/**
 	 * A util method to new instance of DataFileWriter
@@ -55,7 +60,7 @@ class DataFileWriter
 	private DataFileWriter( File file, ResultObjectUtil resultObjectUtil )
 	{
 		this.resultObjectUtil = resultObjectUtil;
-		setWriteFile( file );
+		this.file = file;
 	}
 	
 	/**
@@ -63,8 +68,9 @@ class DataFileWriter
 	 * instance.
 	 * 
 	 * @param file
+	 * @throws IOException
 	 */
-	void setWriteFile( File file )
+	void setWriteFile( File file ) throws IOException
 	{
 		if ( isOpen )
 			close( );
@@ -102,27 +108,106 @@ class DataFileWriter
 			isOpen = true;
 		}
 
-		resultObjectUtil.writeData( bos, resultObjects, count );
+		if ( resultObjectUtil.isColumnarBlock( ) )
+			writeToBlock( resultObjects, count );
+		else
+			resultObjectUtil.writeData( bos, resultObjects, count );
+	}
+
+	/**
+	 * Collect the rows into a fixed size block, and the block is written to
+	 * file once it is full.
+	 * 
+	 * @param resultObjects
+	 * @param count
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	private void writeToBlock( IResultObject[] resultObjects, int count )
+			throws IOException, DataException
+	{
+		if ( blockBuffer == null )
+			blockBuffer = new IResultObject[ColumnarBlockUtil.BLOCK_ROW_COUNT];
+
+		int pos = 0;
+		while ( pos < count )
+		{
+			int size = Math.min( count - pos, blockBuffer.length
+					- blockRowCount );
+			System.arraycopy( resultObjects, pos, blockBuffer, blockRowCount, size );
+			blockRowCount += size;
+			pos += size;
+			if ( blockRowCount == blockBuffer.length )
+				writeBlock( );
+		}
 	}
 
 	/**
-	 * Close current output file 
+	 * Write the collected rows as one block
+	 * 
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	private void writeBlock( ) throws IOException, DataException
+	{
+		if ( blockRowCount == 0 )
+			return;
+		resultObjectUtil.writeBlock( bos, blockBuffer, blockRowCount );
+		for ( int i = 0; i < blockRowCount; i++ )
+			blockBuffer[i] = null;
+		blockRowCount = 0;
+	}
+
+	/**
+	 * Write all pending rows to file. This method must be called before the
+	 * written data is read.
+	 * 
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	void flush( ) throws IOException, DataException
+	{
+		if ( isOpen )
+		{
+			writeBlock( );
+			bos.flush( );
+		}
+	}
+
+	/**
+	 * Close current output file. The pending rows of the columnar block are
+	 * written before the file is closed, and the file is closed even if they
+	 * can't be written.
 	 * 
 	 * @throws IOException, file close exception
 	 */
-	void close( )
+	void close( ) throws IOException
 	{
 		if ( isOpen )
 		{
+			isOpen = false;
 			try
 			{
-				bos.close( );
-				fos.close( );
-				isOpen = false;
+				writeBlock( );
 			}
-			catch ( IOException e )
+			catch ( DataException e )
 			{
-				// normally this exception will never be thrown
+				IOException ioe = new IOException( e.getMessage( ) );
+				ioe.initCause( e );
+				throw ioe;
+			}
+			finally
+			{
+				blockBuffer = null;
+				blockRowCount = 0;
+				try
+				{
+					bos.close( );
+				}
+				finally
+				{
+					fos.close( );
+				}
 			}
 		}
 	}
@@ -99,12 +99,58 @@ public class DiskCache implements ResultSetCache
 			IRowResultSet rowResultSet, IResultClass rsMeta,
 			Comparator comparator, int MemoryCacheRowCount,int maxRows, DataEngineSession session )
 			throws DataException
+	{
+		this( resultObjects,
+				resultObject,
+				rowResultSet,
+				rsMeta,
+				comparator,
+				MemoryCacheRowCount,
+				maxRows,
+				session,
+				null );
+	}
+
+	/**
+	 * The appContext decides the format of the temporary files and how the
+	 * rows are sorted, see DataEngine.DISK_CACHE_FORMAT and
+	 * DataEngine.DISK_SORT_PARALLELISM.
+	 * 
+	 * @param resultObjects
+	 * @param resultObject
+	 * @param rowResultSet
+	 * @param rsMeta
+	 * @param comparator
+	 * @param MemoryCacheRowCount
+	 * @param maxRows
+	 * @param session
+	 * @param appContext
+	 * @throws DataException
+	 */
+	public DiskCache( IResultObject[] resultObjects, IResultObject resultObject,
+			IRowResultSet rowResultSet, IResultClass rsMeta,
+			Comparator comparator, int MemoryCacheRowCount, int maxRows,
+			DataEngineSession session, Map appContext ) throws DataException
 	{
 		//this.rsMeta = rsMeta;
 		this.MemoryCacheRowCount = MemoryCacheRowCount;
 		this.rsMeta = rsMeta;
 		this.session = session;
-		this.diskBasedResultSet = new DiskCacheResultSet( getInfoMap( ), session );
+		Map infoMap = getInfoMap( );
+		if ( CacheUtil.isColumnarDiskCache( appContext ) )
+		{
+			infoMap.put( "columnarBlock", "true" );
+			infoMap.put( "compressBlock",
+					String.valueOf( CacheUtil.isDiskCacheCompressed( appContext ) ) );
+		}
+		int stringDictionarySize = CacheUtil.getStringDictionarySize( appContext );
+		if ( stringDictionarySize > 0 )
+			infoMap.put( "stringDictionarySize",
+					String.valueOf( stringDictionarySize ) );
+		int sortParallelism = CacheUtil.getDiskSortParallelism( appContext );
+		if ( sortParallelism > 1 )
+			infoMap.put( "sortParallelism", String.valueOf( sortParallelism ) );
+		this.diskBasedResultSet = new DiskCacheResultSet( infoMap, session );
 		
 		try
 		{
@@ -349,6 +395,9 @@ public class DiskCache implements ResultSetCache
 	 * 		tempDir, to generated temp file in DiskMergeSort
 	 * 		goalFile, to generate the end result file
 	 * 		dataCountOfUnit, to indicate how many rows can be loaded into memory
+	 * 		columnarBlock, optional, to indicate rows are saved in columnar blocks
+	 * 		compressBlock, optional, to indicate columnar blocks are compressed
+	 * 		sortParallelism, optional, how many threads are used in sorting
 	 * @throws DataException 
 	 */
 	private Map getInfoMap( ) throws DataException
@@ -59,6 +59,10 @@ class DiskCacheResultSet
 		IResultClass rsMetaData = resultObjects[0].getResultClass( );
 		assert rsMetaData != null;
 		this.resultObjectUtil = ResultObjectUtil.newInstance( rsMetaData, session );
+		if ( "true".equals( infoMap.get( "columnarBlock" ) ) )
+			this.resultObjectUtil.enableColumnarBlock( "true".equals( infoMap.get( "compressBlock" ) ) );
+		if ( infoMap.get( "stringDictionarySize" ) != null )
+			this.resultObjectUtil.enableStringDictionary( Integer.parseInt( (String) infoMap.get( "stringDictionarySize" ) ) );
 		
 		databaseExport = DiskDataExport.newInstance( infoMap,
 				comparator,
@@ -17,6 +17,7 @@ import java.util.Map;
 import org.eclipse.birt.data.engine.core.DataException;
 import org.eclipse.birt.data.engine.executor.cache.IRowResultSet;
 import org.eclipse.birt.data.engine.executor.cache.ResultObjectUtil;
+import org.eclipse.birt.data.engine.executor.cache.RowComparator;
 import org.eclipse.birt.data.engine.i18n.ResourceConstants;
 import org.eclipse.birt.data.engine.impl.DataEngineSession;
 import org.eclipse.birt.data.engine.odi.IResultClass;
@@ -46,7 +47,12 @@ abstract class DiskDataExport
 			ResultObjectUtil resultObjectUtil, DataEngineSession session )
 	{
 		DiskDataExport dbExport;
-		if ( comparator != null )
+		if ( comparator instanceof RowComparator
+				&& infoMap.get( "sortParallelism" ) != null )
+			dbExport = new ParallelDiskSortExport( infoMap,
+					(RowComparator) comparator,
+					resultObjectUtil );
+		else if ( comparator != null )
 			dbExport = new DiskSortExport2( infoMap, comparator, resultObjectUtil );
 		else
 			dbExport = new DiskDirectExport( infoMap, resultObjectUtil );
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2004 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.data.engine.executor.cache.disk;
+
+import java.io.IOException;
+
+import org.eclipse.birt.data.engine.core.DataException;
+import org.eclipse.birt.data.engine.executor.cache.RowComparator;
+import org.eclipse.birt.data.engine.odi.IResultObject;
+
+/**
+ * K-way merge of several sorted row iterators by a loser tree. Every fetch
+ * costs log(k) comparisons, and the sort key values of a row are evaluated
+ * only once when the row is read from its source. Rows with equal keys are
+ * returned in the order of their sources, so the merge is stable.
+ */
+class LoserTreeRowIterator implements IRowIterator
+{
+	private IRowIterator[] subRowIterators;
+	private RowComparator comparator;
+
+	// the current row of every source, null if the source is exhausted
+	private IResultObject[] heads;
+	private Object[][] headKeys;
+
+	// tree[0] is the winner, and the other nodes keep the losers
+	private int[] tree;
+	private boolean initialized;
+
+	/**
+	 * @param subRowIterators
+	 *            The rows of every iterator are sorted.
+	 * @param comparator
+	 */
+	LoserTreeRowIterator( IRowIterator[] subRowIterators,
+			RowComparator comparator )
+	{
+		assert subRowIterators != null;
+
+		this.subRowIterators = subRowIterators;
+		this.comparator = comparator;
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.executor.cache.disk.IRowIterator#reset()
+	 */
+	public void reset( ) throws DataException
+	{
+		for ( int i = 0; i < subRowIterators.length; i++ )
+		{
+			subRowIterators[i].reset( );
+		}
+		initialized = false;
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.executor.cache.disk.IRowIterator#fetch()
+	 */
+	public IResultObject fetch( ) throws IOException, DataException
+	{
+		if ( !initialized )
+			build( );
+		if ( tree.length == 0 )
+			return null;
+
+		int winner = tree[0];
+		IResultObject value = heads[winner];
+		if ( value == null )
+			return null;
+
+		readHead( winner );
+		replay( winner );
+		return value;
+	}
+
+	/**
+	 * Read the first row of every source and build the tree bottom-up.
+	 *
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	private void build( ) throws IOException, DataException
+	{
+		int k = subRowIterators.length;
+		heads = new IResultObject[k];
+		headKeys = new Object[k][];
+		tree = new int[k];
+		initialized = true;
+		if ( k == 0 )
+			return;
+
+		for ( int i = 0; i < k; i++ )
+		{
+			readHead( i );
+		}
+
+		// winners of the sub trees, leaves are at positions k to 2k - 1
+		int[] winners = new int[2 * k];
+		for ( int i = 0; i < k; i++ )
+		{
+			winners[k + i] = i;
+		}
+		for ( int node = k - 1; node > 0; node-- )
+		{
+			int left = winners[2 * node];
+			int right = winners[2 * node + 1];
+			if ( precedes( left, right ) )
+			{
+				winners[node] = left;
+				tree[node] = right;
+			}
+			else
+			{
+				winners[node] = right;
+				tree[node] = left;
+			}
+		}
+		tree[0] = k == 1 ? 0 : winners[1];
+	}
+
+	/**
+	 * Replay the matches from the leaf of the source to the root.
+	 *
+	 * @param source
+	 */
+	private void replay( int source )
+	{
+		int k = subRowIterators.length;
+		int winner = source;
+		for ( int node = ( k + source ) >> 1; node > 0; node >>= 1 )
+		{
+			if ( precedes( tree[node], winner ) )
+			{
+				int loser = winner;
+				winner = tree[node];
+				tree[node] = loser;
+			}
+		}
+		tree[0] = winner;
+	}
+
+	/**
+	 * @param source
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	private void readHead( int source ) throws IOException, DataException
+	{
+		IResultObject row = subRowIterators[source].fetch( );
+		heads[source] = row;
+		headKeys[source] = row == null ? null
+				: comparator.getSortKeyValues( row );
+	}
+
+	/**
+	 * @param source1
+	 * @param source2
+	 * @return whether the current row of source1 should be returned before
+	 *         the current row of source2
+	 */
+	private boolean precedes( int source1, int source2 )
+	{
+		if ( heads[source1] == null )
+			return false;
+		if ( heads[source2] == null )
+			return true;
+		int result = comparator.compareSortKeyValues( headKeys[source1],
+				headKeys[source2] );
+		return result < 0 || ( result == 0 && source1 < source2 );
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.executor.cache.disk.IRowIterator#close()
+	 */
+	public void close( ) throws DataException
+	{
+		for ( int i = 0; i < subRowIterators.length; i++ )
+		{
+			subRowIterators[i].close( );
+		}
+		heads = null;
+		headKeys = null;
+	}
+}
@@ -0,0 +1,463 @@
+/*******************************************************************************
+ * Copyright (c) 2004 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.data.engine.executor.cache.disk;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.eclipse.birt.data.engine.core.DataException;
+import org.eclipse.birt.data.engine.executor.cache.IRowResultSet;
+import org.eclipse.birt.data.engine.executor.cache.ResultObjectUtil;
+import org.eclipse.birt.data.engine.executor.cache.RowComparator;
+import org.eclipse.birt.data.engine.i18n.ResourceConstants;
+import org.eclipse.birt.data.engine.odi.IResultObject;
+
+/**
+ * One implementation of DataBaseExport which sorts the rows on a thread pool.
+ * The rows are read in the thread of the query and split into runs, and the
+ * sort key values of every row are evaluated at the same time, since they
+ * might be computed by script. The runs are sorted and written to temporary
+ * files by the pool, and then merged by a loser tree.
+ * <p>
+ * At most as many runs as the parallelism are being sorted at one time, plus
+ * the run which is being filled. The size of a run is dataCountOfUnit divided
+ * by the parallelism plus one, so the rows kept in memory never exceed
+ * dataCountOfUnit, which is derived from the memory cache limit, the same as
+ * DiskSortExport2. Besides the rows, the evaluated sort key values of every
+ * row in these runs are kept.
+ */
+class ParallelDiskSortExport extends DiskDataExport
+{
+	// The number of temp files which are opened for merge sort at one time is
+	// this value, max.
+	private final static int maxOpenFile = 500;
+
+	private int parallelism;
+	private int dataCountOfRun;
+
+	private RowComparator comparator;
+	private MergeTempFileUtil tempFileUtil;
+
+	private ForkJoinPool pool;
+	private LinkedList<Future<Object>> pendingRuns;
+	private List<RowFile> runFiles;
+
+	// rows of the run which is being filled
+	private KeyedRow[] runBuffer;
+	private int runPos;
+
+	// the goal iterator
+	private IRowIterator goalRowIterator;
+
+	/**
+	 * @param infoMap
+	 * @param comparator
+	 * @param resultObjectUtil
+	 */
+	ParallelDiskSortExport( Map infoMap, RowComparator comparator,
+			ResultObjectUtil resultObjectUtil )
+	{
+		int dataCountOfUnit = Integer.parseInt( (String) infoMap.get( "dataCountOfUnit" ) );
+		this.parallelism = Integer.parseInt( (String) infoMap.get( "sortParallelism" ) );
+		// the pending runs and the filling run share the memory of one unit
+		this.dataCountOfRun = Math.max( 2, dataCountOfUnit
+				/ ( parallelism + 1 ) );
+
+		this.comparator = comparator;
+		this.comparator.prepareConcurrentCompare( );
+		this.tempFileUtil = new MergeTempFileUtil( (String) ( infoMap.get( "tempDir" ) ),
+				resultObjectUtil );
+
+		this.pendingRuns = new LinkedList<Future<Object>>( );
+		this.runFiles = new ArrayList<RowFile>( );
+		this.runBuffer = new KeyedRow[dataCountOfRun];
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.executor.cache.disk.DiskDataExport#exportStartDataToDisk(org.eclipse.birt.data.engine.odi.IResultObject[])
+	 */
+	public void exportStartDataToDisk( IResultObject[] resultObjects )
+			throws IOException, DataException
+	{
+		try
+		{
+			for ( int i = 0; i < resultObjects.length; i++ )
+			{
+				addNewRow( resultObjects[i] );
+			}
+		}
+		catch ( IOException e )
+		{
+			abort( );
+			throw e;
+		}
+		catch ( DataException e )
+		{
+			abort( );
+			throw e;
+		}
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.executor.cache.disk.DiskDataExport#exportRestDataToDisk(org.eclipse.birt.data.engine.odi.IResultObject,
+	 *      org.eclipse.birt.data.engine.executor.cache.IRowResultSet, int)
+	 */
+	public int exportRestDataToDisk( IResultObject resultObject,
+			IRowResultSet rs, int maxRows ) throws DataException, IOException
+	{
+		try
+		{
+			addNewRow( resultObject );
+
+			int columnCount = rs.getMetaData( ).getFieldCount( );
+			int currDataCount = 1;
+			IResultObject odaObject = null;
+			while ( ( odaObject = rs.next( ) ) != null )
+			{
+				if ( maxRows > 0 && currDataCount > maxRows )
+					throw new DataException( ResourceConstants.EXCEED_MAX_DATA_OBJECT_ROWS );
+				if ( session.getStopSign( ).isStopped( ) )
+				{
+					abort( );
+					this.goalRowIterator = new LoserTreeRowIterator( new IRowIterator[0],
+							comparator );
+					return 0;
+				}
+				Object[] ob = new Object[columnCount];
+				for ( int i = 0; i < columnCount; i++ )
+					ob[i] = odaObject.getFieldValue( i + 1 );
+
+				addNewRow( resultObjectUtil.newResultObject( ob ) );
+				currDataCount++;
+			}
+
+			submitRun( );
+			while ( !pendingRuns.isEmpty( ) )
+			{
+				waitForRun( pendingRuns.removeFirst( ) );
+			}
+			shutdownPool( );
+
+			this.goalRowIterator = mergeRuns( );
+			return currDataCount;
+		}
+		catch ( IOException e )
+		{
+			abort( );
+			throw e;
+		}
+		catch ( DataException e )
+		{
+			abort( );
+			throw e;
+		}
+	}
+
+	/**
+	 * Add a row to current run, and the run is handed over to the pool once it
+	 * is full.
+	 *
+	 * @param resultObject
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	private void addNewRow( IResultObject resultObject ) throws IOException,
+			DataException
+	{
+		runBuffer[runPos++] = new KeyedRow( resultObject,
+				comparator.getSortKeyValues( resultObject ) );
+		if ( runPos == runBuffer.length )
+			submitRun( );
+	}
+
+	/**
+	 * Sort and write current run on the pool. If there are already as many
+	 * runs in progress as the parallelism, wait for the oldest one.
+	 *
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	private void submitRun( ) throws IOException, DataException
+	{
+		if ( runPos == 0 )
+			return;
+
+		while ( pendingRuns.size( ) >= parallelism )
+		{
+			waitForRun( pendingRuns.removeFirst( ) );
+		}
+
+		// the temp file must be created in the thread of the query
+		RowFile rowFile = tempFileUtil.newTempFile( 0 );
+		runFiles.add( rowFile );
+
+		KeyedRow[] rows = runBuffer;
+		if ( runPos < rows.length )
+		{
+			rows = new KeyedRow[runPos];
+			System.arraycopy( runBuffer, 0, rows, 0, runPos );
+		}
+		pendingRuns.add( getPool( ).submit( new SortRunTask( rows,
+				rowFile,
+				comparator ) ) );
+
+		runBuffer = new KeyedRow[dataCountOfRun];
+		runPos = 0;
+	}
+
+	/**
+	 * @param run
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	private static void waitForRun( Future<Object> run ) throws IOException,
+			DataException
+	{
+		try
+		{
+			run.get( );
+		}
+		catch ( InterruptedException e )
+		{
+			Thread.currentThread( ).interrupt( );
+			throw new DataException( ResourceConstants.WRITE_TEMPFILE_ERROR, e );
+		}
+		catch ( ExecutionException e )
+		{
+			Throwable cause = e.getCause( );
+			if ( cause instanceof IOException )
+				throw (IOException) cause;
+			if ( cause instanceof DataException )
+				throw (DataException) cause;
+			if ( cause instanceof RuntimeException )
+				throw (RuntimeException) cause;
+			throw new DataException( ResourceConstants.WRITE_TEMPFILE_ERROR,
+					cause );
+		}
+	}
+
+	/**
+	 * Merge the sorted runs. If there are more runs than the files can be
+	 * opened at one time, they are merged level by level in the thread of the
+	 * query, since the sort key values of the rows read from file need to be
+	 * evaluated again. If the query is stopped, all the runs are deleted and
+	 * an empty iterator is returned.
+	 *
+	 * @return
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	private IRowIterator mergeRuns( ) throws IOException, DataException
+	{
+		while ( runFiles.size( ) > maxOpenFile )
+		{
+			tempFileUtil.newMergeLevel( );
+			List<RowFile> newRunFiles = new ArrayList<RowFile>( );
+			boolean merged = false;
+			try
+			{
+				for ( int start = 0; start < runFiles.size( ); start += maxOpenFile )
+				{
+					if ( session.getStopSign( ).isStopped( ) )
+					{
+						// the merged runs are deleted in finally
+						closeRuns( runFiles.subList( start, runFiles.size( ) ) );
+						runFiles = new ArrayList<RowFile>( );
+						return new LoserTreeRowIterator( new IRowIterator[0],
+								comparator );
+					}
+					List<RowFile> group = runFiles.subList( start,
+							Math.min( start + maxOpenFile, runFiles.size( ) ) );
+					IRowIterator mergedRows = new LoserTreeRowIterator( group.toArray( new RowFile[group.size( )] ),
+							comparator );
+					RowFile targetFile = tempFileUtil.newTempFile( 0 );
+					newRunFiles.add( targetFile );
+					try
+					{
+						IResultObject resultObject = mergedRows.fetch( );
+						while ( resultObject != null )
+						{
+							targetFile.write( resultObject );
+							resultObject = mergedRows.fetch( );
+						}
+					}
+					finally
+					{
+						// the merged runs are deleted when they are closed
+						mergedRows.close( );
+					}
+					targetFile.endWrite( );
+				}
+				merged = true;
+			}
+			finally
+			{
+				if ( !merged )
+					closeRuns( newRunFiles );
+			}
+			runFiles = newRunFiles;
+		}
+
+		IRowIterator goal = new LoserTreeRowIterator( runFiles.toArray( new RowFile[runFiles.size( )] ),
+				comparator );
+		runFiles = new ArrayList<RowFile>( );
+		return goal;
+	}
+
+	/**
+	 * @return
+	 */
+	private ForkJoinPool getPool( )
+	{
+		if ( pool == null )
+			pool = new ForkJoinPool( parallelism );
+		return pool;
+	}
+
+	private void shutdownPool( )
+	{
+		if ( pool != null )
+		{
+			pool.shutdown( );
+			pool = null;
+		}
+	}
+
+	/**
+	 * Stop the runs in progress and delete the written files.
+	 *
+	 * @throws DataException
+	 */
+	private void abort( ) throws DataException
+	{
+		for ( Future<Object> run : pendingRuns )
+		{
+			run.cancel( false );
+		}
+		for ( Future<Object> run : pendingRuns )
+		{
+			try
+			{
+				run.get( );
+			}
+			catch ( Exception e )
+			{
+				// the run is abandoned
+			}
+		}
+		pendingRuns.clear( );
+		shutdownPool( );
+		closeRuns( runFiles );
+		runFiles.clear( );
+	}
+
+	/**
+	 * Close the runs and delete their files.
+	 *
+	 * @param runs
+	 */
+	private static void closeRuns( List<RowFile> runs )
+	{
+		for ( int i = 0; i < runs.size( ); i++ )
+		{
+			runs.get( i ).close( );
+		}
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.executor.cache.disk.DiskDataExport#outputResultObjects(org.eclipse.birt.data.engine.odi.IResultObject[],
+	 *      int)
+	 */
+	protected void outputResultObjects( IResultObject[] resultObjects,
+			int indexOfUnit ) throws IOException
+	{
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.executor.cache.disk.DiskDataExport#getRowIterator()
+	 */
+	public IRowIterator getRowIterator( )
+	{
+		return goalRowIterator;
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.executor.cache.disk.DiskDataExport#close()
+	 */
+	public void close( )
+	{
+		shutdownPool( );
+		tempFileUtil.clearTempDir( );
+	}
+
+	/**
+	 * A row and its evaluated sort key values.
+	 */
+	private static class KeyedRow
+	{
+		IResultObject row;
+		Object[] keys;
+
+		KeyedRow( IResultObject row, Object[] keys )
+		{
+			this.row = row;
+			this.keys = keys;
+		}
+	}
+
+	/**
+	 * Sort a run by the evaluated sort key values and write it to file.
+	 */
+	private static class SortRunTask implements Callable<Object>
+	{
+		private KeyedRow[] rows;
+		private RowFile rowFile;
+		private RowComparator comparator;
+
+		SortRunTask( KeyedRow[] rows, RowFile rowFile, RowComparator comparator )
+		{
+			this.rows = rows;
+			this.rowFile = rowFile;
+			this.comparator = comparator;
+		}
+
+		public Object call( ) throws Exception
+		{
+			Arrays.sort( rows, new Comparator<KeyedRow>( ) {
+
+				public int compare( KeyedRow o1, KeyedRow o2 )
+				{
+					return comparator.compareSortKeyValues( o1.keys, o2.keys );
+				}
+			} );
+
+			IResultObject[] sortedRows = new IResultObject[rows.length];
+			for ( int i = 0; i < rows.length; i++ )
+			{
+				sortedRows[i] = rows[i].row;
+			}
+			rows = null;
+			rowFile.writeRows( sortedRows, sortedRows.length );
+			rowFile.endWrite( );
+			return null;
+		}
+	}
+}
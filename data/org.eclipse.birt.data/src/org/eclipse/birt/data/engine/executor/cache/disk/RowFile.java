@@ -169,21 +169,27 @@ class RowFile implements IRowIterator, ICloseListener
 
 	/**
 	 * End write operation. This mothed must be called before fetching row object.
+	 * @throws IOException
+	 * @throws DataException 
 	 */
-	void endWrite( )
+	void endWrite( ) throws IOException, DataException
 	{
+		if ( dfw != null )
+			dfw.flush( );
 		closeWriter();
 	}
 	
 	/**
 	 * Close current writer object
+	 * @throws IOException
 	 */
-	private void closeWriter( )
+	private void closeWriter( ) throws IOException
 	{
 		if ( dfw != null )
 		{
-			dfw.close( );
+			DataFileWriter writer = dfw;
 			dfw = null;
+			writer.close( );
 		}
 	}
 	
@@ -265,7 +271,15 @@ class RowFile implements IRowIterator, ICloseListener
 	 */
 	public void close( )
 	{
-		closeWriter( );
+		try
+		{
+			closeWriter( );
+		}
+		catch ( IOException e )
+		{
+			// the temp file is deleted below, so the unwritten rows are not
+			// needed any more
+		}
 		closeReader( );
 
 		if ( tempFile != null )
@@ -339,7 +339,8 @@ public class CachedResultSet implements IResultIterator
 				{
 					Map<String, IIndexSerializer> index = 
 						streamsWrapper.getStreamForIndex( this.getResultClass( ), handler.getAppContext( ) );
-					Map<String, StringTable> stringTables = streamsWrapper.getOutputStringTable( this.getResultClass( ) );
+					Map<String, StringTable> stringTables = streamsWrapper.getOutputStringTable( this.getResultClass( ),
+							handler.getAppContext( ) );
 					
 					IDataSetWriter writer = DataSetStore.createWriter( streamsWrapper.getStreamManager( ),
 							getResultClass( ),
@@ -370,10 +371,7 @@ public class CachedResultSet implements IResultIterator
 								.getVersion( ),
 								streamsWrapper.getAuxiliaryIndexCreators( ),
 								false);
-						for( StringTable stringTable : stringTables.values( ))
-						{
-							stringTable.close( );
-						}
+						streamsWrapper.closeStringTables( this.getResultClass( ) );
 						for( IIndexSerializer ind: index.values( ))
 						{
 							ind.close( );
@@ -674,7 +672,8 @@ public class CachedResultSet implements IResultIterator
 				{
 					Map<String, IIndexSerializer> index = 
 						streamsWrapper.getStreamForIndex( this.getResultClass( ), handler.getAppContext( ) );
-					Map<String, StringTable> stringTables = streamsWrapper.getOutputStringTable( this.getResultClass( ) );
+					Map<String, StringTable> stringTables = streamsWrapper.getOutputStringTable( this.getResultClass( ),
+							handler.getAppContext( ) );
 					this.resultSetPopulator.getCache( )
 								.incrementalUpdate( outputStream,
 										dlStream,
@@ -686,10 +685,7 @@ public class CachedResultSet implements IResultIterator
 									streamsWrapper.getStreamManager( )
 											.getVersion( ),
 									streamsWrapper.getAuxiliaryIndexCreators( ) );
-					for( StringTable stringTable : stringTables.values( ))
-					{
-						stringTable.close( );
-					}
+					streamsWrapper.closeStringTables( this.getResultClass( ) );
 					for( IIndexSerializer ind: index.values( ))
 					{
 						ind.close( );
@@ -51,7 +51,6 @@ import org.eclipse.birt.data.engine.impl.DataSetRuntime;
 import org.eclipse.birt.data.engine.impl.DataSetRuntime.Mode;
 import org.eclipse.birt.data.engine.impl.FilterByRow;
 import org.eclipse.birt.data.engine.impl.IExecutorHelper;
-import org.eclipse.birt.data.engine.impl.StringTable;
 import org.eclipse.birt.data.engine.impl.document.StreamWrapper;
 import org.eclipse.birt.data.engine.impl.document.stream.StreamManager;
 import org.eclipse.birt.data.engine.impl.document.viewing.ExprMetaUtil;
@@ -392,11 +391,7 @@ public class SimpleResultSet implements IResultIterator
 						hash.close( );
 					}
 				}
-				Map<String, StringTable> stringTables = this.streamsWrapper.getOutputStringTable( this.getResultClass( ) );
-				for( StringTable stringTable : stringTables.values( ))
-				{
-					stringTable.close( );
-				}
+				this.streamsWrapper.closeStringTables( this.getResultClass( ) );
 				if ( this.streamsWrapper.getStreamManager( )
 						.hasOutStream( DataEngineContext.EXPR_VALUE_STREAM,
 								StreamManager.ROOT_STREAM,
@@ -816,7 +811,8 @@ public class SimpleResultSet implements IResultIterator
 							currResultObj,
 							colCount,
 							resultSetNameSet,
-							streamsWrapper.getOutputStringTable( getResultClass( ) ),
+							streamsWrapper.getOutputStringTable( getResultClass( ),
+									handler.getAppContext( ) ),
 							streamsWrapper.getStreamForIndex( getResultClass( ), handler.getAppContext( ) ),
 							this.rowCount-1, streamsWrapper.getStreamManager( ).getVersion( ) );
 
@@ -0,0 +1,585 @@
+/*
+ *************************************************************************
+ * Copyright (c) 2004, 2008 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *
+ *************************************************************************
+ */
+
+package org.eclipse.birt.data.engine.executor.transform;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.birt.data.engine.core.DataException;
+import org.eclipse.birt.data.engine.executor.BaseQuery;
+import org.eclipse.birt.data.engine.executor.aggregation.AggrDefnManager;
+import org.eclipse.birt.data.engine.executor.aggregation.HashAggregationHelper;
+import org.eclipse.birt.data.engine.executor.aggregation.HashAggregationHelper.AggregationGroup;
+import org.eclipse.birt.data.engine.executor.cache.ResultSetCache;
+import org.eclipse.birt.data.engine.executor.cache.RowComparator;
+import org.eclipse.birt.data.engine.executor.cache.SortSpec;
+import org.eclipse.birt.data.engine.expression.CompareHints;
+import org.eclipse.birt.data.engine.impl.DataEngineSession;
+import org.eclipse.birt.data.engine.impl.IExecutorHelper;
+import org.eclipse.birt.data.engine.impl.document.StreamWrapper;
+import org.eclipse.birt.data.engine.odaconsumer.ResultSet;
+import org.eclipse.birt.data.engine.odi.IAggrInfo;
+import org.eclipse.birt.data.engine.odi.IEventHandler;
+import org.eclipse.birt.data.engine.odi.IQuery;
+import org.eclipse.birt.data.engine.odi.IQuery.GroupSpec;
+import org.eclipse.birt.data.engine.odi.IResultClass;
+import org.eclipse.birt.data.engine.odi.IResultIterator;
+import org.eclipse.birt.data.engine.odi.IResultObject;
+
+/**
+ * A result set of summary query, which only contains one row for every
+ * instance of the innermost group. The rows fetched from ODA are grouped by
+ * hashing their group keys, and the aggregations are calculated while the rows
+ * are fetched, so only the first row of every innermost group instance is
+ * kept. After all rows are fetched, the kept rows are sorted by the group keys
+ * and the query sorts with the comparator of the sort-based grouping, unless
+ * the data source has sorted them already.
+ */
+public class StreamingAggregationResultSet implements IResultIterator
+{
+	private SimpleResultSet source;
+	// the result class of the source, which is not available after the source
+	// is closed
+	private IResultClass resultClass;
+	private IEventHandler handler;
+	private GroupSpec[] groupSpecs;
+	private IQuery.SortSpec[] ordering;
+	private boolean isSortedBySource;
+	private HashAggregationHelper aggrHelper;
+
+	// the indexes of group key columns
+	private int[] keyIndexes;
+
+	private GroupInstance root;
+
+	// the group instances of every row, indexed by group level
+	private List<GroupInstance[]> rows;
+
+	// the group instances of every group level
+	private List<GroupInstance>[] groupInstances;
+
+	private int currentIndex;
+	private boolean isClosed;
+
+	/**
+	 *
+	 * @param dataSourceQuery
+	 * @param resultSet
+	 * @param resultClass
+	 * @param handler
+	 * @param groupSpecs
+	 * @param isSortedBySource
+	 *            whether the rows are sorted by the group keys in data source
+	 * @param session
+	 * @throws DataException
+	 */
+	public StreamingAggregationResultSet( BaseQuery dataSourceQuery,
+			ResultSet resultSet, IResultClass resultClass,
+			IEventHandler handler, GroupSpec[] groupSpecs,
+			boolean isSortedBySource, DataEngineSession session )
+			throws DataException
+	{
+		// the rows are fetched without grouping, they are grouped here
+		this.source = new SimpleResultSet( dataSourceQuery,
+				resultSet,
+				resultClass,
+				handler,
+				new GroupSpec[0],
+				session,
+				false );
+		this.handler = handler;
+		this.groupSpecs = groupSpecs;
+		this.ordering = dataSourceQuery.getOrdering( );
+		this.isSortedBySource = isSortedBySource;
+		this.aggrHelper = new HashAggregationHelper( handler.getColumnBindings( ),
+				new AggrDefnManager( handler.getAggrDefinitions( ) ),
+				session.getTempDir( ),
+				session.getSharedScope( ),
+				session.getEngineContext( ).getScriptContext( ),
+				handler.getExecutorHelper( ) );
+		this.root = new GroupInstance( null );
+		this.rows = new ArrayList<GroupInstance[]>( );
+		this.groupInstances = new List[groupSpecs.length + 1];
+		for ( int i = 0; i < groupInstances.length; i++ )
+		{
+			this.groupInstances[i] = new ArrayList<GroupInstance>( );
+		}
+	}
+
+	/**
+	 * Fetch and aggregate all rows, and then return the result set positioned
+	 * at its first row.
+	 *
+	 * @return
+	 * @throws DataException
+	 */
+	public IResultIterator getResultSetIterator( ) throws DataException
+	{
+		try
+		{
+			IResultIterator rowIterator = this.source.getResultSetIterator( );
+			this.resultClass = rowIterator.getResultClass( );
+			aggregate( rowIterator );
+		}
+		finally
+		{
+			this.source.close( );
+		}
+		populateRows( );
+		this.currentIndex = 0;
+		this.handler.handleEndOfDataSetProcess( this );
+		return this;
+	}
+
+	/**
+	 * Accumulate every row to its group instances.
+	 *
+	 * @param rowIterator
+	 * @throws DataException
+	 */
+	private void aggregate( IResultIterator rowIterator ) throws DataException
+	{
+		keyIndexes = new int[groupSpecs.length];
+		for ( int i = 0; i < groupSpecs.length; i++ )
+		{
+			keyIndexes[i] = groupSpecs[i].getKeyColumn( ) != null
+					? resultClass.getFieldIndex( groupSpecs[i].getKeyColumn( ) )
+					: groupSpecs[i].getKeyIndex( );
+		}
+
+		GroupInstance[] groups = new GroupInstance[groupSpecs.length + 1];
+		groups[0] = this.root;
+		IResultObject row = rowIterator.getCurrentResult( );
+		while ( row != null )
+		{
+			GroupInstance group = this.root;
+			for ( int i = 0; i < keyIndexes.length; i++ )
+			{
+				group = group.getChild( row.getFieldValue( keyIndexes[i] ) );
+				groups[i + 1] = group;
+			}
+			if ( group.row == null )
+				group.row = row;
+			this.aggrHelper.onRow( groups,
+					row,
+					rowIterator.getCurrentResultIndex( ) );
+
+			rowIterator.next( );
+			row = rowIterator.getCurrentResult( );
+		}
+	}
+
+	/**
+	 * Finish the aggregations, and add the rows of the innermost group
+	 * instances in the order of the sort-based grouping.
+	 *
+	 * @throws DataException
+	 */
+	private void populateRows( ) throws DataException
+	{
+		List<GroupInstance> leaves = new ArrayList<GroupInstance>( );
+		finish( this.root, 0, leaves );
+		if ( !this.isSortedBySource )
+		{
+			final RowComparator comparator = new RowComparator( getSortSpec( ),
+					this.handler );
+			// the sort is stable, so rows with equal keys keep the order of
+			// data source as they do in the sort-based grouping
+			Collections.sort( leaves, new Comparator<GroupInstance>( ) {
+
+				public int compare( GroupInstance g1, GroupInstance g2 )
+				{
+					return comparator.compare( g1.row, g2.row );
+				}
+			} );
+		}
+
+		for ( GroupInstance leaf : leaves )
+		{
+			GroupInstance[] groups = new GroupInstance[this.groupSpecs.length + 1];
+			GroupInstance g = leaf;
+			for ( int i = groups.length - 1; i >= 0; i-- )
+			{
+				groups[i] = g;
+				g = g.parent;
+			}
+			this.rows.add( groups );
+		}
+
+		this.root.index = 0;
+		this.root.startIndex = 0;
+		this.root.endIndex = this.rows.size( );
+		this.groupInstances[0].add( this.root );
+		for ( int level = 1; level < this.groupInstances.length; level++ )
+		{
+			GroupInstance previous = null;
+			for ( int i = 0; i < this.rows.size( ); i++ )
+			{
+				GroupInstance group = this.rows.get( i )[level];
+				if ( group != previous )
+				{
+					group.index = this.groupInstances[level].size( );
+					group.startIndex = i;
+					this.groupInstances[level].add( group );
+					previous = group;
+				}
+				group.endIndex = i + 1;
+			}
+		}
+	}
+
+	/**
+	 * Finish the aggregations of the group instance and its children, and
+	 * collect the innermost group instances.
+	 *
+	 * @param group
+	 * @param groupLevel
+	 * @param leaves
+	 * @throws DataException
+	 */
+	private void finish( GroupInstance group, int groupLevel,
+			List<GroupInstance> leaves ) throws DataException
+	{
+		this.aggrHelper.finish( group );
+		if ( groupLevel == this.groupSpecs.length )
+		{
+			if ( group.row != null )
+				leaves.add( group );
+		}
+		else if ( group.children != null )
+		{
+			for ( GroupInstance child : group.children.values( ) )
+			{
+				finish( child, groupLevel + 1, leaves );
+			}
+			group.children = null;
+		}
+	}
+
+	/**
+	 * Return the sort specification of the sort-based grouping, see
+	 * GroupCalculationUtil.getSortSpec(). The rows are sorted by the group
+	 * keys and then by the query sorts.
+	 *
+	 * @return
+	 * @throws DataException
+	 */
+	private SortSpec getSortSpec( ) throws DataException
+	{
+		int groupCount = this.groupSpecs.length;
+		int sortCount = this.ordering == null ? 0 : this.ordering.length;
+		int[] sortKeyIndexes = new int[groupCount + sortCount];
+		String[] sortKeyColumns = new String[groupCount + sortCount];
+		int[] sortAscending = new int[groupCount + sortCount];
+		CompareHints[] comparator = new CompareHints[groupCount + sortCount];
+		for ( int i = 0; i < groupCount; i++ )
+		{
+			sortKeyIndexes[i] = this.keyIndexes[i];
+			sortKeyColumns[i] = this.groupSpecs[i].getKeyColumn( );
+			sortAscending[i] = this.groupSpecs[i].getSortDirection( );
+		}
+		for ( int i = 0; i < sortCount; i++ )
+		{
+			String keyName = this.ordering[i].getField( );
+			sortKeyIndexes[groupCount + i] = keyName != null
+					? getResultClass( ).getFieldIndex( keyName )
+					: this.ordering[i].getIndex( );
+			sortKeyColumns[groupCount + i] = this.ordering[i].getField( );
+			sortAscending[groupCount + i] = this.ordering[i].isAscendingOrder( )
+					? SortSpec.SORT_ASC : SortSpec.SORT_DESC;
+			comparator[groupCount + i] = new CompareHints( this.ordering[i].getComparator( ),
+					null );
+		}
+		return new SortSpec( sortKeyIndexes,
+				sortKeyColumns,
+				sortAscending,
+				comparator );
+	}
+
+	/**
+	 * @return the group instances of current row, or null if there is no
+	 *         current row
+	 */
+	private GroupInstance[] getCurrentGroups( )
+	{
+		if ( this.rows == null || this.currentIndex < 0
+				|| this.currentIndex >= this.rows.size( ) )
+			return null;
+		return this.rows.get( this.currentIndex );
+	}
+
+	/**
+	 * @param groupLevel
+	 * @return the group instance of current row at the group level
+	 */
+	private GroupInstance getCurrentGroup( int groupLevel )
+	{
+		GroupInstance[] groups = getCurrentGroups( );
+		if ( groups == null )
+			return null;
+		return groups[Math.max( 0,
+				Math.min( groupLevel, this.groupSpecs.length ) )];
+	}
+
+	/**
+	 * Compare the group instances of two rows.
+	 *
+	 * @param groups1
+	 * @param groups2
+	 * @return the outermost group level where the rows are in different group
+	 *         instances
+	 */
+	private int getBreakingGroup( GroupInstance[] groups1,
+			GroupInstance[] groups2 )
+	{
+		if ( groups1 == null || groups2 == null )
+			return 0;
+		for ( int i = 1; i < groups1.length; i++ )
+		{
+			if ( groups1[i] != groups2[i] )
+				return i;
+		}
+		return groups1.length;
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.odi.IResultIterator#getResultClass()
+	 */
+	public IResultClass getResultClass( ) throws DataException
+	{
+		if ( this.resultClass == null )
+			return this.source.getResultClass( );
+		return this.resultClass;
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.odi.IResultIterator#next()
+	 */
+	public boolean next( ) throws DataException
+	{
+		if ( this.currentIndex < this.rows.size( ) )
+			this.currentIndex++;
+		return this.currentIndex < this.rows.size( );
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.odi.IResultIterator#first(int)
+	 */
+	public void first( int groupingLevel ) throws DataException
+	{
+		GroupInstance group = getCurrentGroup( groupingLevel );
+		if ( group != null )
+			this.currentIndex = group.startIndex;
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.odi.IResultIterator#last(int)
+	 */
+	public void last( int groupingLevel ) throws DataException
+	{
+		GroupInstance group = getCurrentGroup( groupingLevel );
+		if ( group != null )
+			this.currentIndex = group.endIndex - 1;
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.odi.IResultIterator#getCurrentResult()
+	 */
+	public IResultObject getCurrentResult( ) throws DataException
+	{
+		GroupInstance group = getCurrentGroup( this.groupSpecs.length );
+		return group == null ? null : group.row;
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.odi.IResultIterator#getCurrentResultIndex()
+	 */
+	public int getCurrentResultIndex( ) throws DataException
+	{
+		return this.currentIndex;
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.odi.IResultIterator#getCurrentGroupIndex(int)
+	 */
+	public int getCurrentGroupIndex( int groupLevel ) throws DataException
+	{
+		GroupInstance group = getCurrentGroup( groupLevel );
+		return group == null ? -1 : group.index;
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.odi.IResultIterator#getStartingGroupLevel()
+	 */
+	public int getStartingGroupLevel( ) throws DataException
+	{
+		if ( this.currentIndex <= 0 )
+			return 0;
+		return getBreakingGroup( this.rows.get( this.currentIndex - 1 ),
+				getCurrentGroups( ) );
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.odi.IResultIterator#getEndingGroupLevel()
+	 */
+	public int getEndingGroupLevel( ) throws DataException
+	{
+		if ( this.currentIndex >= this.rows.size( ) - 1 )
+			return 0;
+		return getBreakingGroup( getCurrentGroups( ),
+				this.rows.get( this.currentIndex + 1 ) );
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.odi.IResultIterator#getGroupStartAndEndIndex(int)
+	 */
+	public int[] getGroupStartAndEndIndex( int groupLevel )
+			throws DataException
+	{
+		List<GroupInstance> groups = this.groupInstances[Math.min( groupLevel,
+				this.groupSpecs.length )];
+		int[] result = new int[groups.size( ) * 2];
+		for ( int i = 0; i < groups.size( ); i++ )
+		{
+			result[i * 2] = groups.get( i ).startIndex;
+			result[i * 2 + 1] = groups.get( i ).endIndex;
+		}
+		return result;
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.odi.IResultIterator#getAggrValue(java.lang.String)
+	 */
+	public Object getAggrValue( String aggrName ) throws DataException
+	{
+		IAggrInfo aggrInfo = this.aggrHelper.getAggrInfo( aggrName );
+		if ( aggrInfo == null )
+			return null;
+		GroupInstance group = aggrInfo.getGroupLevel( ) == 0 ? this.root
+				: getCurrentGroup( aggrInfo.getGroupLevel( ) );
+		return this.aggrHelper.getAggrValue( aggrName, group );
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.odi.IResultIterator#getResultSetCache()
+	 */
+	public ResultSetCache getResultSetCache( )
+	{
+		return null;
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.odi.IResultIterator#getRowCount()
+	 */
+	public int getRowCount( ) throws DataException
+	{
+		return this.rows.size( );
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.odi.IResultIterator#getExecutorHelper()
+	 */
+	public IExecutorHelper getExecutorHelper( )
+	{
+		return this.handler.getExecutorHelper( );
+	}
+
+	/*
+	 * The result set is only used in direct presentation, which does not save
+	 * report document.
+	 *
+	 * @see org.eclipse.birt.data.engine.odi.IResultIterator#doSave(org.eclipse.birt.data.engine.impl.document.StreamWrapper, boolean)
+	 */
+	public void doSave( StreamWrapper streamsWrapper, boolean isSubQuery )
+			throws DataException
+	{
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.odi.IResultIterator#incrementalUpdate(org.eclipse.birt.data.engine.impl.document.StreamWrapper, int, boolean)
+	 */
+	public void incrementalUpdate( StreamWrapper streamsWrapper,
+			int rowCount, boolean isSubQuery ) throws DataException
+	{
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.odi.IResultIterator#close()
+	 */
+	public void close( ) throws DataException
+	{
+		if ( this.isClosed )
+			return;
+		this.source.close( );
+		this.aggrHelper.close( );
+		this.rows.clear( );
+		for ( int i = 0; i < this.groupInstances.length; i++ )
+		{
+			this.groupInstances[i].clear( );
+		}
+		this.root = null;
+		this.isClosed = true;
+	}
+
+	/**
+	 * An instance of group, which keeps its aggregate values.
+	 */
+	private static class GroupInstance extends AggregationGroup
+	{
+		private GroupInstance parent;
+		private Object key;
+		private Map<Object, GroupInstance> children;
+
+		// the first row, only for the innermost group instances
+		private IResultObject row;
+
+		// the index of group instance in its group level
+		private int index;
+
+		// the rows of the group instance, the end index is exclusive
+		private int startIndex;
+		private int endIndex;
+
+		private GroupInstance( GroupInstance parent )
+		{
+			this.parent = parent;
+		}
+
+		/**
+		 * Return the child group instance of the key, which is created if it
+		 * does not exist.
+		 *
+		 * @param key
+		 * @return
+		 */
+		private GroupInstance getChild( Object key )
+		{
+			if ( this.children == null )
+				this.children = new LinkedHashMap<Object, GroupInstance>( );
+			GroupInstance child = this.children.get( key );
+			if ( child == null )
+			{
+				child = new GroupInstance( this );
+				child.key = key;
+				this.children.put( key, child );
+			}
+			return child;
+		}
+	}
+}
@@ -27,6 +27,7 @@ import org.eclipse.birt.data.engine.executor.transform.OdiResultSetWrapper;
 import org.eclipse.birt.data.engine.executor.transform.ResultSetPopulator;
 import org.eclipse.birt.data.engine.executor.transform.TransformationConstants;
 import org.eclipse.birt.data.engine.expression.ExpressionCompiler;
+import org.eclipse.birt.data.engine.expression.ExpressionCompilerUtil;
 import org.eclipse.birt.data.engine.impl.ComputedColumnHelper;
 import org.eclipse.birt.data.engine.impl.FilterByRow;
 import org.eclipse.birt.data.engine.odi.IAggrInfo;
@@ -152,6 +153,8 @@ class DataSetProcessUtil extends RowProcessUtil
 			return;
 		ExpressionCompiler compiler = new ExpressionCompiler( );
 		compiler.setDataSetMode( true );
+		compiler.setJavaExpressionEnabled( ExpressionCompilerUtil.isJavaExpressionEnabled( this.populator.getEventHandler( )
+				.getAppContext( ) ) );
 
 		List aggrInfos = new ArrayList( );
 		List aggrNames = new ArrayList( );
@@ -33,6 +33,7 @@ import org.eclipse.birt.data.engine.executor.transform.ResultSetPopulator;
 import org.eclipse.birt.data.engine.executor.transform.TransformationConstants;
 import org.eclipse.birt.data.engine.executor.transform.group.IncrementalUpdateGroupFilter;
 import org.eclipse.birt.data.engine.expression.ExpressionCompiler;
+import org.eclipse.birt.data.engine.expression.ExpressionCompilerUtil;
 import org.eclipse.birt.data.engine.impl.ComputedColumnHelper;
 import org.eclipse.birt.data.engine.impl.FilterByRow;
 import org.eclipse.birt.data.engine.impl.PreparedQueryUtil;
@@ -198,6 +199,8 @@ class ResultSetProcessUtil extends RowProcessUtil
 		// Temp code util model makes the backward comp.
 		ExpressionCompiler compiler = new ExpressionCompiler( );
 		compiler.setDataSetMode( false );
+		compiler.setJavaExpressionEnabled( ExpressionCompilerUtil.isJavaExpressionEnabled( this.populator.getEventHandler( )
+				.getAppContext( ) ) );
 		for ( Iterator it = this.populator.getEventHandler( )
 				.getColumnBindings( )
 				.values( )
@@ -216,6 +216,8 @@ abstract class AbstractExpressionCompiler
 			// to identify the interesting subexpressions
 			expr = compileComplexExpr( context, tree, false );
 		}
+		if ( expr instanceof ComplexExpression )
+			compileForJavaExpr( context, tree, (ComplexExpression) expr );
 		if ( expr instanceof BytecodeExpression )
 			compileForBytecodeExpr( context, tree, expr );
 		return expr;
@@ -470,6 +472,20 @@ abstract class AbstractExpressionCompiler
 		( (BytecodeExpression) expr ).setScript( script );
 	}
 
+	/**
+	 * Translate the tree of a single expression to the Java form of the
+	 * complex expression, so that it can be evaluated without Rhino. By
+	 * default no translation is done.
+	 * 
+	 * @param context
+	 * @param tree
+	 * @param expr
+	 */
+	protected void compileForJavaExpr( Context context, ScriptNode tree,
+			ComplexExpression expr )
+	{
+	}
+
 	/**
 	 * An aggregation expression in the form of Total.xxx for example Total.sum(
 	 * row.x ) This means the first child is a GETPROP node, and its left child
@@ -25,6 +25,7 @@ public final class ComplexExpression extends BytecodeExpression
     private ArrayList m_subExpressions;
     private ArrayList m_tokenList;
     private ArrayList m_constantExpressions;
+    private JavaExpression m_javaExpression;
 
     ComplexExpression()
 	{
@@ -171,6 +172,26 @@ public final class ComplexExpression extends BytecodeExpression
 		return m_constantExpressions;
 	}
 	
+	/**
+	 * Sets the Java form of this <code>ComplexExpression</code>, which is
+	 * evaluated against the current row instead of the Rhino byte code.
+	 * @param javaExpression	null if the expression can not be evaluated
+	 * 							in Java.
+	 */
+	void setJavaExpression( JavaExpression javaExpression )
+	{
+		m_javaExpression = javaExpression;
+	}
+	
+	/**
+	 * Returns the Java form of this <code>ComplexExpression</code>.
+	 * @return	null if the expression can only be evaluated by Rhino.
+	 */
+	JavaExpression getJavaExpression( )
+	{
+		return m_javaExpression;
+	}
+
 	/**
 	 * Returns a <code>Collection</code> of subexpressions in this 
 	 * <code>ComplexExpression</code>.  Each instance in the 
@@ -216,10 +216,34 @@ public class ExprEvaluateUtil
 		}
 		else
 		{
+			Object value = evaluateJavaExpression( expr, ro, currentIndex, scope );
+			if ( value != JavaExpression.NOT_SUPPORTED )
+				return value;
 			return expr.evaluate( cx, scope );
 		}
 	}
 
+	/**
+	 * Evaluate the Java form of a complex expression against the row, which
+	 * avoids the scope lookups and the conversions of Rhino.
+	 * 
+	 * @param expr
+	 * @param roObject
+	 * @param index
+	 * @param scope
+	 * @return NOT_SUPPORTED if the expression should be evaluated by Rhino
+	 */
+	private static Object evaluateJavaExpression( CompiledExpression expr,
+			IResultObject roObject, int index, Scriptable scope )
+	{
+		if ( roObject == null || !( expr instanceof ComplexExpression ) )
+			return JavaExpression.NOT_SUPPORTED;
+		JavaExpression javaExpr = ( (ComplexExpression) expr ).getJavaExpression( );
+		if ( javaExpr == null )
+			return JavaExpression.NOT_SUPPORTED;
+		return javaExpr.evaluate( roObject, index, scope );
+	}
+
 	/**
 	 * @param expr
 	 * @param odiResult
@@ -666,7 +690,10 @@ public class ExprEvaluateUtil
 		}
 		else
 		{
-			return  expr.evaluate( cx, scope );
+			Object value = evaluateJavaExpression( expr, roObject, index, scope );
+			if ( value != JavaExpression.NOT_SUPPORTED )
+				return value;
+			return expr.evaluate( cx, scope );
 		}
 
 	}
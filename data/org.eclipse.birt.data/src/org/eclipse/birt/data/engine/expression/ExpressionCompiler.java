@@ -21,6 +21,7 @@ import org.mozilla.javascript.Context;
 import org.mozilla.javascript.Node;
 import org.mozilla.javascript.Token;
 import org.mozilla.javascript.ast.AstRoot;
+import org.mozilla.javascript.ast.ScriptNode;
 
 /**
  * 
@@ -30,13 +31,27 @@ import org.mozilla.javascript.ast.AstRoot;
  * its derived class. The expression handle is used by the factory to evaluate
  * the expression after the report query is executed. <br>
  * ExpressionCompiler compiles the expression into Rhino byte code for faster
- * evaluation at runtime.
+ * evaluation at runtime. If it is enabled, a simple complex expression is also
+ * translated into Java, which is evaluated against the current row without
+ * Rhino.
  */
 public class ExpressionCompiler extends AbstractExpressionCompiler
 {
 	private AggregateRegistry registry;
+	private boolean javaExpressionEnabled;
 	private final static String AGGR_VALUE = "_aggr_value";
 	
+	/**
+	 * Set whether the complex expressions are also translated into Java. It
+	 * is disabled by default.
+	 * 
+	 * @param enabled
+	 */
+	public void setJavaExpressionEnabled( boolean enabled )
+	{
+		this.javaExpressionEnabled = enabled;
+	}
+	
 	/**
 	 * Compiles a Javascript expression to produce a subclass of
 	 * CompileExpression, which contains the compiled form of the JS expression,
@@ -120,6 +135,8 @@ public class ExpressionCompiler extends AbstractExpressionCompiler
 			Node exprNode = new Node( Token.EXPR_RESULT);
 			exprNode.addChildToFront( arg );
 			tree.addChildrenToFront( exprNode );
+			if ( expr instanceof ComplexExpression )
+				compileForJavaExpr( context, tree, (ComplexExpression) expr );
 			compileForBytecodeExpr( context, tree, expr );
 			aggregateExpression.addArgument( expr );
 			
@@ -170,6 +187,28 @@ public class ExpressionCompiler extends AbstractExpressionCompiler
 		return aggregateExpression;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.birt.data.engine.expression.AbstractExpressionCompiler#compileForJavaExpr(org.mozilla.javascript.Context, org.mozilla.javascript.ast.ScriptNode, org.eclipse.birt.data.engine.expression.ComplexExpression)
+	 */
+	protected void compileForJavaExpr( Context context, ScriptNode tree,
+			ComplexExpression expr )
+	{
+		if ( !javaExpressionEnabled )
+			return;
+		// only a single expression is translated
+		Node exprNode = tree.getFirstChild( );
+		if ( exprNode == null
+				|| exprNode != tree.getLastChild( )
+				|| exprNode.getType( ) != Token.EXPR_RESULT )
+			return;
+		Node child = exprNode.getFirstChild( );
+		if ( child == null || child.getNext( ) != null )
+			return;
+		expr.setJavaExpression( new JavaExpressionTranslator( this, context ).translate( exprNode,
+				child ) );
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see org.eclipse.birt.data.engine.expression.AbstractExpressionParser#compileDirectColRefExpr(org.mozilla.javascript.Node, org.mozilla.javascript.Node, boolean)
@@ -17,12 +17,14 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.birt.core.data.ExpressionUtil;
 import org.eclipse.birt.core.data.IColumnBinding;
 import org.eclipse.birt.core.exception.BirtException;
 import org.eclipse.birt.core.script.ScriptContext;
+import org.eclipse.birt.data.engine.api.DataEngine;
 import org.eclipse.birt.data.engine.api.IBaseExpression;
 import org.eclipse.birt.data.engine.api.ICollectionConditionalExpression;
 import org.eclipse.birt.data.engine.api.IConditionalExpression;
@@ -60,6 +62,19 @@ public class ExpressionCompilerUtil
 		return expressionCompiler.compile( expr, null, cx );
 	}
 	
+	/**
+	 * @param appContext
+	 * @return whether the JAVA_EXPRESSION_EVALUATION hint is "true"
+	 */
+	public static boolean isJavaExpressionEnabled( Map appContext )
+	{
+		if ( appContext == null )
+			return false;
+		Object enabled = appContext.get( DataEngine.JAVA_EXPRESSION_EVALUATION );
+		return enabled != null
+				&& Boolean.valueOf( enabled.toString( ).trim( ) ).booleanValue( );
+	}
+	
 
     /**
      * 
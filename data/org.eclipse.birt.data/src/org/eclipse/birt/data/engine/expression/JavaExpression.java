@@ -0,0 +1,426 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.data.engine.expression;
+
+import java.util.Date;
+
+import org.eclipse.birt.core.script.JavascriptEvalUtil;
+import org.eclipse.birt.core.script.functionservice.IScriptFunction;
+import org.eclipse.birt.core.script.functionservice.IScriptFunctionContext;
+import org.eclipse.birt.data.engine.core.DataException;
+import org.eclipse.birt.data.engine.odi.IResultObject;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.Token;
+import org.mozilla.javascript.UniqueTag;
+
+/**
+ * A <code>JavaExpression</code> is the Java form of a simple Javascript
+ * expression, which is evaluated directly against the current row without
+ * Rhino. It follows the Javascript semantics of the operators for the values
+ * of number, string, boolean and null. When an operand is of another type, or
+ * a column value can not be fetched, NOT_SUPPORTED is returned, and the
+ * caller should evaluate the Rhino byte code of the expression instead.
+ */
+abstract class JavaExpression
+{
+	/**
+	 * The result when the expression can not be evaluated in Java
+	 */
+	static final Object NOT_SUPPORTED = new Object( );
+
+	/**
+	 * Evaluate the expression.
+	 *
+	 * @param row
+	 *            the current row
+	 * @param rowIndex
+	 *            the index of the current row
+	 * @param scope
+	 *            the scope of the Rhino evaluation
+	 * @return the value, or NOT_SUPPORTED
+	 */
+	abstract Object evaluate( IResultObject row, int rowIndex, Scriptable scope );
+
+	/**
+	 * @param value
+	 * @return whether the value is a Javascript primitive value
+	 */
+	static boolean isPrimitive( Object value )
+	{
+		return value == null
+				|| value instanceof Number || value instanceof String
+				|| value instanceof Boolean;
+	}
+
+	/**
+	 * A constant.
+	 */
+	static class Constant extends JavaExpression
+	{
+		private Object value;
+
+		Constant( Object value )
+		{
+			this.value = value;
+		}
+
+		Object evaluate( IResultObject row, int rowIndex, Scriptable scope )
+		{
+			return value;
+		}
+	}
+
+	/**
+	 * A column of the row, such as row["x"].
+	 */
+	static class ColumnValue extends JavaExpression
+	{
+		private ColumnReferenceExpression columnReference;
+
+		ColumnValue( ColumnReferenceExpression columnReference )
+		{
+			this.columnReference = columnReference;
+		}
+
+		Object evaluate( IResultObject row, int rowIndex, Scriptable scope )
+		{
+			try
+			{
+				Object value = ExprEvaluateUtil.evaluateColumnReferenceExpression( row,
+						rowIndex,
+						columnReference );
+				// same as the conversion to and from the Javascript Date
+				if ( value instanceof Date
+						&& !( value instanceof java.sql.Date )
+						&& !( value instanceof java.sql.Time ) )
+					return new Date( ( (Date) value ).getTime( ) );
+				return value;
+			}
+			catch ( DataException e )
+			{
+				return NOT_SUPPORTED;
+			}
+		}
+	}
+
+	/**
+	 * A binary operator of numbers: -, *, / and %. The + is also handled here,
+	 * which concatenates the operands if any of them is a string.
+	 */
+	static class Arithmetic extends JavaExpression
+	{
+		private int operator;
+		private JavaExpression left, right;
+
+		Arithmetic( int operator, JavaExpression left, JavaExpression right )
+		{
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+
+		Object evaluate( IResultObject row, int rowIndex, Scriptable scope )
+		{
+			Object value1 = left.evaluate( row, rowIndex, scope );
+			if ( !isPrimitive( value1 ) )
+				return NOT_SUPPORTED;
+			Object value2 = right.evaluate( row, rowIndex, scope );
+			if ( !isPrimitive( value2 ) )
+				return NOT_SUPPORTED;
+
+			if ( operator == Token.ADD
+					&& ( value1 instanceof String || value2 instanceof String ) )
+				return ScriptRuntime.toString( value1 )
+						.concat( ScriptRuntime.toString( value2 ) );
+
+			double number1 = ScriptRuntime.toNumber( value1 );
+			double number2 = ScriptRuntime.toNumber( value2 );
+			switch ( operator )
+			{
+				case Token.ADD :
+					return new Double( number1 + number2 );
+				case Token.SUB :
+					return new Double( number1 - number2 );
+				case Token.MUL :
+					return new Double( number1 * number2 );
+				case Token.DIV :
+					return new Double( number1 / number2 );
+				case Token.MOD :
+					return new Double( number1 % number2 );
+			}
+			return NOT_SUPPORTED;
+		}
+	}
+
+	/**
+	 * The unary - and +.
+	 */
+	static class Unary extends JavaExpression
+	{
+		private boolean negative;
+		private JavaExpression operand;
+
+		Unary( boolean negative, JavaExpression operand )
+		{
+			this.negative = negative;
+			this.operand = operand;
+		}
+
+		Object evaluate( IResultObject row, int rowIndex, Scriptable scope )
+		{
+			Object value = operand.evaluate( row, rowIndex, scope );
+			if ( !isPrimitive( value ) )
+				return NOT_SUPPORTED;
+			double number = ScriptRuntime.toNumber( value );
+			return new Double( negative ? -number : number );
+		}
+	}
+
+	/**
+	 * The comparison operators: <, <=, > and >=.
+	 */
+	static class Compare extends JavaExpression
+	{
+		private int operator;
+		private JavaExpression left, right;
+
+		Compare( int operator, JavaExpression left, JavaExpression right )
+		{
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+
+		Object evaluate( IResultObject row, int rowIndex, Scriptable scope )
+		{
+			Object value1 = left.evaluate( row, rowIndex, scope );
+			if ( !isPrimitive( value1 ) )
+				return NOT_SUPPORTED;
+			Object value2 = right.evaluate( row, rowIndex, scope );
+			if ( !isPrimitive( value2 ) )
+				return NOT_SUPPORTED;
+
+			switch ( operator )
+			{
+				case Token.LT :
+					return Boolean.valueOf( ScriptRuntime.cmp_LT( value1,
+							value2 ) );
+				case Token.LE :
+					return Boolean.valueOf( ScriptRuntime.cmp_LE( value1,
+							value2 ) );
+				case Token.GT :
+					return Boolean.valueOf( ScriptRuntime.cmp_LT( value2,
+							value1 ) );
+				case Token.GE :
+					return Boolean.valueOf( ScriptRuntime.cmp_LE( value2,
+							value1 ) );
+			}
+			return NOT_SUPPORTED;
+		}
+	}
+
+	/**
+	 * The equality operators: ==, !=, === and !==. A value of any type can be
+	 * compared with null.
+	 */
+	static class Equals extends JavaExpression
+	{
+		private int operator;
+		private JavaExpression left, right;
+
+		Equals( int operator, JavaExpression left, JavaExpression right )
+		{
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+
+		Object evaluate( IResultObject row, int rowIndex, Scriptable scope )
+		{
+			Object value1 = left.evaluate( row, rowIndex, scope );
+			if ( value1 == NOT_SUPPORTED )
+				return NOT_SUPPORTED;
+			Object value2 = right.evaluate( row, rowIndex, scope );
+			if ( value2 == NOT_SUPPORTED )
+				return NOT_SUPPORTED;
+
+			boolean result;
+			if ( value1 == null || value2 == null )
+			{
+				result = value1 == value2;
+			}
+			else if ( isPrimitive( value1 ) && isPrimitive( value2 ) )
+			{
+				result = operator == Token.EQ || operator == Token.NE
+						? ScriptRuntime.eq( value1, value2 )
+						: ScriptRuntime.shallowEq( value1, value2 );
+			}
+			else
+				return NOT_SUPPORTED;
+
+			if ( operator == Token.NE || operator == Token.SHNE )
+				result = !result;
+			return Boolean.valueOf( result );
+		}
+	}
+
+	/**
+	 * The logical operators && and ||, which return the value of an operand.
+	 */
+	static class Logical extends JavaExpression
+	{
+		private boolean and;
+		private JavaExpression left, right;
+
+		Logical( boolean and, JavaExpression left, JavaExpression right )
+		{
+			this.and = and;
+			this.left = left;
+			this.right = right;
+		}
+
+		Object evaluate( IResultObject row, int rowIndex, Scriptable scope )
+		{
+			Object value = left.evaluate( row, rowIndex, scope );
+			if ( value == NOT_SUPPORTED )
+				return NOT_SUPPORTED;
+			if ( ScriptRuntime.toBoolean( value ) != and )
+				return value;
+			return right.evaluate( row, rowIndex, scope );
+		}
+	}
+
+	/**
+	 * The logical operator !.
+	 */
+	static class Not extends JavaExpression
+	{
+		private JavaExpression operand;
+
+		Not( JavaExpression operand )
+		{
+			this.operand = operand;
+		}
+
+		Object evaluate( IResultObject row, int rowIndex, Scriptable scope )
+		{
+			Object value = operand.evaluate( row, rowIndex, scope );
+			if ( value == NOT_SUPPORTED )
+				return NOT_SUPPORTED;
+			return Boolean.valueOf( !ScriptRuntime.toBoolean( value ) );
+		}
+	}
+
+	/**
+	 * The conditional operator ?:.
+	 */
+	static class Conditional extends JavaExpression
+	{
+		private JavaExpression condition, ifTrue, ifFalse;
+
+		Conditional( JavaExpression condition, JavaExpression ifTrue,
+				JavaExpression ifFalse )
+		{
+			this.condition = condition;
+			this.ifTrue = ifTrue;
+			this.ifFalse = ifFalse;
+		}
+
+		Object evaluate( IResultObject row, int rowIndex, Scriptable scope )
+		{
+			Object value = condition.evaluate( row, rowIndex, scope );
+			if ( value == NOT_SUPPORTED )
+				return NOT_SUPPORTED;
+			return ScriptRuntime.toBoolean( value ) ? ifTrue.evaluate( row,
+					rowIndex,
+					scope ) : ifFalse.evaluate( row, rowIndex, scope );
+		}
+	}
+
+	/**
+	 * A call of a script function, such as BirtMath.round(row["x"], 2). The
+	 * function is called with the same context as it is called by Rhino.
+	 */
+	static class FunctionCall extends JavaExpression
+	{
+		private IScriptFunction function;
+		private JavaExpression[] arguments;
+
+		FunctionCall( IScriptFunction function, JavaExpression[] arguments )
+		{
+			this.function = function;
+			this.arguments = arguments;
+		}
+
+		Object evaluate( IResultObject row, int rowIndex, Scriptable scope )
+		{
+			Object[] values = new Object[arguments.length];
+			for ( int i = 0; i < arguments.length; i++ )
+			{
+				values[i] = arguments[i].evaluate( row, rowIndex, scope );
+				if ( values[i] == NOT_SUPPORTED )
+					return NOT_SUPPORTED;
+			}
+			try
+			{
+				return function.execute( values, getFunctionContext( scope ) );
+			}
+			catch ( Exception e )
+			{
+				// let Rhino report the error
+				return NOT_SUPPORTED;
+			}
+		}
+
+		private IScriptFunctionContext getFunctionContext( final Scriptable scope )
+		{
+			Scriptable current = scope;
+			Object obj = UniqueTag.NOT_FOUND;
+			while ( current != null )
+			{
+				obj = current.get( IScriptFunctionContext.FUNCTION_BEAN_NAME,
+						current );
+				if ( obj != UniqueTag.NOT_FOUND )
+					break;
+				current = current.getParentScope( );
+			}
+			if ( obj == UniqueTag.NOT_FOUND )
+				return null;
+			final IScriptFunctionContext context = (IScriptFunctionContext) JavascriptEvalUtil.convertJavascriptValue( obj );
+			if ( context == null )
+				return null;
+			return new IScriptFunctionContext( ) {
+
+				public Object findProperty( String name )
+				{
+					Object value = context.findProperty( name );
+					if ( value == null )
+					{
+						// If not found, try to get it via javascript
+						// environment
+						Scriptable current = scope;
+						while ( current != null )
+						{
+							value = current.get( name, scope );
+							if ( value != UniqueTag.NOT_FOUND )
+								return value;
+							current = current.getParentScope( );
+						}
+						return null;
+					}
+					return value;
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,282 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.data.engine.expression;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.birt.core.exception.BirtException;
+import org.eclipse.birt.core.script.functionservice.IScriptFunction;
+import org.eclipse.birt.core.script.functionservice.impl.FunctionProvider;
+import org.eclipse.birt.data.engine.core.DataException;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Node;
+import org.mozilla.javascript.Token;
+
+/**
+ * Translates the script tree of a Javascript expression to a
+ * <code>JavaExpression</code>. The constants, the column references of the
+ * row, the arithmetic, comparison, equality, logical and conditional
+ * operators, and the calls of the BirtMath and BirtDateTime functions are
+ * supported. Any other construct, such as a variable, a method call or an
+ * assignment, can not be translated, and the expression is evaluated by Rhino.
+ */
+class JavaExpressionTranslator
+{
+	// the categories of the script functions which can be called directly
+	private static final String[] FUNCTION_CATEGORIES = {
+			"BirtMath", "BirtDateTime" //$NON-NLS-1$ //$NON-NLS-2$
+	};
+
+	private static Logger logger = Logger.getLogger( JavaExpressionTranslator.class.getName( ) );
+
+	private AbstractExpressionCompiler compiler;
+	private Context context;
+
+	/**
+	 * @param compiler
+	 *            the compiler which recognizes the column references
+	 * @param context
+	 */
+	JavaExpressionTranslator( AbstractExpressionCompiler compiler,
+			Context context )
+	{
+		this.compiler = compiler;
+		this.context = context;
+	}
+
+	/**
+	 * Translate an expression node.
+	 *
+	 * @param parent
+	 * @param node
+	 * @return null if the expression can not be translated
+	 */
+	JavaExpression translate( Node parent, Node node )
+	{
+		try
+		{
+			return doTranslate( parent, node );
+		}
+		catch ( DataException e )
+		{
+			logger.log( Level.FINE, e.getMessage( ), e );
+			return null;
+		}
+	}
+
+	/**
+	 * @param parent
+	 * @param node
+	 * @return
+	 * @throws DataException
+	 */
+	private JavaExpression doTranslate( Node parent, Node node )
+			throws DataException
+	{
+		switch ( node.getType( ) )
+		{
+			case Token.NUMBER :
+				return new JavaExpression.Constant( new Double( node.getDouble( ) ) );
+			case Token.STRING :
+				return new JavaExpression.Constant( node.getString( ) );
+			case Token.NULL :
+				return new JavaExpression.Constant( null );
+			case Token.TRUE :
+				return new JavaExpression.Constant( Boolean.TRUE );
+			case Token.FALSE :
+				return new JavaExpression.Constant( Boolean.FALSE );
+
+			case Token.GETPROP :
+			case Token.GETELEM :
+			{
+				CompiledExpression colRef = compiler.compileDirectColRefExpr( parent,
+						node,
+						null,
+						false,
+						context );
+				if ( colRef instanceof ColumnReferenceExpression )
+					return new JavaExpression.ColumnValue( (ColumnReferenceExpression) colRef );
+				return null;
+			}
+
+			case Token.ADD :
+			case Token.SUB :
+			case Token.MUL :
+			case Token.DIV :
+			case Token.MOD :
+			{
+				JavaExpression[] operands = translateOperands( node, 2 );
+				return operands == null ? null
+						: new JavaExpression.Arithmetic( node.getType( ),
+								operands[0],
+								operands[1] );
+			}
+
+			case Token.NEG :
+			case Token.POS :
+			{
+				JavaExpression[] operands = translateOperands( node, 1 );
+				return operands == null ? null
+						: new JavaExpression.Unary( node.getType( ) == Token.NEG,
+								operands[0] );
+			}
+
+			case Token.LT :
+			case Token.LE :
+			case Token.GT :
+			case Token.GE :
+			{
+				JavaExpression[] operands = translateOperands( node, 2 );
+				return operands == null ? null
+						: new JavaExpression.Compare( node.getType( ),
+								operands[0],
+								operands[1] );
+			}
+
+			case Token.EQ :
+			case Token.NE :
+			case Token.SHEQ :
+			case Token.SHNE :
+			{
+				JavaExpression[] operands = translateOperands( node, 2 );
+				return operands == null ? null
+						: new JavaExpression.Equals( node.getType( ),
+								operands[0],
+								operands[1] );
+			}
+
+			case Token.AND :
+			case Token.OR :
+			{
+				JavaExpression[] operands = translateOperands( node, 2 );
+				return operands == null ? null
+						: new JavaExpression.Logical( node.getType( ) == Token.AND,
+								operands[0],
+								operands[1] );
+			}
+
+			case Token.NOT :
+			{
+				JavaExpression[] operands = translateOperands( node, 1 );
+				return operands == null ? null
+						: new JavaExpression.Not( operands[0] );
+			}
+
+			case Token.HOOK :
+			{
+				JavaExpression[] operands = translateOperands( node, 3 );
+				return operands == null ? null
+						: new JavaExpression.Conditional( operands[0],
+								operands[1],
+								operands[2] );
+			}
+
+			case Token.CALL :
+				return translateFunctionCall( node );
+		}
+		return null;
+	}
+
+	/**
+	 * Translate the children of an operator.
+	 *
+	 * @param node
+	 * @param count
+	 *            the expected count of the children
+	 * @return null if any child can not be translated
+	 * @throws DataException
+	 */
+	private JavaExpression[] translateOperands( Node node, int count )
+			throws DataException
+	{
+		JavaExpression[] operands = new JavaExpression[count];
+		Node child = node.getFirstChild( );
+		for ( int i = 0; i < count; i++ )
+		{
+			if ( child == null )
+				return null;
+			operands[i] = doTranslate( node, child );
+			if ( operands[i] == null )
+				return null;
+			child = child.getNext( );
+		}
+		return child == null ? operands : null;
+	}
+
+	/**
+	 * Translate a call in the form of Category.function( args ).
+	 *
+	 * @param callNode
+	 * @return
+	 * @throws DataException
+	 */
+	private JavaExpression translateFunctionCall( Node callNode )
+			throws DataException
+	{
+		Node target = callNode.getFirstChild( );
+		if ( target.getType( ) != Token.GETPROP )
+			return null;
+		Node category = target.getFirstChild( );
+		Node name = category.getNext( );
+		if ( category.getType( ) != Token.NAME
+				|| name.getType( ) != Token.STRING )
+			return null;
+		IScriptFunction function = getFunction( category.getString( ),
+				name.getString( ) );
+		if ( function == null )
+			return null;
+
+		List<JavaExpression> arguments = new ArrayList<JavaExpression>( );
+		for ( Node arg = target.getNext( ); arg != null; arg = arg.getNext( ) )
+		{
+			JavaExpression argument = doTranslate( callNode, arg );
+			if ( argument == null )
+				return null;
+			arguments.add( argument );
+		}
+		return new JavaExpression.FunctionCall( function,
+				arguments.toArray( new JavaExpression[arguments.size( )] ) );
+	}
+
+	/**
+	 * @param categoryName
+	 * @param functionName
+	 * @return null if it is not a function which can be called directly
+	 */
+	private static IScriptFunction getFunction( String categoryName,
+			String functionName )
+	{
+		for ( int i = 0; i < FUNCTION_CATEGORIES.length; i++ )
+		{
+			if ( !FUNCTION_CATEGORIES[i].equals( categoryName ) )
+				continue;
+			try
+			{
+				IScriptFunction[] functions = FunctionProvider.getFunctions( categoryName );
+				for ( int j = 0; j < functions.length; j++ )
+				{
+					if ( functionName.equals( functions[j].getName( ) )
+							&& !functions[j].isConstructor( ) )
+						return functions[j];
+				}
+			}
+			catch ( BirtException e )
+			{
+				logger.log( Level.FINE, e.getMessage( ), e );
+			}
+		}
+		return null;
+	}
+}
@@ -18,6 +18,7 @@ import org.eclipse.birt.data.engine.api.DataEngineContext;
 import org.eclipse.birt.data.engine.api.IBaseDataSetDesign;
 import org.eclipse.birt.data.engine.core.DataException;
 import org.eclipse.birt.data.engine.core.security.FileSecurity;
+import org.eclipse.birt.data.engine.core.security.PropertySecurity;
 import org.eclipse.birt.data.engine.executor.DataSetCacheConfig;
 import org.eclipse.birt.data.engine.executor.DataSetCacheConfig.DataSetCacheMode;
 
@@ -194,6 +195,49 @@ public class DataSetCacheUtil
 	{
 		return Integer.valueOf(option.toString()).intValue();
 	}
+	
+	/**
+	 * The size limit is read from the system property
+	 * DataEngine.DATA_SET_CACHE_SIZE_LIMIT, since the caches are shared by all
+	 * sessions in the JVM.
+	 * 
+	 * @return the size limit in bytes of the data set caches shared in the
+	 *         JVM, 0 if it is unbounded
+	 */
+	public static long getJVMDataSetCacheSizeLimit( )
+	{
+		String option = PropertySecurity.getSystemProperty( DataEngine.DATA_SET_CACHE_SIZE_LIMIT );
+		if ( option == null )
+			return 0;
+		try
+		{
+			return Math.max( 0, Long.parseLong( option.trim( ) ) ) * 1024 * 1024;
+		}
+		catch ( NumberFormatException e )
+		{
+			return 0;
+		}
+	}
+	
+	/**
+	 * @param appContext
+	 * @return the time to live in milliseconds of the data set cache, 0 if it
+	 *         never expires
+	 */
+	public static long getDataSetCacheTimeToLive( Map appContext )
+	{
+		if ( appContext == null )
+			return 0;
+		Object option = appContext.get( DataEngine.DATA_SET_CACHE_TIME_TO_LIVE );
+		if ( option == null )
+			return 0;
+		try
+		{
+			return Math.max( 0, Long.parseLong( option.toString( ).trim( ) ) ) * 1000;
+		}
+		catch ( NumberFormatException e )
+		{
+			return 0;
+		}
+	}
 }
-
-
@@ -418,6 +418,7 @@ class PreparedIVDataSourceQuery extends PreparedDataSourceQuery
 			
 			manager.dropStream1( DataEngineContext.DATASET_DATA_STREAM );
 			manager.dropStream1( DataEngineContext.DATASET_DATA_LEN_STREAM );
+			manager.dropStream1( DataEngineContext.DATASET_STRING_DICTIONARY_STREAM );
 			cleanUpOldRD();
 			OutputStream resultClassStream = manager.getOutStream( DataEngineContext.DATASET_META_STREAM,
 					StreamManager.ROOT_STREAM,
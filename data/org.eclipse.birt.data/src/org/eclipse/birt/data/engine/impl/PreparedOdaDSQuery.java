@@ -63,6 +63,10 @@ public class PreparedOdaDSQuery extends PreparedDataSourceQuery
 	};
 	
 	private ValidateStatus validateStatus;
+
+	// the operations pushed down into the SQL query of a JDBC data set
+	private Map<String, Object> sqlPushDownProperties;
+
 	/**
 	 * @param dataEngine
 	 * @param queryDefn
@@ -85,6 +89,17 @@ public class PreparedOdaDSQuery extends PreparedDataSourceQuery
 		validateStatus = ValidateStatus.unknown; 
 	}
 	
+	/**
+	 * Set the query specification properties of the operations pushed down
+	 * into the SQL query.
+	 * 
+	 * @param properties
+	 */
+	void setSQLPushDownProperties( Map<String, Object> properties )
+	{
+		this.sqlPushDownProperties = properties;
+	}
+
 	private void populateComputedColumnDataType( IBaseDataSetDesign dataSetDesign )
 	{
 		List computedColumns = dataSetDesign.getComputedColumns( );
@@ -491,6 +506,15 @@ public class PreparedOdaDSQuery extends PreparedDataSourceQuery
 				}
 			}
 			
+			if ( querySpec == null && sqlPushDownProperties != null )
+			{
+				// the operations pushed down into the SQL query
+				querySpec = SQLQueryPushDown.createQuerySpecification( extDataSet.getDataSource( )
+						.getExtensionID( ),
+						dataSetType,
+						sqlPushDownProperties );
+			}
+
 			if( FilterPrepareUtil.containsExternalFilter( dataSetDesign.getFilters( ), dataSetType, extDataSet.getDataSource( ).getExtensionID( ) ) ||
 					FilterPrepareUtil.containsExternalFilter( queryDefn.getFilters( ), dataSetType, extDataSet.getDataSource( ).getExtensionID( ) ) )
 			{
@@ -515,7 +539,16 @@ public class PreparedOdaDSQuery extends PreparedDataSourceQuery
 		 */
 		protected boolean fromCache( ) throws DataException
 		{
-			if( queryDefn.getQueryExecutionHints( ).enablePushDown( ) )
+			if ( SQLQueryPushDown.isPushedDown( querySpec ) )
+			{
+				// the cached rows are not filtered or aggregated by the database
+				dataEngine.getSession( )
+						.getDataSetCacheManager( )
+						.clearCache( dataEngine.getDataSourceDesign( this.dataSet.getDesign( )
+								.getDataSourceName( ) ),
+								this.dataSet.getDesign( ) );
+			}
+			else if( queryDefn.getQueryExecutionHints( ).enablePushDown( ) )
 			{
 				// When there is pushdown occur, clear data set cache, due to cached data may have been obsolete.
 				//TODO enhance me. For some cases, data set cache should be considered to be reused, need to compare query spec is same or not.
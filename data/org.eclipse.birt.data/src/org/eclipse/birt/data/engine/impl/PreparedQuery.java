@@ -47,6 +47,7 @@ import org.eclipse.birt.data.engine.api.querydefn.SubqueryDefinition;
 import org.eclipse.birt.data.engine.core.DataException;
 import org.eclipse.birt.data.engine.expression.CompiledExpression;
 import org.eclipse.birt.data.engine.expression.ExpressionCompiler;
+import org.eclipse.birt.data.engine.expression.ExpressionCompilerUtil;
 import org.eclipse.birt.data.engine.i18n.ResourceConstants;
 import org.eclipse.birt.data.engine.impl.aggregation.AggregateRegistry;
 import org.eclipse.birt.data.engine.impl.aggregation.AggregateTable;
@@ -100,6 +101,7 @@ public final class PreparedQuery
 
 		this.expressionCompiler = new ExpressionCompiler( );
 		this.expressionCompiler.setDataSetMode( false );
+		this.expressionCompiler.setJavaExpressionEnabled( ExpressionCompilerUtil.isJavaExpressionEnabled( appContext ) );
 		this.dataEngineContext = deContext;
 		this.session = session;
 		if ( queryDefn instanceof SubqueryDefinition )
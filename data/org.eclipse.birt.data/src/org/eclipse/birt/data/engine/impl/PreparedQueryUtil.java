@@ -228,8 +228,19 @@ public class PreparedQueryUtil
                 }
                 else
                 {
-                    preparedQuery = new PreparedOdaDSQuery( dataEngine,
-                            queryDefn, dset, appContext, contextVisitor );
+                    SQLQueryPushDown pushDown = SQLQueryPushDown.newInstance( dataEngine,
+                            queryDefn, dset, appContext );
+                    if ( pushDown != null )
+                    {
+                        preparedQuery = new PreparedSQLPushDownQuery( dataEngine,
+                                queryDefn, dset, appContext, contextVisitor,
+                                pushDown );
+                    }
+                    else
+                    {
+                        preparedQuery = new PreparedOdaDSQuery( dataEngine,
+                                queryDefn, dset, appContext, contextVisitor );
+                    }
                 }
             }
         }
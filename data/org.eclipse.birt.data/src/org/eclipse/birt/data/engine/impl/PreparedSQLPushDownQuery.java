@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2007 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.data.engine.impl;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.birt.core.exception.BirtException;
+import org.eclipse.birt.data.engine.api.IBaseDataSetDesign;
+import org.eclipse.birt.data.engine.api.IBaseQueryResults;
+import org.eclipse.birt.data.engine.api.IPreparedQuery;
+import org.eclipse.birt.data.engine.api.IQueryDefinition;
+import org.eclipse.birt.data.engine.api.IQueryResults;
+import org.eclipse.birt.data.engine.core.DataException;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * The prepared query of a JDBC data set whose operations are pushed down into
+ * the SQL query by SQLQueryPushDown. The rewritten SQL query may fail in the
+ * database although the original one does not, for example when the original
+ * one has a common table expression or duplicate column names. The query is
+ * then rolled back: the original SQL query is run, and all the filters, sorts
+ * and aggregations are evaluated by the data engine.
+ */
+class PreparedSQLPushDownQuery implements IPreparedQuery
+{
+	private static Logger logger = Logger.getLogger( PreparedSQLPushDownQuery.class.getName( ) );
+
+	private DataEngineImpl dataEngine;
+	private IQueryDefinition queryDefn;
+	private IBaseDataSetDesign dataSetDesign;
+	private Map appContext;
+	private IQueryContextVisitor contextVisitor;
+
+	// the query with the pushed down operations
+	private PreparedOdaDSQuery pushedDownQuery;
+
+	// the original query, which is prepared when it is needed
+	private PreparedOdaDSQuery originalQuery;
+
+	// whether the pushed down query is rolled back
+	private boolean rolledBack;
+
+	/**
+	 * @param dataEngine
+	 * @param queryDefn
+	 *            the original query definition
+	 * @param dataSetDesign
+	 *            the original data set design
+	 * @param appContext
+	 * @param contextVisitor
+	 * @param pushDown
+	 * @throws DataException
+	 */
+	PreparedSQLPushDownQuery( DataEngineImpl dataEngine,
+			IQueryDefinition queryDefn, IBaseDataSetDesign dataSetDesign,
+			Map appContext, IQueryContextVisitor contextVisitor,
+			SQLQueryPushDown pushDown ) throws DataException
+	{
+		this.dataEngine = dataEngine;
+		this.queryDefn = queryDefn;
+		this.dataSetDesign = dataSetDesign;
+		this.appContext = appContext;
+		this.contextVisitor = contextVisitor;
+		this.pushedDownQuery = new PreparedOdaDSQuery( dataEngine,
+				pushDown.getQueryDefinition( ),
+				pushDown.getDataSetDesign( ),
+				appContext,
+				contextVisitor );
+		this.pushedDownQuery.setSQLPushDownProperties( pushDown.getProperties( ) );
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.api.IPreparedQuery#getReportQueryDefn()
+	 */
+	public IQueryDefinition getReportQueryDefn( )
+	{
+		return queryDefn;
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.api.IPreparedQuery#getParameterMetaData()
+	 */
+	public Collection getParameterMetaData( ) throws BirtException
+	{
+		// the parameters are the same in the rewritten SQL query
+		return getOriginalQuery( ).getParameterMetaData( );
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.api.IPreparedQuery#execute(org.mozilla.javascript.Scriptable)
+	 */
+	public IQueryResults execute( Scriptable queryScope ) throws BirtException
+	{
+		return execute( (IBaseQueryResults) null, queryScope );
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.api.IPreparedQuery#execute(org.eclipse.birt.data.engine.api.IQueryResults, org.mozilla.javascript.Scriptable)
+	 */
+	public IQueryResults execute( IQueryResults outerResults,
+			Scriptable queryScope ) throws BirtException
+	{
+		return execute( (IBaseQueryResults) outerResults, queryScope );
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.api.IPreparedQuery#execute(org.eclipse.birt.data.engine.api.IBaseQueryResults, org.mozilla.javascript.Scriptable)
+	 */
+	public IQueryResults execute( IBaseQueryResults outerResults,
+			Scriptable scope ) throws DataException
+	{
+		if ( !rolledBack )
+		{
+			IQueryResults results = null;
+			try
+			{
+				// the SQL query is prepared by the execute, and executed by
+				// getting the result iterator
+				results = pushedDownQuery.execute( outerResults, scope );
+				results.getResultIterator( );
+				return results;
+			}
+			catch ( BirtException e )
+			{
+				logger.log( Level.WARNING,
+						"The SQL query with the pushed down operations failed, the original query is run instead.", //$NON-NLS-1$
+						e );
+				rolledBack = true;
+				closeResults( results );
+			}
+		}
+		return getOriginalQuery( ).execute( outerResults, scope );
+	}
+
+	/**
+	 * @return the prepared query of the original query definition and data set
+	 *         design
+	 * @throws DataException
+	 */
+	private PreparedOdaDSQuery getOriginalQuery( ) throws DataException
+	{
+		if ( originalQuery == null )
+		{
+			originalQuery = new PreparedOdaDSQuery( dataEngine,
+					queryDefn,
+					dataSetDesign,
+					appContext,
+					contextVisitor );
+		}
+		return originalQuery;
+	}
+
+	/**
+	 * @param results
+	 */
+	private static void closeResults( IQueryResults results )
+	{
+		if ( results == null )
+			return;
+		try
+		{
+			results.close( );
+		}
+		catch ( BirtException e )
+		{
+			logger.log( Level.FINE, e.getLocalizedMessage( ), e );
+		}
+	}
+}
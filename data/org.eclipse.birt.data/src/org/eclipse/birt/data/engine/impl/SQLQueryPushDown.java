@@ -0,0 +1,968 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2007 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.data.engine.impl;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.eclipse.birt.core.data.DataType;
+import org.eclipse.birt.core.data.ExpressionUtil;
+import org.eclipse.birt.core.exception.BirtException;
+import org.eclipse.birt.data.engine.api.DataEngine;
+import org.eclipse.birt.data.engine.api.IBaseDataSetDesign;
+import org.eclipse.birt.data.engine.api.IBaseDataSourceDesign;
+import org.eclipse.birt.data.engine.api.IBaseExpression;
+import org.eclipse.birt.data.engine.api.IBaseLinkDefinition;
+import org.eclipse.birt.data.engine.api.IBinding;
+import org.eclipse.birt.data.engine.api.IColumnDefinition;
+import org.eclipse.birt.data.engine.api.IComputedColumn;
+import org.eclipse.birt.data.engine.api.IConditionalExpression;
+import org.eclipse.birt.data.engine.api.IFilterDefinition;
+import org.eclipse.birt.data.engine.api.IFilterDefinition.FilterTarget;
+import org.eclipse.birt.data.engine.api.IGroupDefinition;
+import org.eclipse.birt.data.engine.api.IOdaDataSetDesign;
+import org.eclipse.birt.data.engine.api.IOdaDataSourceDesign;
+import org.eclipse.birt.data.engine.api.IQueryDefinition;
+import org.eclipse.birt.data.engine.api.IScriptExpression;
+import org.eclipse.birt.data.engine.api.ISortDefinition;
+import org.eclipse.birt.data.engine.api.querydefn.Binding;
+import org.eclipse.birt.data.engine.api.querydefn.ColumnDefinition;
+import org.eclipse.birt.data.engine.api.querydefn.ExpressionCollection;
+import org.eclipse.birt.data.engine.api.querydefn.QueryDefnDelegator;
+import org.eclipse.birt.data.engine.api.querydefn.ScriptExpression;
+import org.eclipse.birt.data.engine.core.DataException;
+import org.eclipse.birt.data.engine.expression.ExpressionCompilerUtil;
+import org.eclipse.birt.data.engine.odaconsumer.QuerySpecHelper;
+import org.eclipse.datatools.connectivity.oda.spec.QuerySpecification;
+
+/**
+ * Pushes the filters, sorts, aggregations and row limit of a query on a JDBC
+ * data set down into the SQL query of the data set, so that they are evaluated
+ * by the database instead of the data engine. Only the operations which have
+ * the same result in the database are pushed down:
+ * <ul>
+ * <li>a filter which compares a data set column with literal values, by a
+ * comparison, range, null test or IN list. Strings are only compared for
+ * equality, when the collation of the database is known to be binary.</li>
+ * <li>sort keys of data set columns which are not strings, when the query has
+ * no group.</li>
+ * <li>the groups of a summary query whose keys are data set columns, which are
+ * not strings unless the collation is binary, and the
+ * SUM, COUNT, MIN, MAX and AVE of data set columns on the groups. The rows are
+ * aggregated by the innermost group in the database, and the aggregations are
+ * calculated by the data engine from the aggregated rows.</li>
+ * <li>the max rows of the query, when all its filters and sorts are pushed
+ * down.</li>
+ * </ul>
+ * The operations which can not be translated are left to the data engine.
+ *
+ * The pushed down operations are passed to the JDBC driver by the properties of
+ * the query specification. The data set design and the query definition are
+ * replaced by delegators of them without the pushed down filters and sorts,
+ * and with the aggregations rewritten on the aggregated rows. The original ones
+ * are not changed, so that the query can be run without push down if the
+ * rewritten SQL query fails.
+ */
+class SQLQueryPushDown
+{
+	// the ids of JDBC data source and data set, whose query text is SQL
+	private static final String JDBC_DATA_SOURCE_ID = "org.eclipse.birt.report.data.oda.jdbc"; //$NON-NLS-1$
+	private static final String JDBC_DATA_SET_ID = "org.eclipse.birt.report.data.oda.jdbc.JdbcSelectDataSet"; //$NON-NLS-1$
+
+	// the query specification properties read by the JDBC driver, see
+	// org.eclipse.birt.report.data.oda.jdbc.utils.SQLPushDownTransform
+	private static final String PROPERTY_PREFIX = "org.eclipse.birt.report.data.oda.jdbc.pushDown."; //$NON-NLS-1$
+	private static final String FILTERS = PROPERTY_PREFIX + "filters"; //$NON-NLS-1$
+	private static final String GROUP_KEYS = PROPERTY_PREFIX + "groupKeys"; //$NON-NLS-1$
+	private static final String AGGREGATIONS = PROPERTY_PREFIX + "aggregations"; //$NON-NLS-1$
+	private static final String SORT_KEYS = PROPERTY_PREFIX + "sortKeys"; //$NON-NLS-1$
+	private static final String MAX_ROWS = PROPERTY_PREFIX + "maxRows"; //$NON-NLS-1$
+
+	private static final String AGGREGATION_ALIAS_PREFIX = "BIRT_AGGR_"; //$NON-NLS-1$
+
+	private static final Pattern NUMBER_PATTERN = Pattern.compile( "[-+]?\\d+(\\.\\d+)?([eE][-+]?\\d+)?" ); //$NON-NLS-1$
+
+	private IQueryDefinition query;
+	private IOdaDataSetDesign dataSetDesign;
+
+	// whether the strings are compared by their binary values in the database
+	private boolean binaryCollation;
+
+	// the data set columns which can be referred to in SQL, by their names
+	private Map<String, IColumnDefinition> columns;
+
+	private List<IFilterDefinition> pushedDataSetFilters;
+	private List<IFilterDefinition> pushedQueryFilters;
+	private List<Object[]> filters;
+	private List<Object[]> sortKeys;
+	private List<String> groupKeys;
+	private List<Object[]> aggregations;
+	private Map<String, IBinding> aggregatedBindings;
+
+	private Map<String, Object> properties;
+
+	/**
+	 * Pushes down the operations of a query.
+	 *
+	 * @param dataEngine
+	 * @param query
+	 * @param dataSetDesign
+	 *            the copy of data set design owned by the prepared query,
+	 *            which is not changed
+	 * @param appContext
+	 * @return null if nothing is pushed down
+	 * @throws DataException
+	 */
+	static SQLQueryPushDown newInstance( DataEngineImpl dataEngine,
+			IQueryDefinition query, IBaseDataSetDesign dataSetDesign,
+			Map appContext ) throws DataException
+	{
+		if ( !isApplicable( dataEngine, query, dataSetDesign, appContext ) )
+			return null;
+		SQLQueryPushDown pushDown = new SQLQueryPushDown( query,
+				(IOdaDataSetDesign) dataSetDesign,
+				isEnabled( appContext, DataEngine.SQL_QUERY_PUSH_DOWN_BINARY_COLLATION ) );
+		if ( !pushDown.translate( ) )
+			return null;
+		pushDown.apply( );
+		return pushDown;
+	}
+
+	/**
+	 * @param query
+	 * @param dataSetDesign
+	 * @param binaryCollation
+	 */
+	private SQLQueryPushDown( IQueryDefinition query,
+			IOdaDataSetDesign dataSetDesign, boolean binaryCollation )
+	{
+		this.query = query;
+		this.dataSetDesign = dataSetDesign;
+		this.binaryCollation = binaryCollation;
+		this.columns = new HashMap<String, IColumnDefinition>( );
+
+		Set<String> computedColumns = new HashSet<String>( );
+		if ( dataSetDesign.getComputedColumns( ) != null )
+		{
+			for ( Object cc : dataSetDesign.getComputedColumns( ) )
+			{
+				computedColumns.add( ( (IComputedColumn) cc ).getName( ) );
+			}
+		}
+		for ( Object hint : dataSetDesign.getResultSetHints( ) )
+		{
+			IColumnDefinition column = (IColumnDefinition) hint;
+			if ( column.getColumnName( ) != null
+					&& !computedColumns.contains( column.getColumnName( ) ) )
+				this.columns.put( column.getColumnName( ), column );
+		}
+	}
+
+	/**
+	 * @return the query definition to be prepared
+	 */
+	IQueryDefinition getQueryDefinition( )
+	{
+		return this.query;
+	}
+
+	/**
+	 * @return the data set design to be prepared
+	 */
+	IOdaDataSetDesign getDataSetDesign( )
+	{
+		return this.dataSetDesign;
+	}
+
+	/**
+	 * @return the query specification properties of the pushed down
+	 *         operations
+	 */
+	Map<String, Object> getProperties( )
+	{
+		return this.properties;
+	}
+
+	/**
+	 * Create the query specification to pass the pushed down operations to the
+	 * ODA driver.
+	 *
+	 * @param dataSourceId
+	 * @param dataSetId
+	 * @param properties
+	 * @return
+	 */
+	static QuerySpecification createQuerySpecification( String dataSourceId,
+			String dataSetId, Map<String, Object> properties )
+	{
+		QuerySpecification querySpec = new QuerySpecHelper( dataSourceId,
+				dataSetId ).getFactoryHelper( ).createQuerySpecification( );
+		for ( Map.Entry<String, Object> entry : properties.entrySet( ) )
+		{
+			querySpec.setProperty( entry.getKey( ), entry.getValue( ) );
+		}
+		return querySpec;
+	}
+
+	/**
+	 * @param querySpec
+	 * @return whether operations are pushed down by the query specification
+	 */
+	static boolean isPushedDown( QuerySpecification querySpec )
+	{
+		if ( querySpec == null )
+			return false;
+		for ( String name : querySpec.getProperties( ).keySet( ) )
+		{
+			if ( name.startsWith( PROPERTY_PREFIX ) )
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * The operations can not be pushed down if the rows fetched from the data
+	 * source are used besides the query, or changed before the operations are
+	 * evaluated.
+	 *
+	 * @param dataEngine
+	 * @param query
+	 * @param dataSetDesign
+	 * @param appContext
+	 * @return
+	 * @throws DataException
+	 */
+	private static boolean isApplicable( DataEngineImpl dataEngine,
+			IQueryDefinition query, IBaseDataSetDesign dataSetDesign,
+			Map appContext ) throws DataException
+	{
+		if ( !isEnabled( appContext, DataEngine.SQL_QUERY_PUSH_DOWN ) )
+			return false;
+		if ( query.getQueryExecutionHints( ) == null
+				|| !query.getQueryExecutionHints( ).enablePushDown( )
+				|| query.getQueryResultsID( ) != null
+				|| query.getSourceQuery( ) != null )
+			return false;
+		if ( !( dataSetDesign instanceof IOdaDataSetDesign )
+				|| !JDBC_DATA_SET_ID.equals( ( (IOdaDataSetDesign) dataSetDesign ).getExtensionID( ) ) )
+			return false;
+		IBaseDataSourceDesign dataSourceDesign = dataEngine.getDataSourceDesign( dataSetDesign.getDataSourceName( ) );
+		if ( !( dataSourceDesign instanceof IOdaDataSourceDesign )
+				|| !JDBC_DATA_SOURCE_ID.equals( ( (IOdaDataSourceDesign) dataSourceDesign ).getExtensionID( ) ) )
+			return false;
+		if ( dataSetDesign.getRowFetchLimit( ) > 0
+				|| !isEmpty( dataSetDesign.getOnFetchScript( ) )
+				|| dataSetDesign.getResultSetHints( ) == null
+				|| dataSetDesign.getResultSetHints( ).isEmpty( ) )
+			return false;
+		if ( dataSetDesign.getNullsOrdering( ) != null
+				&& !IBaseDataSetDesign.NULLS_ORDERING_NULLS_LOWEST.equals( dataSetDesign.getNullsOrdering( ) ) )
+			return false;
+		// the cache would be reused by other queries
+		return !dataEngine.getSession( )
+				.getDataSetCacheManager( )
+				.needsToCache( dataSetDesign, appContext );
+	}
+
+	/**
+	 * @param appContext
+	 * @param name
+	 * @return whether the application context hint is "true"
+	 */
+	private static boolean isEnabled( Map appContext, String name )
+	{
+		return appContext != null
+				&& appContext.get( name ) != null
+				&& Boolean.valueOf( appContext.get( name ).toString( ).trim( ) )
+						.booleanValue( );
+	}
+
+	/**
+	 * Translate the operations of the query.
+	 *
+	 * @return whether any operation is translated
+	 * @throws DataException
+	 */
+	private boolean translate( ) throws DataException
+	{
+		this.filters = new ArrayList<Object[]>( );
+		this.pushedDataSetFilters = new ArrayList<IFilterDefinition>( );
+		this.pushedQueryFilters = new ArrayList<IFilterDefinition>( );
+
+		List dataSetFilters = dataSetDesign.getFilters( ) == null
+				? new ArrayList( ) : dataSetDesign.getFilters( );
+		for ( Object filter : dataSetFilters )
+		{
+			Object[] translated = translateFilter( ( (IFilterDefinition) filter ).getExpression( ),
+					false );
+			if ( translated != null )
+			{
+				this.filters.add( translated );
+				this.pushedDataSetFilters.add( (IFilterDefinition) filter );
+			}
+		}
+		List queryFilters = query.getFilters( ) == null ? new ArrayList( )
+				: query.getFilters( );
+		for ( Object filter : queryFilters )
+		{
+			IFilterDefinition filterDefn = (IFilterDefinition) filter;
+			// the filters which do not update aggregations are applied after
+			// the aggregations are calculated
+			if ( !filterDefn.updateAggregation( )
+					|| FilterTarget.RESULTSET.equals( filterDefn.getFilterTarget( ) ) )
+				continue;
+			Object[] translated = translateFilter( filterDefn.getExpression( ),
+					true );
+			if ( translated != null )
+			{
+				this.filters.add( translated );
+				this.pushedQueryFilters.add( filterDefn );
+			}
+		}
+		boolean allFiltersPushed = pushedDataSetFilters.size( ) == dataSetFilters.size( )
+				&& pushedQueryFilters.size( ) == queryFilters.size( );
+
+		List sorts = query.getSorts( ) == null ? new ArrayList( )
+				: query.getSorts( );
+		List groups = query.getGroups( ) == null ? new ArrayList( )
+				: query.getGroups( );
+		if ( groups.isEmpty( ) && !sorts.isEmpty( ) )
+			this.sortKeys = translateSorts( sorts );
+
+		if ( allFiltersPushed && sorts.isEmpty( ) )
+			translateAggregations( groups );
+
+		this.properties = new HashMap<String, Object>( );
+		if ( !filters.isEmpty( ) )
+			properties.put( FILTERS, filters );
+		if ( sortKeys != null )
+			properties.put( SORT_KEYS, sortKeys );
+		if ( aggregations != null )
+		{
+			properties.put( GROUP_KEYS, groupKeys );
+			properties.put( AGGREGATIONS, aggregations );
+		}
+		if ( allFiltersPushed
+				&& aggregations == null && groups.isEmpty( )
+				&& ( sorts.isEmpty( ) || sortKeys != null )
+				&& query.getMaxRows( ) > 0 && query.getStartingRow( ) <= 0
+				&& !query.getDistinctValue( )
+				&& !dataSetDesign.needDistinctValue( ) )
+			properties.put( MAX_ROWS, Integer.valueOf( query.getMaxRows( ) ) );
+		return !properties.isEmpty( );
+	}
+
+	/**
+	 * Apply the pushed down operations to the copies of the data set design
+	 * and the query.
+	 */
+	private void apply( )
+	{
+		if ( !pushedDataSetFilters.isEmpty( ) || aggregations != null )
+			this.dataSetDesign = new PushedDownDataSetDesign( dataSetDesign );
+
+		if ( !pushedQueryFilters.isEmpty( ) || sortKeys != null
+				|| aggregations != null )
+			this.query = new PushedDownQueryDefinition( query );
+	}
+
+	/**
+	 * Translate a filter to {column, operator, values, whether null matches}.
+	 *
+	 * @param expr
+	 * @param ofQuery
+	 *            whether the filter is of the query rather than the data set
+	 * @return null if the filter can not be translated
+	 * @throws DataException
+	 */
+	private Object[] translateFilter( IBaseExpression expr, boolean ofQuery )
+			throws DataException
+	{
+		if ( !( expr instanceof IConditionalExpression ) )
+			return null;
+		IConditionalExpression condition = (IConditionalExpression) expr;
+		String column = getDataSetColumn( condition.getExpression( ), ofQuery );
+		if ( column == null )
+			return null;
+		int dataType = columns.get( column ).getDataType( );
+		boolean isString = dataType == DataType.STRING_TYPE;
+		if ( !isNumeric( dataType ) && !isString )
+			return null;
+		// the strings are compared by collator of the locale, and the database
+		// may ignore their cases
+		if ( isString && !isBinaryCollation( ) )
+			return null;
+
+		String operator;
+		Object[] values;
+		// a null value is less than all other values in the data engine
+		boolean matchesNull = false;
+		switch ( condition.getOperator( ) )
+		{
+			case IConditionalExpression.OP_NULL :
+				return new Object[]{
+						getNativeName( column ), "IS NULL", new Object[0], //$NON-NLS-1$
+						Boolean.FALSE
+				};
+			case IConditionalExpression.OP_NOT_NULL :
+				return new Object[]{
+						getNativeName( column ), "IS NOT NULL", new Object[0], //$NON-NLS-1$
+						Boolean.FALSE
+				};
+			case IConditionalExpression.OP_EQ :
+				operator = "="; //$NON-NLS-1$
+				break;
+			case IConditionalExpression.OP_NE :
+				operator = "<>"; //$NON-NLS-1$
+				matchesNull = true;
+				break;
+			case IConditionalExpression.OP_LT :
+				operator = "<"; //$NON-NLS-1$
+				matchesNull = true;
+				break;
+			case IConditionalExpression.OP_LE :
+				operator = "<="; //$NON-NLS-1$
+				matchesNull = true;
+				break;
+			case IConditionalExpression.OP_GT :
+				operator = ">"; //$NON-NLS-1$
+				break;
+			case IConditionalExpression.OP_GE :
+				operator = ">="; //$NON-NLS-1$
+				break;
+			case IConditionalExpression.OP_BETWEEN :
+				operator = "BETWEEN"; //$NON-NLS-1$
+				break;
+			case IConditionalExpression.OP_NOT_BETWEEN :
+				operator = "NOT BETWEEN"; //$NON-NLS-1$
+				matchesNull = true;
+				break;
+			case IConditionalExpression.OP_IN :
+				operator = "IN"; //$NON-NLS-1$
+				break;
+			case IConditionalExpression.OP_NOT_IN :
+				operator = "NOT IN"; //$NON-NLS-1$
+				matchesNull = true;
+				break;
+			default :
+				return null;
+		}
+		if ( isString && !"=".equals( operator ) && !"<>".equals( operator ) //$NON-NLS-1$ //$NON-NLS-2$
+				&& !"IN".equals( operator ) && !"NOT IN".equals( operator ) ) //$NON-NLS-1$ //$NON-NLS-2$
+			return null;
+
+		if ( condition.getOperator( ) == IConditionalExpression.OP_IN
+				|| condition.getOperator( ) == IConditionalExpression.OP_NOT_IN )
+		{
+			Collection operands = condition.getOperand1( ) instanceof ExpressionCollection
+					? ( (ExpressionCollection) condition.getOperand1( ) ).getExpressions( )
+					: null;
+			if ( operands == null || operands.isEmpty( ) )
+				return null;
+			values = new Object[operands.size( )];
+			int i = 0;
+			for ( Object operand : operands )
+			{
+				values[i++] = getLiteral( (IBaseExpression) operand, dataType );
+			}
+		}
+		else if ( condition.getOperator( ) == IConditionalExpression.OP_BETWEEN
+				|| condition.getOperator( ) == IConditionalExpression.OP_NOT_BETWEEN )
+		{
+			values = new Object[]{
+					getLiteral( condition.getOperand1( ), dataType ),
+					getLiteral( condition.getOperand2( ), dataType )
+			};
+		}
+		else
+		{
+			values = new Object[]{
+				getLiteral( condition.getOperand1( ), dataType )
+			};
+		}
+		for ( int i = 0; i < values.length; i++ )
+		{
+			if ( values[i] == null )
+				return null;
+		}
+		return new Object[]{
+				getNativeName( column ),
+				operator,
+				values,
+				Boolean.valueOf( matchesNull )
+		};
+	}
+
+	/**
+	 * Translate the sorts to {column, ascending, nulls first}.
+	 *
+	 * @param sorts
+	 * @return null if any sort can not be translated
+	 * @throws DataException
+	 */
+	private List<Object[]> translateSorts( List sorts ) throws DataException
+	{
+		List<Object[]> result = new ArrayList<Object[]>( );
+		for ( Object sort : sorts )
+		{
+			ISortDefinition sortDefn = (ISortDefinition) sort;
+			String column = sortDefn.getColumn( ) != null
+					? getDataSetColumn( new ScriptExpression( ExpressionUtil.createJSRowExpression( sortDefn.getColumn( ) ) ),
+							true )
+					: getDataSetColumn( sortDefn.getExpression( ), true );
+			// the strings are sorted by collator in the data engine
+			if ( column == null
+					|| !isNumeric( columns.get( column ).getDataType( ) )
+					&& !isDate( columns.get( column ).getDataType( ) ) )
+				return null;
+			boolean ascending = sortDefn.getSortDirection( ) == ISortDefinition.SORT_ASC;
+			result.add( new Object[]{
+					getNativeName( column ),
+					Boolean.valueOf( ascending ),
+					Boolean.valueOf( ascending )
+			} );
+		}
+		return result;
+	}
+
+	/**
+	 * Translate the groups and the aggregations of a summary query. The rows
+	 * are aggregated by the keys of all groups, and each aggregation binding is
+	 * rewritten to aggregate the partial aggregation of the aggregated rows.
+	 *
+	 * @param groups
+	 * @throws DataException
+	 */
+	private void translateAggregations( List groups ) throws DataException
+	{
+		if ( !query.isSummaryQuery( )
+				|| query.getColumnProjection( ) != null
+				|| query.getDistinctValue( )
+				|| dataSetDesign.needDistinctValue( )
+				|| ( query.getSubqueries( ) != null && !query.getSubqueries( )
+						.isEmpty( ) )
+				|| ( dataSetDesign.getComputedColumns( ) != null && !dataSetDesign.getComputedColumns( )
+						.isEmpty( ) ) )
+			return;
+
+		List<String> keys = new ArrayList<String>( );
+		List<String> groupNames = new ArrayList<String>( );
+		for ( Object group : groups )
+		{
+			IGroupDefinition groupDefn = (IGroupDefinition) group;
+			if ( groupDefn.getInterval( ) != IGroupDefinition.NO_INTERVAL
+					|| ( groupDefn.getFilters( ) != null && !groupDefn.getFilters( )
+							.isEmpty( ) )
+					|| ( groupDefn.getSorts( ) != null && !groupDefn.getSorts( )
+							.isEmpty( ) ) )
+				return;
+			String keyExpr = groupDefn.getKeyColumn( ) != null
+					? ExpressionUtil.createJSRowExpression( groupDefn.getKeyColumn( ) )
+					: groupDefn.getKeyExpression( );
+			String column = getDataSetColumn( new ScriptExpression( keyExpr ),
+					true );
+			// the database may group the strings which differ in cases
+			if ( column == null
+					|| ( columns.get( column ).getDataType( ) == DataType.STRING_TYPE
+							&& !isBinaryCollation( ) ) )
+				return;
+			keys.add( column );
+			groupNames.add( groupDefn.getName( ) );
+		}
+
+		List<Object[]> aggrs = new ArrayList<Object[]>( );
+		Map<String, String> aliases = new HashMap<String, String>( );
+		Map<String, IBinding> bindings = new LinkedHashMap<String, IBinding>( );
+		Map queryBindings = query.getBindings( );
+		for ( Object entry : queryBindings.entrySet( ) )
+		{
+			String name = (String) ( (Map.Entry) entry ).getKey( );
+			IBinding binding = (IBinding) ( (Map.Entry) entry ).getValue( );
+			if ( binding.getAggrFunction( ) == null )
+			{
+				// only the group keys are in the aggregated rows
+				if ( !keys.containsAll( ExpressionCompilerUtil.extractDataSetColumnExpression( binding.getExpression( ) ) )
+						|| !queryBindings.keySet( )
+								.containsAll( ExpressionCompilerUtil.extractColumnExpression( binding.getExpression( ),
+										ExpressionUtil.ROW_INDICATOR ) ) )
+					return;
+				bindings.put( name, binding );
+				continue;
+			}
+
+			String function = binding.getAggrFunction( ).toUpperCase( );
+			if ( binding.getFilter( ) != null
+					|| binding.getTimeFunction( ) != null
+					|| binding.getAggregatOns( ).size( ) > 1 )
+				return;
+			int groupLevel = 0;
+			if ( binding.getAggregatOns( ).size( ) == 1 )
+			{
+				groupLevel = groupNames.indexOf( binding.getAggregatOns( )
+						.get( 0 ) ) + 1;
+				if ( groupLevel == 0 )
+					return;
+			}
+
+			IBaseExpression argument = binding.getExpression( );
+			if ( argument == null && !binding.getArguments( ).isEmpty( ) )
+				argument = (IBaseExpression) binding.getArguments( ).get( 0 );
+			String column = null;
+			if ( argument != null )
+			{
+				column = argument instanceof IScriptExpression
+						? getDirectDataSetColumn( ( (IScriptExpression) argument ).getText( ) )
+						: null;
+				if ( column == null )
+					return;
+			}
+
+			String sqlFunction;
+			String rewrittenFunction;
+			if ( "SUM".equals( function ) //$NON-NLS-1$
+					|| "MIN".equals( function ) || "MAX".equals( function ) ) //$NON-NLS-1$ //$NON-NLS-2$
+			{
+				sqlFunction = function;
+				rewrittenFunction = function;
+			}
+			else if ( "COUNT".equals( function ) ) //$NON-NLS-1$
+			{
+				sqlFunction = function;
+				rewrittenFunction = "SUM"; //$NON-NLS-1$
+			}
+			else if ( "AVE".equals( function ) && groupLevel == groups.size( ) ) //$NON-NLS-1$
+			{
+				// there is one aggregated row in each innermost group
+				sqlFunction = "AVG"; //$NON-NLS-1$
+				rewrittenFunction = function;
+			}
+			else
+			{
+				return;
+			}
+			if ( column == null ? !"COUNT".equals( sqlFunction ) //$NON-NLS-1$
+					: ( !"COUNT".equals( sqlFunction ) //$NON-NLS-1$
+							&& !isNumeric( columns.get( column ).getDataType( ) ) ) )
+				return;
+
+			String key = sqlFunction + "(" + ( column == null ? "*" : column ) + ")"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			String alias = aliases.get( key );
+			if ( alias == null )
+			{
+				alias = AGGREGATION_ALIAS_PREFIX + aliases.size( );
+				aliases.put( key, alias );
+				aggrs.add( new Object[]{
+						alias,
+						sqlFunction,
+						column == null ? null : getNativeName( column )
+				} );
+			}
+
+			Binding rewritten = new Binding( name,
+					new ScriptExpression( ExpressionUtil.createJSDataSetRowExpression( alias ) ) );
+			rewritten.setAggrFunction( rewrittenFunction );
+			for ( Object aggregateOn : binding.getAggregatOns( ) )
+			{
+				rewritten.addAggregateOn( (String) aggregateOn );
+			}
+			rewritten.setDataType( binding.getDataType( ) );
+			rewritten.setExportable( binding.exportable( ) );
+			rewritten.setDisplayName( binding.getDisplayName( ) );
+			bindings.put( name, rewritten );
+		}
+		if ( aggrs.isEmpty( ) )
+			return;
+
+		this.groupKeys = new ArrayList<String>( );
+		for ( String key : keys )
+		{
+			if ( !groupKeys.contains( getNativeName( key ) ) )
+				groupKeys.add( getNativeName( key ) );
+		}
+		this.aggregations = aggrs;
+		this.aggregatedBindings = bindings;
+	}
+
+	/**
+	 * Get the data set column which an expression refers to directly, by
+	 * dataSetRow, or by row in a data set filter, or by a binding of the query.
+	 *
+	 * @param expr
+	 * @param ofQuery
+	 * @return null if the expression is not a direct column reference of a data
+	 *         set column which can be referred to in SQL
+	 * @throws DataException
+	 */
+	private String getDataSetColumn( IScriptExpression expr, boolean ofQuery )
+			throws DataException
+	{
+		if ( expr == null || expr.getText( ) == null )
+			return null;
+		try
+		{
+			String column = getDirectDataSetColumn( expr.getText( ) );
+			if ( column != null )
+				return column;
+			String name = ExpressionUtil.getColumnBindingName( expr.getText( ) );
+			if ( name == null )
+				return null;
+			if ( ofQuery )
+				name = getReferencedDataSetColumn( (IBinding) query.getBindings( )
+						.get( name ) );
+			return name != null && columns.containsKey( name ) ? name : null;
+		}
+		catch ( BirtException e )
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Get the data set column which a binding refers to directly, by
+	 * dataSetRow["column"] without aggregation.
+	 *
+	 * @param binding
+	 * @return null if the binding is not a direct data set column reference
+	 */
+	private static String getReferencedDataSetColumn( IBinding binding )
+	{
+		try
+		{
+			if ( binding == null
+					|| binding.getAggrFunction( ) != null
+					|| binding.getFilter( ) != null
+					|| !( binding.getExpression( ) instanceof IScriptExpression ) )
+				return null;
+			String text = ( (IScriptExpression) binding.getExpression( ) ).getText( );
+			return text == null ? null : ExpressionUtil.getColumnName( text );
+		}
+		catch ( BirtException e )
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * @param text
+	 * @return the data set column referred to by dataSetRow
+	 */
+	private String getDirectDataSetColumn( String text )
+	{
+		try
+		{
+			String column = text == null ? null
+					: ExpressionUtil.getColumnName( text );
+			return column != null && columns.containsKey( column ) ? column
+					: null;
+		}
+		catch ( BirtException e )
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * @param column
+	 * @return the name of column in the result of the SQL query
+	 */
+	private String getNativeName( String column )
+	{
+		IColumnDefinition columnDefn = columns.get( column );
+		return columnDefn != null && !isEmpty( columnDefn.getColumnNativeName( ) )
+				? columnDefn.getColumnNativeName( ) : column;
+	}
+
+	/**
+	 * Get the literal value of an operand of a filter.
+	 *
+	 * @param expr
+	 * @param dataType
+	 *            the data type of the compared column
+	 * @return null if the operand is not a literal of the data type
+	 */
+	private static Object getLiteral( IBaseExpression expr, int dataType )
+	{
+		if ( !( expr instanceof IScriptExpression )
+				|| ( (IScriptExpression) expr ).getText( ) == null )
+			return null;
+		String text = ( (IScriptExpression) expr ).getText( ).trim( );
+		if ( isNumeric( dataType ) )
+		{
+			if ( !NUMBER_PATTERN.matcher( text ).matches( ) )
+				return null;
+			BigDecimal value = new BigDecimal( text.startsWith( "+" ) ? text.substring( 1 ) : text ); //$NON-NLS-1$
+			// the script evaluates the overflowed number to Infinity
+			return Double.isInfinite( value.doubleValue( ) ) ? null : value;
+		}
+		if ( dataType == DataType.STRING_TYPE && text.length( ) >= 2 )
+		{
+			char quote = text.charAt( 0 );
+			if ( ( quote == '"' || quote == '\'' )
+					&& text.charAt( text.length( ) - 1 ) == quote )
+			{
+				String value = text.substring( 1, text.length( ) - 1 );
+				// escaped characters are left to script
+				if ( value.indexOf( quote ) < 0 && value.indexOf( '\\' ) < 0 )
+					return value;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return whether the strings are compared by their binary values both in
+	 *         the database and in the data engine
+	 */
+	private boolean isBinaryCollation( )
+	{
+		return binaryCollation && dataSetDesign.getCompareLocale( ) == null;
+	}
+
+	private static boolean isNumeric( int dataType )
+	{
+		return dataType == DataType.INTEGER_TYPE
+				|| dataType == DataType.DOUBLE_TYPE
+				|| dataType == DataType.DECIMAL_TYPE;
+	}
+
+	private static boolean isDate( int dataType )
+	{
+		return dataType == DataType.DATE_TYPE
+				|| dataType == DataType.SQL_DATE_TYPE
+				|| dataType == DataType.SQL_TIME_TYPE;
+	}
+
+	private static boolean isEmpty( String text )
+	{
+		return text == null || text.trim( ).length( ) == 0;
+	}
+
+	/**
+	 * The data set design prepared in place of the original one, without the
+	 * pushed down filters, and with the result set hints of the aggregated
+	 * rows. The original data set design is not changed.
+	 */
+	private class PushedDownDataSetDesign extends OdaDataSetAdapter
+	{
+		private List resultSetHints;
+
+		PushedDownDataSetDesign( IOdaDataSetDesign dataSetDesign )
+		{
+			super( dataSetDesign );
+			getFilters( ).removeAll( pushedDataSetFilters );
+			if ( aggregations == null )
+			{
+				this.resultSetHints = dataSetDesign.getResultSetHints( );
+				return;
+			}
+			// only the group keys are kept in the aggregated rows, whose
+			// positions are changed
+			this.resultSetHints = new ArrayList( );
+			for ( Object hint : dataSetDesign.getResultSetHints( ) )
+			{
+				IColumnDefinition column = (IColumnDefinition) hint;
+				if ( groupKeys.contains( getNativeName( column.getColumnName( ) ) ) )
+					resultSetHints.add( copyColumn( column ) );
+			}
+		}
+
+		/*
+		 * @see org.eclipse.birt.data.engine.impl.DataSetAdapter#getResultSetHints()
+		 */
+		public List getResultSetHints( )
+		{
+			return resultSetHints;
+		}
+
+		/**
+		 * @param column
+		 * @return the copy of column without position
+		 */
+		private IColumnDefinition copyColumn( IColumnDefinition column )
+		{
+			ColumnDefinition copy = new ColumnDefinition( column.getColumnName( ) );
+			copy.setColumnNativeName( column.getColumnNativeName( ) );
+			copy.setDisplayName( column.getDisplayName( ) );
+			copy.setAlias( column.getAlias( ) );
+			copy.setDataType( column.getDataType( ) );
+			copy.setNativeDataType( column.getNativeDataType( ) );
+			copy.setAnalysisType( column.getAnalysisType( ) );
+			copy.setAnalysisColumn( column.getAnalysisColumn( ) );
+			copy.setIndexColumn( column.isIndexColumn( ) );
+			copy.setCompressedColumn( column.isCompressedColumn( ) );
+			copy.setSearchHint( column.getSearchHint( ) );
+			copy.setExportHint( column.getExportHint( ) );
+			return copy;
+		}
+	}
+
+	/**
+	 * The query definition prepared in place of the original one, without the
+	 * pushed down filters and sorts, and with the aggregations on the
+	 * aggregated rows. The original query definition is not changed.
+	 */
+	private class PushedDownQueryDefinition extends QueryDefnDelegator
+	{
+		private List filters;
+		private List sorts;
+
+		PushedDownQueryDefinition( IQueryDefinition query )
+		{
+			super( query );
+			this.filters = new ArrayList( query.getFilters( ) );
+			this.filters.removeAll( pushedQueryFilters );
+			this.sorts = sortKeys != null ? new ArrayList( )
+					: query.getSorts( );
+		}
+
+		/*
+		 * @see org.eclipse.birt.data.engine.api.querydefn.QueryDefnDelegator#getFilters()
+		 */
+		public List getFilters( )
+		{
+			return filters;
+		}
+
+		/*
+		 * @see org.eclipse.birt.data.engine.api.querydefn.QueryDefnDelegator#getSorts()
+		 */
+		public List getSorts( )
+		{
+			return sorts;
+		}
+
+		/*
+		 * @see org.eclipse.birt.data.engine.api.querydefn.QueryDefnDelegator#getBindings()
+		 */
+		public Map getBindings( )
+		{
+			return aggregatedBindings != null ? aggregatedBindings
+					: super.getBindings( );
+		}
+
+		/*
+		 * @see org.eclipse.birt.data.engine.api.querydefn.QueryDefinition#getLinks()
+		 */
+		public Set<IBaseLinkDefinition> getLinks( )
+		{
+			return ( (IQueryDefinition) baseQuery ).getLinks( );
+		}
+	}
+}
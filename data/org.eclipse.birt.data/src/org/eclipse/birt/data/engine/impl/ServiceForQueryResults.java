@@ -464,6 +464,7 @@ public class ServiceForQueryResults implements IServiceForQueryResults
 			
 				ExpressionCompiler compiler = new ExpressionCompiler( );
 				compiler.setDataSetMode( false );
+				compiler.setJavaExpressionEnabled( ExpressionCompilerUtil.isJavaExpressionEnabled( getAppContext( ) ) );
 
 				
 				List groupBindingColumns = exprManager.getBindingExprs( );
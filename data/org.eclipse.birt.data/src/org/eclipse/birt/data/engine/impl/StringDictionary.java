@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.data.engine.impl;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.birt.core.util.IOUtil;
+import org.eclipse.birt.data.engine.core.DataException;
+import org.eclipse.birt.data.engine.odi.IResultClass;
+
+/**
+ * A <code>StringDictionary</code> keeps the distinct values of a string
+ * column, so that the rows can share one instance for each value, and the
+ * values can be encoded with their indexes. Unlike the string table of a
+ * compressed column, which is written to its own stream value by value, the
+ * dictionary is kept in memory, and the dictionaries of a data set are saved
+ * together after the rows. The dictionary stops growing at the max size, and
+ * the values which are not in it then are kept as they are, so a column of
+ * high cardinality is not encoded any more.
+ */
+public class StringDictionary extends StringTable
+{
+	/**
+	 * The index of a value which is not in the dictionary because the
+	 * dictionary is full
+	 */
+	public static final int NOT_ENCODED = -2;
+
+	private int maxSize;
+	private Map<String, Integer> indexMap;
+	private List<String> values;
+
+	/**
+	 * @param maxSize
+	 *            the max count of the values in the dictionary
+	 */
+	public StringDictionary( int maxSize )
+	{
+		this.maxSize = maxSize;
+		this.indexMap = new HashMap<String, Integer>( );
+		this.values = new ArrayList<String>( );
+	}
+
+	/**
+	 * Returns the instance in the dictionary which is equal to the value. The
+	 * value is added into the dictionary if it is not full.
+	 *
+	 * @param value
+	 * @return
+	 */
+	public synchronized String intern( String value )
+	{
+		if ( value == null )
+			return null;
+		Integer index = indexMap.get( value );
+		if ( index != null )
+			return values.get( index.intValue( ) );
+		add( value );
+		return value;
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.impl.StringTable#getIndex(java.lang.String)
+	 */
+	public synchronized int getIndex( String value )
+	{
+		if ( value == null )
+			return -1;
+		Integer index = indexMap.get( value );
+		if ( index != null )
+			return index.intValue( );
+		return add( value );
+	}
+
+	/**
+	 * @param value
+	 * @return the index of the added value, or NOT_ENCODED if the dictionary
+	 *         is full
+	 */
+	private int add( String value )
+	{
+		if ( values.size( ) >= maxSize )
+			return NOT_ENCODED;
+		indexMap.put( value, Integer.valueOf( values.size( ) ) );
+		values.add( value );
+		return values.size( ) - 1;
+	}
+
+	/*
+	 * @see org.eclipse.birt.data.engine.impl.StringTable#getStringValue(int)
+	 */
+	public synchronized String getStringValue( int index )
+	{
+		if ( index < 0 || index >= values.size( ) )
+			return null;
+		return values.get( index );
+	}
+
+	/**
+	 * @return the count of the values in the dictionary
+	 */
+	public synchronized int size( )
+	{
+		return values.size( );
+	}
+
+	/*
+	 * The dictionary is saved by save( ), nothing to close.
+	 *
+	 * @see org.eclipse.birt.data.engine.impl.StringTable#close()
+	 */
+	public void close( )
+	{
+	}
+
+	/**
+	 * Creates the dictionaries of the string columns.
+	 *
+	 * @param resultClass
+	 * @param maxSize
+	 * @return the dictionaries indexed by the column index - 1, null for the
+	 *         columns of other types. Null if there are no string columns or
+	 *         the max size is not positive.
+	 * @throws DataException
+	 */
+	public static StringDictionary[] createDictionaries(
+			IResultClass resultClass, int maxSize ) throws DataException
+	{
+		if ( maxSize <= 0 )
+			return null;
+		StringDictionary[] dictionaries = new StringDictionary[resultClass.getFieldCount( )];
+		boolean found = false;
+		for ( int i = 0; i < dictionaries.length; i++ )
+		{
+			if ( resultClass.getFieldValueClass( i + 1 ) == String.class )
+			{
+				dictionaries[i] = new StringDictionary( maxSize );
+				found = true;
+			}
+		}
+		return found ? dictionaries : null;
+	}
+
+	/**
+	 * Replaces the string values of a row with the instances in the
+	 * dictionaries.
+	 *
+	 * @param dictionaries
+	 *            the dictionaries indexed by the column index - 1
+	 * @param row
+	 *            the field values
+	 * @return whether any value is replaced
+	 */
+	public static boolean intern( StringDictionary[] dictionaries, Object[] row )
+	{
+		boolean replaced = false;
+		int count = Math.min( dictionaries.length, row.length );
+		for ( int i = 0; i < count; i++ )
+		{
+			if ( dictionaries[i] == null || !( row[i] instanceof String ) )
+				continue;
+			String value = dictionaries[i].intern( (String) row[i] );
+			if ( value != row[i] )
+			{
+				row[i] = value;
+				replaced = true;
+			}
+		}
+		return replaced;
+	}
+
+	/**
+	 * Saves the dictionaries of the columns.
+	 *
+	 * @param outputStream
+	 * @param dictionaries
+	 *            the dictionaries keyed by the column name
+	 * @throws IOException
+	 */
+	public static void save( OutputStream outputStream,
+			Map<String, StringDictionary> dictionaries ) throws IOException
+	{
+		DataOutputStream dos = new DataOutputStream( outputStream );
+		IOUtil.writeInt( dos, dictionaries.size( ) );
+		Iterator<Map.Entry<String, StringDictionary>> it = dictionaries.entrySet( )
+				.iterator( );
+		while ( it.hasNext( ) )
+		{
+			Map.Entry<String, StringDictionary> entry = it.next( );
+			IOUtil.writeString( dos, entry.getKey( ) );
+			StringDictionary dictionary = entry.getValue( );
+			synchronized ( dictionary )
+			{
+				IOUtil.writeInt( dos, dictionary.values.size( ) );
+				for ( int i = 0; i < dictionary.values.size( ); i++ )
+				{
+					IOUtil.writeString( dos, dictionary.values.get( i ) );
+				}
+			}
+		}
+		dos.flush( );
+	}
+
+	/**
+	 * Loads the dictionaries saved by save( ).
+	 *
+	 * @param inputStream
+	 * @param maxSize
+	 *            the max size of the loaded dictionaries, which are not
+	 *            smaller than the saved ones
+	 * @return the dictionaries keyed by the column name
+	 * @throws IOException
+	 */
+	public static Map<String, StringDictionary> load( InputStream inputStream,
+			int maxSize ) throws IOException
+	{
+		DataInputStream dis = new DataInputStream( inputStream );
+		int count = IOUtil.readInt( dis );
+		Map<String, StringDictionary> dictionaries = new HashMap<String, StringDictionary>( );
+		for ( int i = 0; i < count; i++ )
+		{
+			String name = IOUtil.readString( dis );
+			int size = IOUtil.readInt( dis );
+			StringDictionary dictionary = new StringDictionary( Math.max( size,
+					maxSize ) );
+			for ( int j = 0; j < size; j++ )
+			{
+				dictionary.add( IOUtil.readString( dis ) );
+			}
+			dictionaries.put( name, dictionary );
+		}
+		return dictionaries;
+	}
+}
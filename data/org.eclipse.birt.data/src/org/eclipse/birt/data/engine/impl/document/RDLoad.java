@@ -34,6 +34,7 @@ import org.eclipse.birt.data.engine.i18n.ResourceConstants;
 import org.eclipse.birt.data.engine.impl.PLSUtil;
 import org.eclipse.birt.data.engine.impl.QueryDefinitionUtil;
 import org.eclipse.birt.data.engine.impl.ResultMetaData;
+import org.eclipse.birt.data.engine.impl.StringDictionary;
 import org.eclipse.birt.data.engine.impl.StringTable;
 import org.eclipse.birt.data.engine.impl.document.stream.StreamManager;
 import org.eclipse.birt.data.engine.impl.document.stream.VersionManager;
@@ -343,6 +344,9 @@ public class RDLoad
 
 		int adjustedVersion = resolveVersionConflict( );
 		
+		if ( version >= VersionManager.VERSION_4_2_4 )
+			stringTableMap = loadStringDictionaries( stringTableMap );
+		
 		if ( loadResultClass && includeInnerID )
 		{
 			List<ResultFieldMetadata> fields = new ArrayList<ResultFieldMetadata>( targetResultClass.getFieldCount( ) - 1 );
@@ -373,6 +377,43 @@ public class RDLoad
 	}
 	
 	
+	/**
+	 * Add the string dictionaries saved with the data set data into the
+	 * string table map.
+	 * 
+	 * @param stringTableMap
+	 * @return
+	 * @throws DataException
+	 */
+	private Map<String, StringTable> loadStringDictionaries(
+			Map<String, StringTable> stringTableMap ) throws DataException
+	{
+		if ( !streamManager.hasInStream( DataEngineContext.DATASET_STRING_DICTIONARY_STREAM,
+				StreamManager.ROOT_STREAM,
+				StreamManager.BASE_SCOPE ) )
+			return stringTableMap;
+		
+		Map<String, StringTable> result = new HashMap<String, StringTable>( );
+		try
+		{
+			RAInputStream stream = streamManager.getInStream( DataEngineContext.DATASET_STRING_DICTIONARY_STREAM,
+					StreamManager.ROOT_STREAM,
+					StreamManager.BASE_SCOPE );
+			result.putAll( StringDictionary.load( new BufferedInputStream( stream ),
+					0 ) );
+			stream.close( );
+		}
+		catch ( IOException e )
+		{
+			throw new DataException( ResourceConstants.RD_LOAD_ERROR,
+					e,
+					"String Dictionary" );
+		}
+		if ( stringTableMap != null )
+			result.putAll( stringTableMap );
+		return result;
+	}
+	
 	private int resolveVersionConflict( )
 	{
 		if ( version == VersionManager.VERSION_3_7_2_1
@@ -12,17 +12,22 @@
 package org.eclipse.birt.data.engine.impl.document;
 
 import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.eclipse.birt.core.archive.RAInputStream;
 import org.eclipse.birt.data.engine.api.DataEngineContext;
 import org.eclipse.birt.data.engine.core.DataException;
 import org.eclipse.birt.data.engine.executor.cache.CacheUtil;
+import org.eclipse.birt.data.engine.i18n.ResourceConstants;
+import org.eclipse.birt.data.engine.impl.StringDictionary;
 import org.eclipse.birt.data.engine.impl.StringTable;
 import org.eclipse.birt.data.engine.impl.document.stream.StreamManager;
+import org.eclipse.birt.data.engine.impl.document.stream.VersionManager;
 import org.eclipse.birt.data.engine.impl.index.IAuxiliaryIndexCreator;
 import org.eclipse.birt.data.engine.impl.index.IIndexSerializer;
 import org.eclipse.birt.data.engine.odi.IResultClass;
@@ -42,6 +47,7 @@ public class StreamWrapper
 	private boolean enableIndexStream;
 	private Map<IResultClass, Map<String, IIndexSerializer>> cachedIndex = new HashMap<IResultClass, Map<String, IIndexSerializer>>( );
 	private Map<IResultClass, Map<String, StringTable>> cachedStringTable = new HashMap<IResultClass, Map<String, StringTable>>( );
+	private Map<IResultClass, Map<String, StringDictionary>> cachedStringDictionary = new HashMap<IResultClass, Map<String, StringDictionary>>( );
 	private List<IAuxiliaryIndexCreator> auxiliaryIndexCreators = new ArrayList<IAuxiliaryIndexCreator>( );
 	
 	/**
@@ -103,14 +109,27 @@ public class StreamWrapper
 	public Map<String, StringTable> getOutputStringTable(
 			IResultClass resultClass ) throws DataException
 	{
-		if ( !this.enableIndexStream )
-			return new HashMap<String, StringTable>();
+		return getOutputStringTable( resultClass, null );
+	}
+	
+	/**
+	 * Returns the string tables of the compressed columns, and the string
+	 * dictionaries of the other string columns.
+	 * 
+	 * @param resultClass
+	 * @param appContext
+	 * @return
+	 * @throws DataException
+	 */
+	public Map<String, StringTable> getOutputStringTable(
+			IResultClass resultClass, Map appContext ) throws DataException
+	{
 		if( cachedStringTable.containsKey( resultClass ) )
 			return cachedStringTable.get( resultClass );
 		Map<String, StringTable> result = new HashMap<String, StringTable>( );
 		for ( int i = 1; i <= resultClass.getFieldCount( ); i++ )
 		{
-			if ( !resultClass.isCompressedColumn( i ) )
+			if ( !this.enableIndexStream || !resultClass.isCompressedColumn( i ) )
 				continue;
 			Class dataType = resultClass.getFieldValueClass( i );
 			if ( dataType == String.class )
@@ -121,10 +140,113 @@ public class StreamWrapper
 				result.put( fieldName, stringTable );
 			}
 		}
+		Map<String, StringDictionary> dictionaries = createStringDictionaries( resultClass,
+				result,
+				appContext );
+		result.putAll( dictionaries );
 		cachedStringTable.put( resultClass, result );
+		cachedStringDictionary.put( resultClass, dictionaries );
 		return result;
 	}
 	
+	/**
+	 * Create the dictionaries of the string columns which are not compressed.
+	 * The dictionaries saved before are loaded, so that the rows appended to
+	 * the data set use the same indexes. The saved rows are decoded by the
+	 * columns of the saved dictionaries, so only those columns are encoded
+	 * then, whatever the dictionary size of the application context is.
+	 * 
+	 * @param resultClass
+	 * @param stringTables
+	 * @param appContext
+	 * @return
+	 * @throws DataException
+	 */
+	private Map<String, StringDictionary> createStringDictionaries(
+			IResultClass resultClass, Map<String, StringTable> stringTables,
+			Map appContext ) throws DataException
+	{
+		Map<String, StringDictionary> result = new HashMap<String, StringDictionary>( );
+		if ( manager.getVersion( ) < VersionManager.VERSION_4_2_4 )
+			return result;
+		int maxSize = CacheUtil.getStringDictionarySize( appContext );
+		boolean hasSaved = manager.hasInStream( DataEngineContext.DATASET_STRING_DICTIONARY_STREAM,
+				StreamManager.ROOT_STREAM,
+				StreamManager.BASE_SCOPE );
+		if ( maxSize <= 0 && !hasSaved )
+			return result;
+		
+		Map<String, StringDictionary> saved = null;
+		if ( hasSaved )
+		{
+			try
+			{
+				RAInputStream stream = manager.getInStream( DataEngineContext.DATASET_STRING_DICTIONARY_STREAM,
+						StreamManager.ROOT_STREAM,
+						StreamManager.BASE_SCOPE );
+				saved = StringDictionary.load( stream, maxSize );
+				stream.close( );
+			}
+			catch ( IOException e )
+			{
+				throw new DataException( ResourceConstants.RD_LOAD_ERROR,
+						e,
+						"String Dictionary" );
+			}
+		}
+		for ( int i = 1; i <= resultClass.getFieldCount( ); i++ )
+		{
+			String fieldName = resultClass.getFieldName( i );
+			if ( resultClass.getFieldValueClass( i ) != String.class
+					|| resultClass.isIndexColumn( i )
+					|| stringTables.containsKey( fieldName ) )
+				continue;
+			if ( saved == null )
+				result.put( fieldName, new StringDictionary( maxSize ) );
+			else if ( saved.containsKey( fieldName ) )
+				result.put( fieldName, saved.get( fieldName ) );
+		}
+		return result;
+	}
+	
+	/**
+	 * Close the string tables, and save the string dictionaries after the rows
+	 * of the data set are saved.
+	 * 
+	 * @param resultClass
+	 * @throws DataException
+	 */
+	public void closeStringTables( IResultClass resultClass )
+			throws DataException
+	{
+		try
+		{
+			Map<String, StringTable> stringTables = cachedStringTable.get( resultClass );
+			if ( stringTables != null )
+			{
+				for ( StringTable stringTable : stringTables.values( ) )
+				{
+					stringTable.close( );
+				}
+			}
+			Map<String, StringDictionary> dictionaries = cachedStringDictionary.get( resultClass );
+			if ( dictionaries != null && !dictionaries.isEmpty( ) )
+			{
+				OutputStream stream = manager.getOutStream( DataEngineContext.DATASET_STRING_DICTIONARY_STREAM,
+						StreamManager.ROOT_STREAM,
+						StreamManager.SELF_SCOPE );
+				StringDictionary.save( stream, dictionaries );
+				stream.close( );
+			}
+		}
+		catch ( IOException e )
+		{
+			throw new DataException( ResourceConstants.RD_SAVE_ERROR,
+					e,
+					"String Dictionary" );
+		}
+	}
+	
 	
 	public Map<String, IIndexSerializer> getStreamForIndex(
 			IResultClass resultClass, Map appContext ) throws DataException
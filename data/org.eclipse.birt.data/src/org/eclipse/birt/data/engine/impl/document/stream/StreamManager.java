@@ -146,12 +146,12 @@ public class StreamManager
 			{	
 				//non .data based report document generation mode, or BDO generation mode. Save one general version for
 				//all the queries
-				this.version = VersionManager.getLatestVersion( );
+				this.version = VersionManager.getLatestVersion( context );
 			}
 			
 			vm.setVersion( version, this.getQueryResultUID( ) );
 			//Keep it by now so that not to introduce potential backward issue.
-			vm.setVersion(VersionManager.getLatestVersion(), null);
+			vm.setVersion(VersionManager.getLatestVersion( context ), null);
 
 		}
 		else
@@ -163,7 +163,7 @@ public class StreamManager
 			//to temporiarily resolve [25079]. Dashboard's using of Data Engine API is incorrect.We always need first issue a generation task before any IV operation.
 			if( this.version == 0 && queryResultId != null )
 			{
-				this.version = VersionManager.getLatestVersion();
+				this.version = VersionManager.getLatestVersion( context );
 				if( this.context.getDocWriter( )!= null )
 					vm.setVersion( this.version, queryResultId );
 			}
@@ -98,6 +98,9 @@ public class VersionManager
 
 	//Materialize nested aggregation for xtab query
 	public final static int VERSION_4_2_3 = 310;
+
+	//Dictionary encoded string columns in data set data
+	public final static int VERSION_4_2_4 = 320;
 	
 	private DataEngineContext dataEngineContext;
 	private static Logger logger = Logger.getLogger( VersionManager.class.getName( ) );
@@ -243,4 +246,19 @@ public class VersionManager
 	{
 		return VERSION_4_2_3;
 	}
+	
+	/**
+	 * The dictionary encoded version is only saved if it is enabled in the
+	 * context, so that the other documents can still be read by the data
+	 * engines before it.
+	 * 
+	 * @param context
+	 * @return the version of the documents saved in the context
+	 */
+	public static int getLatestVersion( DataEngineContext context )
+	{
+		if ( context.isStringDictionaryEncoding( ) )
+			return VERSION_4_2_4;
+		return getLatestVersion( );
+	}
 }
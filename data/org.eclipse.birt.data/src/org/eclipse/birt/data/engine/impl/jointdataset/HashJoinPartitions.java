@@ -0,0 +1,481 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2005 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.birt.data.engine.impl.jointdataset;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.eclipse.birt.core.util.IOUtil;
+import org.eclipse.birt.data.engine.api.DataEngineThreadLocal;
+import org.eclipse.birt.data.engine.api.ICloseListener;
+import org.eclipse.birt.data.engine.core.DataException;
+import org.eclipse.birt.data.engine.core.security.FileSecurity;
+import org.eclipse.birt.data.engine.executor.cache.CacheUtil;
+import org.eclipse.birt.data.engine.executor.cache.ResultObjectUtil;
+import org.eclipse.birt.data.engine.i18n.ResourceConstants;
+import org.eclipse.birt.data.engine.impl.DataEngineSession;
+import org.eclipse.birt.data.engine.odi.IResultClass;
+import org.eclipse.birt.data.engine.odi.IResultObject;
+
+/**
+ * The partitions of the hash join when the build side can not be hashed in
+ * memory. The rows of both sides are written to the partition files by the
+ * hash code of their join key values together with the key values, so the
+ * rows of a partition can be joined later without evaluating the join
+ * conditions again.
+ * 
+ * Equal key values only have the same hash code if they are of the same kind
+ * (see JointDataSetUtil.getKeyKind), so the key values whose kinds are mixed
+ * on the two sides are excluded from the partitioning by repartition().
+ * The output streams of a partition are opened on its first row, and only the
+ * streams of one side are open at a time.
+ */
+class HashJoinPartitions implements ICloseListener
+{
+	private static final int BUILD = 0;
+	private static final int PROBE = 1;
+
+	//
+	private File dir;
+	private int partitionCount;
+	private int keyCount;
+	private DataEngineSession session;
+
+	// the key values which are hashed to select the partition of a row
+	private boolean[] hashedKeys;
+	private int[][] keyKinds;
+
+	private IResultClass[] resultClasses;
+	private ResultObjectUtil[] resultObjectUtils;
+	private File[][] files;
+	private DataOutputStream[][] outputs;
+	private int[][] rowCounts;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param session
+	 * @param partitionCount
+	 * @param keyCount
+	 * @param buildClass
+	 * @param probeClass
+	 * @throws DataException
+	 */
+	HashJoinPartitions( DataEngineSession session, int partitionCount,
+			int keyCount, IResultClass buildClass, IResultClass probeClass )
+			throws DataException
+	{
+		this( session, partitionCount, keyCount, buildClass, probeClass, null );
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param session
+	 * @param partitionCount
+	 * @param keyCount
+	 * @param buildClass
+	 * @param probeClass
+	 * @param hashedKeys
+	 *            the key values which select the partition of a row, null
+	 *            means all key values
+	 * @throws DataException
+	 */
+	private HashJoinPartitions( DataEngineSession session, int partitionCount,
+			int keyCount, IResultClass buildClass, IResultClass probeClass,
+			boolean[] hashedKeys ) throws DataException
+	{
+		this.session = session;
+		this.partitionCount = partitionCount;
+		this.keyCount = keyCount;
+		if ( hashedKeys == null )
+		{
+			hashedKeys = new boolean[keyCount];
+			Arrays.fill( hashedKeys, true );
+		}
+		this.hashedKeys = hashedKeys;
+		this.keyKinds = new int[2][keyCount];
+		this.dir = new File( CacheUtil.createSessionTempDir( session.getTempDir( ) ) );
+		this.resultClasses = new IResultClass[]{
+				buildClass, probeClass
+		};
+		this.resultObjectUtils = new ResultObjectUtil[]{
+				ResultObjectUtil.newInstance( buildClass, session ),
+				ResultObjectUtil.newInstance( probeClass, session )
+		};
+		this.files = new File[2][partitionCount];
+		this.outputs = new DataOutputStream[2][partitionCount];
+		this.rowCounts = new int[2][partitionCount];
+		DataEngineThreadLocal.getInstance( ).getCloseListener( ).add( this );
+	}
+
+	/**
+	 * @return
+	 */
+	int getPartitionCount( )
+	{
+		return partitionCount;
+	}
+
+	/**
+	 * @param isBuild
+	 * @param partition
+	 * @return the count of rows written to the partition
+	 */
+	int getRowCount( boolean isBuild, int partition )
+	{
+		return rowCounts[isBuild ? BUILD : PROBE][partition];
+	}
+
+	/**
+	 * Write a row to the partition of its join key values.
+	 *
+	 * @param isBuild
+	 * @param keyValues
+	 * @param row
+	 * @throws DataException
+	 * @throws IOException
+	 */
+	void write( boolean isBuild, Object[] keyValues, IResultObject row )
+			throws DataException, IOException
+	{
+		int side = isBuild ? BUILD : PROBE;
+		int partition = getPartition( keyValues );
+		DataOutputStream dos = outputs[side][partition];
+		if ( dos == null )
+		{
+			files[side][partition] = new File( dir, ( isBuild ? "build" : "probe" )
+					+ partition );
+			dos = new DataOutputStream( new BufferedOutputStream( FileSecurity.createFileOutputStream( files[side][partition] ),
+					IOUtil.RA_STREAM_BUFFER_LENGTH ) );
+			outputs[side][partition] = dos;
+		}
+		for ( int i = 0; i < keyCount; i++ )
+		{
+			IOUtil.writeObject( dos, keyValues[i] );
+			keyKinds[side][i] = JointDataSetUtil.mergeKeyKind( keyKinds[side][i],
+					JointDataSetUtil.getKeyKind( keyValues[i] ) );
+		}
+		resultObjectUtils[side].writeData( dos, row );
+		rowCounts[side][partition]++;
+	}
+
+	/**
+	 * The hash code is mixed so that the rows of a partition are still spread
+	 * in the buckets of the hash table.
+	 *
+	 * @param keyValues
+	 * @return
+	 */
+	private int getPartition( Object[] keyValues )
+	{
+		int hash = 1;
+		for ( int i = 0; i < keyCount; i++ )
+		{
+			if ( hashedKeys[i] )
+				hash = 31 * hash + JointDataSetUtil.hashCode( keyValues[i] );
+		}
+		return ( ( hash * 0x9E3779B1 ) >>> 1 ) % partitionCount;
+	}
+
+	/**
+	 * Finish writing the partitions of one side.
+	 *
+	 * @param isBuild
+	 * @throws DataException
+	 */
+	void endWrite( boolean isBuild ) throws DataException
+	{
+		DataOutputStream[] dos = outputs[isBuild ? BUILD : PROBE];
+		try
+		{
+			for ( int i = 0; i < dos.length; i++ )
+			{
+				if ( dos[i] != null )
+				{
+					dos[i].close( );
+					dos[i] = null;
+				}
+			}
+		}
+		catch ( IOException e )
+		{
+			throw new DataException( ResourceConstants.WRITE_TEMPFILE_ERROR, e );
+		}
+	}
+
+	/**
+	 * Return whether the rows with equal key values are in the same
+	 * partition, that is, each hashed key value is of the same kind on both
+	 * sides. It should be called after the rows of both sides are written.
+	 *
+	 * @return
+	 */
+	boolean isConsistent( )
+	{
+		for ( int i = 0; i < keyCount; i++ )
+		{
+			if ( hashedKeys[i] && !isConsistent( i ) )
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param key
+	 * @return whether the values of a key are of the same kind on both sides
+	 */
+	private boolean isConsistent( int key )
+	{
+		int kind = JointDataSetUtil.mergeKeyKind( keyKinds[BUILD][key],
+				keyKinds[PROBE][key] );
+		return kind != JointDataSetUtil.KEY_KIND_MIXED;
+	}
+
+	/**
+	 * Move the rows to new partitions which are selected only by the key
+	 * values of the same kind on both sides. All rows are in one partition if
+	 * no such key value exists. These partitions are closed.
+	 *
+	 * @return the new partitions
+	 * @throws DataException
+	 */
+	HashJoinPartitions repartition( ) throws DataException
+	{
+		boolean[] keys = new boolean[keyCount];
+		boolean hashed = false;
+		for ( int i = 0; i < keyCount; i++ )
+		{
+			keys[i] = hashedKeys[i] && isConsistent( i );
+			hashed = hashed || keys[i];
+		}
+		HashJoinPartitions partitions = new HashJoinPartitions( session,
+				hashed ? partitionCount : 1,
+				keyCount,
+				resultClasses[BUILD],
+				resultClasses[PROBE],
+				keys );
+		try
+		{
+			for ( int side = BUILD; side <= PROBE; side++ )
+			{
+				boolean isBuild = side == BUILD;
+				for ( int i = 0; i < partitionCount; i++ )
+				{
+					PartitionReader reader = open( isBuild, i );
+					try
+					{
+						while ( reader.next( ) )
+						{
+							partitions.write( isBuild,
+									reader.getKeyValues( ),
+									reader.getRow( ) );
+						}
+					}
+					finally
+					{
+						reader.close( );
+					}
+				}
+				partitions.endWrite( isBuild );
+			}
+		}
+		catch ( IOException e )
+		{
+			partitions.close( );
+			throw new DataException( ResourceConstants.WRITE_TEMPFILE_ERROR, e );
+		}
+		catch ( DataException e )
+		{
+			partitions.close( );
+			throw e;
+		}
+		finally
+		{
+			close( );
+		}
+		return partitions;
+	}
+
+	/**
+	 * Open a reader of the rows of a partition.
+	 *
+	 * @param isBuild
+	 * @param partition
+	 * @return
+	 * @throws DataException
+	 */
+	PartitionReader open( boolean isBuild, int partition )
+			throws DataException
+	{
+		int side = isBuild ? BUILD : PROBE;
+		return new PartitionReader( files[side][partition],
+				rowCounts[side][partition],
+				resultObjectUtils[side] );
+	}
+
+	/**
+	 * Delete the files of a partition after it is joined.
+	 *
+	 * @param partition
+	 */
+	void delete( int partition )
+	{
+		for ( int side = BUILD; side <= PROBE; side++ )
+		{
+			if ( files[side][partition] != null )
+			{
+				FileSecurity.fileDelete( files[side][partition] );
+				files[side][partition] = null;
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.birt.data.engine.api.ICloseListener#close()
+	 */
+	public void close( )
+	{
+		for ( int side = BUILD; side <= PROBE; side++ )
+		{
+			for ( int i = 0; i < partitionCount; i++ )
+			{
+				if ( outputs[side][i] != null )
+				{
+					try
+					{
+						outputs[side][i].close( );
+					}
+					catch ( IOException e )
+					{
+						// ignore, the file is to be deleted
+					}
+					outputs[side][i] = null;
+				}
+			}
+		}
+		for ( int i = 0; i < partitionCount; i++ )
+		{
+			delete( i );
+		}
+		FileSecurity.fileDelete( dir );
+	}
+
+	/**
+	 * The reader of the rows and their join key values in a partition file.
+	 */
+	class PartitionReader
+	{
+		//
+		private DataInputStream dis;
+		private int rowCount;
+		private int readCount;
+		private ResultObjectUtil resultObjectUtil;
+
+		private Object[] keyValues;
+		private IResultObject row;
+
+		private PartitionReader( File file, int rowCount,
+				ResultObjectUtil resultObjectUtil ) throws DataException
+		{
+			this.rowCount = rowCount;
+			this.resultObjectUtil = resultObjectUtil;
+			if ( file != null && rowCount > 0 )
+			{
+				try
+				{
+					this.dis = new DataInputStream( new BufferedInputStream( FileSecurity.createFileInputStream( file ),
+							IOUtil.RA_STREAM_BUFFER_LENGTH ) );
+				}
+				catch ( IOException e )
+				{
+					throw new DataException( ResourceConstants.READ_TEMPFILE_ERROR,
+							e );
+				}
+			}
+		}
+
+		/**
+		 * Read the next row and its join key values.
+		 *
+		 * @return false if there is no more row
+		 * @throws DataException
+		 */
+		boolean next( ) throws DataException
+		{
+			if ( dis == null || readCount >= rowCount
+					|| session.getStopSign( ).isStopped( ) )
+			{
+				keyValues = null;
+				row = null;
+				return false;
+			}
+			try
+			{
+				ClassLoader classLoader = DataEngineSession.getCurrentClassLoader( );
+				keyValues = new Object[keyCount];
+				for ( int i = 0; i < keyCount; i++ )
+				{
+					keyValues[i] = IOUtil.readObject( dis, classLoader );
+				}
+				row = resultObjectUtil.readData( dis, classLoader, 1 )[0];
+			}
+			catch ( IOException e )
+			{
+				throw new DataException( ResourceConstants.READ_TEMPFILE_ERROR,
+						e );
+			}
+			readCount++;
+			return row != null;
+		}
+
+		/**
+		 * @return the join key values of current row
+		 */
+		Object[] getKeyValues( )
+		{
+			return keyValues;
+		}
+
+		/**
+		 * @return current row
+		 */
+		IResultObject getRow( )
+		{
+			return row;
+		}
+
+		/**
+		 * Close the reader.
+		 */
+		void close( )
+		{
+			if ( dis != null )
+			{
+				try
+				{
+					dis.close( );
+				}
+				catch ( IOException e )
+				{
+					// ignore
+				}
+				dis = null;
+			}
+		}
+	}
+}
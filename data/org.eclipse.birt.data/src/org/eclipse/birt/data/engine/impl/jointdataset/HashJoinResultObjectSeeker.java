@@ -0,0 +1,345 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2005 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.birt.data.engine.impl.jointdataset;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.birt.data.engine.core.DataException;
+import org.eclipse.birt.data.engine.odi.IResultIterator;
+import org.eclipse.birt.data.engine.odi.IResultObject;
+
+/**
+ * This implementation of IMatchResultObjectSeeker is used for equi-join by a
+ * hash table. The rows of the build side are hashed by their join key values,
+ * and the matched rows of a probe row are found without sorting either side.
+ * The buckets which have been matched are recorded, so that the unmatched rows
+ * of the build side can be returned for outer joins.
+ * 
+ * The hash code of a join key value is only consistent with the join
+ * condition against the values of the same kind (see
+ * JointDataSetUtil.getKeyKind), so a probe row whose key values are not of the
+ * kinds of the build side, such as a string compared with numbers, is
+ * compared with every bucket instead.
+ */
+public class HashJoinResultObjectSeeker implements IMatchResultObjectSeeker
+{
+	//
+	private IJoinConditionMatcher matcher;
+	private boolean isBuildLeft;
+
+	private Map<JoinKey, Bucket> table;
+	private int rowCount;
+
+	// the kinds of the key values in the hash table
+	private int[] keyKinds;
+
+	// the buckets matched by the current probe row
+	private int currentProbeIndex;
+	private List<Bucket> currentBuckets;
+	private int currentBucketIndex;
+	private int currentPosition;
+
+	// the cursor of unmatched rows
+	private Iterator<Bucket> unmatchedBuckets;
+	private Bucket unmatchedBucket;
+	private int unmatchedPosition;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param matcher
+	 * @param isBuildLeft
+	 *            whether the rows of the hash table come from the left data
+	 *            set
+	 */
+	HashJoinResultObjectSeeker( IJoinConditionMatcher matcher,
+			boolean isBuildLeft )
+	{
+		this.matcher = matcher;
+		this.isBuildLeft = isBuildLeft;
+		this.table = new LinkedHashMap<JoinKey, Bucket>( );
+		this.currentProbeIndex = -1;
+	}
+
+	/**
+	 * Add a row of the build side to the hash table.
+	 *
+	 * @param keyValues
+	 * @param row
+	 */
+	void add( Object[] keyValues, IResultObject row )
+	{
+		if ( keyKinds == null )
+			keyKinds = new int[keyValues.length];
+		for ( int i = 0; i < keyValues.length; i++ )
+		{
+			keyKinds[i] = JointDataSetUtil.mergeKeyKind( keyKinds[i],
+					JointDataSetUtil.getKeyKind( keyValues[i] ) );
+		}
+
+		JoinKey key = new JoinKey( keyValues );
+		Bucket bucket = table.get( key );
+		if ( bucket == null )
+		{
+			bucket = new Bucket( keyValues );
+			table.put( key, bucket );
+		}
+		bucket.rows.add( row );
+		rowCount++;
+	}
+
+	/**
+	 * @return the count of rows in the hash table
+	 */
+	int getRowCount( )
+	{
+		return rowCount;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.birt.data.engine.impl.jointdataset.IMatchResultObjectSeeker#getNextMatchedResultObject(int)
+	 */
+	public IResultObject getNextMatchedResultObject( int currentPrimaryIndex )
+			throws DataException
+	{
+		Object[] keyValues = currentPrimaryIndex == this.currentProbeIndex
+				? null : matcher.getCompareValue( !isBuildLeft );
+		return getNextMatchedResultObject( keyValues, currentPrimaryIndex );
+	}
+
+	/**
+	 * Return the next matched row of the given probe row, or null if there is
+	 * no more matched row. The key values are only used when the probe index
+	 * changes.
+	 *
+	 * @param keyValues
+	 * @param probeIndex
+	 * @return
+	 * @throws DataException
+	 */
+	IResultObject getNextMatchedResultObject( Object[] keyValues,
+			int probeIndex ) throws DataException
+	{
+		if ( probeIndex != this.currentProbeIndex )
+		{
+			this.currentProbeIndex = probeIndex;
+			this.currentBuckets = findBuckets( keyValues );
+			this.currentBucketIndex = 0;
+			this.currentPosition = 0;
+		}
+		while ( currentBucketIndex < currentBuckets.size( ) )
+		{
+			Bucket bucket = currentBuckets.get( currentBucketIndex );
+			if ( currentPosition < bucket.rows.size( ) )
+			{
+				bucket.matched = true;
+				return bucket.rows.get( currentPosition++ );
+			}
+			currentBucketIndex++;
+			currentPosition = 0;
+		}
+		return null;
+	}
+
+	/**
+	 * Find the buckets whose key values match the key values of a probe row.
+	 *
+	 * @param keyValues
+	 * @return
+	 * @throws DataException
+	 */
+	private List<Bucket> findBuckets( Object[] keyValues ) throws DataException
+	{
+		if ( isHashable( keyValues ) )
+		{
+			Bucket bucket = table.get( new JoinKey( keyValues ) );
+			if ( bucket == null )
+				return Collections.emptyList( );
+			return Collections.singletonList( bucket );
+		}
+
+		List<Bucket> buckets = new ArrayList<Bucket>( );
+		Iterator<Bucket> it = table.values( ).iterator( );
+		while ( it.hasNext( ) )
+		{
+			Bucket bucket = it.next( );
+			if ( JointDataSetUtil.matches( bucket.keyValues, keyValues ) )
+				buckets.add( bucket );
+		}
+		return buckets;
+	}
+
+	/**
+	 * Return whether the matched rows of the key values can be looked up by
+	 * hash code, that is, every key value is of the kind of the key values in
+	 * the hash table.
+	 *
+	 * @param keyValues
+	 * @return
+	 */
+	private boolean isHashable( Object[] keyValues )
+	{
+		if ( keyKinds == null )
+			return true;
+		for ( int i = 0; i < keyValues.length; i++ )
+		{
+			int kind = JointDataSetUtil.getKeyKind( keyValues[i] );
+			if ( kind != JointDataSetUtil.KEY_KIND_NULL
+					&& keyKinds[i] != JointDataSetUtil.KEY_KIND_NULL
+					&& keyKinds[i] != kind )
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Return the next row of the build side which has not been matched by any
+	 * probe row. It should be called after all probe rows are processed.
+	 *
+	 * @return
+	 */
+	IResultObject getNextUnmatchedResultObject( )
+	{
+		if ( unmatchedBuckets == null )
+			unmatchedBuckets = table.values( ).iterator( );
+
+		while ( unmatchedBucket == null
+				|| unmatchedPosition >= unmatchedBucket.rows.size( ) )
+		{
+			if ( !unmatchedBuckets.hasNext( ) )
+				return null;
+			unmatchedBucket = unmatchedBuckets.next( );
+			unmatchedPosition = 0;
+			if ( unmatchedBucket.matched )
+				unmatchedBucket = null;
+		}
+		return unmatchedBucket.rows.get( unmatchedPosition++ );
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.birt.data.engine.impl.jointdataset.IMatchResultObjectSeeker#setResultIterator(org.eclipse.birt.data.engine.odi.IResultIterator)
+	 */
+	public void setResultIterator( IResultIterator ri ) throws DataException
+	{
+		while ( ri.getCurrentResult( ) != null )
+		{
+			add( matcher.getCompareValue( isBuildLeft ), ri.getCurrentResult( ) );
+			ri.next( );
+		}
+	}
+
+	/**
+	 * Move all rows of the hash table to the partitions on disk.
+	 *
+	 * @param partitions
+	 * @throws DataException
+	 * @throws IOException
+	 */
+	void spill( HashJoinPartitions partitions ) throws DataException,
+			IOException
+	{
+		Iterator<Bucket> it = table.values( ).iterator( );
+		while ( it.hasNext( ) )
+		{
+			Bucket bucket = it.next( );
+			for ( int i = 0; i < bucket.rows.size( ); i++ )
+			{
+				partitions.write( true, bucket.keyValues, bucket.rows.get( i ) );
+			}
+			it.remove( );
+		}
+		clear( );
+	}
+
+	/**
+	 * Release the rows of the hash table.
+	 */
+	void clear( )
+	{
+		table.clear( );
+		rowCount = 0;
+		keyKinds = null;
+		currentProbeIndex = -1;
+		currentBuckets = null;
+		unmatchedBuckets = null;
+		unmatchedBucket = null;
+	}
+
+	/**
+	 * The rows which share the same join key values.
+	 */
+	private static class Bucket
+	{
+		//
+		private Object[] keyValues;
+		private List<IResultObject> rows;
+		private boolean matched;
+
+		private Bucket( Object[] keyValues )
+		{
+			this.keyValues = keyValues;
+			this.rows = new ArrayList<IResultObject>( 1 );
+		}
+	}
+
+	/**
+	 * The key of hash table. Two keys are equal if all their values are of the
+	 * same kinds and equal as join condition values.
+	 */
+	private static class JoinKey
+	{
+		//
+		private Object[] values;
+		private int hash;
+
+		private JoinKey( Object[] values )
+		{
+			this.values = values;
+			this.hash = JointDataSetUtil.hashCode( values );
+		}
+
+		public int hashCode( )
+		{
+			return hash;
+		}
+
+		public boolean equals( Object obj )
+		{
+			if ( !( obj instanceof JoinKey ) )
+				return false;
+			JoinKey key = (JoinKey) obj;
+			if ( key.hash != hash || key.values.length != values.length )
+				return false;
+			try
+			{
+				for ( int i = 0; i < values.length; i++ )
+				{
+					if ( JointDataSetUtil.getKeyKind( values[i] ) != JointDataSetUtil.getKeyKind( key.values[i] )
+							|| JointDataSetUtil.compare( values[i], key.values[i] ) != 0 )
+						return false;
+				}
+			}
+			catch ( DataException e )
+			{
+				return false;
+			}
+			return true;
+		}
+	}
+}
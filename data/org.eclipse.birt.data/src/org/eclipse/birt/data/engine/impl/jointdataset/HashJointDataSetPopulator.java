@@ -0,0 +1,441 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2005 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.birt.data.engine.impl.jointdataset;
+
+import java.io.IOException;
+
+import org.eclipse.birt.data.engine.api.IJointDataSetDesign;
+import org.eclipse.birt.data.engine.core.DataException;
+import org.eclipse.birt.data.engine.executor.ResultObject;
+import org.eclipse.birt.data.engine.executor.cache.ResultSetCache;
+import org.eclipse.birt.data.engine.executor.cache.SizeOfUtil;
+import org.eclipse.birt.data.engine.i18n.ResourceConstants;
+import org.eclipse.birt.data.engine.impl.DataEngineSession;
+import org.eclipse.birt.data.engine.impl.jointdataset.HashJoinPartitions.PartitionReader;
+import org.eclipse.birt.data.engine.odi.IDataSetPopulator;
+import org.eclipse.birt.data.engine.odi.IResultIterator;
+import org.eclipse.birt.data.engine.odi.IResultObject;
+
+/**
+ * An implementation of IDataSetPopulator which joins two data sets by hash
+ * join, so neither data set needs to be sorted by the join keys. The smaller
+ * cached data set is the build side, whose rows are put in the hash table of a
+ * HashJoinResultObjectSeeker, and the rows of the other data set probe the
+ * table one by one. Inner, left outer, right outer and full outer joins are
+ * supported by returning the unmatched rows of the preserved sides.
+ *
+ * When the rows of the build side exceed the memory buffer size, both sides
+ * are partitioned to disk by the hash code of their join key values, and the
+ * partitions are then joined one by one.
+ *
+ * Join key values of different kinds, such as strings and numbers, can be
+ * equal without the same hash code. Such probe rows are compared with every
+ * row of the hash table, and such key values do not select the partitions.
+ */
+public class HashJointDataSetPopulator implements IDataSetPopulator
+{
+	// the maximum count of partitions on disk, which is also the maximum count
+	// of partition files open at a time
+	private static final int MAX_PARTITION_COUNT = 32;
+
+	//
+	private JointResultMetadata meta;
+	private IJoinConditionMatcher jcm;
+	private DataEngineSession session;
+
+	private IResultIterator buildIterator;
+	private IResultIterator probeIterator;
+	private boolean isBuildLeft;
+
+	// whether the unmatched rows of a side are returned
+	private boolean preserveBuild;
+	private boolean preserveProbe;
+
+	private HashJoinResultObjectSeeker seeker;
+	private long memoryBufferSize;
+
+	// the partitions on disk, null if the build side is hashed in memory
+	private HashJoinPartitions partitions;
+	private int currentPartition;
+	private PartitionReader probeReader;
+
+	private IResultObject currentProbe;
+	private Object[] currentProbeKeyValues;
+	private int currentProbeIndex;
+	private boolean currentProbeMatched;
+
+	private boolean beInitialized;
+	private boolean probeFinished;
+
+	private int rowFetchLimit;
+	private int rowCount;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param left
+	 * @param right
+	 * @param meta
+	 * @param jcm
+	 * @param joinType
+	 * @param session
+	 * @param rowFetchLimit
+	 * @param memoryBufferSize
+	 *            the memory in bytes which can be used by the hash table, 0
+	 *            means the hash table is never spilled to disk
+	 * @throws DataException
+	 */
+	public HashJointDataSetPopulator( IResultIterator left,
+			IResultIterator right, JointResultMetadata meta,
+			IJoinConditionMatcher jcm, int joinType,
+			DataEngineSession session, int rowFetchLimit, long memoryBufferSize )
+			throws DataException
+	{
+		this.meta = meta;
+		this.jcm = jcm;
+		this.session = session;
+		this.rowFetchLimit = rowFetchLimit;
+		this.memoryBufferSize = memoryBufferSize;
+
+		// the row count is only known for the cached data sets. A data set
+		// with unknown row count is probed, and the left data set is built
+		// if neither row count is known
+		int leftCount = getCachedRowCount( left );
+		int rightCount = getCachedRowCount( right );
+		this.isBuildLeft = leftCount < 0 ? rightCount < 0
+				: rightCount < 0 || leftCount <= rightCount;
+		if ( isBuildLeft )
+		{
+			this.buildIterator = left;
+			this.probeIterator = right;
+		}
+		else
+		{
+			this.buildIterator = right;
+			this.probeIterator = left;
+		}
+
+		boolean preserveLeft = joinType == IJointDataSetDesign.LEFT_OUTER_JOIN
+				|| joinType == IJointDataSetDesign.FULL_OUTER_JOIN;
+		boolean preserveRight = joinType == IJointDataSetDesign.RIGHT_OUTER_JOIN
+				|| joinType == IJointDataSetDesign.FULL_OUTER_JOIN;
+		this.preserveBuild = isBuildLeft ? preserveLeft : preserveRight;
+		this.preserveProbe = isBuildLeft ? preserveRight : preserveLeft;
+
+		this.seeker = new HashJoinResultObjectSeeker( jcm, isBuildLeft );
+		this.currentProbeIndex = -1;
+		this.currentPartition = -1;
+		this.beInitialized = false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.birt.data.engine.odi.IDataSetPopulator#next()
+	 */
+	public IResultObject next( ) throws DataException
+	{
+		if ( this.rowFetchLimit > 0 && this.rowCount >= this.rowFetchLimit )
+		{
+			close( );
+			return null;
+		}
+		if ( !beInitialized )
+		{
+			initialize( );
+			beInitialized = true;
+		}
+
+		IResultObject result = doNext( );
+		if ( result != null )
+			this.rowCount++;
+		else
+			close( );
+		return result;
+	}
+
+	/**
+	 * Hash the rows of the build side. The rows of both sides are partitioned
+	 * to disk if the hash table exceeds the memory buffer size.
+	 *
+	 * @throws DataException
+	 */
+	private void initialize( ) throws DataException
+	{
+		SizeOfUtil sizeOfUtil = new SizeOfUtil( buildIterator.getResultClass( ) );
+		long usedMemorySize = 0;
+		try
+		{
+			while ( buildIterator.getCurrentResult( ) != null )
+			{
+				IResultObject row = buildIterator.getCurrentResult( );
+				Object[] keyValues = jcm.getCompareValue( isBuildLeft );
+				if ( partitions != null )
+				{
+					partitions.write( true, keyValues, row );
+				}
+				else
+				{
+					seeker.add( keyValues, row );
+					if ( memoryBufferSize > 0 )
+					{
+						usedMemorySize += sizeOfUtil.sizeOf( row );
+						if ( usedMemorySize > memoryBufferSize )
+							spill( usedMemorySize, keyValues.length );
+					}
+				}
+				buildIterator.next( );
+			}
+
+			if ( partitions != null )
+			{
+				partitions.endWrite( true );
+				while ( probeIterator.getCurrentResult( ) != null )
+				{
+					partitions.write( false,
+							jcm.getCompareValue( !isBuildLeft ),
+							probeIterator.getCurrentResult( ) );
+					probeIterator.next( );
+				}
+				partitions.endWrite( false );
+				if ( !partitions.isConsistent( ) )
+					partitions = partitions.repartition( );
+				probeFinished = !nextPartition( );
+			}
+		}
+		catch ( IOException e )
+		{
+			throw new DataException( ResourceConstants.WRITE_TEMPFILE_ERROR, e );
+		}
+	}
+
+	/**
+	 * Return the row count of a data set from its cache.
+	 *
+	 * @param iterator
+	 * @return the row count, or -1 if the data set is not cached
+	 * @throws DataException
+	 */
+	private static int getCachedRowCount( IResultIterator iterator )
+			throws DataException
+	{
+		ResultSetCache cache = iterator.getResultSetCache( );
+		return cache == null ? -1 : cache.getCount( );
+	}
+
+	/**
+	 * Move the hash table to disk. The count of partitions is estimated by
+	 * the size of the whole build side, so that the rows of a partition can be
+	 * hashed in memory. The maximum count of partitions is used if the size of
+	 * the build side is unknown.
+	 *
+	 * @param usedMemorySize
+	 * @param keyCount
+	 * @throws DataException
+	 * @throws IOException
+	 */
+	private void spill( long usedMemorySize, int keyCount )
+			throws DataException, IOException
+	{
+		int partitionCount = MAX_PARTITION_COUNT;
+		int buildCount = getCachedRowCount( buildIterator );
+		if ( buildCount >= 0 )
+		{
+			long averageRowSize = usedMemorySize / seeker.getRowCount( ) + 1;
+			long totalSize = averageRowSize * buildCount;
+			partitionCount = (int) Math.min( MAX_PARTITION_COUNT,
+					Math.max( 2, totalSize / memoryBufferSize + 1 ) );
+		}
+		partitions = new HashJoinPartitions( session,
+				partitionCount,
+				keyCount,
+				buildIterator.getResultClass( ),
+				probeIterator.getResultClass( ) );
+		seeker.spill( partitions );
+	}
+
+	/**
+	 * Load the build side of the next partition into the hash table and open
+	 * the probe side of it.
+	 *
+	 * @return false if there is no more partition
+	 * @throws DataException
+	 */
+	private boolean nextPartition( ) throws DataException
+	{
+		if ( probeReader != null )
+		{
+			probeReader.close( );
+			probeReader = null;
+		}
+		if ( currentPartition >= 0 )
+			partitions.delete( currentPartition );
+		seeker.clear( );
+
+		while ( ++currentPartition < partitions.getPartitionCount( ) )
+		{
+			// a partition without probe rows only matters when its build rows
+			// are preserved
+			if ( partitions.getRowCount( true, currentPartition ) == 0
+					&& !preserveProbe
+					|| partitions.getRowCount( false, currentPartition ) == 0
+					&& !preserveBuild )
+			{
+				partitions.delete( currentPartition );
+				continue;
+			}
+
+			PartitionReader buildReader = partitions.open( true,
+					currentPartition );
+			try
+			{
+				while ( buildReader.next( ) )
+				{
+					seeker.add( buildReader.getKeyValues( ), buildReader.getRow( ) );
+				}
+			}
+			finally
+			{
+				buildReader.close( );
+			}
+			probeReader = partitions.open( false, currentPartition );
+			probeFinished = false;
+			return true;
+		}
+		probeFinished = true;
+		return false;
+	}
+
+	/**
+	 *
+	 * @return
+	 * @throws DataException
+	 */
+	private IResultObject doNext( ) throws DataException
+	{
+		while ( true )
+		{
+			while ( !probeFinished )
+			{
+				if ( currentProbe != null )
+				{
+					IResultObject matched = seeker.getNextMatchedResultObject( currentProbeKeyValues,
+							currentProbeIndex );
+					if ( matched != null )
+					{
+						currentProbeMatched = true;
+						return createResultObject( currentProbe, matched );
+					}
+					IResultObject probe = currentProbe;
+					currentProbe = null;
+					if ( !currentProbeMatched && preserveProbe )
+						return createResultObject( probe, null );
+				}
+				fetchProbeObject( );
+			}
+
+			if ( preserveBuild )
+			{
+				IResultObject unmatched = seeker.getNextUnmatchedResultObject( );
+				if ( unmatched != null )
+					return createResultObject( null, unmatched );
+			}
+
+			if ( partitions == null || !nextPartition( ) )
+				return null;
+		}
+	}
+
+	/**
+	 * Fetch the next row of the probe side, from the partition on disk or
+	 * from the probe iterator.
+	 *
+	 * @throws DataException
+	 */
+	private void fetchProbeObject( ) throws DataException
+	{
+		currentProbeIndex++;
+		currentProbeMatched = false;
+		if ( partitions != null )
+		{
+			if ( probeReader.next( ) )
+			{
+				currentProbe = probeReader.getRow( );
+				currentProbeKeyValues = probeReader.getKeyValues( );
+			}
+			else
+			{
+				probeFinished = true;
+			}
+		}
+		else
+		{
+			if ( probeIterator.getCurrentResult( ) != null )
+			{
+				currentProbe = probeIterator.getCurrentResult( );
+				currentProbeKeyValues = jcm.getCompareValue( !isBuildLeft );
+				probeIterator.next( );
+			}
+			else
+			{
+				probeFinished = true;
+			}
+		}
+	}
+
+	/**
+	 * Release the hash table and the partitions on disk.
+	 */
+	private void close( )
+	{
+		seeker.clear( );
+		if ( probeReader != null )
+		{
+			probeReader.close( );
+			probeReader = null;
+		}
+		if ( partitions != null )
+		{
+			partitions.close( );
+			partitions = null;
+		}
+	}
+
+	/**
+	 * Create an instance of IResultObject.
+	 *
+	 * @param probe
+	 * @param build
+	 * @return
+	 * @throws DataException
+	 */
+	private IResultObject createResultObject( IResultObject probe,
+			IResultObject build ) throws DataException
+	{
+		Object[] fields = new Object[meta.getResultClass( ).getFieldCount( )];
+		for ( int i = 1; i <= fields.length; i++ )
+		{
+			IResultObject ri = null;
+
+			if ( meta.getColumnSource( i ) == JointResultMetadata.COLUMN_TYPE_LEFT )
+			{
+				ri = isBuildLeft ? build : probe;
+			}
+			else if ( meta.getColumnSource( i ) == JointResultMetadata.COLUMN_TYPE_RIGHT )
+			{
+				ri = isBuildLeft ? probe : build;
+			}
+
+			fields[i - 1] = ri == null ? null
+					: ri.getFieldValue( meta.getSourceIndex( i ) );
+		}
+		return new ResultObject( meta.getResultClass( ), fields );
+	}
+}
@@ -54,4 +54,24 @@ public class JointDataSetPopulatorFactory
 	{
 		return new BaseJointDataSetPopulator( left, right, meta, jcm , joinType, null, session, rowFetchLimit );
 	}
+	
+	/**
+	 * Return instance of IJointDataSetPopulator which is used for hash join.
+	 * The data sets need not be sorted by the join keys.
+	 * 
+	 * @param left
+	 * @param right
+	 * @param meta
+	 * @param jcm
+	 * @param joinType
+	 * @param session
+	 * @param rowFetchLimit
+	 * @param memoryBufferSize
+	 * @return
+	 * @throws DataException
+	 */
+	public static IDataSetPopulator getHashJoinDataSetPopulator( IResultIterator left, IResultIterator right, JointResultMetadata meta, IJoinConditionMatcher jcm , int joinType, DataEngineSession session, int rowFetchLimit, long memoryBufferSize ) throws DataException
+	{
+		return new HashJointDataSetPopulator( left, right, meta, jcm , joinType, session, rowFetchLimit, memoryBufferSize );
+	}
 }
@@ -10,6 +10,10 @@
  *******************************************************************************/
 package org.eclipse.birt.data.engine.impl.jointdataset;
 
+import java.util.Date;
+import java.util.Map;
+
+import org.eclipse.birt.data.engine.api.DataEngine;
 import org.eclipse.birt.data.engine.core.DataException;
 import org.eclipse.birt.data.engine.script.ScriptEvalUtil;
 
@@ -55,4 +59,135 @@ public class JointDataSetUtil
 		return 0;
 		
 	}
+	
+	/**
+	 * Return whether the rows of joint data sets should be matched by hash
+	 * join.
+	 * 
+	 * @param appContext
+	 * @return
+	 */
+	public static boolean isHashJoin( Map appContext )
+	{
+		if ( appContext == null )
+			return false;
+		Object hashJoin = appContext.get( DataEngine.JOINT_DATA_SET_HASH_JOIN );
+		return hashJoin != null
+				&& Boolean.valueOf( hashJoin.toString( ).trim( ) ).booleanValue( );
+	}
+	
+	// the kinds of join key values, see getKeyKind(Object)
+	static final int KEY_KIND_MIXED = -1;
+	static final int KEY_KIND_NULL = 0;
+	static final int KEY_KIND_NUMBER = 1;
+	static final int KEY_KIND_DATE = 2;
+	static final int KEY_KIND_STRING = 3;
+	static final int KEY_KIND_BOOLEAN = 4;
+	static final int KEY_KIND_OTHER = 5;
+	
+	/**
+	 * Return the kind of a join key value. compare(Object, Object) converts
+	 * values of different kinds to each other, for example "1" equals 1, so
+	 * the hash code of a value is only consistent with compare(Object, Object)
+	 * against the values of the same kind.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	static int getKeyKind( Object value )
+	{
+		if ( value == null )
+			return KEY_KIND_NULL;
+		if ( value instanceof Number )
+			return KEY_KIND_NUMBER;
+		if ( value instanceof Date )
+			return KEY_KIND_DATE;
+		if ( value instanceof String )
+			return KEY_KIND_STRING;
+		if ( value instanceof Boolean )
+			return KEY_KIND_BOOLEAN;
+		return KEY_KIND_OTHER;
+	}
+	
+	/**
+	 * Merge the kind of a value into the kind of a join key.
+	 * 
+	 * @param kind
+	 *            the kind of the values seen so far
+	 * @param valueKind
+	 * @return KEY_KIND_MIXED if the values are of different kinds
+	 */
+	static int mergeKeyKind( int kind, int valueKind )
+	{
+		if ( valueKind == KEY_KIND_NULL || kind == valueKind )
+			return kind;
+		if ( kind == KEY_KIND_NULL )
+			return valueKind;
+		return KEY_KIND_MIXED;
+	}
+	
+	/**
+	 * The utility method which is used to compute the hash code of join key
+	 * values. Values of the same kind which are equal by compare(Object,
+	 * Object) have the same hash code, so numbers are hashed by their double
+	 * values and dates by their milliseconds. Values of different kinds may
+	 * be equal without the same hash code, see getKeyKind(Object).
+	 * 
+	 * @param values
+	 * @return
+	 */
+	static int hashCode( Object[] values )
+	{
+		int hash = 1;
+		for ( int i = 0; i < values.length; i++ )
+		{
+			hash = 31 * hash + hashCode( values[i] );
+		}
+		return hash;
+	}
+	
+	/**
+	 * 
+	 * @param value
+	 * @return
+	 */
+	static int hashCode( Object value )
+	{
+		switch ( getKeyKind( value ) )
+		{
+			case KEY_KIND_NUMBER :
+				double d = ( (Number) value ).doubleValue( );
+				if ( d == 0 )
+					return 0;
+				long bits = Double.doubleToLongBits( d );
+				return (int) ( bits ^ ( bits >>> 32 ) );
+			case KEY_KIND_DATE :
+				long time = ( (Date) value ).getTime( );
+				return (int) ( time ^ ( time >>> 32 ) );
+			case KEY_KIND_STRING :
+			case KEY_KIND_BOOLEAN :
+				return value.hashCode( );
+			default :
+				// other values may be compared as strings
+				return 0;
+		}
+	}
+	
+	/**
+	 * Return whether two join key values are equal as join condition values.
+	 * 
+	 * @param left
+	 * @param right
+	 * @return
+	 * @throws DataException
+	 */
+	static boolean matches( Object[] left, Object[] right ) throws DataException
+	{
+		for ( int i = 0; i < left.length; i++ )
+		{
+			if ( compare( left[i], right[i] ) != 0 )
+				return false;
+		}
+		return true;
+	}
 }
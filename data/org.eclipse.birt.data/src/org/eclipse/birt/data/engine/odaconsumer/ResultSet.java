@@ -40,6 +40,13 @@ public class ResultSet extends ExceptionHandler
 	private IResultSet m_resultSet;
 	private IResultClass m_resultClass;		// cached result class
 
+	// the number of batches buffered by the prefetch thread
+	private static final int PREFETCH_BUFFER_SIZE = 4;
+
+	// fetches the rows in a background thread; null if the rows are fetched
+	// by the caller
+	private ResultSetPrefetcher m_prefetcher;
+
 	// trace logging variables
 	private static String sm_className = ResultSet.class.getName();
 		
@@ -119,6 +126,38 @@ public class ResultSet extends ExceptionHandler
 		}
 	}
 	
+	/**
+	 * Starts to fetch the rows in a background thread, which fetches the
+	 * rows in batches ahead of the calls of <code>fetch()</code>. The rows
+	 * are not prefetched if the result set has LOB columns, whose values
+	 * may not be read after the cursor moves on.
+	 * @param batchSize	the number of rows in a batch.
+	 * @return	whether the rows are prefetched.
+	 */
+	public boolean startPrefetch( int batchSize )
+	{
+		if ( m_resultSet == null || m_prefetcher != null || batchSize <= 0 )
+			return false;
+		try
+		{
+			for ( int i = 1; i <= m_resultClass.getFieldCount( ); i++ )
+			{
+				Class dataType = m_resultClass.getFieldValueClass( i );
+				if ( dataType == IBlob.class || dataType == IClob.class )
+					return false;
+			}
+		}
+		catch ( DataException e )
+		{
+			return false;
+		}
+		m_prefetcher = new ResultSetPrefetcher( this,
+				batchSize,
+				PREFETCH_BUFFER_SIZE );
+		m_prefetcher.start( );
+		return true;
+	}
+
 	/**
 	 * Returns the IResultObject representing the next row in the result set.
 	 * @return 	the IResultObject representing the next row; null if there are 
@@ -126,6 +165,18 @@ public class ResultSet extends ExceptionHandler
 	 * @throws DataException	if data source error occurs.
 	 */
 	public IResultObject fetch( ) throws DataException
+	{
+		if ( m_prefetcher != null )
+			return m_prefetcher.next( );
+		return doFetch( );
+	}
+
+	/**
+	 * Fetches the next row from the underlying result set.
+	 * @return	the next row; null if there are no more rows.
+	 * @throws DataException	if data source error occurs.
+	 */
+	IResultObject doFetch( ) throws DataException
 	{
 		if ( m_resultSet == null )
 			return null;
@@ -463,6 +514,9 @@ public class ResultSet extends ExceptionHandler
 	public int getRowPosition( ) throws DataException
 	{
 	    final String methodName = "getRowPosition"; //$NON-NLS-1$
+	    // the underlying result set is ahead of the rows returned
+	    if ( m_prefetcher != null )
+	        return m_prefetcher.getRowPosition( );
 		try
 		{
 			return m_resultSet.getRow( );
@@ -488,6 +542,12 @@ public class ResultSet extends ExceptionHandler
 	    final String methodName = "close"; //$NON-NLS-1$
 	    getLogger().entering( sm_className, methodName );
 	    
+	    if ( m_prefetcher != null )
+	    {
+	        m_prefetcher.stop( );
+	        m_prefetcher = null;
+	    }
+
 		try
 		{
 			m_resultSet.close( );
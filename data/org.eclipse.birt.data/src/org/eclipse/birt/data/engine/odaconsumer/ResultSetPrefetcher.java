@@ -0,0 +1,228 @@
+/*
+ *****************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation - initial API and implementation
+ *
+ ******************************************************************************
+ */
+
+package org.eclipse.birt.data.engine.odaconsumer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.birt.data.engine.core.DataException;
+import org.eclipse.birt.data.engine.i18n.ResourceConstants;
+import org.eclipse.birt.data.engine.odi.IResultObject;
+
+/**
+ * <code>ResultSetPrefetcher</code> fetches the rows of a result set in a
+ * background thread, so that the rows are fetched from the data source while
+ * the fetched rows are processed. The rows are passed in batches through a
+ * bounded buffer, and the background thread waits when the buffer is full.
+ * An exception or error thrown by the fetching is passed through the buffer
+ * too, and is rethrown to the caller in order.
+ */
+class ResultSetPrefetcher implements Runnable
+{
+	// the marker of the end of rows
+	private static final Object END = new Object( );
+
+	// the milliseconds to wait before checking whether it is stopped
+	private static final long POLL_INTERVAL = 100;
+
+	private ResultSet m_resultSet;
+	private int m_batchSize;
+	private BlockingQueue<Object> m_buffer;
+	private Thread m_thread;
+	private volatile boolean m_stopped;
+
+	// the batch being consumed
+	private IResultObject[] m_currentBatch;
+	private int m_currentIndex;
+	private boolean m_finished;
+	private int m_rowPosition;
+
+	/**
+	 * @param resultSet
+	 * @param batchSize
+	 *            the count of rows in a batch
+	 * @param bufferSize
+	 *            the max count of batches in the buffer
+	 */
+	ResultSetPrefetcher( ResultSet resultSet, int batchSize, int bufferSize )
+	{
+		m_resultSet = resultSet;
+		m_batchSize = Math.max( 1, batchSize );
+		m_buffer = new ArrayBlockingQueue<Object>( Math.max( 1, bufferSize ) );
+	}
+
+	/**
+	 * Start the background thread.
+	 */
+	void start( )
+	{
+		m_thread = new Thread( this, "BIRT ODA Result Set Prefetch" ); //$NON-NLS-1$
+		m_thread.setDaemon( true );
+		m_thread.setContextClassLoader( Thread.currentThread( )
+				.getContextClassLoader( ) );
+		m_thread.start( );
+	}
+
+	/*
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run( )
+	{
+		try
+		{
+			while ( !m_stopped )
+			{
+				IResultObject[] batch = new IResultObject[m_batchSize];
+				int count = 0;
+				while ( count < m_batchSize )
+				{
+					IResultObject row = m_resultSet.doFetch( );
+					if ( row == null )
+						break;
+					batch[count++] = row;
+				}
+				if ( count > 0 )
+				{
+					if ( count < m_batchSize )
+					{
+						IResultObject[] lastBatch = new IResultObject[count];
+						System.arraycopy( batch, 0, lastBatch, 0, count );
+						batch = lastBatch;
+					}
+					put( batch );
+				}
+				if ( count < m_batchSize )
+				{
+					put( END );
+					return;
+				}
+			}
+		}
+		catch ( DataException e )
+		{
+			put( e );
+		}
+		catch ( RuntimeException e )
+		{
+			put( e );
+		}
+		catch ( Error e )
+		{
+			// otherwise the caller would wait for the next batch forever
+			put( e );
+		}
+	}
+
+	/**
+	 * Put an item into the buffer, unless it is stopped.
+	 *
+	 * @param item
+	 */
+	private void put( Object item )
+	{
+		try
+		{
+			while ( !m_stopped
+					&& !m_buffer.offer( item,
+							POLL_INTERVAL,
+							TimeUnit.MILLISECONDS ) )
+				;
+		}
+		catch ( InterruptedException e )
+		{
+			m_stopped = true;
+		}
+	}
+
+	/**
+	 * Returns the next row fetched by the background thread.
+	 *
+	 * @return null if there are no more rows
+	 * @throws DataException
+	 */
+	IResultObject next( ) throws DataException
+	{
+		while ( m_currentBatch == null
+				|| m_currentIndex >= m_currentBatch.length )
+		{
+			if ( m_finished )
+				return null;
+			Object item;
+			try
+			{
+				item = m_buffer.take( );
+			}
+			catch ( InterruptedException e )
+			{
+				Thread.currentThread( ).interrupt( );
+				throw new DataException( ResourceConstants.CANNOT_FETCH_NEXT_ROW,
+						e );
+			}
+			if ( item == END )
+			{
+				m_finished = true;
+				return null;
+			}
+			if ( item instanceof DataException )
+			{
+				m_finished = true;
+				throw (DataException) item;
+			}
+			if ( item instanceof RuntimeException )
+			{
+				m_finished = true;
+				throw (RuntimeException) item;
+			}
+			if ( item instanceof Error )
+			{
+				m_finished = true;
+				throw (Error) item;
+			}
+			m_currentBatch = (IResultObject[]) item;
+			m_currentIndex = 0;
+		}
+		m_rowPosition++;
+		return m_currentBatch[m_currentIndex++];
+	}
+
+	/**
+	 * @return the 1-based index of the last row returned by next()
+	 */
+	int getRowPosition( )
+	{
+		return m_rowPosition;
+	}
+
+	/**
+	 * Stop the background thread and wait for it to end, so that the result
+	 * set is not accessed by it any more.
+	 */
+	void stop( )
+	{
+		m_stopped = true;
+		m_buffer.clear( );
+		if ( m_thread == null || m_thread == Thread.currentThread( ) )
+			return;
+		try
+		{
+			m_thread.join( );
+		}
+		catch ( InterruptedException e )
+		{
+			Thread.currentThread( ).interrupt( );
+		}
+	}
+}
@@ -48,11 +48,14 @@ import org.eclipse.birt.data.engine.olap.data.impl.AggregationFunctionDefinition
 import org.eclipse.birt.data.engine.olap.data.impl.AggregationResultSetSaveUtil;
 import org.eclipse.birt.data.engine.olap.data.impl.Cube;
 import org.eclipse.birt.data.engine.olap.data.impl.SecuredCube;
+import org.eclipse.birt.data.engine.olap.data.impl.aggregation.AggregateTable;
 import org.eclipse.birt.data.engine.olap.data.impl.aggregation.AggregationExecutor;
 import org.eclipse.birt.data.engine.olap.data.impl.aggregation.AggregationResultRow;
+import org.eclipse.birt.data.engine.olap.data.impl.aggregation.AggregationResultRowArray;
 import org.eclipse.birt.data.engine.olap.data.impl.aggregation.AggregationResultRowComparator;
 import org.eclipse.birt.data.engine.olap.data.impl.aggregation.AggregationResultSet;
 import org.eclipse.birt.data.engine.olap.data.impl.aggregation.CubeDimensionReader;
+import org.eclipse.birt.data.engine.olap.data.impl.aggregation.CubeQueryResultCache;
 import org.eclipse.birt.data.engine.olap.data.impl.aggregation.DataSetFromOriginalCube;
 import org.eclipse.birt.data.engine.olap.data.impl.aggregation.IDataSet4Aggregation;
 import org.eclipse.birt.data.engine.olap.data.impl.aggregation.filter.AggrMeasureFilterHelper;
@@ -623,6 +626,9 @@ public class CubeQueryExecutorHelper implements ICubeQueryExcutorHelper
 	{
 		IDiskArray sourceRows = ((AggregationResultSet)source).getAggregationResultRows();
 		AggregationResultRowComparator comparator = new AggregationResultRowComparator(getKeyLevelIndexs(source.getAggregationDefinition().getLevels(),source),source.getSortType());
+		// the rows are created again when they are read from the array, so
+		// the merged rows are saved in a new array
+		IDiskArray mergedRows = new AggregationResultRowArray( );
 		for( int i = 0 ; i< source.length(); i++)
 		{
 			IAggregationResultRow row = (IAggregationResultRow)sourceRows.get(i);
@@ -648,8 +654,10 @@ public class CubeQueryExecutorHelper implements ICubeQueryExcutorHelper
 				if(!find)
 					row.getAggregationValues()[j] = null;
 			}
-			
+			mergedRows.add( row );
 		}
+		sourceRows.close( );
+		((AggregationResultSet)source).setAggregationResultRows( mergedRows );
 	}
 	
 	/**
@@ -937,6 +945,110 @@ public class CubeQueryExecutorHelper implements ICubeQueryExcutorHelper
 	{
 		IDiskArray[] dimPosition = getFilterResult( );
 
+		long memoryCacheSize = this.memoryCacheSize;
+		if( this.appContext != null )
+		{
+			boolean use11SP3CubeQuery = CacheUtil.enableSP3CubeQueryChange( this.appContext );
+			if( use11SP3CubeQuery )
+				memoryCacheSize = -(memoryCacheSize);
+		}
+		
+		long resultCacheSize = CacheUtil.getCubeQueryResultCacheSize( this.appContext );
+		String resultCacheKey = null;
+		if ( resultCacheSize > 0 && isResultCacheable( ) )
+		{
+			resultCacheKey = CubeQueryResultCache.getKey( cube,
+					dimPosition,
+					maxDataObjectRows );
+		}
+		IAggregationResultSet[] result = executeAggregations( aggregations,
+				dimPosition,
+				resultCacheKey,
+				memoryCacheSize,
+				stopSign );
+		if ( resultCacheKey != null && !stopSign.isStopped( ) )
+		{
+			CubeQueryResultCache.getInstance( ).put( resultCacheKey,
+					aggregations,
+					result,
+					resultCacheSize );
+		}
+		return result;
+	}
+
+	/**
+	 * The results of the query are cached if the fact rows are neither
+	 * filtered nor computed by script, which are not identified by the key of
+	 * the cache.
+	 * 
+	 * @return
+	 */
+	private boolean isResultCacheable( )
+	{
+		return !( cube instanceof SecuredCube )
+				&& computedMeasureHelper == null && measureFilters.isEmpty( )
+				&& ( cubePosFilters == null || cubePosFilters.isEmpty( ) );
+	}
+
+	/**
+	 * 
+	 * @param aggregations
+	 * @param dimPosition
+	 * @param resultCacheKey
+	 *            the key of the cached results, null if the results are not
+	 *            cached
+	 * @param memoryCacheSize
+	 * @param stopSign
+	 * @return
+	 * @throws DataException
+	 * @throws IOException
+	 * @throws BirtException
+	 */
+	private IAggregationResultSet[] executeAggregations(
+			AggregationDefinition[] aggregations, IDiskArray[] dimPosition,
+			String resultCacheKey, long memoryCacheSize, StopSign stopSign )
+			throws DataException, IOException, BirtException
+	{
+		if ( resultCacheKey != null )
+		{
+			CubeQueryResultCache resultCache = CubeQueryResultCache.getInstance( );
+			IAggregationResultSet[] cached = resultCache.get( resultCacheKey,
+					aggregations );
+			if ( cached != null )
+			{
+				return cached;
+			}
+			IAggregationResultSet base = resultCache.getRollupBase( resultCacheKey,
+					aggregations,
+					cube.getDimesions( ) );
+			if ( base != null )
+			{
+				AggregationExecutor aggregationExecutor = new AggregationExecutor( new CubeDimensionReader( cube ),
+						CubeQueryResultCache.createDataSet( base,
+								populateDimensionResultIterator( dimPosition,
+										stopSign ) ),
+						CubeQueryResultCache.rewrite( aggregations ),
+						memoryCacheSize );
+				aggregationExecutor.setMaxDataObjectRows( maxDataObjectRows );
+				return aggregationExecutor.execute( stopSign );
+			}
+		}
+
+		AggregateTable aggregateTable = findAggregateTable( aggregations,
+				dimPosition,
+				memoryCacheSize,
+				stopSign );
+		if ( aggregateTable != null )
+		{
+			AggregationExecutor aggregationExecutor = new AggregationExecutor( new CubeDimensionReader( cube ),
+					aggregateTable.createDataSet( populateDimensionResultIterator( dimPosition,
+							stopSign ) ),
+					AggregateTable.rewrite( aggregations ),
+					memoryCacheSize );
+			aggregationExecutor.setMaxDataObjectRows( maxDataObjectRows );
+			return aggregationExecutor.execute( stopSign );
+		}
+
 		FactTableRowIterator factTableRowIterator = populateFactTableIterator( stopSign,
 				dimPosition );
 		DimensionResultIterator[] dimensionResultIterators = populateDimensionResultIterator( dimPosition, stopSign );
@@ -945,13 +1057,6 @@ public class CubeQueryExecutorHelper implements ICubeQueryExcutorHelper
 				dimensionResultIterators,
 				computedMeasureHelper );
 		
-		long memoryCacheSize = this.memoryCacheSize;
-		if( this.appContext != null )
-		{
-			boolean use11SP3CubeQuery = CacheUtil.enableSP3CubeQueryChange( this.appContext );
-			if( use11SP3CubeQuery )
-				memoryCacheSize = -(memoryCacheSize);
-		}
 		AggregationExecutor aggregationCalculatorExecutor = new AggregationExecutor( new CubeDimensionReader( cube ),
 				dataSet4Aggregation,
 				aggregations,
@@ -959,9 +1064,86 @@ public class CubeQueryExecutorHelper implements ICubeQueryExcutorHelper
 		
 		aggregationCalculatorExecutor.setMaxDataObjectRows( maxDataObjectRows );
 		
+		int parallelism = CacheUtil.getCubeAggregationParallelism( this.appContext );
+		if ( parallelism > 1
+				&& computedMeasureHelper == null && measureFilters.isEmpty( )
+				&& aggregationCalculatorExecutor.isParallelScanSupported( ) )
+		{
+			// the computed measures and the measure filters are evaluated by
+			// script, so they are only evaluated in the thread of the query
+			IDataSet4Aggregation[] partitionDataSets = new IDataSet4Aggregation[parallelism];
+			for ( int i = 0; i < parallelism; i++ )
+			{
+				partitionDataSets[i] = new DataSetFromOriginalCube( populateFactTableIterator( stopSign,
+						dimPosition,
+						i,
+						parallelism ),
+						populateDimensionResultIterator( dimPosition, stopSign ),
+						null );
+			}
+			aggregationCalculatorExecutor.setPartitionDataSets( partitionDataSets );
+		}
+		
 		return aggregationCalculatorExecutor.execute( stopSign );
 	}
 
+	/**
+	 * Find the materialized aggregate of the cube which the aggregations can
+	 * be rolled up from. If there is no such aggregate, the query is recorded,
+	 * and an aggregate may be created for it when the aggregates are learned
+	 * from the queries. The aggregates are not used if the fact rows are
+	 * filtered or the measures are computed by script.
+	 * 
+	 * @param aggregations
+	 * @param dimPosition
+	 * @param memoryCacheSize
+	 * @param stopSign
+	 * @return the aggregate, or null if the fact table should be scanned
+	 * @throws IOException
+	 * @throws BirtException
+	 */
+	private AggregateTable findAggregateTable(
+			AggregationDefinition[] aggregations, IDiskArray[] dimPosition,
+			long memoryCacheSize, StopSign stopSign ) throws IOException,
+			BirtException
+	{
+		if ( cube instanceof SecuredCube
+				|| computedMeasureHelper != null || !measureFilters.isEmpty( )
+				|| ( cubePosFilters != null && !cubePosFilters.isEmpty( ) )
+				|| !AggregateTable.isDerivable( aggregations ) )
+		{
+			return null;
+		}
+		for ( int i = 0; i < dimPosition.length; i++ )
+		{
+			if ( dimPosition[i] != null )
+			{
+				return null;
+			}
+		}
+		AggregateTable aggregateTable = AggregateTable.select( cube.getAggregateTables( ),
+				aggregations );
+		if ( aggregateTable == null )
+		{
+			int threshold = CacheUtil.getCubeAggregateLearningThreshold( this.appContext );
+			if ( threshold > 0 )
+			{
+				AggregateTable learned = AggregateTable.learn( cube,
+						aggregations,
+						threshold,
+						memoryCacheSize,
+						stopSign );
+				if ( learned != null )
+				{
+					cube.addAggregateTable( learned );
+					aggregateTable = AggregateTable.select( cube.getAggregateTables( ),
+							aggregations );
+				}
+			}
+		}
+		return aggregateTable;
+	}
+
 	/**
 	 * 
 	 * @param stopSign
@@ -972,6 +1154,22 @@ public class CubeQueryExecutorHelper implements ICubeQueryExcutorHelper
 	 */
 	public FactTableRowIterator populateFactTableIterator( StopSign stopSign, IDiskArray[] dimPosition )
 			throws IOException
+	{
+		return populateFactTableIterator( stopSign, dimPosition, 0, 1 );
+	}
+
+	/**
+	 * 
+	 * @param stopSign
+	 * @param dimPosition
+	 * @param partitionIndex
+	 * @param partitionCount
+	 * @return the iterator on one partition of the fact table segments
+	 * @throws IOException
+	 */
+	private FactTableRowIterator populateFactTableIterator( StopSign stopSign,
+			IDiskArray[] dimPosition, int partitionIndex, int partitionCount )
+			throws IOException
 	{
 		int count = 0;
 		for ( int i = 0; i < dimPosition.length; i++ )
@@ -1000,7 +1198,9 @@ public class CubeQueryExecutorHelper implements ICubeQueryExcutorHelper
 				validDimPosition,
 				cube.getDimesions( ),
 				null,
-				stopSign );
+				stopSign,
+				partitionIndex,
+				partitionCount );
 		if ( cubePosFilters != null && !cubePosFilters.isEmpty( ) )
 		{// add fact table filter if it's necessary
 			for ( Iterator itr = cubePosFilters.iterator( ); itr.hasNext( ); )
@@ -13,6 +13,7 @@ package org.eclipse.birt.data.engine.olap.data.api.cube;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 
 import org.eclipse.birt.core.archive.IDocArchiveWriter;
@@ -24,12 +25,15 @@ import org.eclipse.birt.data.engine.core.DataException;
 import org.eclipse.birt.data.engine.i18n.ResourceConstants;
 import org.eclipse.birt.data.engine.impl.DataEngineImpl;
 import org.eclipse.birt.data.engine.impl.StopSign;
+import org.eclipse.birt.data.engine.olap.data.api.DimLevel;
 import org.eclipse.birt.data.engine.olap.data.api.ILevel;
 import org.eclipse.birt.data.engine.olap.data.document.DocumentManagerFactory;
 import org.eclipse.birt.data.engine.olap.data.document.IDocumentManager;
 import org.eclipse.birt.data.engine.olap.data.document.IDocumentObject;
 import org.eclipse.birt.data.engine.olap.data.impl.Cube;
 import org.eclipse.birt.data.engine.olap.data.impl.NamingUtil;
+import org.eclipse.birt.data.engine.olap.data.impl.aggregation.AggregateTable;
+import org.eclipse.birt.data.engine.olap.data.impl.aggregation.CubeQueryResultCache;
 import org.eclipse.birt.data.engine.olap.data.impl.dimension.Dimension;
 import org.eclipse.birt.data.engine.olap.data.impl.dimension.Hierarchy;
 
@@ -41,6 +45,7 @@ public class CubeMaterializer
 {
 	private IDocumentManager documentManager;
 	private DataEngine dataEngine;
+	private int dimensionBuildParallelism = 1;
 	
 	/**
 	 * 
@@ -107,6 +112,17 @@ public class CubeMaterializer
 		return documentManager;
 	}
 	
+	/**
+	 * Set how many threads can be used to sort the members of the levels of
+	 * the hierarchies created by this materializer.
+	 * 
+	 * @param dimensionBuildParallelism
+	 */
+	public void setDimensionBuildParallelism( int dimensionBuildParallelism )
+	{
+		this.dimensionBuildParallelism = dimensionBuildParallelism;
+	}
+	
 	/**
 	 * @param dimensionName
 	 * @param hierarchyName
@@ -123,6 +139,7 @@ public class CubeMaterializer
 			BirtException
 	{
 		Hierarchy hierarchy = new Hierarchy( documentManager, dimensionName, hierarchyName ); 
+		hierarchy.setBuildParallelism( dimensionBuildParallelism );
 		hierarchy.createAndSaveHierarchy( 
 				iterator,
 				levelDefs,
@@ -238,6 +255,93 @@ public class CubeMaterializer
 				factTable, measureColumns, calculatedMeasure, measureAggrFunctionNames, cacheSize, stopSign);
 		cube.close( );
 		documentManager.flush( );
+		CubeQueryResultCache.getInstance( ).invalidate( name, documentManager );
+	}
+	
+	/**
+	 * Refresh a created cube with the new rows of its fact table, instead of
+	 * creating it again. The dimensions with new members should have been
+	 * created again with the same names. Only the segments of the fact table
+	 * where the rows are added are rewritten if the dimension positions are
+	 * not changed. The materialized aggregates of the cube are created again.
+	 * 
+	 * @param name
+	 * @param factTableJointColumnNames
+	 * @param DimJointColumnNames
+	 * @param dimensions
+	 * @param factTable
+	 *            the new rows of the fact table
+	 * @param measureColumns
+	 * @param cacheSize
+	 * @param stopSign
+	 * @return false if the cube can not be refreshed, and should be created
+	 *         again
+	 * @throws IOException
+	 * @throws BirtException
+	 */
+	public boolean refreshCube( String name,
+			String[][] factTableJointColumnNames,
+			String[][] DimJointColumnNames, IDimension[] dimensions,
+			IDatasetIterator factTable, String[] measureColumns,
+			long cacheSize, StopSign stopSign ) throws IOException,
+			BirtException
+	{
+		if( dimensions.length == 0 )
+		{
+			throw new DataException( ResourceConstants.MISSING_DIMENSION_IN_CUBE, name );
+		}
+		if ( !documentManager.exist( NamingUtil.getCubeDocName( name ) ) )
+		{
+			return false;
+		}
+		Cube cube = new Cube( name, documentManager );
+		boolean refreshed = cube.refresh( factTableJointColumnNames,
+				DimJointColumnNames,
+				dimensions,
+				factTable,
+				measureColumns,
+				cacheSize,
+				stopSign );
+		if ( !refreshed )
+		{
+			return false;
+		}
+		AggregateTable.refresh( cube, cacheSize, stopSign );
+		cube.close( );
+		documentManager.flush( );
+		CubeQueryResultCache.getInstance( ).invalidate( name, documentManager );
+		return true;
+	}
+	
+	/**
+	 * Materialize the aggregates of a cube on the declared level combinations.
+	 * 
+	 * @param cubeName
+	 * @param declaration
+	 *            the level combinations, in the format of
+	 *            DataEngine.CUBE_MATERIALIZED_AGGREGATES
+	 * @param cacheSize
+	 * @param stopSign
+	 * @throws IOException
+	 * @throws BirtException
+	 */
+	public void createAggregateTables( String cubeName, String declaration,
+			long cacheSize, StopSign stopSign ) throws IOException,
+			BirtException
+	{
+		List<DimLevel[]> levels = AggregateTable.parseLevels( declaration );
+		if ( levels.isEmpty( ) )
+		{
+			return;
+		}
+		Cube cube = new Cube( cubeName, documentManager );
+		cube.load( stopSign );
+		for ( int i = 0; i < levels.size( ) && !stopSign.isStopped( ); i++ )
+		{
+			AggregateTable.create( cube, levels.get( i ), cacheSize, stopSign );
+		}
+		cube.close( );
+		documentManager.flush( );
 	}
 	
 	/**
@@ -257,6 +361,10 @@ public class CubeMaterializer
 		String factTableName = cube.getFactTable( ).getName( );
 		saveDocObjToReportDocument( NamingUtil.getFactTableName( factTableName ), writer, stopSign );
 		saveDocObjToReportDocument( NamingUtil.getFTSUListName( factTableName ), writer, stopSign );
+		if ( documentManager.exist( NamingUtil.getFTSUBitmapName( factTableName ) ) )
+		{
+			saveDocObjToReportDocument( NamingUtil.getFTSUBitmapName( factTableName ), writer, stopSign );
+		}
 		//save FTSU
 		IDocumentObject documentObject = documentManager.openDocumentObject( NamingUtil.getFTSUListName( factTableName ) );
 		try
@@ -271,6 +379,15 @@ public class CubeMaterializer
 		catch ( EOFException e )
 		{
 
+		}
+		//save aggregates
+		for ( int i = 0; documentManager.exist( NamingUtil.getAggregateTableDocName( cubeName,
+				i ) ); i++ )
+		{
+			saveDocObjToReportDocument( NamingUtil.getAggregateTableDocName( cubeName,
+					i ),
+					writer,
+					stopSign );
 		}
 		//save dimension
 		IDimension[] dimensions = cube.getDimesions( );
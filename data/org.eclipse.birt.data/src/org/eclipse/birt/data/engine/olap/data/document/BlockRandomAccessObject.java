@@ -95,16 +95,27 @@ public class BlockRandomAccessObject implements IRandomAccessObject
 		}
 		int remainSizeOfCurrentBlock = FileDocumentManager.BLOCK_SIZE
 				- (int) ( position % FileDocumentManager.BLOCK_SIZE );
-		dataFileSeek( );
 		if( remainSizeOfCurrentBlock >= len || position + remainSizeOfCurrentBlock >= length )
 		{
 			int readSize = (int) Math.min( length - position, len );
+			// the data file is shared by the objects which might be read
+			// concurrently, so seek and read it at one time
+			int result;
+			synchronized ( dataFile )
+			{
+				dataFileSeek( );
+				result = dataFile.read( b, off, readSize );
+			}
 			position += readSize;
-			return dataFile.read( b, off, readSize );
+			return result;
 		}
 		else
 		{
-			dataFile.read( b, off, remainSizeOfCurrentBlock );
+			synchronized ( dataFile )
+			{
+				dataFileSeek( );
+				dataFile.read( b, off, remainSizeOfCurrentBlock );
+			}
 			position += remainSizeOfCurrentBlock;
 			int readSize = read( b, off + remainSizeOfCurrentBlock, len
 					- remainSizeOfCurrentBlock );
@@ -20,4 +20,9 @@ public class CubeRADocumentManagerFactory
 	{
 		return DocumentManagerFactory.createRADocumentManager( reader );
 	}
+	
+	public static IDocumentManager createRADocumentManager( String cubeName, IDocArchiveReader reader, boolean memoryMapped ) throws DataException, IOException
+	{
+		return DocumentManagerFactory.createRADocumentManager( reader, memoryMapped );
+	}
 }
@@ -118,4 +118,12 @@ public class DirectoryDocumentManager implements IDocumentManager
 		
 	}
 
+	/**
+	 * 
+	 * @return the directory of the document objects
+	 */
+	public String getDocumentDir( )
+	{
+		return documentDir;
+	}
 }
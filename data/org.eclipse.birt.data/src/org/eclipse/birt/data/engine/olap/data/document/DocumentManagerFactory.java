@@ -90,6 +90,34 @@ public class DocumentManagerFactory
 		return new RADocumentManager( reader );
 	}
 	
+	/**
+	 * 
+	 * @param reader
+	 * @param memoryMapped
+	 *            whether the streams of a folder archive are read through
+	 *            memory mapped files
+	 * @return
+	 * @throws DataException
+	 * @throws IOException
+	 */
+	static public IDocumentManager createRADocumentManager( IDocArchiveReader reader, boolean memoryMapped ) throws DataException, IOException
+	{
+		return new RADocumentManager( reader, memoryMapped );
+	}
+	
+	/**
+	 * Create a read only document manager, which reads the document objects
+	 * saved in a directory through memory mapped files.
+	 * 
+	 * @param dirName
+	 * @return
+	 * @throws DataException
+	 */
+	static public IDocumentManager createMappedDocumentManager( String dirName ) throws DataException
+	{
+		return new MappedDocumentManager( dirName );
+	}
+	
 	/**
 	 * 
 	 * @return
@@ -327,7 +327,7 @@ public class FileDocumentManager implements IDocumentManager, IObjectAllocTable
 	 * (non-Javadoc)
 	 * @see org.eclipse.birt.data.olap.data.document.IObjectAllocTable#setObjectLength(java.lang.String, long)
 	 */
-	public void setObjectLength( String documentObjectName, long length ) throws IOException
+	public synchronized void setObjectLength( String documentObjectName, long length ) throws IOException
 	{
 		ObjectStructure objectStructure = (ObjectStructure) documentObjectMap.get( documentObjectName );
 		if ( objectStructure == null )
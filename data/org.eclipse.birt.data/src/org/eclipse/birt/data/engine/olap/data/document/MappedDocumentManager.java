@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.birt.data.engine.olap.data.document;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.eclipse.birt.data.engine.core.DataException;
+import org.eclipse.birt.data.engine.core.security.FileSecurity;
+import org.eclipse.birt.data.engine.i18n.ResourceConstants;
+
+/**
+ * A read only implementation of the <tt>IDocumentManager</tt> interface, which
+ * opens the document objects saved in a disk directory by
+ * <tt>DirectoryDocumentManager</tt>. The files of the document objects are
+ * mapped into memory, and the mapped files are shared by the document managers
+ * of the same directory.
+ */
+
+public class MappedDocumentManager implements IDocumentManager
+{
+	// the size of the buffer of a document object, which only saves the
+	// copies of small reads
+	private static final int BUFFER_SIZE = 8192;
+
+	private String documentDir = null;
+
+	/**
+	 *
+	 * @param documentDir
+	 * @throws DataException
+	 */
+	public MappedDocumentManager( String documentDir ) throws DataException
+	{
+		this.documentDir = documentDir;
+		File dir = new File( documentDir );
+		if ( !FileSecurity.fileExist( dir ) || !FileSecurity.fileIsDirectory( dir ) )
+		{
+			throw new DataException( ResourceConstants.OLAPFILE_NOT_FOUND,
+					documentDir );
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.birt.data.engine.olap.data.document.IDocumentManager#close()
+	 */
+	public void close( ) throws IOException
+	{
+
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.birt.data.engine.olap.data.document.IDocumentManager#createDocumentObject(java.lang.String)
+	 */
+	public IDocumentObject createDocumentObject( String documentObjectName )
+			throws IOException
+	{
+		throw new UnsupportedOperationException( );
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.birt.data.engine.olap.data.document.IDocumentManager#openDocumentObject(java.lang.String)
+	 */
+	public IDocumentObject openDocumentObject( String documentObjectName )
+			throws IOException
+	{
+		File file = new File( documentDir
+				+ File.separatorChar + documentObjectName );
+		if ( !FileSecurity.fileExist( file ) )
+		{
+			return null;
+		}
+		return openMappedDocumentObject( file );
+	}
+
+	/**
+	 * Open a document object saved in a file.
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	static IDocumentObject openMappedDocumentObject( File file )
+			throws IOException
+	{
+		return new DocumentObject( new BufferedRandomDataAccessObject( new MappedRandomAccessObject( file ),
+				BUFFER_SIZE ) );
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.birt.data.engine.olap.data.document.IDocumentManager#exist(java.lang.String)
+	 */
+	public boolean exist( String documentObjectName )
+	{
+		File file = new File( documentDir
+				+ File.separatorChar + documentObjectName );
+		return FileSecurity.fileExist( file );
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.birt.data.engine.olap.data.document.IDocumentManager#flush()
+	 */
+	public void flush( ) throws IOException
+	{
+
+	}
+
+	/**
+	 * 
+	 * @return the directory of the document objects
+	 */
+	public String getDocumentDir( )
+	{
+		return documentDir;
+	}
+}
@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.birt.data.engine.olap.data.document;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.birt.data.engine.core.security.FileSecurity;
+
+/**
+ * A read only file which is mapped into memory in chunks. A chunk is mapped
+ * when it is read the first time. The mapped file is shared by all the readers
+ * of the same file, so that the concurrent cube queries on one document share
+ * the mapped chunks, and it is released when the last reader is closed.
+ */
+class MappedFile
+{
+	// the size of a mapped chunk, since a buffer can not be larger than 2G
+	static final int CHUNK_SIZE = 64 * 1024 * 1024;
+
+	// the shared mapped files, keyed by the canonical path
+	private static Map<String, MappedFile> mappedFiles = new HashMap<String, MappedFile>( );
+
+	private String path;
+	private long length;
+	private long lastModified;
+	private RandomAccessFile randomAccessFile;
+	private FileChannel channel;
+	private MappedByteBuffer[] chunks;
+	private int referenceCount;
+
+	/**
+	 * Get the shared mapped file of a file. A new mapping is created if the
+	 * file has been modified since it was mapped. The caller should call
+	 * release( ) when it is done.
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	static MappedFile open( File file ) throws IOException
+	{
+		String path = file.getCanonicalPath( );
+		synchronized ( mappedFiles )
+		{
+			MappedFile mappedFile = mappedFiles.get( path );
+			if ( mappedFile == null
+					|| mappedFile.length != file.length( )
+					|| mappedFile.lastModified != file.lastModified( ) )
+			{
+				mappedFile = new MappedFile( path, file );
+				mappedFiles.put( path, mappedFile );
+			}
+			mappedFile.referenceCount++;
+			return mappedFile;
+		}
+	}
+
+	/**
+	 * @param path
+	 * @param file
+	 * @throws IOException
+	 */
+	private MappedFile( String path, File file ) throws IOException
+	{
+		this.path = path;
+		this.randomAccessFile = FileSecurity.createRandomAccessFile( file, "r" ); //$NON-NLS-1$
+		this.channel = randomAccessFile.getChannel( );
+		this.length = channel.size( );
+		this.lastModified = file.lastModified( );
+		this.chunks = new MappedByteBuffer[(int) ( ( length + CHUNK_SIZE - 1 ) / CHUNK_SIZE )];
+	}
+
+	/**
+	 * @return the length of the file
+	 */
+	long length( )
+	{
+		return length;
+	}
+
+	/**
+	 * @return the count of the chunks
+	 */
+	int getChunkCount( )
+	{
+		return chunks.length;
+	}
+
+	/**
+	 * Get a chunk, which is mapped if it has not been mapped. The returned
+	 * buffer is shared, so the caller should read from a duplicate of it.
+	 *
+	 * @param index
+	 * @return
+	 * @throws IOException
+	 */
+	synchronized MappedByteBuffer getChunk( int index ) throws IOException
+	{
+		if ( chunks[index] == null )
+		{
+			long position = (long) index * CHUNK_SIZE;
+			chunks[index] = channel.map( FileChannel.MapMode.READ_ONLY,
+					position,
+					Math.min( CHUNK_SIZE, length - position ) );
+		}
+		return chunks[index];
+	}
+
+	/**
+	 * Release a reference. The file is closed when no one uses it.
+	 *
+	 * @throws IOException
+	 */
+	void release( ) throws IOException
+	{
+		synchronized ( mappedFiles )
+		{
+			referenceCount--;
+			if ( referenceCount > 0 )
+				return;
+			if ( mappedFiles.get( path ) == this )
+				mappedFiles.remove( path );
+		}
+		// the mapped chunks stay valid after the channel is closed, and they
+		// are unmapped when they are garbage collected
+		synchronized ( this )
+		{
+			chunks = new MappedByteBuffer[chunks.length];
+			randomAccessFile.close( );
+		}
+	}
+}
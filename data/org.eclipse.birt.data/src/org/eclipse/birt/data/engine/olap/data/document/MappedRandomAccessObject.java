@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.birt.data.engine.olap.data.document;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A read only random access object of a memory mapped file. The data are
+ * copied from the mapped chunks directly, without any read system call. Each
+ * object has its own position, so the objects of the same file can be read
+ * concurrently.
+ */
+
+public class MappedRandomAccessObject implements IRandomAccessObject
+{
+	private MappedFile mappedFile;
+	private long length;
+	private long position;
+
+	// the duplicates of the shared chunks, which hold the read position
+	private ByteBuffer[] views;
+
+	/**
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public MappedRandomAccessObject( File file ) throws IOException
+	{
+		this.mappedFile = MappedFile.open( file );
+		this.length = mappedFile.length( );
+		this.views = new ByteBuffer[mappedFile.getChunkCount( )];
+		this.position = 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.birt.data.engine.olap.data.document.IRandomAccessObject#close()
+	 */
+	public void close( ) throws IOException
+	{
+		if ( mappedFile != null )
+		{
+			views = null;
+			mappedFile.release( );
+			mappedFile = null;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.birt.data.engine.olap.data.document.IRandomAccessObject#getFilePointer()
+	 */
+	public long getFilePointer( ) throws IOException
+	{
+		return position;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.birt.data.engine.olap.data.document.IRandomAccessObject#length()
+	 */
+	public long length( ) throws IOException
+	{
+		return length;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.birt.data.engine.olap.data.document.IRandomAccessObject#read(byte[], int, int)
+	 */
+	public int read( byte[] b, int off, int len ) throws IOException
+	{
+		if ( len == 0 )
+			return 0;
+		if ( position >= length )
+			return -1;
+		int total = 0;
+		while ( total < len && position < length )
+		{
+			ByteBuffer view = getView( (int) ( position / MappedFile.CHUNK_SIZE ) );
+			view.position( (int) ( position % MappedFile.CHUNK_SIZE ) );
+			int count = Math.min( len - total, view.remaining( ) );
+			view.get( b, off + total, count );
+			total += count;
+			position += count;
+		}
+		return total;
+	}
+
+	/**
+	 * @param index
+	 * @return the duplicate of a chunk
+	 * @throws IOException
+	 */
+	private ByteBuffer getView( int index ) throws IOException
+	{
+		if ( views == null )
+			throw new IOException( "The object is closed." ); //$NON-NLS-1$
+		if ( views[index] == null )
+			views[index] = mappedFile.getChunk( index ).duplicate( );
+		return views[index];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.birt.data.engine.olap.data.document.IRandomAccessObject#read(byte[])
+	 */
+	public int read( byte[] b ) throws IOException
+	{
+		return read( b, 0, b.length );
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.birt.data.engine.olap.data.document.IRandomAccessObject#read()
+	 */
+	public int read( ) throws IOException
+	{
+		if ( position >= length )
+			return -1;
+		ByteBuffer view = getView( (int) ( position / MappedFile.CHUNK_SIZE ) );
+		int b = view.get( (int) ( position % MappedFile.CHUNK_SIZE ) ) & 0xff;
+		position++;
+		return b;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.birt.data.engine.olap.data.document.IRandomAccessObject#seek(long)
+	 */
+	public void seek( long pos ) throws IOException
+	{
+		if ( pos < 0 )
+			throw new IOException( "Negative seek offset" ); //$NON-NLS-1$
+		this.position = pos;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.birt.data.engine.olap.data.document.IRandomAccessObject#setLength(long)
+	 */
+	public void setLength( long newLength ) throws IOException
+	{
+		throw new UnsupportedOperationException( );
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.birt.data.engine.olap.data.document.IRandomAccessObject#write(byte[], int, int)
+	 */
+	public void write( byte[] b, int off, int len ) throws IOException
+	{
+		throw new UnsupportedOperationException( "This is a read only object!" );
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.birt.data.engine.olap.data.document.IRandomAccessObject#flush()
+	 */
+	public void flush( ) throws IOException
+	{
+	}
+}
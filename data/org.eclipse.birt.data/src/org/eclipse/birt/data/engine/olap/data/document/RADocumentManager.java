@@ -11,9 +11,11 @@
  *******************************************************************************/
 package org.eclipse.birt.data.engine.olap.data.document;
 
+import java.io.File;
 import java.io.IOException;
 
 import org.eclipse.birt.core.archive.IDocArchiveReader;
+import org.eclipse.birt.core.archive.RAFolderInputStream;
 import org.eclipse.birt.core.archive.RAInputStream;
 
 /**
@@ -23,6 +25,7 @@ import org.eclipse.birt.core.archive.RAInputStream;
 public class RADocumentManager implements IDocumentManager
 {
 	private IDocArchiveReader archiveReader;
+	private boolean memoryMapped;
 	
 	/**
 	 * 
@@ -30,8 +33,22 @@ public class RADocumentManager implements IDocumentManager
 	 * @throws IOException 
 	 */
 	RADocumentManager( IDocArchiveReader reader ) throws IOException
+	{
+		this( reader, false );
+	}
+	
+	/**
+	 * 
+	 * @param reader
+	 * @param memoryMapped
+	 *            whether the streams which are files in a folder archive are
+	 *            read through memory mapped files
+	 * @throws IOException
+	 */
+	RADocumentManager( IDocArchiveReader reader, boolean memoryMapped ) throws IOException
 	{
 		this.archiveReader = reader;
+		this.memoryMapped = memoryMapped;
 	}
 	
 	/*
@@ -74,6 +91,13 @@ public class RADocumentManager implements IDocumentManager
 		RAInputStream inputStream = archiveReader.getStream( documentObjectName );
 		if ( inputStream == null )
 			return null;
+		if ( memoryMapped && inputStream instanceof RAFolderInputStream )
+		{
+			// the stream is a file, map it instead
+			File file = new File( ( (RAFolderInputStream) inputStream ).getName( ) );
+			inputStream.close( );
+			return MappedDocumentManager.openMappedDocumentObject( file );
+		}
 		return new DocumentObject( new BufferedRandomDataAccessObject( new RAReader( inputStream ), 8192 ) );
 	}
 
@@ -86,4 +110,16 @@ public class RADocumentManager implements IDocumentManager
 		
 	}
 
+	/**
+	 * 
+	 * @return the name of the archive which the document objects are read
+	 *         from, or null if it is unknown
+	 */
+	public String getArchiveName( )
+	{
+		if ( archiveReader == null )
+			return null;
+		return archiveReader.getName( );
+	}
+
 }
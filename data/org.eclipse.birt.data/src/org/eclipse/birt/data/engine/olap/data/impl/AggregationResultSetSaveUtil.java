@@ -283,7 +283,7 @@ public class AggregationResultSetSaveUtil
 	 * @param resultRow
 	 * @throws IOException
 	 */
-	private static void saveAggregationRow( DataOutputStream outputStream, IAggregationResultRow resultRow ) throws IOException
+	public static void saveAggregationRow( DataOutputStream outputStream, IAggregationResultRow resultRow ) throws IOException
 	{
 		writeObjectArray( outputStream, resultRow.getFieldValues( ) );
 	}
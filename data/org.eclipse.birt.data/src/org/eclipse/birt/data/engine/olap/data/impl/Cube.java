@@ -12,6 +12,7 @@
 package org.eclipse.birt.data.engine.olap.data.impl;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
@@ -24,6 +25,7 @@ import org.eclipse.birt.data.engine.olap.data.api.cube.IDatasetIterator;
 import org.eclipse.birt.data.engine.olap.data.api.cube.IDimension;
 import org.eclipse.birt.data.engine.olap.data.document.IDocumentManager;
 import org.eclipse.birt.data.engine.olap.data.document.IDocumentObject;
+import org.eclipse.birt.data.engine.olap.data.impl.aggregation.AggregateTable;
 import org.eclipse.birt.data.engine.olap.data.impl.dimension.Dimension;
 import org.eclipse.birt.data.engine.olap.data.impl.dimension.DimensionFactory;
 import org.eclipse.birt.data.engine.olap.data.impl.facttable.FactTable;
@@ -39,6 +41,7 @@ public class Cube implements ICube
 	protected IDocumentManager documentManager;
 	protected IDimension[] dimension;
 	private FactTable factTable;
+	private List<AggregateTable> aggregateTables;
 
 	private static Logger logger = Logger.getLogger( Cube.class.getName( ) );
 
@@ -164,6 +167,76 @@ public class Cube implements ICube
 				stopSign );
 	}
 
+	/**
+	 * Refresh the saved cube with the new rows of its fact table. The
+	 * dimensions may have been created again with new members, but should
+	 * have the same names as the saved ones.
+	 * 
+	 * @param factTableJointColumnNames
+	 * @param DimJointColumnNames
+	 * @param dimension
+	 * @param iterator
+	 *            the new rows of the fact table
+	 * @param measureColumnName
+	 * @param cacheSize
+	 * @param stopSign
+	 * @return false if the cube can not be refreshed and should be created
+	 *         again
+	 * @throws IOException
+	 * @throws BirtException
+	 */
+	public boolean refresh( String[][] factTableJointColumnNames,
+			String[][] DimJointColumnNames, IDimension[] dimension,
+			IDatasetIterator iterator, String[] measureColumnName,
+			long cacheSize, StopSign stopSign ) throws IOException,
+			BirtException
+	{
+		IDocumentObject documentObject = documentManager.openDocumentObject( NamingUtil.getCubeDocName( name ) );
+		if ( documentObject == null )
+			throw new DataException( ResourceConstants.DOCUMENTOBJECT_NOT_EXIST,
+					new Object[]{
+						name
+					} );
+
+		documentObject.seek( 0 );
+		documentObject.readString( );
+		boolean sameDimensions = documentObject.readInt( ) == dimension.length;
+		for ( int i = 0; i < dimension.length && sameDimensions; i++ )
+		{
+			sameDimensions = documentObject.readString( )
+					.equals( dimension[i].getName( ) );
+		}
+		documentObject.close( );
+		if ( !sameDimensions )
+		{
+			return false;
+		}
+
+		Dimension[] tDimensions = new Dimension[dimension.length];
+		for ( int i = 0; i < tDimensions.length; i++ )
+		{
+			tDimensions[i] = (Dimension) dimension[i];
+		}
+		FactTableAccessor factTableConstructor = new FactTableAccessor( documentManager );
+		factTableConstructor.setMemoryCacheSize( cacheSize );
+		FactTable refreshedFactTable = factTableConstructor.refreshFactTable( name,
+				factTableJointColumnNames,
+				DimJointColumnNames,
+				iterator,
+				tDimensions,
+				measureColumnName,
+				stopSign );
+		if ( refreshedFactTable == null )
+		{
+			return false;
+		}
+		this.dimension = dimension;
+		factTable = refreshedFactTable;
+		aggregateTables = null;
+		documentManager.flush( );
+		return true;
+	}
+
 	/**
 	 * 
 	 * @param stopSign
@@ -220,6 +293,53 @@ public class Cube implements ICube
 		return factTable;
 	}
 
+	/**
+	 * 
+	 * @return
+	 */
+	public String getName( )
+	{
+		return name;
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public IDocumentManager getDocumentManager( )
+	{
+		return documentManager;
+	}
+
+	/**
+	 * Get the materialized aggregates of this cube, which are loaded the first
+	 * time they are used.
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	public synchronized List<AggregateTable> getAggregateTables( )
+			throws IOException
+	{
+		if ( aggregateTables == null )
+		{
+			aggregateTables = AggregateTable.load( documentManager, name );
+		}
+		return aggregateTables;
+	}
+
+	/**
+	 * Add an aggregate which is materialized after this cube is loaded.
+	 * 
+	 * @param aggregateTable
+	 * @throws IOException
+	 */
+	public synchronized void addAggregateTable( AggregateTable aggregateTable )
+			throws IOException
+	{
+		getAggregateTables( ).add( aggregateTable );
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see org.eclipse.birt.data.engine.olap.data.api.ICube#close()
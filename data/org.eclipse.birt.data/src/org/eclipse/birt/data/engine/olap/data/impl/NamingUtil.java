@@ -25,7 +25,10 @@ public class NamingUtil
 	private static final String HIERARCHY_OFFSET = OLAP_PREFIX + "hierarchy_offset_";
 	private static final String FACT_TABLE = OLAP_PREFIX + "fact_table_";
 	private static final String FTSU_LIST = OLAP_PREFIX + "ftsu_list_";
+	private static final String FTSU_BITMAP = OLAP_PREFIX + "ftsu_bitmap_";
+	private static final String FACT_TABLE_KEY = OLAP_PREFIX + "fact_table_key_";
 	private static final String AGGREGATION_RS_DOC = OLAP_PREFIX + "rs_doc_";
+	private static final String AGGREGATE_TABLE = OLAP_PREFIX + "aggregate_";
 
 	public static final String DERIVED_MEASURE_PREFIX = "_${DERIVED_MEASURE}$_";
 
@@ -139,6 +142,26 @@ public class NamingUtil
 		return FTSU_LIST + factTableName;
 	}
 	
+	/**
+	 * 
+	 * @param factTableName
+	 * @return
+	 */
+	public static String getFTSUBitmapName( String factTableName )
+	{
+		return FTSU_BITMAP + factTableName;
+	}
+	
+	/**
+	 * 
+	 * @param factTableName
+	 * @return
+	 */
+	public static String getFactTableKeyName( String factTableName )
+	{
+		return FACT_TABLE_KEY + factTableName;
+	}
+	
 	/**
 	 * 
 	 * @param ID
@@ -148,4 +171,15 @@ public class NamingUtil
 	{
 		return AGGREGATION_RS_DOC + ID;
 	}
+	
+	/**
+	 * 
+	 * @param cubeName
+	 * @param index
+	 * @return
+	 */
+	public static String getAggregateTableDocName( String cubeName, int index )
+	{
+		return AGGREGATE_TABLE + cubeName + '_' + index;
+	}
 }
@@ -0,0 +1,1014 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.birt.data.engine.olap.data.impl.aggregation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Logger;
+
+import org.eclipse.birt.core.exception.BirtException;
+import org.eclipse.birt.data.engine.core.DataException;
+import org.eclipse.birt.data.engine.impl.StopSign;
+import org.eclipse.birt.data.engine.olap.data.api.DimLevel;
+import org.eclipse.birt.data.engine.olap.data.api.IAggregationResultRow;
+import org.eclipse.birt.data.engine.olap.data.api.IAggregationResultSet;
+import org.eclipse.birt.data.engine.olap.data.api.IDimensionResultIterator;
+import org.eclipse.birt.data.engine.olap.data.api.ILevel;
+import org.eclipse.birt.data.engine.olap.data.api.MeasureInfo;
+import org.eclipse.birt.data.engine.olap.data.api.cube.IDimension;
+import org.eclipse.birt.data.engine.olap.data.document.DocumentObjectUtil;
+import org.eclipse.birt.data.engine.olap.data.document.IDocumentManager;
+import org.eclipse.birt.data.engine.olap.data.document.IDocumentObject;
+import org.eclipse.birt.data.engine.olap.data.impl.AggregationDefinition;
+import org.eclipse.birt.data.engine.olap.data.impl.AggregationFunctionDefinition;
+import org.eclipse.birt.data.engine.olap.data.impl.Cube;
+import org.eclipse.birt.data.engine.olap.data.impl.NamingUtil;
+import org.eclipse.birt.data.engine.olap.data.impl.dimension.Dimension;
+import org.eclipse.birt.data.engine.olap.data.impl.dimension.DimensionResultIterator;
+import org.eclipse.birt.data.engine.olap.data.impl.dimension.Member;
+import org.eclipse.birt.data.engine.olap.data.impl.facttable.FactTableRowIterator;
+import org.eclipse.birt.data.engine.olap.data.util.DataType;
+import org.eclipse.birt.data.engine.olap.data.util.IDiskArray;
+
+/**
+ * A materialized aggregate of the fact table of a cube. The measures are
+ * aggregated by SUM, MAX and MIN on the top levels of some dimensions, and
+ * saved in a document object of the cube. A query on these levels is
+ * aggregated from the rows of the aggregate instead of the rows of the fact
+ * table, since these functions can be rolled up from their own results.
+ */
+public class AggregateTable
+{
+	private static final String[] FUNCTION_NAMES = {
+			"SUM", "MAX", "MIN"
+	};
+
+	// the times the level combinations of the cubes are queried, keyed by the
+	// document managers of the cubes
+	private static Map<IDocumentManager, Map<String, Integer>> queryHistory = new WeakHashMap<IDocumentManager, Map<String, Integer>>( );
+
+	private static Logger logger = Logger.getLogger( AggregateTable.class.getName( ) );
+
+	private IDocumentManager documentManager;
+	private String documentName;
+	private String[] dimensionNames;
+	// the names of the top levels of each dimension
+	private String[][] levelNames;
+	private int[][][] keyDataTypes;
+	private int[][][] attributeDataTypes;
+	private MeasureInfo[] measureInfos;
+	private int rowCount;
+	private long rowOffset;
+
+	/**
+	 *
+	 * @param documentManager
+	 * @param documentName
+	 */
+	private AggregateTable( IDocumentManager documentManager,
+			String documentName )
+	{
+		this.documentManager = documentManager;
+		this.documentName = documentName;
+	}
+
+	/**
+	 * Load all the aggregates of a cube.
+	 *
+	 * @param documentManager
+	 * @param cubeName
+	 * @return
+	 * @throws IOException
+	 */
+	public static List<AggregateTable> load( IDocumentManager documentManager,
+			String cubeName ) throws IOException
+	{
+		List<AggregateTable> result = new ArrayList<AggregateTable>( );
+		for ( int i = 0; documentManager.exist( NamingUtil.getAggregateTableDocName( cubeName,
+				i ) ); i++ )
+		{
+			String documentName = NamingUtil.getAggregateTableDocName( cubeName,
+					i );
+			IDocumentObject documentObject = documentManager.openDocumentObject( documentName );
+			if ( documentObject == null )
+			{
+				break;
+			}
+			AggregateTable table = new AggregateTable( documentManager,
+					documentName );
+			if ( table.readHeader( documentObject ) )
+			{
+				result.add( table );
+			}
+			documentObject.close( );
+		}
+		return result;
+	}
+
+	/**
+	 * Parse the level combinations declared in the application context, which
+	 * are separated by semicolons. Each combination is a list of
+	 * dimension/level names separated by commas.
+	 *
+	 * @param declaration
+	 * @return
+	 */
+	public static List<DimLevel[]> parseLevels( String declaration )
+	{
+		List<DimLevel[]> result = new ArrayList<DimLevel[]>( );
+		if ( declaration == null )
+		{
+			return result;
+		}
+		String[] combinations = declaration.split( ";" ); //$NON-NLS-1$
+		for ( int i = 0; i < combinations.length; i++ )
+		{
+			List<DimLevel> levels = new ArrayList<DimLevel>( );
+			String[] names = combinations[i].split( "," ); //$NON-NLS-1$
+			for ( int j = 0; j < names.length; j++ )
+			{
+				int index = names[j].indexOf( '/' );
+				if ( index > 0 && index < names[j].length( ) - 1 )
+				{
+					levels.add( new DimLevel( names[j].substring( 0, index )
+							.trim( ), names[j].substring( index + 1 ).trim( ) ) );
+				}
+			}
+			if ( !levels.isEmpty( ) )
+			{
+				result.add( levels.toArray( new DimLevel[levels.size( )] ) );
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Create an aggregate of a cube on the levels, and on all the levels above
+	 * them in their hierarchies.
+	 *
+	 * @param cube
+	 * @param levels
+	 * @param memoryCacheSize
+	 * @param stopSign
+	 * @return the created aggregate, or null if it can not be created
+	 * @throws IOException
+	 * @throws BirtException
+	 */
+	public static AggregateTable create( Cube cube, DimLevel[] levels,
+			long memoryCacheSize, StopSign stopSign ) throws IOException,
+			BirtException
+	{
+		IDimension[] dimensions = cube.getDimesions( );
+		int[] depth = getLevelDepth( dimensions, levels );
+		List<DimLevel> aggregationLevels = new ArrayList<DimLevel>( );
+		for ( int i = 0; i < dimensions.length; i++ )
+		{
+			ILevel[] dimLevels = dimensions[i].getHierarchy( ).getLevels( );
+			for ( int j = 0; j < depth[i]; j++ )
+			{
+				aggregationLevels.add( new DimLevel( dimensions[i].getName( ),
+						dimLevels[j].getName( ) ) );
+			}
+		}
+		if ( aggregationLevels.isEmpty( ) )
+		{
+			return null;
+		}
+
+		IDocumentManager documentManager = cube.getDocumentManager( );
+		String documentName;
+		IDocumentObject documentObject;
+		// the aggregates of different levels may be learned by concurrent
+		// queries, so the name is taken and created at once
+		synchronized ( documentManager )
+		{
+			int index = 0;
+			while ( documentManager.exist( NamingUtil.getAggregateTableDocName( cube.getName( ),
+					index ) ) )
+			{
+				index++;
+			}
+			documentName = NamingUtil.getAggregateTableDocName( cube.getName( ),
+					index );
+			documentObject = documentManager.createDocumentObject( documentName );
+		}
+		if ( documentObject == null )
+		{
+			return null;
+		}
+
+		DimensionResultIterator[] dimensionResultIterators = new DimensionResultIterator[dimensions.length];
+		for ( int i = 0; i < dimensions.length; i++ )
+		{
+			dimensionResultIterators[i] = new DimensionResultIterator( (Dimension) dimensions[i],
+					null,
+					stopSign );
+		}
+		IDataSet4Aggregation dataSet = new DataSetFromOriginalCube( new FactTableRowIterator( cube.getFactTable( ),
+				new String[0],
+				new IDiskArray[0],
+				dimensions,
+				null,
+				stopSign ),
+				dimensionResultIterators,
+				null );
+		MeasureInfo[] cubeMeasureInfos = dataSet.getMetaInfo( )
+				.getMeasureInfos( );
+		List<AggregationFunctionDefinition> functions = new ArrayList<AggregationFunctionDefinition>( );
+		for ( int i = 0; i < cubeMeasureInfos.length; i++ )
+		{
+			if ( !isNumeric( cubeMeasureInfos[i].getDataType( ) ) )
+			{
+				continue;
+			}
+			for ( int j = 0; j < FUNCTION_NAMES.length; j++ )
+			{
+				functions.add( new AggregationFunctionDefinition( getColumnName( FUNCTION_NAMES[j],
+						cubeMeasureInfos[i].getMeasureName( ) ),
+						cubeMeasureInfos[i].getMeasureName( ),
+						FUNCTION_NAMES[j] ) );
+			}
+		}
+		AggregationDefinition aggregation = new AggregationDefinition( aggregationLevels.toArray( new DimLevel[aggregationLevels.size( )] ),
+				null,
+				functions.toArray( new AggregationFunctionDefinition[functions.size( )] ) );
+		AggregationExecutor executor = new AggregationExecutor( new CubeDimensionReader( cube ),
+				dataSet,
+				new AggregationDefinition[]{
+					aggregation
+				},
+				memoryCacheSize );
+		IAggregationResultSet resultSet = executor.execute( stopSign )[0];
+		if ( stopSign.isStopped( ) )
+		{
+			// the document object can not be removed, so it is marked as
+			// invalid and skipped when the aggregates are loaded
+			documentObject.writeInt( -1 );
+			resultSet.close( );
+			documentObject.close( );
+			return null;
+		}
+
+		AggregateTable table = new AggregateTable( documentManager,
+				documentName );
+		table.initMetaData( dimensions, depth, functions, resultSet );
+		table.writeHeader( documentObject );
+		table.rowOffset = documentObject.getFilePointer( );
+		table.writeRows( documentObject, resultSet );
+		resultSet.close( );
+		documentObject.close( );
+		documentManager.flush( );
+		logger.fine( "Created aggregate " + documentName + " of " + table.rowCount + " rows" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		return table;
+	}
+
+	/**
+	 * Create the aggregates of a cube again after its fact table is refreshed.
+	 * All the stale aggregates are marked as invalid first, so that they are
+	 * never used even if the creation is stopped.
+	 *
+	 * @param cube
+	 * @param memoryCacheSize
+	 * @param stopSign
+	 * @throws IOException
+	 * @throws BirtException
+	 */
+	public static void refresh( Cube cube, long memoryCacheSize,
+			StopSign stopSign ) throws IOException, BirtException
+	{
+		List<AggregateTable> tables = load( cube.getDocumentManager( ),
+				cube.getName( ) );
+		for ( int i = 0; i < tables.size( ); i++ )
+		{
+			tables.get( i ).invalidate( );
+		}
+		for ( int i = 0; i < tables.size( ) && !stopSign.isStopped( ); i++ )
+		{
+			create( cube, tables.get( i ).getLevels( ), memoryCacheSize, stopSign );
+		}
+	}
+
+	/**
+	 * Record a query on a cube. When the levels of the query have been queried
+	 * for the threshold times, an aggregate on them is created.
+	 *
+	 * @param cube
+	 * @param aggregations
+	 * @param threshold
+	 * @param memoryCacheSize
+	 * @param stopSign
+	 * @return the created aggregate, or null
+	 * @throws IOException
+	 * @throws BirtException
+	 */
+	public static AggregateTable learn( Cube cube,
+			AggregationDefinition[] aggregations, int threshold,
+			long memoryCacheSize, StopSign stopSign ) throws IOException,
+			BirtException
+	{
+		DimLevel[] levels = getQueriedLevels( aggregations );
+		if ( levels.length == 0 )
+		{
+			return null;
+		}
+		int[] depth = getLevelDepth( cube.getDimesions( ), levels );
+		String key = cube.getName( ) + Arrays.toString( depth );
+		synchronized ( queryHistory )
+		{
+			Map<String, Integer> history = queryHistory.get( cube.getDocumentManager( ) );
+			if ( history == null )
+			{
+				history = new HashMap<String, Integer>( );
+				queryHistory.put( cube.getDocumentManager( ), history );
+			}
+			Integer count = history.get( key );
+			int times = count == null ? 1 : count.intValue( ) + 1;
+			history.put( key, Integer.valueOf( times ) );
+			if ( times != threshold )
+			{
+				return null;
+			}
+		}
+		try
+		{
+			return create( cube, levels, memoryCacheSize, stopSign );
+		}
+		catch ( UnsupportedOperationException e )
+		{
+			// the document manager is read only
+			return null;
+		}
+	}
+
+	/**
+	 * Select the smallest aggregate which the aggregations can be computed
+	 * from.
+	 *
+	 * @param tables
+	 * @param aggregations
+	 * @return the selected aggregate, or null if no one can be used
+	 */
+	public static AggregateTable select( List<AggregateTable> tables,
+			AggregationDefinition[] aggregations )
+	{
+		if ( !isDerivable( aggregations ) )
+		{
+			return null;
+		}
+		AggregateTable result = null;
+		for ( int i = 0; i < tables.size( ); i++ )
+		{
+			AggregateTable table = tables.get( i );
+			if ( table.covers( aggregations )
+					&& ( result == null || table.rowCount < result.rowCount ) )
+			{
+				result = table;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Whether the aggregations can be rolled up from an aggregate on their
+	 * levels.
+	 *
+	 * @param aggregations
+	 * @return
+	 */
+	public static boolean isDerivable( AggregationDefinition[] aggregations )
+	{
+		for ( int i = 0; i < aggregations.length; i++ )
+		{
+			if ( aggregations[i].getDrilledInfo( ) != null )
+			{
+				return false;
+			}
+			AggregationFunctionDefinition[] functions = aggregations[i].getAggregationFunctions( );
+			if ( functions == null )
+			{
+				continue;
+			}
+			for ( int j = 0; j < functions.length; j++ )
+			{
+				if ( !isRollupFunction( functions[j].getFunctionName( ) )
+						|| functions[j].getMeasureName( ) == null
+						|| functions[j].getParaCol( ) != null
+						|| functions[j].getParaValue( ) != null
+						|| functions[j].getFilterEvalHelper( ) != null
+						|| functions[j].getTimeFunction( ) != null
+						|| functions[j].getTimeFunctionFilter( ) != null )
+				{
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Replace the measures of the aggregation functions with the columns of
+	 * an aggregate, which are aggregated by the same functions.
+	 *
+	 * @param aggregations
+	 * @return
+	 */
+	public static AggregationDefinition[] rewrite(
+			AggregationDefinition[] aggregations )
+	{
+		AggregationDefinition[] result = new AggregationDefinition[aggregations.length];
+		for ( int i = 0; i < aggregations.length; i++ )
+		{
+			AggregationFunctionDefinition[] functions = aggregations[i].getAggregationFunctions( );
+			AggregationFunctionDefinition[] rollupFunctions = null;
+			if ( functions != null )
+			{
+				rollupFunctions = new AggregationFunctionDefinition[functions.length];
+				for ( int j = 0; j < functions.length; j++ )
+				{
+					rollupFunctions[j] = new AggregationFunctionDefinition( functions[j].getName( ),
+							getColumnName( functions[j].getFunctionName( ),
+									functions[j].getMeasureName( ) ),
+							functions[j].getFunctionName( ) );
+				}
+			}
+			result[i] = new AggregationDefinition( aggregations[i].getLevels( ),
+					aggregations[i].getSortTypes( ),
+					rollupFunctions );
+		}
+		return result;
+	}
+
+	/**
+	 * Create the data set of the rows of this aggregate.
+	 *
+	 * @param dimensionResultIterators
+	 *            the iterators of all the dimensions of the cube, which only
+	 *            provide the meta data
+	 * @return
+	 * @throws IOException
+	 */
+	public IDataSet4Aggregation createDataSet(
+			IDimensionResultIterator[] dimensionResultIterators )
+			throws IOException
+	{
+		return new DataSetFromAggregateTable( this, dimensionResultIterators );
+	}
+
+	/**
+	 *
+	 * @return the count of the rows
+	 */
+	public int getRowCount( )
+	{
+		return rowCount;
+	}
+
+	/**
+	 *
+	 * @return the name of the document object of this aggregate
+	 */
+	public String getDocumentName( )
+	{
+		return documentName;
+	}
+
+	/**
+	 *
+	 * @return the lowest saved level of each dimension
+	 */
+	private DimLevel[] getLevels( )
+	{
+		DimLevel[] result = new DimLevel[dimensionNames.length];
+		for ( int i = 0; i < result.length; i++ )
+		{
+			result[i] = new DimLevel( dimensionNames[i],
+					levelNames[i][levelNames[i].length - 1] );
+		}
+		return result;
+	}
+
+	/**
+	 * Mark this aggregate as invalid, so that it is skipped when the
+	 * aggregates are loaded.
+	 *
+	 * @throws IOException
+	 */
+	private void invalidate( ) throws IOException
+	{
+		IDocumentObject documentObject = documentManager.openDocumentObject( documentName );
+		documentObject.seek( 0 );
+		documentObject.writeInt( -1 );
+		documentObject.close( );
+	}
+
+	/**
+	 * Whether the levels and the measures of the aggregations are saved in
+	 * this aggregate.
+	 *
+	 * @param aggregations
+	 * @return
+	 */
+	private boolean covers( AggregationDefinition[] aggregations )
+	{
+		for ( int i = 0; i < aggregations.length; i++ )
+		{
+			DimLevel[] levels = aggregations[i].getLevels( );
+			for ( int j = 0; levels != null && j < levels.length; j++ )
+			{
+				int dimIndex = indexOf( dimensionNames,
+						levels[j].getDimensionName( ) );
+				if ( dimIndex < 0
+						|| indexOf( levelNames[dimIndex],
+								levels[j].getLevelName( ) ) < 0 )
+				{
+					return false;
+				}
+			}
+			AggregationFunctionDefinition[] functions = aggregations[i].getAggregationFunctions( );
+			for ( int j = 0; functions != null && j < functions.length; j++ )
+			{
+				if ( getMeasureIndex( getColumnName( functions[j].getFunctionName( ),
+						functions[j].getMeasureName( ) ) ) < 0 )
+				{
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 *
+	 * @param dimensions
+	 * @param depth
+	 * @param functions
+	 * @param resultSet
+	 * @throws IOException
+	 */
+	private void initMetaData( IDimension[] dimensions, int[] depth,
+			List<AggregationFunctionDefinition> functions,
+			IAggregationResultSet resultSet ) throws IOException
+	{
+		List<Integer> dimensionIndex = new ArrayList<Integer>( );
+		for ( int i = 0; i < dimensions.length; i++ )
+		{
+			if ( depth[i] > 0 )
+			{
+				dimensionIndex.add( Integer.valueOf( i ) );
+			}
+		}
+		dimensionNames = new String[dimensionIndex.size( )];
+		levelNames = new String[dimensionNames.length][];
+		keyDataTypes = new int[dimensionNames.length][][];
+		attributeDataTypes = new int[dimensionNames.length][][];
+		for ( int i = 0; i < dimensionNames.length; i++ )
+		{
+			IDimension dimension = dimensions[dimensionIndex.get( i ).intValue( )];
+			ILevel[] levels = dimension.getHierarchy( ).getLevels( );
+			int levelCount = depth[dimensionIndex.get( i ).intValue( )];
+			dimensionNames[i] = dimension.getName( );
+			levelNames[i] = new String[levelCount];
+			keyDataTypes[i] = new int[levelCount][];
+			attributeDataTypes[i] = new int[levelCount][];
+			for ( int j = 0; j < levelCount; j++ )
+			{
+				levelNames[i][j] = levels[j].getName( );
+				String[] keyNames = levels[j].getKeyNames( );
+				keyDataTypes[i][j] = new int[keyNames.length];
+				for ( int k = 0; k < keyNames.length; k++ )
+				{
+					keyDataTypes[i][j][k] = levels[j].getKeyDataType( keyNames[k] );
+				}
+				String[] attributeNames = levels[j].getAttributeNames( );
+				if ( attributeNames != null )
+				{
+					attributeDataTypes[i][j] = new int[attributeNames.length];
+					for ( int k = 0; k < attributeNames.length; k++ )
+					{
+						attributeDataTypes[i][j][k] = levels[j].getAttributeDataType( attributeNames[k] );
+					}
+				}
+			}
+		}
+
+		// the types of the aggregated values are found from the first values
+		// which are not null
+		measureInfos = new MeasureInfo[functions.size( )];
+		for ( int i = 0; i < measureInfos.length; i++ )
+		{
+			measureInfos[i] = new MeasureInfo( functions.get( i ).getName( ),
+					DataType.UNKNOWN_TYPE );
+		}
+		rowCount = resultSet.length( );
+		for ( int i = 0; i < rowCount; i++ )
+		{
+			resultSet.seek( i );
+			Object[] values = resultSet.getCurrentRow( ).getAggregationValues( );
+			boolean found = true;
+			for ( int j = 0; j < measureInfos.length; j++ )
+			{
+				if ( measureInfos[j].getDataType( ) == DataType.UNKNOWN_TYPE )
+				{
+					if ( values != null && values[j] != null )
+					{
+						measureInfos[j].setDataType( DataType.getDataType( values[j].getClass( ) ) );
+					}
+					else
+					{
+						found = false;
+					}
+				}
+			}
+			if ( found )
+			{
+				break;
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @param documentObject
+	 * @throws IOException
+	 */
+	private void writeHeader( IDocumentObject documentObject )
+			throws IOException
+	{
+		documentObject.writeInt( dimensionNames.length );
+		for ( int i = 0; i < dimensionNames.length; i++ )
+		{
+			documentObject.writeString( dimensionNames[i] );
+			documentObject.writeInt( levelNames[i].length );
+			for ( int j = 0; j < levelNames[i].length; j++ )
+			{
+				documentObject.writeString( levelNames[i][j] );
+				writeIntArray( documentObject, keyDataTypes[i][j] );
+				writeIntArray( documentObject, attributeDataTypes[i][j] );
+			}
+		}
+		documentObject.writeInt( measureInfos.length );
+		for ( int i = 0; i < measureInfos.length; i++ )
+		{
+			documentObject.writeString( measureInfos[i].getMeasureName( ) );
+			documentObject.writeInt( measureInfos[i].getDataType( ) );
+		}
+		documentObject.writeInt( rowCount );
+	}
+
+	/**
+	 *
+	 * @param documentObject
+	 * @return false if the creation of the aggregate was stopped
+	 * @throws IOException
+	 */
+	private boolean readHeader( IDocumentObject documentObject )
+			throws IOException
+	{
+		int dimensionCount = documentObject.readInt( );
+		if ( dimensionCount < 0 )
+		{
+			return false;
+		}
+		dimensionNames = new String[dimensionCount];
+		levelNames = new String[dimensionNames.length][];
+		keyDataTypes = new int[dimensionNames.length][][];
+		attributeDataTypes = new int[dimensionNames.length][][];
+		for ( int i = 0; i < dimensionNames.length; i++ )
+		{
+			dimensionNames[i] = documentObject.readString( );
+			int levelCount = documentObject.readInt( );
+			levelNames[i] = new String[levelCount];
+			keyDataTypes[i] = new int[levelCount][];
+			attributeDataTypes[i] = new int[levelCount][];
+			for ( int j = 0; j < levelCount; j++ )
+			{
+				levelNames[i][j] = documentObject.readString( );
+				keyDataTypes[i][j] = readIntArray( documentObject );
+				attributeDataTypes[i][j] = readIntArray( documentObject );
+			}
+		}
+		measureInfos = new MeasureInfo[documentObject.readInt( )];
+		for ( int i = 0; i < measureInfos.length; i++ )
+		{
+			String name = documentObject.readString( );
+			measureInfos[i] = new MeasureInfo( name, documentObject.readInt( ) );
+		}
+		rowCount = documentObject.readInt( );
+		rowOffset = documentObject.getFilePointer( );
+		return true;
+	}
+
+	/**
+	 *
+	 * @param documentObject
+	 * @param resultSet
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	private void writeRows( IDocumentObject documentObject,
+			IAggregationResultSet resultSet ) throws IOException,
+			DataException
+	{
+		int[] measureDataTypes = new int[measureInfos.length];
+		for ( int i = 0; i < measureDataTypes.length; i++ )
+		{
+			measureDataTypes[i] = measureInfos[i].getDataType( );
+		}
+		for ( int i = 0; i < rowCount; i++ )
+		{
+			resultSet.seek( i );
+			IAggregationResultRow row = resultSet.getCurrentRow( );
+			Member[] members = row.getLevelMembers( );
+			int memberIndex = 0;
+			for ( int j = 0; j < dimensionNames.length; j++ )
+			{
+				for ( int k = 0; k < levelNames[j].length; k++ )
+				{
+					Member member = members[memberIndex++];
+					DocumentObjectUtil.writeValue( documentObject,
+							keyDataTypes[j][k],
+							member.getKeyValues( ) );
+					if ( attributeDataTypes[j][k] != null )
+					{
+						Object[] attributes = member.getAttributes( );
+						if ( attributes == null )
+						{
+							attributes = new Object[attributeDataTypes[j][k].length];
+						}
+						DocumentObjectUtil.writeValue( documentObject,
+								attributeDataTypes[j][k],
+								attributes );
+					}
+				}
+			}
+			Object[] values = row.getAggregationValues( );
+			if ( values == null )
+			{
+				values = new Object[measureDataTypes.length];
+			}
+			DocumentObjectUtil.writeValue( documentObject,
+					measureDataTypes,
+					values );
+		}
+	}
+
+	/**
+	 * Open the document object of the rows, which is positioned at the first
+	 * row.
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	IDocumentObject openRows( ) throws IOException
+	{
+		IDocumentObject documentObject = documentManager.openDocumentObject( documentName );
+		documentObject.seek( rowOffset );
+		return documentObject;
+	}
+
+	/**
+	 * Read the members and the aggregated values of a row.
+	 *
+	 * @param documentObject
+	 * @param members
+	 *            the members of all the levels of this aggregate
+	 * @return the aggregated values
+	 * @throws IOException
+	 */
+	Object[] readRow( IDocumentObject documentObject, Member[] members )
+			throws IOException
+	{
+		int memberIndex = 0;
+		for ( int i = 0; i < dimensionNames.length; i++ )
+		{
+			for ( int j = 0; j < levelNames[i].length; j++ )
+			{
+				Member member = new Member( );
+				member.setKeyValues( DocumentObjectUtil.readValue( documentObject,
+						keyDataTypes[i][j] ) );
+				if ( attributeDataTypes[i][j] != null )
+				{
+					member.setAttributes( DocumentObjectUtil.readValue( documentObject,
+							attributeDataTypes[i][j] ) );
+				}
+				members[memberIndex++] = member;
+			}
+		}
+		Object[] values = new Object[measureInfos.length];
+		for ( int i = 0; i < values.length; i++ )
+		{
+			values[i] = DocumentObjectUtil.readValue( documentObject,
+					measureInfos[i].getDataType( ) );
+		}
+		return values;
+	}
+
+	/**
+	 *
+	 * @return the count of the members of a row
+	 */
+	int getLevelCount( )
+	{
+		int count = 0;
+		for ( int i = 0; i < levelNames.length; i++ )
+		{
+			count += levelNames[i].length;
+		}
+		return count;
+	}
+
+	/**
+	 *
+	 * @param dimensionName
+	 * @return the index of the member of the top level of a dimension in a
+	 *         row, -1 if the dimension is not saved
+	 */
+	int getMemberOffset( String dimensionName )
+	{
+		int offset = 0;
+		for ( int i = 0; i < dimensionNames.length; i++ )
+		{
+			if ( dimensionNames[i].equals( dimensionName ) )
+			{
+				return offset;
+			}
+			offset += levelNames[i].length;
+		}
+		return -1;
+	}
+
+	/**
+	 *
+	 * @param dimensionName
+	 * @return the count of the saved levels of a dimension
+	 */
+	int getLevelCount( String dimensionName )
+	{
+		int index = indexOf( dimensionNames, dimensionName );
+		return index < 0 ? 0 : levelNames[index].length;
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	MeasureInfo[] getMeasureInfos( )
+	{
+		return measureInfos;
+	}
+
+	/**
+	 *
+	 * @param measureName
+	 * @return
+	 */
+	int getMeasureIndex( String measureName )
+	{
+		for ( int i = 0; i < measureInfos.length; i++ )
+		{
+			if ( measureInfos[i].getMeasureName( ).equals( measureName ) )
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the deepest level queried in each dimension.
+	 *
+	 * @param aggregations
+	 * @return
+	 */
+	private static DimLevel[] getQueriedLevels(
+			AggregationDefinition[] aggregations )
+	{
+		List<DimLevel> result = new ArrayList<DimLevel>( );
+		for ( int i = 0; i < aggregations.length; i++ )
+		{
+			DimLevel[] levels = aggregations[i].getLevels( );
+			for ( int j = 0; levels != null && j < levels.length; j++ )
+			{
+				result.add( new DimLevel( levels[j].getDimensionName( ),
+						levels[j].getLevelName( ) ) );
+			}
+		}
+		return result.toArray( new DimLevel[result.size( )] );
+	}
+
+	/**
+	 * Get the count of the top levels of each dimension which cover the
+	 * levels. The time dimensions are not aggregated.
+	 *
+	 * @param dimensions
+	 * @param levels
+	 * @return
+	 */
+	private static int[] getLevelDepth( IDimension[] dimensions,
+			DimLevel[] levels )
+	{
+		int[] depth = new int[dimensions.length];
+		for ( int i = 0; i < levels.length; i++ )
+		{
+			for ( int j = 0; j < dimensions.length; j++ )
+			{
+				if ( dimensions[j].isTime( )
+						|| !dimensions[j].getName( )
+								.equals( levels[i].getDimensionName( ) ) )
+				{
+					continue;
+				}
+				ILevel[] dimLevels = dimensions[j].getHierarchy( ).getLevels( );
+				for ( int k = 0; k < dimLevels.length; k++ )
+				{
+					if ( dimLevels[k].getName( )
+							.equals( levels[i].getLevelName( ) ) )
+					{
+						depth[j] = Math.max( depth[j], k + 1 );
+					}
+				}
+			}
+		}
+		return depth;
+	}
+
+	/**
+	 *
+	 * @param functionName
+	 * @param measureName
+	 * @return the name of the column of a measure aggregated by a function
+	 */
+	static String getColumnName( String functionName,
+			String measureName )
+	{
+		return "_${" + functionName + "}$_" + measureName; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private static boolean isRollupFunction( String functionName )
+	{
+		return indexOf( FUNCTION_NAMES, functionName ) >= 0;
+	}
+
+	private static boolean isNumeric( int dataType )
+	{
+		return dataType == DataType.INTEGER_TYPE
+				|| dataType == DataType.DOUBLE_TYPE
+				|| dataType == DataType.BIGDECIMAL_TYPE;
+	}
+
+	private static int indexOf( String[] names, String name )
+	{
+		for ( int i = 0; i < names.length; i++ )
+		{
+			if ( names[i].equals( name ) )
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static void writeIntArray( IDocumentObject documentObject,
+			int[] values ) throws IOException
+	{
+		if ( values == null )
+		{
+			documentObject.writeInt( -1 );
+			return;
+		}
+		documentObject.writeInt( values.length );
+		for ( int i = 0; i < values.length; i++ )
+		{
+			documentObject.writeInt( values[i] );
+		}
+	}
+
+	private static int[] readIntArray( IDocumentObject documentObject )
+			throws IOException
+	{
+		int length = documentObject.readInt( );
+		if ( length < 0 )
+		{
+			return null;
+		}
+		int[] values = new int[length];
+		for ( int i = 0; i < length; i++ )
+		{
+			values[i] = documentObject.readInt( );
+		}
+		return values;
+	}
+}
@@ -42,7 +42,6 @@ import org.eclipse.birt.data.engine.olap.data.impl.aggregation.function.Abstract
 import org.eclipse.birt.data.engine.olap.data.impl.aggregation.function.TimeFunctionFactory;
 import org.eclipse.birt.data.engine.olap.data.impl.aggregation.function.TimeMemberUtil;
 import org.eclipse.birt.data.engine.olap.data.impl.dimension.Member;
-import org.eclipse.birt.data.engine.olap.data.util.BufferedStructureArray;
 import org.eclipse.birt.data.engine.olap.data.util.IDiskArray;
 import org.eclipse.birt.data.engine.olap.util.filter.IJSFacttableFilterEvalHelper;
 
@@ -145,19 +144,21 @@ public class AggregationCalculator
 		{
 			levelSize = getLevelSize( metaInfo, aggregationDef.getLevels( ) );
 		}
-		int measureSize = 0;
+		int measureCount = 0;
 		if( aggregationFunction != null && aggregationFunction.length > 0 )
 		{
-			measureSize = aggregationFunction.length * 64;
+			measureCount = aggregationFunction.length;
 		}
-		int rowSize = 16 + ( 4 + ( levelSize + measureSize ) - 1 ) / 8 * 8;
+		// the rows are saved as member indexes and primitive measure values,
+		// only the distinct members of the levels are kept as objects
+		int rowSize = levelSize
+				+ AggregationResultRowArray.getRowSize( levelCount, measureCount );
 		int bufferSize = (int) ( memoryCacheSize / rowSize );
 		if( bufferSize != 0 )
-			result = new BufferedStructureArray( AggregationResultRow.getCreator( ), bufferSize );
+			result = new AggregationResultRowArray( bufferSize );
 		else
 		{
-			result = new BufferedStructureArray( AggregationResultRow.getCreator( ), 1000 );
-			( ( BufferedStructureArray )result ).setUseMemoryOnly( true );
+			result = new AggregationResultRowArray( );
 		}
 		measureInfos = metaInfo.getMeasureInfos( );
 		facttableRow = new FacttableRow( measureInfos, cubeDimensionReader, metaInfo );
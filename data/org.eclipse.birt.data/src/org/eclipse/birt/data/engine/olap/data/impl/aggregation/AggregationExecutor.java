@@ -17,10 +17,17 @@ import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import org.eclipse.birt.core.exception.BirtException;
 import org.eclipse.birt.data.engine.aggregation.AggregationUtil;
+import org.eclipse.birt.data.engine.api.DataEngineThreadLocal;
 import org.eclipse.birt.data.engine.api.aggregation.AggregationManager;
 import org.eclipse.birt.data.engine.core.DataException;
 import org.eclipse.birt.data.engine.executor.ComparatorUtil;
@@ -74,6 +81,11 @@ public class AggregationExecutor
 	public Row4Aggregation[] aggregationRow;
 	private AggregationFunctionDefinition simpleFunc;
 	private boolean existReferenceDate = false;
+	private int mergeBufferSize;
+	
+	//the data sets which read the partitions of the fact rows concurrently
+	private IDataSet4Aggregation[] partitionDataSets = null;
+	private volatile boolean scanAborted = false;
 	
 	private static String[] simpleFuncNames = new String[]{
 		"SUM",
@@ -83,6 +95,20 @@ public class AggregationExecutor
 		"LAST"
 	};
 	
+	//the functions whose results do not depend on the order of the fact rows
+	private static String[] orderInsensitiveFuncNames = new String[]{
+		"SUM",
+		"COUNT",
+		"COUNTDISTINCT",
+		"AVE",
+		"MAX",
+		"MIN",
+		"MEDIAN",
+		"MODE",
+		"STDDEV",
+		"VARIANCE"
+	};
+	
 	/**
 	 * 
 	 * @param dimensionResultIterators
@@ -260,6 +286,56 @@ public class AggregationExecutor
 		return true;
 	}
 	
+	/**
+	 * Whether the fact rows can be scanned by partitions concurrently. It is
+	 * not supported if an aggregation depends on the order of the fact rows,
+	 * or has a filter evaluated by script.
+	 * 
+	 * @return
+	 */
+	public boolean isParallelScanSupported( )
+	{
+		for ( int i = 0; i < aggregationCalculators.length; i++ )
+		{
+			AggregationFunctionDefinition[] aggrFunc = aggregationCalculators[i].aggregation.getAggregationFunctions( );
+			if ( aggrFunc == null )
+				continue;
+			for ( int j = 0; j < aggrFunc.length; j++ )
+			{
+				if ( aggrFunc[j].getFilterEvalHelper( ) != null
+						|| !isOrderInsensitiveFunction( aggrFunc[j].getFunctionName( ) ) )
+				{
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Set the data sets which read the disjoint partitions of the fact rows.
+	 * They are scanned concurrently instead of the data set of this executor,
+	 * and closed when the execution is done.
+	 * 
+	 * @param partitionDataSets
+	 */
+	public void setPartitionDataSets( IDataSet4Aggregation[] partitionDataSets )
+	{
+		this.partitionDataSets = partitionDataSets;
+	}
+	
+	private static boolean isOrderInsensitiveFunction( String funcName )
+	{
+		for ( int i = 0; i < orderInsensitiveFuncNames.length; i++ )
+		{
+			if ( orderInsensitiveFuncNames[i].equals( funcName ) )
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+	
 	private static boolean isSimepleFunction( String funcName )
 	{
 		for( int i = 0; i < simpleFuncNames.length; i++ )
@@ -340,6 +416,7 @@ public class AggregationExecutor
 		}
 		
 		this.dataSet4Aggregation.close( );
+		closePartitionDataSets( );
 		return resultSets;
 	}
 	
@@ -685,6 +762,11 @@ public class AggregationExecutor
 //				facttableRowIterator, parameterColIndexs );
 
 		prepareSortedStacks( );
+		if ( partitionDataSets != null )
+		{
+			populateSortedFactRowsInParallel( stopSign );
+			return;
+		}
 		int measureCount = dataSet4Aggregation.getMetaInfo( ).getMeasureInfos( ).length;
 		int factRowCount = 0;
 		if( this.aggregationRow == null )
@@ -780,10 +862,121 @@ public class AggregationExecutor
 		}
 	}
 	
+	/**
+	 * Scan the partitions of the fact rows on a thread pool. Each partition is
+	 * pre-aggregated by its own merge buffers, and the rows of the buffers are
+	 * pushed to the shared sorted stacks, where the rows of the same members
+	 * from different partitions are aggregated together.
+	 * 
+	 * @param stopSign
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	private void populateSortedFactRowsInParallel( StopSign stopSign )
+			throws IOException, DataException
+	{
+		DiskSortedStackWrapper[] diskSortedStackWrapper = new DiskSortedStackWrapper[allSortedFactRows.size( )];
+		for ( int i = 0; i < allSortedFactRows.size( ); i++ )
+		{
+			diskSortedStackWrapper[i] = ( (DiskSortedStackWrapper) allSortedFactRows.get( i ) );
+		}
+		AtomicInteger factRowCount = new AtomicInteger( );
+		// the sorted stacks spill the rows to the temp folder of the session
+		String tempPath = DataEngineThreadLocal.getInstance( )
+				.getPathManager( )
+				.getTempPath( );
+		ForkJoinPool pool = new ForkJoinPool( partitionDataSets.length );
+		List<Future<Object>> scans = new ArrayList<Future<Object>>( );
+		try
+		{
+			for ( int i = 0; i < partitionDataSets.length; i++ )
+			{
+				scans.add( pool.submit( new PartitionScanTask( partitionDataSets[i],
+						diskSortedStackWrapper,
+						factRowCount,
+						stopSign,
+						tempPath ) ) );
+			}
+			for ( int i = 0; i < scans.size( ); i++ )
+			{
+				waitForScan( scans.get( i ) );
+			}
+		}
+		finally
+		{
+			// stop the other scans if one of them fails
+			scanAborted = true;
+			pool.shutdown( );
+			try
+			{
+				pool.awaitTermination( Long.MAX_VALUE, TimeUnit.MILLISECONDS );
+			}
+			catch ( InterruptedException e )
+			{
+				Thread.currentThread( ).interrupt( );
+			}
+		}
+		this.mergeRow4Aggregations = null;
+	}
+	
+	/**
+	 * @param scan
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	private static void waitForScan( Future<Object> scan ) throws IOException,
+			DataException
+	{
+		try
+		{
+			scan.get( );
+		}
+		catch ( InterruptedException e )
+		{
+			Thread.currentThread( ).interrupt( );
+			throw new DataException( ResourceConstants.OLAPFILE_DATA_ERROR, e );
+		}
+		catch ( ExecutionException e )
+		{
+			Throwable cause = e.getCause( );
+			if ( cause instanceof IOException )
+				throw (IOException) cause;
+			if ( cause instanceof DataException )
+				throw (DataException) cause;
+			if ( cause instanceof BirtException )
+				throw DataException.wrap( (BirtException) cause );
+			if ( cause instanceof RuntimeException )
+				throw (RuntimeException) cause;
+			throw new DataException( ResourceConstants.OLAPFILE_DATA_ERROR,
+					cause );
+		}
+	}
+	
+	/**
+	 * 
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	private void closePartitionDataSets( ) throws IOException, DataException
+	{
+		if ( partitionDataSets == null )
+			return;
+		for ( int i = 0; i < partitionDataSets.length; i++ )
+		{
+			partitionDataSets[i].close( );
+		}
+		partitionDataSets = null;
+	}
+	
 	protected Row4Aggregation createRow4Aggregation( )
+	{
+		return createRow4Aggregation( dataSet4Aggregation );
+	}
+	
+	protected Row4Aggregation createRow4Aggregation( IDataSet4Aggregation dataSet )
 	{
 		Row4Aggregation aggregationRow = new Row4Aggregation( );
-		aggregationRow.setDimPos( dataSet4Aggregation.getDimensionPosition( ) );
+		aggregationRow.setDimPos( dataSet.getDimensionPosition( ) );
 		return aggregationRow;
 	}
 
@@ -794,13 +987,19 @@ public class AggregationExecutor
 	
 	
 	Member[] getLevelMembers( int[] levelIndex ) throws BirtException, IOException 
+	{
+		return getLevelMembers( dataSet4Aggregation, levelIndex );
+	}
+	
+	Member[] getLevelMembers( IDataSet4Aggregation dataSet, int[] levelIndex )
+			throws BirtException, IOException
 	{
 		Member[] result = new Member[levelIndex.length / 2];
 		for ( int i = 0; i < result.length; i++ )
 		{
 			int dim = levelIndex[i * 2];
 			int level = levelIndex[i * 2 + 1];
-			result[i] = dataSet4Aggregation.getMember( dim, level );
+			result[i] = dataSet.getMember( dim, level );
 			if ( result[i] == null )
 			{
 				return null;
@@ -810,6 +1009,12 @@ public class AggregationExecutor
 	}
 	
 	Object[] getParameterValues( ) throws BirtException, IOException
+	{
+		return getParameterValues( dataSet4Aggregation );
+	}
+	
+	Object[] getParameterValues( IDataSet4Aggregation dataSet )
+			throws BirtException, IOException
 	{
 		if( paraInfos == null || paraInfos.length == 0 )
 		{
@@ -818,7 +1023,7 @@ public class AggregationExecutor
 		Object[] reValues = new Object[paraInfos.length];
 		for ( int i = 0; i < reValues.length; i++ )
 		{
-			Member member = dataSet4Aggregation.getMember( paraInfos[i].getDimIndex( ), paraInfos[i].getLevelIndex( ) );
+			Member member = dataSet.getMember( paraInfos[i].getDimIndex( ), paraInfos[i].getLevelIndex( ) );
 			if( paraInfos[i].isKey( ) )
 			{
 				reValues[i] = member.getKeyValues( )[paraInfos[i].getColumnIndex( )];
@@ -931,6 +1136,7 @@ public class AggregationExecutor
 				diskSortedStackReader.getDiskSortedStack().setBufferSize( bufferSize );
 			}
 		}
+		this.mergeBufferSize = bufferSize;
 		for (int i = 0; i < allSortedFactRows.size( ); i++)
 		{
 			mergeRow4Aggregations[i] = new MergeRow4Aggregation( bufferSize, simpleFunc,
@@ -938,6 +1144,160 @@ public class AggregationExecutor
 		}
 	}
 	
+	/**
+	 * The scan of a partition of the fact rows, which is run on the pool.
+	 */
+	private class PartitionScanTask implements Callable<Object>
+	{
+		private IDataSet4Aggregation dataSet;
+		private DiskSortedStackWrapper[] diskSortedStackWrapper;
+		private AtomicInteger factRowCount;
+		private StopSign stopSign;
+		private String tempPath;
+		private Row4Aggregation[] aggregationRow;
+		private MergeRow4Aggregation[] mergeRow4Aggregations;
+
+		/**
+		 * 
+		 * @param dataSet
+		 * @param diskSortedStackWrapper
+		 * @param factRowCount
+		 * @param stopSign
+		 * @param tempPath
+		 */
+		PartitionScanTask( IDataSet4Aggregation dataSet,
+				DiskSortedStackWrapper[] diskSortedStackWrapper,
+				AtomicInteger factRowCount, StopSign stopSign, String tempPath )
+		{
+			this.dataSet = dataSet;
+			this.diskSortedStackWrapper = diskSortedStackWrapper;
+			this.factRowCount = factRowCount;
+			this.stopSign = stopSign;
+			this.tempPath = tempPath;
+			this.aggregationRow = new Row4Aggregation[diskSortedStackWrapper.length];
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		public Object call( ) throws Exception
+		{
+			DataEngineThreadLocal.getInstance( )
+					.getPathManager( )
+					.setTempPath( tempPath );
+			if ( !existReferenceDate )
+			{
+				// the merge buffers of all the partitions take the memory of
+				// the ones of a serial scan
+				mergeRow4Aggregations = new MergeRow4Aggregation[diskSortedStackWrapper.length];
+				for ( int i = 0; i < mergeRow4Aggregations.length; i++ )
+				{
+					mergeRow4Aggregations[i] = new MergeRow4Aggregation( Math.max( 1,
+							mergeBufferSize / partitionDataSets.length ),
+							simpleFunc,
+							measureIndexes4Merge,
+							parameterColIndex4Merge );
+				}
+			}
+			int measureCount = dataSet.getMetaInfo( ).getMeasureInfos( ).length;
+			while ( !scanAborted && dataSet.next( ) && !stopSign.isStopped( ) )
+			{
+				for ( int i = 0; i < diskSortedStackWrapper.length; i++ )
+				{
+					if ( !dataSet.isDuplicatedRow( ) )
+					{
+						Member[] members = getLevelMembers( dataSet,
+								diskSortedStackWrapper[i].levelIndex );
+						if ( aggregationRow[i] != null )
+						{
+							push( i, aggregationRow[i] );
+						}
+						aggregationRow[i] = createRow4Aggregation( dataSet );
+						aggregationRow[i].setLevelMembers( members );
+						if ( aggregationRow[i].getLevelMembers( ) == null )
+						{
+							continue;
+						}
+						aggregationRow[i].setMeasures( new Object[measureCount] );
+						for ( int j = 0; j < measureCount; j++ )
+						{
+							aggregationRow[i].getMeasures( )[j] = dataSet.getMeasureValue( j );
+						}
+						aggregationRow[i].setParameterValues( getParameterValues( dataSet ) );
+					}
+					else
+					{
+						Object[] measures = new Object[measureCount];
+						for ( int j = 0; j < measureCount; j++ )
+						{
+							measures[j] = dataSet.getMeasureValue( j );
+						}
+						aggregationRow[i].addMeasure( measures );
+						addPosition( aggregationRow[i] );
+					}
+				}
+				if ( maxDataObjectRows > 0
+						&& factRowCount.incrementAndGet( ) > maxDataObjectRows )
+					throw new DataException( ResourceConstants.EXCEED_MAX_DATA_OBJECT_ROWS );
+			}
+			for ( int i = 0; i < diskSortedStackWrapper.length; i++ )
+			{
+				if ( aggregationRow[i] != null )
+				{
+					push( i, aggregationRow[i] );
+				}
+				if ( mergeRow4Aggregations != null )
+				{
+					List<Row4Aggregation> remainRows = mergeRow4Aggregations[i].getAll( );
+					for ( int j = 0; j < remainRows.size( ); j++ )
+					{
+						pushToSortedStack( i, remainRows.get( j ) );
+					}
+					mergeRow4Aggregations[i] = null;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Push a row to the merge buffer, and the row which is popped from the
+		 * buffer to the shared sorted stack.
+		 * 
+		 * @param index
+		 * @param row
+		 * @throws IOException
+		 * @throws DataException
+		 */
+		private void push( int index, Row4Aggregation row ) throws IOException,
+				DataException
+		{
+			if ( mergeRow4Aggregations != null )
+			{
+				row = mergeRow4Aggregations[index].push( row );
+				if ( row == null )
+					return;
+			}
+			pushToSortedStack( index, row );
+		}
+
+		/**
+		 * 
+		 * @param index
+		 * @param row
+		 * @throws IOException
+		 */
+		private void pushToSortedStack( int index, Row4Aggregation row )
+				throws IOException
+		{
+			DiskSortedStack diskSortedStack = diskSortedStackWrapper[index].diskSortedStack;
+			synchronized ( diskSortedStack )
+			{
+				diskSortedStack.push( row );
+			}
+		}
+	}
+	
 	private int getMeasureSize( ) throws IOException
 	{
 		MeasureInfo[] measureInfo = dataSet4Aggregation.getMetaInfo( ).getMeasureInfos( );
@@ -0,0 +1,572 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.birt.data.engine.olap.data.impl.aggregation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.birt.data.engine.olap.data.api.IAggregationResultRow;
+import org.eclipse.birt.data.engine.olap.data.impl.AggregationResultSetSaveUtil;
+import org.eclipse.birt.data.engine.olap.data.impl.dimension.Member;
+import org.eclipse.birt.data.engine.olap.data.util.IDiskArray;
+import org.eclipse.birt.data.engine.olap.data.util.IStructure;
+import org.eclipse.birt.data.engine.olap.data.util.IStructureCreator;
+import org.eclipse.birt.data.engine.olap.data.util.StructureDiskArray;
+
+/**
+ * A compact array of aggregation result rows. The level members are saved as
+ * the indexes of the distinct members of each level, and the numeric
+ * aggregation values are saved in primitive long columns, so that a row only
+ * takes a few bytes in memory. The rows are created again when they are read.
+ * The rows beyond the buffer size are saved on disk in the format of the
+ * saved aggregation result sets, since the field writers of
+ * StructureDiskArray do not support all the types of aggregation values, such
+ * as Long.
+ */
+
+public class AggregationResultRowArray implements IDiskArray
+{
+	private static final int CHUNK_BITS = 13;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	// the kinds of the aggregation value columns
+	private static final int UNKNOWN_VALUE = 0;
+	private static final int INTEGER_VALUE = 1;
+	private static final int LONG_VALUE = 2;
+	private static final int DOUBLE_VALUE = 3;
+	private static final int OBJECT_VALUE = 4;
+
+	private int bufferSize;
+	private int rowCount;
+	private StructureDiskArray diskList;
+
+	// -1 if the rows have no level members
+	private int levelCount = -1;
+	// -1 if no row with aggregation values is added
+	private int aggregationCount = -1;
+	private List<Member>[] members;
+	private Map<Member, Integer>[] memberIndexMap;
+	// [level][chunk][row], -1 for a null member
+	private int[][][] memberIndexes;
+	// [aggregation][chunk][row]
+	private long[][][] values;
+	private Object[][][] objectValues;
+	private int[] valueKinds;
+	private BitSet[] nullValues;
+	private BitSet noAggregationValues;
+
+	/**
+	 * Create an array which saves all the rows in memory.
+	 */
+	public AggregationResultRowArray( )
+	{
+		this( Integer.MAX_VALUE );
+	}
+
+	/**
+	 *
+	 * @param bufferSize
+	 *            the count of the rows saved in memory
+	 */
+	public AggregationResultRowArray( int bufferSize )
+	{
+		this.bufferSize = bufferSize <= 0 ? Integer.MAX_VALUE : bufferSize;
+		this.noAggregationValues = new BitSet( );
+	}
+
+	/**
+	 *
+	 * @param levelCount
+	 * @param aggregationCount
+	 * @return the estimated memory size of a row in bytes
+	 */
+	public static int getRowSize( int levelCount, int aggregationCount )
+	{
+		return 4 * levelCount + 8 * aggregationCount + 1;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.birt.data.engine.olap.data.util.IDiskArray#add(java.lang.Object)
+	 */
+	public boolean add( Object o ) throws IOException
+	{
+		if ( rowCount >= bufferSize )
+		{
+			if ( diskList == null )
+			{
+				diskList = new StructureDiskArray( SpilledRow.getCreator( ) );
+			}
+			diskList.add( new SpilledRow( (IAggregationResultRow) o ) );
+			return false;
+		}
+		IAggregationResultRow row = (IAggregationResultRow) o;
+		if ( rowCount == 0 )
+		{
+			initLevels( row.getLevelMembers( ) );
+		}
+		int chunk = rowCount >> CHUNK_BITS;
+		int offset = rowCount & CHUNK_MASK;
+		if ( levelCount > 0 )
+		{
+			addMembers( row.getLevelMembers( ), chunk, offset );
+		}
+		Object[] aggregationValues = row.getAggregationValues( );
+		if ( aggregationValues == null )
+		{
+			noAggregationValues.set( rowCount );
+		}
+		else
+		{
+			if ( aggregationCount < 0 )
+			{
+				initValues( aggregationValues.length );
+			}
+			addValues( aggregationValues, chunk, offset );
+		}
+		rowCount++;
+		return true;
+	}
+
+	/**
+	 *
+	 * @param levelMembers
+	 */
+	@SuppressWarnings("unchecked")
+	private void initLevels( Member[] levelMembers )
+	{
+		levelCount = levelMembers == null ? -1 : levelMembers.length;
+		if ( levelCount <= 0 )
+		{
+			return;
+		}
+		members = new List[levelCount];
+		memberIndexMap = new Map[levelCount];
+		memberIndexes = new int[levelCount][][];
+		for ( int i = 0; i < levelCount; i++ )
+		{
+			members[i] = new ArrayList<Member>( );
+			memberIndexMap[i] = new HashMap<Member, Integer>( );
+			memberIndexes[i] = new int[16][];
+		}
+	}
+
+	/**
+	 *
+	 * @param count
+	 */
+	private void initValues( int count )
+	{
+		aggregationCount = count;
+		values = new long[count][16][];
+		objectValues = new Object[count][][];
+		valueKinds = new int[count];
+		nullValues = new BitSet[count];
+		for ( int i = 0; i < count; i++ )
+		{
+			nullValues[i] = new BitSet( );
+		}
+	}
+
+	/**
+	 *
+	 * @param levelMembers
+	 * @param chunk
+	 * @param offset
+	 */
+	private void addMembers( Member[] levelMembers, int chunk, int offset )
+	{
+		for ( int i = 0; i < levelCount; i++ )
+		{
+			memberIndexes[i] = ensureChunk( memberIndexes[i], chunk );
+			memberIndexes[i][chunk][offset] = getMemberIndex( i,
+					levelMembers[i] );
+		}
+	}
+
+	/**
+	 *
+	 * @param levelIndex
+	 * @param member
+	 * @return the index of the member in the distinct members of the level
+	 */
+	private int getMemberIndex( int levelIndex, Member member )
+	{
+		if ( member == null )
+		{
+			return -1;
+		}
+		// the members with null key values can not be compared
+		boolean comparable = member.getKeyValues( ) != null;
+		for ( int i = 0; comparable && i < member.getKeyValues( ).length; i++ )
+		{
+			comparable = member.getKeyValues( )[i] != null;
+		}
+		if ( comparable )
+		{
+			Integer index = memberIndexMap[levelIndex].get( member );
+			if ( index != null )
+			{
+				return index.intValue( );
+			}
+			memberIndexMap[levelIndex].put( member,
+					Integer.valueOf( members[levelIndex].size( ) ) );
+		}
+		members[levelIndex].add( member );
+		return members[levelIndex].size( ) - 1;
+	}
+
+	/**
+	 *
+	 * @param aggregationValues
+	 * @param chunk
+	 * @param offset
+	 */
+	private void addValues( Object[] aggregationValues, int chunk,
+			int offset )
+	{
+		assert aggregationValues.length == aggregationCount;
+		for ( int i = 0; i < aggregationCount; i++ )
+		{
+			Object value = aggregationValues[i];
+			if ( value == null )
+			{
+				nullValues[i].set( rowCount );
+				if ( valueKinds[i] == OBJECT_VALUE )
+				{
+					objectValues[i] = ensureChunk( objectValues[i], chunk );
+				}
+				else
+				{
+					values[i] = ensureChunk( values[i], chunk );
+				}
+				continue;
+			}
+			if ( valueKinds[i] == UNKNOWN_VALUE )
+			{
+				valueKinds[i] = getValueKind( value );
+				if ( valueKinds[i] == OBJECT_VALUE )
+				{
+					toObjectValues( i );
+				}
+			}
+			else if ( valueKinds[i] != OBJECT_VALUE
+					&& valueKinds[i] != getValueKind( value ) )
+			{
+				toObjectValues( i );
+			}
+			if ( valueKinds[i] == OBJECT_VALUE )
+			{
+				objectValues[i] = ensureChunk( objectValues[i], chunk );
+				objectValues[i][chunk][offset] = value;
+			}
+			else
+			{
+				values[i] = ensureChunk( values[i], chunk );
+				values[i][chunk][offset] = valueKinds[i] == DOUBLE_VALUE
+						? Double.doubleToRawLongBits( ( (Double) value ).doubleValue( ) )
+						: ( (Number) value ).longValue( );
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @param value
+	 * @return
+	 */
+	private static int getValueKind( Object value )
+	{
+		if ( value instanceof Integer )
+		{
+			return INTEGER_VALUE;
+		}
+		if ( value instanceof Long )
+		{
+			return LONG_VALUE;
+		}
+		if ( value instanceof Double )
+		{
+			return DOUBLE_VALUE;
+		}
+		return OBJECT_VALUE;
+	}
+
+	/**
+	 * Save the values of a column as objects, since the values are not of
+	 * the same primitive type.
+	 *
+	 * @param aggregationIndex
+	 */
+	private void toObjectValues( int aggregationIndex )
+	{
+		Object[][] result = new Object[values[aggregationIndex].length][];
+		for ( int i = 0; i < rowCount; i++ )
+		{
+			int chunk = i >> CHUNK_BITS;
+			result = ensureChunk( result, chunk );
+			if ( !noAggregationValues.get( i ) )
+			{
+				result[chunk][i & CHUNK_MASK] = getValue( aggregationIndex, i );
+			}
+		}
+		objectValues[aggregationIndex] = result;
+		values[aggregationIndex] = null;
+		valueKinds[aggregationIndex] = OBJECT_VALUE;
+	}
+
+	/**
+	 *
+	 * @param aggregationIndex
+	 * @param index
+	 * @return
+	 */
+	private Object getValue( int aggregationIndex, int index )
+	{
+		if ( nullValues[aggregationIndex].get( index ) )
+		{
+			return null;
+		}
+		int chunk = index >> CHUNK_BITS;
+		int offset = index & CHUNK_MASK;
+		switch ( valueKinds[aggregationIndex] )
+		{
+			case INTEGER_VALUE :
+				return Integer.valueOf( (int) values[aggregationIndex][chunk][offset] );
+			case LONG_VALUE :
+				return Long.valueOf( values[aggregationIndex][chunk][offset] );
+			case DOUBLE_VALUE :
+				return new Double( Double.longBitsToDouble( values[aggregationIndex][chunk][offset] ) );
+			case OBJECT_VALUE :
+				return objectValues[aggregationIndex][chunk][offset];
+			default :
+				return null;
+		}
+	}
+
+	private static int[][] ensureChunk( int[][] chunks, int chunk )
+	{
+		if ( chunk >= chunks.length )
+		{
+			int[][] newChunks = new int[Math.max( chunks.length * 2,
+					chunk + 1 )][];
+			System.arraycopy( chunks, 0, newChunks, 0, chunks.length );
+			chunks = newChunks;
+		}
+		if ( chunks[chunk] == null )
+		{
+			chunks[chunk] = new int[CHUNK_SIZE];
+		}
+		return chunks;
+	}
+
+	private static long[][] ensureChunk( long[][] chunks, int chunk )
+	{
+		if ( chunk >= chunks.length )
+		{
+			long[][] newChunks = new long[Math.max( chunks.length * 2,
+					chunk + 1 )][];
+			System.arraycopy( chunks, 0, newChunks, 0, chunks.length );
+			chunks = newChunks;
+		}
+		if ( chunks[chunk] == null )
+		{
+			chunks[chunk] = new long[CHUNK_SIZE];
+		}
+		return chunks;
+	}
+
+	private static Object[][] ensureChunk( Object[][] chunks, int chunk )
+	{
+		if ( chunk >= chunks.length )
+		{
+			Object[][] newChunks = new Object[Math.max( chunks.length * 2,
+					chunk + 1 )][];
+			System.arraycopy( chunks, 0, newChunks, 0, chunks.length );
+			chunks = newChunks;
+		}
+		if ( chunks[chunk] == null )
+		{
+			chunks[chunk] = new Object[CHUNK_SIZE];
+		}
+		return chunks;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.birt.data.engine.olap.data.util.IDiskArray#get(int)
+	 */
+	public Object get( int index ) throws IOException
+	{
+		if ( index >= rowCount )
+		{
+			if ( diskList == null )
+			{
+				throw new IndexOutOfBoundsException( "Index: "
+						+ index + ", Size: " + size( ) );
+			}
+			return ( (SpilledRow) diskList.get( index - rowCount ) ).getRow( );
+		}
+		if ( index < 0 )
+		{
+			throw new IndexOutOfBoundsException( "Index: "
+					+ index + ", Size: " + size( ) );
+		}
+		int chunk = index >> CHUNK_BITS;
+		int offset = index & CHUNK_MASK;
+		Member[] levelMembers = null;
+		if ( levelCount >= 0 )
+		{
+			levelMembers = new Member[levelCount];
+			for ( int i = 0; i < levelCount; i++ )
+			{
+				int memberIndex = memberIndexes[i][chunk][offset];
+				if ( memberIndex >= 0 )
+				{
+					levelMembers[i] = members[i].get( memberIndex );
+				}
+			}
+		}
+		Object[] aggregationValues = null;
+		if ( !noAggregationValues.get( index ) )
+		{
+			aggregationValues = new Object[aggregationCount];
+			for ( int i = 0; i < aggregationCount; i++ )
+			{
+				aggregationValues[i] = getValue( i, index );
+			}
+		}
+		return new AggregationResultRow( levelMembers, aggregationValues );
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.birt.data.engine.olap.data.util.IDiskArray#size()
+	 */
+	public int size( )
+	{
+		if ( diskList == null )
+		{
+			return rowCount;
+		}
+		return rowCount + diskList.size( );
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.birt.data.engine.olap.data.util.IDiskArray#close()
+	 */
+	public void close( ) throws IOException
+	{
+		clear( );
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.birt.data.engine.olap.data.util.IDiskArray#clear()
+	 */
+	public void clear( ) throws IOException
+	{
+		rowCount = 0;
+		levelCount = -1;
+		aggregationCount = -1;
+		members = null;
+		memberIndexMap = null;
+		memberIndexes = null;
+		values = null;
+		objectValues = null;
+		valueKinds = null;
+		nullValues = null;
+		noAggregationValues = new BitSet( );
+		if ( diskList != null )
+		{
+			diskList.close( );
+			diskList = null;
+		}
+	}
+
+	/**
+	 * A row saved on disk, whose fields are saved as one byte array.
+	 */
+	private static class SpilledRow implements IStructure
+	{
+		private byte[] bytes;
+
+		/**
+		 *
+		 * @param row
+		 * @throws IOException
+		 */
+		SpilledRow( IAggregationResultRow row ) throws IOException
+		{
+			ByteArrayOutputStream bytesStream = new ByteArrayOutputStream( );
+			DataOutputStream outputStream = new DataOutputStream( bytesStream );
+			AggregationResultSetSaveUtil.saveAggregationRow( outputStream, row );
+			outputStream.close( );
+			this.bytes = bytesStream.toByteArray( );
+		}
+
+		/**
+		 *
+		 * @param bytes
+		 */
+		SpilledRow( byte[] bytes )
+		{
+			this.bytes = bytes;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.birt.data.engine.olap.data.util.IStructure#getFieldValues()
+		 */
+		public Object[] getFieldValues( )
+		{
+			return new Object[]{
+				bytes
+			};
+		}
+
+		/**
+		 *
+		 * @return the saved row
+		 * @throws IOException
+		 */
+		IAggregationResultRow getRow( ) throws IOException
+		{
+			return AggregationResultSetSaveUtil.loadAggregationRow( new DataInputStream(
+					new ByteArrayInputStream( bytes ) ) );
+		}
+
+		/**
+		 *
+		 * @return
+		 */
+		static IStructureCreator getCreator( )
+		{
+			return new IStructureCreator( ) {
+
+				public IStructure createInstance( Object[] fields )
+				{
+					return new SpilledRow( (byte[]) fields[0] );
+				}
+			};
+		}
+	}
+}
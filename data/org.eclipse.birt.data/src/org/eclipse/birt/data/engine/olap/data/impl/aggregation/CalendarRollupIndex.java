@@ -0,0 +1,524 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.birt.data.engine.olap.data.impl.aggregation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.birt.core.data.DataTypeUtil;
+import org.eclipse.birt.core.exception.BirtException;
+import org.eclipse.birt.data.engine.api.timefunction.TimeMember;
+import org.eclipse.birt.data.engine.core.DataException;
+import org.eclipse.birt.data.engine.olap.data.impl.dimension.Member;
+
+/**
+ * The rollup of the measure of a SUM or COUNT time function. The fact rows are
+ * grouped by the members of the levels which are not in the time dimension,
+ * and the measures of each group are kept as prefix sums over the time
+ * members sorted in calendar order. The members of a period, such as year to
+ * date or the trailing months, are a few ranges of the sorted time members,
+ * so the value of a cell is computed by subtracting the prefix sums of the
+ * range bounds instead of accumulating the fact rows of every member of the
+ * period. The prefix sums are compensated: the rounding error of each prefix
+ * sum is kept with it, so the difference of two large prefix sums keeps the
+ * precision of the fractions of the measures.
+ */
+class CalendarRollupIndex
+{
+	private int firstTimeLevel;
+	private int timeLevelCount;
+	private int measureIndex;
+	private boolean isCount;
+
+	private Map<MemberArray, Map<MemberArray, PointValue>> points;
+	private Map<MemberArray, GroupRollup> groups;
+	private Member[][] sortedPoints;
+	private Map<TimeMember, int[]> rangeCache;
+
+	/**
+	 *
+	 * @param firstTimeLevel
+	 *            the index of the first time level in the members of a row
+	 * @param timeLevelCount
+	 *            the count of the time levels in the members of a row
+	 * @param measureIndex
+	 *            the index of the measure, -1 if the rows are counted
+	 * @param isCount
+	 *            true for COUNT, false for SUM
+	 */
+	CalendarRollupIndex( int firstTimeLevel, int timeLevelCount,
+			int measureIndex, boolean isCount )
+	{
+		this.firstTimeLevel = firstTimeLevel;
+		this.timeLevelCount = timeLevelCount;
+		this.measureIndex = measureIndex;
+		this.isCount = isCount;
+		this.points = new HashMap<MemberArray, Map<MemberArray, PointValue>>( );
+		this.rangeCache = new HashMap<TimeMember, int[]>( );
+	}
+
+	/**
+	 * Whether the time function can be calculated with a calendar rollup.
+	 *
+	 * @param functionName
+	 * @param measureIndex
+	 * @param parameterColIndex
+	 * @return
+	 */
+	static boolean isSupported( String functionName, int measureIndex,
+			int parameterColIndex )
+	{
+		if ( parameterColIndex != -1 )
+		{
+			return false;
+		}
+		if ( "COUNT".equalsIgnoreCase( functionName ) ) //$NON-NLS-1$
+		{
+			return true;
+		}
+		return "SUM".equalsIgnoreCase( functionName ) && measureIndex >= 0; //$NON-NLS-1$
+	}
+
+	/**
+	 * Add the measures of a fact row.
+	 *
+	 * @param row
+	 * @throws DataException
+	 */
+	void add( Row4Aggregation row ) throws DataException
+	{
+		Member[] members = row.getLevelMembers( );
+		MemberArray group = new MemberArray( getGroupMembers( members ) );
+		Map<MemberArray, PointValue> groupPoints = points.get( group );
+		if ( groupPoints == null )
+		{
+			groupPoints = new HashMap<MemberArray, PointValue>( );
+			points.put( group, groupPoints );
+		}
+		Member[] timeMembers = new Member[timeLevelCount];
+		System.arraycopy( members,
+				firstTimeLevel,
+				timeMembers,
+				0,
+				timeLevelCount );
+		MemberArray point = new MemberArray( timeMembers );
+		PointValue value = groupPoints.get( point );
+		if ( value == null )
+		{
+			value = new PointValue( );
+			groupPoints.put( point, value );
+		}
+		while ( row.nextMeasures( ) )
+		{
+			Object measure = measureIndex < 0 ? null
+					: row.getMeasures( )[measureIndex];
+			if ( isCount )
+			{
+				if ( measureIndex < 0 || measure != null )
+				{
+					value.count++;
+				}
+			}
+			else if ( measure != null )
+			{
+				double d = toDouble( measure );
+				if ( Double.isNaN( d ) || Double.isInfinite( d ) )
+				{
+					value.invalidCount++;
+				}
+				else
+				{
+					value.sum += d;
+				}
+				value.count++;
+			}
+		}
+		row.firstMeasure( );
+	}
+
+	/**
+	 * Sort the time members of all the added rows and build the prefix sums
+	 * of each group. No more rows could be added after the index is built.
+	 */
+	void build( )
+	{
+		Map<MemberArray, Integer> pointIndex = new HashMap<MemberArray, Integer>( );
+		Iterator<Map<MemberArray, PointValue>> it = points.values( )
+				.iterator( );
+		while ( it.hasNext( ) )
+		{
+			Iterator<MemberArray> pointIt = it.next( ).keySet( ).iterator( );
+			while ( pointIt.hasNext( ) )
+			{
+				pointIndex.put( pointIt.next( ), null );
+			}
+		}
+		sortedPoints = new Member[pointIndex.size( )][];
+		int n = 0;
+		Iterator<MemberArray> pointIt = pointIndex.keySet( ).iterator( );
+		while ( pointIt.hasNext( ) )
+		{
+			sortedPoints[n++] = pointIt.next( ).members;
+		}
+		Arrays.sort( sortedPoints, new Comparator<Member[]>( ) {
+
+			public int compare( Member[] m1, Member[] m2 )
+			{
+				return comparePrefix( m1, m2, m2.length );
+			}
+		} );
+		for ( int i = 0; i < sortedPoints.length; i++ )
+		{
+			pointIndex.put( new MemberArray( sortedPoints[i] ),
+					Integer.valueOf( i ) );
+		}
+
+		groups = new HashMap<MemberArray, GroupRollup>( );
+		Iterator<Map.Entry<MemberArray, Map<MemberArray, PointValue>>> groupIt = points.entrySet( )
+				.iterator( );
+		while ( groupIt.hasNext( ) )
+		{
+			Map.Entry<MemberArray, Map<MemberArray, PointValue>> entry = groupIt.next( );
+			groups.put( entry.getKey( ),
+					new GroupRollup( entry.getValue( ), pointIndex ) );
+		}
+		points = null;
+	}
+
+	/**
+	 * Get the value of a cell.
+	 *
+	 * @param cellMembers
+	 *            the members of the cell, in which the members of the time
+	 *            levels are ignored
+	 * @param period
+	 *            the time member, whose period is calculated
+	 * @param periodMembers
+	 *            the time members in the period
+	 * @return
+	 */
+	Object getValue( Member[] cellMembers, TimeMember period,
+			List<TimeMember> periodMembers )
+	{
+		int[] ranges = rangeCache.get( period );
+		if ( ranges == null )
+		{
+			ranges = getRanges( periodMembers );
+			rangeCache.put( period, ranges );
+		}
+		GroupRollup group = groups.get( new MemberArray( getGroupMembers( cellMembers ) ) );
+		double sum = 0;
+		int count = 0;
+		int invalidCount = 0;
+		if ( group != null )
+		{
+			for ( int i = 0; i < ranges.length; i += 2 )
+			{
+				int start = lowerBound( group.points, ranges[i] );
+				int end = lowerBound( group.points, ranges[i + 1] );
+				sum += ( group.sums[end] - group.sums[start] )
+						+ ( group.sumErrors[end] - group.sumErrors[start] );
+				count += group.counts[end] - group.counts[start];
+				invalidCount += group.invalidCounts[end]
+						- group.invalidCounts[start];
+			}
+		}
+		if ( isCount )
+		{
+			return Integer.valueOf( count );
+		}
+		if ( count == 0 )
+		{
+			return null;
+		}
+		return invalidCount > 0 ? new Double( Double.NaN ) : new Double( sum );
+	}
+
+	/**
+	 * Get the ranges of the sorted time members which match the members of a
+	 * period. The adjacent ranges are merged, so a continuous period is one
+	 * range.
+	 *
+	 * @param periodMembers
+	 * @return the start(inclusive) and end(exclusive) of each range
+	 */
+	private int[] getRanges( List<TimeMember> periodMembers )
+	{
+		List<int[]> ranges = new ArrayList<int[]>( );
+		for ( int i = 0; i < periodMembers.size( ); i++ )
+		{
+			Member[] prefix = TimeFunctionCalculator.toMember( periodMembers.get( i ) );
+			int length = Math.min( prefix.length, timeLevelCount );
+			int start = search( prefix, length, false );
+			int end = search( prefix, length, true );
+			if ( start < end )
+			{
+				ranges.add( new int[]{
+						start, end
+				} );
+			}
+		}
+		Collections.sort( ranges, new Comparator<int[]>( ) {
+
+			public int compare( int[] r1, int[] r2 )
+			{
+				return r1[0] < r2[0] ? -1 : ( r1[0] == r2[0] ? 0 : 1 );
+			}
+		} );
+		int[] result = new int[ranges.size( ) * 2];
+		int n = 0;
+		for ( int i = 0; i < ranges.size( ); i++ )
+		{
+			int[] range = ranges.get( i );
+			if ( n > 0 && range[0] <= result[n - 1] )
+			{
+				result[n - 1] = Math.max( result[n - 1], range[1] );
+			}
+			else
+			{
+				result[n++] = range[0];
+				result[n++] = range[1];
+			}
+		}
+		return n == result.length ? result : Arrays.copyOf( result, n );
+	}
+
+	/**
+	 * Find the first sorted time member which is greater than or equal to
+	 * the prefix, or greater than the prefix if <code>after</code> is true.
+	 *
+	 * @param prefix
+	 * @param length
+	 * @param after
+	 * @return
+	 */
+	private int search( Member[] prefix, int length, boolean after )
+	{
+		int low = 0;
+		int high = sortedPoints.length;
+		while ( low < high )
+		{
+			int mid = ( low + high ) >>> 1;
+			int result = comparePrefix( sortedPoints[mid], prefix, length );
+			if ( result < 0 || ( after && result == 0 ) )
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Find the first position whose value is greater than or equal to the
+	 * key.
+	 *
+	 * @param values
+	 *            the sorted values
+	 * @param key
+	 * @return
+	 */
+	private static int lowerBound( int[] values, int key )
+	{
+		int low = 0;
+		int high = values.length;
+		while ( low < high )
+		{
+			int mid = ( low + high ) >>> 1;
+			if ( values[mid] < key )
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 *
+	 * @param members
+	 * @param prefix
+	 * @param length
+	 * @return
+	 */
+	private static int comparePrefix( Member[] members, Member[] prefix,
+			int length )
+	{
+		for ( int i = 0; i < length; i++ )
+		{
+			int result = members[i].compareTo( prefix[i] );
+			if ( result != 0 )
+			{
+				return result;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Get the members of the levels which are not in the time dimension.
+	 *
+	 * @param members
+	 * @return
+	 */
+	private Member[] getGroupMembers( Member[] members )
+	{
+		Member[] groupMembers = new Member[members.length - timeLevelCount];
+		System.arraycopy( members, 0, groupMembers, 0, firstTimeLevel );
+		System.arraycopy( members,
+				firstTimeLevel + timeLevelCount,
+				groupMembers,
+				firstTimeLevel,
+				groupMembers.length - firstTimeLevel );
+		return groupMembers;
+	}
+
+	/**
+	 *
+	 * @param value
+	 * @return
+	 * @throws DataException
+	 */
+	private static double toDouble( Object value ) throws DataException
+	{
+		if ( value instanceof Number )
+		{
+			return ( (Number) value ).doubleValue( );
+		}
+		try
+		{
+			return DataTypeUtil.toDouble( value ).doubleValue( );
+		}
+		catch ( BirtException e )
+		{
+			throw DataException.wrap( e );
+		}
+	}
+
+	/**
+	 * The members used as a hash key.
+	 */
+	private static class MemberArray
+	{
+		private Member[] members;
+		private int hashCode;
+
+		MemberArray( Member[] members )
+		{
+			this.members = members;
+			this.hashCode = Arrays.hashCode( members );
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Object#hashCode()
+		 */
+		public int hashCode( )
+		{
+			return hashCode;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		public boolean equals( Object o )
+		{
+			if ( !( o instanceof MemberArray ) )
+			{
+				return false;
+			}
+			return Arrays.equals( members, ( (MemberArray) o ).members );
+		}
+	}
+
+	/**
+	 * The measures of the rows of a group in a time member.
+	 */
+	private static class PointValue
+	{
+		// the index of the time member in the sorted time members
+		int index;
+		double sum;
+		int count;
+		int invalidCount;
+	}
+
+	/**
+	 * The prefix sums of a group over the sorted time members.
+	 */
+	private static class GroupRollup
+	{
+		// the sorted indexes of the time members of the group
+		int[] points;
+		// the prefix sums, whose item i is the sum of the first i time members
+		double[] sums;
+		// the rounding errors of the prefix sums
+		double[] sumErrors;
+		int[] counts;
+		int[] invalidCounts;
+
+		GroupRollup( Map<MemberArray, PointValue> values,
+				Map<MemberArray, Integer> pointIndex )
+		{
+			PointValue[] pointValues = new PointValue[values.size( )];
+			int n = 0;
+			Iterator<Map.Entry<MemberArray, PointValue>> it = values.entrySet( )
+					.iterator( );
+			while ( it.hasNext( ) )
+			{
+				Map.Entry<MemberArray, PointValue> entry = it.next( );
+				entry.getValue( ).index = pointIndex.get( entry.getKey( ) )
+						.intValue( );
+				pointValues[n++] = entry.getValue( );
+			}
+			Arrays.sort( pointValues, new Comparator<PointValue>( ) {
+
+				public int compare( PointValue v1, PointValue v2 )
+				{
+					return v1.index < v2.index ? -1
+							: ( v1.index == v2.index ? 0 : 1 );
+				}
+			} );
+			points = new int[pointValues.length];
+			sums = new double[pointValues.length + 1];
+			sumErrors = new double[pointValues.length + 1];
+			counts = new int[pointValues.length + 1];
+			invalidCounts = new int[pointValues.length + 1];
+			for ( int i = 0; i < pointValues.length; i++ )
+			{
+				points[i] = pointValues[i].index;
+				// the error of the rounded addition is exact (Knuth's TwoSum)
+				double value = pointValues[i].sum;
+				sums[i + 1] = sums[i] + value;
+				double roundedValue = sums[i + 1] - sums[i];
+				sumErrors[i + 1] = sumErrors[i]
+						+ ( sums[i] - ( sums[i + 1] - roundedValue ) )
+						+ ( value - roundedValue );
+				counts[i + 1] = counts[i] + pointValues[i].count;
+				invalidCounts[i + 1] = invalidCounts[i]
+						+ pointValues[i].invalidCount;
+			}
+		}
+	}
+}
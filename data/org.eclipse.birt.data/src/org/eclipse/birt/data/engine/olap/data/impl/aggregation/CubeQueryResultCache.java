@@ -0,0 +1,747 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.birt.data.engine.olap.data.impl.aggregation;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.eclipse.birt.data.engine.olap.data.api.DimLevel;
+import org.eclipse.birt.data.engine.olap.data.api.IAggregationResultSet;
+import org.eclipse.birt.data.engine.olap.data.api.IDimensionResultIterator;
+import org.eclipse.birt.data.engine.olap.data.api.cube.IDimension;
+import org.eclipse.birt.data.engine.olap.data.document.DirectoryDocumentManager;
+import org.eclipse.birt.data.engine.olap.data.document.IDocumentManager;
+import org.eclipse.birt.data.engine.olap.data.document.MappedDocumentManager;
+import org.eclipse.birt.data.engine.olap.data.document.RADocumentManager;
+import org.eclipse.birt.data.engine.olap.data.impl.AggregationDefinition;
+import org.eclipse.birt.data.engine.olap.data.impl.AggregationFunctionDefinition;
+import org.eclipse.birt.data.engine.olap.data.impl.Cube;
+import org.eclipse.birt.data.engine.olap.data.impl.facttable.FactTable;
+import org.eclipse.birt.data.engine.olap.data.util.IDiskArray;
+
+/**
+ * The cache of the aggregation result sets of the cube queries, which is
+ * shared by all the queries of the JVM. A result is keyed by the cube, the
+ * version of the cube document, the positions selected by the dimension
+ * filters and the aggregations. The size of the cache is bounded in bytes,
+ * and the least recently used results are evicted first. A cached result set
+ * is also used as the fact table of a query whose levels are a subset of the
+ * levels of the result set, if its functions can be rolled up.
+ */
+public class CubeQueryResultCache
+{
+	// the estimated size of the member of a level in a row
+	private static final int MEMBER_SIZE = 32;
+
+	private static CubeQueryResultCache instance = new CubeQueryResultCache( );
+
+	// the ids of the document managers which have no location
+	private static Map<IDocumentManager, String> documentManagerIds = new WeakHashMap<IDocumentManager, String>( );
+	private static int nextDocumentManagerId = 0;
+
+	private LinkedHashMap<String, CachedResult> results;
+	private long totalSize;
+
+	/**
+	 *
+	 */
+	CubeQueryResultCache( )
+	{
+		this.results = new LinkedHashMap<String, CachedResult>( 16,
+				0.75f,
+				true );
+	}
+
+	/**
+	 *
+	 * @return the cache of the JVM
+	 */
+	public static CubeQueryResultCache getInstance( )
+	{
+		return instance;
+	}
+
+	/**
+	 * Get the key of the queries on a cube, which have the same dimension
+	 * filters.
+	 *
+	 * @param cube
+	 * @param dimPosition
+	 *            the positions selected by the filters of each dimension, null
+	 *            if a dimension is not filtered
+	 * @param maxDataObjectRows
+	 * @return the key, or null if the queries can not be cached
+	 * @throws IOException
+	 */
+	public static String getKey( Cube cube, IDiskArray[] dimPosition,
+			int maxDataObjectRows ) throws IOException
+	{
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance( "MD5" ); //$NON-NLS-1$
+		}
+		catch ( NoSuchAlgorithmException e )
+		{
+			return null;
+		}
+		StringBuffer key = new StringBuffer( getCubeId( cube.getName( ),
+				cube.getDocumentManager( ) ) );
+		appendCubeVersion( key, cube );
+		for ( int i = 0; i < dimPosition.length; i++ )
+		{
+			if ( dimPosition[i] == null )
+			{
+				key.append( "*|" ); //$NON-NLS-1$
+				continue;
+			}
+			digest.reset( );
+			byte[] bytes = new byte[4];
+			for ( int j = 0; j < dimPosition[i].size( ); j++ )
+			{
+				int position = ( (Integer) dimPosition[i].get( j ) ).intValue( );
+				bytes[0] = (byte) ( position >>> 24 );
+				bytes[1] = (byte) ( position >>> 16 );
+				bytes[2] = (byte) ( position >>> 8 );
+				bytes[3] = (byte) position;
+				digest.update( bytes );
+			}
+			key.append( dimPosition[i].size( ) ).append( ':' );
+			byte[] hash = digest.digest( );
+			for ( int j = 0; j < hash.length; j++ )
+			{
+				key.append( Character.forDigit( ( hash[j] >> 4 ) & 0xF, 16 ) )
+						.append( Character.forDigit( hash[j] & 0xF, 16 ) );
+			}
+			key.append( '|' );
+		}
+		key.append( maxDataObjectRows ).append( '|' );
+		return key.toString( );
+	}
+
+	/**
+	 * Get the cached result sets of the aggregations.
+	 *
+	 * @param key
+	 *            the key of the cube and the dimension filters
+	 * @param aggregations
+	 * @return the result sets, or null if they are not cached
+	 * @throws IOException
+	 */
+	public IAggregationResultSet[] get( String key,
+			AggregationDefinition[] aggregations ) throws IOException
+	{
+		String aggregationKey = getAggregationKey( aggregations );
+		if ( key == null || aggregationKey == null )
+		{
+			return null;
+		}
+		CachedResult result;
+		synchronized ( this )
+		{
+			result = results.get( key + aggregationKey );
+		}
+		if ( result == null )
+		{
+			return null;
+		}
+		IAggregationResultSet[] resultSets = new IAggregationResultSet[aggregations.length];
+		for ( int i = 0; i < resultSets.length; i++ )
+		{
+			resultSets[i] = result.createResultSet( i, aggregations[i] );
+		}
+		return resultSets;
+	}
+
+	/**
+	 * Find the smallest cached result set which the aggregations can be rolled
+	 * up from. Its levels must cover the levels of all the aggregations, and
+	 * it must have been aggregated with the same functions on the same
+	 * measures.
+	 *
+	 * @param key
+	 *            the key of the cube and the dimension filters
+	 * @param aggregations
+	 * @param dimensions
+	 *            the dimensions of the cube
+	 * @return the result set, or null if there is no such one
+	 * @throws IOException
+	 */
+	public IAggregationResultSet getRollupBase( String key,
+			AggregationDefinition[] aggregations, IDimension[] dimensions )
+			throws IOException
+	{
+		if ( key == null || !AggregateTable.isDerivable( aggregations ) )
+		{
+			return null;
+		}
+		// the members of the time levels are not rolled up to their parents
+		for ( int i = 0; i < aggregations.length; i++ )
+		{
+			DimLevel[] levels = aggregations[i].getLevels( );
+			for ( int j = 0; levels != null && j < levels.length; j++ )
+			{
+				for ( int k = 0; k < dimensions.length; k++ )
+				{
+					if ( dimensions[k].isTime( )
+							&& dimensions[k].getName( )
+									.equals( levels[j].getDimensionName( ) ) )
+					{
+						return null;
+					}
+				}
+			}
+		}
+		CachedResult base = null;
+		int baseIndex = -1;
+		synchronized ( this )
+		{
+			Iterator<CachedResult> iter = results.values( ).iterator( );
+			while ( iter.hasNext( ) )
+			{
+				CachedResult result = iter.next( );
+				if ( !result.key.equals( key ) )
+				{
+					continue;
+				}
+				for ( int i = 0; i < result.resultSets.length; i++ )
+				{
+					if ( covers( result.resultSets[i], aggregations )
+							&& ( base == null || result.resultSets[i].length( ) < base.resultSets[baseIndex].length( ) ) )
+					{
+						base = result;
+						baseIndex = i;
+					}
+				}
+			}
+		}
+		if ( base == null )
+		{
+			return null;
+		}
+		return base.createResultSet( baseIndex,
+				base.aggregations[baseIndex] );
+	}
+
+	/**
+	 * Replace the measures of the aggregation functions with the aggregated
+	 * values of a result set returned by <code>getRollupBase</code>.
+	 *
+	 * @param aggregations
+	 * @return
+	 */
+	public static AggregationDefinition[] rewrite(
+			AggregationDefinition[] aggregations )
+	{
+		return AggregateTable.rewrite( aggregations );
+	}
+
+	/**
+	 * Create the data set of the rows of a result set returned by
+	 * <code>getRollupBase</code>.
+	 *
+	 * @param base
+	 * @param dimensionResultIterators
+	 *            the iterators of all the dimensions of the cube, which only
+	 *            provide the meta data of the levels
+	 * @return
+	 * @throws IOException
+	 */
+	public static IDataSet4Aggregation createDataSet(
+			IAggregationResultSet base,
+			IDimensionResultIterator[] dimensionResultIterators )
+			throws IOException
+	{
+		AggregationFunctionDefinition[] functions = base.getAggregationDefinition( )
+				.getAggregationFunctions( );
+		String[] measureNames = new String[functions == null ? 0
+				: functions.length];
+		for ( int i = 0; i < measureNames.length; i++ )
+		{
+			measureNames[i] = AggregateTable.getColumnName( functions[i].getFunctionName( ),
+					functions[i].getMeasureName( ) );
+		}
+		return new DataSetFromAggregationResultSet( base,
+				measureNames,
+				dimensionResultIterators );
+	}
+
+	/**
+	 * Cache the result sets of the aggregations. The rows are copied, so the
+	 * result sets can still be used by the query.
+	 *
+	 * @param key
+	 *            the key of the cube and the dimension filters
+	 * @param aggregations
+	 * @param resultSets
+	 * @param sizeLimit
+	 *            the size limit of the cache in bytes
+	 * @throws IOException
+	 */
+	public void put( String key, AggregationDefinition[] aggregations,
+			IAggregationResultSet[] resultSets, long sizeLimit )
+			throws IOException
+	{
+		String aggregationKey = getAggregationKey( aggregations );
+		if ( key == null
+				|| aggregationKey == null || sizeLimit <= 0
+				|| resultSets == null
+				|| resultSets.length != aggregations.length )
+		{
+			return;
+		}
+		long size = 0;
+		for ( int i = 0; i < resultSets.length; i++ )
+		{
+			// the result sets read from the cache are already cached
+			if ( resultSets[i] == null
+					|| resultSets[i].getClass( ) != AggregationResultSet.class
+					|| ( (AggregationResultSet) resultSets[i] ).getAggregationResultRows( ) instanceof SharedRows )
+			{
+				return;
+			}
+			size += estimateSize( resultSets[i] );
+		}
+		if ( size > sizeLimit )
+		{
+			return;
+		}
+		AggregationResultSet[] copies = new AggregationResultSet[resultSets.length];
+		for ( int i = 0; i < resultSets.length; i++ )
+		{
+			copies[i] = copy( (AggregationResultSet) resultSets[i] );
+		}
+		CachedResult result = new CachedResult( key,
+				aggregations,
+				copies,
+				size );
+		synchronized ( this )
+		{
+			CachedResult old = results.put( key + aggregationKey, result );
+			if ( old != null )
+			{
+				totalSize -= old.size;
+			}
+			totalSize += size;
+			// the evicted rows are not cleared, since they may be still read
+			// by a query
+			Iterator<CachedResult> iter = results.values( ).iterator( );
+			while ( totalSize > sizeLimit && iter.hasNext( ) )
+			{
+				CachedResult evicted = iter.next( );
+				if ( evicted != result )
+				{
+					iter.remove( );
+					totalSize -= evicted.size;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Remove the cached results of a cube, which is created or refreshed.
+	 *
+	 * @param cubeName
+	 * @param documentManager
+	 */
+	public synchronized void invalidate( String cubeName,
+			IDocumentManager documentManager )
+	{
+		String cubeId = getCubeId( cubeName, documentManager );
+		Iterator<Map.Entry<String, CachedResult>> iter = results.entrySet( )
+				.iterator( );
+		while ( iter.hasNext( ) )
+		{
+			Map.Entry<String, CachedResult> entry = iter.next( );
+			if ( entry.getKey( ).startsWith( cubeId ) )
+			{
+				iter.remove( );
+				totalSize -= entry.getValue( ).size;
+			}
+		}
+	}
+
+	/**
+	 * Remove all the cached results.
+	 */
+	public synchronized void clear( )
+	{
+		results.clear( );
+		totalSize = 0;
+	}
+
+	/**
+	 *
+	 * @return the estimated size of the cached results in bytes
+	 */
+	public synchronized long getSize( )
+	{
+		return totalSize;
+	}
+
+	/**
+	 *
+	 * @param resultSet
+	 * @param aggregations
+	 * @return whether the aggregations can be rolled up from the result set
+	 */
+	private static boolean covers( AggregationResultSet resultSet,
+			AggregationDefinition[] aggregations )
+	{
+		AggregationFunctionDefinition[] baseFunctions = resultSet.getAggregationDefinition( )
+				.getAggregationFunctions( );
+		for ( int i = 0; i < aggregations.length; i++ )
+		{
+			DimLevel[] levels = aggregations[i].getLevels( );
+			for ( int j = 0; levels != null && j < levels.length; j++ )
+			{
+				if ( resultSet.getLevelIndex( levels[j] ) < 0 )
+				{
+					return false;
+				}
+			}
+			AggregationFunctionDefinition[] functions = aggregations[i].getAggregationFunctions( );
+			for ( int j = 0; functions != null && j < functions.length; j++ )
+			{
+				if ( baseFunctions == null )
+				{
+					return false;
+				}
+				boolean found = false;
+				for ( int k = 0; k < baseFunctions.length && !found; k++ )
+				{
+					found = baseFunctions[k].getFunctionName( )
+							.equals( functions[j].getFunctionName( ) )
+							&& functions[j].getMeasureName( )
+									.equals( baseFunctions[k].getMeasureName( ) )
+							&& baseFunctions[k].getParaCol( ) == null
+							&& baseFunctions[k].getParaValue( ) == null;
+				}
+				if ( !found )
+				{
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 *
+	 * @param resultSet
+	 * @return
+	 * @throws IOException
+	 */
+	private static AggregationResultSet copy( AggregationResultSet resultSet )
+			throws IOException
+	{
+		IDiskArray rows = resultSet.getAggregationResultRows( );
+		AggregationResultRowArray copy = new AggregationResultRowArray( );
+		for ( int i = 0; i < rows.size( ); i++ )
+		{
+			copy.add( rows.get( i ) );
+		}
+		return new AggregationResultSet( resultSet.getAggregationDefinition( ),
+				resultSet.getAllLevels( ),
+				copy,
+				resultSet.getKeyNames( ),
+				resultSet.getAttributeNames( ) );
+	}
+
+	/**
+	 *
+	 * @param resultSet
+	 * @return the estimated size of the rows of a result set in bytes
+	 */
+	private static long estimateSize( IAggregationResultSet resultSet )
+	{
+		int levelCount = resultSet.getLevelCount( );
+		return (long) resultSet.length( )
+				* ( AggregationResultRowArray.getRowSize( levelCount,
+						resultSet.getAggregationCount( ) ) + MEMBER_SIZE
+						* levelCount );
+	}
+
+	/**
+	 * Get the part of the key of the aggregations. The aggregations are not
+	 * cached if they have drilled levels, filters on the aggregated rows or
+	 * time functions, which are not identified by their definitions.
+	 *
+	 * @param aggregations
+	 * @return the key, or null if the aggregations can not be cached
+	 */
+	static String getAggregationKey( AggregationDefinition[] aggregations )
+	{
+		StringBuffer key = new StringBuffer( );
+		for ( int i = 0; i < aggregations.length; i++ )
+		{
+			if ( aggregations[i].getDrilledInfo( ) != null )
+			{
+				return null;
+			}
+			key.append( '[' );
+			DimLevel[] levels = aggregations[i].getLevels( );
+			int[] sortTypes = aggregations[i].getSortTypes( );
+			for ( int j = 0; levels != null && j < levels.length; j++ )
+			{
+				appendString( key, levels[j].getDimensionName( ) );
+				appendString( key, levels[j].getLevelName( ) );
+				appendString( key, levels[j].getAttrName( ) );
+				key.append( sortTypes == null ? 0 : sortTypes[j] );
+			}
+			key.append( ']' );
+			AggregationFunctionDefinition[] functions = aggregations[i].getAggregationFunctions( );
+			for ( int j = 0; functions != null && j < functions.length; j++ )
+			{
+				if ( functions[j].getFilterEvalHelper( ) != null
+						|| functions[j].getTimeFunction( ) != null
+						|| functions[j].getTimeFunctionFilter( ) != null )
+				{
+					return null;
+				}
+				appendString( key, functions[j].getName( ) );
+				appendString( key, functions[j].getMeasureName( ) );
+				appendString( key, functions[j].getFunctionName( ) );
+				if ( functions[j].getParaCol( ) != null )
+				{
+					appendString( key, functions[j].getParaCol( )
+							.getDimensionName( ) );
+					appendString( key, functions[j].getParaCol( )
+							.getLevelName( ) );
+					appendString( key, functions[j].getParaCol( )
+							.getColumnName( ) );
+				}
+				else
+				{
+					key.append( '-' );
+				}
+				Object paraValue = functions[j].getParaValue( );
+				appendString( key, paraValue == null ? null
+						: paraValue.getClass( ).getName( ) + paraValue );
+				key.append( ';' );
+			}
+		}
+		return key.toString( );
+	}
+
+	/**
+	 * Get the id of a cube, which is the prefix of the keys of its results.
+	 *
+	 * @param cubeName
+	 * @param documentManager
+	 * @return
+	 */
+	private static String getCubeId( String cubeName,
+			IDocumentManager documentManager )
+	{
+		StringBuffer id = new StringBuffer( );
+		appendString( id, cubeName );
+		String location = getLocation( documentManager );
+		if ( location == null )
+		{
+			synchronized ( documentManagerIds )
+			{
+				location = documentManagerIds.get( documentManager );
+				if ( location == null )
+				{
+					location = "#" + ( nextDocumentManagerId++ ); //$NON-NLS-1$
+					documentManagerIds.put( documentManager, location );
+				}
+			}
+		}
+		appendString( id, location );
+		return id.toString( );
+	}
+
+	/**
+	 *
+	 * @param documentManager
+	 * @return the path of the document of a cube, or null if it is unknown
+	 */
+	private static String getLocation( IDocumentManager documentManager )
+	{
+		if ( documentManager instanceof RADocumentManager )
+		{
+			return ( (RADocumentManager) documentManager ).getArchiveName( );
+		}
+		if ( documentManager instanceof DirectoryDocumentManager )
+		{
+			return ( (DirectoryDocumentManager) documentManager ).getDocumentDir( );
+		}
+		if ( documentManager instanceof MappedDocumentManager )
+		{
+			return ( (MappedDocumentManager) documentManager ).getDocumentDir( );
+		}
+		return null;
+	}
+
+	/**
+	 * Append the version of the cube document, so that the results are not
+	 * used after the document is rewritten.
+	 *
+	 * @param key
+	 * @param cube
+	 */
+	private static void appendCubeVersion( StringBuffer key, Cube cube )
+	{
+		String location = getLocation( cube.getDocumentManager( ) );
+		if ( location != null )
+		{
+			key.append( new File( location ).lastModified( ) );
+		}
+		FactTable factTable = cube.getFactTable( );
+		key.append( '/' ).append( factTable.getSegmentCount( ) );
+		for ( int i = 0; i < factTable.getDimensionInfo( ).length; i++ )
+		{
+			key.append( '/' )
+					.append( factTable.getDimensionInfo( )[i].getDimensionLength( ) );
+		}
+		key.append( '|' );
+	}
+
+	/**
+	 * Append a string with its length, so that the parts of a key are not
+	 * ambiguous.
+	 *
+	 * @param buffer
+	 * @param value
+	 */
+	private static void appendString( StringBuffer buffer, String value )
+	{
+		if ( value == null )
+		{
+			buffer.append( "-1:" ); //$NON-NLS-1$
+		}
+		else
+		{
+			buffer.append( value.length( ) ).append( ':' ).append( value );
+		}
+	}
+
+	/**
+	 * The result sets of the aggregations of a query.
+	 */
+	private static class CachedResult
+	{
+		private String key;
+		private AggregationDefinition[] aggregations;
+		private AggregationResultSet[] resultSets;
+		private long size;
+
+		/**
+		 *
+		 * @param key
+		 * @param aggregations
+		 * @param resultSets
+		 * @param size
+		 */
+		CachedResult( String key, AggregationDefinition[] aggregations,
+				AggregationResultSet[] resultSets, long size )
+		{
+			this.key = key;
+			this.aggregations = aggregations;
+			this.resultSets = resultSets;
+			this.size = size;
+		}
+
+		/**
+		 * Create a result set on the cached rows, which can be closed by the
+		 * query without affecting the cache.
+		 *
+		 * @param index
+		 * @param aggregation
+		 * @return
+		 * @throws IOException
+		 */
+		IAggregationResultSet createResultSet( int index,
+				AggregationDefinition aggregation ) throws IOException
+		{
+			AggregationResultSet resultSet = resultSets[index];
+			return new AggregationResultSet( aggregation,
+					resultSet.getAllLevels( ),
+					new SharedRows( resultSet.getAggregationResultRows( ) ),
+					resultSet.getKeyNames( ),
+					resultSet.getAttributeNames( ) );
+		}
+	}
+
+	/**
+	 * A read only view of the cached rows.
+	 */
+	private static class SharedRows implements IDiskArray
+	{
+		private IDiskArray rows;
+
+		/**
+		 *
+		 * @param rows
+		 */
+		SharedRows( IDiskArray rows )
+		{
+			this.rows = rows;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.birt.data.engine.olap.data.util.IDiskArray#add(java.lang.Object)
+		 */
+		public boolean add( Object o ) throws IOException
+		{
+			throw new UnsupportedOperationException( );
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.birt.data.engine.olap.data.util.IDiskArray#get(int)
+		 */
+		public Object get( int index ) throws IOException
+		{
+			if ( rows == null )
+			{
+				throw new IndexOutOfBoundsException( );
+			}
+			return rows.get( index );
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.birt.data.engine.olap.data.util.IDiskArray#size()
+		 */
+		public int size( )
+		{
+			return rows == null ? 0 : rows.size( );
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.birt.data.engine.olap.data.util.IDiskArray#close()
+		 */
+		public void close( ) throws IOException
+		{
+			rows = null;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.birt.data.engine.olap.data.util.IDiskArray#clear()
+		 */
+		public void clear( ) throws IOException
+		{
+			rows = null;
+		}
+	}
+}
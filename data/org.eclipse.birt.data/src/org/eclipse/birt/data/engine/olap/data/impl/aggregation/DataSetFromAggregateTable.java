@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.birt.data.engine.olap.data.impl.aggregation;
+
+import java.io.IOException;
+
+import org.eclipse.birt.data.engine.core.DataException;
+import org.eclipse.birt.data.engine.olap.data.api.IDimensionResultIterator;
+import org.eclipse.birt.data.engine.olap.data.api.MeasureInfo;
+import org.eclipse.birt.data.engine.olap.data.document.IDocumentObject;
+import org.eclipse.birt.data.engine.olap.data.impl.dimension.Member;
+import org.eclipse.birt.data.engine.olap.data.impl.facttable.IFactTableRowIterator;
+
+/**
+ * The data prepared for aggregation is from a materialized aggregate. The
+ * members of a row are read from the aggregate, so the dimension iterators
+ * only provide the meta data and are never located.
+ */
+class DataSetFromAggregateTable extends DataSetFromOriginalCube
+{
+	private AggregateTableRowIterator rowIterator;
+
+	// the index of the first member of each dimension in a row, -1 if the
+	// dimension is not saved in the aggregate
+	private int[] memberOffset;
+	private int[] levelCount;
+
+	/**
+	 *
+	 * @param table
+	 * @param dimensionResultIterators
+	 * @throws IOException
+	 */
+	DataSetFromAggregateTable( AggregateTable table,
+			IDimensionResultIterator[] dimensionResultIterators )
+			throws IOException
+	{
+		this( new AggregateTableRowIterator( table ),
+				table,
+				dimensionResultIterators );
+	}
+
+	private DataSetFromAggregateTable( AggregateTableRowIterator rowIterator,
+			AggregateTable table,
+			IDimensionResultIterator[] dimensionResultIterators )
+	{
+		super( rowIterator, dimensionResultIterators, null );
+		this.rowIterator = rowIterator;
+		this.memberOffset = new int[dimensionResultIterators.length];
+		this.levelCount = new int[dimensionResultIterators.length];
+		for ( int i = 0; i < dimensionResultIterators.length; i++ )
+		{
+			String dimensionName = dimensionResultIterators[i].getDimesion( )
+					.getName( );
+			memberOffset[i] = table.getMemberOffset( dimensionName );
+			levelCount[i] = table.getLevelCount( dimensionName );
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.birt.data.engine.olap.data.impl.aggregation.DataSetFromOriginalCube#getMember(int, int)
+	 */
+	public Member getMember( int dimIndex, int levelIndex )
+			throws DataException, IOException
+	{
+		if ( memberOffset[dimIndex] < 0 || levelIndex >= levelCount[dimIndex] )
+		{
+			return null;
+		}
+		return rowIterator.getMember( memberOffset[dimIndex] + levelIndex );
+	}
+
+	/**
+	 * The iterator of the rows of an aggregate, which are regarded as the rows
+	 * of a fact table without dimension positions.
+	 */
+	private static class AggregateTableRowIterator
+			implements
+				IFactTableRowIterator
+	{
+		private AggregateTable table;
+		private IDocumentObject documentObject;
+		private int currentRow;
+		private Member[] members;
+		private Object[] measures;
+
+		/**
+		 *
+		 * @param table
+		 * @throws IOException
+		 */
+		AggregateTableRowIterator( AggregateTable table ) throws IOException
+		{
+			this.table = table;
+			this.documentObject = table.openRows( );
+			this.currentRow = -1;
+			this.members = new Member[table.getLevelCount( )];
+		}
+
+		/**
+		 *
+		 * @param index
+		 * @return
+		 */
+		Member getMember( int index )
+		{
+			return members[index];
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.birt.data.engine.olap.data.impl.facttable.IFactTableRowIterator#next()
+		 */
+		public boolean next( ) throws IOException, DataException
+		{
+			if ( documentObject == null
+					|| currentRow >= table.getRowCount( ) - 1 )
+			{
+				currentRow = table.getRowCount( );
+				return false;
+			}
+			currentRow++;
+			measures = table.readRow( documentObject, members );
+			return true;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.birt.data.engine.olap.data.impl.facttable.IFactTableRowIterator#close()
+		 */
+		public void close( ) throws DataException, IOException
+		{
+			if ( documentObject != null )
+			{
+				documentObject.close( );
+				documentObject = null;
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.birt.data.engine.olap.data.impl.facttable.IFactTableRowIterator#getDimensionCount()
+		 */
+		public int getDimensionCount( )
+		{
+			return 0;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.birt.data.engine.olap.data.impl.facttable.IFactTableRowIterator#getDimensionIndex(java.lang.String)
+		 */
+		public int getDimensionIndex( String dimensionName )
+		{
+			return -1;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.birt.data.engine.olap.data.impl.facttable.IFactTableRowIterator#getDimensionPosition(int)
+		 */
+		public int getDimensionPosition( int dimensionIndex )
+		{
+			return -1;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.birt.data.engine.olap.data.impl.facttable.IFactTableRowIterator#getDimensionPosition()
+		 */
+		public int[] getDimensionPosition( )
+		{
+			return null;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.birt.data.engine.olap.data.impl.facttable.IFactTableRowIterator#getMeasure(int)
+		 */
+		public Object getMeasure( int measureIndex )
+		{
+			return measures[measureIndex];
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.birt.data.engine.olap.data.impl.facttable.IFactTableRowIterator#getMeasureCount()
+		 */
+		public int getMeasureCount( )
+		{
+			return table.getMeasureInfos( ).length;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.birt.data.engine.olap.data.impl.facttable.IFactTableRowIterator#getMeasureInfos()
+		 */
+		public MeasureInfo[] getMeasureInfos( )
+		{
+			return table.getMeasureInfos( );
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.birt.data.engine.olap.data.impl.facttable.IFactTableRowIterator#getMeasureIndex(java.lang.String)
+		 */
+		public int getMeasureIndex( String measureName )
+		{
+			return table.getMeasureIndex( measureName );
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.birt.data.engine.olap.data.impl.facttable.IFactTableRowIterator#isDuplicatedRow()
+		 */
+		public boolean isDuplicatedRow( )
+		{
+			return false;
+		}
+	}
+}
@@ -0,0 +1,254 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.birt.data.engine.olap.data.impl.aggregation;
+
+import java.io.IOException;
+
+import org.eclipse.birt.data.engine.core.DataException;
+import org.eclipse.birt.data.engine.olap.data.api.DimLevel;
+import org.eclipse.birt.data.engine.olap.data.api.IAggregationResultRow;
+import org.eclipse.birt.data.engine.olap.data.api.IAggregationResultSet;
+import org.eclipse.birt.data.engine.olap.data.api.IDimensionResultIterator;
+import org.eclipse.birt.data.engine.olap.data.api.ILevel;
+import org.eclipse.birt.data.engine.olap.data.api.MeasureInfo;
+import org.eclipse.birt.data.engine.olap.data.impl.dimension.Member;
+import org.eclipse.birt.data.engine.olap.data.impl.facttable.IFactTableRowIterator;
+
+/**
+ * The data prepared for aggregation is from a cached aggregation result set,
+ * whose levels cover the levels of the aggregation. The aggregated values of
+ * the result set are the measures, so the members of a row are read from the
+ * result set, and the dimension iterators only provide the meta data.
+ */
+class DataSetFromAggregationResultSet extends DataSetFromOriginalCube
+{
+	private ResultSetRowIterator rowIterator;
+
+	// the index of the level of the result set for each level of each
+	// dimension, -1 if the level is not in the result set
+	private int[][] memberIndex;
+
+	/**
+	 *
+	 * @param resultSet
+	 * @param measureNames
+	 *            the name of the measure of each aggregated value
+	 * @param dimensionResultIterators
+	 * @throws IOException
+	 */
+	DataSetFromAggregationResultSet( IAggregationResultSet resultSet,
+			String[] measureNames,
+			IDimensionResultIterator[] dimensionResultIterators )
+			throws IOException
+	{
+		this( new ResultSetRowIterator( resultSet, measureNames ),
+				resultSet,
+				dimensionResultIterators );
+	}
+
+	private DataSetFromAggregationResultSet( ResultSetRowIterator rowIterator,
+			IAggregationResultSet resultSet,
+			IDimensionResultIterator[] dimensionResultIterators )
+	{
+		super( rowIterator, dimensionResultIterators, null );
+		this.rowIterator = rowIterator;
+		this.memberIndex = new int[dimensionResultIterators.length][];
+		for ( int i = 0; i < dimensionResultIterators.length; i++ )
+		{
+			String dimensionName = dimensionResultIterators[i].getDimesion( )
+					.getName( );
+			ILevel[] levels = dimensionResultIterators[i].getDimesion( )
+					.getHierarchy( )
+					.getLevels( );
+			memberIndex[i] = new int[levels.length];
+			for ( int j = 0; j < levels.length; j++ )
+			{
+				memberIndex[i][j] = resultSet.getLevelIndex( new DimLevel( dimensionName,
+						levels[j].getName( ) ) );
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.birt.data.engine.olap.data.impl.aggregation.DataSetFromOriginalCube#getMember(int, int)
+	 */
+	public Member getMember( int dimIndex, int levelIndex )
+			throws DataException, IOException
+	{
+		if ( levelIndex >= memberIndex[dimIndex].length
+				|| memberIndex[dimIndex][levelIndex] < 0 )
+		{
+			return null;
+		}
+		return rowIterator.getMember( memberIndex[dimIndex][levelIndex] );
+	}
+
+	/**
+	 * The iterator of the rows of an aggregation result set, which are
+	 * regarded as the rows of a fact table without dimension positions.
+	 */
+	private static class ResultSetRowIterator implements IFactTableRowIterator
+	{
+		private IAggregationResultSet resultSet;
+		private MeasureInfo[] measureInfos;
+		private int currentRow;
+		private IAggregationResultRow row;
+
+		/**
+		 *
+		 * @param resultSet
+		 * @param measureNames
+		 * @throws IOException
+		 */
+		ResultSetRowIterator( IAggregationResultSet resultSet,
+				String[] measureNames ) throws IOException
+		{
+			this.resultSet = resultSet;
+			this.currentRow = -1;
+			this.measureInfos = new MeasureInfo[measureNames.length];
+			for ( int i = 0; i < measureInfos.length; i++ )
+			{
+				measureInfos[i] = new MeasureInfo( measureNames[i],
+						resultSet.getAggregationDataType( i ) );
+			}
+		}
+
+		/**
+		 *
+		 * @param index
+		 * @return
+		 */
+		Member getMember( int index )
+		{
+			return row.getLevelMembers( )[index];
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.birt.data.engine.olap.data.impl.facttable.IFactTableRowIterator#next()
+		 */
+		public boolean next( ) throws IOException, DataException
+		{
+			if ( resultSet == null || currentRow >= resultSet.length( ) - 1 )
+			{
+				row = null;
+				return false;
+			}
+			currentRow++;
+			resultSet.seek( currentRow );
+			row = resultSet.getCurrentRow( );
+			return true;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.birt.data.engine.olap.data.impl.facttable.IFactTableRowIterator#close()
+		 */
+		public void close( ) throws DataException, IOException
+		{
+			if ( resultSet != null )
+			{
+				resultSet.close( );
+				resultSet = null;
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.birt.data.engine.olap.data.impl.facttable.IFactTableRowIterator#getDimensionCount()
+		 */
+		public int getDimensionCount( )
+		{
+			return 0;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.birt.data.engine.olap.data.impl.facttable.IFactTableRowIterator#getDimensionIndex(java.lang.String)
+		 */
+		public int getDimensionIndex( String dimensionName )
+		{
+			return -1;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.birt.data.engine.olap.data.impl.facttable.IFactTableRowIterator#getDimensionPosition(int)
+		 */
+		public int getDimensionPosition( int dimensionIndex )
+		{
+			return -1;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.birt.data.engine.olap.data.impl.facttable.IFactTableRowIterator#getDimensionPosition()
+		 */
+		public int[] getDimensionPosition( )
+		{
+			return null;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.birt.data.engine.olap.data.impl.facttable.IFactTableRowIterator#getMeasure(int)
+		 */
+		public Object getMeasure( int measureIndex )
+		{
+			Object[] values = row.getAggregationValues( );
+			return values == null ? null : values[measureIndex];
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.birt.data.engine.olap.data.impl.facttable.IFactTableRowIterator#getMeasureCount()
+		 */
+		public int getMeasureCount( )
+		{
+			return measureInfos.length;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.birt.data.engine.olap.data.impl.facttable.IFactTableRowIterator#getMeasureInfos()
+		 */
+		public MeasureInfo[] getMeasureInfos( )
+		{
+			return measureInfos;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.birt.data.engine.olap.data.impl.facttable.IFactTableRowIterator#getMeasureIndex(java.lang.String)
+		 */
+		public int getMeasureIndex( String measureName )
+		{
+			for ( int i = 0; i < measureInfos.length; i++ )
+			{
+				if ( measureInfos[i].getMeasureName( ).equals( measureName ) )
+				{
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.birt.data.engine.olap.data.impl.facttable.IFactTableRowIterator#isDuplicatedRow()
+		 */
+		public boolean isDuplicatedRow( )
+		{
+			return false;
+		}
+	}
+}
@@ -82,6 +82,11 @@ public class TimeFunctionCalculator
 	private Date[] referenceDate;
 	private int orignalLevelCount;
 	private int[] sortType;
+	// the calendar rollup of each SUM or COUNT time function, null if the
+	// function is calculated by matching the fact rows with the time members
+	private CalendarRollupIndex[] rollupIndexes;
+	private boolean mergeReferenceDate;
+	private boolean mergeLastDate;
 	
 	TimeFunctionCalculator( AggregationDefinition aggr, DimColumn[] parameterColNames,  
 			IDataSet4Aggregation.MetaInfo metaInfo, ICubeDimensionReader cubeDimensionReader,
@@ -254,6 +259,39 @@ public class TimeFunctionCalculator
 		facttableRow = new FacttableRow( measureInfos, cubeDimensionReader, metaInfo );
 		this.cubeDimensionReader = cubeDimensionReader;
 		getLevelType( );
+		createRollupIndexes( timeFunction );
+	}
+	
+	/**
+	 * The SUM and COUNT time functions are calculated with the prefix sums of
+	 * the calendar rollups, and the fact rows are only kept for the other
+	 * time functions.
+	 * 
+	 * @param timeFunction
+	 */
+	private void createRollupIndexes( AggregationFunctionDefinition[] timeFunction )
+	{
+		rollupIndexes = new CalendarRollupIndex[timeFunction.length];
+		for( int i = 0; i < timeFunction.length; i++ )
+		{
+			if( CalendarRollupIndex.isSupported( timeFunction[i].getFunctionName( ),
+					measureIndexes[i],
+					parameterColIndex[i] ) )
+			{
+				rollupIndexes[i] = new CalendarRollupIndex( firstTimeLevel,
+						endLevelIndex + 1,
+						measureIndexes[i],
+						"COUNT".equalsIgnoreCase( timeFunction[i].getFunctionName( ) ) ); //$NON-NLS-1$
+			}
+			else if( referenceDate[i] != null )
+			{
+				mergeReferenceDate = true;
+			}
+			else
+			{
+				mergeLastDate = true;
+			}
+		}
 	}
 	
 	private int getLevelSize( IDataSet4Aggregation.MetaInfo metaInfo, DimLevel[] dimLevel ) throws DataException
@@ -474,11 +512,18 @@ public class TimeFunctionCalculator
 		{
 			newRow = row;
 		}
-		if( this.existReferenceDate && !this.avoidExtraSort )
+		for( int i = 0; i < rollupIndexes.length; i++ )
+		{
+			if( rollupIndexes[i] != null && getFilterResult( newRow, i ) )
+			{
+				rollupIndexes[i].add( newRow );
+			}
+		}
+		if( this.mergeReferenceDate && !this.avoidExtraSort )
 		{
 			sortedFactRows.push( newRow );
 		}
-		if( this.existLastDate || this.avoidExtraSort )
+		if( this.mergeLastDate || ( this.mergeReferenceDate && this.avoidExtraSort ) )
 		{
 			factRows.add( newRow );
 		}
@@ -496,6 +541,14 @@ public class TimeFunctionCalculator
 	public List<TimeResultRow> getAggregationResultSet( IAggregationResultSet resultSet ) throws DataException, IOException
 	{
 		createCalculator( resultSet.length() );
+		Object[][] rollupValues = new Object[resultSet.length( )][];
+		for( int j = 0; j < rollupIndexes.length; j++ )
+		{
+			if( rollupIndexes[j] != null )
+			{
+				rollupIndexes[j].build( );
+			}
+		}
 		for( int i = 0; i < resultSet.length(); i++ )
 		{
 			resultSet.seek( i );
@@ -518,6 +571,17 @@ public class TimeFunctionCalculator
 					validTimeMember = periodFunction[j].getResult( tMember );
 					periodFunctionResultCache[j].put( tMember, validTimeMember );
 				}
+				if( rollupIndexes[j] != null )
+				{
+					if( rollupValues[i] == null )
+					{
+						rollupValues[i] = new Object[periodFunction.length];
+					}
+					rollupValues[i][j] = rollupIndexes[j].getValue( nMembers,
+							tMember,
+							validTimeMember );
+					continue;
+				}
 				for( int k = 0; k < validTimeMember.size(); k++ )
 				{
 					Member[] filterMembers = new Member[nMembers.length];
@@ -540,7 +604,7 @@ public class TimeFunctionCalculator
 			retrieveFilter( i );
 		}
 		currentRowList = new ArrayList<Row4Aggregation>();
-		if( this.existReferenceDate )
+		if( this.mergeReferenceDate )
 		{
 			currentRow = retrieveOneDetailRow( );
 			retrieveGroupRows( true );
@@ -579,7 +643,7 @@ public class TimeFunctionCalculator
 			retrieveFilter( i );
 		}
 		currentRowList = new ArrayList<Row4Aggregation>();
-		if( this.existLastDate )
+		if( this.mergeLastDate )
 		{
 			currentRow = retrieveOneFactRow( );
 			retrieveGroupRows( false );
@@ -615,6 +679,11 @@ public class TimeFunctionCalculator
 			Object[] value = new Object[accumulators[i].length];
 			for( int j = 0; j < accumulators[i].length; j++ )
 			{
+				if( rollupIndexes[j] != null )
+				{
+					value[j] = rollupValues[i][j];
+					continue;
+				}
 				this.accumulators[i][j].finish( );
 				value[j] = this.accumulators[i][j].getValue();
 			}
@@ -799,7 +868,7 @@ public class TimeFunctionCalculator
 		return 0;
 	}
 	
-	private Member[] toMember( TimeMember tMember )
+	static Member[] toMember( TimeMember tMember )
 	{
 		int[] tMemberValues = tMember.getMemberValue( );
 		Member[] member = new Member[tMemberValues.length];
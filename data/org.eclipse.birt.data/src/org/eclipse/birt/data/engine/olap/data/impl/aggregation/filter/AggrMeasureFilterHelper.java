@@ -42,6 +42,7 @@ import org.eclipse.birt.data.engine.olap.data.util.IDiskArray;
 import org.eclipse.birt.data.engine.olap.data.util.SetUtil;
 import org.eclipse.birt.data.engine.olap.impl.query.CubeQueryExecutor;
 import org.eclipse.birt.data.engine.olap.impl.query.PreparedCubeQueryDefinition;
+import org.eclipse.birt.data.engine.olap.util.CompiledMeasureExpression;
 import org.eclipse.birt.data.engine.olap.util.OlapExpressionCompiler;
 import org.eclipse.birt.data.engine.olap.util.filter.AggrMeasureFilterEvalHelper;
 import org.eclipse.birt.data.engine.olap.util.filter.CubePosFilter;
@@ -433,6 +434,9 @@ public class AggrMeasureFilterHelper
 		
 		filterPassController.setPassLevel( FilterPassController.SECOND_PASS );
 
+		byte[][] compiledResults = evaluateCompiledFilters( resultSet,
+				filterHelpers,
+				aggregationNames );
 		for ( int i = 0; i < resultSet.length( ); i++ )
 		{
 			resultSet.seek( i );
@@ -443,7 +447,10 @@ public class AggrMeasureFilterHelper
 				if ( resultSet.getAggregationIndex( aggregationNames[j] ) >= 0 )
 				{
 					IAggrMeasureFilterEvalHelper filterHelper = (IAggrMeasureFilterEvalHelper) filterHelpers.get( j );
-					if ( !filterHelper.evaluateFilter( rowAccessor ) )
+					if ( !evaluateFilter( filterHelper,
+							compiledResults[j],
+							i,
+							rowAccessor ) )
 					{
 						isFilterByAll = false;
 						break;
@@ -527,6 +534,9 @@ public class AggrMeasureFilterHelper
 		
 		filterPassController.setPassLevel( FilterPassController.SECOND_PASS );
 
+		byte[][] compiledResults = evaluateCompiledFilters( resultSet,
+				filterHelpers,
+				aggregationNames );
 		for ( int i = 0; i < resultSet.length( ); i++ )
 		{
 			resultSet.seek( i );
@@ -537,7 +547,10 @@ public class AggrMeasureFilterHelper
 				if ( resultSet.getAggregationIndex( aggregationNames[j] ) >= 0 )
 				{
 					AggrMeasureFilterEvalHelper filterHelper = (AggrMeasureFilterEvalHelper) filterHelpers.get( j );
-					if ( !filterHelper.evaluateFilter( rowAccessor ) )
+					if ( !evaluateFilter( filterHelper,
+							compiledResults[j],
+							i,
+							rowAccessor ) )
 					{
 						isFilterByAll = false;
 						break;
@@ -554,6 +567,152 @@ public class AggrMeasureFilterHelper
 		return result;
 	}
 
+	/**
+	 * Evaluate the filters which can be compiled without script on the
+	 * columns of the aggregated values, block by block, instead of evaluating
+	 * them by script row by row.
+	 * 
+	 * @param resultSet
+	 * @param filterHelpers
+	 * @param aggregationNames
+	 * @return the result of each filter on each row, which is 1 for true, 0
+	 *         for false and -1 if the row should be evaluated by script. The
+	 *         result of a filter is null if it is not compiled.
+	 * @throws IOException
+	 */
+	private byte[][] evaluateCompiledFilters( IAggregationResultSet resultSet,
+			List filterHelpers, String[] aggregationNames ) throws IOException
+	{
+		byte[][] result = new byte[filterHelpers.size( )][];
+		CompiledMeasureExpression[] exprs = new CompiledMeasureExpression[filterHelpers.size( )];
+		int[][] aggregationIndexes = new int[filterHelpers.size( )][];
+		boolean[] used = new boolean[resultSet.getAggregationCount( )];
+		boolean compiled = false;
+		for ( int j = 0; j < filterHelpers.size( ); j++ )
+		{
+			IAggrMeasureFilterEvalHelper filterHelper = (IAggrMeasureFilterEvalHelper) filterHelpers.get( j );
+			if ( resultSet.getAggregationIndex( aggregationNames[j] ) < 0
+					|| isTopBottomNConditionalExpression( filterHelper.getExpression( ) ) )
+			{
+				continue;
+			}
+			CompiledMeasureExpression expr = CompiledMeasureExpression.compile( filterHelper.getExpression( ),
+					ScriptConstants.DATA_BINDING_SCRIPTABLE );
+			if ( expr == null || !expr.isBoolean( ) )
+			{
+				continue;
+			}
+			String[] references = expr.getReferences( );
+			int[] indexes = new int[references.length];
+			for ( int k = 0; k < references.length && indexes != null; k++ )
+			{
+				indexes[k] = resultSet.getAggregationIndex( references[k] );
+				if ( indexes[k] < 0 )
+				{
+					indexes = null;
+				}
+			}
+			if ( indexes == null )
+			{
+				continue;
+			}
+			for ( int k = 0; k < indexes.length; k++ )
+			{
+				used[indexes[k]] = true;
+			}
+			exprs[j] = expr;
+			aggregationIndexes[j] = indexes;
+			result[j] = new byte[resultSet.length( )];
+			compiled = true;
+		}
+		if ( !compiled )
+		{
+			return result;
+		}
+
+		final int blockSize = CompiledMeasureExpression.BLOCK_SIZE;
+		double[][] values = new double[used.length][];
+		boolean[][] isNumber = new boolean[used.length][];
+		for ( int k = 0; k < used.length; k++ )
+		{
+			if ( used[k] )
+			{
+				values[k] = new double[blockSize];
+				isNumber[k] = new boolean[blockSize];
+			}
+		}
+		double[] blockResult = new double[blockSize];
+		for ( int start = 0; start < resultSet.length( ); start += blockSize )
+		{
+			int length = Math.min( blockSize, resultSet.length( ) - start );
+			for ( int i = 0; i < length; i++ )
+			{
+				resultSet.seek( start + i );
+				for ( int k = 0; k < used.length; k++ )
+				{
+					if ( used[k] )
+					{
+						Object value = resultSet.getAggregationValue( k );
+						isNumber[k][i] = value instanceof Number;
+						values[k][i] = isNumber[k][i]
+								? ( (Number) value ).doubleValue( ) : 0;
+					}
+				}
+			}
+			for ( int j = 0; j < exprs.length; j++ )
+			{
+				if ( exprs[j] == null )
+				{
+					continue;
+				}
+				int[] indexes = aggregationIndexes[j];
+				double[][] columns = new double[indexes.length][];
+				for ( int k = 0; k < indexes.length; k++ )
+				{
+					columns[k] = values[indexes[k]];
+				}
+				exprs[j].evaluate( columns, length, blockResult );
+				for ( int i = 0; i < length; i++ )
+				{
+					byte value = (byte) ( blockResult[i] != 0 ? 1 : 0 );
+					for ( int k = 0; k < indexes.length; k++ )
+					{
+						if ( !isNumber[indexes[k]][i] )
+						{
+							value = -1;
+							break;
+						}
+					}
+					result[j][start + i] = value;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 
+	 * @param filterHelper
+	 * @param compiledResult
+	 *            the results of the compiled filter, or null if it is not
+	 *            compiled
+	 * @param rowIndex
+	 * @param rowAccessor
+	 * @return
+	 * @throws DataException
+	 */
+	private static boolean evaluateFilter(
+			IAggrMeasureFilterEvalHelper filterHelper, byte[] compiledResult,
+			int rowIndex, AggregationRowAccessor rowAccessor )
+			throws DataException
+	{
+		if ( compiledResult != null && compiledResult[rowIndex] >= 0 )
+		{
+			return compiledResult[rowIndex] == 1;
+		}
+		return filterHelper.evaluateFilter( rowAccessor );
+	}
+
 	protected boolean isTopBottomNConditionalExpression( IBaseExpression expr )
 	{
 		if( expr == null || ! (expr instanceof IConditionalExpression ))
@@ -27,6 +27,7 @@ import org.eclipse.birt.data.engine.olap.data.impl.dimension.Level;
 import org.eclipse.birt.data.engine.olap.data.impl.dimension.Member;
 import org.eclipse.birt.data.engine.olap.data.util.BufferedPrimitiveDiskArray;
 import org.eclipse.birt.data.engine.olap.data.util.CompareUtil;
+import org.eclipse.birt.data.engine.olap.data.util.CompressedBitmap;
 import org.eclipse.birt.data.engine.olap.data.util.IDiskArray;
 import org.eclipse.birt.data.engine.olap.data.util.OrderedDiskArray;
 import org.eclipse.birt.data.engine.olap.data.util.SelectionUtil;
@@ -317,67 +318,144 @@ public class LevelFilterHelper
 
 
 	/**
+	 * The filters in different levels are intersected and the filters in the
+	 * same level are united. The filters which are independent of the parent
+	 * members are resolved through the level indexes as bitmap operations, and
+	 * only the others are evaluated against the remaining dimension rows.
+	 * 
 	 * @param validFilterMap
 	 * @return
 	 * @throws IOException
+	 * @throws DataException
 	 */
 	private IDiskArray populateValidPositions( Map validFilterMap )
-			throws IOException
+			throws IOException, DataException
 	{
-		IDiskArray selectedPositions = new BufferedPrimitiveDiskArray( );
 		ILevel[] levels = dimension.getHierarchy( ).getLevels( );
-		for ( int i = 0; i < dimPosition.size( ); i++ )
+		CompressedBitmap selectedBitmap = CompressedBitmap.valueOf( dimPosition );
+		Map rowFilterMap = new HashMap( );
+		for ( Iterator levelItr = validFilterMap.keySet( ).iterator( ); levelItr.hasNext( ); )
+		{
+			String levelName = (String) levelItr.next( );
+			List filterList = (List) validFilterMap.get( levelName );
+			assert filterList.size( ) > 0;
+			CompressedBitmap levelBitmap = getIndexedPositions( levels,
+					filterList );
+			if ( levelBitmap == null )
+			{
+				rowFilterMap.put( levelName, filterList );
+			}
+			else
+			{
+				selectedBitmap = selectedBitmap.and( levelBitmap );
+			}
+		}
+		if ( rowFilterMap.isEmpty( ) || selectedBitmap.isEmpty( ) )
+		{
+			return selectedBitmap.toDiskArray( );
+		}
+		
+		IDiskArray selectedPositions = new BufferedPrimitiveDiskArray( );
+		int[] positions = selectedBitmap.toArray( );
+		for ( int i = 0; i < positions.length; i++ )
+		{
+			DimensionRow row = dimension.getRowByPosition( positions[i] );
+			if ( isSelectedByAll( levels, row.getMembers( ), rowFilterMap ) )
+			{
+				selectedPositions.add( Integer.valueOf( positions[i] ) );
+			}
+		}
+		return selectedPositions;
+	}
+
+	/**
+	 * Get the union of the dimension positions selected by the filters of a
+	 * level from the level index.
+	 * 
+	 * @param levels
+	 * @param filterList
+	 * @return null if the filters can not be resolved by the level index
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	private CompressedBitmap getIndexedPositions( ILevel[] levels,
+			List filterList ) throws IOException, DataException
+	{
+		LevelFilter firstFilter = (LevelFilter) filterList.get( 0 );
+		int targetIndex = getIndex( levels, firstFilter.getLevelName( ) );
+		if ( targetIndex < 0 || !( levels[targetIndex] instanceof Level ) )
+		{
+			return null;
+		}
+		for ( Iterator filterItr = filterList.iterator( ); filterItr.hasNext( ); )
+		{
+			if ( ( (LevelFilter) filterItr.next( ) ).getDimMembers( ) != null )
+			{
+				return null;
+			}
+		}
+		CompressedBitmap result = null;
+		for ( Iterator filterItr = filterList.iterator( ); filterItr.hasNext( ); )
 		{
-			DimensionRow row = dimension.getRowByPosition( ( (Integer) dimPosition.get( i ) ).intValue( ) );
-			Member[] curMembers = row.getMembers( );
-			// the filters in different level will be intersected in our
-			// definition, so that if current position i is selected by all
-			// filters, it will be put into the final disk array.
-			boolean isSelectedByAll = true;
-			for ( Iterator levelItr = validFilterMap.keySet( ).iterator( ); levelItr.hasNext( ); )
+			LevelFilter filter = (LevelFilter) filterItr.next( );
+			CompressedBitmap positions = dimension.findBitmap( (Level) levels[targetIndex],
+					filter.getSelections( ) );
+			if ( positions == null )
 			{
-				String levelName = (String) levelItr.next( );
-				boolean isSelectedByAny = false;
-				// filters with the same level name will be united
-				List filterList = (List) validFilterMap.get( levelName );
-				assert filterList.size( ) > 0;
-				LevelFilter firstFilter = (LevelFilter) filterList.get( 0 );
-				int targetIndex = getIndex( levels, firstFilter.getLevelName( ) );
-				assert targetIndex >= 0;
-				for ( Iterator filterItr = filterList.iterator( ); filterItr.hasNext( ); )
+				return null;
+			}
+			result = result == null ? positions : result.or( positions );
+		}
+		return result;
+	}
+
+	/**
+	 * 
+	 * @param levels
+	 * @param curMembers
+	 * @param filterMap
+	 * @return whether the members are selected by the filters of all levels
+	 */
+	private boolean isSelectedByAll( ILevel[] levels, Member[] curMembers,
+			Map filterMap )
+	{
+		for ( Iterator levelItr = filterMap.keySet( ).iterator( ); levelItr.hasNext( ); )
+		{
+			String levelName = (String) levelItr.next( );
+			boolean isSelectedByAny = false;
+			// filters with the same level name will be united
+			List filterList = (List) filterMap.get( levelName );
+			LevelFilter firstFilter = (LevelFilter) filterList.get( 0 );
+			int targetIndex = getIndex( levels, firstFilter.getLevelName( ) );
+			assert targetIndex >= 0;
+			for ( Iterator filterItr = filterList.iterator( ); filterItr.hasNext( ); )
+			{
+				LevelFilter filter = (LevelFilter) filterItr.next( );
+				Member[] dimMembers = filter.getDimMembers( );
+				if ( dimMembers == null
+						|| FilterUtil.shareParentLevels( curMembers,
+								dimMembers,
+								targetIndex ) )
 				{
-					LevelFilter filter = (LevelFilter) filterItr.next( );
-					Member[] dimMembers = filter.getDimMembers( );
-					if ( dimMembers == null
-							|| FilterUtil.shareParentLevels( curMembers,
-									dimMembers,
-									targetIndex ) )
+					ISelection[] selectins = filter.getSelections( );
+					for ( int k = 0; k < selectins.length; k++ )
 					{
-						ISelection[] selectins = filter.getSelections( );
-						for ( int k = 0; k < selectins.length; k++ )
+						if ( selectins[k].isSelected( curMembers[targetIndex].getKeyValues( ) ) )
 						{
-							if ( selectins[k].isSelected( curMembers[targetIndex].getKeyValues( ) ) )
-							{
-								isSelectedByAny = true;
-								break;
-							}
+							isSelectedByAny = true;
+							break;
 						}
 					}
-					if ( isSelectedByAny )
-						break;
 				}
-				if ( isSelectedByAny == false )
-				{
-					isSelectedByAll = false;
+				if ( isSelectedByAny )
 					break;
-				}
 			}
-			if ( isSelectedByAll )
+			if ( isSelectedByAny == false )
 			{
-				selectedPositions.add( (Integer) dimPosition.get( i ) );
+				return false;
 			}
 		}
-		return selectedPositions;
+		return true;
 	}
 
 	/**
@@ -27,6 +27,7 @@ import org.eclipse.birt.data.engine.olap.data.document.IDocumentObject;
 import org.eclipse.birt.data.engine.olap.data.impl.NamingUtil;
 import org.eclipse.birt.data.engine.olap.data.util.BufferedPrimitiveDiskArray;
 import org.eclipse.birt.data.engine.olap.data.util.BufferedStructureArray;
+import org.eclipse.birt.data.engine.olap.data.util.CompressedBitmap;
 import org.eclipse.birt.data.engine.olap.data.util.DiskIndex;
 import org.eclipse.birt.data.engine.olap.data.util.IDiskArray;
 import org.eclipse.birt.data.engine.olap.data.util.IndexKey;
@@ -274,6 +275,23 @@ public class Dimension implements IDimension
 		return DimensionFilterHelper.find( levels, filters );
 	}
 	
+	/**
+	 * 
+	 * @param level
+	 * @param selections
+	 * @return the bitmap of the dimension positions of the selected members,
+	 *         or null if the level is not indexed
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	public CompressedBitmap findBitmap( Level level, ISelection[] selections )
+			throws IOException, DataException
+	{
+		if ( level.getDiskIndex( ) == null )
+			return null;
+		return DimensionFilterHelper.find( level, selections );
+	}
+	
 	public Level getDetailLevel( )
 	{
 		return (Level)(hierarchy.getLevels( )[hierarchy.getLevels( ).length - 1]);
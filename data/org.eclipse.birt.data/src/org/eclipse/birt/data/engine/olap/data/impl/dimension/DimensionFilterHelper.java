@@ -12,15 +12,12 @@
 package org.eclipse.birt.data.engine.olap.data.impl.dimension;
 
 import java.io.IOException;
-import java.util.ArrayList;
 
 import org.eclipse.birt.data.engine.core.DataException;
 import org.eclipse.birt.data.engine.olap.data.api.ISelection;
-import org.eclipse.birt.data.engine.olap.data.util.BaseDiskSortedStack;
+import org.eclipse.birt.data.engine.olap.data.util.CompressedBitmap;
 import org.eclipse.birt.data.engine.olap.data.util.IDiskArray;
 import org.eclipse.birt.data.engine.olap.data.util.IndexKey;
-import org.eclipse.birt.data.engine.olap.data.util.PrimitiveDiskSortedStack;
-import org.eclipse.birt.data.engine.olap.data.util.SetUtil;
 
 /**
  * 
@@ -29,6 +26,7 @@ import org.eclipse.birt.data.engine.olap.data.util.SetUtil;
 public class DimensionFilterHelper
 {
 	/**
+	 * The positions selected on each level are ANDed as compressed bitmaps.
 	 * 
 	 * @param levels
 	 * @param filters
@@ -38,28 +36,26 @@ public class DimensionFilterHelper
 	 */
 	public static IDiskArray find( Level[] levels, ISelection[][] filters ) throws IOException, DataException
 	{
-		ArrayList filterResults = new ArrayList( );
+		CompressedBitmap result = null;
 		for ( int i = 0; i < levels.length; i++ )
 		{
-			filterResults.add( find(levels[i], filters[i]) );
+			CompressedBitmap levelResult = find( levels[i], filters[i] );
+			result = result == null ? levelResult : result.and( levelResult );
+			if ( result.isEmpty( ) )
+			{
+				break;
+			}
 		}
-		PrimitiveDiskSortedStack[] stackResults = new PrimitiveDiskSortedStack[filterResults.size( )];
-		System.arraycopy( filterResults.toArray( ),
-				0,
-				stackResults,
-				0,
-				stackResults.length );
-		int maxLen = 0;
-		for( int i = 0; i < stackResults.length; i++ )
+		if ( result == null )
 		{
-			if( maxLen < stackResults[i].size( ) )
-				maxLen = stackResults[i].size( );
+			result = new CompressedBitmap( );
 		}
-		IDiskArray AndFilterResults = SetUtil.getIntersection( stackResults, maxLen );
-		return AndFilterResults;
+		return result.toDiskArray( );
 	}
 	
 	/**
+	 * Find the dimension positions of the members of a level selected by the
+	 * filter.
 	 * 
 	 * @param level
 	 * @param filter
@@ -67,36 +63,24 @@ public class DimensionFilterHelper
 	 * @throws IOException
 	 * @throws DataException
 	 */
-	private static BaseDiskSortedStack find(Level level, ISelection[] filter) throws IOException, DataException
+	static CompressedBitmap find( Level level, ISelection[] filter ) throws IOException, DataException
 	{
+		CompressedBitmap result = new CompressedBitmap( );
 		IDiskArray indexKeyArray = null;
 		if( level.getDiskIndex() != null )
 			indexKeyArray = level.getDiskIndex().find( filter );
 		if ( indexKeyArray != null )
 		{
-			int len = 0;
-			for ( int i = 0; i < indexKeyArray.size( ); i++ )
-			{
-				IndexKey key = (IndexKey) indexKeyArray.get( i );
-				len += key.getDimensionPos().length;
-			}
-			PrimitiveDiskSortedStack resultStack = new PrimitiveDiskSortedStack( len,
-					true,
-					true );
 			for ( int i = 0; i < indexKeyArray.size( ); i++ )
 			{
 				IndexKey key = (IndexKey) indexKeyArray.get( i );
 				int[] pos = key.getDimensionPos( );
 				for( int j = 0; j < pos.length; j++ )
 				{
-					resultStack.push( Integer.valueOf( pos[j] ) );
+					result.add( pos[j] );
 				}
 			}
-			return resultStack;
-		}
-		else
-		{
-			return new PrimitiveDiskSortedStack( 1, true, true );
 		}
+		return result;
 	}
 }
@@ -64,17 +64,22 @@ public class DimensionResultIterator implements IDimensionResultIterator
 	{
 		if( dimensionRows == null )
 		{
-			if( dimensionPosition == null )
+			// the iterators of the concurrent fact table scans share the
+			// dimension and the position array
+			synchronized ( dimension )
 			{
-				dimensionPosition = dimension.findAll( );
-			}
-			dimensionRows = dimension.getDimensionRowByPositions( dimensionPosition, new StopSign( ) );
-//			if( dimension.length( ) < Constants.MAX_DIMENSION_LENGTH )
-			{
-				memoryDimensionPosition = new int[dimensionPosition.size( )];
-				for( int i = 0; i < dimensionPosition.size( ); i++ )
+				if( dimensionPosition == null )
 				{
-					memoryDimensionPosition[i] = (Integer)dimensionPosition.get( i );
+					dimensionPosition = dimension.findAll( );
+				}
+				dimensionRows = dimension.getDimensionRowByPositions( dimensionPosition, new StopSign( ) );
+//				if( dimension.length( ) < Constants.MAX_DIMENSION_LENGTH )
+				{
+					memoryDimensionPosition = new int[dimensionPosition.size( )];
+					for( int i = 0; i < dimensionPosition.size( ); i++ )
+					{
+						memoryDimensionPosition[i] = (Integer)dimensionPosition.get( i );
+					}
 				}
 			}
 		}
@@ -120,6 +125,8 @@ public class DimensionResultIterator implements IDimensionResultIterator
 			throws BirtException, IOException
 	{
 		initDimensionRows( );
+		if( memoryDimensionPosition != null )
+			return memoryDimensionPosition[currentPosition];
 		return ((Integer)(dimensionPosition.get( currentPosition ))).intValue();
 	}
 
@@ -12,10 +12,18 @@
 package org.eclipse.birt.data.engine.olap.data.impl.dimension;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.birt.core.exception.BirtException;
+import org.eclipse.birt.data.engine.api.DataEngineThreadLocal;
 import org.eclipse.birt.data.engine.cache.Constants;
 import org.eclipse.birt.data.engine.core.DataException;
 import org.eclipse.birt.data.engine.i18n.ResourceConstants;
@@ -47,6 +55,7 @@ public class Hierarchy implements IHierarchy
 	private String name = null;
 	private Map levelMap = new HashMap( );
 	private String dimensionName;
+	private int buildParallelism = 1;
 	
 	public Hierarchy( IDocumentManager documentManager, String dimensionName, String hierarchyName )
 	{
@@ -55,6 +64,17 @@ public class Hierarchy implements IHierarchy
 		this.name = hierarchyName;
 	}
 	
+	/**
+	 * Set how many threads can be used to sort the members of the levels when
+	 * the hierarchy is created.
+	 * 
+	 * @param buildParallelism
+	 */
+	public void setBuildParallelism( int buildParallelism )
+	{
+		this.buildParallelism = buildParallelism;
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see org.eclipse.birt.data.olap.data.api.IHierarchy#getLevels()
@@ -366,15 +386,16 @@ public class Hierarchy implements IHierarchy
 			obj = sortedDimensionSet.pop( );
 			currentIndex++;
 		}
-		validateDimensionMembers( sortedDimMembers );
+		IDiskArray[] sortedKeyLists = sortLevelKeys( indexKeyLists,
+				sortedDimMembers );
 		DiskIndex[] diskIndex = new DiskIndex[indexKeyLists.length];
 		for ( int i = 0; i < indexKeyLists.length; i++ )
 		{
 			// create index for this level
 			diskIndex[i] = DiskIndex.createIndex( documentManager,
 					NamingUtil.getLevelIndexDocName( dimensionName, levelDefs[i].getLevelName( ) ),
-					indexKeyLists[i],
-					false );
+					sortedKeyLists[i],
+					true );
 		}
 		levels = new Level[levelDefs.length];
 		for ( int i = 0; i < levels.length; i++ )
@@ -394,6 +415,119 @@ public class Hierarchy implements IHierarchy
 		return currentIndex;
 	}
 	
+	/**
+	 * Sort the index keys of the levels and validate the members of the leaf
+	 * level. They are independent of each other, so they are run concurrently
+	 * if the build parallelism is more than one. The indexes are written in
+	 * the thread of the build, since the document objects of a document
+	 * manager are not written concurrently.
+	 * 
+	 * @param indexKeyLists
+	 * @param sortedDimMembers
+	 * @return the sorted index keys of each level
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	private IDiskArray[] sortLevelKeys( final IDiskArray[] indexKeyLists,
+			final DiskSortedStack sortedDimMembers ) throws IOException,
+			DataException
+	{
+		final IDiskArray[] sortedKeyLists = new IDiskArray[indexKeyLists.length];
+		if ( buildParallelism <= 1 )
+		{
+			validateDimensionMembers( sortedDimMembers );
+			for ( int i = 0; i < indexKeyLists.length; i++ )
+			{
+				sortedKeyLists[i] = DiskIndex.sortKeys( indexKeyLists[i] );
+			}
+			return sortedKeyLists;
+		}
+
+		final String tempPath = DataEngineThreadLocal.getInstance( )
+				.getPathManager( )
+				.getTempPath( );
+		ForkJoinPool pool = new ForkJoinPool( Math.min( buildParallelism,
+				indexKeyLists.length + 1 ) );
+		List<Future<Object>> tasks = new ArrayList<Future<Object>>( );
+		try
+		{
+			tasks.add( pool.submit( new Callable<Object>( ) {
+
+				public Object call( ) throws Exception
+				{
+					DataEngineThreadLocal.getInstance( )
+							.getPathManager( )
+							.setTempPath( tempPath );
+					validateDimensionMembers( sortedDimMembers );
+					return null;
+				}
+			} ) );
+			for ( int i = 0; i < indexKeyLists.length; i++ )
+			{
+				final int index = i;
+				tasks.add( pool.submit( new Callable<Object>( ) {
+
+					public Object call( ) throws Exception
+					{
+						DataEngineThreadLocal.getInstance( )
+								.getPathManager( )
+								.setTempPath( tempPath );
+						sortedKeyLists[index] = DiskIndex.sortKeys( indexKeyLists[index] );
+						return null;
+					}
+				} ) );
+			}
+			for ( int i = 0; i < tasks.size( ); i++ )
+			{
+				waitForTask( tasks.get( i ) );
+			}
+		}
+		finally
+		{
+			pool.shutdown( );
+			try
+			{
+				pool.awaitTermination( Long.MAX_VALUE, TimeUnit.MILLISECONDS );
+			}
+			catch ( InterruptedException e )
+			{
+				Thread.currentThread( ).interrupt( );
+			}
+		}
+		return sortedKeyLists;
+	}
+
+	/**
+	 * @param task
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	private static void waitForTask( Future<Object> task ) throws IOException,
+			DataException
+	{
+		try
+		{
+			task.get( );
+		}
+		catch ( InterruptedException e )
+		{
+			Thread.currentThread( ).interrupt( );
+			throw new DataException( ResourceConstants.OLAPFILE_DATA_ERROR, e );
+		}
+		catch ( ExecutionException e )
+		{
+			Throwable cause = e.getCause( );
+			if ( cause instanceof IOException )
+				throw (IOException) cause;
+			if ( cause instanceof DataException )
+				throw (DataException) cause;
+			if ( cause instanceof RuntimeException )
+				throw (RuntimeException) cause;
+			throw new DataException( ResourceConstants.OLAPFILE_DATA_ERROR,
+					cause );
+		}
+	}
+
 	/**
 	 * 
 	 * @param sortedDimMembers
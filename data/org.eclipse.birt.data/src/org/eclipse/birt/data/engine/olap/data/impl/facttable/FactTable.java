@@ -11,12 +11,18 @@
  *******************************************************************************/
 package org.eclipse.birt.data.engine.olap.data.impl.facttable;
 
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import org.eclipse.birt.data.engine.olap.data.api.MeasureInfo;
 import org.eclipse.birt.data.engine.olap.data.document.IDocumentManager;
+import org.eclipse.birt.data.engine.olap.data.document.IDocumentObject;
+import org.eclipse.birt.data.engine.olap.data.impl.NamingUtil;
 import org.eclipse.birt.data.engine.olap.data.impl.facttable.DimensionDivider.CombinedPositionContructor;
 import org.eclipse.birt.data.engine.olap.data.impl.facttable.DimensionDivider.DimensionPositionSeeker.DimensionInfo;
+import org.eclipse.birt.data.engine.olap.data.util.CompressedBitmap;
 
 /**
  * This class describes a fact table.
@@ -32,6 +38,8 @@ public class FactTable
 	
 	private IDocumentManager documentManager;
 	private CombinedPositionContructor combinedPositionCalculator;
+	// segment name -> the bitmaps of the dimension positions in the segment
+	private Map segmentBitmaps;
 	private static Logger logger = Logger.getLogger( FactTable.class.getName( ) );
 	
 	/**
@@ -160,6 +168,42 @@ public class FactTable
 	}
 	
 	
+	/**
+	 * Get the bitmaps of the dimension positions of the rows in a segment,
+	 * which are used to skip the segment not selected by the dimension
+	 * filters.
+	 * 
+	 * @param segmentName
+	 * @return null if the bitmaps of the segment are not saved
+	 * @throws IOException
+	 */
+	public synchronized CompressedBitmap[] getSegmentBitmaps( String segmentName )
+			throws IOException
+	{
+		if ( segmentBitmaps == null )
+		{
+			segmentBitmaps = new HashMap( );
+			String docName = NamingUtil.getFTSUBitmapName( name );
+			if ( documentManager.exist( docName ) )
+			{
+				IDocumentObject documentObject = documentManager.openDocumentObject( docName );
+				int segmentCount = documentObject.readInt( );
+				for ( int i = 0; i < segmentCount; i++ )
+				{
+					String segment = documentObject.readString( );
+					CompressedBitmap[] bitmaps = new CompressedBitmap[dimensionInfo.length];
+					for ( int j = 0; j < bitmaps.length; j++ )
+					{
+						bitmaps[j] = CompressedBitmap.read( documentObject );
+					}
+					segmentBitmaps.put( segment, bitmaps );
+				}
+				documentObject.close( );
+			}
+		}
+		return (CompressedBitmap[]) segmentBitmaps.get( segmentName );
+	}
+	
 	/**
 	 * 
 	 * @param dimensionName
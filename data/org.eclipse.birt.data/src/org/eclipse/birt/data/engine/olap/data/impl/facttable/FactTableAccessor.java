@@ -49,6 +49,7 @@ import org.eclipse.birt.data.engine.olap.data.impl.facttable.DimensionDivider.Di
 import org.eclipse.birt.data.engine.olap.data.impl.facttable.DimensionDivision.IntRange;
 import org.eclipse.birt.data.engine.olap.data.util.BufferedStructureArray;
 import org.eclipse.birt.data.engine.olap.data.util.Bytes;
+import org.eclipse.birt.data.engine.olap.data.util.CompressedBitmap;
 import org.eclipse.birt.data.engine.olap.data.util.DiskSortedStack;
 import org.eclipse.birt.data.engine.olap.data.util.IDiskArray;
 import org.eclipse.birt.data.engine.olap.data.util.StructureDiskArray;
@@ -121,19 +122,244 @@ public class FactTableAccessor
 				segmentCount );
 		
 		int[][][] columnIndex = getColumnIndex( DimJointColumnNames, dimensions );
+		IDiskArray[] dimensionKeys = new IDiskArray[dimensions.length];
 		DimensionPositionSeeker[] dimensionSeekers = new DimensionPositionSeeker[dimensions.length];
 		for ( int i = 0; i < dimensionSeekers.length; i++ )
 		{
-			dimensionSeekers[i] = new DimensionPositionSeeker( getDimCombinatedKey( columnIndex[i],
-					dimensions[i].getAllRows( stopSign ) ) );
+			dimensionKeys[i] = getDimCombinatedKey( columnIndex[i],
+					dimensions[i].getAllRows( stopSign ) );
+			dimensionSeekers[i] = new DimensionPositionSeeker( dimensionKeys[i] );
 		}
+		saveDimensionKeys( factTableName,
+				getKeyDataType( columnIndex, dimensions ),
+				dimensionKeys );
 		
+		saveFactTableRows( factTableName,
+				factTableJointColumnNames,
+				sortedFactTableRows,
+				dimensions,
+				dimensionSeekers,
+				subDimensions,
+				measureInfo,
+				new FTSUNameSaveHelper( documentManager, factTableName ),
+				false,
+				stopSign );
+		return new FactTable( factTableName,
+				documentManager,
+				dimensionInfo,
+				measureInfo,
+				calMeasureInfo,
+				segmentCount,
+				subDimensions);
+		
+	}
+	
+	/**
+	 * Refresh a saved fact table with the new rows of its data set, instead of
+	 * saving it again. The dimensions may have been created again with new
+	 * members. If the positions of the dimension members are not changed, the
+	 * new rows are appended to the segments they belong to. Otherwise the
+	 * saved rows are read back from the segments and saved with the new
+	 * dimension positions, so that the original data set is not queried
+	 * again. The document manager should be able to replace the document
+	 * objects.
+	 * 
+	 * @param factTableName
+	 * @param factTableJointColumnNames
+	 * @param DimJointColumnNames
+	 * @param iterator
+	 *            the new rows of the fact table
+	 * @param dimensions
+	 * @param measureColumnName
+	 * @param stopSign
+	 * @return the refreshed fact table, or null if the fact table can not be
+	 *         refreshed and should be saved again
+	 * @throws BirtException
+	 * @throws IOException
+	 */
+	public FactTable refreshFactTable( String factTableName,
+			String[][] factTableJointColumnNames, String[][] DimJointColumnNames,
+			IDatasetIterator iterator, Dimension[] dimensions,
+			String[] measureColumnName, StopSign stopSign )
+			throws BirtException, IOException
+	{
+		// the fact tables saved by the former versions have no dimension keys
+		if ( !documentManager.exist( NamingUtil.getFactTableKeyName( factTableName ) ) )
+		{
+			return null;
+		}
+		FactTable factTable = load( factTableName, stopSign );
+		DimensionInfo[] savedDimensionInfo = factTable.getDimensionInfo( );
+		MeasureInfo[] measureInfo = factTable.getMeasureInfo( );
+		if ( savedDimensionInfo.length != dimensions.length
+				|| measureInfo.length != measureColumnName.length )
+		{
+			return null;
+		}
+		for ( int i = 0; i < dimensions.length; i++ )
+		{
+			if ( !savedDimensionInfo[i].dimensionName.equals( dimensions[i].getName( ) ) )
+			{
+				return null;
+			}
+		}
+		for ( int i = 0; i < measureInfo.length; i++ )
+		{
+			if ( !measureInfo[i].getMeasureName( ).equals( measureColumnName[i] ) )
+			{
+				return null;
+			}
+		}
+		
+		IDiskArray[] savedDimensionKeys = loadDimensionKeys( factTableName );
+		int[][][] columnIndex = getColumnIndex( DimJointColumnNames, dimensions );
+		IDiskArray[] dimensionKeys = new IDiskArray[dimensions.length];
+		DimensionPositionSeeker[] dimensionSeekers = new DimensionPositionSeeker[dimensions.length];
+		boolean positionChanged = false;
+		for ( int i = 0; i < dimensionSeekers.length; i++ )
+		{
+			dimensionKeys[i] = getDimCombinatedKey( columnIndex[i],
+					dimensions[i].getAllRows( stopSign ) );
+			dimensionSeekers[i] = new DimensionPositionSeeker( dimensionKeys[i] );
+			if ( !positionChanged
+					&& !isSameKeys( savedDimensionKeys[i], dimensionKeys[i] ) )
+			{
+				positionChanged = true;
+			}
+		}
+		FacttableRowContainer newFactTableRows = populateSortedFacttableRowsWithoutAggregationCalculation( factTableJointColumnNames,
+				iterator,
+				measureColumnName,
+				stopSign );
+		
+		if ( !positionChanged )
+		{
+			// the segments are not changed, and the new rows are appended to
+			// them
+			FTSUNameSaveHelper saveHelper = new FTSUNameSaveHelper( documentManager,
+					factTableName );
+			saveHelper.load( dimensions.length );
+			saveFactTableRows( factTableName,
+					factTableJointColumnNames,
+					newFactTableRows,
+					dimensions,
+					dimensionSeekers,
+					factTable.getSubDimensions( ),
+					measureInfo,
+					saveHelper,
+					true,
+					stopSign );
+			return factTable;
+		}
+		
+		final StructureDiskArray allFactTableRows = readFactTableRows( factTable,
+				savedDimensionKeys,
+				stopSign );
+		// the segments are divided again, and the saved segments which are
+		// not in the new division would still be read by the row iterator
+		FTSUNameSaveHelper savedSegments = new FTSUNameSaveHelper( documentManager,
+				factTableName );
+		savedSegments.load( savedDimensionInfo.length );
+		Iterator savedNames = savedSegments.getNames( ).iterator( );
+		while ( savedNames.hasNext( ) )
+		{
+			replaceDocumentObject( (String) savedNames.next( ) );
+		}
+		FactTableRow newRow = newFactTableRows.pop( );
+		while ( newRow != null && !stopSign.isStopped( ) )
+		{
+			allFactTableRows.add( newRow );
+			newRow = newFactTableRows.pop( );
+		}
+		int segmentCount = getSegmentCount( allFactTableRows.size( ) );
+		DimensionInfo[] dimensionInfo = getDimensionInfo( dimensions );
+		MeasureInfo[] calMeasureInfo = factTable.getCalcualtedMeasureInfo( );
+		MeasureInfo[] derivedMeasureInfo = new MeasureInfo[calMeasureInfo.length];
+		for ( int i = 0; i < calMeasureInfo.length; i++ )
+		{
+			derivedMeasureInfo[i] = new MeasureInfo( NamingUtil.getDerivedMeasureName( calMeasureInfo[i].getMeasureName( ) ),
+					calMeasureInfo[i].getDataType( ) );
+		}
+		saveFactTableMetadata( factTableName,
+				dimensionInfo,
+				measureInfo,
+				derivedMeasureInfo,
+				segmentCount );
+		DimensionDivision[] subDimensions = calculateDimensionDivision( getDimensionMemberCount( dimensions ),
+				segmentCount );
+		saveDimensionKeys( factTableName,
+				getKeyDataType( columnIndex, dimensions ),
+				dimensionKeys );
+		
+		saveFactTableRows( factTableName,
+				factTableJointColumnNames,
+				new FacttableRowContainer( ) {
+
+					private int index = 0;
+
+					public FactTableRow pop( ) throws IOException
+					{
+						if ( index >= allFactTableRows.size( ) )
+							return null;
+						FactTableRow result = (FactTableRow) allFactTableRows.get( index );
+						index++;
+						return result;
+					}
+
+					public int size( )
+					{
+						return allFactTableRows.size( );
+					}
+				},
+				dimensions,
+				dimensionSeekers,
+				subDimensions,
+				measureInfo,
+				new FTSUNameSaveHelper( documentManager, factTableName ),
+				false,
+				stopSign );
+		allFactTableRows.close( );
+		return new FactTable( factTableName,
+				documentManager,
+				dimensionInfo,
+				measureInfo,
+				calMeasureInfo,
+				segmentCount,
+				subDimensions );
+	}
+	
+	/**
+	 * Save the rows of a fact table to the segments of their dimension
+	 * positions.
+	 * 
+	 * @param factTableName
+	 * @param factTableJointColumnNames
+	 * @param factTableRows
+	 * @param dimensions
+	 * @param dimensionSeekers
+	 * @param subDimensions
+	 * @param measureInfo
+	 * @param saveHelper
+	 * @param replaceSegments
+	 *            whether the saved segments which are not in the save helper
+	 *            are replaced, since they are left by a former refresh
+	 * @param stopSign
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	private void saveFactTableRows( String factTableName,
+			String[][] factTableJointColumnNames,
+			FacttableRowContainer factTableRows, Dimension[] dimensions,
+			DimensionPositionSeeker[] dimensionSeekers,
+			DimensionDivision[] subDimensions, MeasureInfo[] measureInfo,
+			FTSUNameSaveHelper saveHelper, boolean replaceSegments,
+			StopSign stopSign ) throws IOException, DataException
+	{
 		int[] dimensionPosition = new int[dimensions.length];
 		DocumentObjectCache documentObjectManager = new DocumentObjectCache( documentManager, (long) ( memoryCacheSize* 0.25 ) );
 		CombinedPositionContructor combinedPositionCalculator = new CombinedPositionContructor( subDimensions );
 		
-		FTSUNameSaveHelper saveHelper = new FTSUNameSaveHelper( documentManager, factTableName );
-		FactTableRow currentRow = sortedFactTableRows.pop( );
+		FactTableRow currentRow = factTableRows.pop( );
 		boolean invalidDimensionKey = false;
 		int invalidRowNumber = 0;
 		while ( currentRow != null && !stopSign.isStopped( ) )
@@ -156,7 +382,7 @@ public class FactTableAccessor
 			}
 			if( invalidDimensionKey )
 			{
-				currentRow = sortedFactTableRows.pop( );
+				currentRow = factTableRows.pop( );
 				invalidRowNumber ++;
 				continue;
 			}
@@ -165,7 +391,11 @@ public class FactTableAccessor
 			String FTSUDocName = FTSUDocumentObjectNamingUtil.getDocumentObjectName( 
 					NamingUtil.getFactTableName( factTableName ),
 					subDimensionIndex );
-			saveHelper.add( FTSUDocName );
+			if ( replaceSegments && !saveHelper.contains( FTSUDocName ) )
+			{
+				replaceDocumentObject( FTSUDocName );
+			}
+			saveHelper.add( FTSUDocName, dimensionPosition );
 			
 			IDocumentObject documentObject = documentObjectManager.getIDocumentObject( FTSUDocName );
 			documentObject.writeBytes( new Bytes( combinedPositionCalculator.
@@ -176,7 +406,7 @@ public class FactTableAccessor
 						measureInfo[i].getDataType(),
 						currentRow.getMeasures()[i] );
 			}
-			currentRow = sortedFactTableRows.pop( );
+			currentRow = factTableRows.pop( );
 		}
 		saveHelper.save( );
 		if( invalidRowNumber > 0 )
@@ -188,14 +418,194 @@ public class FactTableAccessor
 		}
 		documentObjectManager.closeAll( );
 		documentManager.flush( );
-		return new FactTable( factTableName,
-				documentManager,
-				dimensionInfo,
-				measureInfo,
-				calMeasureInfo,
-				segmentCount,
-				subDimensions);
-		
+	}
+	
+	/**
+	 * Replace a saved document object with an empty one.
+	 * 
+	 * @param name
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	private void replaceDocumentObject( String name ) throws IOException,
+			DataException
+	{
+		if ( !documentManager.exist( name ) )
+		{
+			return;
+		}
+		IDocumentObject documentObject = documentManager.createDocumentObject( name );
+		if ( documentObject == null )
+		{
+			throw new DataException( ResourceConstants.DOCUMENTOBJECT_ALWAYS_EXIST,
+					name );
+		}
+		documentObject.close( );
+	}
+	
+	/**
+	 * Read the saved rows of a fact table, whose dimension positions are
+	 * converted back to the dimension keys.
+	 * 
+	 * @param factTable
+	 * @param dimensionKeys
+	 *            the saved dimension keys in the order of dimension position
+	 * @param stopSign
+	 * @return
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	private static StructureDiskArray readFactTableRows( FactTable factTable,
+			IDiskArray[] dimensionKeys, StopSign stopSign ) throws IOException,
+			DataException
+	{
+		StructureDiskArray result = new StructureDiskArray( FactTableRow.getCreator( ) );
+		FactTableRowIterator rowIterator = new FactTableRowIterator( factTable,
+				new String[0],
+				new IDiskArray[0],
+				stopSign );
+		int measureCount = factTable.getMeasureInfo( ).length;
+		while ( rowIterator.next( ) )
+		{
+			DimensionKey[] keys = new DimensionKey[dimensionKeys.length];
+			for ( int i = 0; i < keys.length; i++ )
+			{
+				keys[i] = (DimensionKey) dimensionKeys[i].get( rowIterator.getDimensionPosition( i ) );
+			}
+			Object[] measures = new Object[measureCount];
+			for ( int i = 0; i < measures.length; i++ )
+			{
+				measures[i] = rowIterator.getMeasure( i );
+			}
+			FactTableRow row = new FactTableRow( );
+			row.setDimensionKeys( keys );
+			row.setMeasures( measures );
+			result.add( row );
+		}
+		rowIterator.close( );
+		return result;
+	}
+	
+	/**
+	 * 
+	 * @param savedKeys
+	 * @param keys
+	 * @return whether the keys have the same dimension positions
+	 * @throws IOException
+	 */
+	private static boolean isSameKeys( IDiskArray savedKeys, IDiskArray keys )
+			throws IOException
+	{
+		if ( savedKeys.size( ) != keys.size( ) )
+		{
+			return false;
+		}
+		for ( int i = 0; i < keys.size( ); i++ )
+		{
+			if ( !savedKeys.get( i ).equals( keys.get( i ) ) )
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Save the dimension keys of the fact table in the order of dimension
+	 * position, so that the saved rows can be mapped to the new positions when
+	 * the fact table is refreshed.
+	 * 
+	 * @param factTableName
+	 * @param keyDataType
+	 * @param dimensionKeys
+	 * @throws IOException
+	 * @throws DataException
+	 */
+	private void saveDimensionKeys( String factTableName, int[][] keyDataType,
+			IDiskArray[] dimensionKeys ) throws IOException, DataException
+	{
+		IDocumentObject documentObject = documentManager.createDocumentObject( NamingUtil.getFactTableKeyName( factTableName ) );
+		documentObject.writeInt( dimensionKeys.length );
+		for ( int i = 0; i < dimensionKeys.length; i++ )
+		{
+			documentObject.writeInt( keyDataType[i].length );
+			for ( int j = 0; j < keyDataType[i].length; j++ )
+			{
+				documentObject.writeInt( keyDataType[i][j] );
+			}
+			documentObject.writeInt( dimensionKeys[i].size( ) );
+			for ( int j = 0; j < dimensionKeys[i].size( ); j++ )
+			{
+				DocumentObjectUtil.writeValue( documentObject,
+						keyDataType[i],
+						( (DimensionKey) dimensionKeys[i].get( j ) ).getKeyValues( ) );
+			}
+		}
+		documentObject.close( );
+	}
+	
+	/**
+	 * 
+	 * @param factTableName
+	 * @return the saved dimension keys in the order of dimension position
+	 * @throws IOException
+	 */
+	private IDiskArray[] loadDimensionKeys( String factTableName )
+			throws IOException
+	{
+		IDocumentObject documentObject = documentManager.openDocumentObject( NamingUtil.getFactTableKeyName( factTableName ) );
+		IDiskArray[] result = new IDiskArray[documentObject.readInt( )];
+		for ( int i = 0; i < result.length; i++ )
+		{
+			int[] keyDataType = new int[documentObject.readInt( )];
+			for ( int j = 0; j < keyDataType.length; j++ )
+			{
+				keyDataType[j] = documentObject.readInt( );
+			}
+			int keyCount = documentObject.readInt( );
+			result[i] = new BufferedStructureArray( DimensionKey.getCreator( ),
+					keyCount );
+			for ( int j = 0; j < keyCount; j++ )
+			{
+				DimensionKey key = new DimensionKey( keyDataType.length );
+				key.setKeyValues( DocumentObjectUtil.readValue( documentObject,
+						keyDataType ) );
+				key.setDimensionPos( j );
+				result[i].add( key );
+			}
+		}
+		documentObject.close( );
+		return result;
+	}
+	
+	/**
+	 * 
+	 * @param columnIndex
+	 * @param dimensions
+	 * @return the data types of the dimension keys joint with the fact table
+	 */
+	private static int[][] getKeyDataType( int[][][] columnIndex,
+			Dimension[] dimensions )
+	{
+		int[][] result = new int[columnIndex.length][];
+		for ( int i = 0; i < columnIndex.length; i++ )
+		{
+			ILevel[] levels = dimensions[i].getHierarchy( ).getLevels( );
+			result[i] = new int[columnIndex[i].length];
+			for ( int j = 0; j < columnIndex[i].length; j++ )
+			{
+				ILevel level = levels[columnIndex[i][j][1]];
+				if ( columnIndex[i][j][0] == 0 )
+				{
+					result[i][j] = level.getKeyDataType( level.getKeyNames( )[columnIndex[i][j][2]] );
+				}
+				else
+				{
+					result[i][j] = level.getAttributeDataType( level.getAttributeNames( )[columnIndex[i][j][2]] );
+				}
+			}
+		}
+		return result;
 	}
 
 	private FacttableRowContainer populatedSortedFacttableRowsWithAggregationCalculation(
@@ -836,32 +1246,103 @@ class FTSUNameSaveHelper
 		this.map = new HashMap( );
 	}
 	
+	/**
+	 * Load the names of the saved segments and their bitmaps, so that new rows
+	 * can be appended to the segments.
+	 * 
+	 * @param dimensionCount
+	 * @throws IOException
+	 */
+	void load( int dimensionCount ) throws IOException
+	{
+		IDocumentObject FTSUBitmapLoad = documentManager.openDocumentObject( NamingUtil.getFTSUBitmapName( factTableName ) );
+		if ( FTSUBitmapLoad == null )
+		{
+			return;
+		}
+		int segmentCount = FTSUBitmapLoad.readInt( );
+		for ( int i = 0; i < segmentCount; i++ )
+		{
+			String name = FTSUBitmapLoad.readString( );
+			CompressedBitmap[] bitmaps = new CompressedBitmap[dimensionCount];
+			for ( int j = 0; j < bitmaps.length; j++ )
+			{
+				bitmaps[j] = CompressedBitmap.read( FTSUBitmapLoad );
+			}
+			map.put( name, bitmaps );
+		}
+		FTSUBitmapLoad.close( );
+	}
+	
+	/**
+	 * 
+	 * @param name
+	 * @return whether rows have been added to the segment
+	 */
+	boolean contains( String name )
+	{
+		return map.containsKey( name );
+	}
+	
+	/**
+	 * 
+	 * @return the names of the segments
+	 */
+	Set getNames( )
+	{
+		return map.keySet( );
+	}
+	
 	/**
 	 * 
 	 * @param name
+	 * @param dimensionPosition
+	 *            the dimension positions of a row saved in the segment
 	 */
-	void add( String name )
+	void add( String name, int[] dimensionPosition )
 	{
-		if ( !map.containsKey( name ) )
+		CompressedBitmap[] bitmaps = (CompressedBitmap[]) map.get( name );
+		if ( bitmaps == null )
 		{
-			map.put( name, null );
+			bitmaps = new CompressedBitmap[dimensionPosition.length];
+			for ( int i = 0; i < bitmaps.length; i++ )
+			{
+				bitmaps[i] = new CompressedBitmap( );
+			}
+			map.put( name, bitmaps );
+		}
+		for ( int i = 0; i < bitmaps.length; i++ )
+		{
+			bitmaps[i].add( dimensionPosition[i] );
 		}
 	}
 	
 	/**
+	 * Save the names of the segments, and the bitmaps of the dimension
+	 * positions in each segment.
 	 * 
 	 * @throws IOException
 	 */
 	void save( ) throws IOException
 	{
 		IDocumentObject FTSUNameSave = documentManager.createDocumentObject( NamingUtil.getFTSUListName( factTableName ) );
+		IDocumentObject FTSUBitmapSave = documentManager.createDocumentObject( NamingUtil.getFTSUBitmapName( factTableName ) );
+		FTSUBitmapSave.writeInt( map.size( ) );
 		
-		Iterator nameIterator = map.keySet( ).iterator( );
-		while ( nameIterator.hasNext( ) )
+		Iterator entryIterator = map.entrySet( ).iterator( );
+		while ( entryIterator.hasNext( ) )
 		{
-			FTSUNameSave.writeString( (String)nameIterator.next( ) );
+			Entry entry = (Entry) entryIterator.next( );
+			FTSUNameSave.writeString( (String) entry.getKey( ) );
+			FTSUBitmapSave.writeString( (String) entry.getKey( ) );
+			CompressedBitmap[] bitmaps = (CompressedBitmap[]) entry.getValue( );
+			for ( int i = 0; i < bitmaps.length; i++ )
+			{
+				bitmaps[i].write( FTSUBitmapSave );
+			}
 		}
 		FTSUNameSave.close( );
+		FTSUBitmapSave.close( );
 	}
 }
 
@@ -14,7 +14,6 @@ package org.eclipse.birt.data.engine.olap.data.impl.facttable;
 import java.io.EOFException;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -35,6 +34,7 @@ import org.eclipse.birt.data.engine.olap.data.impl.dimension.DimensionResultIter
 import org.eclipse.birt.data.engine.olap.data.impl.dimension.Member;
 import org.eclipse.birt.data.engine.olap.data.impl.facttable.FactTableAccessor.FTSUDocumentObjectNamingUtil;
 import org.eclipse.birt.data.engine.olap.data.util.Bytes;
+import org.eclipse.birt.data.engine.olap.data.util.CompressedBitmap;
 import org.eclipse.birt.data.engine.olap.data.util.DataType;
 import org.eclipse.birt.data.engine.olap.data.util.IDiskArray;
 import org.eclipse.birt.data.engine.olap.util.filter.ICubePosFilter;
@@ -65,7 +65,8 @@ public class FactTableRowIterator implements IFactTableRowIterator
 	private Traversalor traversalor;
 	private StopSign stopSign;
 	
-	private int[][] selectedPosOfCurSegment;
+	// the bitmaps of the selected positions, in the order of dimensionPos
+	private CompressedBitmap[] selectedBitmaps;
 	
 	private IComputedMeasureHelper computedMeasureHelper;
 
@@ -88,6 +89,12 @@ public class FactTableRowIterator implements IFactTableRowIterator
 	private boolean lastFilterResult;
 	private boolean isDuplicatedRow;
 	
+	// the segments are dealt out to the partitions in turn, and this iterator
+	// only reads the segments of its own partition
+	private int partitionIndex;
+	private int partitionCount;
+	private int segmentOrdinal;
+	
 	/**
 	 * 
 	 * @param factTable
@@ -112,6 +119,36 @@ public class FactTableRowIterator implements IFactTableRowIterator
 	 */
 	public FactTableRowIterator( FactTable factTable, String[] dimensionName,
 			IDiskArray[] dimensionPos, IDimension[] allCubeDimensions, IComputedMeasureHelper computedMeasureHelper, StopSign stopSign ) throws IOException
+	{
+		this( factTable,
+				dimensionName,
+				dimensionPos,
+				allCubeDimensions,
+				computedMeasureHelper,
+				stopSign,
+				0,
+				1 );
+	}
+	
+	/**
+	 * Create an iterator which only reads one partition of the fact table
+	 * segments, so that the partitions can be read concurrently by the
+	 * iterators of the same query.
+	 * 
+	 * @param factTable
+	 * @param dimensionName
+	 * @param dimensionPos
+	 * @param allCubeDimensions
+	 * @param computedMeasureHelper
+	 * @param stopSign
+	 * @param partitionIndex
+	 * @param partitionCount
+	 * @throws IOException
+	 */
+	public FactTableRowIterator( FactTable factTable, String[] dimensionName,
+			IDiskArray[] dimensionPos, IDimension[] allCubeDimensions,
+			IComputedMeasureHelper computedMeasureHelper, StopSign stopSign,
+			int partitionIndex, int partitionCount ) throws IOException
 	{
 		Object[] params = {
 				factTable, dimensionName, dimensionPos, stopSign
@@ -122,7 +159,6 @@ public class FactTableRowIterator implements IFactTableRowIterator
 		this.factTable = factTable;
 		this.selectedPos = dimensionPos;
 		this.selectedSubDim = new List[factTable.getDimensionInfo( ).length];
-		this.selectedPosOfCurSegment = new int[factTable.getDimensionInfo( ).length][];
 		this.stopSign = stopSign;
 		this.measureFilters = new ArrayList( );
 		this.cubePosFilters = new ArrayList( );
@@ -130,7 +166,10 @@ public class FactTableRowIterator implements IFactTableRowIterator
 			this.allCubeDimensionResultIterators = new IDimensionResultIterator[allCubeDimensions.length];
 		this.allCubeDimensions = allCubeDimensions;
 		this.computedMeasureHelper = computedMeasureHelper;
+		this.partitionIndex = partitionIndex;
+		this.partitionCount = partitionCount;
 		assert dimensionName.length == dimensionPos.length;
+		assert partitionIndex >= 0 && partitionIndex < partitionCount;
 		
 		for ( int i = 0; i < selectedSubDim.length; i++ )
 		{
@@ -150,6 +189,7 @@ public class FactTableRowIterator implements IFactTableRowIterator
 		caculateMeasuerSize( );
 		
 		filterSubDimension( );
+		populateSelectedBitmaps( );
 		this.currentPos = new int[factTable.getDimensionInfo( ).length];
 		this.currentMeasureValues = new Object[factTable.getMeasureInfo( ).length];
 		this.currentMeasureMap = new MeasureMap( this.factTable.getMeasureInfo( ) );
@@ -222,6 +262,24 @@ public class FactTableRowIterator implements IFactTableRowIterator
 		traversalor = new Traversalor( selectedSubDimensionCount );
 	}
 
+	/**
+	 * 
+	 * @throws IOException
+	 */
+	private void populateSelectedBitmaps( ) throws IOException
+	{
+		this.selectedBitmaps = new CompressedBitmap[selectedPos.length];
+		for ( int i = 0; i < selectedPos.length; i++ )
+		{
+			// the position array is shared by the iterators of the other
+			// partitions
+			synchronized ( selectedPos[i] )
+			{
+				selectedBitmaps[i] = CompressedBitmap.valueOf( selectedPos[i] );
+			}
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see org.eclipse.birt.data.engine.olap.data.impl.facttable.IFactTableRowIterator#next()
@@ -390,7 +448,7 @@ public class FactTableRowIterator implements IFactTableRowIterator
 			{
 				if ( dimensionIndex[i] != -1 )
 				{
-					if( Arrays.binarySearch( selectedPosOfCurSegment[i], currentPos[i] ) < 0 )
+					if( !selectedBitmaps[dimensionIndex[i]].contains( currentPos[i] ) )
 					{
 						lastFilterResult = false;
 						return false;
@@ -510,11 +568,16 @@ public class FactTableRowIterator implements IFactTableRowIterator
 			{
 				return false;
 			}
+			if ( segmentOrdinal++ % partitionCount != partitionIndex )
+			{
+				continue;
+			}
 			currentSubDim = traversalor.getIntArray( );
 			subDimensionIndex = getSubDimensionIndex( );
 			String FTSUDocName = FTSUDocumentObjectNamingUtil.getDocumentObjectName( NamingUtil.getFactTableName( factTable.getName( ) ),
 					subDimensionIndex );
-			if ( !factTable.getDocumentManager( ).exist( FTSUDocName ) )
+			if ( !factTable.getDocumentManager( ).exist( FTSUDocName )
+					|| !isSelectedSegment( FTSUDocName ) )
 			{
 				continue;
 			}
@@ -523,23 +586,35 @@ public class FactTableRowIterator implements IFactTableRowIterator
 				currentSegment.close( );
 			
 			currentSegment = factTable.getDocumentManager( ).openDocumentObject( FTSUDocName );
-			
-			for ( int i = 0; i < dimensionIndex.length; i++ )
+			// the combined positions are relative to the segment
+			lastCombinedDimensionPosition = null;
+			break;
+		}
+		return true;
+	}
+	
+	/**
+	 * A segment is skipped if the dimension positions of its rows are not
+	 * selected on any filtered dimension.
+	 * 
+	 * @param segmentName
+	 * @return
+	 * @throws IOException
+	 */
+	private boolean isSelectedSegment( String segmentName ) throws IOException
+	{
+		CompressedBitmap[] segmentBitmaps = factTable.getSegmentBitmaps( segmentName );
+		if ( segmentBitmaps == null )
+		{
+			return true;
+		}
+		for ( int i = 0; i < dimensionIndex.length; i++ )
+		{
+			if ( dimensionIndex[i] != -1
+					&& !segmentBitmaps[i].intersects( selectedBitmaps[dimensionIndex[i]] ) )
 			{
-				if ( dimensionIndex[i] != -1 )
-				{
-					SelectedSubDimension selectedSubDimension = ( (SelectedSubDimension) selectedSubDim[i].get( currentSubDim[i] ) );
-					selectedPosOfCurSegment[i] = new int[selectedSubDimension.end
-							- selectedSubDimension.start + 1];
-					for ( int j = 0; j < selectedSubDimension.end
-							- selectedSubDimension.start + 1; j++ )
-					{
-						selectedPosOfCurSegment[i][j] = ( (Integer) selectedPos[dimensionIndex[i]].get( selectedSubDimension.start
-								+ j ) ).intValue( );
-					}
-				}
+				return false;
 			}
-			break;
 		}
 		return true;
 	}
@@ -0,0 +1,712 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.birt.data.engine.olap.data.util;
+
+import java.io.IOException;
+
+import org.eclipse.birt.data.engine.olap.data.document.IDocumentObject;
+
+/**
+ * A compressed set of non-negative integers, such as dimension positions. The
+ * integers are partitioned by their high 16 bits. The low 16 bits of a sparse
+ * partition are saved in a sorted array, and those of a dense partition are
+ * saved in a bitmap of 65536 bits, so that the intersection and the union of
+ * two sets are computed partition by partition without visiting every member.
+ */
+
+public class CompressedBitmap
+{
+	// the max cardinality of a partition saved in a sorted array
+	private static final int MAX_ARRAY_SIZE = 4096;
+	private static final int BITMAP_WORDS = 1024;
+
+	private char[] keys;
+	private Container[] containers;
+	private int size;
+
+	/**
+	 * Create an empty bitmap.
+	 */
+	public CompressedBitmap( )
+	{
+		this.keys = new char[4];
+		this.containers = new Container[4];
+		this.size = 0;
+	}
+
+	/**
+	 * Create a bitmap of the integers in a disk array.
+	 *
+	 * @param array
+	 *            the disk array of <code>Integer</code>
+	 * @return
+	 * @throws IOException
+	 */
+	public static CompressedBitmap valueOf( IDiskArray array )
+			throws IOException
+	{
+		CompressedBitmap result = new CompressedBitmap( );
+		if ( array == null )
+		{
+			return result;
+		}
+		for ( int i = 0; i < array.size( ); i++ )
+		{
+			result.add( ( (Integer) array.get( i ) ).intValue( ) );
+		}
+		return result;
+	}
+
+	/**
+	 *
+	 * @param value
+	 */
+	public void add( int value )
+	{
+		char key = (char) ( value >>> 16 );
+		int index = indexOf( key );
+		if ( index < 0 )
+		{
+			index = -index - 1;
+			insertContainer( index, key, new Container( ) );
+		}
+		containers[index].add( (char) value );
+	}
+
+	/**
+	 *
+	 * @param value
+	 * @return
+	 */
+	public boolean contains( int value )
+	{
+		int index = indexOf( (char) ( value >>> 16 ) );
+		return index >= 0 && containers[index].contains( (char) value );
+	}
+
+	/**
+	 *
+	 * @return the number of the integers in this bitmap
+	 */
+	public int cardinality( )
+	{
+		int result = 0;
+		for ( int i = 0; i < size; i++ )
+		{
+			result += containers[i].cardinality;
+		}
+		return result;
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	public boolean isEmpty( )
+	{
+		return size == 0;
+	}
+
+	/**
+	 *
+	 * @param other
+	 * @return the intersection of this bitmap and the other one
+	 */
+	public CompressedBitmap and( CompressedBitmap other )
+	{
+		CompressedBitmap result = new CompressedBitmap( );
+		int i = 0, j = 0;
+		while ( i < size && j < other.size )
+		{
+			if ( keys[i] == other.keys[j] )
+			{
+				Container container = containers[i].and( other.containers[j] );
+				if ( container.cardinality > 0 )
+				{
+					result.insertContainer( result.size, keys[i], container );
+				}
+				i++;
+				j++;
+			}
+			else if ( keys[i] < other.keys[j] )
+			{
+				i++;
+			}
+			else
+			{
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 *
+	 * @param other
+	 * @return the union of this bitmap and the other one
+	 */
+	public CompressedBitmap or( CompressedBitmap other )
+	{
+		CompressedBitmap result = new CompressedBitmap( );
+		int i = 0, j = 0;
+		while ( i < size || j < other.size )
+		{
+			if ( j >= other.size || ( i < size && keys[i] < other.keys[j] ) )
+			{
+				result.insertContainer( result.size,
+						keys[i],
+						containers[i].copy( ) );
+				i++;
+			}
+			else if ( i >= size || other.keys[j] < keys[i] )
+			{
+				result.insertContainer( result.size,
+						other.keys[j],
+						other.containers[j].copy( ) );
+				j++;
+			}
+			else
+			{
+				result.insertContainer( result.size,
+						keys[i],
+						containers[i].or( other.containers[j] ) );
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 *
+	 * @param other
+	 * @return whether this bitmap and the other one share any integer
+	 */
+	public boolean intersects( CompressedBitmap other )
+	{
+		int i = 0, j = 0;
+		while ( i < size && j < other.size )
+		{
+			if ( keys[i] == other.keys[j] )
+			{
+				if ( containers[i].intersects( other.containers[j] ) )
+				{
+					return true;
+				}
+				i++;
+				j++;
+			}
+			else if ( keys[i] < other.keys[j] )
+			{
+				i++;
+			}
+			else
+			{
+				j++;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 *
+	 * @return the integers in ascending order
+	 */
+	public int[] toArray( )
+	{
+		int[] result = new int[cardinality( )];
+		int pos = 0;
+		for ( int i = 0; i < size; i++ )
+		{
+			pos = containers[i].fill( keys[i] << 16, result, pos );
+		}
+		return result;
+	}
+
+	/**
+	 *
+	 * @return the disk array of the integers in ascending order
+	 * @throws IOException
+	 */
+	public IDiskArray toDiskArray( ) throws IOException
+	{
+		int[] values = toArray( );
+		IDiskArray result = new BufferedPrimitiveDiskArray( Math.max( values.length,
+				1 ) );
+		for ( int i = 0; i < values.length; i++ )
+		{
+			result.add( Integer.valueOf( values[i] ) );
+		}
+		return result;
+	}
+
+	/**
+	 *
+	 * @param documentObject
+	 * @throws IOException
+	 */
+	public void write( IDocumentObject documentObject ) throws IOException
+	{
+		documentObject.writeInt( size );
+		for ( int i = 0; i < size; i++ )
+		{
+			documentObject.writeShort( keys[i] );
+			containers[i].write( documentObject );
+		}
+	}
+
+	/**
+	 *
+	 * @param documentObject
+	 * @return
+	 * @throws IOException
+	 */
+	public static CompressedBitmap read( IDocumentObject documentObject )
+			throws IOException
+	{
+		CompressedBitmap result = new CompressedBitmap( );
+		int size = documentObject.readInt( );
+		for ( int i = 0; i < size; i++ )
+		{
+			char key = (char) documentObject.readShort( );
+			result.insertContainer( result.size,
+					key,
+					Container.read( documentObject ) );
+		}
+		return result;
+	}
+
+	/**
+	 *
+	 * @param key
+	 * @return the index of the container, or (-(insertion point) - 1)
+	 */
+	private int indexOf( char key )
+	{
+		// integers are usually added in ascending order
+		if ( size > 0 && keys[size - 1] == key )
+		{
+			return size - 1;
+		}
+		int low = 0, high = size - 1;
+		while ( low <= high )
+		{
+			int mid = ( low + high ) >>> 1;
+			if ( keys[mid] < key )
+				low = mid + 1;
+			else if ( keys[mid] > key )
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -( low + 1 );
+	}
+
+	/**
+	 *
+	 * @param index
+	 * @param key
+	 * @param container
+	 */
+	private void insertContainer( int index, char key, Container container )
+	{
+		if ( size == keys.length )
+		{
+			char[] newKeys = new char[size * 2];
+			System.arraycopy( keys, 0, newKeys, 0, size );
+			keys = newKeys;
+			Container[] newContainers = new Container[size * 2];
+			System.arraycopy( containers, 0, newContainers, 0, size );
+			containers = newContainers;
+		}
+		System.arraycopy( keys, index, keys, index + 1, size - index );
+		System.arraycopy( containers, index, containers, index + 1, size
+				- index );
+		keys[index] = key;
+		containers[index] = container;
+		size++;
+	}
+
+	/**
+	 * The low 16 bits of the integers which share the same high 16 bits. They
+	 * are saved in a sorted array if the cardinality is not greater than
+	 * MAX_ARRAY_SIZE, otherwise in a bitmap.
+	 */
+	private static class Container
+	{
+		private char[] values;
+		private long[] words;
+		private int cardinality;
+
+		Container( )
+		{
+			this.values = new char[4];
+		}
+
+		/**
+		 *
+		 * @param value
+		 */
+		void add( char value )
+		{
+			if ( words != null )
+			{
+				long mask = 1L << value;
+				if ( ( words[value >>> 6] & mask ) == 0 )
+				{
+					words[value >>> 6] |= mask;
+					cardinality++;
+				}
+				return;
+			}
+			int index;
+			if ( cardinality > 0 && values[cardinality - 1] < value )
+				index = -cardinality - 1;
+			else
+				index = binarySearch( values, cardinality, value );
+			if ( index >= 0 )
+			{
+				return;
+			}
+			if ( cardinality == MAX_ARRAY_SIZE )
+			{
+				toBitmap( );
+				add( value );
+				return;
+			}
+			index = -index - 1;
+			if ( cardinality == values.length )
+			{
+				char[] newValues = new char[Math.min( cardinality * 2,
+						MAX_ARRAY_SIZE )];
+				System.arraycopy( values, 0, newValues, 0, cardinality );
+				values = newValues;
+			}
+			System.arraycopy( values, index, values, index + 1, cardinality
+					- index );
+			values[index] = value;
+			cardinality++;
+		}
+
+		/**
+		 *
+		 * @param value
+		 * @return
+		 */
+		boolean contains( char value )
+		{
+			if ( words != null )
+			{
+				return ( words[value >>> 6] & ( 1L << value ) ) != 0;
+			}
+			return binarySearch( values, cardinality, value ) >= 0;
+		}
+
+		/**
+		 *
+		 * @param other
+		 * @return
+		 */
+		Container and( Container other )
+		{
+			Container result = new Container( );
+			if ( words != null && other.words != null )
+			{
+				result.words = new long[BITMAP_WORDS];
+				for ( int i = 0; i < BITMAP_WORDS; i++ )
+				{
+					result.words[i] = words[i] & other.words[i];
+					result.cardinality += Long.bitCount( result.words[i] );
+				}
+				if ( result.cardinality <= MAX_ARRAY_SIZE )
+				{
+					result.toArray( );
+				}
+			}
+			else if ( words != null || other.words != null )
+			{
+				Container array = words == null ? this : other;
+				Container bitmap = words == null ? other : this;
+				result.values = new char[Math.max( array.cardinality, 1 )];
+				for ( int i = 0; i < array.cardinality; i++ )
+				{
+					if ( bitmap.contains( array.values[i] ) )
+					{
+						result.values[result.cardinality++] = array.values[i];
+					}
+				}
+			}
+			else
+			{
+				result.values = new char[Math.max( Math.min( cardinality,
+						other.cardinality ), 1 )];
+				int i = 0, j = 0;
+				while ( i < cardinality && j < other.cardinality )
+				{
+					if ( values[i] == other.values[j] )
+					{
+						result.values[result.cardinality++] = values[i];
+						i++;
+						j++;
+					}
+					else if ( values[i] < other.values[j] )
+						i++;
+					else
+						j++;
+				}
+			}
+			return result;
+		}
+
+		/**
+		 *
+		 * @param other
+		 * @return
+		 */
+		Container or( Container other )
+		{
+			Container result = new Container( );
+			if ( words != null || other.words != null )
+			{
+				result.words = new long[BITMAP_WORDS];
+				addTo( result.words );
+				other.addTo( result.words );
+				for ( int i = 0; i < BITMAP_WORDS; i++ )
+				{
+					result.cardinality += Long.bitCount( result.words[i] );
+				}
+				return result;
+			}
+			result.values = new char[Math.max( cardinality + other.cardinality, 1 )];
+			int i = 0, j = 0;
+			while ( i < cardinality || j < other.cardinality )
+			{
+				if ( j >= other.cardinality
+						|| ( i < cardinality && values[i] < other.values[j] ) )
+					result.values[result.cardinality++] = values[i++];
+				else if ( i >= cardinality || other.values[j] < values[i] )
+					result.values[result.cardinality++] = other.values[j++];
+				else
+				{
+					result.values[result.cardinality++] = values[i++];
+					j++;
+				}
+			}
+			if ( result.cardinality > MAX_ARRAY_SIZE )
+			{
+				result.toBitmap( );
+			}
+			return result;
+		}
+
+		/**
+		 *
+		 * @param other
+		 * @return
+		 */
+		boolean intersects( Container other )
+		{
+			if ( words != null && other.words != null )
+			{
+				for ( int i = 0; i < BITMAP_WORDS; i++ )
+				{
+					if ( ( words[i] & other.words[i] ) != 0 )
+						return true;
+				}
+				return false;
+			}
+			Container array = words == null ? this : other;
+			Container container = array == this ? other : this;
+			for ( int i = 0; i < array.cardinality; i++ )
+			{
+				if ( container.contains( array.values[i] ) )
+					return true;
+			}
+			return false;
+		}
+
+		/**
+		 *
+		 * @return
+		 */
+		Container copy( )
+		{
+			Container result = new Container( );
+			result.cardinality = cardinality;
+			if ( words != null )
+			{
+				result.words = (long[]) words.clone( );
+			}
+			else
+			{
+				result.values = (char[]) values.clone( );
+			}
+			return result;
+		}
+
+		/**
+		 * Set the bits of the values in a bitmap.
+		 *
+		 * @param target
+		 */
+		private void addTo( long[] target )
+		{
+			if ( words != null )
+			{
+				for ( int i = 0; i < BITMAP_WORDS; i++ )
+				{
+					target[i] |= words[i];
+				}
+			}
+			else
+			{
+				for ( int i = 0; i < cardinality; i++ )
+				{
+					target[values[i] >>> 6] |= 1L << values[i];
+				}
+			}
+		}
+
+		/**
+		 *
+		 * @param high
+		 * @param target
+		 * @param pos
+		 * @return the next position of target
+		 */
+		int fill( int high, int[] target, int pos )
+		{
+			if ( words != null )
+			{
+				for ( int i = 0; i < BITMAP_WORDS; i++ )
+				{
+					long word = words[i];
+					while ( word != 0 )
+					{
+						target[pos++] = high
+								| ( i << 6 ) | Long.numberOfTrailingZeros( word );
+						word &= word - 1;
+					}
+				}
+			}
+			else
+			{
+				for ( int i = 0; i < cardinality; i++ )
+				{
+					target[pos++] = high | values[i];
+				}
+			}
+			return pos;
+		}
+
+		private void toBitmap( )
+		{
+			long[] newWords = new long[BITMAP_WORDS];
+			addTo( newWords );
+			words = newWords;
+			values = null;
+		}
+
+		private void toArray( )
+		{
+			char[] newValues = new char[Math.max( cardinality, 1 )];
+			int[] buffer = new int[cardinality];
+			fill( 0, buffer, 0 );
+			for ( int i = 0; i < cardinality; i++ )
+			{
+				newValues[i] = (char) buffer[i];
+			}
+			values = newValues;
+			words = null;
+		}
+
+		/**
+		 *
+		 * @param documentObject
+		 * @throws IOException
+		 */
+		void write( IDocumentObject documentObject ) throws IOException
+		{
+			documentObject.writeInt( cardinality );
+			if ( words != null )
+			{
+				for ( int i = 0; i < BITMAP_WORDS; i++ )
+				{
+					documentObject.writeInt( (int) ( words[i] >>> 32 ) );
+					documentObject.writeInt( (int) words[i] );
+				}
+			}
+			else
+			{
+				for ( int i = 0; i < cardinality; i++ )
+				{
+					documentObject.writeShort( values[i] );
+				}
+			}
+		}
+
+		/**
+		 *
+		 * @param documentObject
+		 * @return
+		 * @throws IOException
+		 */
+		static Container read( IDocumentObject documentObject )
+				throws IOException
+		{
+			Container result = new Container( );
+			result.cardinality = documentObject.readInt( );
+			if ( result.cardinality > MAX_ARRAY_SIZE )
+			{
+				result.words = new long[BITMAP_WORDS];
+				for ( int i = 0; i < BITMAP_WORDS; i++ )
+				{
+					long high = documentObject.readInt( );
+					long low = documentObject.readInt( ) & 0xFFFFFFFFL;
+					result.words[i] = ( high << 32 ) | low;
+				}
+				result.values = null;
+			}
+			else
+			{
+				result.values = new char[Math.max( result.cardinality, 1 )];
+				for ( int i = 0; i < result.cardinality; i++ )
+				{
+					result.values[i] = (char) documentObject.readShort( );
+				}
+			}
+			return result;
+		}
+
+		/**
+		 *
+		 * @param array
+		 * @param length
+		 * @param value
+		 * @return
+		 */
+		private static int binarySearch( char[] array, int length, char value )
+		{
+			int low = 0, high = length - 1;
+			while ( low <= high )
+			{
+				int mid = ( low + high ) >>> 1;
+				if ( array[mid] < value )
+					low = mid + 1;
+				else if ( array[mid] > value )
+					high = mid - 1;
+				else
+					return mid;
+			}
+			return -( low + 1 );
+		}
+	}
+}
@@ -13,6 +13,7 @@ package org.eclipse.birt.data.engine.olap.data.util;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.eclipse.birt.data.engine.cache.Constants;
@@ -506,13 +507,24 @@ public class DiskIndex
 	}
 
 	/**
+	 * Sort the keys and merge the keys of the same value, so that the result
+	 * can be used to create an index whose keys are sorted.
 	 * 
 	 * @param keyList
 	 * @return
 	 * @throws IOException
 	 */
-	private IDiskArray sortKeys( IDiskArray keyList ) throws IOException
+	public static IDiskArray sortKeys( IDiskArray keyList ) throws IOException
 	{
+		if ( keyList.size( ) == 0 )
+		{
+			return keyList;
+		}
+		IDiskArray sortedList = sortPrimitiveKeys( keyList );
+		if ( sortedList != null )
+		{
+			return sortedList;
+		}
 		DiskSortedStack sortStack = new DiskSortedStack( Math.min( keyList.size( ),
 				Constants.MAX_LIST_BUFFER_SIZE ),
 				false,
@@ -555,7 +567,181 @@ public class DiskIndex
 		return reList;
 	}
 
-	private void addIndex(BufferedStructureArray reList, IndexKey curIndexKey,
+	/**
+	 * Sort the keys by primitive values instead of objects, if each key is
+	 * one integer, long, double or date value of the same type. The values
+	 * are ranked by a parallel sort of the distinct values, and the positions
+	 * are sorted by the rank and their original order, so that the positions
+	 * of the same key keep their order.
+	 * 
+	 * @param keyList
+	 * @return the sorted keys, or null if the keys can not be sorted by
+	 *         primitive values
+	 * @throws IOException
+	 */
+	private static IDiskArray sortPrimitiveKeys( IDiskArray keyList )
+			throws IOException
+	{
+		int size = keyList.size( );
+		if ( size > Constants.MAX_DIMENSION_LENGTH )
+		{
+			return null;
+		}
+		Class keyClass = null;
+		long[] values = new long[size];
+		int[] dimPos = new int[size];
+		int[] dimOffset = new int[size];
+		for ( int i = 0; i < size; i++ )
+		{
+			IndexKey indexKey = (IndexKey) keyList.get( i );
+			Object[] key = indexKey.getKey( );
+			if ( key.length != 1
+					|| key[0] == null
+					|| indexKey.getDimensionPos( ).length != 1
+					|| indexKey.getOffset( ).length != 1 )
+			{
+				return null;
+			}
+			if ( keyClass == null )
+			{
+				keyClass = key[0].getClass( );
+				if ( !isPrimitiveKeyClass( keyClass ) )
+				{
+					return null;
+				}
+			}
+			else if ( key[0].getClass( ) != keyClass )
+			{
+				return null;
+			}
+			values[i] = toSortableLong( key[0] );
+			dimPos[i] = indexKey.getDimensionPos( )[0];
+			dimOffset[i] = indexKey.getOffset( )[0];
+		}
+
+		long[] distinctValues = values.clone( );
+		Arrays.parallelSort( distinctValues );
+		int distinctCount = 0;
+		for ( int i = 0; i < size; i++ )
+		{
+			if ( distinctCount == 0
+					|| distinctValues[i] != distinctValues[distinctCount - 1] )
+			{
+				distinctValues[distinctCount++] = distinctValues[i];
+			}
+		}
+		// the rank of the value in the high bits, the original position in
+		// the low bits
+		long[] order = new long[size];
+		for ( int i = 0; i < size; i++ )
+		{
+			order[i] = ( (long) Arrays.binarySearch( distinctValues,
+					0,
+					distinctCount,
+					values[i] ) << 32 )
+					| i;
+		}
+		Arrays.parallelSort( order );
+
+		BufferedStructureArray reList = new BufferedStructureArray( IndexKey.getCreator( ),
+				Math.min( distinctCount, Constants.MAX_LIST_BUFFER_SIZE ) );
+		int start = 0;
+		while ( start < size )
+		{
+			int rank = (int) ( order[start] >>> 32 );
+			int end = start + 1;
+			while ( end < size && (int) ( order[end] >>> 32 ) == rank )
+			{
+				end++;
+			}
+			int[] iDimPos = new int[end - start];
+			int[] iDimOffset = new int[end - start];
+			for ( int j = start; j < end; j++ )
+			{
+				int index = (int) order[j];
+				iDimPos[j - start] = dimPos[index];
+				iDimOffset[j - start] = dimOffset[index];
+			}
+			IndexKey indexKey = new IndexKey( );
+			indexKey.setKey( new Object[]{
+				fromSortableLong( distinctValues[rank], keyClass )
+			} );
+			indexKey.setDimensionPos( iDimPos );
+			indexKey.setOffset( iDimOffset );
+			reList.add( indexKey );
+			start = end;
+		}
+		return reList;
+	}
+
+	/**
+	 * 
+	 * @param keyClass
+	 * @return whether the values of the class are ordered as their
+	 *         primitive values
+	 */
+	private static boolean isPrimitiveKeyClass( Class keyClass )
+	{
+		return keyClass == Integer.class
+				|| keyClass == Long.class
+				|| keyClass == Double.class
+				|| keyClass == java.util.Date.class
+				|| keyClass == java.sql.Date.class
+				|| keyClass == java.sql.Time.class;
+	}
+
+	/**
+	 * 
+	 * @param value
+	 * @return a long value which is ordered as the value
+	 */
+	private static long toSortableLong( Object value )
+	{
+		if ( value instanceof Double )
+		{
+			long bits = Double.doubleToLongBits( ( (Double) value ).doubleValue( ) );
+			return bits < 0 ? bits ^ Long.MAX_VALUE : bits;
+		}
+		if ( value instanceof java.util.Date )
+		{
+			return ( (java.util.Date) value ).getTime( );
+		}
+		return ( (Number) value ).longValue( );
+	}
+
+	/**
+	 * 
+	 * @param value
+	 * @param keyClass
+	 * @return the key value of the sortable long value
+	 */
+	private static Object fromSortableLong( long value, Class keyClass )
+	{
+		if ( keyClass == Integer.class )
+		{
+			return Integer.valueOf( (int) value );
+		}
+		if ( keyClass == Long.class )
+		{
+			return Long.valueOf( value );
+		}
+		if ( keyClass == Double.class )
+		{
+			return new Double( Double.longBitsToDouble( value < 0
+					? value ^ Long.MAX_VALUE : value ) );
+		}
+		if ( keyClass == java.sql.Date.class )
+		{
+			return new java.sql.Date( value );
+		}
+		if ( keyClass == java.sql.Time.class )
+		{
+			return new java.sql.Time( value );
+		}
+		return new java.util.Date( value );
+	}
+
+	private static void addIndex(BufferedStructureArray reList, IndexKey curIndexKey,
 			List<Integer> dimPos, List<Integer> dimOffset) throws IOException {
 		int[] iDimPos = new int[dimPos.size( )];
 		for( int j = 0; j < iDimPos.length; j++ )
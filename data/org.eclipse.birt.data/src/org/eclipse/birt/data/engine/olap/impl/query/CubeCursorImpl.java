@@ -56,6 +56,7 @@ import org.eclipse.birt.data.engine.olap.query.view.BirtCubeView;
 import org.eclipse.birt.data.engine.olap.query.view.CubeQueryDefinitionUtil;
 import org.eclipse.birt.data.engine.olap.script.JSCubeBindingObject;
 import org.eclipse.birt.data.engine.olap.script.OLAPExpressionCompiler;
+import org.eclipse.birt.data.engine.olap.util.CompiledMeasureExpression;
 import org.eclipse.birt.data.engine.olap.util.OlapExpressionCompiler;
 import org.eclipse.birt.data.engine.olap.util.OlapExpressionUtil;
 import org.eclipse.birt.data.engine.script.ScriptConstants;
@@ -79,6 +80,7 @@ public class CubeCursorImpl implements ICubeCursor
 	private BirtCubeView cubeView;
 	private ScriptContext cx;
 	private Map<DimLevel, DimensionCursor> dimensionCursorMap;
+	private Map<String, CompiledMeasureExpression> compiledExprMap;
 	
 	public CubeCursorImpl ( IBaseQueryResults outerResults, CubeCursor cursor, Scriptable scope, ScriptContext cx, ICubeQueryDefinition queryDefn, BirtCubeView view ) throws DataException
 	{
@@ -93,6 +95,7 @@ public class CubeCursorImpl implements ICubeCursor
 		this.outerResults = OlapExpressionUtil.createQueryResultsScriptable( outerResults );
 		
 		this.bindingMap = new HashMap( );
+		this.compiledExprMap = new HashMap<String, CompiledMeasureExpression>( );
 		this.dimLevelMap = new HashMap<String, DimLevel>( );
 		this.validBindingSet = new HashSet( );
 		this.dataTypeMap = new HashMap( );
@@ -106,6 +109,12 @@ public class CubeCursorImpl implements ICubeCursor
 			if ( binding.getAggrFunction( ) == null )
 			{
 				this.bindingMap.put( bindingName, expr );
+				CompiledMeasureExpression compiledExpr = CompiledMeasureExpression.compile( expr,
+						ScriptConstants.DATA_BINDING_SCRIPTABLE );
+				if ( compiledExpr != null )
+				{
+					this.compiledExprMap.put( bindingName, compiledExpr );
+				}
 				if( expr instanceof IScriptExpression )
 				{
 					if( ! isSimpleDimensionExpression( ( ( IScriptExpression )expr).getText( ) ) )
@@ -390,42 +399,51 @@ public class CubeCursorImpl implements ICubeCursor
 				try
 				{
 					IBaseExpression expr = (IBaseExpression) this.bindingMap.get( arg0 );
-					DimLevel dimLevel;
-					try
+					result = evaluateCompiled( arg0 );
+					if ( result == null )
 					{
-						if( dimLevelMap.containsKey(arg0 ) )
+						DimLevel dimLevel;
+						try
 						{
-							dimLevel = dimLevelMap.get( arg0 );
+							if( dimLevelMap.containsKey(arg0 ) )
+							{
+								dimLevel = dimLevelMap.get( arg0 );
+							}
+							else
+							{
+								dimLevel = OlapExpressionUtil.getTargetDimLevel( ( (ScriptExpression) expr ).getText( ) );
+								dimLevelMap.put( arg0, dimLevel );
+							}
 						}
-						else
+						catch ( Exception ex )
 						{
-							dimLevel = OlapExpressionUtil.getTargetDimLevel( ( (ScriptExpression) expr ).getText( ) );
-							dimLevelMap.put( arg0, dimLevel );
+							dimLevel = null;
+							dimLevelMap.put( arg0, null );
 						}
-					}
-					catch ( Exception ex )
-					{
-						dimLevel = null;
-						dimLevelMap.put( arg0, null );
-					}
 
-					if ( dimLevel != null )
-					{ 
-						DimensionCursor dimCursor = this.dimensionCursorMap.get( dimLevel );
-						if ( dimCursor != null )
-						{
-							try
-							{
-								if ( dimLevel.getAttrName( ) != null )
-									result = dimCursor.getObject( OlapExpressionUtil.getAttributeColumnName( dimLevel.getLevelName( ),
-											dimLevel.getAttrName( ) ) );
-								else
-									result = dimCursor.getObject( dimLevel.getLevelName( ) );
-							}
-							catch ( Exception e )
+						if ( dimLevel != null )
+						{ 
+							DimensionCursor dimCursor = this.dimensionCursorMap.get( dimLevel );
+							if ( dimCursor != null )
 							{
-								result = null;
+								try
+								{
+									if ( dimLevel.getAttrName( ) != null )
+										result = dimCursor.getObject( OlapExpressionUtil.getAttributeColumnName( dimLevel.getLevelName( ),
+												dimLevel.getAttrName( ) ) );
+									else
+										result = dimCursor.getObject( dimLevel.getLevelName( ) );
+								}
+								catch ( Exception e )
+								{
+									result = null;
+								}
 							}
+							else
+								result = ScriptEvalUtil.evalExpr( expr,
+										cx.newContext( scope ),
+										org.eclipse.birt.core.script.ScriptExpression.defaultID,
+										0 );
 						}
 						else
 							result = ScriptEvalUtil.evalExpr( expr,
@@ -433,11 +451,6 @@ public class CubeCursorImpl implements ICubeCursor
 									org.eclipse.birt.core.script.ScriptExpression.defaultID,
 									0 );
 					}
-					else
-						result = ScriptEvalUtil.evalExpr( expr,
-								cx.newContext( scope ),
-								org.eclipse.birt.core.script.ScriptExpression.defaultID,
-								0 );
 				}
 				catch ( Exception e )
 				{
@@ -467,6 +480,37 @@ public class CubeCursorImpl implements ICubeCursor
 		return result;
 	}
 
+	/**
+	 * Evaluate the binding whose expression is compiled without script, on the
+	 * values of the referenced bindings.
+	 * 
+	 * @param bindingName
+	 * @return the value of the binding, or null if the binding should be
+	 *         evaluated by script
+	 */
+	private Object evaluateCompiled( String bindingName )
+	{
+		CompiledMeasureExpression compiledExpr = this.compiledExprMap.get( bindingName );
+		if ( compiledExpr == null )
+		{
+			return null;
+		}
+		String[] references = compiledExpr.getReferences( );
+		Object[] values = new Object[references.length];
+		try
+		{
+			for ( int i = 0; i < references.length; i++ )
+			{
+				values[i] = getObject( references[i] );
+			}
+		}
+		catch ( OLAPException e )
+		{
+			return null;
+		}
+		return compiledExpr.evaluate( values );
+	}
+
 	private void populateDimensionCursor( ) throws OLAPException
 	{
 		if ( this.cubeView.getPageEdgeView( ) != null
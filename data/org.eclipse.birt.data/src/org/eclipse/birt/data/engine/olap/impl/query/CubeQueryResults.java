@@ -26,6 +26,7 @@ import javax.olap.cursor.CubeCursor;
 import org.eclipse.birt.core.data.ExpressionUtil;
 import org.eclipse.birt.core.data.IDimLevel;
 import org.eclipse.birt.core.exception.BirtException;
+import org.eclipse.birt.data.engine.api.DataEngine;
 import org.eclipse.birt.data.engine.api.DataEngineContext;
 import org.eclipse.birt.data.engine.api.IBaseExpression;
 import org.eclipse.birt.data.engine.api.IBaseQueryResults;
@@ -363,7 +364,7 @@ public class CubeQueryResults implements ICubeQueryResults
 		{
 			//cube should be always loaded from data mart, nothing to do with MODE
 			return CubeRADocumentManagerFactory.createRADocumentManager( executor.getCubeQueryDefinition( ).getName( ), 
-					executor.getContext( ).getDocReader( ) );
+					executor.getContext( ).getDocReader( ), isMemoryMapped( ) );
 		}
 		if ( executor.getContext( ).getMode( ) == DataEngineContext.DIRECT_PRESENTATION
 				|| executor.getContext( ).getMode( ) == DataEngineContext.MODE_GENERATION )
@@ -381,7 +382,20 @@ public class CubeQueryResults implements ICubeQueryResults
 				return manager;
 		}
 		return CubeRADocumentManagerFactory.createRADocumentManager( executor.getCubeQueryDefinition( ).getName( ), 
-				executor.getContext( ).getDocReader( ) );
+				executor.getContext( ).getDocReader( ), isMemoryMapped( ) );
+	}
+	
+	/**
+	 * 
+	 * @return whether the cube document should be read through memory mapped
+	 *         files
+	 */
+	private boolean isMemoryMapped( )
+	{
+		Object memoryMapped = appContext == null ? null
+				: appContext.get( DataEngine.MEMORY_MAPPED_CUBE_DOCUMENT );
+		return memoryMapped != null
+				&& Boolean.valueOf( memoryMapped.toString( ).trim( ) ).booleanValue( );
 	}
 
 	/**
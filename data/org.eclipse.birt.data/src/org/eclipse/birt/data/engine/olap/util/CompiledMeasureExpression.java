@@ -0,0 +1,895 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.birt.data.engine.olap.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.birt.data.engine.api.IBaseExpression;
+import org.eclipse.birt.data.engine.api.IConditionalExpression;
+import org.eclipse.birt.data.engine.api.IScriptExpression;
+
+/**
+ * A measure expression compiled without script. Only the arithmetic,
+ * comparison and logical operators on numbers and the references to the
+ * values of one script object, such as data["name"] or measure["name"], are
+ * supported, which are the common forms of the computed measures, derived
+ * measures and measure filters. The expression is evaluated on one row, or on
+ * whole columns of values in blocks.
+ * <p>
+ * The expression can only be evaluated if all the referenced values are
+ * numbers, since the numbers have the same semantics in Java and JavaScript.
+ * Otherwise the expression should be evaluated by script.
+ */
+public class CompiledMeasureExpression
+{
+	/**
+	 * The count of the rows evaluated at a time.
+	 */
+	public static final int BLOCK_SIZE = 1024;
+
+	private static final int ADD = 0;
+	private static final int SUBTRACT = 1;
+	private static final int MULTIPLY = 2;
+	private static final int DIVIDE = 3;
+	private static final int MODULO = 4;
+	private static final int LT = 5;
+	private static final int LE = 6;
+	private static final int GT = 7;
+	private static final int GE = 8;
+	private static final int EQ = 9;
+	private static final int NE = 10;
+	private static final int AND = 11;
+	private static final int OR = 12;
+
+	private Node root;
+	private String[] references;
+	private int nodeCount;
+
+	/**
+	 *
+	 * @param root
+	 * @param references
+	 * @param nodeCount
+	 */
+	private CompiledMeasureExpression( Node root, String[] references,
+			int nodeCount )
+	{
+		this.root = root;
+		this.references = references;
+		this.nodeCount = nodeCount;
+	}
+
+	/**
+	 * Compile a script expression, or a conditional expression whose operator
+	 * compares numbers.
+	 *
+	 * @param expr
+	 * @param indicator
+	 *            the name of the script object of the referenced values
+	 * @return the compiled expression, or null if the expression is not
+	 *         supported
+	 */
+	public static CompiledMeasureExpression compile( IBaseExpression expr,
+			String indicator )
+	{
+		Parser parser = new Parser( indicator );
+		Node root;
+		if ( expr instanceof IConditionalExpression )
+		{
+			root = parser.parseCondition( (IConditionalExpression) expr );
+		}
+		else if ( expr instanceof IScriptExpression )
+		{
+			root = parser.parseOperation( ( (IScriptExpression) expr ).getText( ) );
+		}
+		else
+		{
+			root = null;
+		}
+		if ( root == null || parser.references.isEmpty( ) )
+		{
+			return null;
+		}
+		return new CompiledMeasureExpression( root,
+				parser.references.toArray( new String[parser.references.size( )] ),
+				parser.nodeCount );
+	}
+
+	/**
+	 *
+	 * @return the names of the referenced values, in the order of the values
+	 *         passed to the evaluation
+	 */
+	public String[] getReferences( )
+	{
+		return references;
+	}
+
+	/**
+	 *
+	 * @return whether the result is a boolean, otherwise it is a number
+	 */
+	public boolean isBoolean( )
+	{
+		return root.isBoolean;
+	}
+
+	/**
+	 * Evaluate the expression on one row.
+	 *
+	 * @param values
+	 *            the referenced values
+	 * @return the result as a Double or a Boolean, or null if a value is not a
+	 *         number
+	 */
+	public Object evaluate( Object[] values )
+	{
+		double[][] columns = new double[values.length][1];
+		for ( int i = 0; i < values.length; i++ )
+		{
+			if ( !( values[i] instanceof Number ) )
+			{
+				return null;
+			}
+			columns[i][0] = ( (Number) values[i] ).doubleValue( );
+		}
+		double[] result = new double[1];
+		evaluate( columns, 1, result );
+		if ( root.isBoolean )
+		{
+			return Boolean.valueOf( result[0] != 0 );
+		}
+		return new Double( result[0] );
+	}
+
+	/**
+	 * Evaluate the expression on a block of rows. A boolean result is 1 for
+	 * true and 0 for false.
+	 *
+	 * @param columns
+	 *            the referenced values of each row, which are all numbers
+	 * @param length
+	 *            the count of the rows, not more than BLOCK_SIZE
+	 * @param result
+	 */
+	public void evaluate( double[][] columns, int length, double[] result )
+	{
+		double[][] buffers = new double[nodeCount][];
+		root.evaluate( columns, length, result, buffers );
+	}
+
+	/**
+	 * A node of the compiled expression, whose result is written to a column.
+	 */
+	private static abstract class Node
+	{
+		boolean isBoolean;
+		// the index of the temporary column of the node
+		int index;
+
+		/**
+		 *
+		 * @param columns
+		 * @param length
+		 * @param result
+		 * @param buffers
+		 *            the temporary columns of the nodes
+		 */
+		abstract void evaluate( double[][] columns, int length,
+				double[] result, double[][] buffers );
+
+		/**
+		 *
+		 * @param slot
+		 * @param length
+		 * @param buffers
+		 * @return a temporary column of this node
+		 */
+		static double[] getBuffer( int slot, int length, double[][] buffers )
+		{
+			if ( buffers[slot] == null || buffers[slot].length < length )
+			{
+				buffers[slot] = new double[length];
+			}
+			return buffers[slot];
+		}
+	}
+
+	/**
+	 * A number or boolean constant.
+	 */
+	private static class Constant extends Node
+	{
+		private double value;
+
+		Constant( double value, boolean isBoolean )
+		{
+			this.value = value;
+			this.isBoolean = isBoolean;
+		}
+
+		void evaluate( double[][] columns, int length, double[] result,
+				double[][] buffers )
+		{
+			for ( int i = 0; i < length; i++ )
+			{
+				result[i] = value;
+			}
+		}
+	}
+
+	/**
+	 * A referenced value.
+	 */
+	private static class Reference extends Node
+	{
+		private int column;
+
+		Reference( int column )
+		{
+			this.column = column;
+		}
+
+		void evaluate( double[][] columns, int length, double[] result,
+				double[][] buffers )
+		{
+			System.arraycopy( columns[column], 0, result, 0, length );
+		}
+	}
+
+	/**
+	 * The negation of a number, or the logical not of a boolean.
+	 */
+	private static class Unary extends Node
+	{
+		private Node operand;
+
+		Unary( Node operand )
+		{
+			this.operand = operand;
+			this.isBoolean = operand.isBoolean;
+		}
+
+		void evaluate( double[][] columns, int length, double[] result,
+				double[][] buffers )
+		{
+			operand.evaluate( columns, length, result, buffers );
+			if ( isBoolean )
+			{
+				for ( int i = 0; i < length; i++ )
+				{
+					result[i] = result[i] == 0 ? 1 : 0;
+				}
+			}
+			else
+			{
+				for ( int i = 0; i < length; i++ )
+				{
+					result[i] = -result[i];
+				}
+			}
+		}
+	}
+
+	/**
+	 * A binary operator.
+	 */
+	private static class Binary extends Node
+	{
+		private int operator;
+		private Node left;
+		private Node right;
+
+		Binary( int operator, Node left, Node right )
+		{
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+			this.isBoolean = operator >= LT;
+		}
+
+		void evaluate( double[][] columns, int length, double[] result,
+				double[][] buffers )
+		{
+			left.evaluate( columns, length, result, buffers );
+			double[] r = getBuffer( index, length, buffers );
+			right.evaluate( columns, length, r, buffers );
+			switch ( operator )
+			{
+				case ADD :
+					for ( int i = 0; i < length; i++ )
+						result[i] += r[i];
+					break;
+				case SUBTRACT :
+					for ( int i = 0; i < length; i++ )
+						result[i] -= r[i];
+					break;
+				case MULTIPLY :
+					for ( int i = 0; i < length; i++ )
+						result[i] *= r[i];
+					break;
+				case DIVIDE :
+					for ( int i = 0; i < length; i++ )
+						result[i] /= r[i];
+					break;
+				case MODULO :
+					for ( int i = 0; i < length; i++ )
+						result[i] %= r[i];
+					break;
+				case LT :
+					for ( int i = 0; i < length; i++ )
+						result[i] = result[i] < r[i] ? 1 : 0;
+					break;
+				case LE :
+					for ( int i = 0; i < length; i++ )
+						result[i] = result[i] <= r[i] ? 1 : 0;
+					break;
+				case GT :
+					for ( int i = 0; i < length; i++ )
+						result[i] = result[i] > r[i] ? 1 : 0;
+					break;
+				case GE :
+					for ( int i = 0; i < length; i++ )
+						result[i] = result[i] >= r[i] ? 1 : 0;
+					break;
+				case EQ :
+					for ( int i = 0; i < length; i++ )
+						result[i] = result[i] == r[i] ? 1 : 0;
+					break;
+				case NE :
+					for ( int i = 0; i < length; i++ )
+						result[i] = result[i] != r[i] ? 1 : 0;
+					break;
+				case AND :
+					for ( int i = 0; i < length; i++ )
+						result[i] = result[i] != 0 && r[i] != 0 ? 1 : 0;
+					break;
+				case OR :
+					for ( int i = 0; i < length; i++ )
+						result[i] = result[i] != 0 || r[i] != 0 ? 1 : 0;
+					break;
+			}
+		}
+	}
+
+	/**
+	 * A comparison of a conditional expression, which compares the numbers
+	 * in the same way as the filters evaluated by script, so that NaN is
+	 * greater than any other number.
+	 */
+	private static class Comparison extends Node
+	{
+		private int operator;
+		private Node operand;
+		private Node operand1;
+		private Node operand2;
+		int index2;
+
+		Comparison( int operator, Node operand, Node operand1, Node operand2 )
+		{
+			this.operator = operator;
+			this.operand = operand;
+			this.operand1 = operand1;
+			this.operand2 = operand2;
+			this.isBoolean = true;
+		}
+
+		void evaluate( double[][] columns, int length, double[] result,
+				double[][] buffers )
+		{
+			operand.evaluate( columns, length, result, buffers );
+			double[] r1 = getBuffer( index, length, buffers );
+			operand1.evaluate( columns, length, r1, buffers );
+			double[] r2 = null;
+			if ( operand2 != null )
+			{
+				r2 = getBuffer( index2, length, buffers );
+				operand2.evaluate( columns, length, r2, buffers );
+			}
+			for ( int i = 0; i < length; i++ )
+			{
+				int c = compare( result[i], r1[i] );
+				boolean value;
+				switch ( operator )
+				{
+					case IConditionalExpression.OP_EQ :
+						value = c == 0;
+						break;
+					case IConditionalExpression.OP_NE :
+						value = c != 0;
+						break;
+					case IConditionalExpression.OP_LT :
+						value = c < 0;
+						break;
+					case IConditionalExpression.OP_LE :
+						value = c <= 0;
+						break;
+					case IConditionalExpression.OP_GE :
+						value = c >= 0;
+						break;
+					case IConditionalExpression.OP_GT :
+						value = c > 0;
+						break;
+					default :
+						value = c >= 0 && compare( result[i], r2[i] ) <= 0;
+						if ( operator == IConditionalExpression.OP_NOT_BETWEEN )
+						{
+							value = !value;
+						}
+				}
+				result[i] = value ? 1 : 0;
+			}
+		}
+
+		private static int compare( double d1, double d2 )
+		{
+			if ( d1 < d2 )
+			{
+				return -1;
+			}
+			if ( d1 > d2 )
+			{
+				return 1;
+			}
+			return d1 == d2 ? 0 : Double.compare( d1, d2 );
+		}
+	}
+
+	/**
+	 * The parser of the expressions, which returns null for the unsupported
+	 * syntax.
+	 */
+	private static class Parser
+	{
+		private String indicator;
+		private String text;
+		private int pos;
+		private List<String> references = new ArrayList<String>( );
+		private int nodeCount;
+
+		Parser( String indicator )
+		{
+			this.indicator = indicator;
+		}
+
+		/**
+		 *
+		 * @param expr
+		 * @return
+		 */
+		Node parseCondition( IConditionalExpression expr )
+		{
+			int operator = expr.getOperator( );
+			if ( operator < IConditionalExpression.OP_EQ
+					|| operator > IConditionalExpression.OP_NOT_BETWEEN )
+			{
+				return null;
+			}
+			boolean between = operator == IConditionalExpression.OP_BETWEEN
+					|| operator == IConditionalExpression.OP_NOT_BETWEEN;
+			Node operand = parseNumber( expr.getExpression( ) );
+			Node operand1 = parseNumber( expr.getOperand1( ) );
+			Node operand2 = between ? parseNumber( expr.getOperand2( ) )
+					: null;
+			if ( operand == null
+					|| operand1 == null || ( between && operand2 == null ) )
+			{
+				return null;
+			}
+			return register( new Comparison( operator,
+					operand,
+					operand1,
+					operand2 ) );
+		}
+
+		/**
+		 *
+		 * @param expr
+		 * @return the node of a numeric script expression
+		 */
+		private Node parseNumber( IBaseExpression expr )
+		{
+			if ( !( expr instanceof IScriptExpression ) )
+			{
+				return null;
+			}
+			Node node = parse( ( (IScriptExpression) expr ).getText( ) );
+			return node == null || node.isBoolean ? null : node;
+		}
+
+		/**
+		 * Parse an expression with at least one operator. A single value is
+		 * not compiled, since the script returns it without conversion.
+		 *
+		 * @param text
+		 * @return
+		 */
+		Node parseOperation( String text )
+		{
+			Node node = parse( text );
+			return node instanceof Reference || node instanceof Constant ? null
+					: node;
+		}
+
+		/**
+		 *
+		 * @param text
+		 * @return
+		 */
+		private Node parse( String text )
+		{
+			if ( text == null )
+			{
+				return null;
+			}
+			this.text = text;
+			this.pos = 0;
+			Node node = parseOr( );
+			skipSpaces( );
+			if ( pos < text.length( ) && text.charAt( pos ) == ';' )
+			{
+				pos++;
+				skipSpaces( );
+			}
+			return node != null && pos == text.length( ) ? node : null;
+		}
+
+		private Node parseOr( )
+		{
+			Node left = parseAnd( );
+			while ( left != null && accept( "||" ) )
+			{
+				left = logical( OR, left, parseAnd( ) );
+			}
+			return left;
+		}
+
+		private Node parseAnd( )
+		{
+			Node left = parseEquality( );
+			while ( left != null && accept( "&&" ) )
+			{
+				left = logical( AND, left, parseEquality( ) );
+			}
+			return left;
+		}
+
+		private Node parseEquality( )
+		{
+			Node left = parseRelational( );
+			while ( left != null )
+			{
+				int operator;
+				if ( accept( "===" ) || accept( "==" ) )
+				{
+					operator = EQ;
+				}
+				else if ( accept( "!==" ) || accept( "!=" ) )
+				{
+					operator = NE;
+				}
+				else
+				{
+					break;
+				}
+				Node right = parseRelational( );
+				if ( right == null || right.isBoolean != left.isBoolean )
+				{
+					return null;
+				}
+				left = register( new Binary( operator, left, right ) );
+			}
+			return left;
+		}
+
+		private Node parseRelational( )
+		{
+			Node left = parseAdditive( );
+			while ( left != null )
+			{
+				int operator;
+				if ( accept( "<=" ) )
+				{
+					operator = LE;
+				}
+				else if ( accept( ">=" ) )
+				{
+					operator = GE;
+				}
+				else if ( accept( "<" ) )
+				{
+					operator = LT;
+				}
+				else if ( accept( ">" ) )
+				{
+					operator = GT;
+				}
+				else
+				{
+					break;
+				}
+				left = arithmetic( operator, left, parseAdditive( ) );
+			}
+			return left;
+		}
+
+		private Node parseAdditive( )
+		{
+			Node left = parseMultiplicative( );
+			while ( left != null )
+			{
+				int operator;
+				if ( accept( "+" ) )
+				{
+					operator = ADD;
+				}
+				else if ( accept( "-" ) )
+				{
+					operator = SUBTRACT;
+				}
+				else
+				{
+					break;
+				}
+				left = arithmetic( operator, left, parseMultiplicative( ) );
+			}
+			return left;
+		}
+
+		private Node parseMultiplicative( )
+		{
+			Node left = parseUnary( );
+			while ( left != null )
+			{
+				int operator;
+				if ( accept( "*" ) )
+				{
+					operator = MULTIPLY;
+				}
+				else if ( accept( "/" ) )
+				{
+					operator = DIVIDE;
+				}
+				else if ( accept( "%" ) )
+				{
+					operator = MODULO;
+				}
+				else
+				{
+					break;
+				}
+				left = arithmetic( operator, left, parseUnary( ) );
+			}
+			return left;
+		}
+
+		private Node parseUnary( )
+		{
+			skipSpaces( );
+			if ( pos < text.length( )
+					&& text.charAt( pos ) == '-' && !text.startsWith( "--", pos ) ) //$NON-NLS-1$
+			{
+				pos++;
+				Node operand = parseUnary( );
+				return operand == null || operand.isBoolean ? null
+						: register( new Unary( operand ) );
+			}
+			if ( pos < text.length( )
+					&& text.charAt( pos ) == '!' && !text.startsWith( "!=", pos ) ) //$NON-NLS-1$
+			{
+				pos++;
+				Node operand = parseUnary( );
+				return operand == null || !operand.isBoolean ? null
+						: register( new Unary( operand ) );
+			}
+			return parsePrimary( );
+		}
+
+		private Node parsePrimary( )
+		{
+			skipSpaces( );
+			if ( pos >= text.length( ) )
+			{
+				return null;
+			}
+			char c = text.charAt( pos );
+			if ( c == '(' )
+			{
+				pos++;
+				Node node = parseOr( );
+				return node != null && accept( ")" ) ? node : null; //$NON-NLS-1$
+			}
+			if ( Character.isDigit( c ) || c == '.' )
+			{
+				return parseConstant( );
+			}
+			String identifier = parseIdentifier( );
+			if ( "true".equals( identifier ) ) //$NON-NLS-1$
+			{
+				return register( new Constant( 1, true ) );
+			}
+			if ( "false".equals( identifier ) ) //$NON-NLS-1$
+			{
+				return register( new Constant( 0, true ) );
+			}
+			if ( !indicator.equals( identifier ) )
+			{
+				return null;
+			}
+			String name;
+			if ( accept( "[" ) ) //$NON-NLS-1$
+			{
+				skipSpaces( );
+				name = parseString( );
+				if ( name == null || !accept( "]" ) ) //$NON-NLS-1$
+				{
+					return null;
+				}
+			}
+			else if ( accept( "." ) ) //$NON-NLS-1$
+			{
+				skipSpaces( );
+				name = parseIdentifier( );
+			}
+			else
+			{
+				return null;
+			}
+			if ( name == null )
+			{
+				return null;
+			}
+			int column = references.indexOf( name );
+			if ( column < 0 )
+			{
+				column = references.size( );
+				references.add( name );
+			}
+			return register( new Reference( column ) );
+		}
+
+		private Node parseConstant( )
+		{
+			int start = pos;
+			while ( pos < text.length( )
+					&& ( Character.isDigit( text.charAt( pos ) ) || text.charAt( pos ) == '.' ) )
+			{
+				pos++;
+			}
+			if ( pos < text.length( )
+					&& ( text.charAt( pos ) == 'e' || text.charAt( pos ) == 'E' ) )
+			{
+				pos++;
+				if ( pos < text.length( )
+						&& ( text.charAt( pos ) == '+' || text.charAt( pos ) == '-' ) )
+				{
+					pos++;
+				}
+				while ( pos < text.length( )
+						&& Character.isDigit( text.charAt( pos ) ) )
+				{
+					pos++;
+				}
+			}
+			String number = text.substring( start, pos );
+			// octal and hexadecimal numbers are evaluated by script
+			if ( number.length( ) > 1
+					&& number.charAt( 0 ) == '0' && number.charAt( 1 ) != '.' )
+			{
+				return null;
+			}
+			if ( pos < text.length( )
+					&& Character.isJavaIdentifierPart( text.charAt( pos ) ) )
+			{
+				return null;
+			}
+			try
+			{
+				return register( new Constant( Double.parseDouble( number ),
+						false ) );
+			}
+			catch ( NumberFormatException e )
+			{
+				return null;
+			}
+		}
+
+		private String parseIdentifier( )
+		{
+			int start = pos;
+			if ( pos < text.length( )
+					&& Character.isJavaIdentifierStart( text.charAt( pos ) ) )
+			{
+				pos++;
+				while ( pos < text.length( )
+						&& Character.isJavaIdentifierPart( text.charAt( pos ) ) )
+				{
+					pos++;
+				}
+			}
+			return pos > start ? text.substring( start, pos ) : null;
+		}
+
+		/**
+		 *
+		 * @return the content of a quoted string without escapes, or null
+		 */
+		private String parseString( )
+		{
+			if ( pos >= text.length( ) )
+			{
+				return null;
+			}
+			char quote = text.charAt( pos );
+			if ( quote != '"' && quote != '\'' )
+			{
+				return null;
+			}
+			int end = text.indexOf( quote, pos + 1 );
+			if ( end < 0 || text.substring( pos + 1, end ).indexOf( '\\' ) >= 0 )
+			{
+				return null;
+			}
+			String result = text.substring( pos + 1, end );
+			pos = end + 1;
+			return result;
+		}
+
+		private boolean accept( String token )
+		{
+			skipSpaces( );
+			if ( text.startsWith( token, pos ) )
+			{
+				pos += token.length( );
+				return true;
+			}
+			return false;
+		}
+
+		private void skipSpaces( )
+		{
+			while ( pos < text.length( )
+					&& Character.isWhitespace( text.charAt( pos ) ) )
+			{
+				pos++;
+			}
+		}
+
+		private Node arithmetic( int operator, Node left, Node right )
+		{
+			if ( right == null || left.isBoolean || right.isBoolean )
+			{
+				return null;
+			}
+			return register( new Binary( operator, left, right ) );
+		}
+
+		private Node logical( int operator, Node left, Node right )
+		{
+			if ( right == null || !left.isBoolean || !right.isBoolean )
+			{
+				return null;
+			}
+			return register( new Binary( operator, left, right ) );
+		}
+
+		private Node register( Node node )
+		{
+			node.index = nodeCount++;
+			if ( node instanceof Comparison )
+			{
+				( (Comparison) node ).index2 = nodeCount++;
+			}
+			return node;
+		}
+	}
+}
@@ -23,6 +23,7 @@ import org.eclipse.birt.data.engine.olap.data.api.IComputedMeasureHelper;
 import org.eclipse.birt.data.engine.olap.data.api.MeasureInfo;
 import org.eclipse.birt.data.engine.olap.impl.query.ComputedMeasureDefinition;
 import org.eclipse.birt.data.engine.olap.util.filter.IFacttableRow;
+import org.eclipse.birt.data.engine.script.ScriptConstants;
 import org.eclipse.birt.data.engine.script.ScriptEvalUtil;
 import org.mozilla.javascript.Scriptable;
 
@@ -39,6 +40,7 @@ public class ComputedMeasureHelper implements IComputedMeasureHelper
 	private MeasureInfo[] measureInfos;
 	private Map exprMap;
 	private ScriptContext cx;
+	private CompiledMeasureExpression[] compiledExprs;
 	/**
 	 * 
 	 * @param scope
@@ -58,6 +60,11 @@ public class ComputedMeasureHelper implements IComputedMeasureHelper
 			this.measureInfos[i] = new MeasureInfo( ccd.getName( ), ccd.getDataType( ) );
 			this.exprMap.put( ccd.getName( ), ccd.getExpression( ) );
 		}
+		this.compiledExprs = new CompiledMeasureExpression[measureInfos.length];
+		for ( int i = 0; i < measureInfos.length; i++ )
+		{
+			this.compiledExprs[i] = compile( (IBaseExpression) this.exprMap.get( this.measureInfos[i].getMeasureName( ) ) );
+		}
 
 		this.populator = new FacttableMeasureJSObjectPopulator( scope, this.exprMap, this.cx );
 		this.populator.doInit( );
@@ -75,6 +82,14 @@ public class ComputedMeasureHelper implements IComputedMeasureHelper
 		Object[] result = new Object[this.measureInfos.length];
 		for ( int i = 0; i < this.measureInfos.length; i++ )
 		{
+			if ( this.compiledExprs[i] != null )
+			{
+				result[i] = evaluateCompiled( this.compiledExprs[i], factTableRow );
+				if ( result[i] != null )
+				{
+					continue;
+				}
+			}
 			try
 			{
 				result[i] = ScriptEvalUtil.evalExpr( (IBaseExpression) this.exprMap.get( this.measureInfos[i].getMeasureName( ) ),
@@ -90,6 +105,59 @@ public class ComputedMeasureHelper implements IComputedMeasureHelper
 		return result;
 	}
 
+	/**
+	 * Compile the expression of a computed measure without script. The
+	 * expressions referring to other computed measures are not compiled.
+	 * 
+	 * @param expr
+	 * @return the compiled expression, or null if it should be evaluated by
+	 *         script
+	 */
+	private CompiledMeasureExpression compile( IBaseExpression expr )
+	{
+		CompiledMeasureExpression compiledExpr = CompiledMeasureExpression.compile( expr,
+				ScriptConstants.MEASURE_SCRIPTABLE );
+		if ( compiledExpr == null )
+		{
+			return null;
+		}
+		String[] references = compiledExpr.getReferences( );
+		for ( int i = 0; i < references.length; i++ )
+		{
+			if ( this.exprMap.containsKey( references[i] ) )
+			{
+				return null;
+			}
+		}
+		return compiledExpr;
+	}
+
+	/**
+	 * 
+	 * @param compiledExpr
+	 * @param factTableRow
+	 * @return the value of the computed measure, or null if it should be
+	 *         evaluated by script
+	 */
+	private static Object evaluateCompiled(
+			CompiledMeasureExpression compiledExpr, IFacttableRow factTableRow )
+	{
+		String[] references = compiledExpr.getReferences( );
+		Object[] values = new Object[references.length];
+		try
+		{
+			for ( int i = 0; i < references.length; i++ )
+			{
+				values[i] = factTableRow.getMeasureValue( references[i] );
+			}
+		}
+		catch ( DataException e )
+		{
+			return null;
+		}
+		return compiledExpr.evaluate( values );
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see org.eclipse.birt.data.engine.olap.data.api.IComputedMeasureHelper#getAllComputedMeasureInfos()
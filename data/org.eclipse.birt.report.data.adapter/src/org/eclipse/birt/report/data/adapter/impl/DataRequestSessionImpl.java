@@ -892,6 +892,11 @@ public class DataRequestSessionImpl extends DataRequestSession
 			}
 		}
 
+		Integer dimensionBuildParallelism = DataTypeUtil.toInteger( appContext.get( DataEngine.CUBE_DIMENSION_BUILD_PARALLELISM ) );
+		if ( dimensionBuildParallelism != null )
+		{
+			cubeMaterializer.setDimensionBuildParallelism( dimensionBuildParallelism.intValue( ) );
+		}
 		IDimension[] dimensions = populateDimensions( cubeMaterializer,
 				cubeHandle,
 				appContext,
@@ -1109,6 +1114,15 @@ public class DataRequestSessionImpl extends DataRequestSession
 					this.toStringArray( measureAggrFunctions ),
 					computeMemoryBufferSize( appContext ),
 					dataEngine.getSession( ).getStopSign( ) );
+			if ( appContext != null
+					&& appContext.get( DataEngine.CUBE_MATERIALIZED_AGGREGATES ) != null )
+			{
+				cubeMaterializer.createAggregateTables( cubeHandle.getQualifiedName( ),
+						appContext.get( DataEngine.CUBE_MATERIALIZED_AGGREGATES )
+								.toString( ),
+						computeMemoryBufferSize( appContext ),
+						dataEngine.getSession( ).getStopSign( ) );
+			}
 		}
 		catch ( Exception e )
 		{
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2008 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.report.data.oda.jdbc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.eclipse.birt.report.data.oda.jdbc.connectionpool.ConnectionPool;
+import org.eclipse.birt.report.data.oda.jdbc.connectionpool.ConnectionPoolManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test case for ConnectionPoolManager
+ *
+ */
+public class ConnectionPoolManagerTest {
+
+	private ConnectionPoolManager manager;
+
+	@Before
+    public void connectionPoolSetUp() throws Exception
+	{
+		manager = new ConnectionPoolManager( );
+	}
+
+	@After
+    public void connectionPoolTearDown() throws Exception
+	{
+		manager.close( );
+	}
+
+	private java.sql.Connection getConnection( Map appContext )
+			throws Exception
+	{
+		Properties props = JDBCDriverManager.addUserAuthenticationProperties( new Properties( ),
+				TestUtil.getUser( ),
+				TestUtil.getPassword( ) );
+		return manager.getConnection( TestUtil.getDriverClassName( ),
+				TestUtil.getURL( ),
+				props,
+				null,
+				appContext );
+	}
+
+	/**
+	 * Test a closed connection is reused with its state restored
+	 *
+	 * @throws Exception
+	 */
+	@Test
+    public void testReuse( ) throws Exception
+	{
+		java.sql.Connection conn = getConnection( null );
+		boolean autoCommit = conn.getAutoCommit( );
+		conn.setAutoCommit( !autoCommit );
+		conn.close( );
+		assertTrue( conn.isClosed( ) );
+
+		java.sql.Connection conn2 = getConnection( null );
+		assertNotSame( conn, conn2 );
+		assertEquals( autoCommit, conn2.getAutoCommit( ) );
+		conn2.close( );
+
+		assertEquals( 1, manager.getPools( ).size( ) );
+		ConnectionPool pool = manager.getPools( ).iterator( ).next( );
+		assertEquals( 1, pool.getCreatedCount( ) );
+		assertEquals( 2, pool.getBorrowedCount( ) );
+		assertEquals( 1, pool.getIdleCount( ) );
+		assertEquals( 0, pool.getActiveCount( ) );
+	}
+
+	/**
+	 * Test the connection closed by closeConnection is not reused
+	 *
+	 * @throws Exception
+	 */
+	@Test
+    public void testCloseConnection( ) throws Exception
+	{
+		java.sql.Connection conn = getConnection( null );
+		manager.closeConnection( conn );
+		assertTrue( conn.isClosed( ) );
+
+		ConnectionPool pool = manager.getPools( ).iterator( ).next( );
+		assertEquals( 0, pool.getIdleCount( ) );
+		assertEquals( 1, pool.getDestroyedCount( ) );
+	}
+
+	/**
+	 * Test the wait for a connection of an exhausted pool
+	 *
+	 * @throws Exception
+	 */
+	@Test
+    public void testMaxSize( ) throws Exception
+	{
+		Map appContext = new HashMap( );
+		appContext.put( ConnectionPoolManager.MAX_SIZE, "1" );
+		appContext.put( ConnectionPoolManager.MAX_WAIT, "100" );
+		java.sql.Connection conn = getConnection( appContext );
+		try
+		{
+			getConnection( appContext );
+			fail( "Should not arrive here" );
+		}
+		catch ( java.sql.SQLException e )
+		{
+		}
+		conn.close( );
+		getConnection( appContext ).close( );
+
+		ConnectionPool pool = manager.getPools( ).iterator( ).next( );
+		assertEquals( 1, pool.getTimeoutCount( ) );
+		assertEquals( 1, pool.getCreatedCount( ) );
+	}
+
+	/**
+	 * Test the concurrent borrowers never open more connections than the max
+	 * size
+	 *
+	 * @throws Exception
+	 */
+	@Test
+    public void testConcurrentMaxSize( ) throws Exception
+	{
+		final Map appContext = new HashMap( );
+		appContext.put( ConnectionPoolManager.MAX_SIZE, "2" );
+		final List<Throwable> failures = Collections.synchronizedList( new ArrayList<Throwable>( ) );
+		Thread[] threads = new Thread[8];
+		for ( int i = 0; i < threads.length; i++ )
+		{
+			threads[i] = new Thread( ) {
+
+				public void run( )
+				{
+					try
+					{
+						for ( int j = 0; j < 20; j++ )
+						{
+							getConnection( appContext ).close( );
+						}
+					}
+					catch ( Throwable e )
+					{
+						failures.add( e );
+					}
+				}
+			};
+			threads[i].start( );
+		}
+		for ( int i = 0; i < threads.length; i++ )
+		{
+			threads[i].join( );
+		}
+		assertTrue( failures.toString( ), failures.isEmpty( ) );
+
+		ConnectionPool pool = manager.getPools( ).iterator( ).next( );
+		assertTrue( pool.getCreatedCount( ) <= 2 );
+		assertEquals( 160, pool.getBorrowedCount( ) );
+		assertEquals( 0, pool.getActiveCount( ) );
+	}
+
+	/**
+	 * Test the pool can be disabled
+	 *
+	 * @throws Exception
+	 */
+	@Test
+    public void testDisabled( ) throws Exception
+	{
+		Map appContext = new HashMap( );
+		appContext.put( ConnectionPoolManager.ENABLED, "false" );
+		assertNull( getConnection( appContext ) );
+	}
+}
@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2005 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.report.data.oda.jdbc.utils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.datatools.connectivity.oda.OdaException;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test case for SQLPushDownTransform
+ *
+ */
+public class SQLPushDownTransformTest {
+
+	private final static String SELECT_SQL = "select * from T;";
+
+	/**
+	 * Test filters and sorts
+	 *
+	 * @throws OdaException
+	 */
+	@Test
+    public void testFilterAndSort( ) throws OdaException
+	{
+		List<Object[]> filters = new ArrayList<Object[]>( );
+		filters.add( new Object[]{
+				"AMOUNT", "<", new Object[]{
+					new BigDecimal( "10.5" )
+				}, Boolean.TRUE
+		} );
+		filters.add( new Object[]{
+				"NAME", "IN", new Object[]{
+						"a", "b'c"
+				}, Boolean.FALSE
+		} );
+		List<Object[]> sortKeys = new ArrayList<Object[]>( );
+		sortKeys.add( new Object[]{
+				"AMOUNT", Boolean.FALSE, Boolean.FALSE
+		} );
+		Map<String, Object> properties = new HashMap<String, Object>( );
+		properties.put( SQLPushDownTransform.FILTERS, filters );
+		properties.put( SQLPushDownTransform.SORT_KEYS, sortKeys );
+		properties.put( SQLPushDownTransform.MAX_ROWS, Integer.valueOf( 5 ) );
+
+		assertTrue( SQLPushDownTransform.isPushedDown( properties ) );
+		assertEquals( 5, SQLPushDownTransform.getMaxRows( properties ) );
+		assertEquals( "SELECT * FROM ( select * from T ) BIRT_PUSH_DOWN"
+				+ " WHERE ( \"AMOUNT\" < 10.5 OR \"AMOUNT\" IS NULL )"
+				+ " AND ( \"NAME\" IN ( 'a', 'b''c' ) )"
+				+ " ORDER BY CASE WHEN \"AMOUNT\" IS NULL THEN 0 ELSE 1 END DESC, \"AMOUNT\" DESC",
+				SQLPushDownTransform.transform( SELECT_SQL, properties, "\"" ) );
+	}
+
+	/**
+	 * Test groups and aggregations
+	 *
+	 * @throws OdaException
+	 */
+	@Test
+    public void testAggregation( ) throws OdaException
+	{
+		List<String> groupKeys = new ArrayList<String>( );
+		groupKeys.add( "REGION" );
+		List<Object[]> aggregations = new ArrayList<Object[]>( );
+		aggregations.add( new Object[]{
+				"BIRT_AGGR_0", "SUM", "AMOUNT"
+		} );
+		aggregations.add( new Object[]{
+				"BIRT_AGGR_1", "COUNT", null
+		} );
+		List<Object[]> filters = new ArrayList<Object[]>( );
+		filters.add( new Object[]{
+				"AMOUNT", "BETWEEN", new Object[]{
+						Integer.valueOf( 1 ), Integer.valueOf( 100 )
+				}, Boolean.FALSE
+		} );
+		Map<String, Object> properties = new HashMap<String, Object>( );
+		properties.put( SQLPushDownTransform.GROUP_KEYS, groupKeys );
+		properties.put( SQLPushDownTransform.AGGREGATIONS, aggregations );
+		properties.put( SQLPushDownTransform.FILTERS, filters );
+
+		assertEquals( 0, SQLPushDownTransform.getMaxRows( properties ) );
+		assertEquals( "SELECT REGION, SUM( AMOUNT ) AS BIRT_AGGR_0, COUNT( * ) AS BIRT_AGGR_1"
+				+ " FROM ( select * from T ) BIRT_PUSH_DOWN"
+				+ " WHERE ( AMOUNT BETWEEN 1 AND 100 )"
+				+ " GROUP BY REGION",
+				SQLPushDownTransform.transform( SELECT_SQL, properties, " " ) );
+	}
+
+	/**
+	 * Test the queries which can not be used as a derived table
+	 *
+	 * @throws OdaException
+	 */
+	@Test
+    public void testDerivedTableQuery( ) throws OdaException
+	{
+		Map<String, Object> properties = new HashMap<String, Object>( );
+		properties.put( SQLPushDownTransform.MAX_ROWS, Integer.valueOf( 5 ) );
+
+		assertEquals( "SELECT * FROM ( select * from T where NAME = 'a;b' ) BIRT_PUSH_DOWN",
+				SQLPushDownTransform.transform( "select * from T where NAME = 'a;b'; -- comment",
+						properties,
+						"\"" ) );
+		assertEquals( "SELECT * FROM ( select * from ( select * from T order by ID ) X ) BIRT_PUSH_DOWN",
+				SQLPushDownTransform.transform( "select * from ( select * from T order by ID ) X",
+						properties,
+						"\"" ) );
+
+		String[] queries = new String[]{
+				"select * from T order by ID",
+				"select * from T; select * from U",
+				"with X as ( select * from T ) select * from X",
+				"select * from T where NAME = 'a"
+		};
+		for ( int i = 0; i < queries.length; i++ )
+		{
+			try
+			{
+				SQLPushDownTransform.transform( queries[i], properties, "\"" );
+				fail( "Should not arrive here: " + queries[i] );
+			}
+			catch ( OdaException e )
+			{
+			}
+		}
+	}
+
+	/**
+	 * Test the query without pushed down operations
+	 */
+	@Test
+    public void testNotPushedDown( )
+	{
+		assertFalse( SQLPushDownTransform.isPushedDown( null ) );
+		assertFalse( SQLPushDownTransform.isPushedDown( new HashMap<String, Object>( ) ) );
+	}
+}
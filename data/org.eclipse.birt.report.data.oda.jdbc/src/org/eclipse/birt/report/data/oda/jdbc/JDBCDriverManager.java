@@ -143,6 +143,9 @@ public class JDBCDriverManager
 	 */
 	public void close()
 	{
+		// the pooled connections are opened by the drivers to be released
+		ConnectionPoolFactory.close( );
+
 		if( this.extraDriverLoader != null )
 		{
 			this.extraDriverLoader.close();
@@ -21,6 +21,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.eclipse.birt.report.data.oda.i18n.ResourceConstants;
+import org.eclipse.birt.report.data.oda.jdbc.utils.SQLPushDownTransform;
 import org.eclipse.datatools.connectivity.oda.IParameterMetaData;
 import org.eclipse.datatools.connectivity.oda.IQuery;
 import org.eclipse.datatools.connectivity.oda.IResultSet;
@@ -128,6 +129,18 @@ public class Statement implements IQuery
 			 * call the JDBC Connection.prepareStatement(String) method to get
 			 * the preparedStatement
 			 */
+			if ( querySpec != null
+					&& SQLPushDownTransform.isPushedDown( querySpec.getProperties( ) ) )
+			{
+				// the operations pushed down by the data engine
+				command = SQLPushDownTransform.transform( command,
+						querySpec.getProperties( ),
+						conn.getMetaData( ).getIdentifierQuoteString( ) );
+				logger.logp( java.util.logging.Level.FINE,
+						Statement.class.getName( ),
+						"prepare",
+						"Pushed down query: " + command );
+			}
 			this.preStat = conn.prepareStatement( command );
 		}
 		catch ( SQLException e )
@@ -208,10 +221,12 @@ public class Statement implements IQuery
 		else if ( name.equals( ConnectionProfileProperty.PROFILE_NAME_PROP_KEY )
 				|| name.equals( ConnectionProfileProperty.PROFILE_STORE_FILE_PROP_KEY )
 				|| name.equals( ConnectionProfileProperty.PROFILE_STORE_FILE_PATH_PROP_KEY )
-				|| name.equals( "addListFile" ) )
+				|| name.equals( "addListFile" )
+				|| name.startsWith( SQLPushDownTransform.PROPERTY_PREFIX ) )
 		{
 			//do nothing here. These are valid ODA properties. See Eclipse bug 176140
 			// Bypass Hive connection property addListFile.
+			// The pushed down operations are read from the query specification.
 		}
 		else
 		{
@@ -277,6 +292,21 @@ public class Statement implements IQuery
 		}
 	}
 
+	/**
+	 * Get the max rows set to the JDBC statement, which is the less one of the
+	 * max rows of the query and the max rows pushed down by the data engine.
+	 * 
+	 * @return
+	 */
+	private int getEffectiveMaxRows( )
+	{
+		int pushedMaxRows = querySpec == null ? 0
+				: SQLPushDownTransform.getMaxRows( querySpec.getProperties( ) );
+		if ( pushedMaxRows <= 0 )
+			return maxrows;
+		return maxrows > 0 ? Math.min( maxrows, pushedMaxRows ) : pushedMaxRows;
+	}
+
 	/*
 	 * @see org.eclipse.datatools.connectivity.IQuery#getMaxRows()
 	 */
@@ -461,11 +491,11 @@ public class Statement implements IQuery
 		
 		try
 		{
-			if ( maxrows >= 0 && !maxRowsUpToDate )
+			if ( getEffectiveMaxRows( ) >= 0 && !maxRowsUpToDate )
 			{
 				try
 				{
-					preStat.setMaxRows( maxrows );
+					preStat.setMaxRows( getEffectiveMaxRows( ) );
 				}
 				catch ( SQLException e1 )
 				{
@@ -496,9 +526,9 @@ public class Statement implements IQuery
 		assertNotNull( preStat );
 		try
 		{
-			if ( maxrows >= 0 && !maxRowsUpToDate )
+			if ( getEffectiveMaxRows( ) >= 0 && !maxRowsUpToDate )
 			{
-				preStat.setMaxRows( maxrows );
+				preStat.setMaxRows( getEffectiveMaxRows( ) );
 				maxRowsUpToDate = true;
 			}
 			/* redirect the call to JDBC preparedStatement.execute() */
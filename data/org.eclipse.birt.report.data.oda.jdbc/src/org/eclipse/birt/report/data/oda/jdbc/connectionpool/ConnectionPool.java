@@ -0,0 +1,483 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2008 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.birt.report.data.oda.jdbc.connectionpool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.birt.report.data.oda.jdbc.JDBCDriverManager;
+import org.eclipse.birt.report.data.oda.jdbc.LogUtil;
+import org.eclipse.datatools.connectivity.oda.OdaException;
+
+/**
+ * A pool of the connections opened with the same driver, URL and connection
+ * properties. The idle connections are reused in the order of last in first
+ * out, so that the connections which are seldom used can be evicted after the
+ * idle timeout. A connection is validated before it is reused.
+ */
+public class ConnectionPool
+{
+	// the seconds to wait for the validation of a connection
+	private static final int VALIDATION_TIMEOUT = 5;
+
+	private static Logger logger = Logger.getLogger( ConnectionPool.class.getName( ) );
+
+	private String driverClass;
+	private String url;
+	private Properties connectionProps;
+	private Collection<String> driverClassPath;
+
+	private int minSize;
+	private int maxSize;
+	private long maxWait;
+	private long idleTimeout;
+	private String validationQuery;
+	private long leakTimeout;
+
+	// the idle connections, the most recently used one first
+	private LinkedList<PooledConnection> idleConnections;
+	private Set<PooledConnection> activeConnections;
+
+	// the count of connections being opened or validated, which are neither
+	// idle nor active, but still count in the size of the pool
+	private int pendingCount;
+	private boolean closed;
+
+	private AtomicLong createdCount = new AtomicLong( );
+	private AtomicLong destroyedCount = new AtomicLong( );
+	private AtomicLong borrowedCount = new AtomicLong( );
+	private AtomicLong timeoutCount = new AtomicLong( );
+	private AtomicLong validationFailureCount = new AtomicLong( );
+	private AtomicLong leakCount = new AtomicLong( );
+
+	/**
+	 * Constructor.
+	 *
+	 * @param driverClass
+	 * @param url
+	 * @param connectionProps
+	 * @param driverClassPath
+	 * @param minSize
+	 * @param maxSize
+	 * @param maxWait
+	 * @param idleTimeout
+	 * @param validationQuery
+	 * @param leakTimeout
+	 */
+	ConnectionPool( String driverClass, String url,
+			Properties connectionProps, Collection<String> driverClassPath,
+			int minSize, int maxSize, long maxWait, long idleTimeout,
+			String validationQuery, long leakTimeout )
+	{
+		this.driverClass = driverClass;
+		this.url = url;
+		this.connectionProps = new Properties( );
+		if ( connectionProps != null )
+			this.connectionProps.putAll( connectionProps );
+		this.driverClassPath = driverClassPath == null ? null
+				: new ArrayList<String>( driverClassPath );
+		this.maxSize = Math.max( 1, maxSize );
+		this.minSize = Math.min( minSize, this.maxSize );
+		this.maxWait = maxWait;
+		this.idleTimeout = idleTimeout;
+		this.validationQuery = validationQuery;
+		this.leakTimeout = leakTimeout;
+		this.idleConnections = new LinkedList<PooledConnection>( );
+		this.activeConnections = new HashSet<PooledConnection>( );
+	}
+
+	/**
+	 * Get a connection from the pool. An idle connection is reused if there is
+	 * one, otherwise a connection is opened if the max size is not reached,
+	 * otherwise wait for a connection to be returned.
+	 *
+	 * @return
+	 * @throws SQLException
+	 * @throws OdaException
+	 */
+	Connection getConnection( ) throws SQLException, OdaException
+	{
+		long deadline = System.currentTimeMillis( ) + maxWait;
+		while ( true )
+		{
+			PooledConnection connection = null;
+			synchronized ( this )
+			{
+				while ( !closed
+						&& idleConnections.isEmpty( )
+						&& getSize( ) >= maxSize )
+				{
+					long remaining = deadline - System.currentTimeMillis( );
+					if ( remaining <= 0 )
+					{
+						timeoutCount.incrementAndGet( );
+						throw new SQLException( "Timeout waiting for a connection of the pool: " //$NON-NLS-1$
+								+ LogUtil.encryptURL( url ) );
+					}
+					try
+					{
+						wait( remaining );
+					}
+					catch ( InterruptedException e )
+					{
+						Thread.currentThread( ).interrupt( );
+						throw new SQLException( "Interrupted waiting for a connection of the pool." ); //$NON-NLS-1$
+					}
+				}
+				if ( closed )
+					throw new SQLException( "The connection pool is closed." ); //$NON-NLS-1$
+				if ( !idleConnections.isEmpty( ) )
+					connection = idleConnections.removeFirst( );
+				pendingCount++;
+			}
+
+			boolean valid = false;
+			try
+			{
+				if ( connection == null )
+				{
+					connection = open( );
+					valid = true;
+				}
+				else
+				{
+					valid = validate( connection );
+				}
+			}
+			finally
+			{
+				synchronized ( this )
+				{
+					pendingCount--;
+					if ( valid )
+						activeConnections.add( connection );
+					notifyAll( );
+				}
+			}
+
+			if ( !valid )
+			{
+				validationFailureCount.incrementAndGet( );
+				destroy( connection );
+				continue;
+			}
+			borrowedCount.incrementAndGet( );
+			return connection.borrow( leakTimeout > 0 );
+		}
+	}
+
+	/**
+	 * Open a physical connection, which has been counted as pending.
+	 *
+	 * @return
+	 * @throws SQLException
+	 * @throws OdaException
+	 */
+	private PooledConnection open( ) throws SQLException, OdaException
+	{
+		PooledConnection connection = new PooledConnection( this,
+				JDBCDriverManager.getInstance( ).getConnection( driverClass,
+						url,
+						null,
+						connectionProps,
+						driverClassPath ) );
+		createdCount.incrementAndGet( );
+		return connection;
+	}
+
+	/**
+	 * Return a connection to the pool, after its state is reset.
+	 *
+	 * @param connection
+	 */
+	void release( PooledConnection connection )
+	{
+		boolean reusable = !connection.isBroken( ) && connection.reset( );
+		synchronized ( this )
+		{
+			activeConnections.remove( connection );
+			if ( reusable && !closed )
+			{
+				connection.setLastUsedTime( System.currentTimeMillis( ) );
+				idleConnections.addFirst( connection );
+				notifyAll( );
+				return;
+			}
+			notifyAll( );
+		}
+		destroy( connection );
+	}
+
+	/**
+	 * Close a connection in use, which is not returned to the pool.
+	 *
+	 * @param connection
+	 */
+	void abort( PooledConnection connection )
+	{
+		synchronized ( this )
+		{
+			activeConnections.remove( connection );
+			notifyAll( );
+		}
+		destroy( connection );
+	}
+
+	/**
+	 * Validate a connection by the validation query or Connection.isValid.
+	 *
+	 * @param connection
+	 * @return
+	 */
+	private boolean validate( PooledConnection connection )
+	{
+		Connection physical = connection.getPhysicalConnection( );
+		try
+		{
+			if ( validationQuery != null )
+			{
+				Statement statement = physical.createStatement( );
+				try
+				{
+					statement.setQueryTimeout( VALIDATION_TIMEOUT );
+					statement.execute( validationQuery );
+				}
+				finally
+				{
+					statement.close( );
+				}
+				return true;
+			}
+			try
+			{
+				return physical.isValid( VALIDATION_TIMEOUT );
+			}
+			catch ( AbstractMethodError e )
+			{
+				// the driver of JDBC 3
+				return !physical.isClosed( );
+			}
+			catch ( SQLException e )
+			{
+				return !physical.isClosed( );
+			}
+		}
+		catch ( SQLException e )
+		{
+			logger.log( Level.FINE, "Invalid pooled connection", e ); //$NON-NLS-1$
+			return false;
+		}
+	}
+
+	/**
+	 * Close a physical connection.
+	 *
+	 * @param connection
+	 */
+	private void destroy( PooledConnection connection )
+	{
+		destroyedCount.incrementAndGet( );
+		try
+		{
+			connection.getPhysicalConnection( ).close( );
+		}
+		catch ( SQLException e )
+		{
+			logger.log( Level.FINE, e.getMessage( ), e );
+		}
+	}
+
+	/**
+	 * Close the connections which are idle longer than the idle timeout, keep
+	 * at least min size of connections open, and report the leaked
+	 * connections. It is called by the timer of the manager periodically.
+	 */
+	void maintain( )
+	{
+		long now = System.currentTimeMillis( );
+		List<PooledConnection> evicted = new ArrayList<PooledConnection>( );
+		int missing;
+		synchronized ( this )
+		{
+			if ( closed )
+				return;
+			if ( idleTimeout > 0 )
+			{
+				// the least recently used connections are at the end
+				Iterator<PooledConnection> it = idleConnections.descendingIterator( );
+				while ( it.hasNext( ) && getSize( ) > minSize )
+				{
+					PooledConnection connection = it.next( );
+					if ( now - connection.getLastUsedTime( ) < idleTimeout )
+						break;
+					it.remove( );
+					evicted.add( connection );
+				}
+			}
+			if ( leakTimeout > 0 )
+			{
+				for ( PooledConnection connection : activeConnections )
+				{
+					if ( connection.checkLeak( now, leakTimeout ) )
+						leakCount.incrementAndGet( );
+				}
+			}
+			missing = minSize - getSize( );
+			pendingCount += Math.max( 0, missing );
+		}
+
+		for ( PooledConnection connection : evicted )
+		{
+			destroy( connection );
+		}
+		for ( int i = 0; i < missing; i++ )
+		{
+			PooledConnection connection = null;
+			try
+			{
+				connection = open( );
+				connection.setLastUsedTime( System.currentTimeMillis( ) );
+			}
+			catch ( Exception e )
+			{
+				logger.log( Level.FINE, e.getMessage( ), e );
+			}
+			boolean added = false;
+			synchronized ( this )
+			{
+				// the remaining openings are given up after a failure
+				pendingCount -= connection == null ? missing - i : 1;
+				if ( connection != null && !closed )
+				{
+					idleConnections.addLast( connection );
+					added = true;
+				}
+				notifyAll( );
+			}
+			if ( connection == null )
+				break;
+			if ( !added )
+				destroy( connection );
+		}
+	}
+
+	/**
+	 * Close the idle connections. The connections in use are closed when they
+	 * are returned.
+	 */
+	void close( )
+	{
+		List<PooledConnection> idle;
+		synchronized ( this )
+		{
+			closed = true;
+			idle = new ArrayList<PooledConnection>( idleConnections );
+			idleConnections.clear( );
+			notifyAll( );
+		}
+		for ( PooledConnection connection : idle )
+		{
+			destroy( connection );
+		}
+	}
+
+	/**
+	 * @return the count of connections open or being opened
+	 */
+	private int getSize( )
+	{
+		return idleConnections.size( )
+				+ activeConnections.size( ) + pendingCount;
+	}
+
+	/**
+	 * @return the URL of the connections
+	 */
+	public String getURL( )
+	{
+		return LogUtil.encryptURL( url );
+	}
+
+	public synchronized int getActiveCount( )
+	{
+		return activeConnections.size( );
+	}
+
+	public synchronized int getIdleCount( )
+	{
+		return idleConnections.size( );
+	}
+
+	public int getMinSize( )
+	{
+		return minSize;
+	}
+
+	public int getMaxSize( )
+	{
+		return maxSize;
+	}
+
+	public long getCreatedCount( )
+	{
+		return createdCount.get( );
+	}
+
+	public long getDestroyedCount( )
+	{
+		return destroyedCount.get( );
+	}
+
+	public long getBorrowedCount( )
+	{
+		return borrowedCount.get( );
+	}
+
+	public long getTimeoutCount( )
+	{
+		return timeoutCount.get( );
+	}
+
+	public long getValidationFailureCount( )
+	{
+		return validationFailureCount.get( );
+	}
+
+	public long getLeakCount( )
+	{
+		return leakCount.get( );
+	}
+
+	/**
+	 * Reset the counters.
+	 */
+	public void resetStatistics( )
+	{
+		createdCount.set( 0 );
+		destroyedCount.set( 0 );
+		borrowedCount.set( 0 );
+		timeoutCount.set( 0 );
+		validationFailureCount.set( 0 );
+		leakCount.set( 0 );
+	}
+}
@@ -0,0 +1,323 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2008 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.birt.report.data.oda.jdbc.connectionpool;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.birt.report.data.oda.jdbc.IConnectionPoolManager;
+import org.eclipse.datatools.connectivity.oda.OdaException;
+
+/**
+ * The connection pool manager of JDBC ODA driver, which is loaded by
+ * ConnectionPoolFactory. The connections are pooled by their driver class,
+ * URL, connection properties, including the user and the password, and driver
+ * class path. The pools are shared in the JVM.
+ *
+ * The pools are configured by the following properties, which are read from
+ * the application context, or else from the system properties, when a pool is
+ * created. The idle connections are evicted and the leaked connections are
+ * detected by a background timer. The statistics of all pools are exposed by
+ * ConnectionPoolStatisticsMBean.
+ */
+public class ConnectionPoolManager implements IConnectionPoolManager
+{
+	/**
+	 * Whether the connections are pooled, "true" by default. If it is "false",
+	 * the connections are opened by JDBCDriverManager.
+	 */
+	public static final String ENABLED = "org.eclipse.birt.report.data.oda.jdbc.connectionpool.Enabled"; //$NON-NLS-1$
+
+	/**
+	 * The count of connections which are kept open in a pool, 0 by default.
+	 */
+	public static final String MIN_SIZE = "org.eclipse.birt.report.data.oda.jdbc.connectionpool.MinSize"; //$NON-NLS-1$
+
+	/**
+	 * The max count of connections opened by a pool, 10 by default.
+	 */
+	public static final String MAX_SIZE = "org.eclipse.birt.report.data.oda.jdbc.connectionpool.MaxSize"; //$NON-NLS-1$
+
+	/**
+	 * The milliseconds to wait for a connection when all connections of a pool
+	 * are in use, 10000 by default. When it is exceeded, the connection is
+	 * opened by JDBCDriverManager instead.
+	 */
+	public static final String MAX_WAIT = "org.eclipse.birt.report.data.oda.jdbc.connectionpool.MaxWait"; //$NON-NLS-1$
+
+	/**
+	 * The milliseconds after which an idle connection is closed, 600000 by
+	 * default. 0 means the idle connections are never closed.
+	 */
+	public static final String IDLE_TIMEOUT = "org.eclipse.birt.report.data.oda.jdbc.connectionpool.IdleTimeout"; //$NON-NLS-1$
+
+	/**
+	 * The query executed to validate a connection before it is reused. If it
+	 * is not set, the connection is validated by Connection.isValid.
+	 */
+	public static final String VALIDATION_QUERY = "org.eclipse.birt.report.data.oda.jdbc.connectionpool.ValidationQuery"; //$NON-NLS-1$
+
+	/**
+	 * The milliseconds after which a connection which is not closed is
+	 * reported as leaked, with the stack trace where it was obtained. 0, the
+	 * default, means the leaks are not detected.
+	 */
+	public static final String LEAK_TIMEOUT = "org.eclipse.birt.report.data.oda.jdbc.connectionpool.LeakTimeout"; //$NON-NLS-1$
+
+	private static final int DEFAULT_MIN_SIZE = 0;
+	private static final int DEFAULT_MAX_SIZE = 10;
+	private static final long DEFAULT_MAX_WAIT = 10000;
+	private static final long DEFAULT_IDLE_TIMEOUT = 600000;
+
+	// the period of evicting idle connections and detecting leaks
+	private static final long MAINTENANCE_PERIOD = 30000;
+
+	private static Logger logger = Logger.getLogger( ConnectionPoolManager.class.getName( ) );
+
+	private Map<PoolKey, ConnectionPool> pools;
+	private Timer timer;
+
+	/**
+	 * Constructor, called by ConnectionPoolFactory.
+	 */
+	public ConnectionPoolManager( )
+	{
+		this.pools = new ConcurrentHashMap<PoolKey, ConnectionPool>( );
+		ConnectionPoolStatistics.register( this );
+	}
+
+	/*
+	 * @see org.eclipse.birt.report.data.oda.jdbc.IConnectionPoolManager#getConnection(java.lang.String, java.lang.String, java.util.Properties, java.util.Collection, java.util.Map)
+	 */
+	public Connection getConnection( String driverClass, String url,
+			Properties connectionProps, Collection<String> driverClassPath,
+			Map appContext ) throws SQLException, OdaException
+	{
+		if ( !getBoolean( appContext, ENABLED, true ) )
+			return null;
+
+		PoolKey key = new PoolKey( driverClass,
+				url,
+				connectionProps,
+				driverClassPath );
+		ConnectionPool pool = pools.get( key );
+		if ( pool == null )
+		{
+			synchronized ( this )
+			{
+				pool = pools.get( key );
+				if ( pool == null )
+				{
+					pool = new ConnectionPool( driverClass,
+							url,
+							connectionProps,
+							driverClassPath,
+							getInt( appContext, MIN_SIZE, DEFAULT_MIN_SIZE ),
+							getInt( appContext, MAX_SIZE, DEFAULT_MAX_SIZE ),
+							getLong( appContext, MAX_WAIT, DEFAULT_MAX_WAIT ),
+							getLong( appContext,
+									IDLE_TIMEOUT,
+									DEFAULT_IDLE_TIMEOUT ),
+							getString( appContext, VALIDATION_QUERY ),
+							getLong( appContext, LEAK_TIMEOUT, 0 ) );
+					pools.put( key, pool );
+					startTimer( );
+				}
+			}
+		}
+		return pool.getConnection( );
+	}
+
+	/**
+	 * Close a connection which can not be used any more, such as a cancelled
+	 * one. A pooled connection which is still in use is closed physically
+	 * instead of being returned to its pool.
+	 *
+	 * @see org.eclipse.birt.report.data.oda.jdbc.IConnectionPoolManager#closeConnection(java.sql.Connection)
+	 */
+	public void closeConnection( Connection connection ) throws OdaException,
+			SQLException
+	{
+		if ( connection == null )
+			return;
+		if ( Proxy.isProxyClass( connection.getClass( ) )
+				&& Proxy.getInvocationHandler( connection ) instanceof PooledConnection.Handle )
+		{
+			( (PooledConnection.Handle) Proxy.getInvocationHandler( connection ) ).abort( );
+		}
+		else if ( !connection.isClosed( ) )
+		{
+			connection.close( );
+		}
+	}
+
+	/**
+	 * Close all pools. The connections in use are closed when they are
+	 * returned.
+	 */
+	public synchronized void close( )
+	{
+		if ( timer != null )
+		{
+			timer.cancel( );
+			timer = null;
+		}
+		for ( ConnectionPool pool : pools.values( ) )
+		{
+			pool.close( );
+		}
+		pools.clear( );
+	}
+
+	/**
+	 * @return the pools
+	 */
+	public Collection<ConnectionPool> getPools( )
+	{
+		return Collections.unmodifiableCollection( new ArrayList<ConnectionPool>( pools.values( ) ) );
+	}
+
+	/**
+	 * Start the timer which maintains the pools.
+	 */
+	private void startTimer( )
+	{
+		if ( timer != null )
+			return;
+		timer = new Timer( "BIRT JDBC connection pool", true ); //$NON-NLS-1$
+		timer.schedule( new TimerTask( ) {
+
+			public void run( )
+			{
+				for ( ConnectionPool pool : pools.values( ) )
+				{
+					try
+					{
+						pool.maintain( );
+					}
+					catch ( RuntimeException e )
+					{
+						logger.log( Level.FINE, e.getMessage( ), e );
+					}
+				}
+			}
+		}, MAINTENANCE_PERIOD, MAINTENANCE_PERIOD );
+	}
+
+	private static String getString( Map appContext, String name )
+	{
+		Object value = appContext == null ? null : appContext.get( name );
+		if ( value == null )
+			value = System.getProperty( name );
+		return value == null || value.toString( ).trim( ).length( ) == 0
+				? null : value.toString( ).trim( );
+	}
+
+	private static boolean getBoolean( Map appContext, String name,
+			boolean defaultValue )
+	{
+		String value = getString( appContext, name );
+		return value == null ? defaultValue : Boolean.valueOf( value )
+				.booleanValue( );
+	}
+
+	private static int getInt( Map appContext, String name, int defaultValue )
+	{
+		return (int) getLong( appContext, name, defaultValue );
+	}
+
+	private static long getLong( Map appContext, String name,
+			long defaultValue )
+	{
+		String value = getString( appContext, name );
+		if ( value == null )
+			return defaultValue;
+		try
+		{
+			return Math.max( 0, (long) Double.parseDouble( value ) );
+		}
+		catch ( NumberFormatException e )
+		{
+			logger.log( Level.WARNING, "Invalid value of " + name + ": " + value ); //$NON-NLS-1$ //$NON-NLS-2$
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * The key of a pool.
+	 */
+	private static class PoolKey
+	{
+		private String driverClass;
+		private String url;
+		private Map<String, String> properties;
+		private List<String> driverClassPath;
+
+		PoolKey( String driverClass, String url, Properties connectionProps,
+				Collection<String> driverClassPath )
+		{
+			this.driverClass = driverClass;
+			this.url = url;
+			this.properties = new TreeMap<String, String>( );
+			if ( connectionProps != null )
+			{
+				for ( Enumeration<?> names = connectionProps.propertyNames( ); names.hasMoreElements( ); )
+				{
+					String name = (String) names.nextElement( );
+					properties.put( name, connectionProps.getProperty( name ) );
+				}
+			}
+			this.driverClassPath = driverClassPath == null
+					? new ArrayList<String>( )
+					: new ArrayList<String>( driverClassPath );
+		}
+
+		public int hashCode( )
+		{
+			int result = 17;
+			result = 37 * result
+					+ ( driverClass == null ? 0 : driverClass.hashCode( ) );
+			result = 37 * result + ( url == null ? 0 : url.hashCode( ) );
+			result = 37 * result + properties.hashCode( );
+			result = 37 * result + driverClassPath.hashCode( );
+			return result;
+		}
+
+		public boolean equals( Object obj )
+		{
+			if ( this == obj )
+				return true;
+			if ( !( obj instanceof PoolKey ) )
+				return false;
+			PoolKey other = (PoolKey) obj;
+			return ( driverClass == null ? other.driverClass == null
+					: driverClass.equals( other.driverClass ) )
+					&& ( url == null ? other.url == null
+							: url.equals( other.url ) )
+					&& properties.equals( other.properties )
+					&& driverClassPath.equals( other.driverClassPath );
+		}
+	}
+}
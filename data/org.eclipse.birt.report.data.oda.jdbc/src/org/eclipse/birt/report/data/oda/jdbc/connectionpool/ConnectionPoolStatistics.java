@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2008 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.birt.report.data.oda.jdbc.connectionpool;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Expose the statistics of the JDBC connection pools through JMX.
+ */
+public class ConnectionPoolStatistics implements ConnectionPoolStatisticsMBean
+{
+	public static final String OBJECT_NAME = "org.eclipse.birt.report.data.oda.jdbc:type=ConnectionPool"; //$NON-NLS-1$
+
+	private static Logger logger = Logger.getLogger( ConnectionPoolStatistics.class.getName( ) );
+
+	private ConnectionPoolManager manager;
+
+	/**
+	 * 
+	 * @param manager
+	 */
+	ConnectionPoolStatistics( ConnectionPoolManager manager )
+	{
+		this.manager = manager;
+	}
+
+	/**
+	 * Register the statistics of the manager to the platform MBean server. The
+	 * failure of registration does not affect the pools.
+	 * 
+	 * @param manager
+	 */
+	static void register( ConnectionPoolManager manager )
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer( );
+			ObjectName name = new ObjectName( OBJECT_NAME );
+			if ( !server.isRegistered( name ) )
+			{
+				server.registerMBean( new ConnectionPoolStatistics( manager ),
+						name );
+			}
+		}
+		catch ( Exception e )
+		{
+			logger.log( Level.FINE, e.getMessage( ), e );
+		}
+	}
+
+	public int getPoolCount( )
+	{
+		return manager.getPools( ).size( );
+	}
+
+	public int getActiveCount( )
+	{
+		int count = 0;
+		for ( ConnectionPool pool : manager.getPools( ) )
+			count += pool.getActiveCount( );
+		return count;
+	}
+
+	public int getIdleCount( )
+	{
+		int count = 0;
+		for ( ConnectionPool pool : manager.getPools( ) )
+			count += pool.getIdleCount( );
+		return count;
+	}
+
+	public long getCreatedCount( )
+	{
+		long count = 0;
+		for ( ConnectionPool pool : manager.getPools( ) )
+			count += pool.getCreatedCount( );
+		return count;
+	}
+
+	public long getDestroyedCount( )
+	{
+		long count = 0;
+		for ( ConnectionPool pool : manager.getPools( ) )
+			count += pool.getDestroyedCount( );
+		return count;
+	}
+
+	public long getBorrowedCount( )
+	{
+		long count = 0;
+		for ( ConnectionPool pool : manager.getPools( ) )
+			count += pool.getBorrowedCount( );
+		return count;
+	}
+
+	public long getTimeoutCount( )
+	{
+		long count = 0;
+		for ( ConnectionPool pool : manager.getPools( ) )
+			count += pool.getTimeoutCount( );
+		return count;
+	}
+
+	public long getValidationFailureCount( )
+	{
+		long count = 0;
+		for ( ConnectionPool pool : manager.getPools( ) )
+			count += pool.getValidationFailureCount( );
+		return count;
+	}
+
+	public long getLeakCount( )
+	{
+		long count = 0;
+		for ( ConnectionPool pool : manager.getPools( ) )
+			count += pool.getLeakCount( );
+		return count;
+	}
+
+	public void resetStatistics( )
+	{
+		for ( ConnectionPool pool : manager.getPools( ) )
+			pool.resetStatistics( );
+	}
+}
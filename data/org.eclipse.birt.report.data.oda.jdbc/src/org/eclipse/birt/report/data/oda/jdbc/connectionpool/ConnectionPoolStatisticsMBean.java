@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2008 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.birt.report.data.oda.jdbc.connectionpool;
+
+/**
+ * The management interface of the JDBC connection pools, whose counts are the
+ * sums of all pools.
+ */
+public interface ConnectionPoolStatisticsMBean
+{
+	/**
+	 * @return the count of pools
+	 */
+	int getPoolCount( );
+
+	/**
+	 * @return the count of connections in use
+	 */
+	int getActiveCount( );
+
+	/**
+	 * @return the count of idle connections
+	 */
+	int getIdleCount( );
+
+	/**
+	 * @return how many connections are opened
+	 */
+	long getCreatedCount( );
+
+	/**
+	 * @return how many connections are closed
+	 */
+	long getDestroyedCount( );
+
+	/**
+	 * @return how many times a connection is obtained from the pools
+	 */
+	long getBorrowedCount( );
+
+	/**
+	 * @return how many times the wait for a connection times out
+	 */
+	long getTimeoutCount( );
+
+	/**
+	 * @return how many idle connections fail in validation
+	 */
+	long getValidationFailureCount( );
+
+	/**
+	 * @return how many leaked connections are detected
+	 */
+	long getLeakCount( );
+
+	/**
+	 * Reset the counters.
+	 */
+	void resetStatistics( );
+}
@@ -0,0 +1,273 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2008 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.birt.report.data.oda.jdbc.connectionpool;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A physical connection of a pool. Every time it is borrowed, a new proxy of
+ * java.sql.Connection is returned, whose close() returns the connection to the
+ * pool, so that a proxy which has been closed can not affect the next borrower.
+ * The statements created by a proxy are closed, and the auto commit, the
+ * transaction isolation, the read only and the catalog of the connection are
+ * restored when it is returned.
+ */
+class PooledConnection
+{
+	// the SQL state class of connection exceptions
+	private static final String CONNECTION_EXCEPTION = "08"; //$NON-NLS-1$
+
+	private static Logger logger = Logger.getLogger( PooledConnection.class.getName( ) );
+
+	private ConnectionPool pool;
+	private Connection physical;
+
+	// the initial state of the connection
+	private boolean autoCommit;
+	private int isolation;
+	private boolean readOnly;
+	private String catalog;
+
+	private List<Statement> statements;
+	private volatile boolean broken;
+	private long lastUsedTime;
+
+	// the time and the stack trace of current borrowing, for leak detection
+	private long borrowedTime;
+	private Throwable borrowedStack;
+	private boolean leakReported;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pool
+	 * @param physical
+	 * @throws SQLException
+	 */
+	PooledConnection( ConnectionPool pool, Connection physical )
+			throws SQLException
+	{
+		this.pool = pool;
+		this.physical = physical;
+		this.autoCommit = physical.getAutoCommit( );
+		this.isolation = physical.getTransactionIsolation( );
+		this.readOnly = physical.isReadOnly( );
+		this.catalog = physical.getCatalog( );
+		this.statements = new ArrayList<Statement>( );
+	}
+
+	/**
+	 * Borrow the connection.
+	 *
+	 * @param detectLeak
+	 *            whether to keep the stack trace of borrowing
+	 * @return the proxy of the connection
+	 */
+	Connection borrow( boolean detectLeak )
+	{
+		synchronized ( this )
+		{
+			this.borrowedTime = System.currentTimeMillis( );
+			this.borrowedStack = detectLeak
+					? new Throwable( "The connection is obtained here." ) : null; //$NON-NLS-1$
+			this.leakReported = false;
+		}
+		return (Connection) Proxy.newProxyInstance( Connection.class.getClassLoader( ),
+				new Class[]{
+					Connection.class
+				},
+				new Handle( ) );
+	}
+
+	/**
+	 * Close the statements and restore the state of the connection.
+	 *
+	 * @return false if the connection can not be reused
+	 */
+	synchronized boolean reset( )
+	{
+		try
+		{
+			for ( Statement statement : statements )
+			{
+				try
+				{
+					statement.close( );
+				}
+				catch ( SQLException e )
+				{
+					logger.log( Level.FINE, e.getMessage( ), e );
+				}
+			}
+			statements.clear( );
+			if ( physical.isClosed( ) )
+				return false;
+			if ( !physical.getAutoCommit( ) )
+				physical.rollback( );
+			if ( physical.getAutoCommit( ) != autoCommit )
+				physical.setAutoCommit( autoCommit );
+			if ( physical.getTransactionIsolation( ) != isolation )
+				physical.setTransactionIsolation( isolation );
+			if ( physical.isReadOnly( ) != readOnly )
+				physical.setReadOnly( readOnly );
+			if ( catalog != null && !catalog.equals( physical.getCatalog( ) ) )
+				physical.setCatalog( catalog );
+			physical.clearWarnings( );
+			return true;
+		}
+		catch ( SQLException e )
+		{
+			logger.log( Level.FINE, "Failed to reset pooled connection", e ); //$NON-NLS-1$
+			return false;
+		}
+	}
+
+	/**
+	 * Report the connection as leaked if it is borrowed longer than the leak
+	 * timeout. A leak is reported once for a borrowing.
+	 *
+	 * @param now
+	 * @param leakTimeout
+	 * @return whether a new leak is reported
+	 */
+	synchronized boolean checkLeak( long now, long leakTimeout )
+	{
+		if ( leakReported || now - borrowedTime < leakTimeout )
+			return false;
+		leakReported = true;
+		logger.log( Level.WARNING, "A pooled JDBC connection has not been closed for " //$NON-NLS-1$
+				+ ( now - borrowedTime ) + " ms.", //$NON-NLS-1$
+				borrowedStack );
+		return true;
+	}
+
+	Connection getPhysicalConnection( )
+	{
+		return physical;
+	}
+
+	boolean isBroken( )
+	{
+		return broken;
+	}
+
+	long getLastUsedTime( )
+	{
+		return lastUsedTime;
+	}
+
+	void setLastUsedTime( long lastUsedTime )
+	{
+		this.lastUsedTime = lastUsedTime;
+	}
+
+	/**
+	 * The invocation handler of the proxy returned by a borrowing.
+	 */
+	class Handle implements InvocationHandler
+	{
+		private boolean closed;
+
+		/*
+		 * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object, java.lang.reflect.Method, java.lang.Object[])
+		 */
+		public Object invoke( Object proxy, Method method, Object[] args )
+				throws Throwable
+		{
+			String name = method.getName( );
+			if ( "close".equals( name ) && method.getParameterTypes( ).length == 0 ) //$NON-NLS-1$
+			{
+				if ( markClosed( ) )
+					pool.release( PooledConnection.this );
+				return null;
+			}
+			if ( "isClosed".equals( name ) && method.getParameterTypes( ).length == 0 ) //$NON-NLS-1$
+			{
+				return Boolean.valueOf( isClosed( ) || physical.isClosed( ) );
+			}
+			if ( "equals".equals( name ) && method.getParameterTypes( ).length == 1 ) //$NON-NLS-1$
+			{
+				return Boolean.valueOf( proxy == args[0] );
+			}
+			if ( "hashCode".equals( name ) && method.getParameterTypes( ).length == 0 ) //$NON-NLS-1$
+			{
+				return Integer.valueOf( System.identityHashCode( proxy ) );
+			}
+			if ( "toString".equals( name ) && method.getParameterTypes( ).length == 0 ) //$NON-NLS-1$
+			{
+				return "Pooled " + physical; //$NON-NLS-1$
+			}
+			if ( isClosed( ) )
+				throw new SQLException( "Connection is closed." ); //$NON-NLS-1$
+
+			try
+			{
+				Object result = method.invoke( physical, args );
+				if ( result instanceof Statement )
+				{
+					synchronized ( PooledConnection.this )
+					{
+						statements.add( (Statement) result );
+					}
+				}
+				return result;
+			}
+			catch ( InvocationTargetException e )
+			{
+				Throwable cause = e.getCause( );
+				if ( cause instanceof SQLException
+						&& ( (SQLException) cause ).getSQLState( ) != null
+						&& ( (SQLException) cause ).getSQLState( )
+								.startsWith( CONNECTION_EXCEPTION ) )
+					broken = true;
+				throw cause;
+			}
+		}
+
+		/**
+		 * Close the connection without returning it to the pool.
+		 */
+		void abort( )
+		{
+			if ( markClosed( ) )
+			{
+				broken = true;
+				pool.abort( PooledConnection.this );
+			}
+		}
+
+		private synchronized boolean isClosed( )
+		{
+			return closed;
+		}
+
+		/**
+		 * @return false if the proxy has been closed
+		 */
+		private synchronized boolean markClosed( )
+		{
+			if ( closed )
+				return false;
+			closed = true;
+			return true;
+		}
+	}
+}
@@ -0,0 +1,354 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2007 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.report.data.oda.jdbc.utils;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.datatools.connectivity.oda.OdaException;
+
+/**
+ * This class rewrites a SQL query with the operations pushed down by the data
+ * engine. The operations are passed by the properties of the query
+ * specification:
+ * <ul>
+ * <li>FILTERS: a list of {column, operator, values, whether null matches},
+ * where the operator is one of =, &lt;&gt;, &lt;, &lt;=, &gt;, &gt;=, BETWEEN,
+ * NOT BETWEEN, IN, NOT IN, IS NULL and IS NOT NULL, and the values are numbers
+ * or strings.</li>
+ * <li>GROUP_KEYS: a list of columns.</li>
+ * <li>AGGREGATIONS: a list of {alias, function, column}, where the column is
+ * null for COUNT(*).</li>
+ * <li>SORT_KEYS: a list of {column, ascending, nulls first}.</li>
+ * <li>MAX_ROWS: the max rows of the result.</li>
+ * </ul>
+ * The original query is used as a derived table, whose result is filtered,
+ * aggregated and sorted by the rewritten query. Only a single SELECT statement
+ * without ORDER BY can be used as a derived table; the transform fails for the
+ * other queries, and the data engine then runs the original query instead.
+ */
+public class SQLPushDownTransform
+{
+	public static final String PROPERTY_PREFIX = "org.eclipse.birt.report.data.oda.jdbc.pushDown."; //$NON-NLS-1$
+	public static final String FILTERS = PROPERTY_PREFIX + "filters"; //$NON-NLS-1$
+	public static final String GROUP_KEYS = PROPERTY_PREFIX + "groupKeys"; //$NON-NLS-1$
+	public static final String AGGREGATIONS = PROPERTY_PREFIX + "aggregations"; //$NON-NLS-1$
+	public static final String SORT_KEYS = PROPERTY_PREFIX + "sortKeys"; //$NON-NLS-1$
+	public static final String MAX_ROWS = PROPERTY_PREFIX + "maxRows"; //$NON-NLS-1$
+
+	private static final String DERIVED_TABLE_ALIAS = "BIRT_PUSH_DOWN"; //$NON-NLS-1$
+
+	private SQLPushDownTransform( )
+	{
+	}
+
+	/**
+	 * @param properties
+	 *            the properties of query specification
+	 * @return whether the query is rewritten by the properties
+	 */
+	public static boolean isPushedDown( Map<String, Object> properties )
+	{
+		return properties != null
+				&& ( properties.get( FILTERS ) != null
+						|| properties.get( AGGREGATIONS ) != null || properties.get( SORT_KEYS ) != null );
+	}
+
+	/**
+	 * @param properties
+	 *            the properties of query specification
+	 * @return the pushed down max rows, 0 if there is none
+	 */
+	public static int getMaxRows( Map<String, Object> properties )
+	{
+		Object maxRows = properties == null ? null
+				: properties.get( MAX_ROWS );
+		return maxRows instanceof Number ? ( (Number) maxRows ).intValue( )
+				: 0;
+	}
+
+	/**
+	 * Rewrite a SQL query with the pushed down operations.
+	 *
+	 * @param command
+	 *            the SQL query
+	 * @param properties
+	 *            the properties of query specification
+	 * @param quote
+	 *            the identifier quote string of the database, a space if
+	 *            quoting is not supported
+	 * @return
+	 * @throws OdaException
+	 *             if the query can not be used as a derived table
+	 */
+	public static String transform( String command,
+			Map<String, Object> properties, String quote ) throws OdaException
+	{
+		String query = getDerivedTableQuery( command );
+
+		List groupKeys = (List) properties.get( GROUP_KEYS );
+		List aggregations = (List) properties.get( AGGREGATIONS );
+		List filters = (List) properties.get( FILTERS );
+		List sortKeys = (List) properties.get( SORT_KEYS );
+
+		StringBuffer sql = new StringBuffer( "SELECT " ); //$NON-NLS-1$
+		if ( aggregations == null || aggregations.isEmpty( ) )
+		{
+			sql.append( "*" ); //$NON-NLS-1$
+		}
+		else
+		{
+			String separator = ""; //$NON-NLS-1$
+			for ( int i = 0; groupKeys != null && i < groupKeys.size( ); i++ )
+			{
+				sql.append( separator )
+						.append( quoteIdentifier( (String) groupKeys.get( i ),
+								quote ) );
+				separator = ", "; //$NON-NLS-1$
+			}
+			for ( int i = 0; i < aggregations.size( ); i++ )
+			{
+				Object[] aggregation = (Object[]) aggregations.get( i );
+				sql.append( separator )
+						.append( aggregation[1] )
+						.append( "( " ) //$NON-NLS-1$
+						.append( aggregation[2] == null ? "*" //$NON-NLS-1$
+								: quoteIdentifier( (String) aggregation[2],
+										quote ) )
+						.append( " ) AS " ) //$NON-NLS-1$
+						.append( quoteIdentifier( (String) aggregation[0],
+								quote ) );
+				separator = ", "; //$NON-NLS-1$
+			}
+		}
+		sql.append( " FROM ( " ) //$NON-NLS-1$
+				.append( query )
+				.append( " ) " ) //$NON-NLS-1$
+				.append( DERIVED_TABLE_ALIAS );
+
+		for ( int i = 0; filters != null && i < filters.size( ); i++ )
+		{
+			sql.append( i == 0 ? " WHERE " : " AND " ); //$NON-NLS-1$ //$NON-NLS-2$
+			appendCondition( sql, (Object[]) filters.get( i ), quote );
+		}
+
+		if ( aggregations != null && groupKeys != null && !groupKeys.isEmpty( ) )
+		{
+			sql.append( " GROUP BY " ); //$NON-NLS-1$
+			for ( int i = 0; i < groupKeys.size( ); i++ )
+			{
+				if ( i > 0 )
+					sql.append( ", " ); //$NON-NLS-1$
+				sql.append( quoteIdentifier( (String) groupKeys.get( i ), quote ) );
+			}
+		}
+
+		for ( int i = 0; sortKeys != null && i < sortKeys.size( ); i++ )
+		{
+			Object[] sortKey = (Object[]) sortKeys.get( i );
+			String column = quoteIdentifier( (String) sortKey[0], quote );
+			// the null ordering differs among databases
+			sql.append( i == 0 ? " ORDER BY " : ", " ) //$NON-NLS-1$ //$NON-NLS-2$
+					.append( "CASE WHEN " ) //$NON-NLS-1$
+					.append( column )
+					.append( " IS NULL THEN 0 ELSE 1 END" ) //$NON-NLS-1$
+					.append( Boolean.TRUE.equals( sortKey[2] ) ? "" : " DESC" ) //$NON-NLS-1$ //$NON-NLS-2$
+					.append( ", " ) //$NON-NLS-1$
+					.append( column )
+					.append( Boolean.TRUE.equals( sortKey[1] ) ? " ASC" //$NON-NLS-1$
+							: " DESC" ); //$NON-NLS-1$
+		}
+		return sql.toString( );
+	}
+
+	/**
+	 * Get the query used as the derived table, without the trailing comments
+	 * and semicolons. The query is scanned by its tokens at the top level,
+	 * skipping the string literals, quoted identifiers and comments.
+	 *
+	 * @param command
+	 * @return
+	 * @throws OdaException
+	 *             if the query is not a single SELECT statement, or it is
+	 *             ordered, which is not allowed in a derived table by some
+	 *             databases
+	 */
+	private static String getDerivedTableQuery( String command )
+			throws OdaException
+	{
+		int length = command.length( );
+		int end = 0;
+		int depth = 0;
+		boolean terminated = false;
+		String firstWord = null;
+		String lastWord = null;
+		int i = 0;
+		while ( i < length )
+		{
+			char c = command.charAt( i );
+			if ( Character.isWhitespace( c ) )
+			{
+				i++;
+				continue;
+			}
+			if ( command.startsWith( "--", i ) ) //$NON-NLS-1$
+			{
+				int next = command.indexOf( '\n', i );
+				i = next < 0 ? length : next;
+				continue;
+			}
+			if ( command.startsWith( "/*", i ) ) //$NON-NLS-1$
+			{
+				int next = command.indexOf( "*/", i + 2 ); //$NON-NLS-1$
+				if ( next < 0 )
+					throw new OdaException( "Unclosed comment in query: " + command ); //$NON-NLS-1$
+				i = next + 2;
+				continue;
+			}
+			if ( terminated )
+				throw new OdaException( "Multiple statements can not be pushed down: " + command ); //$NON-NLS-1$
+			if ( c == ';' )
+			{
+				terminated = true;
+				i++;
+				continue;
+			}
+			if ( c == '\'' || c == '"' || c == '`' || c == '[' )
+			{
+				char close = c == '[' ? ']' : c;
+				int next = command.indexOf( close, i + 1 );
+				// the quote is escaped by doubling it
+				while ( next >= 0 && close != ']' && next + 1 < length
+						&& command.charAt( next + 1 ) == close )
+				{
+					next = command.indexOf( close, next + 2 );
+				}
+				if ( next < 0 )
+					throw new OdaException( "Unclosed quote in query: " + command ); //$NON-NLS-1$
+				i = next + 1;
+			}
+			else if ( Character.isLetter( c ) || c == '_' )
+			{
+				int start = i;
+				while ( i < length
+						&& ( Character.isLetterOrDigit( command.charAt( i ) ) || command.charAt( i ) == '_' ) )
+					i++;
+				String word = command.substring( start, i ).toUpperCase( );
+				if ( firstWord == null )
+					firstWord = word;
+				if ( depth == 0 )
+				{
+					if ( "BY".equals( word ) && "ORDER".equals( lastWord ) ) //$NON-NLS-1$ //$NON-NLS-2$
+						throw new OdaException( "An ordered query can not be pushed down: " + command ); //$NON-NLS-1$
+					lastWord = word;
+				}
+				end = i;
+				continue;
+			}
+			else
+			{
+				if ( c == '(' )
+					depth++;
+				else if ( c == ')' )
+					depth--;
+				i++;
+			}
+			if ( depth == 0 )
+				lastWord = null;
+			end = i;
+		}
+		if ( !"SELECT".equals( firstWord ) ) //$NON-NLS-1$
+			throw new OdaException( "Only a SELECT statement can be pushed down: " + command ); //$NON-NLS-1$
+		return command.substring( 0, end );
+	}
+
+	/**
+	 * Append a filter condition.
+	 *
+	 * @param sql
+	 * @param filter
+	 * @param quote
+	 * @throws OdaException
+	 */
+	private static void appendCondition( StringBuffer sql, Object[] filter,
+			String quote ) throws OdaException
+	{
+		String column = quoteIdentifier( (String) filter[0], quote );
+		String operator = (String) filter[1];
+		Object[] values = (Object[]) filter[2];
+		boolean matchesNull = Boolean.TRUE.equals( filter[3] );
+
+		sql.append( "( " ).append( column ).append( " " ).append( operator ); //$NON-NLS-1$ //$NON-NLS-2$
+		if ( "BETWEEN".equals( operator ) || "NOT BETWEEN".equals( operator ) ) //$NON-NLS-1$ //$NON-NLS-2$
+		{
+			sql.append( " " ) //$NON-NLS-1$
+					.append( toLiteral( values[0] ) )
+					.append( " AND " ) //$NON-NLS-1$
+					.append( toLiteral( values[1] ) );
+		}
+		else if ( "IN".equals( operator ) || "NOT IN".equals( operator ) ) //$NON-NLS-1$ //$NON-NLS-2$
+		{
+			sql.append( " ( " ); //$NON-NLS-1$
+			for ( int i = 0; i < values.length; i++ )
+			{
+				if ( i > 0 )
+					sql.append( ", " ); //$NON-NLS-1$
+				sql.append( toLiteral( values[i] ) );
+			}
+			sql.append( " )" ); //$NON-NLS-1$
+		}
+		else if ( !"IS NULL".equals( operator ) //$NON-NLS-1$
+				&& !"IS NOT NULL".equals( operator ) ) //$NON-NLS-1$
+		{
+			sql.append( " " ).append( toLiteral( values[0] ) ); //$NON-NLS-1$
+		}
+		if ( matchesNull )
+			sql.append( " OR " ).append( column ).append( " IS NULL" ); //$NON-NLS-1$ //$NON-NLS-2$
+		sql.append( " )" ); //$NON-NLS-1$
+	}
+
+	/**
+	 * @param value
+	 * @return the SQL literal of a value
+	 * @throws OdaException
+	 */
+	private static String toLiteral( Object value ) throws OdaException
+	{
+		if ( value instanceof BigDecimal )
+			return ( (BigDecimal) value ).toPlainString( );
+		if ( value instanceof Double || value instanceof Float )
+		{
+			double number = ( (Number) value ).doubleValue( );
+			if ( Double.isNaN( number ) || Double.isInfinite( number ) )
+				throw new OdaException( "Unsupported literal value: " + value ); //$NON-NLS-1$
+		}
+		if ( value instanceof Number )
+			return new BigDecimal( value.toString( ) ).toPlainString( );
+		if ( value instanceof String )
+			return "'" + ( (String) value ).replaceAll( "'", "''" ) + "'"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		throw new OdaException( "Unsupported literal value: " + value ); //$NON-NLS-1$
+	}
+
+	/**
+	 * @param name
+	 * @param quote
+	 * @return the quoted identifier
+	 */
+	private static String quoteIdentifier( String name, String quote )
+	{
+		if ( quote == null || quote.trim( ).length( ) == 0 )
+			return name;
+		quote = quote.trim( );
+		return quote + name.replace( quote, quote + quote ) + quote;
+	}
+}
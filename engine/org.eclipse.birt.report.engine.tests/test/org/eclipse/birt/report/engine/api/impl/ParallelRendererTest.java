@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.birt.report.engine.api.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import org.eclipse.birt.report.engine.EngineCase;
+import org.eclipse.birt.report.engine.api.EngineException;
+import org.eclipse.birt.report.engine.api.HTMLRenderOption;
+import org.eclipse.birt.report.engine.api.IRenderOption;
+import org.eclipse.birt.report.engine.api.IReportDocument;
+import org.eclipse.birt.report.engine.api.RenderOption;
+import org.eclipse.birt.report.engine.i18n.MessageConstants;
+
+import com.lowagie.text.pdf.PdfReader;
+
+/**
+ * Test the pages rendered concurrently.
+ */
+public class ParallelRendererTest extends EngineCase
+{
+
+	static final String DESIGN_RESOURCE = "org/eclipse/birt/report/engine/api/impl/parallel_renderer_design.xml"; //$NON-NLS-1$
+	static final String ERROR_DESIGN_RESOURCE = "org/eclipse/birt/report/engine/api/impl/parallel_renderer_error_design.xml"; //$NON-NLS-1$
+
+	public void setUp( ) throws Exception
+	{
+		super.setUp( );
+		removeFile( REPORT_DESIGN );
+		removeFile( REPORT_DOCUMENT );
+		engine = createReportEngine( );
+	}
+
+	public void tearDown( ) throws Exception
+	{
+		engine.shutdown( );
+		removeFile( REPORT_DESIGN );
+		removeFile( REPORT_DOCUMENT );
+		super.tearDown( );
+	}
+
+	public void testSplitContinuousPages( ) throws EngineException
+	{
+		List<List<long[]>> ranges = ParallelRenderer.splitPageSequence(
+				PageSequenceParse.parsePageSequence( null, 10 ), 3 );
+		assertEquals( 3, ranges.size( ) );
+		assertEquals( "1-4", ParallelRenderer.formatPageRange( ranges.get( 0 ) ) );
+		assertEquals( "5-8", ParallelRenderer.formatPageRange( ranges.get( 1 ) ) );
+		assertEquals( "9-10", ParallelRenderer.formatPageRange( ranges.get( 2 ) ) );
+	}
+
+	public void testSplitPageSegments( ) throws EngineException
+	{
+		List<List<long[]>> ranges = ParallelRenderer.splitPageSequence(
+				PageSequenceParse.parsePageSequence( "13-15,3,8-11", 15 ), 2 );
+		assertEquals( 2, ranges.size( ) );
+		assertEquals( "3,8-10", ParallelRenderer.formatPageRange( ranges
+				.get( 0 ) ) );
+		assertEquals( "11,13-15", ParallelRenderer.formatPageRange( ranges
+				.get( 1 ) ) );
+	}
+
+	public void testSplitFewPages( ) throws EngineException
+	{
+		List<List<long[]>> ranges = ParallelRenderer.splitPageSequence(
+				PageSequenceParse.parsePageSequence( "2", 15 ), 4 );
+		assertEquals( 1, ranges.size( ) );
+		assertEquals( "2", ParallelRenderer.formatPageRange( ranges.get( 0 ) ) );
+	}
+
+	public void testRenderPDFRanges( ) throws Exception
+	{
+		IReportDocument document = createReportDocument( DESIGN_RESOURCE );
+		try
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream( );
+			RenderOption options = new RenderOption( );
+			options.setOutputFormat( IRenderOption.OUTPUT_FORMAT_PDF );
+			options.setOutputStream( out );
+			ParallelRenderer renderer = createRenderer( document, options );
+			renderer.setPageRange( "2-6" );
+			renderer.render( );
+			assertTrue( renderer.getErrors( ).isEmpty( ) );
+			assertEquals( 5, renderer.getPageCount( ) );
+			assertEquals( 5, new PdfReader( out.toByteArray( ) )
+					.getNumberOfPages( ) );
+		}
+		finally
+		{
+			document.close( );
+		}
+	}
+
+	public void testRenderHTMLRanges( ) throws Exception
+	{
+		IReportDocument document = createReportDocument( DESIGN_RESOURCE );
+		try
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream( );
+			HTMLRenderOption options = new HTMLRenderOption( );
+			options.setOutputFormat( IRenderOption.OUTPUT_FORMAT_HTML );
+			options.setEmbeddable( true );
+			options.setHtmlPagination( true );
+			options.setOutputStream( out );
+			ParallelRenderer renderer = createRenderer( document, options );
+			renderer.render( );
+			assertTrue( renderer.getErrors( ).isEmpty( ) );
+			assertEquals( 6, renderer.getPageCount( ) );
+
+			// the pages are stitched in page order
+			String output = out.toString( "utf-8" ); //$NON-NLS-1$
+			String[] pages = new String[]{"first", "second", "third", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					"fourth", "fifth", "sixth"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			int position = -1;
+			for ( int i = 0; i < pages.length; i++ )
+			{
+				int index = output.indexOf( "content of " + pages[i] //$NON-NLS-1$
+						+ " page" ); //$NON-NLS-1$
+				assertTrue( index > position );
+				position = index;
+			}
+			assertEquals( -1, output.indexOf( "<html" ) ); //$NON-NLS-1$
+		}
+		finally
+		{
+			document.close( );
+		}
+	}
+
+	public void testRenderFullHTML( ) throws Exception
+	{
+		IReportDocument document = createReportDocument( DESIGN_RESOURCE );
+		try
+		{
+			// a complete HTML page is rendered by a single render task
+			ByteArrayOutputStream out = new ByteArrayOutputStream( );
+			HTMLRenderOption options = new HTMLRenderOption( );
+			options.setOutputFormat( IRenderOption.OUTPUT_FORMAT_HTML );
+			options.setOutputStream( out );
+			options.setHtmlPagination( true );
+			ParallelRenderer renderer = createRenderer( document, options );
+			renderer.render( );
+			assertEquals( 6, renderer.getPageCount( ) );
+
+			String output = out.toString( "utf-8" ); //$NON-NLS-1$
+			assertEquals( 1, getCount( output, "<html" ) ); //$NON-NLS-1$
+			assertEquals( 1, getCount( output, "</html>" ) ); //$NON-NLS-1$
+		}
+		finally
+		{
+			document.close( );
+		}
+	}
+
+	public void testFailedRange( ) throws Exception
+	{
+		IReportDocument document = createReportDocument( ERROR_DESIGN_RESOURCE );
+		try
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream( );
+			RenderOption options = new RenderOption( );
+			options.setOutputFormat( IRenderOption.OUTPUT_FORMAT_PDF );
+			options.setOutputStream( out );
+			ParallelRenderer renderer = createRenderer( document, options );
+			try
+			{
+				renderer.render( );
+				fail( );
+			}
+			catch ( EngineException ex )
+			{
+				// the range of the fifth page fails
+				assertEquals( MessageConstants.RENDER_PAGE_RANGE_ERROR, ex
+						.getErrorCode( ) );
+				assertTrue( ex.getMessage( ).indexOf( "5-6" ) != -1 ); //$NON-NLS-1$
+			}
+			assertFalse( renderer.getErrors( ).isEmpty( ) );
+			assertEquals( 0, renderer.getPageCount( ) );
+			// nothing is stitched
+			assertEquals( 0, out.size( ) );
+		}
+		finally
+		{
+			document.close( );
+		}
+	}
+
+	private ParallelRenderer createRenderer( IReportDocument document,
+			IRenderOption options )
+	{
+		ParallelRenderer renderer = new ParallelRenderer(
+				(ReportEngine) engine, document );
+		renderer.setRenderOption( options );
+		renderer.setParallelism( 3 );
+		return renderer;
+	}
+}
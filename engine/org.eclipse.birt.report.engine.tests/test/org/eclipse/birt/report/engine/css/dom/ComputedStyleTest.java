@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.report.engine.css.dom;
+
+import junit.framework.TestCase;
+
+import org.eclipse.birt.report.engine.content.IContainerContent;
+import org.eclipse.birt.report.engine.content.IStyle;
+import org.eclipse.birt.report.engine.content.ITextContent;
+import org.eclipse.birt.report.engine.content.impl.ReportContent;
+
+public class ComputedStyleTest extends TestCase
+{
+
+	public void testSharedInlineStyle( )
+	{
+		ReportContent report = new ReportContent( );
+		IContainerContent container = report.createContainerContent( );
+		ITextContent text1 = createText( report, container, "center" );
+		ITextContent text2 = createText( report, container, "center" );
+		ITextContent text3 = createText( report, container, "right" );
+
+		IStyle style1 = text1.getComputedStyle( );
+		assertSame( style1, text2.getComputedStyle( ) );
+		assertNotSame( style1, text3.getComputedStyle( ) );
+		assertEquals( "center", style1.getTextAlign( ) );
+		assertEquals( "right", text3.getComputedStyle( ).getTextAlign( ) );
+
+		// the shared style isn't changed with the content's style
+		text1.getStyle( ).setTextAlign( "left" );
+		assertEquals( "left", text1.getComputedStyle( ).getTextAlign( ) );
+		assertEquals( "center", text2.getComputedStyle( ).getTextAlign( ) );
+		assertSame( style1, createText( report, container, "center" )
+				.getComputedStyle( ) );
+	}
+
+	private ITextContent createText( ReportContent report,
+			IContainerContent container, String textAlign )
+	{
+		ITextContent text = report.createTextContent( );
+		text.setParent( container );
+		text.getStyle( ).setTextAlign( textAlign );
+		return text;
+	}
+}
@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.report.engine.internal.document.v3;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.eclipse.birt.core.archive.compound.ArchiveFile;
+import org.eclipse.birt.core.archive.compound.ArchiveReader;
+import org.eclipse.birt.core.archive.compound.ArchiveWriter;
+import org.eclipse.birt.report.engine.api.DataID;
+import org.eclipse.birt.report.engine.api.DataSetID;
+import org.eclipse.birt.report.engine.api.InstanceID;
+import org.eclipse.birt.report.engine.content.IContent;
+import org.eclipse.birt.report.engine.content.IRowContent;
+import org.eclipse.birt.report.engine.content.IStyle;
+import org.eclipse.birt.report.engine.content.ITableContent;
+import org.eclipse.birt.report.engine.content.impl.ReportContent;
+import org.eclipse.birt.report.engine.internal.document.DocumentExtension;
+
+/**
+ * Test the contents saved in the compact content stream.
+ */
+public class CompactContentStreamTest extends TestCase
+{
+
+	static final String ARCHIVE_FILE = "./utest/compact.rptdocument";
+	static final String CONTENT_STREAM = "/content/content.dat";
+	static final int ROW_COUNT = 10000;
+
+	public void setUp( )
+	{
+		new File( ARCHIVE_FILE ).delete( );
+	}
+
+	public void tearDown( )
+	{
+		new File( ARCHIVE_FILE ).delete( );
+	}
+
+	public void testCompactStream( ) throws IOException
+	{
+		doTest( false );
+	}
+
+	public void testCompressedStream( ) throws IOException
+	{
+		doTest( true );
+	}
+
+	protected void doTest( boolean compressed ) throws IOException
+	{
+		ArchiveFile archive = new ArchiveFile( ARCHIVE_FILE, "rw" );
+		try
+		{
+			ReportContent report = new ReportContent( );
+			ReportContentWriterV3 writer = new ReportContentWriterV3(
+					new ArchiveWriter( archive ), CONTENT_STREAM, true,
+					compressed );
+			try
+			{
+				writer.writeReport( report );
+				ITableContent table = report.createTableContent( );
+				table.setInstanceID( new InstanceID( null, 1, 10, null ) );
+				writer.writeContent( table );
+				DataSetID dataSet = new DataSetID( "dataSet" );
+				for ( int i = 0; i < ROW_COUNT; i++ )
+				{
+					IRowContent row = report.createRowContent( );
+					row.setParent( table );
+					row.setInstanceID( new InstanceID( null, i + 2, 11,
+							new DataID( dataSet, i ) ) );
+					if ( i % 2 == 0 )
+					{
+						IStyle style = report.createStyle( );
+						style.setFontWeight( "bold" );
+						row.setInlineStyle( style );
+					}
+					writer.writeContent( row );
+				}
+			}
+			finally
+			{
+				writer.close( );
+			}
+
+			ReportContentReaderV3 reader = new ReportContentReaderV3(
+					new ReportContent( ), new ArchiveReader( archive )
+							.getStream( CONTENT_STREAM ), getClass( )
+							.getClassLoader( ) );
+			try
+			{
+				assertFalse( reader.isEmpty( ) );
+				IContent table = reader.readContent( reader.getRoot( ) );
+				assertEquals( IContent.TABLE_CONTENT, table.getContentType( ) );
+				assertEquals( "/1.10", table.getInstanceID( ).toString( ) );
+				DocumentExtension docExt = (DocumentExtension) table
+						.getExtension( IContent.DOCUMENT_EXTENSION );
+				assertEquals( -1, docExt.getNext( ) );
+
+				long offset = docExt.getFirstChild( );
+				int count = 0;
+				while ( offset != -1 )
+				{
+					IContent row = reader.readContent( offset );
+					assertEquals( IContent.ROW_CONTENT, row.getContentType( ) );
+					assertEquals( "/" + ( count + 2 ) + ".11(dataSet:" + count
+							+ ")", row.getInstanceID( ).toString( ) );
+					IStyle style = row.getInlineStyle( );
+					if ( count % 2 == 0 )
+					{
+						assertEquals( "bold", style.getFontWeight( ) );
+					}
+					else
+					{
+						assertTrue( style == null || style.isEmpty( ) );
+					}
+					DocumentExtension rowExt = (DocumentExtension) row
+							.getExtension( IContent.DOCUMENT_EXTENSION );
+					assertEquals( docExt.getIndex( ), rowExt.getParent( ) );
+					offset = rowExt.getNext( );
+					count++;
+				}
+				assertEquals( ROW_COUNT, count );
+			}
+			finally
+			{
+				reader.close( );
+			}
+		}
+		finally
+		{
+			archive.close( );
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.report.engine.layout.pdf.font;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
+
+import junit.framework.TestCase;
+
+public class FontIndexTest extends TestCase
+{
+
+	static final String FONT_FOLDER = "./utest/fonts";
+	static final String INDEX_FILE = "./utest/fonts.index";
+
+	public void setUp( ) throws IOException
+	{
+		new File( FONT_FOLDER ).mkdirs( );
+		createFile( "font.txt" );
+		new File( INDEX_FILE ).delete( );
+	}
+
+	public void tearDown( )
+	{
+		new File( FONT_FOLDER, "font.txt" ).delete( );
+		new File( FONT_FOLDER, "new.txt" ).delete( );
+		new File( FONT_FOLDER ).delete( );
+		new File( INDEX_FILE ).delete( );
+	}
+
+	public void testRegisterFontPath( ) throws IOException
+	{
+		FontIndex index = FontIndex.open( new File( INDEX_FILE ) );
+		assertNotNull( index );
+		assertFalse( index.registerFontPath( FONT_FOLDER ) );
+		index.save( );
+		assertTrue( new File( INDEX_FILE ).exists( ) );
+
+		// the saved font path is registered from the index
+		index = FontIndex.open( new File( INDEX_FILE ) );
+		assertTrue( index.registerFontPath( FONT_FOLDER ) );
+
+		// the font path is registered again if the files are changed
+		createFile( "new.txt" );
+		assertFalse( index.registerFontPath( FONT_FOLDER ) );
+		assertTrue( index.registerFontPath( FONT_FOLDER ) );
+	}
+
+	public void testSiblingFontPath( )
+	{
+		FontIndex index = FontIndex.open( new File( INDEX_FILE ) );
+		assertNotNull( index );
+		String sibling = new File( FONT_FOLDER + "2", "sibling.ttf" ) //$NON-NLS-1$ //$NON-NLS-2$
+				.getPath( );
+		String font = new File( FONT_FOLDER, "font.ttf" ).getPath( ); //$NON-NLS-1$
+		index.trueTypeFonts.setProperty( "sibling font", sibling ); //$NON-NLS-1$
+		index.trueTypeFonts.setProperty( "test font", font ); //$NON-NLS-1$
+		try
+		{
+			index.registerFontPath( FONT_FOLDER );
+			FontIndex.FontPathEntry entry = index.fontPaths.get( FONT_FOLDER );
+			assertEquals( font, entry.fonts.get( "test font" ) ); //$NON-NLS-1$
+			assertFalse( entry.fonts.containsKey( "sibling font" ) ); //$NON-NLS-1$
+		}
+		finally
+		{
+			index.trueTypeFonts.remove( "sibling font" ); //$NON-NLS-1$
+			index.trueTypeFonts.remove( "test font" ); //$NON-NLS-1$
+		}
+	}
+
+	public void testCharsEntry( )
+	{
+		FontIndex index = FontIndex.open( new File( INDEX_FILE ) );
+		assertNotNull( index );
+		FontIndex.CharsEntry entry = new FontIndex.CharsEntry(
+				new FontIndex.FileStamp( "font.ttf", 1, 2 ), new BitSet( ), //$NON-NLS-1$
+				new BitSet( ) );
+		index.fontChars.put( "font.ttf", entry ); //$NON-NLS-1$
+		assertNull( entry.charExists( 'a' ) );
+		entry.addChar( 'a', true );
+		entry.addChar( 'b', false );
+		assertEquals( Boolean.TRUE, entry.charExists( 'a' ) );
+		assertEquals( Boolean.FALSE, entry.charExists( 'b' ) );
+		// the segments are only available if all the characters are tested
+		assertNull( entry.getCharSegments( "font" ) ); //$NON-NLS-1$
+		index.save( );
+
+		// the tested characters are loaded from the index
+		index = FontIndex.open( new File( INDEX_FILE ) );
+		entry = index.fontChars.get( "font.ttf" ); //$NON-NLS-1$
+		assertNotNull( entry );
+		assertEquals( Boolean.TRUE, entry.charExists( 'a' ) );
+		assertEquals( Boolean.FALSE, entry.charExists( 'b' ) );
+		assertNull( entry.charExists( 'c' ) );
+
+		for ( char ch = 0; ch < 0xFFFF; ch++ )
+		{
+			entry.addChar( ch, ch >= 'a' && ch <= 'z' );
+		}
+		entry.addChar( (char) 0xFFFF, true );
+		CharSegment[] segments = entry.getCharSegments( "font" ); //$NON-NLS-1$
+		assertEquals( 3, segments.length );
+		assertEquals( 'a', segments[0].start );
+		assertEquals( 'a', segments[0].end );
+		assertEquals( 'c', segments[1].start );
+		assertEquals( 'z', segments[1].end );
+		assertEquals( 0xFFFF, segments[2].start );
+		assertEquals( 0xFFFF, segments[2].end );
+	}
+
+	private void createFile( String name ) throws IOException
+	{
+		new FileOutputStream( new File( FONT_FOLDER, name ) ).close( );
+	}
+}
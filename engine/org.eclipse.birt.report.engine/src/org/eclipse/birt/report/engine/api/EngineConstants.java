@@ -75,6 +75,21 @@ public class EngineConstants {
 	 * OOM
 	 */
 	public final static String APPCONTEXT_MAX_PAGE_BREAK_INTERVAL = "MAX_PAGE_BREAK_INTERVAL"; //$NON-NLS-1$
+
+	/**
+	 * save the contents of the report document in the compact content stream,
+	 * which interns the styles and the instance ids of the contents. The
+	 * document can't be read by the engines before it. The value is a Boolean,
+	 * the default value is false.
+	 */
+	public final static String APPCONTEXT_COMPACT_CONTENT_STREAM = "COMPACT_CONTENT_STREAM"; //$NON-NLS-1$
+
+	/**
+	 * compress the blocks of the compact content stream, it implies
+	 * APPCONTEXT_COMPACT_CONTENT_STREAM. The value is a Boolean, the default
+	 * value is false.
+	 */
+	public final static String APPCONTEXT_COMPRESS_CONTENT_STREAM = "COMPRESS_CONTENT_STREAM"; //$NON-NLS-1$
 	
 	/**
 	 * The Engine task owning the application context
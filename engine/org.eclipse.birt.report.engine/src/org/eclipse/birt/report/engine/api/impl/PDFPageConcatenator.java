@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.report.engine.api.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.pdf.PdfCopy;
+import com.lowagie.text.pdf.PdfReader;
+
+/**
+ * Concatenates the pages of several PDF files into one PDF output. It is kept
+ * apart from the parallel renderer, so the optional PDF library is only
+ * loaded when PDF outputs are merged.
+ */
+class PDFPageConcatenator
+{
+
+	/**
+	 * Copy the pages of the PDF files to the output in order. The output
+	 * stream is not closed.
+	 *
+	 * @param inputs
+	 *            the PDF files
+	 * @param out
+	 *            the output stream
+	 * @throws IOException
+	 */
+	static void concatenate( File[] inputs, OutputStream out )
+			throws IOException
+	{
+		Document document = null;
+		PdfCopy copy = null;
+		try
+		{
+			for ( int i = 0; i < inputs.length; i++ )
+			{
+				PdfReader reader = new PdfReader( inputs[i].getPath( ) );
+				try
+				{
+					if ( document == null )
+					{
+						document = new Document( reader
+								.getPageSizeWithRotation( 1 ) );
+						copy = new PdfCopy( document, out );
+						copy.setCloseStream( false );
+						document.open( );
+					}
+					int pageCount = reader.getNumberOfPages( );
+					for ( int page = 1; page <= pageCount; page++ )
+					{
+						copy.addPage( copy.getImportedPage( reader, page ) );
+					}
+					copy.freeReader( reader );
+				}
+				finally
+				{
+					reader.close( );
+				}
+			}
+		}
+		catch ( DocumentException ex )
+		{
+			IOException ioe = new IOException( ex.getLocalizedMessage( ) );
+			ioe.initCause( ex );
+			throw ioe;
+		}
+		finally
+		{
+			if ( document != null )
+			{
+				document.close( );
+			}
+		}
+	}
+}
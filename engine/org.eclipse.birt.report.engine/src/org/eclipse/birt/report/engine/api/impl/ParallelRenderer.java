@@ -0,0 +1,673 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.report.engine.api.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.birt.report.engine.api.EngineException;
+import org.eclipse.birt.report.engine.api.HTMLRenderOption;
+import org.eclipse.birt.report.engine.api.IEngineTask;
+import org.eclipse.birt.report.engine.api.IRenderOption;
+import org.eclipse.birt.report.engine.api.IRenderTask;
+import org.eclipse.birt.report.engine.api.IReportDocument;
+import org.eclipse.birt.report.engine.api.RenderOption;
+import org.eclipse.birt.report.engine.i18n.MessageConstants;
+import org.eclipse.birt.report.engine.util.FileUtil;
+
+/**
+ * Renders disjoint page ranges of a report document concurrently.
+ * <p>
+ * Each range is rendered by its own render task on its own reader of the
+ * document archive, so it has its own page executor and layout state, and
+ * starts from the page hints of its first page. The outputs of the ranges are
+ * then stitched in page order:
+ * <li>the pages of the PDF outputs are concatenated;</li>
+ * <li>the HTML outputs are embeddable fragments, written one after another.</li>
+ * <p>
+ * If a range fails, the other ranges are cancelled and nothing is stitched.
+ * The other formats, the HTML outputs which are not embeddable, and the
+ * documents which are not opened by the engine, are rendered by a single
+ * render task.
+ */
+public class ParallelRenderer
+{
+
+	private static Logger logger = Logger.getLogger( ParallelRenderer.class
+			.getName( ) );
+
+	protected ReportEngine engine;
+	protected IReportDocument reportDocument;
+	protected IRenderOption renderOptions;
+	protected Map appContext;
+	protected String pageRange;
+	protected int parallelism;
+	protected long outputPageCount;
+	protected List errors = new ArrayList( );
+
+	private List<IRenderTask> runningTasks = new ArrayList<IRenderTask>( );
+	private volatile boolean cancelled;
+
+	/**
+	 * @param engine
+	 *            the report engine
+	 * @param reportDocument
+	 *            the report document to be rendered
+	 */
+	public ParallelRenderer( ReportEngine engine, IReportDocument reportDocument )
+	{
+		this.engine = engine;
+		this.reportDocument = reportDocument;
+		this.parallelism = Runtime.getRuntime( ).availableProcessors( );
+	}
+
+	/**
+	 * set the rendering options. The output stream or file of the options
+	 * receives the stitched output.
+	 *
+	 * @param options
+	 */
+	public void setRenderOption( IRenderOption options )
+	{
+		this.renderOptions = options;
+	}
+
+	/**
+	 * @return the render option
+	 */
+	public IRenderOption getRenderOption( )
+	{
+		return renderOptions;
+	}
+
+	/**
+	 * set the application context used by each render task.
+	 *
+	 * @param context
+	 */
+	public void setAppContext( Map context )
+	{
+		this.appContext = context;
+	}
+
+	/**
+	 * Sets range of the pages to be rendered, all the pages are rendered if it
+	 * is null.
+	 *
+	 * @param pageRange
+	 *            range of the pages.
+	 */
+	public void setPageRange( String pageRange )
+	{
+		this.pageRange = pageRange;
+	}
+
+	/**
+	 * Sets how many page ranges are rendered at the same time. The pages are
+	 * split into this count of ranges. The default value is the count of the
+	 * available processors.
+	 *
+	 * @param parallelism
+	 */
+	public void setParallelism( int parallelism )
+	{
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @return the count of the pages that is output.
+	 */
+	public long getPageCount( )
+	{
+		return outputPageCount;
+	}
+
+	/**
+	 * @return the errors of all the render tasks.
+	 */
+	public List getErrors( )
+	{
+		return errors;
+	}
+
+	/**
+	 * Whether the outputs of page ranges of the format can be stitched
+	 * together.
+	 *
+	 * @param format
+	 * @return
+	 */
+	public static boolean isStitchingSupported( String format )
+	{
+		return IRenderOption.OUTPUT_FORMAT_HTML.equalsIgnoreCase( format )
+				|| IRenderOption.OUTPUT_FORMAT_PDF.equalsIgnoreCase( format );
+	}
+
+	/**
+	 * cancel the rendering of all the page ranges.
+	 */
+	public void cancel( )
+	{
+		cancelled = true;
+		synchronized ( runningTasks )
+		{
+			for ( IRenderTask task : runningTasks )
+			{
+				task.cancel( );
+			}
+		}
+	}
+
+	/**
+	 * render the pages to the output of the render options.
+	 *
+	 * @throws EngineException
+	 *             if rendering fails
+	 */
+	public void render( ) throws EngineException
+	{
+		if ( renderOptions == null )
+		{
+			throw new EngineException( MessageConstants.RENDER_OPTION_ERROR );
+		}
+		outputPageCount = 0;
+		errors.clear( );
+		cancelled = false;
+
+		List<List<long[]>> ranges = null;
+		if ( parallelism > 1
+				&& reportDocument instanceof ReportDocumentReader
+				&& isStitchingSupported( getOutputFormat( ) )
+				&& !isFullHTML( ) )
+		{
+			ranges = splitPageSequence( getPageSequence( ), parallelism );
+		}
+		if ( ranges == null || ranges.size( ) < 2 )
+		{
+			renderSerially( );
+		}
+		else
+		{
+			renderConcurrently( ranges );
+		}
+	}
+
+	/**
+	 * @return the output format, null if the format is defined by the emitter
+	 *         id.
+	 */
+	private String getOutputFormat( )
+	{
+		String format = renderOptions.getOutputFormat( );
+		if ( format == null && renderOptions.getEmitterID( ) == null )
+		{
+			format = IRenderOption.OUTPUT_FORMAT_HTML;
+		}
+		return format;
+	}
+
+	/**
+	 * The stitched HTML fragments have no html and head elements, so a
+	 * complete HTML page is rendered by a single render task.
+	 *
+	 * @return whether a complete HTML page is requested
+	 */
+	private boolean isFullHTML( )
+	{
+		return IRenderOption.OUTPUT_FORMAT_HTML
+				.equalsIgnoreCase( getOutputFormat( ) )
+				&& !new HTMLRenderOption( renderOptions ).getEmbeddable( );
+	}
+
+	/**
+	 * @return the visible pages to be rendered
+	 * @throws EngineException
+	 */
+	private List<long[]> getPageSequence( ) throws EngineException
+	{
+		IRenderTask task = engine.createRenderTask( reportDocument );
+		try
+		{
+			task.setRenderOption( new RenderOption( new HashMap( renderOptions
+					.getOptions( ) ) ) );
+			if ( appContext != null )
+			{
+				task.setAppContext( appContext );
+			}
+			return PageSequenceParse.parsePageSequence( pageRange, task
+					.getTotalPage( ) );
+		}
+		finally
+		{
+			task.close( );
+		}
+	}
+
+	private void renderSerially( ) throws EngineException
+	{
+		IRenderTask task = engine.createRenderTask( reportDocument );
+		try
+		{
+			task.setRenderOption( renderOptions );
+			if ( appContext != null )
+			{
+				task.setAppContext( appContext );
+			}
+			if ( pageRange != null )
+			{
+				task.setPageRange( pageRange );
+			}
+			synchronized ( runningTasks )
+			{
+				runningTasks.add( task );
+			}
+			if ( cancelled )
+			{
+				task.cancel( );
+			}
+			task.render( );
+			if ( task.getStatus( ) == IEngineTask.STATUS_SUCCEEDED )
+			{
+				outputPageCount = task.getPageCount( );
+			}
+		}
+		finally
+		{
+			synchronized ( runningTasks )
+			{
+				runningTasks.remove( task );
+			}
+			errors.addAll( task.getErrors( ) );
+			task.close( );
+		}
+	}
+
+	private void renderConcurrently( List<List<long[]>> ranges )
+			throws EngineException
+	{
+		File[] outputs = new File[ranges.size( )];
+		ExecutorService executor = Executors.newFixedThreadPool( Math.min(
+				parallelism, ranges.size( ) ) );
+		CompletionService<Long> completion = new ExecutorCompletionService<Long>(
+				executor );
+		List<Future<Long>> tasks = new ArrayList<Future<Long>>( );
+		try
+		{
+			File tempDir = getTempDir( );
+			for ( int i = 0; i < outputs.length; i++ )
+			{
+				outputs[i] = File.createTempFile( "range", ".tmp", tempDir ); //$NON-NLS-1$ //$NON-NLS-2$
+				tasks.add( completion.submit( new RangeRender( ranges.get( i ),
+						outputs[i] ) ) );
+			}
+			long pageCount = 0;
+			for ( int i = 0; i < tasks.size( ); i++ )
+			{
+				try
+				{
+					// the ranges are waited in the order they finish, so a
+					// failed range stops the others as soon as it fails
+					pageCount += waitForTask( completion );
+				}
+				catch ( EngineException ex )
+				{
+					// stop the other ranges, the output can't be stitched
+					for ( Future<Long> task : tasks )
+					{
+						task.cancel( false );
+					}
+					cancel( );
+					throw ex;
+				}
+			}
+			if ( !cancelled )
+			{
+				stitch( outputs );
+				outputPageCount = pageCount;
+			}
+		}
+		catch ( IOException ex )
+		{
+			throw new EngineException(
+					MessageConstants.RENDER_OUTPUT_MERGE_ERROR, ex );
+		}
+		finally
+		{
+			executor.shutdown( );
+			try
+			{
+				executor.awaitTermination( Long.MAX_VALUE,
+						TimeUnit.MILLISECONDS );
+			}
+			catch ( InterruptedException e )
+			{
+				Thread.currentThread( ).interrupt( );
+			}
+			for ( int i = 0; i < outputs.length; i++ )
+			{
+				if ( outputs[i] != null && !outputs[i].delete( ) )
+				{
+					outputs[i].deleteOnExit( );
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param completion
+	 * @return the count of the pages output by the next finished task
+	 * @throws EngineException
+	 */
+	private static long waitForTask( CompletionService<Long> completion )
+			throws EngineException
+	{
+		try
+		{
+			return completion.take( ).get( ).longValue( );
+		}
+		catch ( InterruptedException e )
+		{
+			Thread.currentThread( ).interrupt( );
+			throw new EngineException( MessageConstants.REPORT_RUN_ERROR, e );
+		}
+		catch ( ExecutionException e )
+		{
+			Throwable cause = e.getCause( );
+			if ( cause instanceof EngineException )
+			{
+				throw (EngineException) cause;
+			}
+			if ( cause instanceof Error )
+			{
+				throw (Error) cause;
+			}
+			throw new EngineException( MessageConstants.REPORT_RUN_ERROR, cause );
+		}
+	}
+
+	private File getTempDir( )
+	{
+		String tempDir = null;
+		if ( engine.getConfig( ) != null )
+		{
+			tempDir = engine.getConfig( ).getTempDir( );
+		}
+		if ( tempDir == null )
+		{
+			tempDir = FileUtil.getJavaTmpDir( );
+		}
+		File dir = new File( tempDir );
+		dir.mkdirs( );
+		return dir;
+	}
+
+	/**
+	 * Write the outputs of the ranges to the output of the render options.
+	 *
+	 * @param outputs
+	 * @throws IOException
+	 */
+	private void stitch( File[] outputs ) throws IOException
+	{
+		OutputStream out = renderOptions.getOutputStream( );
+		boolean closeOutput = false;
+		if ( out == null )
+		{
+			String fileName = renderOptions.getOutputFileName( );
+			if ( fileName == null )
+			{
+				fileName = "report." + getOutputFormat( ); //$NON-NLS-1$
+			}
+			File file = new File( fileName );
+			File parent = file.getAbsoluteFile( ).getParentFile( );
+			if ( parent != null )
+			{
+				parent.mkdirs( );
+			}
+			out = new BufferedOutputStream( new FileOutputStream( file ) );
+			closeOutput = true;
+		}
+		try
+		{
+			if ( IRenderOption.OUTPUT_FORMAT_PDF
+					.equalsIgnoreCase( getOutputFormat( ) ) )
+			{
+				PDFPageConcatenator.concatenate( outputs, out );
+			}
+			else
+			{
+				byte[] buffer = new byte[8192];
+				for ( int i = 0; i < outputs.length; i++ )
+				{
+					InputStream in = new FileInputStream( outputs[i] );
+					try
+					{
+						int size = in.read( buffer );
+						while ( size != -1 )
+						{
+							out.write( buffer, 0, size );
+							size = in.read( buffer );
+						}
+					}
+					finally
+					{
+						in.close( );
+					}
+				}
+			}
+			out.flush( );
+		}
+		finally
+		{
+			if ( closeOutput )
+			{
+				out.close( );
+			}
+		}
+	}
+
+	/**
+	 * Split the page sequence into ranges with about the same count of pages.
+	 * The ranges keep the order of the pages.
+	 *
+	 * @param pageSequence
+	 *            the sorted page segments
+	 * @param count
+	 *            the max count of the ranges
+	 * @return the page segments of each range
+	 */
+	static List<List<long[]>> splitPageSequence( List<long[]> pageSequence,
+			int count )
+	{
+		long totalPage = 0;
+		for ( long[] segment : pageSequence )
+		{
+			totalPage += segment[1] - segment[0] + 1;
+		}
+		long rangeSize = ( totalPage + count - 1 ) / count;
+		List<List<long[]>> ranges = new ArrayList<List<long[]>>( );
+		List<long[]> range = new ArrayList<long[]>( );
+		long rangePages = 0;
+		for ( long[] segment : pageSequence )
+		{
+			long start = segment[0];
+			while ( start <= segment[1] )
+			{
+				long end = Math.min( segment[1], start + rangeSize
+						- rangePages - 1 );
+				range.add( new long[]{start, end} );
+				rangePages += end - start + 1;
+				if ( rangePages == rangeSize )
+				{
+					ranges.add( range );
+					range = new ArrayList<long[]>( );
+					rangePages = 0;
+				}
+				start = end + 1;
+			}
+		}
+		if ( !range.isEmpty( ) )
+		{
+			ranges.add( range );
+		}
+		return ranges;
+	}
+
+	/**
+	 * @param range
+	 *            the page segments
+	 * @return the page range string accepted by the render task
+	 */
+	static String formatPageRange( List<long[]> range )
+	{
+		StringBuffer buffer = new StringBuffer( );
+		for ( long[] segment : range )
+		{
+			if ( buffer.length( ) > 0 )
+			{
+				buffer.append( ',' );
+			}
+			buffer.append( segment[0] );
+			if ( segment[1] != segment[0] )
+			{
+				buffer.append( '-' );
+				buffer.append( segment[1] );
+			}
+		}
+		return buffer.toString( );
+	}
+
+	/**
+	 * Renders a range of pages to a temporary file.
+	 */
+	private class RangeRender implements Callable<Long>
+	{
+
+		private List<long[]> range;
+		private File output;
+
+		RangeRender( List<long[]> range, File output )
+		{
+			this.range = range;
+			this.output = output;
+		}
+
+		public Long call( ) throws Exception
+		{
+			// the readers share the archive of the document, but each of
+			// them has its own streams, page hints and design
+			ReportDocumentReader document = (ReportDocumentReader) reportDocument;
+			ReportDocumentReader rangeDocument = new ReportDocumentReader(
+					document.getSystemId( ), engine, document.getArchive( ),
+					true, document.getModuleOptions( ) );
+			OutputStream out = new BufferedOutputStream( new FileOutputStream(
+					output ) );
+			IRenderTask task = null;
+			try
+			{
+				task = engine.createRenderTask( rangeDocument );
+				task.setRenderOption( createRangeOption( out ) );
+				if ( appContext != null )
+				{
+					task.setAppContext( appContext );
+				}
+				task.setPageRange( formatPageRange( range ) );
+				synchronized ( runningTasks )
+				{
+					runningTasks.add( task );
+				}
+				if ( cancelled )
+				{
+					task.cancel( );
+				}
+				task.render( );
+				if ( task.getStatus( ) == IEngineTask.STATUS_CANCELLED
+						&& cancelled )
+				{
+					return Long.valueOf( 0 );
+				}
+				if ( task.getStatus( ) != IEngineTask.STATUS_SUCCEEDED )
+				{
+					// the render task reports the errors without throwing
+					// them, but the output of the range is incomplete
+					List taskErrors = task.getErrors( );
+					throw new EngineException(
+							MessageConstants.RENDER_PAGE_RANGE_ERROR,
+							new Object[]{formatPageRange( range )},
+							taskErrors.isEmpty( ) ? null
+									: (Throwable) taskErrors.get( 0 ) );
+				}
+				return Long.valueOf( task.getPageCount( ) );
+			}
+			finally
+			{
+				if ( task != null )
+				{
+					synchronized ( runningTasks )
+					{
+						runningTasks.remove( task );
+					}
+					synchronized ( errors )
+					{
+						errors.addAll( task.getErrors( ) );
+					}
+					task.close( );
+				}
+				try
+				{
+					out.close( );
+				}
+				catch ( IOException ex )
+				{
+					logger.log( Level.WARNING, ex.getMessage( ), ex );
+				}
+				rangeDocument.close( );
+			}
+		}
+
+		private IRenderOption createRangeOption( OutputStream out )
+		{
+			IRenderOption options = new RenderOption( new HashMap(
+					renderOptions.getOptions( ) ) );
+			options.setOutputFileName( null );
+			options.setOutputStream( out );
+			if ( IRenderOption.OUTPUT_FORMAT_HTML
+					.equalsIgnoreCase( getOutputFormat( ) ) )
+			{
+				HTMLRenderOption htmlOptions = new HTMLRenderOption( options );
+				htmlOptions.setOutputFormat( IRenderOption.OUTPUT_FORMAT_HTML );
+				htmlOptions.setEmbeddable( true );
+				return htmlOptions;
+			}
+			return options;
+		}
+	}
+}
@@ -181,6 +181,14 @@ public class ReportDocumentReader
 		return this.archive;
 	}
 
+	/**
+	 * @return the options used to parse the design in the document
+	 */
+	Map getModuleOptions( )
+	{
+		return moduleOptions;
+	}
+
 	public String getVersion( )
 	{
 		return (String) properties.get( BIRT_ENGINE_VERSION_KEY );
@@ -352,13 +352,53 @@ abstract public class AbstractContent extends AbstractElement
 				}
 				else
 				{
-					computedStyle = new ComputedStyle( this );
+					// share the computed style of the siblings with the same
+					// style class and inline style
+					String styleClass = getStyleClass( );
+					ComputedStyle pcs = (ComputedStyle) ( (IContent) parent )
+							.getComputedStyle( );
+					ComputedStyle cs = pcs.getCachedStyle( styleClass,
+							inlineStyle );
+					if ( cs == null )
+					{
+						IStyle specifiedStyle = ComputedStyle
+								.copyInlineStyle( inlineStyle );
+						if ( specifiedStyle != null )
+						{
+							cs = new ComputedStyle( this,
+									getSpecifiedStyle( specifiedStyle ) );
+							pcs.addCachedStyle( styleClass, specifiedStyle, cs );
+						}
+						else
+						{
+							cs = new ComputedStyle( this );
+						}
+					}
+					computedStyle = cs;
 				}
 			}
 		}
 		return computedStyle;
 	}
 
+	/**
+	 * create the specified style from the style class and the inline style.
+	 * 
+	 * @param inlineStyle
+	 *            the inline style
+	 * @return the specified style
+	 */
+	protected IStyle getSpecifiedStyle( IStyle inlineStyle )
+	{
+		String styleClass = getStyleClass( );
+		if ( styleClass != null )
+		{
+			IStyle classStyle = report.findStyle( styleClass );
+			return new CompositeStyle( classStyle, inlineStyle );
+		}
+		return inlineStyle;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -694,7 +734,7 @@ abstract public class AbstractContent extends AbstractElement
 			IOUtil.writeShort( out, FIELD_HELPTEXT );
 			IOUtil.writeString( out, helpText );
 		}
-		if ( inlineStyle != null )
+		if ( inlineStyle != null && !compactFields )
 		{
 			if( !inlineStyle.isEmpty( ) )
 			{
@@ -702,7 +742,7 @@ abstract public class AbstractContent extends AbstractElement
 				inlineStyle.write( out );
 			}
 		}
-		if ( instanceId != null )
+		if ( instanceId != null && !compactFields )
 		{
 			IOUtil.writeShort( out, FIELD_INSTANCE_ID );
 			IOUtil.writeString( out, instanceId.toString( ) );
@@ -939,6 +979,32 @@ abstract public class AbstractContent extends AbstractElement
 	{
 		writeFields( out );
 	}
+
+	/**
+	 * the inline style and instance id are not written into the fields, they
+	 * are saved by the compact content stream.
+	 */
+	private boolean compactFields;
+
+	/**
+	 * write the fields of the content except the inline style and the
+	 * instance id.
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeCompactContent( DataOutputStream out ) throws IOException
+	{
+		compactFields = true;
+		try
+		{
+			writeContent( out );
+		}
+		finally
+		{
+			compactFields = false;
+		}
+	}
 	
 	/**
 	 * @param iVersion
@@ -240,22 +240,7 @@ public class CellContent extends AbstractContent implements ICellContent
 		{
 			if ( inlineStyle == null || inlineStyle.isEmpty( ) )
 			{
-				String cacheKey = getStyleClass();
-				ITableContent table = ( (IRowContent) parent ).getTable( );
-				int column = getColumn( );
-				if ( column >= 0 && column < table.getColumnCount( ) )
-				{
-					IColumn tblColumn = table.getColumn( column );
-					if ( tblColumn != null )
-					{
-						String columnStyleClass = tblColumn.getStyleClass( );
-						if ( columnStyleClass != null )
-						{
-							cacheKey = cacheKey + columnStyleClass;
-						}
-					}
-				}
-
+				String cacheKey = getStyleCacheKey( );
 				ComputedStyle pcs = (ComputedStyle) ( (IContent) parent )
 						.getComputedStyle( );
 				ComputedStyle cs = pcs.getCachedStyle( cacheKey );
@@ -266,6 +251,31 @@ public class CellContent extends AbstractContent implements ICellContent
 				}
 				computedStyle = cs;
 			}
+			else if ( parent != null )
+			{
+				// share the computed style of the cells with the same style
+				// classes and inline style
+				String cacheKey = getStyleCacheKey( );
+				ComputedStyle pcs = (ComputedStyle) ( (IContent) parent )
+						.getComputedStyle( );
+				ComputedStyle cs = pcs.getCachedStyle( cacheKey, inlineStyle );
+				if ( cs == null )
+				{
+					IStyle specifiedStyle = ComputedStyle
+							.copyInlineStyle( inlineStyle );
+					if ( specifiedStyle != null )
+					{
+						cs = new CellComputedStyle( this,
+								getSpecifiedStyle( specifiedStyle ) );
+						pcs.addCachedStyle( cacheKey, specifiedStyle, cs );
+					}
+					else
+					{
+						cs = new CellComputedStyle( this );
+					}
+				}
+				computedStyle = cs;
+			}
 			else
 			{
 				computedStyle = new CellComputedStyle( this );
@@ -274,6 +284,30 @@ public class CellContent extends AbstractContent implements ICellContent
 		return computedStyle;
 	}
 
+	/**
+	 * the key of the cached computed style, it is made of the style class of
+	 * the cell and its column.
+	 */
+	private String getStyleCacheKey( )
+	{
+		String cacheKey = getStyleClass();
+		ITableContent table = ( (IRowContent) parent ).getTable( );
+		int column = getColumn( );
+		if ( table != null && column >= 0 && column < table.getColumnCount( ) )
+		{
+			IColumn tblColumn = table.getColumn( column );
+			if ( tblColumn != null )
+			{
+				String columnStyleClass = tblColumn.getStyleClass( );
+				if ( columnStyleClass != null )
+				{
+					cacheKey = cacheKey + columnStyleClass;
+				}
+			}
+		}
+		return cacheKey;
+	}
+
 	static final protected short FIELD_ROW_SPAN = 100;
 	static final protected short FIELD_COL_SPAN = 101;
 	static final protected short FIELD_COLUMN = 102;
@@ -19,7 +19,22 @@ public class CellComputedStyle extends ComputedStyle
 
 	public CellComputedStyle( ICellContent elt )
 	{
-		super( elt );
+		this( elt, null );
+	}
+
+	/**
+	 * create the cell's computed style which is resolved from the specified
+	 * style.
+	 * 
+	 * @param elt
+	 *            the cell
+	 * @param specifiedStyle
+	 *            the specified style of the cell, the style of the cell is
+	 *            used if it is null.
+	 */
+	public CellComputedStyle( ICellContent elt, IStyle specifiedStyle )
+	{
+		super( elt, specifiedStyle );
 		IRowContent row = (IRowContent) elt.getParent( );
 		if ( row != null )
 		{
@@ -47,7 +62,7 @@ public class CellComputedStyle extends ComputedStyle
 			pcs = parent.getComputedStyle( );
 		}
 		// get the specified style
-		IStyle s = cell.getStyle( );
+		IStyle s = getSpecifiedStyle( );
 
 		Value sv = s == null ? null : (Value) s.getProperty( index );
 		
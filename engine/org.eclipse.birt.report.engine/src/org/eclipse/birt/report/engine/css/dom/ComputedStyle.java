@@ -11,10 +11,22 @@ import org.w3c.dom.css.CSSValue;
 
 public class ComputedStyle extends AbstractStyle
 {
+	/**
+	 * the max number of the cached styles of the children with inline
+	 * styles.
+	 */
+	static final int MAX_CACHED_INLINE_STYLES = 256;
+
 	Map<String, ComputedStyle> cachedStyles = new HashMap<String, ComputedStyle>( );
+	Map<InlineStyleKey, ComputedStyle> cachedInlineStyles;
 	boolean[] caculated;
 	CSSStylableElement elt;
 	CSSValue[] values;
+	/**
+	 * the specified style used to resolve the properties, it is the style of
+	 * the element if it is null.
+	 */
+	IStyle specifiedStyle;
 
 	public ComputedStyle( CSSStylableElement elt )
 	{
@@ -22,6 +34,31 @@ public class ComputedStyle extends AbstractStyle
 		this.elt = elt;
 	}
 
+	/**
+	 * create the computed style which is resolved from the specified style
+	 * instead of the element's style, so it can be shared by the elements
+	 * with the same specified style.
+	 * 
+	 * @param elt
+	 *            the element
+	 * @param specifiedStyle
+	 *            the specified style of the element
+	 */
+	public ComputedStyle( CSSStylableElement elt, IStyle specifiedStyle )
+	{
+		this( elt );
+		this.specifiedStyle = specifiedStyle;
+	}
+
+	protected IStyle getSpecifiedStyle( )
+	{
+		if ( specifiedStyle != null )
+		{
+			return specifiedStyle;
+		}
+		return elt.getStyle( );
+	}
+
 	public CSSValue getProperty( int index )
 	{
 		if ( values == null )
@@ -53,7 +90,7 @@ public class ComputedStyle extends AbstractStyle
 		}
 
 		// get the specified style
-		IStyle s = elt.getStyle( );
+		IStyle s = getSpecifiedStyle( );
 
 		Value sv = s != null ? (Value) s.getProperty( index ) : null;
 		Value cv = engine.resolveStyle( elt, index, sv, pcs );
@@ -82,4 +119,115 @@ public class ComputedStyle extends AbstractStyle
 	{
 		return (ComputedStyle) cachedStyles.get( styleClass );
 	}
+
+	/**
+	 * cache the computed style of the children with the style class and the
+	 * inline style. The style should be resolved from the inline style
+	 * returned by copyInlineStyle(), so it isn't changed with the children.
+	 * 
+	 * @param styleClass
+	 *            the style class, it may be null.
+	 * @param inlineStyle
+	 *            the copied inline style.
+	 * @param style
+	 *            the computed style.
+	 */
+	public void addCachedStyle( String styleClass, IStyle inlineStyle,
+			ComputedStyle style )
+	{
+		if ( !( inlineStyle instanceof StyleDeclaration ) )
+		{
+			return;
+		}
+		if ( cachedInlineStyles == null )
+		{
+			cachedInlineStyles = new HashMap<InlineStyleKey, ComputedStyle>( );
+		}
+		if ( cachedInlineStyles.size( ) < MAX_CACHED_INLINE_STYLES )
+		{
+			cachedInlineStyles.put( new InlineStyleKey( styleClass,
+					(StyleDeclaration) inlineStyle ), style );
+		}
+	}
+
+	public ComputedStyle getCachedStyle( String styleClass, IStyle inlineStyle )
+	{
+		if ( cachedInlineStyles == null
+				|| !( inlineStyle instanceof StyleDeclaration ) )
+		{
+			return null;
+		}
+		return cachedInlineStyles.get( new InlineStyleKey( styleClass,
+				(StyleDeclaration) inlineStyle ) );
+	}
+
+	/**
+	 * copy the inline style to create a cached computed style.
+	 * 
+	 * @param inlineStyle
+	 *            the inline style of the element
+	 * @return the copied style, or null if the computed style of the inline
+	 *         style can't be cached.
+	 */
+	public static IStyle copyInlineStyle( IStyle inlineStyle )
+	{
+		if ( inlineStyle instanceof StyleDeclaration )
+		{
+			StyleDeclaration style = new StyleDeclaration(
+					(StyleDeclaration) inlineStyle );
+			style.decouple( );
+			return style;
+		}
+		return null;
+	}
+
+	/**
+	 * the key of the cached computed styles of the children with inline
+	 * styles.
+	 */
+	private static class InlineStyleKey
+	{
+
+		String styleClass;
+		StyleDeclaration style;
+		int hashCode;
+
+		InlineStyleKey( String styleClass, StyleDeclaration style )
+		{
+			this.styleClass = styleClass;
+			this.style = style;
+			// the values needn't implement hashCode(), so only the defined
+			// properties are hashed.
+			int hash = styleClass == null ? 0 : styleClass.hashCode( );
+			CSSValue[] values = style.values;
+			for ( int i = 0; i < values.length; i++ )
+			{
+				if ( values[i] != null )
+				{
+					hash = hash * 31 + i;
+				}
+			}
+			this.hashCode = hash;
+		}
+
+		public int hashCode( )
+		{
+			return hashCode;
+		}
+
+		public boolean equals( Object o )
+		{
+			if ( o instanceof InlineStyleKey )
+			{
+				InlineStyleKey key = (InlineStyleKey) o;
+				if ( styleClass == null ? key.styleClass != null : !styleClass
+						.equals( key.styleClass ) )
+				{
+					return false;
+				}
+				return style.equals( key.style );
+			}
+			return false;
+		}
+	}
 }
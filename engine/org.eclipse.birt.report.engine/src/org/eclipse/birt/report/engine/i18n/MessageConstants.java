@@ -108,6 +108,8 @@ public class MessageConstants
     
     public static final String  RENDERTASK_NOT_FINISHED_ERROR = "Error.RenderTaskNotFinishedError";
     public static final String  RENDER_OPTION_ERROR = "Error.RenderOptionError";
+    public static final String  RENDER_OUTPUT_MERGE_ERROR = "Error.RenderOutputMergeError";
+    public static final String  RENDER_PAGE_RANGE_ERROR = "Error.RenderPageRangeError";
     public static final String  REPORT_ARCHIVE_ERROR = "Error.ReportArchiveError";
     public static final String  REPORT_DOCNAME_NOT_SPECIFIED_ERROR = "Error.ReportDocNameNotSpecifiedError";
     public static final String  REPORT_RUN_ERROR = "Error.ReportRunError";
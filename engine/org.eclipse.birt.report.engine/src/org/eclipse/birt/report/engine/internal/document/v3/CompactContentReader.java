@@ -0,0 +1,465 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.report.engine.internal.document.v3;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.eclipse.birt.core.archive.RAInputStream;
+import org.eclipse.birt.report.engine.api.DataID;
+import org.eclipse.birt.report.engine.api.DataSetID;
+import org.eclipse.birt.report.engine.api.InstanceID;
+import org.eclipse.birt.report.engine.content.IContent;
+import org.eclipse.birt.report.engine.content.IStyle;
+import org.eclipse.birt.report.engine.content.impl.ReportContent;
+import org.eclipse.birt.report.engine.css.dom.StyleDeclaration;
+import org.eclipse.birt.report.engine.internal.document.DocumentExtension;
+
+/**
+ * read the records from the compact content stream written by
+ * CompactContentWriter. The decoded blocks are cached, the links are always
+ * read from the stream as they may be updated after the block is saved.
+ */
+class CompactContentReader
+{
+
+	/**
+	 * the max number of the decoded blocks in the cache.
+	 */
+	final static int MAX_CACHED_BLOCKS = 32;
+
+	protected RAInputStream stream;
+
+	protected ReportContent reportContent;
+
+	protected Map<Long, Block> blocks = new LinkedHashMap<Long, Block>( 16,
+			0.75f, true ) {
+
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry( Map.Entry<Long, Block> eldest )
+		{
+			return size( ) > MAX_CACHED_BLOCKS;
+		}
+	};
+
+	/**
+	 * the interned values, indexed by the record which defines them.
+	 */
+	protected HashMap<Long, DataSetID> dataSets = new HashMap<Long, DataSetID>( );
+	protected HashMap<Long, byte[]> styles = new HashMap<Long, byte[]>( );
+
+	CompactContentReader( ReportContent reportContent, RAInputStream stream )
+			throws IOException
+	{
+		this.reportContent = reportContent;
+		this.stream = stream;
+		// the stream flags are not used by the reader, each block tells if it
+		// is compressed.
+		stream.seek( 4 );
+		stream.readInt( );
+	}
+
+	boolean isEmpty( ) throws IOException
+	{
+		return stream.length( ) <= CompactContentWriter.STREAM_HEADER_SIZE;
+	}
+
+	/**
+	 * @return the index of the report record
+	 */
+	long getReport( )
+	{
+		return CompactContentWriter.getIndex(
+				CompactContentWriter.STREAM_HEADER_SIZE, 0 );
+	}
+
+	/**
+	 * @return the index of the first record after the block of the record.
+	 */
+	long getNextBlock( long index ) throws IOException
+	{
+		return CompactContentWriter.getIndex( getRecord( index ).block.end, 0 );
+	}
+
+	Record getRecord( long index ) throws IOException
+	{
+		if ( index < 0 )
+		{
+			throw new IOException( "Invalid content offset:" + index );
+		}
+		Block block = getBlock( CompactContentWriter.getBlockOffset( index ) );
+		int record = CompactContentWriter.getRecordIndex( index );
+		if ( record >= block.records.length )
+		{
+			throw new IOException( "Invalid content offset:" + index );
+		}
+		return block.records[record];
+	}
+
+	/**
+	 * read the links of the record from the stream.
+	 */
+	DocumentExtension readDocumentExtension( long index ) throws IOException
+	{
+		if ( index == -1 )
+		{
+			return null;
+		}
+		Record record = getRecord( index );
+		stream.seek( record.block.offset
+				+ CompactContentWriter.BLOCK_HEADER_SIZE
+				+ CompactContentWriter.getRecordIndex( index )
+				* CompactContentWriter.LINK_ENTRY_SIZE );
+		long next = stream.readLong( );
+		long child = stream.readLong( );
+		DocumentExtension docExt = new DocumentExtension( index );
+		docExt.setParent( record.parent );
+		docExt.setNext( next );
+		docExt.setFirstChild( child );
+		return docExt;
+	}
+
+	/**
+	 * set the instance id and inline style saved in the record to the
+	 * content.
+	 */
+	void readSharedFields( Record record, IContent content )
+			throws IOException
+	{
+		int flags = record.flags;
+		if ( ( flags & CompactContentWriter.RECORD_INSTANCE_ID ) != 0 )
+		{
+			DataID dataId = null;
+			if ( record.dataSet != -1 )
+			{
+				dataId = new DataID( getDataSet( record.dataSet ),
+						record.rowId );
+			}
+			content.setInstanceID( new InstanceID( null, record.uniqueId,
+					record.designId, dataId ) );
+		}
+		else if ( ( flags & CompactContentWriter.RECORD_INSTANCE_STRING ) != 0 )
+		{
+			content.setInstanceID( InstanceID.parse( record.instanceId ) );
+		}
+		if ( record.style != -1 )
+		{
+			byte[] value = getStyle( record.style );
+			IStyle style = new StyleDeclaration( reportContent.getCSSEngine( ) );
+			style.read( new DataInputStream( new ByteArrayInputStream( value ) ) );
+			if ( !style.isEmpty( ) )
+			{
+				content.setInlineStyle( style );
+			}
+		}
+	}
+
+	private DataSetID getDataSet( long index ) throws IOException
+	{
+		Long key = Long.valueOf( index );
+		DataSetID dataSet = dataSets.get( key );
+		if ( dataSet == null )
+		{
+			Record record = getRecord( index );
+			if ( record.dataSetId == null )
+			{
+				throw new IOException( "Invalid data set reference:" + index );
+			}
+			dataSet = DataSetID.parse( record.dataSetId );
+			if ( dataSets.size( ) >= CompactContentWriter.MAX_INTERNED_VALUES )
+			{
+				dataSets.clear( );
+			}
+			dataSets.put( key, dataSet );
+		}
+		return dataSet;
+	}
+
+	private byte[] getStyle( long index ) throws IOException
+	{
+		Long key = Long.valueOf( index );
+		byte[] style = styles.get( key );
+		if ( style == null )
+		{
+			Record record = getRecord( index );
+			if ( record.styleLength == -1 )
+			{
+				throw new IOException( "Invalid style reference:" + index );
+			}
+			style = new byte[record.styleLength];
+			System.arraycopy( record.block.data, record.styleStart, style, 0,
+					record.styleLength );
+			if ( styles.size( ) >= CompactContentWriter.MAX_INTERNED_VALUES )
+			{
+				styles.clear( );
+			}
+			styles.put( key, style );
+		}
+		return style;
+	}
+
+	private Block getBlock( long offset ) throws IOException
+	{
+		Long key = Long.valueOf( offset );
+		Block block = blocks.get( key );
+		if ( block == null )
+		{
+			if ( offset + CompactContentWriter.BLOCK_HEADER_SIZE > stream
+					.length( ) )
+			{
+				// the block may be saved after the stream is opened
+				stream.refresh( );
+				if ( offset + CompactContentWriter.BLOCK_HEADER_SIZE > stream
+						.length( ) )
+				{
+					throw new IOException( "Invalid block offset:" + offset );
+				}
+			}
+			block = readBlock( offset );
+			blocks.put( key, block );
+		}
+		return block;
+	}
+
+	private Block readBlock( long offset ) throws IOException
+	{
+		stream.seek( offset );
+		int count = stream.readInt( );
+		int flags = stream.readInt( );
+		int rawLength = stream.readInt( );
+		int storedLength = stream.readInt( );
+		if ( count <= 0 || count > CompactContentWriter.MAX_BLOCK_RECORDS
+				|| rawLength < 0 || storedLength < 0 )
+		{
+			throw new IOException( "Invalid block at offset:" + offset );
+		}
+		long dataOffset = offset + CompactContentWriter.BLOCK_HEADER_SIZE
+				+ count * CompactContentWriter.LINK_ENTRY_SIZE;
+		byte[] stored = new byte[storedLength];
+		stream.seek( dataOffset );
+		stream.readFully( stored, 0, storedLength );
+
+		Block block = new Block( );
+		block.offset = offset;
+		block.end = dataOffset + storedLength;
+		if ( ( flags & CompactContentWriter.BLOCK_DEFLATED ) != 0 )
+		{
+			block.data = inflate( stored, rawLength, offset );
+		}
+		else
+		{
+			block.data = stored;
+		}
+		block.records = new Record[count];
+
+		BlockInput in = new BlockInput( block.data, 0, block.data.length );
+		long uniqueId = 0;
+		long rowId = 0;
+		for ( int i = 0; i < count; i++ )
+		{
+			long index = CompactContentWriter.getIndex( offset, i );
+			int length = (int) in.readVarLong( );
+			BlockInput rin = new BlockInput( block.data, in.pos, length );
+			in.skip( length );
+
+			Record record = new Record( );
+			record.block = block;
+			long parent = rin.readSignedVarLong( );
+			record.parent = parent == 0 ? -1 : index - parent;
+			record.type = (int) rin.readVarLong( );
+			int recordFlags = (int) rin.readVarLong( );
+			record.flags = recordFlags;
+			if ( ( recordFlags & CompactContentWriter.RECORD_INSTANCE_ID ) != 0 )
+			{
+				uniqueId += rin.readSignedVarLong( );
+				record.uniqueId = uniqueId;
+				record.designId = rin.readSignedVarLong( );
+				if ( ( recordFlags & CompactContentWriter.RECORD_DATA_SET_DEFINITION ) != 0 )
+				{
+					record.dataSetId = rin.readString( );
+					record.dataSet = index;
+				}
+				else if ( ( recordFlags & CompactContentWriter.RECORD_DATA_SET_REFERENCE ) != 0 )
+				{
+					record.dataSet = index - rin.readVarLong( );
+				}
+				if ( record.dataSet != -1 )
+				{
+					rowId += rin.readSignedVarLong( );
+					record.rowId = rowId;
+				}
+			}
+			else if ( ( recordFlags & CompactContentWriter.RECORD_INSTANCE_STRING ) != 0 )
+			{
+				record.instanceId = rin.readString( );
+			}
+			if ( ( recordFlags & CompactContentWriter.RECORD_STYLE_DEFINITION ) != 0 )
+			{
+				record.styleLength = (int) rin.readVarLong( );
+				record.styleStart = rin.pos;
+				rin.skip( record.styleLength );
+				record.style = index;
+			}
+			else if ( ( recordFlags & CompactContentWriter.RECORD_STYLE_REFERENCE ) != 0 )
+			{
+				record.style = index - rin.readVarLong( );
+			}
+			record.payloadStart = rin.pos;
+			record.payloadLength = rin.end - rin.pos;
+			block.records[i] = record;
+		}
+		return block;
+	}
+
+	private byte[] inflate( byte[] stored, int rawLength, long offset )
+			throws IOException
+	{
+		Inflater inflater = new Inflater( );
+		try
+		{
+			inflater.setInput( stored );
+			byte[] data = new byte[rawLength];
+			int length = inflater.inflate( data );
+			if ( length != rawLength || !inflater.finished( ) )
+			{
+				throw new IOException( "Invalid block at offset:" + offset );
+			}
+			return data;
+		}
+		catch ( DataFormatException ex )
+		{
+			IOException ioe = new IOException( "Invalid block at offset:"
+					+ offset );
+			ioe.initCause( ex );
+			throw ioe;
+		}
+		finally
+		{
+			inflater.end( );
+		}
+	}
+
+	/**
+	 * a decoded block of the stream.
+	 */
+	static class Block
+	{
+
+		long offset;
+		long end;
+		byte[] data;
+		Record[] records;
+	}
+
+	/**
+	 * a record in the block.
+	 */
+	static class Record
+	{
+
+		Block block;
+		long parent;
+		int type;
+		int flags;
+		long uniqueId;
+		long designId;
+		long dataSet = -1;
+		String dataSetId;
+		long rowId = -1;
+		String instanceId;
+		long style = -1;
+		int styleStart;
+		int styleLength = -1;
+		int payloadStart;
+		int payloadLength;
+
+		/**
+		 * @return the stream of the fields saved by the content itself.
+		 */
+		DataInputStream getPayload( )
+		{
+			return new DataInputStream( new ByteArrayInputStream( block.data,
+					payloadStart, payloadLength ) );
+		}
+	}
+
+	/**
+	 * read the varint encoded values from a range of the block.
+	 */
+	private static class BlockInput
+	{
+
+		byte[] data;
+		int pos;
+		int end;
+
+		BlockInput( byte[] data, int pos, int length ) throws IOException
+		{
+			if ( length < 0 || pos + length > data.length )
+			{
+				throw new IOException( "Invalid record length:" + length );
+			}
+			this.data = data;
+			this.pos = pos;
+			this.end = pos + length;
+		}
+
+		long readVarLong( ) throws IOException
+		{
+			long value = 0;
+			for ( int shift = 0; shift < 64; shift += 7 )
+			{
+				if ( pos >= end )
+				{
+					break;
+				}
+				int b = data[pos++] & 0xFF;
+				value |= (long) ( b & 0x7F ) << shift;
+				if ( ( b & 0x80 ) == 0 )
+				{
+					return value;
+				}
+			}
+			throw new IOException( "Invalid varint at position:" + pos );
+		}
+
+		long readSignedVarLong( ) throws IOException
+		{
+			long value = readVarLong( );
+			return ( value >>> 1 ) ^ -( value & 1 );
+		}
+
+		String readString( ) throws IOException
+		{
+			int length = (int) readVarLong( );
+			int start = pos;
+			skip( length );
+			return new String( data, start, length, "UTF-8" ); //$NON-NLS-1$
+		}
+
+		void skip( int length ) throws IOException
+		{
+			if ( length < 0 || pos + length > end )
+			{
+				throw new IOException( "Invalid record length:" + length );
+			}
+			pos += length;
+		}
+	}
+}
@@ -0,0 +1,533 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.report.engine.internal.document.v3;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.Deflater;
+
+import org.eclipse.birt.core.archive.RAOutputStream;
+import org.eclipse.birt.report.engine.api.DataID;
+import org.eclipse.birt.report.engine.api.DataSetID;
+import org.eclipse.birt.report.engine.api.InstanceID;
+import org.eclipse.birt.report.engine.content.IContent;
+import org.eclipse.birt.report.engine.content.IReportContent;
+import org.eclipse.birt.report.engine.content.IStyle;
+import org.eclipse.birt.report.engine.content.impl.AbstractContent;
+import org.eclipse.birt.report.engine.internal.document.DocumentExtension;
+
+/**
+ * write the contents into the compact content stream (VERSION_2).
+ *
+ * The stream starts with the version and the stream flags, followed by the
+ * content blocks. Each block is saved as:
+ *
+ * <pre>
+ * block header: record count, block flags, raw length, stored length
+ * links: next, first child of each record (fixed size, patched in place)
+ * records: the records, deflated if the block is compressed
+ * </pre>
+ *
+ * The index of a content is the offset of its block shifted by INDEX_BITS
+ * plus the position of the record in the block, so the indexes keep the
+ * order of the contents in the stream.
+ *
+ * Each record is saved as its length and the parent index, content type and
+ * flags, followed by the instance id, the inline style and the other fields
+ * of the content. The integers are varint encoded, the unique id and row id
+ * are delta encoded against the previous record of the block, and the inline
+ * styles and data set ids are saved once and then referred to by the index of
+ * the record which defines them.
+ */
+class CompactContentWriter
+{
+
+	final static int VERSION_2 = 2;
+
+	/**
+	 * the stream flags
+	 */
+	final static int STREAM_COMPRESSED = 1;
+
+	/**
+	 * the block flags
+	 */
+	final static int BLOCK_DEFLATED = 1;
+
+	/**
+	 * the record flags
+	 */
+	final static int RECORD_INSTANCE_ID = 1;
+	final static int RECORD_DATA_SET_DEFINITION = 2;
+	final static int RECORD_DATA_SET_REFERENCE = 4;
+	final static int RECORD_INSTANCE_STRING = 8;
+	final static int RECORD_STYLE_DEFINITION = 16;
+	final static int RECORD_STYLE_REFERENCE = 32;
+
+	final static int STREAM_HEADER_SIZE = 8;
+	final static int BLOCK_HEADER_SIZE = 16;
+	final static int LINK_ENTRY_SIZE = 16;
+	final static int OFFSET_NEXT = 0;
+	final static int OFFSET_CHILD = 8;
+
+	final static int INDEX_BITS = 12;
+	final static int MAX_BLOCK_RECORDS = 1 << INDEX_BITS;
+	final static int MAX_BLOCK_SIZE = 64 * 1024;
+
+	/**
+	 * the max number of the interned values of each kind, the other values
+	 * are saved in the records directly.
+	 */
+	final static int MAX_INTERNED_VALUES = 4096;
+
+	protected RAOutputStream stream;
+
+	protected boolean compressed;
+
+	protected Deflater deflater;
+
+	/**
+	 * the offset of the current block in the stream.
+	 */
+	protected long blockOffset;
+
+	/**
+	 * the records count of the current block.
+	 */
+	protected int recordCount;
+
+	/**
+	 * the links of the records in the current block.
+	 */
+	protected long[] links = new long[MAX_BLOCK_RECORDS * 2];
+
+	/**
+	 * the records of the current block.
+	 */
+	protected ByteArrayOutputStream records = new ByteArrayOutputStream( );
+
+	/**
+	 * the unique id and row id of the previous record in the current block.
+	 */
+	protected long lastUniqueId;
+	protected long lastRowId;
+
+	/**
+	 * the last content which has no parent.
+	 */
+	protected long rootOffset = -1;
+
+	protected HashMap<String, Long> dataSets = new HashMap<String, Long>( );
+	protected HashMap<StyleKey, Long> styles = new HashMap<StyleKey, Long>( );
+
+	private ByteArrayOutputStream buffer = new ByteArrayOutputStream( );
+	private DataOutputStream bufferStream = new DataOutputStream( buffer );
+	private ByteArrayOutputStream styleBuffer = new ByteArrayOutputStream( );
+	private DataOutputStream styleStream = new DataOutputStream( styleBuffer );
+
+	CompactContentWriter( RAOutputStream stream, boolean compressed )
+			throws IOException
+	{
+		this.stream = stream;
+		this.compressed = compressed;
+		if ( compressed )
+		{
+			deflater = new Deflater( Deflater.BEST_SPEED );
+		}
+		stream.seek( 0 );
+		stream.writeInt( VERSION_2 );
+		stream.writeInt( compressed ? STREAM_COMPRESSED : 0 );
+		blockOffset = STREAM_HEADER_SIZE;
+	}
+
+	/**
+	 * save the current block and release the resources. The stream itself is
+	 * closed by the caller.
+	 *
+	 * @throws IOException
+	 */
+	void close( ) throws IOException
+	{
+		try
+		{
+			flushBlock( );
+		}
+		finally
+		{
+			if ( deflater != null )
+			{
+				deflater.end( );
+				deflater = null;
+			}
+		}
+	}
+
+	/**
+	 * save the current block into the stream, so the contents written so far
+	 * can be read from the stream.
+	 *
+	 * @throws IOException
+	 */
+	void flush( ) throws IOException
+	{
+		flushBlock( );
+		stream.flush( );
+	}
+
+	/**
+	 * @return the index of the next content.
+	 */
+	long getOffset( )
+	{
+		return getIndex( blockOffset, recordCount );
+	}
+
+	long writeReport( IReportContent report ) throws IOException
+	{
+		buffer.reset( );
+		writeVarLong( bufferStream, 0 );
+		writeVarLong( bufferStream, IContent.REPORT_CONTENT );
+		writeVarLong( bufferStream, 0 );
+		report.writeContent( bufferStream );
+		addRecord( -1 );
+		// the report is saved in its own block, so the first content starts
+		// from the next block.
+		flushBlock( );
+		return getOffset( );
+	}
+
+	long writeContent( IContent content ) throws IOException
+	{
+		long index = getOffset( );
+		DocumentExtension docExt = new DocumentExtension( index );
+		InstanceID instanceId = content.getInstanceID( );
+		docExt.setContentId( instanceId.getUniqueID( ) );
+		content.setExtension( IContent.DOCUMENT_EXTENSION, docExt );
+
+		long previous = -1;
+		IContent pContent = (IContent) content.getParent( );
+		DocumentExtension pDocExt = null;
+		if ( pContent != null )
+		{
+			pDocExt = (DocumentExtension) pContent
+					.getExtension( IContent.DOCUMENT_EXTENSION );
+		}
+		if ( pDocExt != null )
+		{
+			pDocExt.add( docExt );
+			previous = docExt.getPrevious( );
+		}
+		else
+		{
+			previous = rootOffset;
+			rootOffset = index;
+		}
+
+		buffer.reset( );
+		long parent = docExt.getParent( );
+		writeSignedVarLong( bufferStream, parent == -1 ? 0 : index - parent );
+		writeVarLong( bufferStream, content.getContentType( ) );
+		if ( content instanceof AbstractContent )
+		{
+			writeSharedFields( index, content );
+			( (AbstractContent) content ).writeCompactContent( bufferStream );
+		}
+		else
+		{
+			writeVarLong( bufferStream, 0 );
+			content.writeContent( bufferStream );
+		}
+		addRecord( docExt.getNext( ) );
+
+		// update the links refer to this content
+		if ( previous == -1 )
+		{
+			if ( parent != -1 )
+			{
+				updateLink( parent, OFFSET_CHILD, index );
+			}
+		}
+		else
+		{
+			updateLink( previous, OFFSET_NEXT, index );
+		}
+
+		if ( recordCount >= MAX_BLOCK_RECORDS
+				|| records.size( ) >= MAX_BLOCK_SIZE )
+		{
+			flushBlock( );
+		}
+		return index;
+	}
+
+	/**
+	 * write the record flags, the instance id and the inline style of the
+	 * content.
+	 */
+	private void writeSharedFields( long index, IContent content )
+			throws IOException
+	{
+		int flags = 0;
+		InstanceID instanceId = content.getInstanceID( );
+		DataID dataId = null;
+		DataSetID dataSet = null;
+		String dataSetId = null;
+		Long dataSetIndex = null;
+		if ( instanceId != null )
+		{
+			dataId = instanceId.getDataID( );
+			if ( dataId == null )
+			{
+				flags |= RECORD_INSTANCE_ID;
+			}
+			else
+			{
+				dataSet = dataId.getDataSetID( );
+				if ( dataSet != null && dataId.getRowID( ) != -1 )
+				{
+					flags |= RECORD_INSTANCE_ID;
+					dataSetId = dataSet.toString( );
+					dataSetIndex = dataSets.get( dataSetId );
+					if ( dataSetIndex != null )
+					{
+						flags |= RECORD_DATA_SET_REFERENCE;
+					}
+					else
+					{
+						flags |= RECORD_DATA_SET_DEFINITION;
+						if ( dataSets.size( ) < MAX_INTERNED_VALUES )
+						{
+							dataSets.put( dataSetId, Long.valueOf( index ) );
+						}
+					}
+				}
+				else
+				{
+					// keep the rare forms of the data id as they are
+					flags |= RECORD_INSTANCE_STRING;
+				}
+			}
+		}
+
+		StyleKey style = null;
+		Long styleIndex = null;
+		IStyle inlineStyle = content.getInlineStyle( );
+		if ( inlineStyle != null && !inlineStyle.isEmpty( ) )
+		{
+			styleBuffer.reset( );
+			inlineStyle.write( styleStream );
+			styleStream.flush( );
+			style = new StyleKey( styleBuffer.toByteArray( ) );
+			styleIndex = styles.get( style );
+			if ( styleIndex != null )
+			{
+				flags |= RECORD_STYLE_REFERENCE;
+			}
+			else
+			{
+				flags |= RECORD_STYLE_DEFINITION;
+				if ( styles.size( ) < MAX_INTERNED_VALUES )
+				{
+					styles.put( style, Long.valueOf( index ) );
+				}
+			}
+		}
+
+		writeVarLong( bufferStream, flags );
+		if ( ( flags & RECORD_INSTANCE_ID ) != 0 )
+		{
+			long uid = instanceId.getUniqueID( );
+			writeSignedVarLong( bufferStream, uid - lastUniqueId );
+			lastUniqueId = uid;
+			writeSignedVarLong( bufferStream, instanceId.getComponentID( ) );
+			if ( ( flags & RECORD_DATA_SET_DEFINITION ) != 0 )
+			{
+				writeString( bufferStream, dataSetId );
+			}
+			else if ( ( flags & RECORD_DATA_SET_REFERENCE ) != 0 )
+			{
+				writeVarLong( bufferStream, index - dataSetIndex.longValue( ) );
+			}
+			if ( dataSetId != null )
+			{
+				long rowId = dataId.getRowID( );
+				writeSignedVarLong( bufferStream, rowId - lastRowId );
+				lastRowId = rowId;
+			}
+		}
+		else if ( ( flags & RECORD_INSTANCE_STRING ) != 0 )
+		{
+			writeString( bufferStream, instanceId.toString( ) );
+		}
+		if ( ( flags & RECORD_STYLE_DEFINITION ) != 0 )
+		{
+			writeVarLong( bufferStream, style.value.length );
+			bufferStream.write( style.value );
+		}
+		else if ( ( flags & RECORD_STYLE_REFERENCE ) != 0 )
+		{
+			writeVarLong( bufferStream, index - styleIndex.longValue( ) );
+		}
+	}
+
+	/**
+	 * append the record in the buffer to the current block.
+	 */
+	private void addRecord( long next ) throws IOException
+	{
+		bufferStream.flush( );
+		writeVarLong( records, buffer.size( ) );
+		buffer.writeTo( records );
+		links[recordCount * 2] = next;
+		links[recordCount * 2 + 1] = -1;
+		recordCount++;
+	}
+
+	/**
+	 * update the link of a record, which may be in the current block or in
+	 * the saved blocks.
+	 */
+	private void updateLink( long index, int field, long value )
+			throws IOException
+	{
+		long offset = getBlockOffset( index );
+		int record = getRecordIndex( index );
+		if ( offset == blockOffset )
+		{
+			links[record * 2 + field / 8] = value;
+		}
+		else
+		{
+			stream.seek( offset + BLOCK_HEADER_SIZE + record
+					* LINK_ENTRY_SIZE + field );
+			stream.writeLong( value );
+		}
+	}
+
+	private void flushBlock( ) throws IOException
+	{
+		if ( recordCount == 0 )
+		{
+			return;
+		}
+		byte[] values = records.toByteArray( );
+		byte[] stored = values;
+		int storedLength = values.length;
+		int flags = 0;
+		if ( compressed )
+		{
+			byte[] deflated = new byte[values.length];
+			deflater.reset( );
+			deflater.setInput( values );
+			deflater.finish( );
+			int length = deflater.deflate( deflated );
+			// keep the raw records if they can't be compressed
+			if ( deflater.finished( ) && length < values.length )
+			{
+				stored = deflated;
+				storedLength = length;
+				flags |= BLOCK_DEFLATED;
+			}
+		}
+		stream.seek( blockOffset );
+		stream.writeInt( recordCount );
+		stream.writeInt( flags );
+		stream.writeInt( values.length );
+		stream.writeInt( storedLength );
+		for ( int i = 0; i < recordCount * 2; i++ )
+		{
+			stream.writeLong( links[i] );
+		}
+		stream.write( stored, 0, storedLength );
+
+		blockOffset += BLOCK_HEADER_SIZE + recordCount * LINK_ENTRY_SIZE
+				+ storedLength;
+		recordCount = 0;
+		records.reset( );
+		lastUniqueId = 0;
+		lastRowId = 0;
+	}
+
+	static long getIndex( long blockOffset, int record )
+	{
+		return ( blockOffset << INDEX_BITS ) | record;
+	}
+
+	static long getBlockOffset( long index )
+	{
+		return index >>> INDEX_BITS;
+	}
+
+	static int getRecordIndex( long index )
+	{
+		return (int) ( index & ( MAX_BLOCK_RECORDS - 1 ) );
+	}
+
+	static void writeVarLong( OutputStream out, long value )
+			throws IOException
+	{
+		while ( ( value & ~0x7FL ) != 0 )
+		{
+			out.write( (int) ( ( value & 0x7F ) | 0x80 ) );
+			value >>>= 7;
+		}
+		out.write( (int) value );
+	}
+
+	static void writeSignedVarLong( OutputStream out, long value )
+			throws IOException
+	{
+		writeVarLong( out, ( value << 1 ) ^ ( value >> 63 ) );
+	}
+
+	static void writeString( OutputStream out, String value )
+			throws IOException
+	{
+		byte[] bytes = value.getBytes( "UTF-8" ); //$NON-NLS-1$
+		writeVarLong( out, bytes.length );
+		out.write( bytes );
+	}
+
+	/**
+	 * the saved bytes of an inline style.
+	 */
+	private static class StyleKey
+	{
+
+		byte[] value;
+		int hashCode;
+
+		StyleKey( byte[] value )
+		{
+			this.value = value;
+			this.hashCode = Arrays.hashCode( value );
+		}
+
+		public int hashCode( )
+		{
+			return hashCode;
+		}
+
+		public boolean equals( Object o )
+		{
+			if ( o instanceof StyleKey )
+			{
+				return Arrays.equals( value, ( (StyleKey) o ).value );
+			}
+			return false;
+		}
+	}
+}
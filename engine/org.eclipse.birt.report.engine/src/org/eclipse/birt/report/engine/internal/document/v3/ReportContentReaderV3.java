@@ -43,6 +43,7 @@ public class ReportContentReaderV3
 
 	protected final static int VERSION_0 = 0;
 	protected final static int VERSION_1 = 1;
+	protected final static int VERSION_2 = 2;
 	protected final static int VERSION_SIZE = 4;
 
 	/**
@@ -55,6 +56,11 @@ public class ReportContentReaderV3
 	protected boolean isEmpty = false;
 
 	protected ClassLoader loader;
+
+	/**
+	 * the reader of the compact content stream (VERSION_2)
+	 */
+	protected CompactContentReader compactReader;
 	
 	public ReportContentReaderV3( ReportContent reportContent,
 			RAInputStream stream, ClassLoader loader ) throws IOException
@@ -82,6 +88,19 @@ public class ReportContentReaderV3
 					loadReport( );
 				}
 			}
+			else if ( version == VERSION_2 )
+			{
+				compactReader = new CompactContentReader( reportContent,
+						stream );
+				if ( compactReader.isEmpty( ) )
+				{
+					isEmpty = true;
+				}
+				else
+				{
+					loadReportV2( );
+				}
+			}
 			else
 			{
 				throw new IOException( "unrecognized stream version!" );
@@ -140,6 +159,18 @@ public class ReportContentReaderV3
 		}
 	}
 
+	private void loadReportV2( ) throws IOException
+	{
+		long index = compactReader.getReport( );
+		CompactContentReader.Record record = compactReader.getRecord( index );
+		if ( record.type == IContent.REPORT_CONTENT )
+		{
+			reportContent.readContent( record.getPayload( ), loader );
+		}
+		rootOffset = compactReader.getNextBlock( index );
+		offset = rootOffset;
+	}
+
 	/**
 	 * read the content object from the input stream.
 	 * 
@@ -165,8 +196,20 @@ public class ReportContentReaderV3
 		stream.readFully( buffer, 0, size );
 		DataInputStream oi = new DataInputStream( new ByteArrayInputStream(
 				buffer ) );
-		AbstractContent object = null;
 		int contentType = IOUtil.readInt( oi );
+		AbstractContent object = createContent( contentType, offset );
+		object.setVersion( version );
+		object.readContent( oi, loader );
+		return object;
+	}
+
+	/**
+	 * create an empty content object of the content type.
+	 */
+	protected AbstractContent createContent( int contentType, long offset )
+			throws IOException
+	{
+		AbstractContent object = null;
 		switch ( contentType )
 		{
 			case IContent.CELL_CONTENT :
@@ -222,8 +265,6 @@ public class ReportContentReaderV3
 				throw new IOException( "Found invalid contentType"
 						+ contentType + " at object offset " + offset );
 		}
-		object.setVersion( version );
-		object.readContent( oi, loader );
 		return object;
 	}
 
@@ -287,6 +328,10 @@ public class ReportContentReaderV3
 		{
 			return readContentV1( index );
 		}
+		else if ( VERSION_2 == version )
+		{
+			return readContentV2( index );
+		}
 		else
 		{
 			throw new IOException( "unrecognized stream version!" );
@@ -319,6 +364,19 @@ public class ReportContentReaderV3
 		return content;
 	}
 
+	private IContent readContentV2( long index ) throws IOException
+	{
+		CompactContentReader.Record record = compactReader.getRecord( index );
+		AbstractContent content = createContent( record.type, index );
+		// the fields of the record are saved as VERSION_1
+		content.setVersion( VERSION_1 );
+		content.readContent( record.getPayload( ), loader );
+		compactReader.readSharedFields( record, content );
+		content.setExtension( IContent.DOCUMENT_EXTENSION, compactReader
+				.readDocumentExtension( index ) );
+		return content;
+	}
+
 	private DocumentExtension readDocumentExtension( long index )
 			throws IOException
 	{
@@ -330,6 +388,10 @@ public class ReportContentReaderV3
 		{
 			return readDocumentExtensionV1( index );
 		}
+		else if ( VERSION_2 == version )
+		{
+			return compactReader.readDocumentExtension( index );
+		}
 		else
 		{
 			throw new IOException( "unrecognized stream version!" );
@@ -48,12 +48,45 @@ public class ReportContentWriterV3 implements IReportContentWriter
 	 */
 	protected long rootOffset;
 
+	/**
+	 * the writer of the compact content stream, it is null if the contents
+	 * are saved in VERSION_1.
+	 */
+	protected CompactContentWriter compactWriter;
+
 	public ReportContentWriterV3( IDocArchiveWriter writer, String name )
 			throws IOException
+	{
+		this( writer, name, false, false );
+	}
+
+	/**
+	 * create the content writer.
+	 * 
+	 * @param writer
+	 *            the document archive
+	 * @param name
+	 *            the stream name
+	 * @param compact
+	 *            save the contents in the compact stream (VERSION_2), which
+	 *            can't be read by the engines before it.
+	 * @param compressed
+	 *            compress the blocks of the compact stream.
+	 * @throws IOException
+	 */
+	public ReportContentWriterV3( IDocArchiveWriter writer, String name,
+			boolean compact, boolean compressed ) throws IOException
 	{
 		cntStream = writer.createRandomAccessStream( name );
-		// write the version information
-		cntStream.writeInt( VERSION_1 );
+		if ( compact )
+		{
+			compactWriter = new CompactContentWriter( cntStream, compressed );
+		}
+		else
+		{
+			// write the version information
+			cntStream.writeInt( VERSION_1 );
+		}
 		cntOffset = 0;
 		rootOffset = -1;
 	}
@@ -65,6 +98,18 @@ public class ReportContentWriterV3 implements IReportContentWriter
 	{
 		if ( cntStream != null )
 		{
+			if ( compactWriter != null )
+			{
+				try
+				{
+					compactWriter.close( );
+				}
+				catch ( Exception ex )
+				{
+					logger.log( Level.SEVERE, "Failed in save the contents", ex );
+				}
+				compactWriter = null;
+			}
 			try
 			{
 				cntStream.close( );
@@ -84,9 +129,26 @@ public class ReportContentWriterV3 implements IReportContentWriter
 	 */
 	public long getOffset( )
 	{
+		if ( compactWriter != null )
+		{
+			return compactWriter.getOffset( );
+		}
 		return cntOffset;
 	}
 
+	/**
+	 * make the contents written so far readable from the stream.
+	 * 
+	 * @throws IOException
+	 */
+	public void flush( ) throws IOException
+	{
+		if ( compactWriter != null )
+		{
+			compactWriter.flush( );
+		}
+	}
+
 	/**
 	 * buffer used to save the report content.
 	 */
@@ -111,6 +173,10 @@ public class ReportContentWriterV3 implements IReportContentWriter
 	 */
 	public long writeContent( IContent content ) throws IOException
 	{
+		if ( compactWriter != null )
+		{
+			return compactWriter.writeContent( content );
+		}
 		//write the index into the stream
 		updateIndex(content);
 		
@@ -137,6 +203,10 @@ public class ReportContentWriterV3 implements IReportContentWriter
 
 	public long writeReport( IReportContent report ) throws IOException
 	{
+		if ( compactWriter != null )
+		{
+			return compactWriter.writeReport( report );
+		}
 		cntStream.seek( VERSION_SIZE );
 		cntStream.writeLong( -1 ); // parent
 		cntStream.writeLong( -1 ); // next
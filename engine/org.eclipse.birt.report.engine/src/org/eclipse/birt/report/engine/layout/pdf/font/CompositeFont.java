@@ -53,12 +53,19 @@ public class CompositeFont
 	 * the index for internal fonts, in the same order with usedFonts
 	 */
 	CharSegment[][] fontsIndex;
+	/**
+	 * the tested characters saved in the font index, in the same order with
+	 * usedFonts. It is only used when not fullIndexed.
+	 */
+	FontIndex.CharsEntry[] charsIndex;
 	/**
 	 * base fonts used to test if the char exits, in the same order with
-	 * usedFonts
+	 * usedFonts. The fonts are created when a character is not in charsIndex.
 	 */
 	BaseFont[] baseFonts;
 
+	FontMappingManager manager;
+
 	/**
 	 * index of all the chars in the composite font. It is only used when
 	 * fullIndexed.
@@ -73,6 +80,7 @@ public class CompositeFont
 		{
 			this.parent = parentManager.getCompositeFont( config.fontName );
 		}
+		this.manager = manager;
 		this.config = config;
 		this.specialCharacters = config.getSpecialCharacters( );
 		// create the fonts follows the sequence
@@ -97,6 +105,12 @@ public class CompositeFont
 		{
 			fontsIndex[i] = config.getCharSegment( usedFonts[i] );
 			if ( fontsIndex[i] == null )
+			{
+				// use the characters saved in the font index, so the font
+				// needn't be loaded to test the characters.
+				fontsIndex[i] = manager.getCharSegments( usedFonts[i] );
+			}
+			if ( fontsIndex[i] == null )
 			{
 				fullIndexed = false;
 			}
@@ -107,11 +121,15 @@ public class CompositeFont
 		}
 		else
 		{
-			baseFonts = new BaseFont[usedFonts.length];
-			for ( int i = 0; i < baseFonts.length; i++ )
+			charsIndex = new FontIndex.CharsEntry[usedFonts.length];
+			for ( int i = 0; i < usedFonts.length; i++ )
 			{
-				baseFonts[i] = manager.createFont( usedFonts[i], Font.NORMAL );
+				if ( fontsIndex[i] == null )
+				{
+					charsIndex[i] = manager.getCharsEntry( usedFonts[i] );
+				}
 			}
+			baseFonts = new BaseFont[usedFonts.length];
 		}
 	}
 
@@ -173,15 +191,9 @@ public class CompositeFont
 						return usedFonts[i];
 					}
 				}
-				else
+				else if ( charExists( i, ch ) )
 				{
-					if ( baseFonts[i] != null )
-					{
-						if ( baseFonts[i].charExists( ch ) )
-						{
-							return usedFonts[i];
-						}
-					}
+					return usedFonts[i];
 				}
 			}
 		}
@@ -191,4 +203,37 @@ public class CompositeFont
 		}
 		return null;
 	}
+
+	/**
+	 * test the character in the font, the font is created only if the
+	 * character is not in the font index.
+	 */
+	private boolean charExists( int fontIndex, char ch )
+	{
+		FontIndex.CharsEntry chars = charsIndex[fontIndex];
+		if ( chars != null )
+		{
+			Boolean exists = chars.charExists( ch );
+			if ( exists != null )
+			{
+				return exists.booleanValue( );
+			}
+		}
+		BaseFont font = baseFonts[fontIndex];
+		if ( font == null )
+		{
+			font = manager.createFont( usedFonts[fontIndex], Font.NORMAL );
+			if ( font == null )
+			{
+				return false;
+			}
+			baseFonts[fontIndex] = font;
+		}
+		boolean exists = font.charExists( ch );
+		if ( chars != null )
+		{
+			chars.addChar( ch, exists );
+		}
+		return exists;
+	}
 }
@@ -0,0 +1,829 @@
+/*******************************************************************************
+ * Copyright (c) 2004, 2010 Actuate Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Actuate Corporation  - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.birt.report.engine.layout.pdf.font;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.lowagie.text.FontFactory;
+import com.lowagie.text.FontFactoryImp;
+
+/**
+ * the persistent index of the fonts used by the font mapping managers.
+ * <p>
+ * Registering a font path into iText FontFactory parses all the font files in
+ * it, and the composite fonts parse their fonts again to find the characters
+ * each font can display. The index saves the font names registered by each
+ * font path and the characters of each TrueType font, with the time stamps of
+ * the font files, so the next start can reuse them if the files are not
+ * changed. The characters are added when they are tested in the fonts, a font
+ * is never scanned for all its characters.
+ */
+class FontIndex
+{
+
+	protected static Logger logger = Logger.getLogger( FontIndex.class
+			.getName( ) );
+
+	final static int VERSION = 2;
+
+	/**
+	 * the index file
+	 */
+	protected File file;
+
+	/**
+	 * the font name to font file registry of the FontFactory
+	 */
+	protected Properties trueTypeFonts;
+
+	/**
+	 * the font family to font names registry of the FontFactory
+	 */
+	protected Map fontFamilies;
+
+	/**
+	 * the registered fonts, the key is the font path.
+	 */
+	protected HashMap<String, FontPathEntry> fontPaths = new HashMap<String, FontPathEntry>( );
+
+	/**
+	 * the characters of the fonts, the key is the font file.
+	 */
+	protected HashMap<String, CharsEntry> fontChars = new HashMap<String, CharsEntry>( );
+
+	/**
+	 * if the index is changed after it is loaded.
+	 */
+	protected boolean dirty;
+
+	FontIndex( File file, Properties trueTypeFonts, Map fontFamilies )
+	{
+		this.file = file;
+		this.trueTypeFonts = trueTypeFonts;
+		this.fontFamilies = fontFamilies;
+	}
+
+	/**
+	 * open the index saved in the file.
+	 *
+	 * @return the index, or null if the registry of the FontFactory can't be
+	 *         accessed.
+	 */
+	static FontIndex open( File file )
+	{
+		try
+		{
+			FontFactoryImp fontImp = FontFactory.getFontImp( );
+			Properties trueTypeFonts = (Properties) getField( fontImp,
+					"trueTypeFonts" ); //$NON-NLS-1$
+			Map fontFamilies = (Map) getField( fontImp, "fontFamilies" ); //$NON-NLS-1$
+			if ( trueTypeFonts == null || fontFamilies == null )
+			{
+				return null;
+			}
+			FontIndex index = new FontIndex( file, trueTypeFonts, fontFamilies );
+			if ( file.exists( ) )
+			{
+				index.load( );
+			}
+			return index;
+		}
+		catch ( Exception ex )
+		{
+			logger.log( Level.FINE, "font registry is not accessable", ex ); //$NON-NLS-1$
+			return null;
+		}
+	}
+
+	private static Object getField( Object object, String name )
+			throws Exception
+	{
+		Field field = object.getClass( ).getDeclaredField( name );
+		field.setAccessible( true );
+		return field.get( object );
+	}
+
+	/**
+	 * register the fonts in the font path into the FontFactory. The fonts
+	 * saved in the index are registered directly if the font files are not
+	 * changed, otherwise the font path is registered by FontFactory and the
+	 * registered fonts are saved in the index.
+	 *
+	 * @param fontPath
+	 *            the font directory or font file.
+	 * @return true if the fonts are registered from the index.
+	 */
+	synchronized boolean registerFontPath( String fontPath )
+	{
+		File path = new File( fontPath );
+		List<FileStamp> files = getFileStamps( path );
+		FontPathEntry entry = fontPaths.get( fontPath );
+		if ( entry != null && entry.files.equals( files ) )
+		{
+			Iterator<Map.Entry<String, String>> iter = entry.fonts.entrySet( )
+					.iterator( );
+			while ( iter.hasNext( ) )
+			{
+				Map.Entry<String, String> font = iter.next( );
+				trueTypeFonts.setProperty( font.getKey( ), font.getValue( ) );
+			}
+			FontFactoryImp fontImp = FontFactory.getFontImp( );
+			Iterator<Map.Entry<String, List<String>>> families = entry.families
+					.entrySet( ).iterator( );
+			while ( families.hasNext( ) )
+			{
+				Map.Entry<String, List<String>> family = families.next( );
+				List<String> names = family.getValue( );
+				for ( int i = 0; i < names.size( ); i++ )
+				{
+					fontImp.registerFamily( family.getKey( ), names.get( i ),
+							null );
+				}
+			}
+			return true;
+		}
+
+		if ( path.exists( ) )
+		{
+			if ( path.isDirectory( ) )
+			{
+				FontFactory.registerDirectory( fontPath );
+			}
+			else
+			{
+				FontFactory.register( fontPath );
+			}
+		}
+
+		// save the fonts registered by the font path, the fonts may be
+		// registered before if the font path is registered again. The fonts
+		// registered from the other paths at the same time are not saved.
+		entry = new FontPathEntry( fontPath, files );
+		synchronized ( trueTypeFonts )
+		{
+			Iterator iter = trueTypeFonts.entrySet( ).iterator( );
+			while ( iter.hasNext( ) )
+			{
+				Map.Entry font = (Map.Entry) iter.next( );
+				String value = font.getValue( ).toString( );
+				if ( isInFontPath( value, fontPath ) )
+				{
+					entry.fonts.put( font.getKey( ).toString( ), value );
+				}
+			}
+		}
+		synchronized ( fontFamilies )
+		{
+			Iterator iter = fontFamilies.entrySet( ).iterator( );
+			while ( iter.hasNext( ) )
+			{
+				Map.Entry family = (Map.Entry) iter.next( );
+				List names = (List) family.getValue( );
+				for ( int i = 0; i < names.size( ); i++ )
+				{
+					String name = names.get( i ).toString( );
+					if ( entry.fonts.containsKey( name.toLowerCase( ) ) )
+					{
+						entry.addFamily( family.getKey( ).toString( ), name );
+					}
+				}
+			}
+		}
+		fontPaths.put( fontPath, entry );
+		dirty = true;
+		return false;
+	}
+
+	/**
+	 * test if the font file is registered by the font path. The font path may
+	 * be the font file itself, the font in the TrueType collection is
+	 * registered as "file,index".
+	 */
+	static boolean isInFontPath( String fontFile, String fontPath )
+	{
+		String prefix = new File( fontPath ).getPath( );
+		return isInFontPath( fontFile, fontPath, File.separator )
+				|| isInFontPath( fontFile, prefix, File.separator )
+				|| isInFontPath( fontFile, fontPath, "," ) //$NON-NLS-1$
+				|| isInFontPath( fontFile, prefix, "," ); //$NON-NLS-1$
+	}
+
+	private static boolean isInFontPath( String fontFile, String path,
+			String separator )
+	{
+		if ( fontFile.equals( path ) )
+		{
+			return true;
+		}
+		if ( path.endsWith( separator ) )
+		{
+			return fontFile.startsWith( path );
+		}
+		return fontFile.startsWith( path + separator );
+	}
+
+	/**
+	 * get the characters of the font saved in the index. Only the fonts whose
+	 * characters are all tested have the character segments.
+	 *
+	 * @param fontName
+	 *            the font name.
+	 * @return the characters of the font, or null if they are not in the
+	 *         index.
+	 */
+	synchronized CharSegment[] getCharSegments( String fontName )
+	{
+		String fontFile = getFontFile( fontName );
+		if ( fontFile == null )
+		{
+			return null;
+		}
+		CharsEntry entry = fontChars.get( fontFile );
+		if ( entry == null
+				|| !entry.file.equals( getFileStamp( getFile( fontFile ) ) ) )
+		{
+			return null;
+		}
+		return entry.getCharSegments( fontName );
+	}
+
+	/**
+	 * get the characters of the font saved in the index, the characters tested
+	 * in the font are added into the returned entry.
+	 *
+	 * @param fontName
+	 *            the font name.
+	 * @return the characters of the font, or null if the font can't be saved
+	 *         in the index.
+	 */
+	synchronized CharsEntry getCharsEntry( String fontName )
+	{
+		String fontFile = getFontFile( fontName );
+		if ( fontFile == null )
+		{
+			return null;
+		}
+		FileStamp file = getFileStamp( getFile( fontFile ) );
+		CharsEntry entry = fontChars.get( fontFile );
+		if ( entry == null || !entry.file.equals( file ) )
+		{
+			entry = new CharsEntry( file, new BitSet( ), new BitSet( ) );
+			fontChars.put( fontFile, entry );
+		}
+		return entry;
+	}
+
+	/**
+	 * get the TrueType font file registered by the font name, it uses the
+	 * same rule as FontFactory to find the normal font of a font family.
+	 */
+	protected String getFontFile( String fontName )
+	{
+		String name = fontName.toLowerCase( );
+		List names = (List) fontFamilies.get( name );
+		if ( names != null )
+		{
+			synchronized ( fontFamilies )
+			{
+				for ( int i = 0; i < names.size( ); i++ )
+				{
+					String fullName = names.get( i ).toString( ).toLowerCase( );
+					if ( fullName.indexOf( "bold" ) == -1 //$NON-NLS-1$
+							&& fullName.indexOf( "italic" ) == -1 //$NON-NLS-1$
+							&& fullName.indexOf( "oblique" ) == -1 ) //$NON-NLS-1$
+					{
+						name = fullName;
+						break;
+					}
+				}
+			}
+		}
+		String fontFile = trueTypeFonts.getProperty( name );
+		if ( fontFile == null )
+		{
+			return null;
+		}
+		// only the characters of the TrueType fonts are saved, the characters
+		// of the Type1 fonts depend on the encoding.
+		String fileName = getFile( fontFile ).getName( ).toLowerCase( );
+		if ( fileName.endsWith( ".ttf" ) || fileName.endsWith( ".otf" ) //$NON-NLS-1$ //$NON-NLS-2$
+				|| fileName.endsWith( ".ttc" ) ) //$NON-NLS-1$
+		{
+			return fontFile;
+		}
+		return null;
+	}
+
+	/**
+	 * @return the file of the font, the font in the TrueType collection is
+	 *         registered as "file,index".
+	 */
+	private File getFile( String fontFile )
+	{
+		int index = fontFile.lastIndexOf( ',' );
+		if ( index != -1 && fontFile.toLowerCase( ).indexOf( ".ttc" ) != -1 ) //$NON-NLS-1$
+		{
+			fontFile = fontFile.substring( 0, index );
+		}
+		return new File( fontFile );
+	}
+
+	/**
+	 * get the time stamps of the files in the font path. The sub directories
+	 * are not scanned by FontFactory, so they are not used.
+	 */
+	protected List<FileStamp> getFileStamps( File path )
+	{
+		ArrayList<FileStamp> stamps = new ArrayList<FileStamp>( );
+		if ( path.isDirectory( ) )
+		{
+			String[] names = path.list( );
+			if ( names != null )
+			{
+				Arrays.sort( names );
+				for ( int i = 0; i < names.length; i++ )
+				{
+					File file = new File( path, names[i] );
+					if ( !file.isDirectory( ) )
+					{
+						stamps.add( getFileStamp( file ) );
+					}
+				}
+			}
+		}
+		else if ( path.exists( ) )
+		{
+			stamps.add( getFileStamp( path ) );
+		}
+		return stamps;
+	}
+
+	private FileStamp getFileStamp( File file )
+	{
+		return new FileStamp( file.getName( ), file.lastModified( ), file
+				.length( ) );
+	}
+
+	/**
+	 * save the index into the file if it is changed. The index is written into
+	 * a temporary file first, so the other processes never read a partial
+	 * index.
+	 */
+	synchronized void save( )
+	{
+		if ( !isChanged( ) )
+		{
+			return;
+		}
+		dirty = false;
+		Iterator<CharsEntry> entries = fontChars.values( ).iterator( );
+		while ( entries.hasNext( ) )
+		{
+			entries.next( ).changed = false;
+		}
+		File tempFile = null;
+		try
+		{
+			File folder = file.getAbsoluteFile( ).getParentFile( );
+			if ( folder != null && !folder.exists( ) )
+			{
+				folder.mkdirs( );
+			}
+			tempFile = File.createTempFile( file.getName( ), ".tmp", folder ); //$NON-NLS-1$
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream( new FileOutputStream( tempFile ) ) );
+			try
+			{
+				write( out );
+			}
+			finally
+			{
+				out.close( );
+			}
+			if ( !tempFile.renameTo( file ) )
+			{
+				file.delete( );
+				if ( !tempFile.renameTo( file ) )
+				{
+					throw new IOException( "can't rename " + tempFile + " to " //$NON-NLS-1$ //$NON-NLS-2$
+							+ file );
+				}
+			}
+			tempFile = null;
+		}
+		catch ( IOException ex )
+		{
+			logger.log( Level.WARNING, "failed to save the font index " //$NON-NLS-1$
+					+ file, ex );
+		}
+		finally
+		{
+			if ( tempFile != null )
+			{
+				tempFile.delete( );
+			}
+		}
+	}
+
+	private boolean isChanged( )
+	{
+		if ( dirty )
+		{
+			return true;
+		}
+		Iterator<CharsEntry> entries = fontChars.values( ).iterator( );
+		while ( entries.hasNext( ) )
+		{
+			if ( entries.next( ).changed )
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	protected void load( )
+	{
+		try
+		{
+			DataInputStream in = new DataInputStream( new BufferedInputStream(
+					new FileInputStream( file ) ) );
+			try
+			{
+				read( in );
+			}
+			finally
+			{
+				in.close( );
+			}
+		}
+		catch ( IOException ex )
+		{
+			logger.log( Level.WARNING, "failed to load the font index " //$NON-NLS-1$
+					+ file, ex );
+			fontPaths.clear( );
+			fontChars.clear( );
+		}
+	}
+
+	protected void write( DataOutputStream out ) throws IOException
+	{
+		out.writeInt( VERSION );
+		out.writeInt( fontPaths.size( ) );
+		Iterator<FontPathEntry> iter = fontPaths.values( ).iterator( );
+		while ( iter.hasNext( ) )
+		{
+			FontPathEntry entry = iter.next( );
+			out.writeUTF( entry.path );
+			writeFileStamps( out, entry.files );
+			out.writeInt( entry.fonts.size( ) );
+			Iterator<Map.Entry<String, String>> fonts = entry.fonts.entrySet( )
+					.iterator( );
+			while ( fonts.hasNext( ) )
+			{
+				Map.Entry<String, String> font = fonts.next( );
+				out.writeUTF( font.getKey( ) );
+				out.writeUTF( font.getValue( ) );
+			}
+			out.writeInt( entry.families.size( ) );
+			Iterator<Map.Entry<String, List<String>>> families = entry.families
+					.entrySet( ).iterator( );
+			while ( families.hasNext( ) )
+			{
+				Map.Entry<String, List<String>> family = families.next( );
+				out.writeUTF( family.getKey( ) );
+				List<String> names = family.getValue( );
+				out.writeInt( names.size( ) );
+				for ( int i = 0; i < names.size( ); i++ )
+				{
+					out.writeUTF( names.get( i ) );
+				}
+			}
+		}
+		out.writeInt( fontChars.size( ) );
+		Iterator<Map.Entry<String, CharsEntry>> chars = fontChars.entrySet( )
+				.iterator( );
+		while ( chars.hasNext( ) )
+		{
+			Map.Entry<String, CharsEntry> entry = chars.next( );
+			out.writeUTF( entry.getKey( ) );
+			CharsEntry value = entry.getValue( );
+			writeFileStamp( out, value.file );
+			synchronized ( value )
+			{
+				writeBitSet( out, value.checked );
+				writeBitSet( out, value.chars );
+			}
+		}
+	}
+
+	protected void read( DataInputStream in ) throws IOException
+	{
+		int version = in.readInt( );
+		if ( version != VERSION )
+		{
+			// the index is rebuilt if it is saved by the other versions.
+			return;
+		}
+		int size = in.readInt( );
+		for ( int i = 0; i < size; i++ )
+		{
+			String path = in.readUTF( );
+			FontPathEntry entry = new FontPathEntry( path,
+					readFileStamps( in ) );
+			int count = in.readInt( );
+			for ( int j = 0; j < count; j++ )
+			{
+				String name = in.readUTF( );
+				String fontFile = in.readUTF( );
+				// the fonts must be in the font path
+				if ( !isInFontPath( fontFile, path ) )
+				{
+					throw new IOException( "invalid font file " + fontFile ); //$NON-NLS-1$
+				}
+				entry.fonts.put( name, fontFile );
+			}
+			count = in.readInt( );
+			for ( int j = 0; j < count; j++ )
+			{
+				String family = in.readUTF( );
+				int names = in.readInt( );
+				for ( int k = 0; k < names; k++ )
+				{
+					entry.addFamily( family, in.readUTF( ) );
+				}
+			}
+			fontPaths.put( path, entry );
+		}
+		size = in.readInt( );
+		for ( int i = 0; i < size; i++ )
+		{
+			String fontFile = in.readUTF( );
+			FileStamp file = readFileStamp( in );
+			BitSet checked = readBitSet( in, fontFile );
+			BitSet chars = readBitSet( in, fontFile );
+			fontChars.put( fontFile, new CharsEntry( file, checked, chars ) );
+		}
+	}
+
+	/**
+	 * the bits are saved as the start and end of each bit segment.
+	 */
+	private void writeBitSet( DataOutputStream out, BitSet bits )
+			throws IOException
+	{
+		int count = 0;
+		for ( int start = bits.nextSetBit( 0 ); start != -1; start = bits
+				.nextSetBit( bits.nextClearBit( start ) ) )
+		{
+			count += 2;
+		}
+		out.writeInt( count );
+		for ( int start = bits.nextSetBit( 0 ); start != -1; start = bits
+				.nextSetBit( bits.nextClearBit( start ) ) )
+		{
+			out.writeInt( start );
+			out.writeInt( bits.nextClearBit( start ) - 1 );
+		}
+	}
+
+	private BitSet readBitSet( DataInputStream in, String fontFile )
+			throws IOException
+	{
+		int count = in.readInt( );
+		if ( count < 0 || count % 2 != 0 )
+		{
+			throw new IOException( "invalid characters of " + fontFile ); //$NON-NLS-1$
+		}
+		BitSet bits = new BitSet( );
+		for ( int i = 0; i < count; i += 2 )
+		{
+			int start = in.readInt( );
+			int end = in.readInt( );
+			if ( start < 0 || end < start || end > CharsEntry.MAX_CHAR )
+			{
+				throw new IOException( "invalid characters of " + fontFile ); //$NON-NLS-1$
+			}
+			bits.set( start, end + 1 );
+		}
+		return bits;
+	}
+
+	private void writeFileStamps( DataOutputStream out, List<FileStamp> files )
+			throws IOException
+	{
+		out.writeInt( files.size( ) );
+		for ( int i = 0; i < files.size( ); i++ )
+		{
+			writeFileStamp( out, files.get( i ) );
+		}
+	}
+
+	private void writeFileStamp( DataOutputStream out, FileStamp file )
+			throws IOException
+	{
+		out.writeUTF( file.name );
+		out.writeLong( file.lastModified );
+		out.writeLong( file.length );
+	}
+
+	private List<FileStamp> readFileStamps( DataInputStream in )
+			throws IOException
+	{
+		int size = in.readInt( );
+		ArrayList<FileStamp> files = new ArrayList<FileStamp>( );
+		for ( int i = 0; i < size; i++ )
+		{
+			files.add( readFileStamp( in ) );
+		}
+		return files;
+	}
+
+	private FileStamp readFileStamp( DataInputStream in ) throws IOException
+	{
+		String name = in.readUTF( );
+		long lastModified = in.readLong( );
+		long length = in.readLong( );
+		return new FileStamp( name, lastModified, length );
+	}
+
+	/**
+	 * the name, modified time and length of a font file.
+	 */
+	static class FileStamp
+	{
+
+		String name;
+		long lastModified;
+		long length;
+
+		FileStamp( String name, long lastModified, long length )
+		{
+			this.name = name;
+			this.lastModified = lastModified;
+			this.length = length;
+		}
+
+		public int hashCode( )
+		{
+			return name.hashCode( ) ^ (int) lastModified ^ (int) length;
+		}
+
+		public boolean equals( Object o )
+		{
+			if ( o instanceof FileStamp )
+			{
+				FileStamp file = (FileStamp) o;
+				return name.equals( file.name )
+						&& lastModified == file.lastModified
+						&& length == file.length;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * the fonts registered by a font path.
+	 */
+	static class FontPathEntry
+	{
+
+		String path;
+
+		List<FileStamp> files;
+
+		/**
+		 * the font name to font file
+		 */
+		HashMap<String, String> fonts = new HashMap<String, String>( );
+
+		/**
+		 * the font family to the font names
+		 */
+		HashMap<String, List<String>> families = new HashMap<String, List<String>>( );
+
+		FontPathEntry( String path, List<FileStamp> files )
+		{
+			this.path = path;
+			this.files = files;
+		}
+
+		void addFamily( String family, String name )
+		{
+			List<String> names = families.get( family );
+			if ( names == null )
+			{
+				names = new ArrayList<String>( );
+				families.put( family, names );
+			}
+			if ( !names.contains( name ) )
+			{
+				names.add( name );
+			}
+		}
+	}
+
+	/**
+	 * the characters of a font file. The characters are added when they are
+	 * tested in the font, so only the tested characters are known.
+	 */
+	static class CharsEntry
+	{
+
+		static final int MAX_CHAR = 0xFFFF;
+
+		FileStamp file;
+
+		/**
+		 * the characters tested in the font
+		 */
+		BitSet checked;
+
+		/**
+		 * the tested characters which exist in the font
+		 */
+		BitSet chars;
+
+		/**
+		 * if characters are added after the index is saved.
+		 */
+		volatile boolean changed;
+
+		CharsEntry( FileStamp file, BitSet checked, BitSet chars )
+		{
+			this.file = file;
+			this.checked = checked;
+			this.chars = chars;
+		}
+
+		/**
+		 * @return if the character exists in the font, or null if the
+		 *         character is not tested yet.
+		 */
+		synchronized Boolean charExists( char ch )
+		{
+			if ( !checked.get( ch ) )
+			{
+				return null;
+			}
+			return Boolean.valueOf( chars.get( ch ) );
+		}
+
+		synchronized void addChar( char ch, boolean exists )
+		{
+			if ( !checked.get( ch ) )
+			{
+				checked.set( ch );
+				chars.set( ch, exists );
+				changed = true;
+			}
+		}
+
+		/**
+		 * @return the character segments, or null if not all the characters
+		 *         are tested.
+		 */
+		synchronized CharSegment[] getCharSegments( String fontName )
+		{
+			if ( checked.nextClearBit( 0 ) <= MAX_CHAR )
+			{
+				return null;
+			}
+			ArrayList<CharSegment> segments = new ArrayList<CharSegment>( );
+			for ( int start = chars.nextSetBit( 0 ); start != -1; start = chars
+					.nextSetBit( chars.nextClearBit( start ) ) )
+			{
+				segments.add( new CharSegment( start, chars
+						.nextClearBit( start ) - 1, fontName ) );
+			}
+			return segments.toArray( new CharSegment[segments.size( )] );
+		}
+	}
+}
@@ -162,4 +162,30 @@ public class FontMappingManager
 	{
 		return factory.createFont( fontFamily, fontStyle );
 	}
+
+	/**
+	 * get the characters of the font saved in the font index.
+	 * 
+	 * @param fontFamily
+	 *            the font family name.
+	 * @return the characters of the font, or null if the font is not indexed.
+	 */
+	CharSegment[] getCharSegments( String fontFamily )
+	{
+		return factory.getCharSegments( fontFamily );
+	}
+
+	/**
+	 * get the characters of the font saved in the font index, the characters
+	 * tested in the font are added into the index.
+	 * 
+	 * @param fontFamily
+	 *            the font family name.
+	 * @return the characters of the font, or null if the font can't be
+	 *         indexed.
+	 */
+	FontIndex.CharsEntry getCharsEntry( String fontFamily )
+	{
+		return factory.getCharsEntry( fontFamily );
+	}
 }
\ No newline at end of file
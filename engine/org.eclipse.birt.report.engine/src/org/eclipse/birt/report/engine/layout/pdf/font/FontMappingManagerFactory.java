@@ -20,6 +20,8 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -74,17 +76,31 @@ public class FontMappingManagerFactory
 	protected static Logger logger = Logger.getLogger( FontConfigReader.class
 			.getName( ) );
 
-	protected static FontMappingManagerFactory instance;
-	
-	public static synchronized FontMappingManagerFactory getInstance( )
+	protected static volatile FontMappingManagerFactory instance;
+
+	public static FontMappingManagerFactory getInstance( )
 	{
 		if ( instance == null )
 		{
-			instance = new FontMappingManagerFactory( );
+			synchronized ( FontMappingManagerFactory.class )
+			{
+				if ( instance == null )
+				{
+					instance = new FontMappingManagerFactory( );
+				}
+			}
 		}
 		return instance;
 	}
-	
+
+	/**
+	 * the system property of the font index file. The fonts registered from
+	 * the font paths and the characters of the fonts are saved in the index,
+	 * so they needn't be parsed again in the next start. The index is
+	 * disabled if the value is empty.
+	 */
+	public static final String FONT_INDEX_FILE = "birt.fonts.index"; //$NON-NLS-1$
+
 	/**
 	 * the custom font config file path
 	 */
@@ -98,7 +114,7 @@ public class FontMappingManagerFactory
 	/**
 	 * font encodings, it is used by iText to load the Type1 fonts
 	 */
-	protected HashMap fontEncodings = new HashMap( );
+	protected Map fontEncodings = new ConcurrentHashMap( );
 
 	/**
 	 * all loaded configurations
@@ -139,11 +155,21 @@ public class FontMappingManagerFactory
 	 * </li>
 	 * </ul>
 	 * 
+	 * The created managers are read without lock, only the creation of the
+	 * managers is synchronized.
 	 */
-	protected HashMap cachedManagers = new HashMap( );
-	
+	protected Map cachedManagers = new ConcurrentHashMap( );
+
+	/**
+	 * the persistent index of the registered fonts, it is null if the index is
+	 * disabled.
+	 */
+	private FontIndex fontIndex;
+
 	protected FontMappingManagerFactory( )
 	{
+		fontIndex = openFontIndex( );
+
 		// Register java fonts.
 		registerJavaFonts( );
 
@@ -153,28 +179,49 @@ public class FontMappingManagerFactory
 		{
 			registerFontPath( embeddedFonts );
 		}
-		
+
+		saveFontIndex( );
 	}
 
-	public synchronized FontMappingManager getFontMappingManager(
-			String format, Locale locale )
+	public FontMappingManager getFontMappingManager( String format,
+			Locale locale )
 	{
-		HashMap managers = (HashMap) cachedManagers.get( format );
-		if ( managers == null )
+		Map managers = (Map) cachedManagers.get( format );
+		if ( managers != null )
 		{
-			managers = new HashMap( );
-			cachedManagers.put( format, managers );
+			FontMappingManager manager = (FontMappingManager) managers
+					.get( locale );
+			if ( manager != null )
+			{
+				// save the characters found by the previous renders
+				saveFontIndex( );
+				return manager;
+			}
 		}
-		FontMappingManager manager = (FontMappingManager) managers.get( locale );
-		if ( manager == null )
+		synchronized ( this )
 		{
-			manager = createFontMappingManager( format, locale );
-			managers.put( locale, manager );
+			managers = (Map) cachedManagers.get( format );
+			if ( managers == null )
+			{
+				managers = new ConcurrentHashMap( );
+				cachedManagers.put( format, managers );
+			}
+			FontMappingManager manager = (FontMappingManager) managers
+					.get( locale );
+			if ( manager == null )
+			{
+				manager = createFontMappingManager( format, locale );
+				if ( manager != null )
+				{
+					managers.put( locale, manager );
+				}
+				saveFontIndex( );
+			}
+			return manager;
 		}
-		return manager;
 	}
 
-	public FontMappingManager createFontMappingManager(
+	public synchronized FontMappingManager createFontMappingManager(
 			FontMappingConfig config, Locale locale )
 	{
 		// Register the fonts defined in JRE fonts directory.
@@ -194,7 +241,10 @@ public class FontMappingManagerFactory
 		// add the font encodings to the global encoding
 		fontEncodings.putAll( config.fontEncodings );
 
-		return new FontMappingManager( this, null, config, locale );
+		FontMappingManager manager = new FontMappingManager( this, null,
+				config, locale );
+		saveFontIndex( );
+		return manager;
 	}
 	
 	public static void setCustomFontConfig( final URL customFontConfig )
@@ -204,19 +254,48 @@ public class FontMappingManagerFactory
 
 	private void registerJavaFonts( )
 	{
-		AccessController.doPrivileged( new PrivilegedAction<Object>( ) {
+		String javaHome = SecurityUtil.getSystemProperty( "java.home" );
+		String fontsFolder = javaHome + File.separatorChar + "lib"
+				+ File.separatorChar + "fonts";
+		registerFontPath( fontsFolder );
+	}
 
-			public Object run( )
+	private static FontIndex openFontIndex( )
+	{
+		return AccessController.doPrivileged( new PrivilegedAction<FontIndex>( ) {
+
+			public FontIndex run( )
 			{
-				String javaHome = System.getProperty( "java.home" );
-				String fontsFolder = javaHome + File.separatorChar + "lib"
-						+ File.separatorChar + "fonts";
-				FontFactory.registerDirectory( fontsFolder );
-				return null;
+				String indexFile = System.getProperty( FONT_INDEX_FILE );
+				if ( indexFile == null )
+				{
+					indexFile = System.getProperty( "java.io.tmpdir" ) //$NON-NLS-1$
+							+ File.separatorChar + "birt_fonts_" //$NON-NLS-1$
+							+ System.getProperty( "user.name" ) + ".index"; //$NON-NLS-1$ //$NON-NLS-2$
+				}
+				if ( indexFile.length( ) == 0 )
+				{
+					return null;
+				}
+				return FontIndex.open( new File( indexFile ) );
 			}
 		} );
 	}
-	
+
+	private void saveFontIndex( )
+	{
+		if ( fontIndex != null )
+		{
+			AccessController.doPrivileged( new PrivilegedAction<Object>( ) {
+
+				public Object run( )
+				{
+					fontIndex.save( );
+					return null;
+				}
+			} );
+		}
+	}
 
 	protected FontMappingManager createFontMappingManager( String format,
 			Locale locale )
@@ -310,10 +389,10 @@ public class FontMappingManagerFactory
 	protected FontMappingManager createFontMappingManager(
 			FontMappingManager parent, FontMappingConfig config, Locale locale )
 	{
-		HashMap managers = (HashMap) cachedManagers.get( config );
+		Map managers = (Map) cachedManagers.get( config );
 		if ( managers == null )
 		{
-			managers = new HashMap( );
+			managers = new ConcurrentHashMap( );
 			cachedManagers.put( config, managers );
 		}
 		FontMappingManager manager = (FontMappingManager) managers.get( locale );
@@ -473,7 +552,7 @@ public class FontMappingManagerFactory
 	 * </li>
 	 * </ul>
 	 */
-	HashMap cachedCompositeFonts = new HashMap( );
+	ConcurrentHashMap cachedCompositeFonts = new ConcurrentHashMap( );
 
 	CompositeFont createCompositeFont( FontMappingManager manager,
 			CompositeFontConfig fontConfig, String[] sequence )
@@ -482,18 +561,81 @@ public class FontMappingManagerFactory
 		if ( fonts == null )
 		{
 			fonts = new HashMap( );
-			cachedCompositeFonts.put( fontConfig, fonts );
+			HashMap cachedFonts = (HashMap) cachedCompositeFonts.putIfAbsent(
+					fontConfig, fonts );
+			if ( cachedFonts != null )
+			{
+				fonts = cachedFonts;
+			}
 		}
-		CompositeFont font = (CompositeFont) fonts.get( sequence );
-		if ( font == null )
+		// the search sequence may be null, so the fonts are saved in HashMap
+		synchronized ( fonts )
+		{
+			CompositeFont font = (CompositeFont) fonts.get( sequence );
+			if ( font == null )
+			{
+				font = new CompositeFont( manager, fontConfig, sequence );
+				fonts.put( sequence, font );
+			}
+			return font;
+		}
+	}
+
+	/**
+	 * get the characters of the font saved in the font index. The font is not
+	 * loaded to find its characters if they are not in the index.
+	 * 
+	 * @param fontName
+	 *            the font name
+	 * @return the characters of the font, or null if the font is not indexed.
+	 */
+	CharSegment[] getCharSegments( final String fontName )
+	{
+		if ( fontIndex == null )
+		{
+			return null;
+		}
+		return AccessController
+				.doPrivileged( new PrivilegedAction<CharSegment[]>( ) {
+
+					public CharSegment[] run( )
+					{
+						return fontIndex.getCharSegments( fontName );
+					}
+				} );
+	}
+
+	/**
+	 * get the characters of the font saved in the font index, the characters
+	 * tested in the font are added into the index.
+	 * 
+	 * @param fontName
+	 *            the font name
+	 * @return the characters of the font, or null if the font can't be
+	 *         indexed.
+	 */
+	FontIndex.CharsEntry getCharsEntry( final String fontName )
+	{
+		if ( fontIndex == null )
 		{
-			font = new CompositeFont( manager, fontConfig, sequence );
-			fonts.put( sequence, font );
+			return null;
 		}
-		return font;
+		return AccessController
+				.doPrivileged( new PrivilegedAction<FontIndex.CharsEntry>( ) {
+
+					public FontIndex.CharsEntry run( )
+					{
+						return fontIndex.getCharsEntry( fontName );
+					}
+				} );
 	}
 
-	private HashMap baseFonts = new HashMap( );
+	/**
+	 * the created base fonts, NO_FONT is saved if the font can't be created.
+	 */
+	private ConcurrentHashMap baseFonts = new ConcurrentHashMap( );
+
+	private static final Object NO_FONT = new Object( );
 
 	/**
 	 * Creates iText BaseFont with the given font family name.
@@ -505,61 +647,79 @@ public class FontMappingManagerFactory
 	public BaseFont createFont( String familyName, int fontStyle )
 	{
 		String key = familyName + fontStyle;
-		BaseFont bf = null;
-		synchronized ( baseFonts )
+		Object font = baseFonts.get( key );
+		if ( font == null )
 		{
-			if ( baseFonts.containsKey( key ) )
-			{
-				bf = (BaseFont) baseFonts.get( key );
-			}
-			else
+			// the fonts are created one by one, the created fonts are read
+			// without lock.
+			synchronized ( baseFonts )
 			{
-				try
+				font = baseFonts.get( key );
+				if ( font == null )
 				{
-					String fontEncoding = (String) fontEncodings
-							.get( familyName );
-					if ( fontEncoding == null )
+					BaseFont bf = null;
+					try
 					{
-						fontEncoding = BaseFont.IDENTITY_H;
+						String fontEncoding = (String) fontEncodings
+								.get( familyName );
+						if ( fontEncoding == null )
+						{
+							fontEncoding = BaseFont.IDENTITY_H;
+						}
+						bf = FontFactory.getFont( familyName, fontEncoding,
+								BaseFont.EMBEDDED, 14, fontStyle )
+								.getBaseFont( );
 					}
-					bf = FontFactory.getFont( familyName, fontEncoding,
-							BaseFont.EMBEDDED, 14, fontStyle ).getBaseFont( );
-				}
-				catch ( Throwable de )
-				{
-					logger.log( Level.WARNING, de.getMessage( ), de );
+					catch ( Throwable de )
+					{
+						logger.log( Level.WARNING, de.getMessage( ), de );
+					}
+					font = bf == null ? NO_FONT : bf;
+					baseFonts.put( key, font );
 				}
-				baseFonts.put( key, bf );
-			}
-			if ( bf == null && fontStyle != Font.NORMAL )
-			{
-				return createFont( familyName, Font.NORMAL );
 			}
 		}
-		return bf;
+		if ( font != NO_FONT )
+		{
+			return (BaseFont) font;
+		}
+		if ( fontStyle != Font.NORMAL )
+		{
+			return createFont( familyName, Font.NORMAL );
+		}
+		return null;
 	}
 
-	private static void registerFontPath( final String fontPath )
+	private void registerFontPath( final String fontPath )
 	{
 		AccessController.doPrivileged( new PrivilegedAction<Object>( ) {
 
 			public Object run( )
 			{
 				long start = System.currentTimeMillis( );
-				File file = new File( fontPath );
-				if ( file.exists( ) )
+				boolean indexed = false;
+				if ( fontIndex != null )
 				{
-					if ( file.isDirectory( ) )
-					{
-						FontFactory.registerDirectory( fontPath );
-					}
-					else
+					indexed = fontIndex.registerFontPath( fontPath );
+				}
+				else
+				{
+					File file = new File( fontPath );
+					if ( file.exists( ) )
 					{
-						FontFactory.register( fontPath );
+						if ( file.isDirectory( ) )
+						{
+							FontFactory.registerDirectory( fontPath );
+						}
+						else
+						{
+							FontFactory.register( fontPath );
+						}
 					}
 				}
 				long end = System.currentTimeMillis( );
-				logger.info( "register fonts in " + fontPath + " cost:"
+				logger.info( "register fonts in " + fontPath
+						+ ( indexed ? " from index" : "" ) + " cost:"
 						+ ( end - start ) + "ms" );
 				return null;
 			}
@@ -19,6 +19,7 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -26,6 +27,7 @@ import org.eclipse.birt.core.archive.IDocArchiveWriter;
 import org.eclipse.birt.core.archive.RAOutputStream;
 import org.eclipse.birt.core.exception.BirtException;
 import org.eclipse.birt.core.util.IOUtil;
+import org.eclipse.birt.report.engine.api.EngineConstants;
 import org.eclipse.birt.report.engine.api.EngineException;
 import org.eclipse.birt.report.engine.api.IEngineTask;
 import org.eclipse.birt.report.engine.api.IPageHandler;
@@ -129,6 +131,10 @@ public class ReportDocumentBuilder
 	 * used to write the content stream
 	 */
 	protected CompositeContentEmitter contentEmitter;
+	/**
+	 * the emitter which writes the content stream.
+	 */
+	private ContentEmitter contentWriter;
 	/**
 	 * used to write the page content stream.
 	 */
@@ -187,7 +193,8 @@ public class ReportDocumentBuilder
 				executionContext ) );
 		// used to write the content stream.
 		contentEmitter = new CompositeContentEmitter( );
-		contentEmitter.addEmitter( new ContentEmitter( ) );
+		contentWriter = new ContentEmitter( );
+		contentEmitter.addEmitter( contentWriter );
 
 		// prepare the document extension
 		String[] exts = context.getEngineExtensions( );
@@ -318,6 +325,27 @@ public class ReportDocumentBuilder
 		return writer.writeContent( content );
 	}
 
+	/**
+	 * test if the boolean option is enabled in the application context.
+	 */
+	private boolean isAppContextEnabled( String name )
+	{
+		Map appContext = executionContext.getAppContext( );
+		if ( appContext != null )
+		{
+			Object value = appContext.get( name );
+			if ( value instanceof Boolean )
+			{
+				return ( (Boolean) value ).booleanValue( );
+			}
+			if ( value instanceof String )
+			{
+				return Boolean.valueOf( (String) value ).booleanValue( );
+			}
+		}
+		return false;
+	}
+
 	private boolean needSave( IContent content )
 	{
 		InstanceID id = content.getInstanceID( );
@@ -363,12 +391,19 @@ public class ReportDocumentBuilder
 		{
 			try
 			{
+				boolean compressed = isAppContextEnabled(
+						EngineConstants.APPCONTEXT_COMPRESS_CONTENT_STREAM );
+				boolean compact = compressed
+						|| isAppContextEnabled(
+								EngineConstants.APPCONTEXT_COMPACT_CONTENT_STREAM );
 				writer = new ReportContentWriterV3( document.getArchive( ),
-						ReportDocumentConstants.CONTENT_STREAM );
+						ReportDocumentConstants.CONTENT_STREAM, compact,
+						compressed );
 				writer.writeReport( report );
 
 				pageWriter = new ReportContentWriterV3( document.getArchive( ),
-						ReportDocumentConstants.PAGE_STREAM );
+						ReportDocumentConstants.PAGE_STREAM, compact,
+						compressed );
 				indexStream = document.getArchive( ).createRandomAccessStream(
 						ReportDocumentConstants.PAGE_INDEX_STREAM );
 			}
@@ -408,6 +443,29 @@ public class ReportDocumentBuilder
 			}
 		}
 
+		/**
+		 * make the contents written so far readable from the streams.
+		 */
+		protected void flush( )
+		{
+			try
+			{
+				if ( writer != null )
+				{
+					writer.flush( );
+				}
+				if ( pageWriter != null )
+				{
+					pageWriter.flush( );
+				}
+			}
+			catch ( IOException ex )
+			{
+				logger.log( Level.SEVERE, "failed to flush the content writers",
+						ex );
+			}
+		}
+
 		public void start( IReportContent report )
 		{
 			open( report );
@@ -817,6 +875,12 @@ public class ReportDocumentBuilder
 				Collection<PageVariable> vars = getPageVariable( );
 				hint.getPageVariables( ).addAll( vars );
 
+				if ( executionContext.isProgressiveViewingEnable( ) )
+				{
+					// the page hint refers to the contents, which must be
+					// readable once the page is viewed.
+					contentWriter.flush( );
+				}
 				writePageHint( hint );
 				
 				if ( checkpoint )
@@ -949,6 +1013,12 @@ public class ReportDocumentBuilder
 						checkpoint = true;
 					}
 				}
+				if ( executionContext.isProgressiveViewingEnable( ) )
+				{
+					// the page hint refers to the contents, which must be
+					// readable once the page is viewed.
+					contentWriter.flush( );
+				}
 				writePageHint( pdfContext );
 
 				if ( checkpoint )